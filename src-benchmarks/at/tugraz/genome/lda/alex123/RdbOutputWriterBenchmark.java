@@ -0,0 +1,129 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.alex123;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.quantification.LipidParameterSet;
+import at.tugraz.genome.lda.quantification.QuantificationResult;
+import at.tugraz.genome.maspectras.quantification.CgProbe;
+
+/**
+ * Benchmark for the RdbOutputWriter on synthetic LDA results; writes the same results with
+ * one formatting thread and with several formatting threads, and checks that both files are identical
+ *
+ * usage: RdbOutputWriterBenchmark [nrOfFiles] [nrOfSpeciesPerClass] [nrOfThreads]
+ */
+public class RdbOutputWriterBenchmark
+{
+
+  private final static String[] CLASSES = new String[]{"PC","PE","TG","SM"};
+  private final static int ROUNDS = 3;
+
+  public static void main(String[] args) throws Exception
+  {
+    int nrOfFiles = args.length>0 ? Integer.parseInt(args[0]) : 100;
+    int nrOfSpecies = args.length>1 ? Integer.parseInt(args[1]) : 200;
+    int nrOfThreads = args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    LinkedHashMap<String,Integer> classSequence = new LinkedHashMap<String,Integer>();
+    Hashtable<String,Vector<String>> analyteSequence = new Hashtable<String,Vector<String>>();
+    for (String className : CLASSES){
+      classSequence.put(className, 1);
+      Vector<String> analytes = new Vector<String>();
+      for (int i=0; i!=nrOfSpecies; i++) analytes.add(getSpeciesName(i));
+      analyteSequence.put(className, analytes);
+    }
+    Vector<QuantificationResult> results = new Vector<QuantificationResult>();
+    Random random = new Random(4711l);
+    for (int i=0; i!=nrOfFiles; i++) results.add(createSyntheticResult("File_"+i, nrOfSpecies, random));
+
+    File single = File.createTempFile("rdbSingle", ".tab");
+    File parallel = File.createTempFile("rdbParallel", ".tab");
+    single.deleteOnExit();
+    parallel.deleteOnExit();
+    long singleTime = 0l;
+    long parallelTime = 0l;
+    for (int i=0; i!=ROUNDS; i++){
+      long time = System.nanoTime();
+      new RdbOutputWriter(1).write(single.getAbsolutePath(), results, classSequence, analyteSequence, null);
+      singleTime += System.nanoTime()-time;
+      time = System.nanoTime();
+      new RdbOutputWriter(nrOfThreads).write(parallel.getAbsolutePath(), results, classSequence, analyteSequence, null);
+      parallelTime += System.nanoTime()-time;
+    }
+    if (!Arrays.equals(Files.readAllBytes(single.toPath()), Files.readAllBytes(parallel.toPath())))
+      throw new RuntimeException("The RDB files written by one and by "+nrOfThreads+" threads are different!");
+    System.out.println(nrOfFiles+" files; "+single.length()+" bytes; 1 thread "+(singleTime/ROUNDS/1000000l)+" ms; "+nrOfThreads+" threads "+
+        (parallelTime/ROUNDS/1000000l)+" ms; speedup "+((float)singleTime/(float)parallelTime));
+  }
+
+  private static String getSpeciesName(int index){
+    return String.valueOf(30+index/8)+":"+String.valueOf(index%8);
+  }
+
+  /**
+   * generates the results of one file with identifications consisting of three isotopes
+   */
+  private static QuantificationResult createSyntheticResult(String rawFile, int nrOfSpecies, Random random){
+    Hashtable<String,Vector<LipidParameterSet>> identifications = new Hashtable<String,Vector<LipidParameterSet>>();
+    for (String className : CLASSES){
+      Vector<LipidParameterSet> sets = new Vector<LipidParameterSet>();
+      for (int i=0; i!=nrOfSpecies; i++){
+        int cAtoms = 30+i/8;
+        int dbs = i%8;
+        float mz = 600f+random.nextFloat()*300f;
+        LipidParameterSet set = new LipidParameterSet(mz, String.valueOf(cAtoms), dbs, "H", 300d+random.nextDouble()*600d,
+            "C"+(cAtoms+10)+" H"+(2*cAtoms-2*dbs+20)+" N1 O8 P1", "H1", 1, 0);
+        Vector<Vector<CgProbe>> isotopicProbes = new Vector<Vector<CgProbe>>();
+        for (int j=0; j!=3; j++){
+          CgProbe probe = new CgProbe(0, 1);
+          probe.Mz = mz+j*1.00335f;
+          probe.Area = random.nextFloat()*1000000f/(j+1);
+          probe.LowerValley = 280f+random.nextFloat()*20f;
+          probe.UpperValley = 320f+random.nextFloat()*20f;
+          probe.LowerMzBand = 0.01f;
+          probe.UpperMzBand = 0.01f;
+          probe.isotopeNumber = j;
+          Vector<CgProbe> probes = new Vector<CgProbe>();
+          probes.add(probe);
+          isotopicProbes.add(probes);
+        }
+        set.setIsotopicProbes(isotopicProbes);
+        sets.add(set);
+      }
+      identifications.put(className, sets);
+    }
+    LipidomicsConstants constants = new LipidomicsConstants(false);
+    constants.setRawFileName(rawFile+".chrom");
+    return new QuantificationResult(identifications, constants, new Hashtable<String,Integer>(), null, null);
+  }
+
+}
@@ -0,0 +1,166 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.alex123;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import at.tugraz.genome.lda.alex123.vos.TargetlistEntry;
+
+/**
+ * Benchmark for the parsing of directories containing Alex123 target lists on synthetic target lists;
+ * compares the parsing with one thread to the one with several threads and checks that both deliver the same
+ * entries in the same sequence; furthermore, the DelimitedLineTokenizer is checked against String.split
+ *
+ * usage: TargetlistParserBenchmark [nrOfFiles] [nrOfSpeciesPerFile] [nrOfThreads]
+ * every file contains the species of its own lipid class; thus, there are at most 6 files
+ */
+public class TargetlistParserBenchmark
+{
+
+  private final static String HEADER = "Detector\tPolarity\tMS dimension\tTarget m/z\tFragment name\tStructure information\tLipid species\t"+
+      "Molecular lipid species\tLipid class\tMS2 precursor m/z\tMS2 activation\tAdduct\tLipid ID\tLipid category\tConflicts\tCharge\t"+
+      "C index from lipid species\tDB index from lipid species\tOH index from lipid species\tSum composition from lipid species\t"+
+      "Sum formula from lipid species\tComment";
+  private final static String[] CLASSES = new String[]{"PC","PE","PS","PG","PI","PA"};
+  private final static int MAX_DBS = 13;
+  private final static int ROUNDS = 3;
+
+  public static void main(String[] args) throws Exception
+  {
+    int nrOfFiles = args.length>0 ? Math.min(CLASSES.length,Integer.parseInt(args[0])) : CLASSES.length;
+    int nrOfSpecies = args.length>1 ? Integer.parseInt(args[1]) : 600;
+    int nrOfThreads = args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    checkTokenizer(new Random(4711l));
+    File dir = new File(System.getProperty("java.io.tmpdir"),"TargetlistParserBenchmark"+System.nanoTime());
+    dir.mkdirs();
+    try{
+      for (int i=0; i!=nrOfFiles; i++) writeSyntheticTargetlist(new File(dir,"Targetlist_"+i+".txt"), i, nrOfSpecies);
+      //to initialize the settings and to warm up
+      TargetlistDirParser sequential = new TargetlistDirParser(dir.getAbsolutePath(),true,1);
+      sequential.parse();
+      TargetlistDirParser parallel = new TargetlistDirParser(dir.getAbsolutePath(),true,nrOfThreads);
+      parallel.parse();
+      checkEquality(sequential.getResults(),parallel.getResults());
+      long sequentialTime = 0l;
+      long parallelTime = 0l;
+      for (int i=0; i!=ROUNDS; i++){
+        long time = System.nanoTime();
+        new TargetlistDirParser(dir.getAbsolutePath(),true,1).parse();
+        sequentialTime += System.nanoTime()-time;
+        time = System.nanoTime();
+        new TargetlistDirParser(dir.getAbsolutePath(),true,nrOfThreads).parse();
+        parallelTime += System.nanoTime()-time;
+      }
+      System.out.println("1 thread "+(sequentialTime/ROUNDS/1000000l)+" ms; "+nrOfThreads+" threads "+(parallelTime/ROUNDS/1000000l)+" ms; speedup "+
+          ((float)sequentialTime/(float)parallelTime));
+    } finally {
+      for (File file : dir.listFiles()) file.delete();
+      dir.delete();
+    }
+  }
+
+  private static void checkTokenizer(Random random){
+    DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer('\t');
+    char[] chars = new char[]{'a','b',' ','\t','\t'};
+    for (int i=0; i!=100000; i++){
+      StringBuilder line = new StringBuilder();
+      int length = random.nextInt(12);
+      for (int j=0; j!=length; j++) line.append(chars[random.nextInt(chars.length)]);
+      String[] expected = line.toString().split("\t");
+      int count = tokenizer.tokenize(line.toString());
+      String[] columns = new String[count];
+      for (int j=0; j!=count; j++) columns[j] = tokenizer.getColumn(j);
+      if (!Arrays.equals(expected,columns))
+        throw new RuntimeException("Different columns for \""+line+"\": "+Arrays.toString(expected)+" vs "+Arrays.toString(columns));
+      for (int j=0; j!=count; j++){
+        if (!expected[j].trim().equals(tokenizer.getTrimmedColumn(j)))
+          throw new RuntimeException("Different trimmed column "+j+" for \""+line+"\"");
+      }
+    }
+  }
+
+  /**
+   * writes a target list with MS1 entries for two adducts and two MS2 fragments per entry
+   */
+  private static void writeSyntheticTargetlist(File file, int fileNr, int nrOfSpecies) throws IOException{
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))){
+      writer.write("Synthetic target list "+fileNr+"\n");
+      writer.write(HEADER+"\n");
+      for (int i=0; i!=nrOfSpecies; i++){
+        String lClass = CLASSES[fileNr];
+        int cAtoms = 28+i/MAX_DBS;
+        int dbs = i%MAX_DBS;
+        String species = lClass+" "+cAtoms+":"+dbs;
+        String molecularSpecies = lClass+" 16:0-"+(cAtoms-16)+":"+dbs;
+        String formula = "C"+(cAtoms+8)+"H"+(2*cAtoms-2*dbs+16)+"NO8P";
+        String[] adducts = new String[]{"+H+","+Na+"};
+        for (String adduct : adducts){
+          double mz = 700d+i*0.1d+(adduct.equals("+Na+") ? 22d : 0d);
+          writer.write("FTMS\t+\tMS\t"+mz+"\t\t\t"+species+"\t\t"+lClass+"\t\t\t"+adduct+"\t"+species+"\tGP\t\t1\t"+cAtoms+"\t"+dbs+"\t0\t"+species+"\t"+formula+"\tx\n");
+          writer.write("FTMS\t+\tMS2\t184.0733\tHG\t"+molecularSpecies+"\t"+species+"\t"+molecularSpecies+"\t"+lClass+"\t"+mz+"\tCID\t"+adduct+"\t"+species+"\tGP\t\t1\t"+cAtoms+"\t"+dbs+"\t0\t"+species+"\t"+formula+"\tx\n");
+          writer.write("FTMS\t-\tMS\t"+mz+"\t\t\t"+species+"\t\t"+lClass+"\t\t\t"+adduct+"\t"+species+"\tGP\t\t1\t"+cAtoms+"\t"+dbs+"\t0\t"+species+"\t"+formula+"\tx\n");
+        }
+      }
+    }
+  }
+
+  private static void checkEquality(LinkedHashMap<String,LinkedHashMap<String,LinkedHashMap<String,TargetlistEntry>>> expected,
+      LinkedHashMap<String,LinkedHashMap<String,LinkedHashMap<String,TargetlistEntry>>> result){
+    if (!expected.keySet().toString().equals(result.keySet().toString()))
+      throw new RuntimeException("Different classes: "+expected.keySet()+" vs "+result.keySet());
+    for (String className : expected.keySet()){
+      if (!expected.get(className).keySet().toString().equals(result.get(className).keySet().toString()))
+        throw new RuntimeException("Different species of class "+className);
+      for (String species : expected.get(className).keySet()){
+        LinkedHashMap<String,TargetlistEntry> expectedMods = expected.get(className).get(species);
+        LinkedHashMap<String,TargetlistEntry> resultMods = result.get(className).get(species);
+        if (!expectedMods.keySet().toString().equals(resultMods.keySet().toString()))
+          throw new RuntimeException("Different adducts of "+species);
+        for (String mod : expectedMods.keySet()){
+          TargetlistEntry one = expectedMods.get(mod);
+          TargetlistEntry other = resultMods.get(mod);
+          if (!one.getAnalyteFormula().equals(other.getAnalyteFormula()) || !one.getModFormula().equals(other.getModFormula()) ||
+              !getFragmentNames(one).equals(getFragmentNames(other)))
+            throw new RuntimeException("Different entries for "+species+" "+mod);
+        }
+      }
+    }
+  }
+
+  private static String getFragmentNames(TargetlistEntry entry){
+    StringBuilder names = new StringBuilder();
+    for (Integer msLevel : entry.getMsnFragments().keySet()){
+      for (String fragment : entry.getMsnFragments().get(msLevel).keySet())
+        names.append(msLevel+"_"+fragment+"_"+entry.getMsnFragments().get(msLevel).get(fragment).keySet()+";");
+    }
+    return names.toString();
+  }
+
+}
@@ -0,0 +1,211 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.masslist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.masslist.MassListSpeciesGenerator.MassListSpecies;
+import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
+import at.tugraz.genome.lda.utils.StaticUtils;
+import at.tugraz.genome.lda.vos.AdductVO;
+
+/**
+ * Benchmark for the MassListSpeciesGenerator on synthetic chain lists; compares the previous
+ * enumeration of the MassListExporter with the generator, and checks that both deliver the same
+ * species with the same elemental compositions
+ *
+ * usage: MassListSpeciesBenchmark [nrOfFAChains] [maxChainC] [maxChainDB]
+ */
+public class MassListSpeciesBenchmark
+{
+	private final static String[] PREFIXES = new String[]{"","O-","P-"};
+	private final static int ROUNDS = 3;
+	
+	public static void main(String[] args) throws Exception
+	{
+		int nrOfFAChains = args.length>0 ? Integer.parseInt(args[0]) : 3;
+		int maxChainC = args.length>1 ? Integer.parseInt(args[1]) : 66;
+		int maxChainDB = args.length>2 ? Integer.parseInt(args[2]) : 12;
+		ArrayList<FattyAcidVO> chainsFA = createSyntheticChains(LipidomicsConstants.CHAIN_TYPE_FA_ACYL, 12, 24, 6, 0);
+		ArrayList<AdductVO> adducts = new ArrayList<AdductVO>();
+		adducts.add(new AdductVO("NH4", "N1 H4", 1, null));
+		LipidClassVO lClassVO = new LipidClassVO("TEST", true, false, 0, 0, -1, -1, adducts, "C3 H5", nrOfFAChains*12,
+				maxChainC, 0, maxChainDB, nrOfFAChains, 0, null, null);
+		
+		MassListSpeciesGenerator generator = new MassListSpeciesGenerator(lClassVO, chainsFA, new ArrayList<FattyAcidVO>());
+		int nrOfSpecies = 0;
+		for (int i=lClassVO.getMinChainC(); i<=lClassVO.getMaxChainC(); i++)
+		{
+			for (int j=lClassVO.getMinChainDB(); j<=lClassVO.getMaxChainDB(); j++)
+			{
+				Hashtable<String,Hashtable<String,Integer>> oldElements = computeElementsFromChains(lClassVO, 
+						getPossCombis(nrOfFAChains, 0, i, j, 0, chainsFA, new ArrayList<FattyAcidVO>(), new ArrayList<FattyAcidVO>()));
+				ArrayList<MassListSpecies> species = generator.generateSpecies(i, j, 0);
+				if (oldElements.size()!=species.size())
+					throw new RuntimeException(i+":"+j+": different number of species: "+oldElements.size()+" vs "+species.size());
+				for (MassListSpecies spec : species)
+				{
+					String oldFormula = StaticUtils.getFormulaInHillNotation(oldElements.get(spec.getLabel()), false);
+					String newFormula = StaticUtils.getFormulaInHillNotation(generator.getElements(spec), false);
+					if (!oldFormula.equals(newFormula))
+						throw new RuntimeException(spec.getLabel()+i+":"+j+": different formulas: "+oldFormula+" vs "+newFormula);
+				}
+				nrOfSpecies += species.size();
+			}
+		}
+		System.out.println("species: "+nrOfSpecies);
+		
+		long oldTime = 0l;
+		long newTime = 0l;
+		for (int r=0; r!=ROUNDS; r++)
+		{
+			long time = System.nanoTime();
+			for (int i=lClassVO.getMinChainC(); i<=lClassVO.getMaxChainC(); i++)
+			{
+				for (int j=lClassVO.getMinChainDB(); j<=lClassVO.getMaxChainDB(); j++)
+				{
+					computeElementsFromChains(lClassVO, getPossCombis(nrOfFAChains, 0, i, j, 0, chainsFA, new ArrayList<FattyAcidVO>(), new ArrayList<FattyAcidVO>()));
+				}
+			}
+			oldTime += System.nanoTime()-time;
+			time = System.nanoTime();
+			new MassListSpeciesGenerator(lClassVO, chainsFA, new ArrayList<FattyAcidVO>()).generateSpecies(0, 0);
+			newTime += System.nanoTime()-time;
+		}
+		System.out.println("old "+(oldTime/ROUNDS/1000000l)+" ms; new "+(newTime/ROUNDS/1000000l)+" ms; speedup "+((float)oldTime/(float)newTime));
+	}
+	
+	/**
+	 * generates a chain list with every prefix for every carbon atom and double bond combination
+	 */
+	private static ArrayList<FattyAcidVO> createSyntheticChains(short chainType, int minC, int maxC, int maxDB, int ohNumber)
+	{
+		ArrayList<FattyAcidVO> chains = new ArrayList<FattyAcidVO>();
+		for (String prefix : PREFIXES)
+		{
+			for (int c=minC; c<=maxC; c++)
+			{
+				for (int db=0; db<=maxDB && db<c/2; db++)
+				{
+					int hydrogens = 2*c-2*db;
+					int oxygens = 2;
+					if (prefix.equals("O-"))
+					{
+						hydrogens += 2;
+						oxygens = 1;
+					}
+					else if (prefix.equals("P-"))
+					{
+						oxygens = 1;
+					}
+					String formula = "C"+c+" H"+hydrogens+" O"+oxygens;
+					chains.add(new FattyAcidVO(chainType, prefix, c, db, ohNumber, 0d, formula, ""));
+				}
+			}
+		}
+		return chains;
+	}
+	
+	/**
+	 * the enumeration of the MassListExporter before the MassListSpeciesGenerator
+	 */
+	private static ArrayList<ArrayList<FattyAcidVO>> getPossCombis(int numberOfFAChains, int numberOfLCBChains, int cAtoms, int dbs, int oxNum, 
+			ArrayList<FattyAcidVO> fas, ArrayList<FattyAcidVO> lcbs, ArrayList<FattyAcidVO> added)
+	{
+		ArrayList<ArrayList<FattyAcidVO>> combis = new ArrayList<ArrayList<FattyAcidVO>>();
+		int totalChains = numberOfFAChains + numberOfLCBChains;
+		ArrayList<FattyAcidVO> toIterate = fas;
+		int faMinus = 1;
+		int lcbMinus = 0;
+		if (numberOfFAChains == 0 && totalChains>0)
+		{
+			toIterate = lcbs;
+			faMinus = 0;
+			lcbMinus = 1;
+		}
+		int maxC = cAtoms;
+		int maxD = dbs;
+		int maxO = oxNum;
+		for (FattyAcidVO fa : added)
+		{
+			maxC -= fa.getcAtoms();
+			maxD -= fa.getDoubleBonds();
+			maxO -= fa.getOhNumber();
+		}
+		for (FattyAcidVO fa : toIterate)
+		{
+			if (fa.getcAtoms()<=maxC && fa.getDoubleBonds()<=maxD && fa.getOhNumber()<=maxO)
+			{
+				ArrayList<FattyAcidVO> toAdd = new ArrayList<FattyAcidVO>(added);
+				toAdd.add(fa);
+				if (totalChains>1)
+				{
+					combis.addAll(getPossCombis(numberOfFAChains-faMinus, numberOfLCBChains-lcbMinus, cAtoms, dbs, oxNum, fas, lcbs, toAdd));
+				}
+				else if (fa.getcAtoms()==maxC && fa.getDoubleBonds()==maxD && fa.getOhNumber()==maxO)
+				{
+					combis.add(toAdd);
+				}
+			}
+		}
+		return combis;
+	}
+	
+	private static Hashtable<String,Hashtable<String,Integer>> computeElementsFromChains(LipidClassVO lClassVO, ArrayList<ArrayList<FattyAcidVO>> filtered) 
+			throws Exception
+	{
+		Hashtable<String,Hashtable<String,Integer>> labelElements = new Hashtable<String,Hashtable<String,Integer>>();
+		for (ArrayList<FattyAcidVO> comb : filtered)
+		{
+			Vector<String> labels = new Vector<String>();
+			Hashtable<String,Integer> combElements = new Hashtable<String,Integer>(lClassVO.getHeadgroupFormula());
+			for (FattyAcidVO fa : comb)
+			{
+				Hashtable<String,Integer> formula = StaticUtils.categorizeFormula(fa.getFormula(), true);
+				for (String element : formula.keySet())
+				{
+					if (!combElements.containsKey(element)) combElements.put(element, 0);
+					combElements.put(element, combElements.get(element) + formula.get(element));
+				}
+				combElements.put("H", combElements.get("H")-1);
+				labels.add(fa.getPrefix());
+			}
+			Collections.sort(labels);
+			StringBuilder builder = new StringBuilder();
+			for (String label : labels) builder.append(label);
+			String labelID = builder.toString();
+			if (lClassVO.getNumberOfLCBChains()>0)
+			{
+				combElements.put("H", combElements.get("H")-lClassVO.getNumberOfFAChains());
+				combElements.put("O", combElements.get("O")-lClassVO.getNumberOfFAChains());
+			}
+			labelElements.put(labelID, combElements);
+		}
+		return labelElements;
+	}
+}
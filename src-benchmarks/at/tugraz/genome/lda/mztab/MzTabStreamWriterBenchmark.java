@@ -0,0 +1,152 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.mztab;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import de.isas.mztab2.io.MzTabNonValidatingWriter;
+import de.isas.mztab2.model.Assay;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MsRun;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.OptColumnMapping;
+import de.isas.mztab2.model.Parameter;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import de.isas.mztab2.model.Software;
+import de.isas.mztab2.model.SpectraRef;
+import de.isas.mztab2.model.StudyVariable;
+
+/**
+ * Benchmark for the MzTabStreamWriter on synthetic molecules; compares the output with the one of the
+ * MzTabNonValidatingWriter of the jmztab-m library that requires the complete object model in memory
+ *
+ * usage: MzTabStreamWriterBenchmark [nrOfMolecules] [nrOfRuns]
+ */
+public class MzTabStreamWriterBenchmark
+{
+
+  public static void main(String[] args) throws IOException
+  {
+    int nrOfMolecules = args.length>0 ? Integer.parseInt(args[0]) : 5000;
+    int nrOfRuns = args.length>1 ? Integer.parseInt(args[1]) : 50;
+    File dir = Files.createTempDirectory("mztabBenchmark").toFile();
+    File oldFile = new File(dir,"old.mztab");
+    File newFile = new File(dir,"new.mztab");
+    List<String> optColumns = Arrays.asList(MzTabExporter.OPT_LIPID_SPECIES,MzTabExporter.OPT_LIPID_LDA_SPECIES);
+
+    long time = System.nanoTime();
+    Metadata metadata = createMetadata(nrOfRuns);
+    MzTab mzTab = new MzTab();
+    mzTab.setMetadata(metadata);
+    for (int i=0; i!=nrOfMolecules; i++){
+      SmallMztabMolecule molecule = createMolecule(i, metadata);
+      for (SmallMoleculeSummary summary : molecule.getSummary()) mzTab.addSmallMoleculeSummaryItem(summary);
+      for (SmallMoleculeFeature feature : molecule.getFeatures()) mzTab.addSmallMoleculeFeatureItem(feature);
+      for (SmallMoleculeEvidence evidence : molecule.getEvidence()) mzTab.addSmallMoleculeEvidenceItem(evidence);
+    }
+    try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(oldFile), StandardCharsets.UTF_8)){
+      new MzTabNonValidatingWriter().write(out, mzTab);
+    }
+    long oldTime = System.nanoTime()-time;
+    mzTab = null;
+    
+    time = System.nanoTime();
+    metadata = createMetadata(nrOfRuns);
+    MzTabStreamWriter writer = new MzTabStreamWriter(newFile, metadata, optColumns, optColumns);
+    for (int i=0; i!=nrOfMolecules; i++)
+      writer.addMolecule(createMolecule(i, metadata));
+    writer.finish();
+    long newTime = System.nanoTime()-time;
+    
+    if (!Arrays.equals(Files.readAllBytes(oldFile.toPath()), Files.readAllBytes(newFile.toPath())))
+      throw new RuntimeException("The outputs of the writers are not the same: "+oldFile+" vs "+newFile);
+    System.out.println("object model: "+(oldTime/1000000l)+" ms; streaming: "+(newTime/1000000l)+" ms; file size: "+newFile.length()/1024l+" kB");
+    oldFile.delete();
+    newFile.delete();
+    dir.delete();
+  }
+  
+  private static Metadata createMetadata(int nrOfRuns){
+    Metadata metadata = new Metadata();
+    metadata.setMzTabID("1");
+    metadata.addSoftwareItem(new Software().id(1).parameter(new Parameter().name("LipidDataAnalyzer").value("benchmark")));
+    metadata.setQuantificationMethod(new Parameter().cvLabel("MS").cvAccession("MS:1002019").name("label free raw feature quantitation"));
+    metadata.setSmallMoleculeQuantificationUnit(new Parameter().cvLabel("PRIDE").cvAccession("PRIDE:0000330").name("Arbitrary quantification unit"));
+    metadata.setSmallMoleculeFeatureQuantificationUnit(new Parameter().cvLabel("PRIDE").cvAccession("PRIDE:0000330").name("Arbitrary quantification unit"));
+    metadata.setSmallMoleculeIdentificationReliability(new Parameter().cvLabel("MS").cvAccession("MS:1002896").name("compound identification confidence level"));
+    List<Parameter> idConfidenceMeasures = new ArrayList<Parameter>();
+    idConfidenceMeasures.add(new Parameter().id(1).cvLabel("MS").cvAccession("MS:1002890").name("fragmentation score"));
+    metadata.setIdConfidenceMeasure(idConfidenceMeasures);
+    StudyVariable studyVariable = new StudyVariable().id(1).name("undefined").description("undefined");
+    for (int i=1; i<=nrOfRuns; i++){
+      MsRun run = new MsRun().id(i).location("file://run"+i+".chrom");
+      run.setFormat(new Parameter().cvLabel("MS").cvAccession("MS:1002966").name("The Lipid Data Analyzer native chrom format."));
+      run.setIdFormat(new Parameter().cvLabel("MS").cvAccession("MS:1000776").name("scan number only nativeID format"));
+      run.setScanPolarity(Arrays.asList(new Parameter().cvLabel("MS").cvAccession("MS:1000130").name("positive scan")));
+      metadata.addMsRunItem(run);
+      Assay assay = new Assay().id(i);
+      assay.addMsRunRefItem(run);
+      metadata.addAssayItem(assay);
+      studyVariable.addAssayRefsItem(assay);
+    }
+    metadata.addStudyVariableItem(studyVariable);
+    return metadata;
+  }
+  
+  private static SmallMztabMolecule createMolecule(int index, Metadata metadata){
+    int id = index+1;
+    String species = "PC "+(30+index%20)+":"+(index%7);
+    List<Double> abundances = new ArrayList<Double>();
+    for (int i=0; i!=metadata.getAssay().size(); i++) abundances.add(1000d*(index+1)+i);
+    List<OptColumnMapping> opts = new ArrayList<OptColumnMapping>();
+    opts.add(new OptColumnMapping().identifier(MzTabExporter.OPT_LIPID_SPECIES).value(species));
+    opts.add(new OptColumnMapping().identifier(MzTabExporter.OPT_LIPID_LDA_SPECIES).value(species+"_"+index));
+    Vector<SmallMoleculeSummary> summaries = new Vector<SmallMoleculeSummary>();
+    summaries.add(new SmallMoleculeSummary().smlId(id).smfIdRefs(Arrays.asList(id)).databaseIdentifier(Arrays.asList("lda2:"+species))
+        .chemicalName(Arrays.asList(species)).reliability("2").abundanceAssay(abundances).abundanceStudyVariable(Arrays.asList(1000d*(index+1)))
+        .abundanceVariationStudyVariable(Arrays.asList(0.1d)).opt(opts));
+    Vector<SmallMoleculeFeature> features = new Vector<SmallMoleculeFeature>();
+    features.add(new SmallMoleculeFeature().smfId(id).smeIdRefs(Arrays.asList(id)).adductIon("[M+H]1+").expMassToCharge(700d+index*0.01d)
+        .charge(1).retentionTimeInSeconds(600d+index).abundanceAssay(abundances));
+    Vector<SmallMoleculeEvidence> evidence = new Vector<SmallMoleculeEvidence>();
+    evidence.add(new SmallMoleculeEvidence().smeId(id).evidenceInputId(String.valueOf(id)).databaseIdentifier("lda2:"+species).chemicalName(species)
+        .adductIon("[M+H]1+").expMassToCharge(700d+index*0.01d).charge(1).theoreticalMassToCharge(700d+index*0.01d)
+        .spectraRef(Arrays.asList(new SpectraRef().msRun(metadata.getMsRun().get(index%metadata.getMsRun().size())).reference("scan="+index)))
+        .identificationMethod(new Parameter().name("LipidDataAnalyzer").value("benchmark")).msLevel(new Parameter().cvLabel("MS").cvAccession("MS:1000511").name("ms level").value("2"))
+        .idConfidenceMeasure(Arrays.asList((Double)null)).rank(1).opt(opts));
+    return new SmallMztabMolecule(id+1,null,summaries,id+1,features,id+1,id+1,evidence);
+  }
+
+}
@@ -0,0 +1,110 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmark for the MzXMLMergerForWaters on synthetic Waters function files;
+ * checks as well that every offset of the written index points to the scan with the corresponding number
+ *
+ * usage: MzXMLMergerBenchmark [nrOfScans] [nrOfFunctions]
+ */
+public class MzXMLMergerBenchmark
+{
+
+  public static void main(String[] args) throws Exception
+  {
+    int nrOfScans = args.length>0 ? Integer.parseInt(args[0]) : 100000;
+    int nrOfFunctions = args.length>1 ? Integer.parseInt(args[1]) : 3;
+    File dir = Files.createTempDirectory("mzXMLMerger").toFile();
+    String baseFile = new File(dir,"test.mzXML").getAbsolutePath();
+    createSyntheticFiles(baseFile, nrOfFunctions, nrOfScans, 4711l);
+    long time = System.nanoTime();
+    MzXMLMergerForWaters merger = new MzXMLMergerForWaters(baseFile,nrOfFunctions);
+    merger.merge();
+    time = System.nanoTime()-time;
+    File merged = new File(merger.getMergedFileName());
+    System.out.println("merged "+(nrOfScans*nrOfFunctions)+" scans ("+(merged.length()/1024l/1024l)+" MB) in "+(time/1000000l)+" ms");
+    checkIndex(merged, nrOfScans*nrOfFunctions);
+    for (File file : dir.listFiles()) file.delete();
+    dir.delete();
+  }
+
+  /**
+   * generates one mzXML file per function; the first function contains MS1 scans, the other ones MS2 scans
+   */
+  private static void createSyntheticFiles(String baseFile, int nrOfFunctions, int nrOfScans, long seed) throws IOException{
+    Random random = new Random(seed);
+    for (int function=1; function<=nrOfFunctions; function++){
+      String fileName = baseFile;
+      if (function!=1) fileName += String.valueOf(function);
+      StringBuilder contents = new StringBuilder();
+      contents.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n");
+      contents.append("<mzXML xmlns=\"http://sashimi.sourceforge.net/schema_revision/mzXML_3.2\">\n");
+      contents.append("  <msRun scanCount=\""+nrOfScans+"\" startTime=\"PT0S\">\n");
+      double rt = 0d;
+      for (int i=1; i<=nrOfScans; i++){
+        rt += random.nextInt(3)*0.5d;
+        contents.append("    <scan num=\""+i+"\"\n");
+        contents.append("          msLevel=\""+(function==1 ? 1 : 2)+"\"\n");
+        contents.append("          retentionTime=\"PT"+rt+"S\">\n");
+        contents.append("      <peaks precision=\"32\">");
+        int length = random.nextInt(400);
+        for (int j=0; j!=length; j++) contents.append((char)('A'+random.nextInt(26)));
+        contents.append("</peaks>\n");
+        contents.append("    </scan>\n");
+      }
+      contents.append("  </msRun>\n");
+      contents.append("</mzXML>\n");
+      Files.write(new File(fileName).toPath(), contents.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  private static void checkIndex(File merged, int expectedScans) throws IOException{
+    String contents = new String(Files.readAllBytes(merged.toPath()),StandardCharsets.ISO_8859_1);
+    Matcher offsets = Pattern.compile("<offset id=\"(\\d+)\">(\\d+)</offset>").matcher(contents);
+    int count = 0;
+    while (offsets.find()){
+      count++;
+      if (Integer.parseInt(offsets.group(1))!=count) throw new RuntimeException("The scans are not numbered consecutively at scan "+count);
+      int offset = Integer.parseInt(offsets.group(2));
+      if (!contents.substring(offset, Math.min(contents.length(),offset+100)).trim().startsWith("<scan num=\""+offsets.group(1)+"\""))
+        throw new RuntimeException("The offset of scan "+offsets.group(1)+" does not point to the scan");
+    }
+    //scans of higher functions that precede the first MS1 scan are discarded
+    if (count>expectedScans) throw new RuntimeException("The index contains "+count+" scans instead of "+expectedScans);
+    Matcher indexOffset = Pattern.compile("<indexOffset>(\\d+)</indexOffset>").matcher(contents);
+    if (!indexOffset.find() || !contents.startsWith("  <index ",Integer.parseInt(indexOffset.group(1))))
+      throw new RuntimeException("The index offset does not point to the index");
+    System.out.println("index of "+count+" scans is correct");
+  }
+
+}
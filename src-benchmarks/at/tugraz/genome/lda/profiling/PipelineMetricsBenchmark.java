@@ -0,0 +1,90 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.profiling;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Benchmark for the overhead of the PipelineMetrics; records counters and timers from several threads with disabled and
+ * enabled metrics, checks the recorded counts, and prints the written report
+ *
+ * usage: PipelineMetricsBenchmark [nrOfOperations] [nrOfThreads]
+ */
+public class PipelineMetricsBenchmark
+{
+
+  private final static int ROUNDS = 3;
+
+  public static void main(String[] args) throws Exception
+  {
+    int nrOfOperations = args.length>0 ? Integer.parseInt(args[0]) : 2000000;
+    int nrOfThreads = args.length>1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    for (int i=0; i!=ROUNDS; i++){
+      PipelineMetrics.setEnabled(false);
+      long disabledTime = run(PipelineMetrics.create("benchmark", PipelineMetrics.STAGE_QUANTIFICATION), nrOfOperations, nrOfThreads);
+      PipelineMetrics.setEnabled(true);
+      PipelineMetrics metrics = PipelineMetrics.create("benchmark", PipelineMetrics.STAGE_QUANTIFICATION);
+      long enabledTime = run(metrics, nrOfOperations, nrOfThreads);
+      long expected = (long)nrOfOperations*(long)nrOfThreads;
+      if (metrics.getCounters().get("smoothings")!=expected)
+        throw new RuntimeException("Wrong counter value: "+metrics.getCounters().get("smoothings")+" instead of "+expected);
+      System.out.println("disabled: "+(disabledTime/1000000l)+" ms; enabled: "+(enabledTime/1000000l)+" ms; per operation: "+
+          ((float)enabledTime/(float)expected)+" ns");
+      if (i==ROUNDS-1){
+        File report = File.createTempFile("lda", PipelineMetrics.REPORT_SUFFIX);
+        metrics.finish(report);
+        System.out.println(new String(Files.readAllBytes(report.toPath())));
+        report.delete();
+      }
+    }
+  }
+  
+  private static long run(PipelineMetrics metrics, int nrOfOperations, int nrOfThreads) throws InterruptedException{
+    Thread[] threads = new Thread[nrOfThreads];
+    for (int i=0; i!=nrOfThreads; i++){
+      final int threadNr = i;
+      threads[i] = new Thread(){
+        public void run(){
+          metrics.bind();
+          PipelineMetrics.Timing classTiming = metrics.time(PipelineMetrics.GROUP_CLASS, "Class"+threadNr);
+          for (int j=0; j!=nrOfOperations; j++){
+            PipelineMetrics.current().increment("smoothings");
+            if (j%1000==0){
+              PipelineMetrics.Timing timing = metrics.time("msnCacheRead");
+              timing.stop();
+            }
+          }
+          classTiming.stop();
+          PipelineMetrics.unbind();
+        }
+      };
+    }
+    long time = System.nanoTime();
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+    return System.nanoTime()-time;
+  }
+
+}
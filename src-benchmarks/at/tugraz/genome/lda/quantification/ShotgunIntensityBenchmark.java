@@ -0,0 +1,149 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.quantification;
+
+import java.util.Random;
+import java.util.Vector;
+
+import at.tugraz.genome.maspectras.quantification.CgChromatogram;
+import at.tugraz.genome.maspectras.utils.Calculator;
+
+/**
+ * Benchmark for the shotgun intensity calculation on synthetic direct infusion chromatograms;
+ * compares the previous boxing/sorting implementation with the ShotgunIntensityCalculator
+ * and checks that both deliver the same values
+ *
+ * usage: ShotgunIntensityBenchmark [nrOfAnalytes] [nrOfScans] [nrOfIsotopes]
+ */
+public class ShotgunIntensityBenchmark
+{
+
+  private final static int WARMUP_ROUNDS = 3;
+  private final static int ROUNDS = 5;
+
+  public static void main(String[] args)
+  {
+    int nrOfAnalytes = args.length>0 ? Integer.parseInt(args[0]) : 2000;
+    int nrOfScans = args.length>1 ? Integer.parseInt(args[1]) : 1000;
+    int nrOfIsotopes = args.length>2 ? Integer.parseInt(args[2]) : 3;
+    CgChromatogram[][] chroms = createSyntheticChroms(nrOfAnalytes, nrOfScans, nrOfIsotopes, 4711l);
+
+    int[] types = new int[]{LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN,LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN,LipidomicsAnalyzer.SHOTGUN_TYPE_SUM};
+    String[] typeNames = new String[]{"mean","median","sum"};
+    for (int t=0; t!=types.length; t++){
+      checkEquality(chroms, types[t], typeNames[t]);
+      for (int i=0; i!=WARMUP_ROUNDS; i++){
+        runOld(chroms, types[t]);
+        runNew(chroms, types[t]);
+      }
+      long oldTime = 0l;
+      long newTime = 0l;
+      for (int i=0; i!=ROUNDS; i++){
+        long time = System.nanoTime();
+        runOld(chroms, types[t]);
+        oldTime += System.nanoTime()-time;
+        time = System.nanoTime();
+        runNew(chroms, types[t]);
+        newTime += System.nanoTime()-time;
+      }
+      System.out.println(typeNames[t]+": old "+(oldTime/ROUNDS/1000000l)+" ms; new "+(newTime/ROUNDS/1000000l)+" ms; speedup "+
+          ((float)oldTime/(float)newTime));
+    }
+  }
+
+  /**
+   * generates chromatograms resembling direct infusion data: a plateau with noise and occasional drop outs
+   */
+  private static CgChromatogram[][] createSyntheticChroms(int nrOfAnalytes, int nrOfScans, int nrOfIsotopes, long seed){
+    Random random = new Random(seed);
+    CgChromatogram[][] chroms = new CgChromatogram[nrOfAnalytes][nrOfIsotopes];
+    for (int i=0; i!=nrOfAnalytes; i++){
+      float level = 1000f+random.nextFloat()*1000000f;
+      for (int j=0; j!=nrOfIsotopes; j++){
+        CgChromatogram chrom = new CgChromatogram(nrOfScans);
+        float isoLevel = level/(float)(j+1);
+        for (int k=0; k!=nrOfScans; k++){
+          chrom.Value[k][0] = k*0.5f;
+          if (random.nextFloat()<0.1f) chrom.Value[k][1] = 0f;
+          else chrom.Value[k][1] = Math.max(0f,isoLevel+(float)random.nextGaussian()*isoLevel*0.2f);
+        }
+        chroms[i][j] = chrom;
+      }
+    }
+    return chroms;
+  }
+
+  private static void checkEquality(CgChromatogram[][] chroms, int type, String typeName){
+    ShotgunIntensityCalculator calculator = new ShotgunIntensityCalculator(type, true, 0f);
+    for (int i=0; i!=chroms.length; i++){
+      for (int j=0; j!=chroms[i].length; j++){
+        float oldValue = calculateOld(chroms[i][j], type, true);
+        float newValue = calculator.calculateIntensity(chroms[i][j].Value);
+        if (Float.compare(oldValue, newValue)!=0)
+          throw new RuntimeException(typeName+": different values for analyte "+i+" isotope "+j+": "+oldValue+" vs "+newValue);
+      }
+    }
+  }
+
+  private static float runOld(CgChromatogram[][] chroms, int type){
+    float total = 0f;
+    for (int i=0; i!=chroms.length; i++){
+      for (int j=0; j!=chroms[i].length; j++) total += calculateOld(chroms[i][j], type, true);
+    }
+    return total;
+  }
+
+  private static float runNew(CgChromatogram[][] chroms, int type){
+    ShotgunIntensityCalculator calculator = new ShotgunIntensityCalculator(type, true, 0f);
+    float total = 0f;
+    for (int i=0; i!=chroms.length; i++){
+      for (int j=0; j!=chroms[i].length; j++) total += calculator.calculateIntensity(chroms[i][j].Value);
+    }
+    return total;
+  }
+
+  /**
+   * the implementation before the ShotgunIntensityCalculator
+   */
+  private static float calculateOld(CgChromatogram cgChrom, int shotgunType, boolean removeZeros){
+    Vector<Float> ints = new Vector<Float>();
+    float sum = 0f;
+    for (int i=0; i!=cgChrom.Value.length; i++){
+      sum += cgChrom.Value[i][1];
+      if (!removeZeros || cgChrom.Value[i][1]>0f)
+        ints.add(cgChrom.Value[i][1]);
+    }
+    float intensity = 0f;
+    float[] intValues = new float[ints.size()];
+    for (int i=0; i!=ints.size(); i++) intValues[i] = ints.get(i);
+    if (shotgunType==LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN)
+      intensity = Calculator.mean(intValues);
+    else if (shotgunType==LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN)
+      intensity = Calculator.median(intValues);
+    else if (shotgunType==LipidomicsAnalyzer.SHOTGUN_TYPE_SUM)
+      intensity = sum;
+    return intensity;
+  }
+
+}
@@ -0,0 +1,222 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.utils;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.exception.LMException;
+import at.tugraz.genome.lda.msn.ShareFitRecorder;
+import at.tugraz.genome.lda.msn.ShareFitRecorder.RecordedFit;
+
+/**
+ * Benchmark for the chain combination share prediction; compares the LMLinearFaCombination with the
+ * NonNegativeFaCombination regarding time, residuals, negative shares and failed fits. The cases are either
+ * recorded share fits of a quantification run with -Dlda.shareFitRecording=[file] (see ShareFitRecorder),
+ * or synthetic TG- and CL-like cases, each consisting of all combinations of a set of chains, a few of them
+ * being present, and the summed chain intensities
+ *
+ * usage: FaCombinationBenchmark [recordingFile]
+ *        FaCombinationBenchmark [nrOfCases] [nrOfChains] [nrOfPresentCombinations]
+ */
+public class FaCombinationBenchmark
+{
+
+  private final static int WARMUP_ROUNDS = 1;
+  private final static int ROUNDS = 3;
+
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length==1 && !args[0].matches("\\d+")){
+      Vector<float[]> observations = new Vector<float[]>();
+      Vector<int[][]> chainIndices = new Vector<int[][]>();
+      Vector<float[][]> chainCounts = new Vector<float[][]>();
+      for (RecordedFit fit : ShareFitRecorder.read(args[0])){
+        observations.add(fit.getObservations());
+        chainIndices.add(fit.getChainIndices());
+        chainCounts.add(fit.getChainCounts());
+      }
+      if (observations.size()==0){
+        System.out.println("There are no recorded share fits in "+args[0]);
+        return;
+      }
+      compare("recorded", observations, chainIndices, chainCounts);
+      return;
+    }
+    int nrOfCases = args.length>0 ? Integer.parseInt(args[0]) : 10;
+    int nrOfChains = args.length>1 ? Integer.parseInt(args[1]) : 5;
+    int nrOfPresent = args.length>2 ? Integer.parseInt(args[2]) : 4;
+    Random random = new Random(4711l);
+    for (int chainsPerCombi=3; chainsPerCombi!=5; chainsPerCombi++){
+      Vector<float[]> observations = new Vector<float[]>();
+      Vector<int[][]> chainIndices = new Vector<int[][]>();
+      Vector<float[][]> chainCounts = new Vector<float[][]>();
+      for (int i=0; i!=nrOfCases; i++){
+        int[][] caseCombis = createCombinations(nrOfChains, chainsPerCombi);
+        observations.add(createIntensities(random, caseCombis, nrOfChains, nrOfPresent));
+        int[][] indices = new int[caseCombis.length][];
+        float[][] counts = new float[caseCombis.length][];
+        toSparse(caseCombis, nrOfChains, indices, counts);
+        chainIndices.add(indices);
+        chainCounts.add(counts);
+      }
+      compare((chainsPerCombi==3 ? "TG" : "CL")+" ("+chainIndices.get(0).length+" combinations)", observations, chainIndices, chainCounts);
+    }
+  }
+  
+  private static void compare(String name, Vector<float[]> observations, Vector<int[][]> chainIndices, Vector<float[][]> chainCounts){
+    int nrOfCases = observations.size();
+    for (int i=0; i!=WARMUP_ROUNDS; i++){
+      runLM(observations, chainIndices, chainCounts, null);
+      runNNLS(observations, chainIndices, chainCounts, null);
+    }
+    double[] lmStats = new double[3];
+    double[] nnlsStats = new double[2];
+    long lmTime = System.nanoTime();
+    for (int i=0; i!=ROUNDS; i++) runLM(observations, chainIndices, chainCounts, lmStats);
+    lmTime = System.nanoTime()-lmTime;
+    long nnlsTime = System.nanoTime();
+    for (int i=0; i!=ROUNDS; i++) runNNLS(observations, chainIndices, chainCounts, nnlsStats);
+    nnlsTime = System.nanoTime()-nnlsTime;
+    int lmFitted = nrOfCases-(int)(lmStats[2]/ROUNDS);
+    System.out.println(name+", "+nrOfCases+" cases: LM "+((float)lmTime/(float)(ROUNDS*nrOfCases)/1000000f)+
+        " ms per case, mean relative residual "+(lmFitted>0 ? lmStats[0]/(ROUNDS*lmFitted) : Double.NaN)+", negative shares "+(int)(lmStats[1]/ROUNDS)+
+        ", failed "+(int)(lmStats[2]/ROUNDS)+"; NNLS "+((float)nnlsTime/(float)(ROUNDS*nrOfCases)/1000000f)+" ms per case, mean relative residual "+
+        (nnlsStats[0]/(ROUNDS*nrOfCases))+", not converged "+(int)(nnlsStats[1]/ROUNDS)+"; speedup "+((float)lmTime/(float)nnlsTime));
+  }
+
+  /**
+   * creates all combinations of chains (with repetition) - the chain indices of every combination are sorted ascendingly
+   */
+  private static int[][] createCombinations(int nrOfChains, int chainsPerCombi){
+    Vector<int[]> combis = new Vector<int[]>();
+    int[] combi = new int[chainsPerCombi];
+    while (true){
+      combis.add(combi.clone());
+      int pos = chainsPerCombi-1;
+      while (pos>=0 && combi[pos]==nrOfChains-1) pos--;
+      if (pos<0) break;
+      combi[pos]++;
+      for (int i=pos+1; i!=chainsPerCombi; i++) combi[i] = combi[pos];
+    }
+    return combis.toArray(new int[combis.size()][]);
+  }
+
+  /**
+   * sums the chain intensities of a few present combinations, and adds some noise
+   */
+  private static float[] createIntensities(Random random, int[][] combis, int nrOfChains, int nrOfPresent){
+    float[] intensities = new float[nrOfChains];
+    for (int i=0; i!=nrOfPresent; i++){
+      int[] combi = combis[random.nextInt(combis.length)];
+      float share = 10000f+random.nextFloat()*1000000f;
+      for (int chain : combi) intensities[chain] += share;
+    }
+    for (int i=0; i!=nrOfChains; i++) intensities[i] = Math.max(0f, intensities[i]*(1f+(float)random.nextGaussian()*0.05f));
+    return intensities;
+  }
+  
+  /**
+   * converts the chains of the combinations to the sparse input of the NonNegativeFaCombination
+   */
+  private static void toSparse(int[][] combis, int nrOfChains, int[][] chainIndices, float[][] chainCounts){
+    for (int j=0; j!=combis.length; j++){
+      float[] dense = new float[nrOfChains];
+      for (int chain : combis[j]) dense[chain] += 1f;
+      int count = 0;
+      for (int k=0; k!=nrOfChains; k++) if (dense[k]>0f) count++;
+      chainIndices[j] = new int[count];
+      chainCounts[j] = new float[count];
+      count = 0;
+      for (int k=0; k!=nrOfChains; k++){
+        if (dense[k]>0f){
+          chainIndices[j][count] = k;
+          chainCounts[j][count] = dense[k];
+          count++;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the dense chain x combination matrix of the LMLinearFaCombination
+   */
+  private static float[][] createDenseMatrix(int nrOfChains, int[][] chainIndices, float[][] chainCounts){
+    float[][] values = new float[nrOfChains][chainIndices.length];
+    for (int j=0; j!=chainIndices.length; j++){
+      for (int k=0; k!=chainIndices[j].length; k++) values[chainIndices[j][k]][j] += chainCounts[j][k];
+    }
+    return values;
+  }
+
+  private static void runLM(Vector<float[]> observations, Vector<int[][]> chainIndices, Vector<float[][]> chainCounts, double[] stats){
+    for (int i=0; i!=observations.size(); i++){
+      float[][] values = createDenseMatrix(observations.get(i).length, chainIndices.get(i), chainCounts.get(i));
+      LMLinearFaCombination optimizer = new LMLinearFaCombination(values, observations.get(i));
+      try{
+        optimizer.fit();
+      } catch (LMException ex){
+        if (stats!=null) stats[2]++;
+        continue;
+      }
+      if (stats==null) continue;
+      double[] params = new double[chainIndices.get(i).length];
+      for (int j=0; j!=params.length; j++){
+        params[j] = optimizer.getResultParams().A[j][0];
+        if (params[j]<0d) stats[1]++;
+      }
+      stats[0] += calculateRelativeResidual(observations.get(i), chainIndices.get(i), chainCounts.get(i), params);
+    }
+  }
+
+  private static void runNNLS(Vector<float[]> observations, Vector<int[][]> chainIndices, Vector<float[][]> chainCounts, double[] stats){
+    for (int i=0; i!=observations.size(); i++){
+      NonNegativeFaCombination optimizer = new NonNegativeFaCombination(observations.get(i), chainIndices.get(i), chainCounts.get(i));
+      optimizer.fit();
+      if (stats==null) continue;
+      if (!optimizer.isConverged()) stats[1]++;
+      stats[0] += calculateRelativeResidual(observations.get(i), chainIndices.get(i), chainCounts.get(i), optimizer.getResultParams());
+    }
+  }
+
+  /**
+   * @return the euclidean norm of the residuals relative to the norm of the intensities
+   */
+  private static double calculateRelativeResidual(float[] intensities, int[][] chainIndices, float[][] chainCounts, double[] params){
+    double[] fitted = new double[intensities.length];
+    for (int j=0; j!=chainIndices.length; j++){
+      for (int k=0; k!=chainIndices[j].length; k++) fitted[chainIndices[j][k]] += chainCounts[j][k]*params[j];
+    }
+    double residual = 0d;
+    double norm = 0d;
+    for (int i=0; i!=intensities.length; i++){
+      residual += (fitted[i]-intensities[i])*(fitted[i]-intensities[i]);
+      norm += intensities[i]*intensities[i];
+    }
+    return norm>0d ? Math.sqrt(residual/norm) : Math.sqrt(residual);
+  }
+
+}
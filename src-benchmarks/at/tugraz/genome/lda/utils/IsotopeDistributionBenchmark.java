@@ -0,0 +1,165 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.utils;
+
+import java.util.Random;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.Settings;
+import at.tugraz.genome.maspectras.parser.exceptions.SpectrummillParserException;
+import at.tugraz.genome.maspectras.parser.spectrummill.ElementConfigParser;
+
+/**
+ * Benchmark for the IsotopeDistributionService on synthetic chemical formulas resembling a mass list
+ * (the same formulas occur for several adducts and classes); compares the distributions of the
+ * ElementConfigParser with the ones of the service, and checks that both deliver the same values;
+ * the enumeration of the ElementConfigParser misses a few combinations of different isotopes of the same element,
+ * thus, deviations below TOLERANCE in relation to the most abundant isotope are accepted
+ *
+ * usage: IsotopeDistributionBenchmark [nrOfRows] [amountOfIsotopes] [isotopesMustMatch] [nrOfThreads]
+ */
+public class IsotopeDistributionBenchmark
+{
+  /** the tolerated deviation of the normalized values*/
+  private final static double TOLERANCE = 0.000001d;
+  
+  private final static String[] ADDUCT_ELEMENTS = new String[]{"H1","Na1","N1 H4","Li1","Cl1","S1"};
+
+  public static void main(String[] args) throws SpectrummillParserException
+  {
+    int nrOfRows = args.length>0 ? Integer.parseInt(args[0]) : 5000;
+    int amountOfIsotopes = args.length>1 ? Integer.parseInt(args[1]) : 3;
+    int isotopesMustMatch = args.length>2 ? Integer.parseInt(args[2]) : 2;
+    int nrOfThreads = args.length>3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+    ElementConfigParser elementParser = Settings.getElementParser();
+    Vector<String> formulas = createSyntheticFormulas(nrOfRows, new Random(4711l));
+
+    long time = System.nanoTime();
+    Vector<Object[]> oldDistris = new Vector<Object[]>();
+    for (String formula : formulas) oldDistris.add(getTheoreticalIsoDistributionsOld(elementParser, isotopesMustMatch, amountOfIsotopes, formula));
+    long oldTime = System.nanoTime()-time;
+
+    time = System.nanoTime();
+    IsotopeDistributionService service = new IsotopeDistributionService(elementParser);
+    service.fill(formulas, Math.max(amountOfIsotopes,isotopesMustMatch)+1, nrOfThreads);
+    Vector<Object[]> newDistris = new Vector<Object[]>();
+    for (String formula : formulas) newDistris.add(service.getTheoreticalIsoDistributions(formula, isotopesMustMatch, amountOfIsotopes));
+    long newTime = System.nanoTime()-time;
+
+    double maxDeviation = 0d;
+    for (int i=0; i!=formulas.size(); i++) maxDeviation = Math.max(maxDeviation,compare(formulas.get(i), oldDistris.get(i), newDistris.get(i)));
+    System.out.println("highest deviation of a normalized value: "+maxDeviation);
+    System.out.println(formulas.size()+" rows: ElementConfigParser "+(oldTime/1000000l)+" ms; service "+(newTime/1000000l)+" ms; speedup "+
+        ((float)oldTime/(float)newTime));
+  }
+
+  /**
+   * generates formulas of lipid-like species, where every species occurs with several adducts
+   */
+  private static Vector<String> createSyntheticFormulas(int nrOfRows, Random random){
+    Vector<String> formulas = new Vector<String>();
+    while (formulas.size()<nrOfRows){
+      int carbons = 20+random.nextInt(50);
+      int hydrogens = carbons+random.nextInt(carbons);
+      int oxygens = 2+random.nextInt(8);
+      boolean phosphate = random.nextBoolean();
+      for (String adduct : ADDUCT_ELEMENTS){
+        String formula = "C"+carbons+" H"+hydrogens+" N1 O"+oxygens+(phosphate ? " P1" : "")+" "+adduct;
+        formulas.add(formula);
+      }
+    }
+    formulas.setSize(nrOfRows);
+    return formulas;
+  }
+
+  private static double compare(String formula, Object[] oldDistri, Object[] newDistri){
+    double maxDeviation = 0d;
+    for (int i=0; i!=2; i++){
+      @SuppressWarnings("unchecked")
+      Vector<Double> oldValues = (Vector<Double>)oldDistri[i];
+      @SuppressWarnings("unchecked")
+      Vector<Double> newValues = (Vector<Double>)newDistri[i];
+      if (oldValues.size()!=newValues.size())
+        throw new RuntimeException(formula+": different number of isotopes: "+oldValues+" vs "+newValues);
+      for (int j=0; j!=oldValues.size(); j++){
+        double deviation = Math.abs(oldValues.get(j)-newValues.get(j));
+        if (deviation>TOLERANCE)
+          throw new RuntimeException(formula+": different values: "+oldValues+" vs "+newValues);
+        maxDeviation = Math.max(maxDeviation, deviation);
+      }
+    }
+    if (!oldDistri[2].equals(newDistri[2]))
+      throw new RuntimeException(formula+": different negative start values: "+oldDistri[2]+" vs "+newDistri[2]);
+    return maxDeviation;
+  }
+
+  /**
+   * the implementation of MassListParser before the IsotopeDistributionService
+   */
+  private static Object[] getTheoreticalIsoDistributionsOld(ElementConfigParser elementParser, int isotopesMustMatch, int amountOfIsotopes, String chemicalFormula) throws SpectrummillParserException{  
+    boolean negativeDistribution = false;
+    Vector<Double> probabs = new Vector<Double>();
+    if (amountOfIsotopes<isotopesMustMatch)
+      amountOfIsotopes = isotopesMustMatch;
+    if (amountOfIsotopes>0){
+      Vector<Vector<Double>> bothDistris = elementParser.calculateChemicalFormulaIntensityDistribution(chemicalFormula, amountOfIsotopes+1, false);
+      probabs = bothDistris.get(0);
+      if (bothDistris.size()>1){
+        Vector<Double> negDistri = bothDistris.get(1);
+        if (StaticUtils.useNegativeDistribution(probabs,negDistri)){
+          probabs = negDistri;
+          negativeDistribution = true;
+        }
+      }
+    }else{
+      probabs.add(1d);
+    }
+    Vector<Double> mustMatchProbabs = new Vector<Double>();
+    if (isotopesMustMatch>0){
+      if (amountOfIsotopes == isotopesMustMatch){
+        mustMatchProbabs = new Vector<Double>(probabs);
+      }else{
+        Vector<Vector<Double>> bothDistris = elementParser.calculateChemicalFormulaIntensityDistribution(chemicalFormula, isotopesMustMatch+1, false);
+        mustMatchProbabs = bothDistris.get(0);
+        if (bothDistris.size()>1){
+          Vector<Double> negDistri = bothDistris.get(1);
+          if (StaticUtils.useNegativeDistribution(mustMatchProbabs,negDistri)){
+            mustMatchProbabs = negDistri;
+            negativeDistribution = true;
+          }
+        }
+      }
+    }
+    int negativeStartValue = 0;
+    if (negativeDistribution){
+      negativeStartValue = (mustMatchProbabs.size()*-1)+1;
+    }
+    Object[] distris = new Object[3];
+    distris[0] = mustMatchProbabs;
+    distris[1] = probabs;
+    distris[2] = negativeStartValue;
+    return distris;
+  }
+
+}
@@ -0,0 +1,166 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.utils;
+
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import at.tugraz.genome.lda.exception.LMException;
+
+/**
+ * Benchmark for the Levenberg-Marquardt models used for the retention time post processing;
+ * fits every LM model on synthetic retention time series (carbon atoms, double bonds, OH) and
+ * measures the time per fit - sequentially and for independent class models in parallel
+ *
+ * usage: LevenbergMarquardtBenchmark [nrOfClasses] [nrOfHitsPerClass] [nrOfThreads]
+ */
+public class LevenbergMarquardtBenchmark
+{
+
+  private final static int WARMUP_ROUNDS = 3;
+  private final static int ROUNDS = 5;
+  
+  private final static String[] MODEL_NAMES = new String[]{"LMAsymptDecayTwoVariables","LMAsymptVarDecayTwoVariables","LMLogDecayTwoVariables",
+      "LMEulerTwoVariables","LMQuadraticTwoVariables","LMAsymptDecayThreeVariables","LMAsymptVarDecayThreeVariables","LMLogDecayThreeVariables"};
+
+  public static void main(String[] args) throws Exception
+  {
+    int nrOfClasses = args.length>0 ? Integer.parseInt(args[0]) : 40;
+    int nrOfHits = args.length>1 ? Integer.parseInt(args[1]) : 60;
+    int nrOfThreads = args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    Vector<float[][]> values = new Vector<float[][]>();
+    Vector<float[]> rts = new Vector<float[]>();
+    Random random = new Random(4711l);
+    for (int i=0; i!=nrOfClasses; i++){
+      float[][] classValues = new float[nrOfHits][3];
+      float[] classRts = new float[nrOfHits];
+      createSyntheticRtSeries(random, classValues, classRts);
+      values.add(classValues);
+      rts.add(classRts);
+    }
+    
+    for (int m=0; m!=MODEL_NAMES.length; m++){
+      for (int i=0; i!=WARMUP_ROUNDS; i++) fitAll(m, values, rts);
+      long time = System.nanoTime();
+      int failed = 0;
+      for (int i=0; i!=ROUNDS; i++) failed = fitAll(m, values, rts);
+      time = System.nanoTime()-time;
+      System.out.println(MODEL_NAMES[m]+": "+((float)time/(float)(ROUNDS*nrOfClasses)/1000000f)+" ms per fit; not fittable: "+failed+"/"+nrOfClasses);
+    }
+    
+    // the class models are independent of each other - this is how the PostQuantificationProcessor fits them
+    for (int i=0; i!=WARMUP_ROUNDS; i++) fitAllInParallel(values, rts, nrOfThreads);
+    long sequential = System.nanoTime();
+    for (int i=0; i!=ROUNDS; i++){
+      for (int m=0; m!=MODEL_NAMES.length; m++) fitAll(m, values, rts);
+    }
+    sequential = System.nanoTime()-sequential;
+    long parallel = System.nanoTime();
+    for (int i=0; i!=ROUNDS; i++) fitAllInParallel(values, rts, nrOfThreads);
+    parallel = System.nanoTime()-parallel;
+    System.out.println("all models: sequential "+(sequential/ROUNDS/1000000l)+" ms; "+nrOfThreads+" threads "+(parallel/ROUNDS/1000000l)+" ms; speedup "+
+        ((float)sequential/(float)parallel));
+  }
+  
+  /**
+   * generates a retention time series resembling a lipid class: the RT increases with the chain length and decreases with
+   * the number of double bonds and hydroxylations
+   */
+  private static void createSyntheticRtSeries(Random random, float[][] values, float[] rts){
+    float offset = 2f+random.nextFloat()*10f;
+    float cSlope = 0.5f+random.nextFloat();
+    float dbSlope = 0.8f+random.nextFloat();
+    for (int i=0; i!=values.length; i++){
+      values[i][0] = 12+random.nextInt(14);
+      values[i][1] = random.nextInt(7);
+      values[i][2] = random.nextInt(3);
+      rts[i] = offset+cSlope*values[i][0]-dbSlope*values[i][1]-0.6f*values[i][2]+(float)random.nextGaussian()*0.2f;
+    }
+  }
+  
+  /**
+   * creates the optimizer for a model
+   */
+  private static LevenbergMarquardtOptimizer createOptimizer(int model, float[][] values, float[] rts){
+    String name = MODEL_NAMES[model];
+    float[][] modelValues = values;
+    if (name.endsWith("TwoVariables")){
+      modelValues = new float[values.length][2];
+      for (int i=0; i!=values.length; i++){
+        modelValues[i][0] = values[i][0];
+        modelValues[i][1] = values[i][1];
+      }
+    }
+    if (name.equals("LMAsymptDecayTwoVariables")) return new LMAsymptDecayTwoVariables(modelValues,rts,null);
+    else if (name.equals("LMAsymptVarDecayTwoVariables")) return new LMAsymptVarDecayTwoVariables(modelValues,rts,null);
+    else if (name.equals("LMLogDecayTwoVariables")) return new LMLogDecayTwoVariables(modelValues,rts,null);
+    else if (name.equals("LMEulerTwoVariables")) return new LMEulerTwoVariables(modelValues,rts,null);
+    else if (name.equals("LMQuadraticTwoVariables")) return new LMQuadraticTwoVariables(modelValues,rts,null);
+    else if (name.equals("LMAsymptDecayThreeVariables")) return new LMAsymptDecayThreeVariables(modelValues,rts,null);
+    else if (name.equals("LMAsymptVarDecayThreeVariables")) return new LMAsymptVarDecayThreeVariables(modelValues,rts,null);
+    else return new LMLogDecayThreeVariables(modelValues,rts,null);
+  }
+  
+  /**
+   * fits a model for every class
+   * @return the number of classes where the model could not be fitted
+   */
+  private static int fitAll(int model, Vector<float[][]> values, Vector<float[]> rts){
+    int failed = 0;
+    for (int i=0; i!=values.size(); i++){
+      if (!fit(model, values.get(i), rts.get(i))) failed++;
+    }
+    return failed;
+  }
+  
+  private static boolean fit(int model, float[][] values, float[] rts){
+    try{
+      createOptimizer(model, values, rts).fit();
+      return true;
+    } catch (LMException | RuntimeException ex){
+      return false;
+    }
+  }
+  
+  private static void fitAllInParallel(Vector<float[][]> values, Vector<float[]> rts, int nrOfThreads) throws Exception{
+    ExecutorService threadpool = Executors.newFixedThreadPool(nrOfThreads);
+    Vector<Future<Void>> futures = new Vector<Future<Void>>();
+    for (int i=0; i!=values.size(); i++){
+      final int index = i;
+      futures.add(threadpool.submit(new Callable<Void>() {
+        public Void call() {
+          for (int m=0; m!=MODEL_NAMES.length; m++) fit(m, values.get(index), rts.get(index));
+          return null;
+        }
+      }));
+    }
+    threadpool.shutdown();
+    for (Future<Void> future : futures) future.get();
+  }
+
+}
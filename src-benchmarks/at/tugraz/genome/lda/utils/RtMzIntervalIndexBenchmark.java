@@ -0,0 +1,78 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.utils;
+
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Benchmark for the RtMzIntervalIndex on synthetic peaks; compares the pairwise overlap
+ * check with the overlap join of the index and checks that both deliver the same pairs
+ *
+ * usage: RtMzIntervalIndexBenchmark [nrOfHits]
+ */
+public class RtMzIntervalIndexBenchmark
+{
+
+  public static void main(String[] args)
+  {
+    int nrOfHits = args.length>0 ? Integer.parseInt(args[0]) : 100000;
+    Random random = new Random(4711l);
+    float[][] peaks = new float[nrOfHits][4];
+    for (int i=0; i!=nrOfHits; i++){
+      float rt = random.nextFloat()*60f;
+      float width = 0.05f+random.nextFloat()*0.5f;
+      float mz = 400f+random.nextFloat()*800f;
+      peaks[i][0] = rt-width/2f;
+      peaks[i][1] = rt+width/2f;
+      peaks[i][2] = mz-0.01f;
+      peaks[i][3] = mz+0.01f;
+    }
+
+    long time = System.nanoTime();
+    RtMzIntervalIndex<Integer> index = new RtMzIntervalIndex<Integer>(nrOfHits);
+    for (int i=0; i!=nrOfHits; i++) index.add(peaks[i][0], peaks[i][1], peaks[i][2], peaks[i][3], i);
+    index.build();
+    Vector<int[]> pairs = index.selfJoin();
+    long indexTime = System.nanoTime()-time;
+
+    time = System.nanoTime();
+    int count = 0;
+    for (int i=0; i!=nrOfHits; i++){
+      for (int j=(i+1); j<nrOfHits; j++){
+        if (peaks[i][0]<=peaks[j][1] && peaks[i][1]>=peaks[j][0] && peaks[i][2]<=peaks[j][3] && peaks[i][3]>=peaks[j][2]){
+          int[] pair = pairs.get(count);
+          if (pair[0]!=i || pair[1]!=j)
+            throw new RuntimeException("The index delivers a different pair: "+pair[0]+"/"+pair[1]+" instead of "+i+"/"+j);
+          count++;
+        }
+      }
+    }
+    long pairwiseTime = System.nanoTime()-time;
+    if (count!=pairs.size())
+      throw new RuntimeException("The index delivers "+pairs.size()+" pairs instead of "+count);
+    System.out.println(nrOfHits+" hits; "+count+" overlapping pairs; pairwise "+(pairwiseTime/1000000l)+" ms; index "+(indexTime/1000000l)+" ms");
+  }
+
+}
@@ -8,16 +8,10 @@ import java.math.BigDecimal;
 import java.util.Hashtable;
 import java.util.Vector;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
 
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.parser.LDAResultPrefetcher;
 import at.tugraz.genome.lda.LipidomicsConstants;
 import at.tugraz.genome.lda.exception.ChemicalFormulaException;
 import at.tugraz.genome.lda.exception.ExcelInputFileException;
@@ -31,6 +25,14 @@ import at.tugraz.genome.lda.utils.StaticUtils;
 import at.tugraz.genome.maspectras.quantification.CgProbe;
 import at.tugraz.genome.maspectras.utils.Calculator;
 
+/**
+ * Writes the relative areas of the chain combinations of all LDA result files in the current directory to one overview
+ * file (one sheet per result file). The result files are read in parallel - the number of threads may be provided as
+ * argument (default: number of processors); each sheet is written to the file as soon as its result file is processed.
+ * 
+ * @author Juergen Hartler
+ *
+ */
 public class CombiExtractor
 {
 
@@ -44,55 +46,61 @@ public class CombiExtractor
   private final static String COLUMN_MOLSPECIES = "Chains Composition";
   private final static String COLUMN_LDA_RESULT = "LDA [%]";
 
+  //specification of column sequence
+  private final static int FILE_COLUMN = 0;
+  private final static int SPECIES_COLUMN = 1;
+  private final static int RT_COLUMN = 2;
+  private final static int FORMULA_COLUMN = 3;
+  private final static int MZ_COLUMN = 4;
+  private final static int MOL_SPECIES_COLUMN = 5;
+  private final static int FIRST_CHAIN_COLUMN = 6;
+  
+  /** the number of threads reading the result files*/
+  private int threads_;
   
   public static void main(String[] args)
   {
-    new CombiExtractor();  
+    int threads = Runtime.getRuntime().availableProcessors();
+    if (args!=null && args.length>0){
+      try{
+        threads = Math.max(1, Integer.parseInt(args[0]));
+      }catch (NumberFormatException nfx){
+        System.out.println("The number of threads must be integer format!");
+        return;
+      }
+    }
+    new CombiExtractor(threads);  
   }
   
   public CombiExtractor() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * @param threads the number of threads reading the result files
+   */
+  public CombiExtractor(int threads) {
+    threads_ = threads;
     convertLDAResultCombisToOverviewExel();
   }
   
   private void convertLDAResultCombisToOverviewExel() {
-    
-    //specification of column sequence
-    int fileColumn = 0;
-    int speciesColumn = 1;
-    int rtColumn = 2;
-    int formulaColumn = 3;
-    int mzColumn = 4;
-    int molSpeciesColumn = 5;
-    int firstChainColumn = 6;
-    
     File dir = new File(System.getProperty("user.dir"));
     String resultFilename = "CombinationOverview.xlsx";
     System.out.println(dir);
     String outFilename = dir+File.separator+resultFilename;
-    BufferedOutputStream out = null;
-    Workbook resultWorkbook = null;
-    try {
-      out = new BufferedOutputStream(new FileOutputStream(outFilename));
-      resultWorkbook = new XSSFWorkbook();
-      CellStyle headerStyle = getHeaderStyle(resultWorkbook);
-      
-      String longestLipidClass = "";
-      String longestChainFragment = "";
-      int longestFile = 0;
-      int longestSpecies = 0;
-      int longestRt = 0;
-      int longestFormula = 0;
-      String longestAdduct = "";
-      int longestMass = 0;
-      int longestMolSpecies = 0;
-      int longestChain = 0;
-      int longestFragmentValue = 0;
-      int mostLeftColumn = 0;
-      
-      File[] files = dir.listFiles();
-      for (File file : files){
-        if (!file.getName().endsWith(".xlsx") || file.getName().equalsIgnoreCase(resultFilename)) continue;
-        QuantificationResult returnParam = LDAResultReader.readResultFile(file.getName(), new Hashtable<String,Boolean>());
+    Vector<File> resultFiles = new Vector<File>();
+    for (File file : dir.listFiles()){
+      if (!file.getName().endsWith(".xlsx") || file.getName().equalsIgnoreCase(resultFilename)) continue;
+      resultFiles.add(file);
+    }
+    LDAResultPrefetcher prefetcher = null;
+    try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outFilename))){
+      Workbook resultWorkbook = new Workbook(out, "Lipid Data Analyzer", null);
+      if (resultFiles.size()>0)
+        prefetcher = new LDAResultPrefetcher(resultFiles, threads_);
+      for (File file : resultFiles){
+        QuantificationResult returnParam = prefetcher.next(file);
         if (returnParam==null){
           System.out.println("It was not possible to translate the file: "+file.getName());
           continue;
@@ -100,178 +108,185 @@ public class CombiExtractor
         String sheetName = file.getName();
         if (sheetName.length()>30)
           sheetName = sheetName.substring(0, 30);
-        Sheet sheet = resultWorkbook.createSheet(sheetName);        
-        
-        //TODO: header and explanatory row shall be created for each lipid class
-        int rowCount = 0;
-        
-        for (String lipidClass : returnParam.getIdentifications().keySet()){
-          Vector<LipidParameterSet> params = returnParam.getIdentifications().get(lipidClass);
-          @SuppressWarnings("rawtypes")
-          Vector chainAndFrag = extractChainAndFragmentInfo(params);
-          @SuppressWarnings("unchecked")
-          Vector<String> adducts = (Vector<String>)chainAndFrag.get(0);
-          @SuppressWarnings("unchecked")
-          Hashtable<String,Integer> nrOfChains = (Hashtable<String,Integer>)chainAndFrag.get(1);
-          @SuppressWarnings("unchecked")
-          Hashtable<String,Hashtable<String,Double>> strongestAdduct = (Hashtable<String,Hashtable<String,Double>>)chainAndFrag.get(2);
-          for (String adduct : adducts) {
-            int numberOfChains = nrOfChains.get(adduct);
-            if (numberOfChains<2)
-              continue;
-            String strongestChainFragment = strongestAdduct.get(adduct).keySet().iterator().next();
-            if (strongestChainFragment.length()>longestChainFragment.length())
-              longestChainFragment = strongestChainFragment;
-          
-            //explanatory row
-            Row row = sheet.createRow(rowCount);
-            createCell(row, headerStyle, firstChainColumn, "m/z");
-            sheet.addMergedRegion(new CellRangeAddress(rowCount, rowCount, firstChainColumn,firstChainColumn+numberOfChains-1));
-            rowCount++;
-          
-            //header row
-            row = sheet.createRow(rowCount);
-            createCell(row, headerStyle, fileColumn, COLUMN_FILE);
-            createCell(row, headerStyle, speciesColumn, lipidClass);
-            if (lipidClass.length()>longestLipidClass.length())
-              longestLipidClass = lipidClass;
-            createCell(row, headerStyle, rtColumn, COLUMN_RETENTION_TIME);
-            createCell(row, headerStyle, formulaColumn, COLUMN_FORMULA);
-            String massAndAdduct = COLUMN_MASS+"_"+adduct;
-            createCell(row, headerStyle, mzColumn, massAndAdduct);
-            if (massAndAdduct.length()>longestAdduct.length())
-              longestAdduct = massAndAdduct;
-            createCell(row, headerStyle, molSpeciesColumn, COLUMN_MOLSPECIES);
-            for (int i=firstChainColumn; i!=(firstChainColumn+numberOfChains); i++) {
-              createCell(row, headerStyle, i, strongestChainFragment);
-            }
-            createCell(row, headerStyle, firstChainColumn+numberOfChains, COLUMN_LDA_RESULT);
-            if (firstChainColumn+numberOfChains>mostLeftColumn)
-              mostLeftColumn = firstChainColumn+numberOfChains;
-            rowCount++;
-
-            for (LipidParameterSet set:params) {
-              if (!set.getModificationName().equalsIgnoreCase(adduct) || !(set instanceof LipidomicsMSnSet))
-                continue;
-              LipidomicsMSnSet msn = (LipidomicsMSnSet)set;
-              if (msn.getStatus()<LipidomicsMSnSet.FRAGMENTS_DETECTED)
-                continue;
-              //now everything is fine -> print out the information
-              row = sheet.createRow(rowCount);
-              createCell(row, null, fileColumn, file.getName());
-              if (file.getName().length()>longestFile)
-                longestFile = file.getName().length();
-              createCell(row, null, speciesColumn, msn.getNameStringWithoutRt());
-              if (msn.getNameStringWithoutRt().length()>longestSpecies)
-                longestSpecies = msn.getNameStringWithoutRt().length();
-              createCell(row, null, rtColumn, msn.getRt());
-              if (msn.getRt().length()>longestRt)
-                longestRt = msn.getRt().length();
-              Hashtable<String,Integer> categorized = StaticUtils.categorizeFormula(msn.getAnalyteFormula());
-              String formula = StaticUtils.getFormulaInHillNotation(categorized, false);
-              createCell(row, null, formulaColumn, formula);
-              if (formula.length()>longestFormula)
-                longestFormula = formula.length();
-              String mzString = Calculator.FormatNumberToString((double)msn.Mz[0],3);
-              createCell(row, null, mzColumn, mzString);
-              if (mzString.length()>longestMass)
-                longestMass = mzString.length();
-              Vector<String> sortedCombis = new Vector<String>();
-              for (String combi : msn.getChainCombinationRelativeAreas().keySet()) {
-                double relArea = msn.getChainCombinationRelativeAreas().get(combi);
-                boolean wasHigher=false;
-                for (int i=0; i!=sortedCombis.size(); i++) {
-                  if (relArea>msn.getChainCombinationRelativeAreas().get(sortedCombis.get(i))) {
-                    wasHigher=true;
-                    sortedCombis.add(i, combi);
-                    break;
-                  }
-                }
-                if (!wasHigher)
-                  sortedCombis.add(combi);
-              }
-              boolean isFirst = true;
-              for (String combi : sortedCombis) {
-                if (!isFirst)
-                  row = sheet.createRow(rowCount);
-                else
-                  isFirst = false;
-                String sortedCombiName = "";
-                Vector<FattyAcidVO> sorted = new Vector<FattyAcidVO>();
-                try {
-                	Vector<FattyAcidVO> decoded = StaticUtils.decodeLipidNamesFromChainCombi(combi);
-                	sorted = StaticUtils.sortChainVOs(decoded);
-                	sortedCombiName = StaticUtils.getHumanReadableCombiName(sorted, returnParam.getFaHydroxyEncoding(), returnParam.getLcbHydroxyEncoding());
-                } catch (LipidCombinameEncodingException ex) {
-                	ex.printStackTrace();
-                }
-                createCell(row, null, molSpeciesColumn, sortedCombiName);
-                if (sortedCombiName.length()>longestMolSpecies)
-                  longestMolSpecies = sortedCombiName.length();
-                int count = 0;
-                for (FattyAcidVO fa : sorted) {
-                	count++;
-                	String encoded = StaticUtils.encodeLipidNameForCreatingCombis(fa, true);
-                	Hashtable<String,CgProbe> fragments = msn.getChainFragments().get(encoded);
-                  if (!fragments.containsKey(strongestChainFragment))
-                    continue;
-                  String mz = Calculator.FormatNumberToString((double)fragments.get(strongestChainFragment).Mz,3);
-                  createCell(row, null, molSpeciesColumn+count, mz);
-                  if (mz.length()>longestFragmentValue)
-                    longestFragmentValue = mz.length();
-                }
-                String percentValue = String.valueOf(Calculator.roundDBL(msn.getChainCombinationRelativeAreas().get(combi)*100d,2,BigDecimal.ROUND_HALF_UP));
-                createCell(row, null, molSpeciesColumn+count+1, percentValue);
-                if (percentValue.length()>longestFragmentValue)
-                  longestFragmentValue = percentValue.length();               
-                rowCount++;
-              }
-            }                   
-          }
-        }
-        
-      }
-      for (int i=0; i!=resultWorkbook.getNumberOfSheets(); i++) {
-        Sheet sheet = resultWorkbook.getSheetAt(i);
-        setColumnWidth(sheet, fileColumn, COLUMN_FILE, longestFile);
-        setColumnWidth(sheet, speciesColumn, longestLipidClass, longestSpecies);
-        setColumnWidth(sheet, rtColumn, COLUMN_RETENTION_TIME, longestRt);
-        setColumnWidth(sheet, formulaColumn, COLUMN_FORMULA, longestFormula);
-        setColumnWidth(sheet, mzColumn, longestAdduct, longestMass);
-        setColumnWidth(sheet, molSpeciesColumn, COLUMN_MOLSPECIES, longestMolSpecies);
-
-        for (int j=firstChainColumn; j!=(mostLeftColumn+1); j++) {
-          setColumnWidth(sheet, j, longestChainFragment, longestFragmentValue);
-        }
-
+        Worksheet sheet = resultWorkbook.newWorksheet(sheetName);
+        writeSheet(sheet, file.getName(), returnParam);
       }
-      
-      resultWorkbook.write(out);
-      resultWorkbook.close();
-      out.close();
+      resultWorkbook.finish();
     } catch (IOException | ExcelInputFileException | ChemicalFormulaException ex) {
       ex.printStackTrace();
     } finally {
-      if (resultWorkbook!=null) {
-        try {resultWorkbook.close();}catch (IOException e) {e.printStackTrace();}
-      }
-      if (out!=null) {
-        try {out.close();}catch (IOException e) { e.printStackTrace();}
+      if (prefetcher!=null)
+        prefetcher.close();
+    }
+  }
+  
+  /**
+   * writes the chain combinations of one result file to a sheet, and finishes the sheet
+   * @param sheet the worksheet
+   * @param fileName the name of the result file
+   * @param returnParam the content of the result file
+   * @throws IOException when the sheet cannot be written
+   * @throws ChemicalFormulaException when the formula of an analyte cannot be categorized
+   */
+  private void writeSheet(Worksheet sheet, String fileName, QuantificationResult returnParam) throws IOException, ChemicalFormulaException {
+    String longestLipidClass = "";
+    String longestChainFragment = "";
+    int longestFile = 0;
+    int longestSpecies = 0;
+    int longestRt = 0;
+    int longestFormula = 0;
+    String longestAdduct = "";
+    int longestMass = 0;
+    int longestMolSpecies = 0;
+    int longestFragmentValue = 0;
+    int mostLeftColumn = 0;
+    
+    //TODO: header and explanatory row shall be created for each lipid class
+    int rowCount = 0;
+    
+    for (String lipidClass : returnParam.getIdentifications().keySet()){
+      Vector<LipidParameterSet> params = returnParam.getIdentifications().get(lipidClass);
+      @SuppressWarnings("rawtypes")
+      Vector chainAndFrag = extractChainAndFragmentInfo(params);
+      @SuppressWarnings("unchecked")
+      Vector<String> adducts = (Vector<String>)chainAndFrag.get(0);
+      @SuppressWarnings("unchecked")
+      Hashtable<String,Integer> nrOfChains = (Hashtable<String,Integer>)chainAndFrag.get(1);
+      @SuppressWarnings("unchecked")
+      Hashtable<String,Hashtable<String,Double>> strongestAdduct = (Hashtable<String,Hashtable<String,Double>>)chainAndFrag.get(2);
+      for (String adduct : adducts) {
+        int numberOfChains = nrOfChains.get(adduct);
+        if (numberOfChains<2)
+          continue;
+        String strongestChainFragment = strongestAdduct.get(adduct).keySet().iterator().next();
+        if (strongestChainFragment.length()>longestChainFragment.length())
+          longestChainFragment = strongestChainFragment;
+      
+        //explanatory row
+        int row = rowCount;
+        createHeaderCell(sheet, row, FIRST_CHAIN_COLUMN, "m/z");
+        sheet.range(rowCount, FIRST_CHAIN_COLUMN, rowCount, FIRST_CHAIN_COLUMN+numberOfChains-1).merge();
+        rowCount++;
+      
+        //header row
+        row = rowCount;
+        createHeaderCell(sheet, row, FILE_COLUMN, COLUMN_FILE);
+        createHeaderCell(sheet, row, SPECIES_COLUMN, lipidClass);
+        if (lipidClass.length()>longestLipidClass.length())
+          longestLipidClass = lipidClass;
+        createHeaderCell(sheet, row, RT_COLUMN, COLUMN_RETENTION_TIME);
+        createHeaderCell(sheet, row, FORMULA_COLUMN, COLUMN_FORMULA);
+        String massAndAdduct = COLUMN_MASS+"_"+adduct;
+        createHeaderCell(sheet, row, MZ_COLUMN, massAndAdduct);
+        if (massAndAdduct.length()>longestAdduct.length())
+          longestAdduct = massAndAdduct;
+        createHeaderCell(sheet, row, MOL_SPECIES_COLUMN, COLUMN_MOLSPECIES);
+        for (int i=FIRST_CHAIN_COLUMN; i!=(FIRST_CHAIN_COLUMN+numberOfChains); i++) {
+          createHeaderCell(sheet, row, i, strongestChainFragment);
+        }
+        createHeaderCell(sheet, row, FIRST_CHAIN_COLUMN+numberOfChains, COLUMN_LDA_RESULT);
+        if (FIRST_CHAIN_COLUMN+numberOfChains>mostLeftColumn)
+          mostLeftColumn = FIRST_CHAIN_COLUMN+numberOfChains;
+        rowCount++;
+
+        for (LipidParameterSet set:params) {
+          if (!set.getModificationName().equalsIgnoreCase(adduct) || !(set instanceof LipidomicsMSnSet))
+            continue;
+          LipidomicsMSnSet msn = (LipidomicsMSnSet)set;
+          if (msn.getStatus()<LipidomicsMSnSet.FRAGMENTS_DETECTED)
+            continue;
+          //now everything is fine -> print out the information
+          row = rowCount;
+          createCell(sheet, row, FILE_COLUMN, fileName);
+          if (fileName.length()>longestFile)
+            longestFile = fileName.length();
+          createCell(sheet, row, SPECIES_COLUMN, msn.getNameStringWithoutRt());
+          if (msn.getNameStringWithoutRt().length()>longestSpecies)
+            longestSpecies = msn.getNameStringWithoutRt().length();
+          createCell(sheet, row, RT_COLUMN, msn.getRt());
+          if (msn.getRt().length()>longestRt)
+            longestRt = msn.getRt().length();
+          Hashtable<String,Integer> categorized = StaticUtils.categorizeFormula(msn.getAnalyteFormula());
+          String formula = StaticUtils.getFormulaInHillNotation(categorized, false);
+          createCell(sheet, row, FORMULA_COLUMN, formula);
+          if (formula.length()>longestFormula)
+            longestFormula = formula.length();
+          String mzString = Calculator.FormatNumberToString((double)msn.Mz[0],3);
+          createCell(sheet, row, MZ_COLUMN, mzString);
+          if (mzString.length()>longestMass)
+            longestMass = mzString.length();
+          Vector<String> sortedCombis = new Vector<String>();
+          for (String combi : msn.getChainCombinationRelativeAreas().keySet()) {
+            double relArea = msn.getChainCombinationRelativeAreas().get(combi);
+            boolean wasHigher=false;
+            for (int i=0; i!=sortedCombis.size(); i++) {
+              if (relArea>msn.getChainCombinationRelativeAreas().get(sortedCombis.get(i))) {
+                wasHigher=true;
+                sortedCombis.add(i, combi);
+                break;
+              }
+            }
+            if (!wasHigher)
+              sortedCombis.add(combi);
+          }
+          boolean isFirst = true;
+          for (String combi : sortedCombis) {
+            if (!isFirst)
+              row = rowCount;
+            else
+              isFirst = false;
+            String sortedCombiName = "";
+            Vector<FattyAcidVO> sorted = new Vector<FattyAcidVO>();
+            try {
+            	Vector<FattyAcidVO> decoded = StaticUtils.decodeLipidNamesFromChainCombi(combi);
+            	sorted = StaticUtils.sortChainVOs(decoded);
+            	sortedCombiName = StaticUtils.getHumanReadableCombiName(sorted, returnParam.getFaHydroxyEncoding(), returnParam.getLcbHydroxyEncoding());
+            } catch (LipidCombinameEncodingException ex) {
+            	ex.printStackTrace();
+            }
+            createCell(sheet, row, MOL_SPECIES_COLUMN, sortedCombiName);
+            if (sortedCombiName.length()>longestMolSpecies)
+              longestMolSpecies = sortedCombiName.length();
+            int count = 0;
+            for (FattyAcidVO fa : sorted) {
+            	count++;
+            	String encoded = fa.getChainId();
+            	Hashtable<String,CgProbe> fragments = msn.getChainFragments().get(encoded);
+              if (!fragments.containsKey(strongestChainFragment))
+                continue;
+              String mz = Calculator.FormatNumberToString((double)fragments.get(strongestChainFragment).Mz,3);
+              createCell(sheet, row, MOL_SPECIES_COLUMN+count, mz);
+              if (mz.length()>longestFragmentValue)
+                longestFragmentValue = mz.length();
+            }
+            String percentValue = String.valueOf(Calculator.roundDBL(msn.getChainCombinationRelativeAreas().get(combi)*100d,2,BigDecimal.ROUND_HALF_UP));
+            createCell(sheet, row, MOL_SPECIES_COLUMN+count+1, percentValue);
+            if (percentValue.length()>longestFragmentValue)
+              longestFragmentValue = percentValue.length();               
+            rowCount++;
+          }
+        }                   
       }
     }
+
+    setColumnWidth(sheet, FILE_COLUMN, COLUMN_FILE, longestFile);
+    setColumnWidth(sheet, SPECIES_COLUMN, longestLipidClass, longestSpecies);
+    setColumnWidth(sheet, RT_COLUMN, COLUMN_RETENTION_TIME, longestRt);
+    setColumnWidth(sheet, FORMULA_COLUMN, COLUMN_FORMULA, longestFormula);
+    setColumnWidth(sheet, MZ_COLUMN, longestAdduct, longestMass);
+    setColumnWidth(sheet, MOL_SPECIES_COLUMN, COLUMN_MOLSPECIES, longestMolSpecies);
+    for (int j=FIRST_CHAIN_COLUMN; j<(mostLeftColumn+1); j++) {
+      setColumnWidth(sheet, j, longestChainFragment, longestFragmentValue);
+    }
+    //the worksheet is written to the output stream and its cells are released
+    sheet.finish();
   }
  
   
   
-  protected static CellStyle getHeaderStyle(Workbook wb){
-    CellStyle arial12style = wb.createCellStyle();
-    Font arial12font = wb.createFont();
-    arial12font.setBoldweight(Font.BOLDWEIGHT_BOLD);
-    arial12font.setFontName("Arial");
-    arial12font.setFontHeightInPoints((short)12);
-    arial12style.setFont(arial12font);
-    arial12style.setAlignment(CellStyle.ALIGN_CENTER);
-    return arial12style;
+  private void createHeaderCell(Worksheet sheet, int row, int pos, String value){
+    sheet.value(row, pos, value);
+    sheet.style(row, pos).bold().horizontalAlignment("center").fontName("Arial").fontSize(12).set();
   }
 
   @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -300,18 +315,14 @@ public class CombiExtractor
         strongestFragment = null;
         highestArea = 0;
       }
-      try {
-      	for (Object obj : msn.getMSnIdentificationNames()){
-          if (obj instanceof Vector){
-            if (getNumberOfChainsFromName((String)((Vector)obj).get(0))>nr)
-              nr = getNumberOfChainsFromName((String)((Vector)obj).get(0));
-          }else{
-            if (getNumberOfChainsFromName((String)obj)>nr)          
-              nr = getNumberOfChainsFromName((String)obj);
-          }
+      for (Object obj : msn.getMSnIdentificationNames()){
+        if (obj instanceof Vector){
+          if (getNumberOfChainsFromName((String)((Vector)obj).get(0))>nr)
+            nr = getNumberOfChainsFromName((String)((Vector)obj).get(0));
+        }else{
+          if (getNumberOfChainsFromName((String)obj)>nr)          
+            nr = getNumberOfChainsFromName((String)obj);
         }
-      } catch (LipidCombinameEncodingException ex) {
-      	ex.printStackTrace();
       }
       for (String chain : msn.getChainFragments().keySet()) {
         for (String fragment : msn.getChainFragments().get(chain).keySet()) {
@@ -358,17 +369,14 @@ public class CombiExtractor
     return nrOfChains;
   }
   
-  private Cell createCell(Row row, CellStyle style, int pos, String value){
-    Cell cell = row.createCell(pos);
-    cell.setCellValue(value);
-    if (cell!=null) cell.setCellStyle(style);
-    return cell;
+  private void createCell(Worksheet sheet, int row, int pos, String value){
+    sheet.value(row, pos, value);
   }
 
-  private void setColumnWidth(Sheet sheet, int column, String headerValue, int longestValue){
+  private void setColumnWidth(Worksheet sheet, int column, String headerValue, int longestValue){
     int columnWidth = (int)((headerValue.length()*256)*ExcelUtils.BOLD_MULT);
     if ((longestValue+1)*256>columnWidth) columnWidth =  (longestValue+1)*256;
-    sheet.setColumnWidth(column,columnWidth); 
+    sheet.width(column,((double)columnWidth)/256d); 
   }
 
 }
@@ -28,12 +28,7 @@ import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.Vector;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
 
 import at.tugraz.genome.lda.LipidomicsConstants;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
@@ -72,40 +67,37 @@ public abstract class ConverterBase
   protected final static String TEXT_CHAIN_INTENSITY = "Intensity";
   protected final static String TEXT_MOLECULAR_SPECIES = "Molecular species";
   
-  protected static CellStyle getHeaderStyle(Workbook wb){
-    CellStyle arial12style = wb.createCellStyle();
-    Font arial12font = wb.createFont();
-    arial12font.setBoldweight(Font.BOLDWEIGHT_BOLD);
-    arial12font.setFontName("Arial");
-    arial12font.setFontHeightInPoints((short)12);
-    arial12style.setFont(arial12font);
-    arial12style.setAlignment(CellStyle.ALIGN_CENTER);
-    return arial12style;
+  /**
+   * writes a header cell (Arial 12, bold, centered)
+   * @param sheet the worksheet
+   * @param row the row index
+   * @param pos the column index
+   * @param value the header text
+   */
+  protected void createHeaderCell(Worksheet sheet, int row, int pos, String value){
+    sheet.value(row, pos, value);
+    sheet.style(row, pos).bold().horizontalAlignment("center").fontName("Arial").fontSize(12).set();
   }
   
-  protected void setColumnWidth(Sheet sheet, int column, String headerValue, int longestValue){
+  /**
+   * sets the width of a column - must be called before the worksheet is finished
+   * @param sheet the worksheet
+   * @param column the column index
+   * @param headerValue the text of the header cell
+   * @param longestValue the length of the longest value in the column
+   */
+  protected void setColumnWidth(Worksheet sheet, int column, String headerValue, int longestValue){
     int columnWidth = (int)((headerValue.length()*256)*ExcelUtils.BOLD_MULT);
     if ((longestValue+1)*256>columnWidth) columnWidth =  (longestValue+1)*256;
-    sheet.setColumnWidth(column,columnWidth); 
+    sheet.width(column,((double)columnWidth)/256d); 
   }
   
-  protected Cell createNumericCell(Row row, CellStyle style, int pos, String value){
-    Cell cell = createNumericCell(row, style, pos, Double.valueOf(value));
-    return cell;
+  protected void createNumericCell(Worksheet sheet, int row, int pos, String value){
+    sheet.value(row, pos, Double.valueOf(value));
   }
   
-  protected Cell createNumericCell(Row row, CellStyle style, int pos, double value){
-    Cell cell = createCell(row, style, pos, null);
-    cell.setCellType(Cell.CELL_TYPE_NUMERIC);
-    cell.setCellValue(value);
-    return cell;
-  }
-  
-  protected Cell createCell(Row row, CellStyle style, int pos, String value){
-    Cell cell = row.createCell(pos);
-    cell.setCellValue(value);
-    if (cell!=null) cell.setCellStyle(style);
-    return cell;
+  protected void createCell(Worksheet sheet, int row, int pos, String value){
+    sheet.value(row, pos, value);
   }
 
   protected Vector<String> sortFAsInAscendingOrder(Collection<String> unsorted) throws LipidCombinameEncodingException{
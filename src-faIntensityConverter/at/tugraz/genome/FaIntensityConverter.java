@@ -24,12 +24,18 @@
 package at.tugraz.genome;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Vector;
 
 import at.tugraz.genome.lda.exception.ExcelInputFileException;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
+import at.tugraz.genome.lda.parser.LDAResultPrefetcher;
+import at.tugraz.genome.lda.quantification.QuantificationResult;
 
 /**
+ * Converts the LDA result files in the current directory to files containing the intensities of the chains;
+ * with the argument "-summary", one summary file for all result files is written. The result files are read
+ * in parallel - the number of threads may be provided as additional argument (default: number of processors)
  * 
  * @author Juergen Hartler
  *
@@ -37,7 +43,11 @@ import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
 public class FaIntensityConverter
 {
 
-  public FaIntensityConverter(String arg){
+  /** the number of threads reading the result files*/
+  private int threads_;
+  
+  public FaIntensityConverter(String arg, int threads){
+    threads_ = threads;
     convertLDAFilesInCurrentDirectory(arg);
   }
   
@@ -45,16 +55,24 @@ public class FaIntensityConverter
   public static void main(String[] args)
   {
     String argument = null;
-    if (args !=null && args.length>0)
-      argument = args[0];
-    new FaIntensityConverter(argument);
+    int threads = Runtime.getRuntime().availableProcessors();
+    if (args !=null){
+      for (String arg : args){
+        try{
+          threads = Math.max(1, Integer.parseInt(arg));
+        }catch (NumberFormatException nfx){
+          argument = arg;
+        }
+      }
+    }
+    new FaIntensityConverter(argument, threads);
     
   }
 
   private void convertLDAFilesInCurrentDirectory(String arg){
     File dir = new File(System.getProperty("user.dir"));
     if (arg!=null && arg.equalsIgnoreCase("-summary")){
-      LDAToFASummaryConverter converter = new LDAToFASummaryConverter(dir.getAbsolutePath());
+      LDAToFASummaryConverter converter = new LDAToFASummaryConverter(dir.getAbsolutePath(), threads_);
       try {
         converter.convert();
       }
@@ -62,17 +80,28 @@ public class FaIntensityConverter
         e.printStackTrace();
       }
     }else{
-      File[] files = dir.listFiles();
-      for (File file : files){
+      Vector<File> resultFiles = new Vector<File>();
+      for (File file : dir.listFiles()){
         if (!file.getName().endsWith(".xlsx")) continue;
-        LDAToFaConverter converter = new LDAToFaConverter(file.getAbsolutePath());
-        try {
-          converter.convert();
-        } catch (ExcelInputFileException | FileNotFoundException | LipidCombinameEncodingException e) {
-          System.out.println("---------------------------------------------------");
-          System.out.println("There is something wrong with the file: "+file.getName());
-          e.printStackTrace();
+        resultFiles.add(file);
+      }
+      if (resultFiles.size()==0)
+        return;
+      LDAResultPrefetcher prefetcher = new LDAResultPrefetcher(resultFiles, threads_);
+      try{
+        for (File file : resultFiles){
+          LDAToFaConverter converter = new LDAToFaConverter(file.getAbsolutePath());
+          try {
+            QuantificationResult result = prefetcher.next(file);
+            converter.convert(result);
+          } catch (ExcelInputFileException | IOException | LipidCombinameEncodingException e) {
+            System.out.println("---------------------------------------------------");
+            System.out.println("There is something wrong with the file: "+file.getName());
+            e.printStackTrace();
+          }
         }
+      } finally {
+        prefetcher.close();
       }
     }
   }
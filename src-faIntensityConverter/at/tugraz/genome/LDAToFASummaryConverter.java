@@ -25,31 +25,31 @@ package at.tugraz.genome;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
 
 import at.tugraz.genome.lda.exception.ExcelInputFileException;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
 import at.tugraz.genome.lda.msn.LipidomicsMSnSet;
 import at.tugraz.genome.lda.msn.hydroxy.parser.HydroxyEncoding;
 import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.parser.LDAResultPrefetcher;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
 import at.tugraz.genome.lda.utils.StaticUtils;
@@ -57,6 +57,9 @@ import at.tugraz.genome.lda.vos.FloatStringVO;
 import at.tugraz.genome.voutils.GeneralComparator;
 
 /**
+ * Writes the chain intensities of all LDA result files of a directory to one summary file (one sheet per lipid class).
+ * The result files are read in parallel, and each result is reduced to the values required for the summary as soon
+ * as it is read; thus, not all of the results have to be kept in memory. The sheets are written in parallel.
  * 
  * @author Juergen Hartler
  *
@@ -68,178 +71,245 @@ public class LDAToFASummaryConverter extends ConverterBase
   
   protected final static String TEXT_FILENAME = "File name";
   
+  /** the name of the summary file*/
+  private final static String SUMMARY_FILE = "Summary.xlsx";
+  
   private String dirName_;
+  /** the number of threads for reading the files and writing the sheets*/
+  private int threads_;
+  
+  /** the files containing data in the sequence they were read*/
+  private LinkedHashSet<String> expSequence_;
+  /** the lipid classes in the sequence of their appearance*/
+  private LinkedHashSet<String> lipidClasses_;
+  /** first key: lipid class; second key: lower case species name; value: the hits in the sequence of the files*/
+  private Hashtable<String,Hashtable<String,Vector<SpeciesHit>>> hits_;
+  /** first key: lipid class; value: encoded names of the species*/
+  private Hashtable<String,Set<String>> speciesEncoded_;
+  /** first key: lipid class; second key: modification; value: summed area of the modification*/
+  private Hashtable<String,Hashtable<String,FloatStringVO>> modAreas_;
+  /** the FA and LCB hydroxylation encodings unified over all files*/
+  private Vector<HydroxyEncoding> ohEncodings_;
   
   public LDAToFASummaryConverter(String dirName){
+    this(dirName, Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * @param dirName the directory containing the LDA result files
+   * @param threads the number of threads for reading the files and writing the sheets
+   */
+  public LDAToFASummaryConverter(String dirName, int threads){
     dirName_ = dirName;
+    threads_ = Math.max(1, threads);
   }
   
-  public void convert() throws ExcelInputFileException, FileNotFoundException, LipidCombinameEncodingException{
+  public void convert() throws ExcelInputFileException, IOException, LipidCombinameEncodingException{
     File dir = new File(dirName_);
-    File[] files = dir.listFiles();
+    Vector<File> resultFiles = new Vector<File>();
+    for (File file : dir.listFiles()){
+      if (!file.getName().endsWith(".xlsx") || file.getName().equalsIgnoreCase(SUMMARY_FILE)) continue;
+      resultFiles.add(file);
+    }
     
-    //reading the results and adding them to a hash map
+    //reading the results and extracting the values of the summary
     //and creating a list of available lipid classes
-    LinkedHashMap<String,QuantificationResult> rawResults = new LinkedHashMap<String,QuantificationResult>();
-    LinkedHashSet<String> lipidClasses = new LinkedHashSet<String>();
-    for (File file : files){
-      String fileName = file.getName();
-      if (!fileName.endsWith(".xlsx")) continue;
-      
-      QuantificationResult returnParam = LDAResultReader.readResultFile(file.getAbsolutePath(), new Hashtable<String,Boolean>());
-      if (returnParam==null){
-        System.out.println("It was not possible to translate the file: "+fileName);
-        return;
-      }
-      Hashtable<String,Vector<LipidParameterSet>> results = returnParam.getIdentifications();
-      if (results == null || results.keySet().size()==0)
-        continue;
-      boolean containsData = false;
-      for (Vector<LipidParameterSet> idents : results.values()){
-        if (idents.size()>0){
-          containsData = true;
-          break;
+    expSequence_ = new LinkedHashSet<String>();
+    lipidClasses_ = new LinkedHashSet<String>();
+    hits_ = new Hashtable<String,Hashtable<String,Vector<SpeciesHit>>>();
+    speciesEncoded_ = new Hashtable<String,Set<String>>();
+    modAreas_ = new Hashtable<String,Hashtable<String,FloatStringVO>>();
+    ohEncodings_ = new Vector<HydroxyEncoding>();
+    if (resultFiles.size()>0){
+      LDAResultPrefetcher prefetcher = new LDAResultPrefetcher(resultFiles, threads_);
+      try{
+        for (File file : resultFiles){
+          QuantificationResult returnParam = prefetcher.next(file);
+          if (returnParam==null){
+            System.out.println("It was not possible to translate the file: "+file.getName());
+            return;
+          }
+          extractSummaryValues(file.getName(), returnParam);
         }
-      }
-      if (!containsData){
-        System.out.println("The file does not contain any data: "+fileName);
-        continue;
-      }
-      rawResults.put(fileName, returnParam);
-      for (String lipidClass : results.keySet()){
-        if (!lipidClasses.contains(lipidClass))
-          lipidClasses.add(lipidClass);
+      } finally {
+        prefetcher.close();
       }
     }
     
-    writeResults(lipidClasses,rawResults);
+    writeResults();
   }
   
-  private void writeResults(LinkedHashSet<String> lipidClasses, LinkedHashMap<String,QuantificationResult> rawResults)
-      throws FileNotFoundException, LipidCombinameEncodingException{
-    String outFilename = dirName_+File.separator+"Summary.xlsx";
-    BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outFilename));
-    Vector<HydroxyEncoding> ohEncodings = unifyHydroxyEncoding(rawResults);
-    try{
-      Workbook resultWorkbook = new XSSFWorkbook();
-      CellStyle headerStyle = getHeaderStyle(resultWorkbook);
-      for (String lClass : lipidClasses){
-        Sheet sheet = resultWorkbook.createSheet(lClass);
-        LongestCount lCount = new LongestCount();
-        Row row = sheet.createRow(lCount.rowCount_);
-        lCount.rowCount_++;
+  /**
+   * reduces a result to the values required for the summary
+   * @param fileName the name of the result file
+   * @param returnParam the content of the result file
+   * @throws LipidCombinameEncodingException when a chain combination cannot be decoded
+   */
+  private void extractSummaryValues(String fileName, QuantificationResult returnParam) throws LipidCombinameEncodingException{
+    Hashtable<String,Vector<LipidParameterSet>> results = returnParam.getIdentifications();
+    if (results == null || results.keySet().size()==0)
+      return;
+    boolean containsData = false;
+    for (Vector<LipidParameterSet> idents : results.values()){
+      if (idents.size()>0){
+        containsData = true;
+        break;
+      }
+    }
+    if (!containsData){
+      System.out.println("The file does not contain any data: "+fileName);
+      return;
+    }
+    expSequence_.add(fileName);
+    unifyHydroxyEncoding(returnParam);
+    for (String lipidClass : results.keySet()){
+      if (!lipidClasses_.contains(lipidClass)){
+        lipidClasses_.add(lipidClass);
+        hits_.put(lipidClass, new Hashtable<String,Vector<SpeciesHit>>());
+        speciesEncoded_.put(lipidClass, new LinkedHashSet<String>());
+        modAreas_.put(lipidClass, new Hashtable<String,FloatStringVO>());
+      }
+      Hashtable<String,Vector<SpeciesHit>> hitsOfClass = hits_.get(lipidClass);
+      Hashtable<String,FloatStringVO> modAreas = modAreas_.get(lipidClass);
+      for (LipidParameterSet set : results.get(lipidClass)){
+        speciesEncoded_.get(lipidClass).add(StaticUtils.decodeHumanReadableChain(set.getNameStringWithoutRt(), returnParam.getFaHydroxyEncoding(),
+            returnParam.getLcbHydroxyEncoding(), returnParam.getConstants().isAlexTargetlist(), returnParam.getConstants()).getChainId());
+        if (!modAreas.containsKey(set.getModificationName()))
+          modAreas.put(set.getModificationName(), new FloatStringVO(set.getModificationName(),0f));
+        modAreas.get(set.getModificationName()).addValue(set.getArea());
         
-        this.createCell(row, headerStyle, COLUMN_FILENAME, TEXT_FILENAME);
-        this.createCell(row, headerStyle, COLUMN_LIPID_SPECIES+1, TEXT_LIPID_SPECIES);
-        this.createCell(row, headerStyle, COLUMN_ADDUCT+1, TEXT_ADDUCT);
-        this.createCell(row, headerStyle, COLUMN_RT+1, TEXT_RT);
-        this.createCell(row, headerStyle, COLUMN_LIPID_SPECIES_INTENSITY+1, TEXT_LIPID_SPECIES_INTENSITY);
-        this.createCell(row, headerStyle, COLUMN_CHAIN+1, TEXT_CHAIN);
-        this.createCell(row, headerStyle, COLUMN_CHAIN_PERCENT+1, TEXT_CHAIN_PERCENT);
-        this.createCell(row, headerStyle, COLUMN_CHAIN_INTENSITY+1, TEXT_CHAIN_INTENSITY);
-        this.createCell(row, headerStyle, COLUMN_MOLECULAR_SPECIES+1, TEXT_MOLECULAR_SPECIES);
-
-        Vector<Vector<String>> bothInfo = getSortedSpeciesListAndAdducts(lClass, rawResults);
-        Vector<String> sortedSpecies = bothInfo.get(0);
-        Vector<String> mods = bothInfo.get(1);
-        String species;
-        String faReadable;
-        Vector<FattyAcidVO> chains;
-        for (String speciesEncoded : sortedSpecies){
-          chains = StaticUtils.decodeLipidNamesFromChainCombi(speciesEncoded);
-          species = StaticUtils.getHumanReadableChainName(chains.get(0), ohEncodings.get(0), ohEncodings.get(1), StaticUtils.areThereOhInCombi(chains));
-          //first add species without fatty acids;
-          writeExcelRowsOfOneSpecies(lCount,sheet,species,null,rawResults.keySet(),mods,getAreasWithoutChainInfo(lClass,species,rawResults));
-          //second add species with fatty acids;
-          LinkedHashMap<String,Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>> sortedFAs = getSortedFattyAcids(lClass,species,speciesEncoded,rawResults);
-          for (String fa: sortedFAs.keySet()) {
-            chains = StaticUtils.decodeLipidNamesFromChainCombi(fa);
-            faReadable = StaticUtils.getHumanReadableChainName(chains.get(0), ohEncodings.get(0), ohEncodings.get(1), StaticUtils.areThereOhInCombi(chains));
-            writeExcelRowsOfOneSpecies(lCount,sheet,species,faReadable,rawResults.keySet(),mods,sortedFAs.get(fa));
+        float ms1Area = getMS1Area(set);
+        String ms1AreaString = String.valueOf(ms1Area);
+        LinkedHashMap<String,String[]> faDetails = null;
+        if (StaticUtils.isThereChainInformationAvailable(set.getNameStringWithoutRt(), set))
+          faDetails = extractFaIntensityDetails((LipidomicsMSnSet)set, ms1AreaString, ms1Area);
+        String speciesKey = set.getNameStringWithoutRt().toLowerCase();
+        if (!hitsOfClass.containsKey(speciesKey))
+          hitsOfClass.put(speciesKey, new Vector<SpeciesHit>());
+        hitsOfClass.get(speciesKey).add(new SpeciesHit(fileName, set.getModificationName(), set.getRt(), ms1AreaString, faDetails));
+      }
+    }
+  }
+  
+  private void writeResults() throws IOException, LipidCombinameEncodingException{
+    String outFilename = dirName_+File.separator+SUMMARY_FILE;
+    try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outFilename))){
+      Workbook resultWorkbook = new Workbook(out, "Lipid Data Analyzer", null);
+      //the sheets are created in the sequence of the classes, but their content is written in parallel
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      ExecutorService threadpool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads_, lipidClasses_.size())));
+      try{
+        for (final String lClass : lipidClasses_){
+          final Worksheet sheet = resultWorkbook.newWorksheet(lClass);
+          futures.add(threadpool.submit(new Callable<Void>(){
+            public Void call() throws IOException, LipidCombinameEncodingException{
+              writeSheet(lClass, sheet);
+              return null;
+            }
+          }));
+        }
+        for (Future<Void> future : futures){
+          try{
+            future.get();
+          } catch (InterruptedException ix){
+            throw new IOException("The writing of the summary was interrupted!");
+          } catch (ExecutionException ex){
+            if (ex.getCause() instanceof IOException)
+              throw (IOException)ex.getCause();
+            if (ex.getCause() instanceof LipidCombinameEncodingException)
+              throw (LipidCombinameEncodingException)ex.getCause();
+            throw new IOException(ex.getCause());
           }
         }
-        setColumnWidth(sheet, COLUMN_FILENAME, TEXT_FILENAME, lCount.longestFilename_);
-        setColumnWidth(sheet, COLUMN_LIPID_SPECIES+1, TEXT_LIPID_SPECIES, lCount.longestSpecies_);
-        setColumnWidth(sheet, COLUMN_ADDUCT+1, TEXT_ADDUCT, lCount.longestAdduct_);
-        setColumnWidth(sheet, COLUMN_RT+1, TEXT_RT, lCount.longestRt_);
-        setColumnWidth(sheet, COLUMN_LIPID_SPECIES_INTENSITY+1, TEXT_LIPID_SPECIES_INTENSITY, lCount.longestSpeciesIntensity_);
-        setColumnWidth(sheet, COLUMN_CHAIN+1, TEXT_CHAIN, lCount.longestChain_);
-        setColumnWidth(sheet, COLUMN_CHAIN_PERCENT+1, TEXT_CHAIN_PERCENT, lCount.longestChainPercent_);
-        setColumnWidth(sheet, COLUMN_CHAIN_INTENSITY+1, TEXT_CHAIN_INTENSITY, lCount.longestChainIntensity_);
-        setColumnWidth(sheet, COLUMN_MOLECULAR_SPECIES+1, TEXT_MOLECULAR_SPECIES, lCount.longestMolecularSpecies_);
-      }
-      resultWorkbook.write(out);
-      resultWorkbook.close();
-      out.close();
-    } catch (IOException iox) {
-      try {
-        out.close();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }      
-    } finally{
-      try {
-        out.close();
-      }
-      catch (IOException e) {
-        e.printStackTrace();
+      } finally {
+        threadpool.shutdownNow();
       }
+      resultWorkbook.finish();
     }
-
   }
   
-  @SuppressWarnings("unchecked")
-  private Vector<Vector<String>> getSortedSpeciesListAndAdducts(String lClass, LinkedHashMap<String,QuantificationResult> rawResults) throws LipidCombinameEncodingException{
-    Vector<Vector<String>> bothInfo = new Vector<Vector<String>>();
-    Set<String> species = new HashSet<String>();
-    Hashtable<String,FloatStringVO> modAreas = new Hashtable<String,FloatStringVO>();
-    for (QuantificationResult res : rawResults.values()){
-      if (!res.getIdentifications().containsKey(lClass))
+  /**
+   * writes the sheet of one lipid class and finishes it
+   * @param lClass the lipid class
+   * @param sheet the worksheet
+   * @throws IOException when the sheet cannot be written
+   * @throws LipidCombinameEncodingException when a chain combination cannot be decoded
+   */
+  private void writeSheet(String lClass, Worksheet sheet) throws IOException, LipidCombinameEncodingException{
+    LongestCount lCount = new LongestCount();
+    int row = lCount.rowCount_;
+    lCount.rowCount_++;
+    
+    this.createHeaderCell(sheet, row, COLUMN_FILENAME, TEXT_FILENAME);
+    this.createHeaderCell(sheet, row, COLUMN_LIPID_SPECIES+1, TEXT_LIPID_SPECIES);
+    this.createHeaderCell(sheet, row, COLUMN_ADDUCT+1, TEXT_ADDUCT);
+    this.createHeaderCell(sheet, row, COLUMN_RT+1, TEXT_RT);
+    this.createHeaderCell(sheet, row, COLUMN_LIPID_SPECIES_INTENSITY+1, TEXT_LIPID_SPECIES_INTENSITY);
+    this.createHeaderCell(sheet, row, COLUMN_CHAIN+1, TEXT_CHAIN);
+    this.createHeaderCell(sheet, row, COLUMN_CHAIN_PERCENT+1, TEXT_CHAIN_PERCENT);
+    this.createHeaderCell(sheet, row, COLUMN_CHAIN_INTENSITY+1, TEXT_CHAIN_INTENSITY);
+    this.createHeaderCell(sheet, row, COLUMN_MOLECULAR_SPECIES+1, TEXT_MOLECULAR_SPECIES);
+
+    Vector<String> sortedSpecies = sortFAsInAscendingOrder(speciesEncoded_.get(lClass));
+    Vector<String> mods = getSortedAdducts(lClass);
+    String species;
+    String faReadable;
+    Vector<FattyAcidVO> chains;
+    for (String speciesEncoded : sortedSpecies){
+      chains = StaticUtils.decodeLipidNamesFromChainCombi(speciesEncoded);
+      species = StaticUtils.getHumanReadableChainName(chains.get(0), ohEncodings_.get(0), ohEncodings_.get(1), StaticUtils.areThereOhInCombi(chains));
+      Vector<SpeciesHit> hits = hits_.get(lClass).get(species.toLowerCase());
+      if (hits==null)
         continue;
-      for (LipidParameterSet set : res.getIdentifications().get(lClass)){
-        species.add(StaticUtils.decodeHumanReadableChain(set.getNameStringWithoutRt(), res.getFaHydroxyEncoding(), res.getLcbHydroxyEncoding(), res.getConstants().isAlexTargetlist(), res.getConstants()).getChainId());
-        if (!modAreas.containsKey(set.getModificationName()))
-          modAreas.put(set.getModificationName(), new FloatStringVO(set.getModificationName(),0f));
-        modAreas.get(set.getModificationName()).addValue(set.getArea());
+      //first add species without fatty acids;
+      writeExcelRowsOfOneSpecies(lCount,sheet,species,null,expSequence_,mods,getAreasWithoutChainInfo(hits));
+      //second add species with fatty acids;
+      LinkedHashMap<String,Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>> sortedFAs = getSortedFattyAcids(hits);
+      for (String fa: sortedFAs.keySet()) {
+        chains = StaticUtils.decodeLipidNamesFromChainCombi(fa);
+        faReadable = StaticUtils.getHumanReadableChainName(chains.get(0), ohEncodings_.get(0), ohEncodings_.get(1), StaticUtils.areThereOhInCombi(chains));
+        writeExcelRowsOfOneSpecies(lCount,sheet,species,faReadable,expSequence_,mods,sortedFAs.get(fa));
       }
     }
-    bothInfo.add(sortFAsInAscendingOrder(species));
-    List<FloatStringVO> mods = new ArrayList<FloatStringVO>(modAreas.values());
+    setColumnWidth(sheet, COLUMN_FILENAME, TEXT_FILENAME, lCount.longestFilename_);
+    setColumnWidth(sheet, COLUMN_LIPID_SPECIES+1, TEXT_LIPID_SPECIES, lCount.longestSpecies_);
+    setColumnWidth(sheet, COLUMN_ADDUCT+1, TEXT_ADDUCT, lCount.longestAdduct_);
+    setColumnWidth(sheet, COLUMN_RT+1, TEXT_RT, lCount.longestRt_);
+    setColumnWidth(sheet, COLUMN_LIPID_SPECIES_INTENSITY+1, TEXT_LIPID_SPECIES_INTENSITY, lCount.longestSpeciesIntensity_);
+    setColumnWidth(sheet, COLUMN_CHAIN+1, TEXT_CHAIN, lCount.longestChain_);
+    setColumnWidth(sheet, COLUMN_CHAIN_PERCENT+1, TEXT_CHAIN_PERCENT, lCount.longestChainPercent_);
+    setColumnWidth(sheet, COLUMN_CHAIN_INTENSITY+1, TEXT_CHAIN_INTENSITY, lCount.longestChainIntensity_);
+    setColumnWidth(sheet, COLUMN_MOLECULAR_SPECIES+1, TEXT_MOLECULAR_SPECIES, lCount.longestMolecularSpecies_);
+    //the worksheet is written to the output stream and its cells are released
+    sheet.finish();
+  }
+  
+  @SuppressWarnings("unchecked")
+  private Vector<String> getSortedAdducts(String lClass){
+    List<FloatStringVO> mods = new ArrayList<FloatStringVO>(modAreas_.get(lClass).values());
     Collections.sort(mods,new GeneralComparator("at.tugraz.genome.lda.vos.FloatStringVO", "getValue", "java.lang.Float"));
     Vector<String> modsSorted = new Vector<String>();
     for (int i=(mods.size()-1);i!=-1;i--){
       modsSorted.add(mods.get(i).getKey());
     }
-    bothInfo.add(modsSorted);
-    return bothInfo;
+    return modsSorted;
   }
   
   
-  private LinkedHashMap<String,Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>> getSortedFattyAcids(String lClass, String speciesName, String speciesEncoded, LinkedHashMap<String,QuantificationResult> rawResults) throws LipidCombinameEncodingException{
+  private LinkedHashMap<String,Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>> getSortedFattyAcids(Vector<SpeciesHit> hits) throws LipidCombinameEncodingException{
     //first key: chain sorted; second key: modification; third key: experiment, fourth key: retention time; value: details
     Hashtable<String,Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>> details = new Hashtable<String,Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>>();
-    for (String exp : rawResults.keySet()){
-      QuantificationResult res  = rawResults.get(exp);
-      if (!res.getIdentifications().containsKey(lClass))
+    for (SpeciesHit hit : hits){
+      if (hit.faDetails_==null)
         continue;
-      for (LipidParameterSet set : res.getIdentifications().get(lClass)){
-        if (!set.getNameStringWithoutRt().equalsIgnoreCase(speciesName))
-          continue;
-        if (!StaticUtils.isThereChainInformationAvailable(set.getNameStringWithoutRt(), set))
-          continue;
-        float ms1Area = getMS1Area(set);
-        String ms1AreaString = String.valueOf(ms1Area);
-        LipidomicsMSnSet msn = (LipidomicsMSnSet) set;
-        LinkedHashMap<String,String[]> faDetails = extractFaIntensityDetails(msn, ms1AreaString, ms1Area);
-        for (String fa : faDetails.keySet()){
-          if (!details.containsKey(fa))
-            details.put(fa, new Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>());
-          if (!details.get(fa).containsKey(msn.getModificationName()))
-            details.get(fa).put(msn.getModificationName(), new Hashtable<String,LinkedHashMap<String,String[]>>());
-          if (!details.get(fa).get(msn.getModificationName()).containsKey(exp))
-            details.get(fa).get(msn.getModificationName()).put(exp, new LinkedHashMap<String,String[]>());
-          details.get(fa).get(msn.getModificationName()).get(exp).put(msn.getRt(), faDetails.get(fa));          
-        }
+      for (String fa : hit.faDetails_.keySet()){
+        if (!details.containsKey(fa))
+          details.put(fa, new Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>());
+        if (!details.get(fa).containsKey(hit.mod_))
+          details.get(fa).put(hit.mod_, new Hashtable<String,LinkedHashMap<String,String[]>>());
+        if (!details.get(fa).get(hit.mod_).containsKey(hit.exp_))
+          details.get(fa).get(hit.mod_).put(hit.exp_, new LinkedHashMap<String,String[]>());
+        details.get(fa).get(hit.mod_).get(hit.exp_).put(hit.rt_, hit.faDetails_.get(fa));          
       }
     }
     LinkedHashMap<String,Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>> detailsSorted = new LinkedHashMap<String,Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>>();
@@ -248,35 +318,26 @@ public class LDAToFASummaryConverter extends ConverterBase
     return detailsSorted;
   }
   
-  private Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>> getAreasWithoutChainInfo(String lClass, String speciesName, LinkedHashMap<String,QuantificationResult> rawResults) throws LipidCombinameEncodingException{
+  private Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>> getAreasWithoutChainInfo(Vector<SpeciesHit> hits){
     //first key: modification; second key: experiment, third key: retention time; value: details
     Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>> areasWithoutChainInfo = new Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>>();
-    for (String exp : rawResults.keySet()){
-      QuantificationResult res  = rawResults.get(exp);
-      if (!res.getIdentifications().containsKey(lClass))
+    for (SpeciesHit hit : hits){
+      if (hit.faDetails_!=null)
         continue;
-      for (LipidParameterSet set : res.getIdentifications().get(lClass)){
-        if (!set.getNameStringWithoutRt().equalsIgnoreCase(speciesName))
-          continue;
-        if (StaticUtils.isThereChainInformationAvailable(set.getNameStringWithoutRt(), set))
-          continue;
-        float ms1Area = getMS1Area(set);
-        String ms1AreaString = String.valueOf(ms1Area);
-        String[] details = new String[1];
-        details[0] = ms1AreaString;
-        if (!areasWithoutChainInfo.containsKey(set.getModificationName()))
-          areasWithoutChainInfo.put(set.getModificationName(), new Hashtable<String,LinkedHashMap<String,String[]>>());
-        if (!areasWithoutChainInfo.get(set.getModificationName()).containsKey(exp))
-          areasWithoutChainInfo.get(set.getModificationName()).put(exp, new LinkedHashMap<String,String[]>());
-        areasWithoutChainInfo.get(set.getModificationName()).get(exp).put(set.getRt(), details);
-      }
+      String[] details = new String[1];
+      details[0] = hit.ms1AreaString_;
+      if (!areasWithoutChainInfo.containsKey(hit.mod_))
+        areasWithoutChainInfo.put(hit.mod_, new Hashtable<String,LinkedHashMap<String,String[]>>());
+      if (!areasWithoutChainInfo.get(hit.mod_).containsKey(hit.exp_))
+        areasWithoutChainInfo.get(hit.mod_).put(hit.exp_, new LinkedHashMap<String,String[]>());
+      areasWithoutChainInfo.get(hit.mod_).get(hit.exp_).put(hit.rt_, details);
     }
     return areasWithoutChainInfo;
   }
   
-  private void writeExcelRowsOfOneSpecies(LongestCount lCount, Sheet sheet, String species, String chain, Set<String> expSequence, Vector<String> mods,
+  private void writeExcelRowsOfOneSpecies(LongestCount lCount, Worksheet sheet, String species, String chain, Set<String> expSequence, Vector<String> mods,
       Hashtable<String,Hashtable<String,LinkedHashMap<String,String[]>>> details){
-    Row row;
+    int row;
     for (String mod :  mods){
       if (!details.containsKey(mod))
         continue;
@@ -286,26 +347,26 @@ public class LDAToFASummaryConverter extends ConverterBase
         LinkedHashMap<String,String[]> detailsOfExp =  details.get(mod).get(exp);
         for (String rt : detailsOfExp.keySet()){
           String[] detailsOfOneHit = detailsOfExp.get(rt);
-          row = sheet.createRow(lCount.rowCount_);
+          row = lCount.rowCount_;
           lCount.rowCount_++;
-          createCell(row, null, COLUMN_FILENAME, exp);
+          createCell(sheet, row, COLUMN_FILENAME, exp);
           if (exp.length()>lCount.longestFilename_) lCount.longestFilename_ = exp.length();
-          createCell(row, null, COLUMN_LIPID_SPECIES+1, species);
+          createCell(sheet, row, COLUMN_LIPID_SPECIES+1, species);
           if (species.length()>lCount.longestSpecies_) lCount.longestSpecies_ = species.length();
-          createCell(row, null, COLUMN_ADDUCT+1, mod);
+          createCell(sheet, row, COLUMN_ADDUCT+1, mod);
           if (mod.length()>lCount.longestAdduct_) lCount.longestAdduct_ = mod.length();
-          createNumericCell(row, null, COLUMN_RT+1, rt);
+          createNumericCell(sheet, row, COLUMN_RT+1, rt);
           if (rt.length()>lCount.longestRt_) lCount.longestRt_ = rt.length();
-          createNumericCell(row, null, COLUMN_LIPID_SPECIES_INTENSITY+1, detailsOfOneHit[0]);
+          createNumericCell(sheet, row, COLUMN_LIPID_SPECIES_INTENSITY+1, detailsOfOneHit[0]);
           if (detailsOfOneHit[0].length()>lCount.longestSpeciesIntensity_) lCount.longestSpeciesIntensity_ = detailsOfOneHit[0].length();
           if (chain!=null){
-            createCell(row, null, COLUMN_CHAIN+1, chain);
+            createCell(sheet, row, COLUMN_CHAIN+1, chain);
             if (chain.length()>lCount.longestChain_) lCount.longestChain_ = chain.length();
-            createNumericCell(row, null, COLUMN_CHAIN_PERCENT+1, detailsOfOneHit[1]);
+            createNumericCell(sheet, row, COLUMN_CHAIN_PERCENT+1, detailsOfOneHit[1]);
             if (detailsOfOneHit[1].length()>lCount.longestChainPercent_) lCount.longestChainPercent_ = detailsOfOneHit[1].length();
-            createNumericCell(row, null, COLUMN_CHAIN_INTENSITY+1, detailsOfOneHit[2]);
+            createNumericCell(sheet, row, COLUMN_CHAIN_INTENSITY+1, detailsOfOneHit[2]);
             if (detailsOfOneHit[2].length()>lCount.longestChainIntensity_) lCount.longestChainIntensity_ = detailsOfOneHit[2].length();
-            createCell(row, null, COLUMN_MOLECULAR_SPECIES+1, detailsOfOneHit[3]);
+            createCell(sheet, row, COLUMN_MOLECULAR_SPECIES+1, detailsOfOneHit[3]);
             if (detailsOfOneHit[3].length()>lCount.longestMolecularSpecies_) lCount.longestMolecularSpecies_ = detailsOfOneHit[3].length();
 
           }
@@ -332,18 +393,35 @@ public class LDAToFASummaryConverter extends ConverterBase
     }
   }
   
-  private Vector<HydroxyEncoding> unifyHydroxyEncoding(LinkedHashMap<String,QuantificationResult> rawResults){
-    Vector<HydroxyEncoding> encodings = new Vector<HydroxyEncoding>();
-    for (QuantificationResult res : rawResults.values()) {
-      if (encodings.size()==0) {
-        encodings.add(res.getFaHydroxyEncoding());
-        encodings.add(res.getLcbHydroxyEncoding());
-      } else {
-        encodings.get(0).mergeHydroxyEncodings(res.getFaHydroxyEncoding());
-        encodings.get(1).mergeHydroxyEncodings(res.getLcbHydroxyEncoding());
-      }
+  /**
+   * the values of one identification that are required for the summary
+   */
+  private class SpeciesHit {
+    
+    private String exp_;
+    private String mod_;
+    private String rt_;
+    private String ms1AreaString_;
+    /** key: encoded chain; value: details (see extractFaIntensityDetails) - null if there is no chain information*/
+    private LinkedHashMap<String,String[]> faDetails_;
+    
+    private SpeciesHit(String exp, String mod, String rt, String ms1AreaString, LinkedHashMap<String,String[]> faDetails){
+      this.exp_ = exp;
+      this.mod_ = mod;
+      this.rt_ = rt;
+      this.ms1AreaString_ = ms1AreaString;
+      this.faDetails_ = faDetails;
+    }
+  }
+  
+  private void unifyHydroxyEncoding(QuantificationResult res){
+    if (ohEncodings_.size()==0) {
+      ohEncodings_.add(res.getFaHydroxyEncoding());
+      ohEncodings_.add(res.getLcbHydroxyEncoding());
+    } else {
+      ohEncodings_.get(0).mergeHydroxyEncodings(res.getFaHydroxyEncoding());
+      ohEncodings_.get(1).mergeHydroxyEncodings(res.getLcbHydroxyEncoding());
     }
-    return encodings;
   }
 /*  
   results[0] = ms1AreaString;
@@ -23,18 +23,14 @@
 package at.tugraz.genome;
 
 import java.io.BufferedOutputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.Vector;
 
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
 
 import at.tugraz.genome.lda.exception.ExcelInputFileException;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
@@ -59,8 +55,23 @@ public class LDAToFaConverter extends ConverterBase
     fileName_ = fileName;
   }
   
-  public void convert() throws ExcelInputFileException, FileNotFoundException, LipidCombinameEncodingException{
-    QuantificationResult returnParam = LDAResultReader.readResultFile(fileName_, new Hashtable<String,Boolean>());
+  /**
+   * reads the LDA result file and writes the chain intensities to a file with the suffix "_FA"
+   * @throws ExcelInputFileException when there is something wrong with the Excel file
+   * @throws IOException when the output file cannot be written
+   * @throws LipidCombinameEncodingException when a chain combination cannot be decoded
+   */
+  public void convert() throws ExcelInputFileException, IOException, LipidCombinameEncodingException{
+    convert(LDAResultReader.readResultFile(fileName_, new Hashtable<String,Boolean>()));
+  }
+  
+  /**
+   * writes the chain intensities of an already read LDA result file to a file with the suffix "_FA"
+   * @param returnParam the content of the LDA result file; null if it could not be read
+   * @throws IOException when the output file cannot be written
+   * @throws LipidCombinameEncodingException when a chain combination cannot be decoded
+   */
+  public void convert(QuantificationResult returnParam) throws IOException, LipidCombinameEncodingException{
     if (returnParam==null){
       System.out.println("It was not possible to translate the file: "+fileName_);
       return;
@@ -82,14 +93,12 @@ public class LDAToFaConverter extends ConverterBase
       return;      
     }
     String outFilename = fileName_.substring(0,fileName_.lastIndexOf("."))+"_FA"+fileName_.substring(fileName_.lastIndexOf("."));
-    BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outFilename));
-    try{
-      Workbook resultWorkbook = new XSSFWorkbook();
-      CellStyle headerStyle = getHeaderStyle(resultWorkbook);
+    try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outFilename))){
+      Workbook resultWorkbook = new Workbook(out, "Lipid Data Analyzer", null);
       for (String className : results.keySet()){
-        Sheet sheet = resultWorkbook.createSheet(className);
+        Worksheet sheet = resultWorkbook.newWorksheet(className);
         int rowCount = 0;
-        Row row = sheet.createRow(rowCount);
+        int row = rowCount;
         rowCount++;
 
         int longestSpecies = 0;
@@ -101,14 +110,14 @@ public class LDAToFaConverter extends ConverterBase
         int longestChainIntensity = 0;
         int longestMolecularSpecies = 0;
         
-        this.createCell(row, headerStyle, COLUMN_LIPID_SPECIES, TEXT_LIPID_SPECIES);
-        this.createCell(row, headerStyle, COLUMN_ADDUCT, TEXT_ADDUCT);
-        this.createCell(row, headerStyle, COLUMN_RT, TEXT_RT);
-        this.createCell(row, headerStyle, COLUMN_LIPID_SPECIES_INTENSITY, TEXT_LIPID_SPECIES_INTENSITY);
-        this.createCell(row, headerStyle, COLUMN_CHAIN, TEXT_CHAIN);
-        this.createCell(row, headerStyle, COLUMN_CHAIN_PERCENT, TEXT_CHAIN_PERCENT);
-        this.createCell(row, headerStyle, COLUMN_CHAIN_INTENSITY, TEXT_CHAIN_INTENSITY);
-        this.createCell(row, headerStyle, COLUMN_MOLECULAR_SPECIES, TEXT_MOLECULAR_SPECIES);
+        this.createHeaderCell(sheet, row, COLUMN_LIPID_SPECIES, TEXT_LIPID_SPECIES);
+        this.createHeaderCell(sheet, row, COLUMN_ADDUCT, TEXT_ADDUCT);
+        this.createHeaderCell(sheet, row, COLUMN_RT, TEXT_RT);
+        this.createHeaderCell(sheet, row, COLUMN_LIPID_SPECIES_INTENSITY, TEXT_LIPID_SPECIES_INTENSITY);
+        this.createHeaderCell(sheet, row, COLUMN_CHAIN, TEXT_CHAIN);
+        this.createHeaderCell(sheet, row, COLUMN_CHAIN_PERCENT, TEXT_CHAIN_PERCENT);
+        this.createHeaderCell(sheet, row, COLUMN_CHAIN_INTENSITY, TEXT_CHAIN_INTENSITY);
+        this.createHeaderCell(sheet, row, COLUMN_MOLECULAR_SPECIES, TEXT_MOLECULAR_SPECIES);
 
         String fa;
         Vector<FattyAcidVO> chains;
@@ -129,35 +138,35 @@ public class LDAToFaConverter extends ConverterBase
               String percent = areaResults[1];
               String faAreaString = areaResults[2];
               String combiName = areaResults[3];
-              row = sheet.createRow(rowCount);
+              row = rowCount;
               rowCount++;
-              createCell(row, null, COLUMN_LIPID_SPECIES, displayName);
+              createCell(sheet, row, COLUMN_LIPID_SPECIES, displayName);
               if (displayName.length()>longestSpecies) longestSpecies = displayName.length();
-              createCell(row, null, COLUMN_ADDUCT, mod);
+              createCell(sheet, row, COLUMN_ADDUCT, mod);
               if (mod.length()>longestAdduct) longestAdduct = mod.length();
-              createNumericCell(row, null, COLUMN_RT, rt);
+              createNumericCell(sheet, row, COLUMN_RT, rt);
               if (rt.length()>longestRt) longestRt = rt.length();
-              createNumericCell(row, null, COLUMN_LIPID_SPECIES_INTENSITY, ms1AreaString);
+              createNumericCell(sheet, row, COLUMN_LIPID_SPECIES_INTENSITY, ms1AreaString);
               if (ms1AreaString.length()>longestSpeciesIntensity) longestSpeciesIntensity = ms1AreaString.length();
-              createCell(row, null, COLUMN_CHAIN, fa);
+              createCell(sheet, row, COLUMN_CHAIN, fa);
               if (fa.length()>longestChain) longestChain = fa.length();
-              createNumericCell(row, null, COLUMN_CHAIN_PERCENT, percent);
+              createNumericCell(sheet, row, COLUMN_CHAIN_PERCENT, percent);
               if (percent.length()>longestChainPercent) longestChainPercent = percent.length();
-              createNumericCell(row, null, COLUMN_CHAIN_INTENSITY, faAreaString);
+              createNumericCell(sheet, row, COLUMN_CHAIN_INTENSITY, faAreaString);
               if (faAreaString.length()>longestChainIntensity) longestChainIntensity = faAreaString.length();
-              createCell(row, null, COLUMN_MOLECULAR_SPECIES, combiName);
+              createCell(sheet, row, COLUMN_MOLECULAR_SPECIES, combiName);
               if (combiName.length()>longestMolecularSpecies) longestMolecularSpecies = combiName.length();
             }            
           } else {
-            row = sheet.createRow(rowCount);
+            row = rowCount;
             rowCount++;
-            createCell(row, null, COLUMN_LIPID_SPECIES, displayName);
+            createCell(sheet, row, COLUMN_LIPID_SPECIES, displayName);
             if (displayName.length()>longestSpecies) longestSpecies = displayName.length();
-            createCell(row, null, COLUMN_ADDUCT, mod);
+            createCell(sheet, row, COLUMN_ADDUCT, mod);
             if (mod.length()>longestAdduct) longestAdduct = mod.length();
-            createNumericCell(row, null, COLUMN_RT, rt);
+            createNumericCell(sheet, row, COLUMN_RT, rt);
             if (rt.length()>longestRt) longestRt = rt.length();
-            createNumericCell(row, null, COLUMN_LIPID_SPECIES_INTENSITY, ms1AreaString);
+            createNumericCell(sheet, row, COLUMN_LIPID_SPECIES_INTENSITY, ms1AreaString);
             if (ms1AreaString.length()>longestSpeciesIntensity) longestSpeciesIntensity = ms1AreaString.length();
 
           }
@@ -171,23 +180,10 @@ public class LDAToFaConverter extends ConverterBase
         setColumnWidth(sheet, COLUMN_CHAIN_PERCENT, TEXT_CHAIN_PERCENT, longestChainPercent);
         setColumnWidth(sheet, COLUMN_CHAIN_INTENSITY, TEXT_CHAIN_INTENSITY, longestChainIntensity);
         setColumnWidth(sheet, COLUMN_MOLECULAR_SPECIES, TEXT_MOLECULAR_SPECIES, longestMolecularSpecies);
+        //the worksheet is written to the output stream and its cells are released
+        sheet.finish();
       }
-      resultWorkbook.write(out);
-      resultWorkbook.close();
-      out.close();
-    } catch (IOException iox) {
-      try {
-        out.close();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }      
-    } finally{
-      try {
-        out.close();
-      }
-      catch (IOException e) {
-        e.printStackTrace();
-      }
+      resultWorkbook.finish();
     }
   }
   
@@ -0,0 +1,263 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Byte-offset index of the spectra of an mgf file that is written by the MgfSorter next to the sorted file.
+ * The entries are sorted by precursor m/z and retention time; thus, the spectra of a precursor m/z range can
+ * be found by binary search and read directly from the mgf file.
+ *
+ * The index is a tab-delimited text file with the columns: offset, length, precursor m/z, retention time in seconds, title
+ */
+public class MgfIndex
+{
+  /** the header line of the index file*/
+  private final static String HEADER = "#offset\tlength\tprecursorMz\trtInSeconds\ttitle";
+  
+  /** the spectra sorted by precursor m/z and retention time*/
+  private List<Entry> entries_;
+  /** the precursor m/z values of the entries for the binary search*/
+  private double[] mzs_;
+  
+  private MgfIndex(List<Entry> entries){
+    this.entries_ = entries;
+    this.mzs_ = new double[entries.size()];
+    for (int i=0; i!=entries.size(); i++) mzs_[i] = entries.get(i).precursorMz_;
+  }
+  
+  /**
+   * reads an index file
+   * @param indexFile the index file
+   * @return the index
+   * @throws IOException if the file cannot be read or has an invalid format
+   */
+  public static MgfIndex read(File indexFile) throws IOException{
+    List<Entry> entries = new ArrayList<Entry>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))){
+      String line;
+      while ((line=reader.readLine())!=null){
+        if (line.length()==0 || line.startsWith("#")) continue;
+        String[] cols = line.split("\t",-1);
+        if (cols.length!=5) throw new IOException("The index file "+indexFile.getName()+" has an invalid line: "+line);
+        try{
+          entries.add(new Entry(Long.parseLong(cols[0]),Long.parseLong(cols[1]),Double.parseDouble(cols[2]),Double.parseDouble(cols[3]),cols[4]));
+        }catch (NumberFormatException nfx){
+          throw new IOException("The index file "+indexFile.getName()+" has an invalid line: "+line);
+        }
+      }
+    }
+    return new MgfIndex(entries);
+  }
+  
+  /**
+   * @return all spectra sorted by precursor m/z and retention time
+   */
+  public List<Entry> getEntries(){
+    return Collections.unmodifiableList(entries_);
+  }
+  
+  /**
+   * returns the spectra within a precursor m/z and retention time range
+   * @param minMz the lower precursor m/z border (inclusive)
+   * @param maxMz the upper precursor m/z border (inclusive)
+   * @param minRt the lower retention time border in seconds (inclusive)
+   * @param maxRt the upper retention time border in seconds (inclusive)
+   * @return the spectra sorted by precursor m/z and retention time
+   */
+  public List<Entry> find(double minMz, double maxMz, double minRt, double maxRt){
+    List<Entry> found = new ArrayList<Entry>();
+    //binary search for the first entry with a precursor m/z >= minMz
+    int low = 0;
+    int high = mzs_.length;
+    while (low<high){
+      int middle = (low+high)>>>1;
+      if (mzs_[middle]<minMz) low = middle+1;
+      else high = middle;
+    }
+    for (int i=low; i<mzs_.length && mzs_[i]<=maxMz; i++){
+      Entry entry = entries_.get(i);
+      if (entry.rt_>=minRt && entry.rt_<=maxRt) found.add(entry);
+    }
+    return found;
+  }
+  
+  /**
+   * reads the text of a spectrum (BEGIN IONS to END IONS) from the mgf file
+   * @param mgfFile the mgf file the index belongs to
+   * @param entry the entry of the spectrum
+   * @return the text of the spectrum
+   * @throws IOException if the file cannot be read
+   */
+  public static String readSpectrum(RandomAccessFile mgfFile, Entry entry) throws IOException{
+    byte[] bytes = new byte[(int)entry.length_];
+    mgfFile.seek(entry.offset_);
+    mgfFile.readFully(bytes);
+    return new String(bytes);
+  }
+  
+  
+  /**
+   * one spectrum of the index
+   */
+  public static class Entry{
+    private long offset_;
+    private long length_;
+    private double precursorMz_;
+    private double rt_;
+    private String title_;
+    
+    private Entry(long offset, long length, double precursorMz, double rt, String title){
+      this.offset_ = offset;
+      this.length_ = length;
+      this.precursorMz_ = precursorMz;
+      this.rt_ = rt;
+      this.title_ = title;
+    }
+
+    /** @return the byte offset of the BEGIN IONS line*/
+    public long getOffset(){
+      return offset_;
+    }
+
+    /** @return the number of bytes from BEGIN IONS to the end of the END IONS line*/
+    public long getLength(){
+      return length_;
+    }
+
+    /** @return the precursor m/z; NaN if there is no PEPMASS*/
+    public double getPrecursorMz(){
+      return precursorMz_;
+    }
+
+    /** @return the retention time in seconds; NaN if there is no RTINSECONDS*/
+    public double getRt(){
+      return rt_;
+    }
+
+    /** @return the title; an empty string if there is no TITLE*/
+    public String getTitle(){
+      return title_;
+    }
+  }
+  
+  
+  /**
+   * collects the entries while an mgf file is written - the lines must be passed in the sequence of the file
+   */
+  static class Builder{
+    
+    private List<Entry> entries_;
+    private long offset_;
+    private double precursorMz_;
+    private double rt_;
+    private String title_;
+    
+    Builder(){
+      this.entries_ = new ArrayList<Entry>();
+      this.offset_ = -1l;
+    }
+    
+    /**
+     * @param line a line of the mgf file that is not a data line
+     * @param offset the byte offset where the line is written
+     */
+    void addLine(String line, long offset){
+      if (line.startsWith("BEGIN IONS")){
+        offset_ = offset;
+        precursorMz_ = Double.NaN;
+        rt_ = Double.NaN;
+        title_ = "";
+      } else if (offset_<0){
+        return;
+      } else if (line.startsWith("PEPMASS=")){
+        StringTokenizer tokenizer = new StringTokenizer(line.substring("PEPMASS=".length()));
+        if (tokenizer.hasMoreTokens()) precursorMz_ = parseValue(tokenizer.nextToken());
+      } else if (line.startsWith("RTINSECONDS=")){
+        rt_ = parseValue(line.substring("RTINSECONDS=".length()).trim());
+      } else if (line.startsWith("TITLE=")){
+        title_ = line.substring("TITLE=".length()).replace('\t', ' ');
+      }
+    }
+    
+    /**
+     * @param line a line of the mgf file
+     * @return true if the line ends a spectrum
+     */
+    boolean isSpectrumEnd(String line){
+      return line.startsWith("END IONS");
+    }
+    
+    /**
+     * @param endOffset the byte offset after the END IONS line
+     */
+    void endSpectrum(long endOffset){
+      if (offset_<0) return;
+      entries_.add(new Entry(offset_,endOffset-offset_,precursorMz_,rt_,title_));
+      offset_ = -1l;
+    }
+    
+    private double parseValue(String value){
+      try{
+        return Double.parseDouble(value);
+      }catch (NumberFormatException nfx){
+        return Double.NaN;
+      }
+    }
+    
+    /**
+     * writes the entries sorted by precursor m/z and retention time
+     * @param indexFile the file to write
+     * @throws IOException if the file cannot be written
+     */
+    void write(File indexFile) throws IOException{
+      Collections.sort(entries_, new Comparator<Entry>(){
+        public int compare(Entry o1, Entry o2){
+          int comp = Double.compare(o1.precursorMz_, o2.precursorMz_);
+          if (comp!=0) return comp;
+          comp = Double.compare(o1.rt_, o2.rt_);
+          if (comp!=0) return comp;
+          return Long.compare(o1.offset_, o2.offset_);
+        }
+      });
+      try (BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile))){
+        writer.write(HEADER+"\n");
+        for (Entry entry : entries_)
+          writer.write(entry.offset_+"\t"+entry.length_+"\t"+entry.precursorMz_+"\t"+entry.rt_+"\t"+entry.title_+"\n");
+      }
+    }
+  }
+}
@@ -24,35 +24,68 @@
 package at.tugraz.genome;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.LineNumberReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.StringTokenizer;
-
-import at.tugraz.genome.voutils.GeneralComparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * 
+ * Sorts the peaks of every spectrum of the mgf files in a directory ascendingly by m/z, and writes a byte-offset index
+ * next to each sorted file (see MgfIndex). The files are streamed: the spectra are read in batches of bounded size, the peak
+ * lists of a batch are sorted in parallel, and written in the original order; a peak list that does not fit into memory
+ * is sorted in runs that are stored in temporary files and merged afterwards. Several files are processed at the same time.
+ *
+ * usage: MgfSorter [directory] [nrOfThreads]
+ *
  * @author Juergen Hartler
  *
  */
 public class MgfSorter
 {
+  /** the suffix of the index that is written next to each sorted file*/
+  public final static String INDEX_SUFFIX = ".idx";
+  
+  /** the characters of the lines of one batch that are held in memory at once*/
+  private final static long BATCH_CHARS = 32l*1024l*1024l;
+  /** the peaks of one spectrum that are sorted in memory - larger peak lists are sorted in runs stored in temporary files*/
+  private final static int MAX_PEAKS_IN_MEMORY = 1000000;
+  /** the line separator of the written files*/
+  private final static String LINE_SEPARATOR = "\r\n";
 
   public static void main(String[] args)
   {
     
-    if (args.length!=1){
+    if (args.length<1 || args.length>2){
       System.out.println("ERROR: you must provide 1 arguements! The directory that contains the mgf files");
+      System.out.println("Optionally, the number of threads may be provided as second argument");
       System.out.println();
       return;
     }
     String dir = args[0];
-    MgfSorter sorter  = new MgfSorter(dir);
+    int threads = Runtime.getRuntime().availableProcessors();
+    if (args.length>1){
+      try{
+        threads = Integer.parseInt(args[1]);
+      }catch (NumberFormatException nfx){
+        System.out.println("ERROR: the number of threads must be integer format");
+        return;
+      }
+    }
+    MgfSorter sorter  = new MgfSorter(dir,Math.max(1,threads));
     
     try {
       sorter.performSorting();
@@ -63,94 +96,336 @@ public class MgfSorter
    }
   
   private String dir_;
+  /** the number of threads for sorting the peak lists*/
+  private int threads_;
   
-  private MgfSorter(String dir){
+  private MgfSorter(String dir, int threads){
     this.dir_ = dir;
+    this.threads_ = threads;
   }
   
   private void performSorting() throws Exception{
     File directory = new File(dir_);
     if (!directory.isDirectory()) throw new Exception("The provided path is not a directory");
+    List<File> mgfFiles = new ArrayList<File>();
     for (File file : directory.listFiles()){
       if (!file.isFile() || !file.getAbsolutePath().endsWith(".mgf")) continue;
-      sortMgfFile(file);
+      mgfFiles.add(file);
+    }
+    if (mgfFiles.size()==0)
+      return;
+    //the files and the peak lists have separate pools - a file task waits for its peak list tasks
+    ExecutorService filePool = Executors.newFixedThreadPool(Math.min(threads_,mgfFiles.size()));
+    ExecutorService sortPool = Executors.newFixedThreadPool(threads_);
+    try{
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (final File file : mgfFiles){
+        futures.add(filePool.submit(new Callable<Void>(){
+          public Void call() throws Exception{
+            sortMgfFile(file,sortPool);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures){
+        try{
+          future.get();
+        }catch (ExecutionException ex){
+          if (ex.getCause() instanceof Exception) throw (Exception)ex.getCause();
+          throw ex;
+        }
+      }
+    }finally{
+      filePool.shutdownNow();
+      sortPool.shutdownNow();
     }
   }
 
-  @SuppressWarnings("unchecked")
-  private void sortMgfFile(File inFile) throws Exception{
-    LineNumberReader reader = new LineNumberReader(new FileReader(inFile));
+  /**
+   * sorts the peaks of all spectra of one file, replaces the file, and writes the index
+   * @param inFile the mgf file
+   * @param sortPool the pool for sorting the peak lists
+   * @throws Exception if the file cannot be read/written or if there is a problem with a data line
+   */
+  private void sortMgfFile(File inFile, ExecutorService sortPool) throws Exception{
+    BufferedReader reader = new BufferedReader(new FileReader(inFile),1024*1024);
     String outFile = inFile.getAbsolutePath()+"-new";
-    BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outFile));
+    OffsetOutputStream out = new OffsetOutputStream(new BufferedOutputStream(new FileOutputStream(outFile),1024*1024));
+    MgfIndex.Builder index = new MgfIndex.Builder();
+    List<File> tempFiles = new ArrayList<File>();
     try{
       String line;
-      List<MzInt> values = new ArrayList<MzInt>();
+      int lineNumber = 0;
+      List<Object> batch = new ArrayList<Object>();
+      long batchChars = 0l;
+      PeakList peaks = new PeakList(inFile, tempFiles);
       while ((line=reader.readLine()) != null) {
+        lineNumber++;
         if (isDataLine(line)){
           StringTokenizer tokenizer = new StringTokenizer(line);
-          if (tokenizer.countTokens()!=2) throw new Exception("There is a problem at line: "+reader.getLineNumber());
+          if (tokenizer.countTokens()!=2) throw new Exception("There is a problem at line: "+lineNumber);
           String mz = tokenizer.nextToken();
           String intensity = tokenizer.nextToken();
-          try{ Float.parseFloat(mz);} catch (NumberFormatException nfx){throw new Exception("The m/z value at line "+reader.getLineNumber()+" is not float format!");};
-          try{ Float.parseFloat(mz);} catch (NumberFormatException nfx){throw new Exception("The intensity value at line "+reader.getLineNumber()+" is not float format!");};
-          values.add(new MzInt(mz,intensity));
+          float mzValue;
+          try{ mzValue = Float.parseFloat(mz);} catch (NumberFormatException nfx){throw new Exception("The m/z value at line "+lineNumber+" is not float format!");};
+          try{ Float.parseFloat(intensity);} catch (NumberFormatException nfx){throw new Exception("The intensity value at line "+lineNumber+" is not float format!");};
+          peaks.add(mzValue, mz+" "+intensity);
         }else{
-          if (values.size()>0){
-            Collections.sort(values, new GeneralComparator("at.tugraz.genome.MgfSorter$MzInt", "getMz", "java.lang.Float"));
-            String toWrite = "";
-            for (MzInt value : values){
-              toWrite += value.getMzString()+" "+value.getIntensity()+"\r\n";
-            }
-            byte[] data = (toWrite).getBytes();
-            out.write(data);
-          }       
-          values = new ArrayList<MzInt>();
-          byte[] toWrite = (line+"\r\n").getBytes();
-          out.write(toWrite);
+          if (peaks.size()>0){
+            batch.add(peaks);
+            peaks = new PeakList(inFile, tempFiles);
+          }
+          batch.add(line);
+        }
+        batchChars += line.length();
+        if (batchChars>BATCH_CHARS && peaks.size()==0){
+          writeBatch(batch, sortPool, out, index);
+          batch = new ArrayList<Object>();
+          batchChars = 0l;
         }
       }
+      if (peaks.size()>0)
+        batch.add(peaks);
+      writeBatch(batch, sortPool, out, index);
     }finally{
       reader.close();
       out.close();
+      for (File tempFile : tempFiles) tempFile.delete();
     }
     replaceOldFile(outFile,inFile.getAbsolutePath());
+    index.write(new File(inFile.getAbsolutePath()+INDEX_SUFFIX));
+  }
+  
+  /**
+   * sorts the peak lists of a batch in parallel and writes the batch in the original order
+   * @param batch the lines (String) and peak lists (PeakList) in the sequence of the file
+   * @param sortPool the pool for sorting the peak lists
+   * @param out the stream to write to
+   * @param index the index the spectra are added to
+   * @throws Exception if a peak list cannot be sorted or the data cannot be written
+   */
+  private void writeBatch(List<Object> batch, ExecutorService sortPool, OffsetOutputStream out, MgfIndex.Builder index) throws Exception{
+    List<Future<byte[]>> sorted = new ArrayList<Future<byte[]>>();
+    for (Object entry : batch){
+      if (entry instanceof PeakList && !((PeakList)entry).hasRuns()){
+        final PeakList peaks = (PeakList)entry;
+        sorted.add(sortPool.submit(new Callable<byte[]>(){
+          public byte[] call() throws Exception{
+            return peaks.sortInMemory();
+          }
+        }));
+      }
+    }
+    int sortedIndex = 0;
+    for (Object entry : batch){
+      if (entry instanceof String){
+        String line = (String)entry;
+        index.addLine(line, out.getOffset());
+        out.write((line+LINE_SEPARATOR).getBytes());
+        if (index.isSpectrumEnd(line))
+          index.endSpectrum(out.getOffset());
+      }else{
+        PeakList peaks = (PeakList)entry;
+        if (peaks.hasRuns()){
+          peaks.mergeRuns(out);
+        }else{
+          try{
+            out.write(sorted.get(sortedIndex).get());
+          }catch (ExecutionException ex){
+            if (ex.getCause() instanceof Exception) throw (Exception)ex.getCause();
+            throw ex;
+          }
+          sortedIndex++;
+        }
+      }
+    }
+  }
+  
+  /**
+   * the peaks of one spectrum in the original sequence; when there are more than MAX_PEAKS_IN_MEMORY peaks,
+   * sorted runs are stored in temporary files
+   */
+  private class PeakList{
+    
+    private File inFile_;
+    private List<File> tempFiles_;
+    private float[] mzs_;
+    private String[] lines_;
+    private int size_;
+    /** the sorted runs stored in temporary files*/
+    private List<File> runs_;
+    
+    private PeakList(File inFile, List<File> tempFiles){
+      this.inFile_ = inFile;
+      this.tempFiles_ = tempFiles;
+      this.mzs_ = new float[64];
+      this.lines_ = new String[64];
+      this.size_ = 0;
+      this.runs_ = null;
+    }
+    
+    private void add(float mz, String line) throws IOException{
+      if (size_==MAX_PEAKS_IN_MEMORY)
+        spillRun();
+      if (size_==mzs_.length){
+        mzs_ = Arrays.copyOf(mzs_, size_*2);
+        lines_ = Arrays.copyOf(lines_, size_*2);
+      }
+      mzs_[size_] = mz;
+      lines_[size_] = line;
+      size_++;
+    }
+    
+    private int size(){
+      return size_+(runs_==null ? 0 : 1);
+    }
+    
+    private boolean hasRuns(){
+      return runs_!=null;
+    }
+    
+    /**
+     * @return the peak indices sorted ascendingly by m/z; peaks with the same m/z keep their sequence
+     */
+    private int[] sortedIndices(){
+      //m/z values of data lines are never negative; thus, the bits of the float have the same order as the values
+      long[] keys = new long[size_];
+      for (int i=0; i!=size_; i++)
+        keys[i] = (((long)Float.floatToIntBits(mzs_[i]))<<32) | i;
+      Arrays.sort(keys);
+      int[] indices = new int[size_];
+      for (int i=0; i!=size_; i++)
+        indices[i] = (int)keys[i];
+      return indices;
+    }
+    
+    private byte[] sortInMemory(){
+      StringBuilder toWrite = new StringBuilder(size_*24);
+      for (int index : sortedIndices())
+        toWrite.append(lines_[index]).append(LINE_SEPARATOR);
+      return toWrite.toString().getBytes();
+    }
+    
+    private void spillRun() throws IOException{
+      File run = File.createTempFile(inFile_.getName()+"-run", ".tmp", inFile_.getParentFile());
+      synchronized(tempFiles_){
+        tempFiles_.add(run);
+      }
+      try (BufferedWriter writer = new BufferedWriter(new FileWriter(run),1024*1024)){
+        for (int index : sortedIndices()){
+          writer.write(lines_[index]);
+          writer.write(LINE_SEPARATOR);
+        }
+      }
+      if (runs_==null) runs_ = new ArrayList<File>();
+      runs_.add(run);
+      size_ = 0;
+    }
+    
+    /**
+     * merges the sorted runs and writes them; the runs are consecutive parts of the peak list, and
+     * peaks with the same m/z are taken from the earlier run first
+     */
+    private void mergeRuns(OutputStream out) throws IOException{
+      if (size_>0)
+        spillRun();
+      PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+      List<RunReader> readers = new ArrayList<RunReader>();
+      try{
+        for (int i=0; i!=runs_.size(); i++){
+          RunReader reader = new RunReader(runs_.get(i),i);
+          readers.add(reader);
+          if (reader.next()) queue.add(reader);
+        }
+        while (!queue.isEmpty()){
+          RunReader reader = queue.poll();
+          out.write((reader.line_+LINE_SEPARATOR).getBytes());
+          if (reader.next()) queue.add(reader);
+        }
+      }finally{
+        for (RunReader reader : readers) reader.close();
+      }
+    }
   }
   
-  public class MzInt{
+  /**
+   * reads the peaks of one sorted run
+   */
+  private static class RunReader implements Comparable<RunReader>{
     
+    private BufferedReader reader_;
+    private int runIndex_;
+    private String line_;
     private float mz_;
-    private String mzString_;
-    private String intensity_;
     
-    public MzInt (String mz, String intensity){
-      this.mz_ = Float.parseFloat(mz);
-      this.mzString_ = mz;
-      this.intensity_ = intensity;
+    private RunReader(File run, int runIndex) throws IOException{
+      this.reader_ = new BufferedReader(new FileReader(run),256*1024);
+      this.runIndex_ = runIndex;
     }
-
-    public Float getMz()
-    {
-      return mz_;
+    
+    private boolean next() throws IOException{
+      line_ = reader_.readLine();
+      if (line_==null)
+        return false;
+      mz_ = Float.parseFloat(line_.substring(0,line_.indexOf(' ')));
+      return true;
+    }
+    
+    private void close() throws IOException{
+      reader_.close();
     }
 
-    public String getMzString()
-    {
-      return mzString_;
+    public int compareTo(RunReader other){
+      int comp = Float.compare(mz_, other.mz_);
+      if (comp!=0)
+        return comp;
+      return Integer.compare(runIndex_, other.runIndex_);
+    }
+  }
+  
+  /**
+   * output stream that keeps track of the written bytes
+   */
+  private static class OffsetOutputStream extends OutputStream{
+    
+    private OutputStream out_;
+    private long offset_;
+    
+    private OffsetOutputStream(OutputStream out){
+      this.out_ = out;
+      this.offset_ = 0l;
+    }
+    
+    private long getOffset(){
+      return offset_;
     }
 
-    public String getIntensity()
-    {
-      return intensity_;
-    } 
+    public void write(int b) throws IOException{
+      out_.write(b);
+      offset_++;
+    }
+    
+    public void write(byte[] b, int off, int len) throws IOException{
+      out_.write(b, off, len);
+      offset_ += len;
+    }
+    
+    public void flush() throws IOException{
+      out_.flush();
+    }
+    
+    public void close() throws IOException{
+      out_.close();
+    }
   }
   
   private boolean isDataLine(String line){
     boolean isDataLine = false;
     if (line!=null && line.length()>0){
-      char[] chars = line.toCharArray();
       boolean foundEmptySpace = false;
       boolean foundOtherChar = false;
-      for (char one : chars){
+      for (int i=0; i!=line.length(); i++){
+        char one = line.charAt(i);
         if (Character.isDigit(one) || one=='.') continue;
         else if (one == ' '){
           foundEmptySpace = true;
@@ -143,6 +143,16 @@ public class BatchQuantThread extends Thread
     return this.finished_;
   }
   
+  /**
+   * @return the raw/quant pairs of this batch including their status; when there is polarity switched data, the pairs are adapted
+   */
+  public Vector<RawQuantificationPairVO> getQuantificationPairs(){
+    Vector<RawQuantificationPairVO> pairs = new Vector<RawQuantificationPairVO>();
+    for (int i=0; i!=quantTableModel_.getRowCount(); i++)
+      pairs.add(quantTableModel_.getDataByRow(i));
+    return pairs;
+  }
+  
   private class ThreadSupervisor extends TimerTask{
 
     public void run()
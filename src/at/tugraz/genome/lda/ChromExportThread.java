@@ -37,7 +37,13 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Hashtable;
+import java.util.LinkedList;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
@@ -48,7 +54,7 @@ import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 
 import at.tugraz.genome.lda.exception.ExcelInputFileException;
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.parser.StudyResultCache;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
 import at.tugraz.genome.lda.swing.ExportPanel;
@@ -87,14 +93,42 @@ public class ChromExportThread extends Thread
   private String currentLipid_;
   private String currentExperiment_;
   private int totalAmountOfLipids_;
-  private boolean interrupt_;
+  private volatile boolean interrupt_;
   private Double rtTolerance_;
   private Hashtable<String,Integer> isLookup_;
   private Hashtable<String,Integer> esLookup_;
+  /** the number of threads extracting and painting the chromatograms*/
+  private int numberOfThreads_;
+  
+  /** how many files per thread may be processed ahead of the one that is composed*/
+  private final static int FILES_AHEAD_PER_THREAD = 2;
+  /** the transparent margin around a painted tile*/
+  private final static int TILE_MARGIN = 4;
   
   
   public ChromExportThread(String lipidClass,File fileToStore,Dimension dim, Vector<String> expsToExport,Vector<String> resultsToUse, Vector<String> chromsToUse, Vector<String> analsToExport, String picType, boolean analInColumn, Double rtTolerance,
       Hashtable<String,Integer> isLookup, Hashtable<String,Integer> esLookup){
+    this(lipidClass,fileToStore,dim,expsToExport,resultsToUse,chromsToUse,analsToExport,picType,analInColumn,rtTolerance,isLookup,esLookup,
+        Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * @param lipidClass the lipid class to export
+   * @param fileToStore the file to store the picture in
+   * @param dim the dimension of the picture
+   * @param expsToExport the names of the experiments to export
+   * @param resultsToUse the LDA result files of the experiments
+   * @param chromsToUse the chrom files of the experiments
+   * @param analsToExport the analytes to export
+   * @param picType the type of the picture (ExportPanel.EXPORT_PNG or ExportPanel.EXPORT_SVG)
+   * @param analInColumn true if the analytes shall be displayed in the columns
+   * @param rtTolerance the retention time tolerance for matching the analytes; null for no retention time matching
+   * @param isLookup lookup for the internal standards
+   * @param esLookup lookup for the external standards
+   * @param numberOfThreads the number of threads extracting and painting the chromatograms of the files
+   */
+  public ChromExportThread(String lipidClass,File fileToStore,Dimension dim, Vector<String> expsToExport,Vector<String> resultsToUse, Vector<String> chromsToUse, Vector<String> analsToExport, String picType, boolean analInColumn, Double rtTolerance,
+      Hashtable<String,Integer> isLookup, Hashtable<String,Integer> esLookup, int numberOfThreads){
     lipidClass_ = lipidClass;
     fileToStore_ = fileToStore;
     dim_ = dim; 
@@ -109,6 +143,7 @@ public class ChromExportThread extends Thread
     rtTolerance_ = rtTolerance;
     isLookup_ = isLookup;
     esLookup_ = esLookup;
+    numberOfThreads_ = numberOfThreads;
   }
   
   public boolean finished(){
@@ -271,31 +306,37 @@ public class ChromExportThread extends Thread
     if (!useMacSpecificSettings(ignorePlatformSpecificSettings))
       g2.rotate(-rotationAngle);
     
-    // now paint the pictures into the boxes
+    // now paint the pictures into the boxes - the chromatograms of the files are extracted in parallel, and for
+    // bitmaps, painted on separate tiles; the tiles are composed in the sequence of the files
     currentLipidCount_ = 0;
-    for (int i=0;i!=chromsToUse.size();i++){
-      String chroFile = chromsToUse.get(i);
-      String[] filePaths = StringUtils.getChromFilePaths(chroFile);
-      try {
-        ChromatogramReader reader_ = new ChromatogramReader(filePaths[1], filePaths[2],filePaths[3], filePaths[0],LipidomicsConstants.isSparseData(),LipidomicsConstants.getChromSmoothRange());
-        Hashtable<String,Boolean> showMods = new Hashtable<String,Boolean>();
-        QuantificationResult result = LDAResultReader.readResultFile(resultsToUse.get(i), showMods);
-        Vector<LipidParameterSet> params = result.getIdentifications().get(lipidClass_);
-        Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>> resultHash = new Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>();
-        for (LipidParameterSet set:params){
-          String displayString = set.getNameString();
-          if (showMods.get(lipidClass_)) displayString+="_"+set.getModificationName();
-          String[] molRtAndMod = StaticUtils.extractMoleculeRtAndModFromMoleculeName(displayString);
-          if (molRtAndMod[1] == null) molRtAndMod[1] = "";
-          if (molRtAndMod[2] == null) molRtAndMod[2] = "";
-          Hashtable<String,Hashtable<String,LipidParameterSet>> rtHash = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
-          if (resultHash.containsKey(molRtAndMod[0])) rtHash = resultHash.get(molRtAndMod[0]);
-          Hashtable<String,LipidParameterSet> modHash = new Hashtable<String,LipidParameterSet>();
-          if (rtHash.containsKey(molRtAndMod[1])) modHash = rtHash.get(molRtAndMod[1]);
-          modHash.put(molRtAndMod[2], set);
-          rtHash.put(molRtAndMod[1], modHash);
-          resultHash.put(molRtAndMod[0], rtHash);
+    // vector graphics are painted directly on the main thread, since the drawing commands have to end up in the SVG
+    boolean paintTiles = !(g instanceof SVGGraphics2D);
+    int threads = Math.max(1, Math.min(numberOfThreads_, chromsToUse.size()));
+    int maxInFlight = threads*FILES_AHEAD_PER_THREAD;
+    ExecutorService threadpool = Executors.newFixedThreadPool(threads);
+    LinkedList<Future<ChromCell[]>> inFlight = new LinkedList<Future<ChromCell[]>>();
+    int nextToSubmit = 0;
+    try{
+      for (int i=0;i!=chromsToUse.size();i++){
+        while (nextToSubmit<chromsToUse.size() && inFlight.size()<maxInFlight){
+          inFlight.add(threadpool.submit(new FileChromExtractor(chromsToUse.get(nextToSubmit),resultsToUse.get(nextToSubmit),analsToExport,
+              paintTiles,widthOnePicture,heightOnePicture)));
+          nextToSubmit++;
         }
+        Future<ChromCell[]> future = inFlight.removeFirst();
+        String chroFile = chromsToUse.get(i);
+        ChromCell[] cells = null;
+        try {
+          cells = getCells(future);
+        }
+        catch (CgException e) {
+          File chro = new File(chroFile);
+          new WarningMessage(new JFrame(), "Warning", "The file "+chro.getName()+" does not work because of the following reason: "+e.getMessage());
+        }catch (ExcelInputFileException e) {
+          File chro = new File(chroFile);
+          new WarningMessage(new JFrame(), "Warning", "The file "+chro.getName()+" does not work because of the following reason: "+e.getMessage());
+        }
+        if (cells==null) continue;
         for (int j=0; j!=analsToExport.size(); j++){
           if (interrupt_){
             errorString_ = "The export has been interrupted! The chroms until this point have been exported!";
@@ -306,85 +347,200 @@ public class ChromExportThread extends Thread
           currentLipidCount_++;
           currentLipid_ = anal;
           currentExperiment_ = expsToExport.get(i);
-          String[] molRtAndMod = StaticUtils.extractMoleculeRtAndModFromMoleculeName(anal);
-          if (molRtAndMod[1] == null) molRtAndMod[1] = "";
-          if (molRtAndMod[2] == null) molRtAndMod[2] = "";
-          if (resultHash.containsKey(molRtAndMod[0])){
-            Hashtable<String,Hashtable<String,LipidParameterSet>> rtHash = resultHash.get(molRtAndMod[0]);
-            LipidParameterSet set = null;
-            Vector<LipidParameterSet> sets = new Vector<LipidParameterSet>();
-            for (String rt : rtHash.keySet()){
-              if (rtTolerance_==null || isLookup_.containsKey(anal) || esLookup_.containsKey(anal) || StaticUtils.isWithinTolerance(rtTolerance_,Double.valueOf(rt),Double.valueOf(molRtAndMod[1]))){
-                if (rtHash.get(rt).containsKey(molRtAndMod[2])) sets.add(rtHash.get(rt).get(molRtAndMod[2]));
-                else if (molRtAndMod[2].equalsIgnoreCase("") && showMods.get(lipidClass_) && rtHash.get(rt).size()==1) sets.add(rtHash.get(rt).values().iterator().next());
-              }
-            }
-            int evidence = StaticUtils.NO_MS2;
-            if (sets.size()==1){
-              set = sets.get(0);
-              evidence = StaticUtils.checkMS2Evidence(set);
-            } else if (sets.size()>1) { 
-              set = new LipidParameterSet(sets.get(0).Mz[0], sets.get(0).Peptide, sets.get(0).getDoubleBonds(),sets.get(0).getModificationName(),0.0, 
-                  sets.get(0).getAnalyteFormula(), sets.get(0).getModificationFormula(), sets.get(0).getCharge(),sets.get(0).getOhNumber());
-              set.LowerMzBand = sets.get(0).LowerMzBand;
-              set.UpperMzBand = sets.get(0).UpperMzBand;
-              Vector<CgProbe> probes = new Vector<CgProbe>();
-              for (int l=0; l!=sets.size(); l++){
-                LipidParameterSet set0 = sets.get(l);
-                int evd0 = StaticUtils.checkMS2Evidence(set0);
-                if (evd0>evidence) evidence = evd0; 
-                for (int k=0; k!=set0.ProbeCount();k++) probes.add(set0.Probe(k));
-              }
-              set.setProbes(probes);
-            }
-            int x0 = leftPictureMargin;
-            if (analInColumn)
-              x0 += (j*maxpaintwidth)/columnLegend.size();
-            else
-              x0 += (i*maxpaintwidth)/columnLegend.size();
-            int y0 = topPictureMargin;
-            if (analInColumn)
-              y0 += ((i+1)*maxpaintheight)/rowLegend.size();
-            else
-              y0 += ((j+1)*maxpaintheight)/rowLegend.size();
-            if (set!=null){
-              Vector<CgProbe> storedProbes = new Vector<CgProbe>();
-              for (int k=0; k!=set.ProbeCount();k++){
-                storedProbes.add(set.Probe(k));
-              }
-              CgChromatogram chrom = reader_.readChromatogram(set.Mz[0]-set.LowerMzBand, set.Mz[0]+set.UpperMzBand,result.getMsLevels().get(lipidClass_));
-              chrom.Smooth(LipidomicsConstants.getChromSmoothRange(),
-                  LipidomicsConstants.getChromSmoothRepeats());
-              chrom.GetMaximumAndAverage();
-              float maxValue = chrom.getM_peakValue();
-              float maxFound = Analyzer.getHighestIntensityOfProbes(storedProbes,chrom);
-              float zoomFactor = 1f;
-              if (maxFound>0) zoomFactor = maxValue/maxFound;
-              if (evidence>StaticUtils.NO_MS2){
-                if (evidence==StaticUtils.PERCENTAL_SPLIT) g.setColor(Color.ORANGE);
-                else if (evidence==StaticUtils.PERCENTAL_SPLIT) g.setColor(Color.YELLOW);
-                else if (evidence==StaticUtils.MS2_FULL) g.setColor(LipidomicsTableCellRenderer.BRIGHT_GREEN);
-                g.fillRect(x0+1, y0-heightOnePicture+1, widthOnePicture-2, heightOnePicture-2);
-                g.setColor(Color.BLACK);
-              }
-              Lipidomics2DPainter.draw2DDiagram(g2, chrom, storedProbes, x0, y0, widthOnePicture, heightOnePicture,
-                  MSMapViewer.DISPLAY_TIME_MINUTES,zoomFactor);
-            }
-            if (LipidomicsConstants.isChromExportShowLegend()){
-              String descr = currentExperiment_+" "+currentLipid_;
-              int sw = legendFontMetrics.stringWidth(descr);
-              g2.drawString(descr, x0+(widthOnePicture-sw)/2,y0-heightOnePicture/2);
-            }
+          if (cells[j]==null) continue;
+          int x0 = leftPictureMargin;
+          if (analInColumn)
+            x0 += (j*maxpaintwidth)/columnLegend.size();
+          else
+            x0 += (i*maxpaintwidth)/columnLegend.size();
+          int y0 = topPictureMargin;
+          if (analInColumn)
+            y0 += ((i+1)*maxpaintheight)/rowLegend.size();
+          else
+            y0 += ((j+1)*maxpaintheight)/rowLegend.size();
+          if (cells[j].tile_!=null)
+            g2.drawImage(cells[j].tile_, x0-TILE_MARGIN, y0-heightOnePicture-TILE_MARGIN, null);
+          else if (cells[j].chrom_!=null)
+            paintCell(g2, cells[j], x0, y0, widthOnePicture, heightOnePicture);
+          if (LipidomicsConstants.isChromExportShowLegend()){
+            String descr = currentExperiment_+" "+currentLipid_;
+            int sw = legendFontMetrics.stringWidth(descr);
+            g2.setColor(Color.BLACK);
+            g2.setFont(legendFont);
+            g2.drawString(descr, x0+(widthOnePicture-sw)/2,y0-heightOnePicture/2);
           }
         }
       }
-      catch (CgException e) {
-        File chro = new File(chroFile);
-        new WarningMessage(new JFrame(), "Warning", "The file "+chro.getName()+" does not work because of the following reason: "+e.getMessage());
-      }catch (ExcelInputFileException e) {
-        File chro = new File(chroFile);
-        new WarningMessage(new JFrame(), "Warning", "The file "+chro.getName()+" does not work because of the following reason: "+e.getMessage());
+    } finally {
+      threadpool.shutdownNow();
+    }
+  }
+  
+  /**
+   * waits for the chromatograms of one file
+   * @param future the extraction task of the file
+   * @return the chromatograms for the analytes to export; null entries for analytes that are not present in the file
+   * @throws CgException if the chrom file cannot be read
+   * @throws ExcelInputFileException if the result file cannot be read
+   */
+  private ChromCell[] getCells(Future<ChromCell[]> future) throws CgException, ExcelInputFileException{
+    try {
+      return future.get();
+    } catch (InterruptedException ix) {
+      throw new CgException("The chromatogram export was interrupted!");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof CgException) throw (CgException)cause;
+      if (cause instanceof ExcelInputFileException) throw (ExcelInputFileException)cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if (cause instanceof Error) throw (Error)cause;
+      throw new CgException(String.valueOf(cause));
+    }
+  }
+  
+  /**
+   * paints the evidence background and the chromatogram of one analyte
+   * @param g the graphics object to paint on
+   * @param cell the chromatogram of the analyte
+   * @param x0 the left position of the box
+   * @param y0 the bottom position of the box
+   * @param widthOnePicture the width of the box
+   * @param heightOnePicture the height of the box
+   */
+  private static void paintCell(Graphics2D g, ChromCell cell, int x0, int y0, int widthOnePicture, int heightOnePicture){
+    if (cell.evidence_>StaticUtils.NO_MS2){
+      if (cell.evidence_==StaticUtils.PERCENTAL_SPLIT) g.setColor(Color.ORANGE);
+      else if (cell.evidence_==StaticUtils.PERCENTAL_SPLIT) g.setColor(Color.YELLOW);
+      else if (cell.evidence_==StaticUtils.MS2_FULL) g.setColor(LipidomicsTableCellRenderer.BRIGHT_GREEN);
+      g.fillRect(x0+1, y0-heightOnePicture+1, widthOnePicture-2, heightOnePicture-2);
+      g.setColor(Color.BLACK);
+    }
+    Lipidomics2DPainter.draw2DDiagram(g, cell.chrom_, cell.storedProbes_, x0, y0, widthOnePicture, heightOnePicture,
+        MSMapViewer.DISPLAY_TIME_MINUTES,cell.zoomFactor_);
+  }
+  
+  /**
+   * the chromatogram of one analyte in one file
+   */
+  private static class ChromCell{
+    /** the extracted and smoothed chromatogram; null if there is no identification that fits*/
+    private CgChromatogram chrom_;
+    /** the probes of the identification*/
+    private Vector<CgProbe> storedProbes_;
+    /** the zoom factor, so that the highest probe fills the box*/
+    private float zoomFactor_;
+    /** the MS2 evidence of the identification*/
+    private int evidence_;
+    /** the painted box for bitmap exports - with a transparent margin of TILE_MARGIN; null for vector graphics*/
+    private BufferedImage tile_;
+  }
+  
+  /**
+   * reads the identifications of one file, extracts and smoothes the chromatograms, and paints the tiles for bitmap exports
+   */
+  private class FileChromExtractor implements Callable<ChromCell[]>{
+    private String chroFile_;
+    private String resultFile_;
+    private Vector<String> analsToExport_;
+    private boolean paintTiles_;
+    private int widthOnePicture_;
+    private int heightOnePicture_;
+    
+    private FileChromExtractor(String chroFile, String resultFile, Vector<String> analsToExport, boolean paintTiles, int widthOnePicture, int heightOnePicture){
+      this.chroFile_ = chroFile;
+      this.resultFile_ = resultFile;
+      this.analsToExport_ = analsToExport;
+      this.paintTiles_ = paintTiles;
+      this.widthOnePicture_ = widthOnePicture;
+      this.heightOnePicture_ = heightOnePicture;
+    }
+
+    public ChromCell[] call() throws CgException, ExcelInputFileException
+    {
+      ChromCell[] cells = new ChromCell[analsToExport_.size()];
+      String[] filePaths = StringUtils.getChromFilePaths(chroFile_);
+      ChromatogramReader reader_ = new ChromatogramReader(filePaths[1], filePaths[2],filePaths[3], filePaths[0],LipidomicsConstants.isSparseData(),LipidomicsConstants.getChromSmoothRange());
+      Hashtable<String,Boolean> showMods = new Hashtable<String,Boolean>();
+      QuantificationResult result = StudyResultCache.getInstance().getResult(resultFile_, showMods, lipidClass_);
+      Vector<LipidParameterSet> params = result.getIdentifications().get(lipidClass_);
+      Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>> resultHash = new Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>();
+      for (LipidParameterSet set:params){
+        String displayString = set.getNameString();
+        if (showMods.get(lipidClass_)) displayString+="_"+set.getModificationName();
+        String[] molRtAndMod = StaticUtils.extractMoleculeRtAndModFromMoleculeName(displayString);
+        if (molRtAndMod[1] == null) molRtAndMod[1] = "";
+        if (molRtAndMod[2] == null) molRtAndMod[2] = "";
+        Hashtable<String,Hashtable<String,LipidParameterSet>> rtHash = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
+        if (resultHash.containsKey(molRtAndMod[0])) rtHash = resultHash.get(molRtAndMod[0]);
+        Hashtable<String,LipidParameterSet> modHash = new Hashtable<String,LipidParameterSet>();
+        if (rtHash.containsKey(molRtAndMod[1])) modHash = rtHash.get(molRtAndMod[1]);
+        modHash.put(molRtAndMod[2], set);
+        rtHash.put(molRtAndMod[1], modHash);
+        resultHash.put(molRtAndMod[0], rtHash);
+      }
+      for (int j=0; j!=analsToExport_.size(); j++){
+        if (interrupt_) break;
+        String anal = analsToExport_.get(j);
+        String[] molRtAndMod = StaticUtils.extractMoleculeRtAndModFromMoleculeName(anal);
+        if (molRtAndMod[1] == null) molRtAndMod[1] = "";
+        if (molRtAndMod[2] == null) molRtAndMod[2] = "";
+        if (!resultHash.containsKey(molRtAndMod[0])) continue;
+        Hashtable<String,Hashtable<String,LipidParameterSet>> rtHash = resultHash.get(molRtAndMod[0]);
+        LipidParameterSet set = null;
+        Vector<LipidParameterSet> sets = new Vector<LipidParameterSet>();
+        for (String rt : rtHash.keySet()){
+          if (rtTolerance_==null || isLookup_.containsKey(anal) || esLookup_.containsKey(anal) || StaticUtils.isWithinTolerance(rtTolerance_,Double.valueOf(rt),Double.valueOf(molRtAndMod[1]))){
+            if (rtHash.get(rt).containsKey(molRtAndMod[2])) sets.add(rtHash.get(rt).get(molRtAndMod[2]));
+            else if (molRtAndMod[2].equalsIgnoreCase("") && showMods.get(lipidClass_) && rtHash.get(rt).size()==1) sets.add(rtHash.get(rt).values().iterator().next());
+          }
+        }
+        int evidence = StaticUtils.NO_MS2;
+        if (sets.size()==1){
+          set = sets.get(0);
+          evidence = StaticUtils.checkMS2Evidence(set);
+        } else if (sets.size()>1) { 
+          set = new LipidParameterSet(sets.get(0).Mz[0], sets.get(0).Peptide, sets.get(0).getDoubleBonds(),sets.get(0).getModificationName(),0.0, 
+              sets.get(0).getAnalyteFormula(), sets.get(0).getModificationFormula(), sets.get(0).getCharge(),sets.get(0).getOhNumber());
+          set.LowerMzBand = sets.get(0).LowerMzBand;
+          set.UpperMzBand = sets.get(0).UpperMzBand;
+          Vector<CgProbe> probes = new Vector<CgProbe>();
+          for (int l=0; l!=sets.size(); l++){
+            LipidParameterSet set0 = sets.get(l);
+            int evd0 = StaticUtils.checkMS2Evidence(set0);
+            if (evd0>evidence) evidence = evd0; 
+            for (int k=0; k!=set0.ProbeCount();k++) probes.add(set0.Probe(k));
+          }
+          set.setProbes(probes);
+        }
+        ChromCell cell = new ChromCell();
+        cells[j] = cell;
+        if (set==null) continue;
+        cell.evidence_ = evidence;
+        cell.storedProbes_ = new Vector<CgProbe>();
+        for (int k=0; k!=set.ProbeCount();k++){
+          cell.storedProbes_.add(set.Probe(k));
+        }
+        CgChromatogram chrom = reader_.readChromatogram(set.Mz[0]-set.LowerMzBand, set.Mz[0]+set.UpperMzBand,result.getMsLevels().get(lipidClass_));
+        chrom.Smooth(LipidomicsConstants.getChromSmoothRange(),
+            LipidomicsConstants.getChromSmoothRepeats());
+        chrom.GetMaximumAndAverage();
+        float maxValue = chrom.getM_peakValue();
+        float maxFound = Analyzer.getHighestIntensityOfProbes(cell.storedProbes_,chrom);
+        cell.zoomFactor_ = 1f;
+        if (maxFound>0) cell.zoomFactor_ = maxValue/maxFound;
+        cell.chrom_ = chrom;
+        if (paintTiles_){
+          cell.tile_ = new BufferedImage(widthOnePicture_+2*TILE_MARGIN,heightOnePicture_+1+2*TILE_MARGIN,BufferedImage.TYPE_INT_ARGB);
+          Graphics2D g = cell.tile_.createGraphics();
+          g.setColor(Color.BLACK);
+          paintCell(g, cell, TILE_MARGIN, TILE_MARGIN+heightOnePicture_, widthOnePicture_, heightOnePicture_);
+          g.dispose();
+          //the tile contains all the information required for painting
+          cell.chrom_ = null;
+          cell.storedProbes_ = null;
+        }
       }
+      return cells;
     }
   }
   
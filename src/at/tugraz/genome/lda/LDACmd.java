@@ -23,12 +23,16 @@
 
 package at.tugraz.genome.lda;
 import java.io.File;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
 import javax.swing.JLabel;
 import javax.swing.JProgressBar;
 
@@ -40,10 +44,20 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import at.tugraz.genome.lda.analysis.ComparativeAnalysis;
+import at.tugraz.genome.lda.analysis.ComparativeAnalysisPipeline;
+import at.tugraz.genome.lda.exception.QuantificationException;
+import at.tugraz.genome.lda.mztab.MzTabExporter;
+import at.tugraz.genome.lda.mztab.MzTabStreamWriter;
+import at.tugraz.genome.lda.profiling.PipelineMetrics;
 import at.tugraz.genome.lda.swing.BatchQuantificationTable;
 import at.tugraz.genome.lda.swing.BatchQuantificationTableModel;
 import at.tugraz.genome.lda.utils.StaticUtils;
+import at.tugraz.genome.lda.vos.QuantVO;
 import at.tugraz.genome.lda.vos.RawQuantificationPairVO;
+import at.tugraz.genome.lda.vos.ResultDisplaySettingsVO;
+import de.isas.mztab2.model.ValidationMessage;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType.Level;
 
 
 /**
@@ -54,6 +68,13 @@ import at.tugraz.genome.lda.vos.RawQuantificationPairVO;
 public class LDACmd
 {
   
+  /** the first argument for exporting LDA result files to mzTab-M instead of a quantification*/
+  public final static String MODE_MZTAB = "mztab";
+  /** the first argument for running the comparative analysis and its exports as defined in a settings file*/
+  public final static String MODE_STATISTICS = "statistics";
+  /** the first argument for starting the quantification daemon*/
+  public final static String MODE_DAEMON = "daemon";
+  
   /** for logging error messages*/
   private static Logger log_ = Logger.getLogger(LDACmd.class.getName());
   
@@ -75,6 +96,18 @@ public class LDACmd
    */
   public static void main(String[] args)
   {
+    if (args.length>0 && args[0].equalsIgnoreCase(MODE_MZTAB)){
+      exportMzTab(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length>0 && args[0].equalsIgnoreCase(MODE_STATISTICS)){
+      runStatistics(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length>0 && args[0].equalsIgnoreCase(MODE_DAEMON)){
+      runDaemon(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
     Options parameters = new Options();
     Option option=new Option("i","input", true, "directory containing raw data");
     option.setRequired(true);
@@ -112,6 +145,12 @@ public class LDACmd
     option=new Option("v","version", false, "version of Lipid Data Analyzer");
     option.setRequired(false);
     parameters.addOption(option);    
+    option=new Option("m","metrics", false, "write a metrics report (JSON) next to each translated and quantified file");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("jmx","jmx", false, "expose the metrics of the running files through JMX (implies metrics)");
+    option.setRequired(false);
+    parameters.addOption(option);
     
     CommandLineParser cmdParser = new DefaultParser();
     CommandLine command;
@@ -128,6 +167,15 @@ public class LDACmd
       System.out.println("Version: "+Settings.VERSION);
       System.exit(0);
     }
+    if (command.hasOption("m") || command.hasOption("jmx"))
+      PipelineMetrics.setEnabled(true);
+    if (command.hasOption("jmx")){
+      try{
+        PipelineMetrics.registerMXBean();
+      } catch (JMException jmx){
+        log_.severe("The metrics could not be registered at the MBean server: "+jmx.getMessage());
+      }
+    }
     
     String rawDirString = command.getOptionValue("i");
     String quantDirString = command.getOptionValue("q");
@@ -270,6 +318,211 @@ public class LDACmd
         searchUnknownBatchTime);
   }
   
+  /**
+   * headless mzTab-M export of LDA result files - the species of all classes are exported with the highest available isotope
+   * @param args the input arguments from the command line interface without the leading MODE_MZTAB
+   */
+  @SuppressWarnings("unchecked")
+  private static void exportMzTab(String[] args){
+    Options parameters = new Options();
+    Option option=new Option("r","results", true, "directory containing the LDA result files (xlsx)");
+    option.setRequired(true);
+    parameters.addOption(option);
+    option=new Option("o","output", true, "the mzTab-M file to write");
+    option.setRequired(true);
+    parameters.addOption(option);
+    option=new Option("is","internalStandard", true, "prefix of internal standards");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("es","externalStandard", true, "prefix of external standards");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("qf","quantFile", true, "quant file defining the order of the analytes");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("pos","positive", false, "the quant file is in positive ion mode");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("rtGr","rtGrouping", true, "separate hits by retention time with this tolerance in minutes");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("t","type", true, "structural level of the export: species, chain, or position");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("db","doubleBonds", false, "export double bond positions");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("val","validate", false, "validate the written mzTab-M file");
+    option.setRequired(false);
+    parameters.addOption(option);
+    CommandLineParser cmdParser = new DefaultParser();
+    CommandLine command;
+    try{
+      command = cmdParser.parse(parameters, args);
+    }catch (ParseException pe){ 
+      printUsage(parameters,pe.getMessage()); 
+      return; 
+    }
+    File resultDir = new File(command.getOptionValue("r"));
+    if (!resultDir.exists() || !resultDir.isDirectory()){
+      log_.severe("The result directory does not exist");
+      System.exit(1);
+    }
+    Vector<File> resultFiles = new Vector<File>();
+    File[] candidates = resultDir.listFiles();
+    Arrays.sort(candidates);
+    for (File candidate : candidates){
+      if (candidate.isFile() && StaticUtils.extractFileNameAndSuffix(candidate.getAbsolutePath())[1].equalsIgnoreCase("xlsx"))
+        resultFiles.add(candidate);
+    }
+    if (resultFiles.size()==0){
+      log_.severe("In the specified result directory are no LDA result files");
+      System.exit(1);
+    }
+    double rtGroupingTime = -1d;
+    try{
+      if (command.getOptionValue("rtGr")!=null) rtGroupingTime = Double.parseDouble(command.getOptionValue("rtGr"));
+    }catch (NumberFormatException nfx){
+      log_.severe("RT grouping tolerance is not float format");
+      System.exit(1);
+    }
+    short speciesType = LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES;
+    if (command.getOptionValue("t")!=null){
+      if (command.getOptionValue("t").equalsIgnoreCase("chain"))
+        speciesType = LipidomicsConstants.EXPORT_ANALYTE_TYPE_CHAIN;
+      else if (command.getOptionValue("t").equalsIgnoreCase("position"))
+        speciesType = LipidomicsConstants.EXPORT_ANALYTE_TYPE_POSITION;
+      else if (!command.getOptionValue("t").equalsIgnoreCase("species")){
+        log_.severe("For the export type is only species/chain/position allowed and not \""+command.getOptionValue("t")+"\"");
+        System.exit(1);
+      }
+    }
+    String isPrefix = command.getOptionValue("is")!=null ? command.getOptionValue("is") : Settings.getInternalStandardDefaultInput();
+    String esPrefix = command.getOptionValue("es")!=null ? command.getOptionValue("es") : Settings.getExternalStandardDefaultInput();
+    File exportFile = new File(command.getOptionValue("o"));
+    try{
+      LinkedHashMap<String,Integer> classSequence = null;
+      LinkedHashMap<String,Vector<String>> correctAnalyteSequence = null;
+      Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects = null;
+      if (command.getOptionValue("qf")!=null){
+        @SuppressWarnings("rawtypes")
+        Vector quantInfo = QuantificationThread.getCorrectAnalyteSequence(command.getOptionValue("qf"),command.hasOption("pos"));
+        classSequence = (LinkedHashMap<String,Integer>)quantInfo.get(0);
+        correctAnalyteSequence = (LinkedHashMap<String,Vector<String>>)quantInfo.get(1);
+        quantObjects = (Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>>)quantInfo.get(4);
+      }
+      ComparativeAnalysis analysisModule = new ComparativeAnalysis(resultFiles, isPrefix, esPrefix, null, null, -1, classSequence,
+          correctAnalyteSequence, quantObjects, rtGroupingTime);
+      analysisModule.parseInput(0, false);
+      analysisModule.calculateStatistics();
+      new MzTabExporter(analysisModule).export(exportFile, speciesType, command.hasOption("db"),
+          MzTabExporter.createDefaultSelections(analysisModule, ResultDisplaySettingsVO.REL_VALUE));
+      System.out.println("mzTab-M written to: "+exportFile.getAbsolutePath());
+      if (command.hasOption("val")){
+        List<ValidationMessage> messages = MzTabStreamWriter.validate(exportFile, Level.Warn, 100, System.out);
+        System.out.println("Validation messages: "+messages.size());
+      }
+    }catch (Exception ex){
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+  
+  /**
+   * headless comparative analysis of LDA result files - reading, statistics and exports are defined by a settings file (see ComparativeAnalysisPipeline)
+   * @param args the input arguments from the command line interface without the leading MODE_STATISTICS
+   */
+  private static void runStatistics(String[] args){
+    Options parameters = new Options();
+    Option option=new Option("s","settings", true, "settings file defining the result files, the statistics and the exports (Excel/text/PNG heat map per class, RDB, mzTab-M)");
+    option.setRequired(true);
+    parameters.addOption(option);
+    CommandLineParser cmdParser = new DefaultParser();
+    CommandLine command;
+    try{
+      command = cmdParser.parse(parameters, args);
+    }catch (ParseException pe){ 
+      printUsage(parameters,pe.getMessage()); 
+      return; 
+    }
+    File settingsFile = new File(command.getOptionValue("s"));
+    if (!settingsFile.exists() || !settingsFile.isFile()){
+      log_.severe("The settings file does not exist");
+      System.exit(1);
+    }
+    try{
+      ComparativeAnalysisPipeline pipeline = new ComparativeAnalysisPipeline(settingsFile);
+      pipeline.run();
+      System.out.println("Results written to: "+pipeline.getOutputDir().getAbsolutePath());
+      if (pipeline.getFailures()>0){
+        log_.severe(pipeline.getFailures()+" export(s) failed");
+        System.exit(1);
+      }
+    }catch (Exception ex){
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+  
+  /**
+   * starts the quantification daemon which processes the jobs of a spool directory (see QuantificationDaemon)
+   * @param args the input arguments from the command line interface without the leading MODE_DAEMON
+   */
+  private static void runDaemon(String[] args){
+    Options parameters = new Options();
+    Option option=new Option("d","spoolDir", true, "directory where the quantification jobs are submitted");
+    option.setRequired(true);
+    parameters.addOption(option);
+    option=new Option("j","jobs", true, "maximum amount of jobs running at the same time");
+    option.setRequired(false);
+    parameters.addOption(option);
+    option=new Option("t","threads", true, "maximum amount of threads of all running jobs together (default: available processors)");
+    option.setRequired(false);
+    parameters.addOption(option);
+    CommandLineParser cmdParser = new DefaultParser();
+    CommandLine command;
+    try{
+      command = cmdParser.parse(parameters, args);
+    }catch (ParseException pe){ 
+      printUsage(parameters,pe.getMessage()); 
+      return; 
+    }
+    File spoolDir = new File(command.getOptionValue("d"));
+    if (!spoolDir.exists() || !spoolDir.isDirectory()){
+      log_.severe("The spool directory does not exist");
+      System.exit(1);
+    }
+    int jobs = 1;
+    try{
+      if (command.getOptionValue("j")!=null) jobs = Integer.parseInt(command.getOptionValue("j"));
+      if (jobs<1) {
+        log_.severe("Number of jobs must be greater 0");
+        System.exit(1);
+      }
+    }catch (NumberFormatException nfx){
+      log_.severe("Number of jobs is not integer format");
+      System.exit(1);
+    }
+    int threads = Runtime.getRuntime().availableProcessors();
+    try{
+      if (command.getOptionValue("t")!=null) threads = Integer.parseInt(command.getOptionValue("t"));
+      if (threads<1) {
+        log_.severe("Number of threads must be greater 0");
+        System.exit(1);
+      }
+    }catch (NumberFormatException nfx){
+      log_.severe("Number of threads is not integer format");
+      System.exit(1);
+    }
+    try{
+      new QuantificationDaemon(spoolDir, jobs, threads).run();
+    }catch (InterruptedException ix){
+      log_.severe("The quantification daemon has been interrupted");
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+  
   /**
    * checks for the existence of directories, detects quantifiable files and quantification files, and starts the batch quantification
    * @param rawDirString directory containing the MS data
@@ -287,6 +540,42 @@ public class LDACmd
   private void prepareAndStartQuatification(String rawDirString, String quantDirString,
       int nrChromProcessors, int nrProcessors, float cutoff, int isotopesMustMatch, int amountOfIsotopes,
       float minusTimeTol, float plusTimeTol, float rtShift, boolean searchUnknownBatchTime) {
+    Vector<RawQuantificationPairVO> pairs = null;
+    try{
+      pairs = detectQuantificationPairs(rawDirString, quantDirString);
+    }catch (QuantificationException qx){
+      log_.severe(qx.getMessage());
+      System.exit(1);
+    }
+    if (pairs.size()==0)
+      return;
+    try {
+      batchQuantThread_ = createBatchQuantThread(pairs, nrChromProcessors, nrProcessors, cutoff, isotopesMustMatch, amountOfIsotopes,
+          minusTimeTol, plusTimeTol, rtShift, searchUnknownBatchTime);
+      batchQuantThread_.start();
+      this.initTimer();
+    }catch(Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+  
+  /**
+   * creates a batch quantification thread for the command line - the thread is not started
+   * @param pairs the raw/quant pairs that shall be quantified
+   * @param nrChromProcessors amount of processors/threads to be used for file translation
+   * @param nrProcessors amount of processors/threads to be used for quantification
+   * @param cutoff the relative cutoff value in per mille
+   * @param isotopesMustMatch number of isotopes that must match the theoretical distribution
+   * @param amountOfIsotopes number of isotopes that shall be quantified
+   * @param minusTimeTol retention time before tolerance
+   * @param plusTimeTol retention time after tolerance
+   * @param rtShift retention time shift
+   * @param searchUnknownBatchTime search unknown retention time
+   * @return the batch quantification thread
+   */
+  static BatchQuantThread createBatchQuantThread(Vector<RawQuantificationPairVO> pairs, int nrChromProcessors, int nrProcessors, float cutoff,
+      int isotopesMustMatch, int amountOfIsotopes, float minusTimeTol, float plusTimeTol, float rtShift, boolean searchUnknownBatchTime){
     BatchQuantificationTableModel batchQuantTableModel = new BatchQuantificationTableModel();
     BatchQuantificationTable batchQuantTable = new BatchQuantificationTable(batchQuantTableModel);
     
@@ -294,10 +583,28 @@ public class LDACmd
     JLabel quantifyingBatchLabel = new JLabel("Quantifying");
     JProgressBar progressBatchBar = new JProgressBar();
     progressBatchBar.setMaximum(100);
-
-    
+    boolean ionMode = false;
+//    if (this.ionModeBatch_!=null && ((String)ionModeBatch_.getSelectedItem()).equalsIgnoreCase("+"))
+//      ionMode = true;
+    batchQuantTableModel.clearFiles();
+    batchQuantTableModel.addFiles(pairs);
+    progressBatchBar.setValue(0);
+    return new BatchQuantThread(batchQuantTable, batchQuantTableModel,progressBatchBar, 
+        quantifyingBatchLabel, minusTimeTol,plusTimeTol,amountOfIsotopes,isotopesMustMatch,searchUnknownBatchTime, cutoff, 
+        rtShift, nrChromProcessors,nrProcessors,ionMode,true);
+  }
+  
+  /**
+   * checks for the existence of directories and detects the quantifiable files and their quantification files
+   * @param rawDirString directory containing the MS data
+   * @param quantDirString directory containing quantification files
+   * @return the raw/quant pairs that shall be quantified; empty if no directories are specified
+   * @throws QuantificationException if a directory does not exist or if there are no quantifiable pairs
+   */
+  static Vector<RawQuantificationPairVO> detectQuantificationPairs(String rawDirString, String quantDirString) throws QuantificationException{
     Vector<File> rawFiles = new Vector<File>();
     Vector<File> quantFiles = new Vector<File>();
+    Vector<RawQuantificationPairVO> pairs = new Vector<RawQuantificationPairVO>();
     if (rawDirString!=null && rawDirString.length()>0 && quantDirString!=null&&quantDirString.length()>0){
       File rawDir = new File(rawDirString );
       File quantDir = new File(quantDirString);
@@ -377,50 +684,29 @@ public class LDACmd
           }
           if (Settings.useAlex() && containsTxtFiles)
             quantFiles.add(quantDir);
-          Vector<RawQuantificationPairVO> pairs = new Vector<RawQuantificationPairVO>();
-          
-          if (rawFiles.size()>0 && quantFiles.size()>0 && (pairs = LipidDataAnalyzer.generateQuantificationPairVOs(rawFiles,quantFiles)).size()>0){
-            boolean ionMode = false;
-//            if (this.ionModeBatch_!=null && ((String)ionModeBatch_.getSelectedItem()).equalsIgnoreCase("+"))
-//              ionMode = true;
-            batchQuantTableModel.clearFiles();
-            batchQuantTableModel.addFiles(pairs);
-            progressBatchBar.setValue(0);
-            try {
-              batchQuantThread_ = new BatchQuantThread(batchQuantTable, batchQuantTableModel,progressBatchBar, 
-              quantifyingBatchLabel, minusTimeTol,plusTimeTol,amountOfIsotopes,isotopesMustMatch,searchUnknownBatchTime, cutoff, 
-                rtShift, nrChromProcessors,nrProcessors,ionMode,true);
-              batchQuantThread_.start();
-              this.initTimer();
-            }catch(Exception ex) {
-              ex.printStackTrace();
-              System.exit(1);
-            }
-          }else{
+          if (rawFiles.size()>0 && quantFiles.size()>0)
+            pairs = LipidDataAnalyzer.generateQuantificationPairVOs(rawFiles,quantFiles);
+          if (pairs.size()==0){
             if (rawFiles.size()==0){
-              log_.severe("In the specified raw directory are no quantifyable files");
-              System.exit(1);
+              throw new QuantificationException("In the specified raw directory are no quantifyable files");
             }
             if (quantFiles.size()==0){
-              log_.severe("In the specified quant directory are no quantifyable files");
-              System.exit(1);
+              throw new QuantificationException("In the specified quant directory are no quantifyable files");
             }
             if (rawFiles.size()>0 && quantFiles.size()>0) {
-              log_.severe("In the specified directories are no quantifyable raw/quant pairs");
-              System.exit(1);
+              throw new QuantificationException("In the specified directories are no quantifyable raw/quant pairs");
             }
           }
         }else{
           if (!rawDir.exists()||!rawDir.isDirectory()){
-            log_.severe("The raw directory does not exist");
-            System.exit(1);
+            throw new QuantificationException("The raw directory does not exist");
           }
           if (!quantDir.exists()||!quantDir.isDirectory()){
-            log_.severe("The quantification directory does not exist");
-            System.exit(1);
+            throw new QuantificationException("The quantification directory does not exist");
           }
         }
     }
+    return pairs;
   }
   
   
@@ -47,7 +47,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Hashtable;
@@ -58,8 +57,10 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
@@ -126,9 +127,9 @@ import at.tugraz.genome.lda.exception.RetentionTimeGroupingException;
 import at.tugraz.genome.lda.exception.RulesException;
 import at.tugraz.genome.lda.exception.SettingsException;
 import at.tugraz.genome.lda.export.ExcelAndTextExporter;
-import at.tugraz.genome.lda.export.LDAExporter;
 import at.tugraz.genome.lda.export.OmegaCollector;
 import at.tugraz.genome.lda.export.QuantificationResultExporter;
+import at.tugraz.genome.lda.export.vos.OmegaSummaryVO;
 import at.tugraz.genome.lda.fragai.ExcelTargetListParser;
 import at.tugraz.genome.lda.fragai.SpectraIdentifier;
 import at.tugraz.genome.lda.fragai.SpectraInterpreter;
@@ -142,11 +143,10 @@ import at.tugraz.genome.lda.masslist.MassListCreatorPanel;
 import at.tugraz.genome.lda.msn.LipidomicsMSnSet;
 import at.tugraz.genome.lda.msn.MSnAnalyzer;
 import at.tugraz.genome.lda.msn.RulesContainer;
-import at.tugraz.genome.lda.msn.hydroxy.parser.HydroxyEncoding;
 import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
-import at.tugraz.genome.lda.mztab.MztabUtils;
-import at.tugraz.genome.lda.mztab.SmallMztabMolecule;
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.mztab.MzTabExporter;
+import at.tugraz.genome.lda.mztab.MzTabStreamWriter;
+import at.tugraz.genome.lda.parser.StudyResultCache;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.LipidomicsAnalyzer;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
@@ -179,6 +179,7 @@ import at.tugraz.genome.lda.verifier.DoubleVerifier;
 import at.tugraz.genome.lda.vos.AbsoluteSettingsVO;
 import at.tugraz.genome.lda.vos.AddAnalyteVO;
 import at.tugraz.genome.lda.vos.AutoAnalyteAddVO;
+import at.tugraz.genome.lda.vos.ClassExportSelectionVO;
 import at.tugraz.genome.lda.vos.IntegerStringVO;
 import at.tugraz.genome.lda.vos.QuantVO;
 import at.tugraz.genome.lda.vos.RawQuantificationPairVO;
@@ -208,26 +209,6 @@ import at.tugraz.genome.voutils.GeneralComparator;
 
 import org.jogamp.java3d.utils.applet.MainFrame;
 
-import de.isas.mztab2.io.MzTabValidatingWriter;
-import de.isas.mztab2.io.MzTabWriter;
-import de.isas.mztab2.io.MzTabWriterDefaults;
-import de.isas.mztab2.model.Assay;
-import de.isas.mztab2.model.CV;
-import de.isas.mztab2.model.Contact;
-import de.isas.mztab2.model.Database;
-import de.isas.mztab2.model.Instrument;
-import de.isas.mztab2.model.Metadata;
-import de.isas.mztab2.model.MsRun;
-import de.isas.mztab2.model.MzTab;
-import de.isas.mztab2.model.Parameter;
-import de.isas.mztab2.model.Sample;
-import de.isas.mztab2.model.SampleProcessing;
-import de.isas.mztab2.model.SmallMoleculeEvidence;
-import de.isas.mztab2.model.SmallMoleculeFeature;
-import de.isas.mztab2.model.SmallMoleculeSummary;
-import de.isas.mztab2.model.Software;
-import de.isas.mztab2.model.StudyVariable;
-import de.isas.mztab2.model.ValidationMessage;
 
 /**
  * 
@@ -3143,35 +3124,14 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
   private void readResultFile(String filePath,boolean keepOrder) throws ExcelInputFileException{
     resultsShowModification_ = new Hashtable<String,Boolean>();
     if (!keepOrder) orderResultsType_ = new Hashtable<String,Integer>();
-    result_ = LDAResultReader.readResultFile(filePath,  resultsShowModification_);
+    result_ = StudyResultCache.getInstance().getModifiableResult(filePath,  resultsShowModification_);
     
     //start: added via the oxidized lipids extension
-    originalResult_ = new QuantificationResult(result_); //changed to deep copy instead of reading the file again => TODO: make sure this is fine
-    
-    mSnResult_ = LDAResultReader.readResultFile(filePath,  resultsShowModification_);
-    chainResult_ = LDAResultReader.readResultFile(filePath,  resultsShowModification_);
-    Hashtable<String,Vector<LipidParameterSet>> mSnHash = new Hashtable<String,Vector<LipidParameterSet>>();
-    Hashtable<String,Vector<LipidParameterSet>> chainHash = new Hashtable<String,Vector<LipidParameterSet>>();
-    
-    for (String lipidClass : result_.getIdentifications().keySet()) {
-    	Vector<LipidParameterSet> params = result_.getIdentifications().get(lipidClass);
-    	Vector<LipidParameterSet> mSnSets = new Vector<LipidParameterSet>();
-    	Vector<LipidParameterSet> chainSets = new Vector<LipidParameterSet>();
-    	for (LipidParameterSet param  : params){
-  			if (param instanceof LipidomicsMSnSet) {
-  				mSnSets.add(param);
-  				LipidomicsMSnSet msn_param = (LipidomicsMSnSet) param;
-  				if(!msn_param.getChainFragments().isEmpty())
-  				{
-  					chainSets.add(param);
-  				}
-  			}
-  		}
-    	mSnHash.put(lipidClass, mSnSets);
-    	chainHash.put(lipidClass, chainSets);
-    }
-    mSnResult_.setIdentifications(mSnHash);
-    chainResult_.setIdentifications(chainHash);
+    //the edited result shares the identifications with the displayed one; the MSn and chain evidence views are filtered
+    //views sharing the identification objects - thus, the file has to be parsed only once
+    originalResult_ = new QuantificationResult(result_);
+    mSnResult_ = result_.createView(null, (param) -> param instanceof LipidomicsMSnSet);
+    chainResult_ = result_.createView(null, (param) -> param instanceof LipidomicsMSnSet && !((LipidomicsMSnSet)param).getChainFragments().isEmpty());
     //end: added via the oxidized lipids extension
     
     if (result_.getConstants()!=null && result_.getConstants().getShotgun()>LipidomicsConstants.SHOTGUN_FALSE)
@@ -4470,7 +4430,7 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
       Hashtable<String,Boolean> showMods = new Hashtable<String,Boolean>();
       Hashtable<String,String> modHash = new Hashtable<String,String>();
       for (String modName : selectedMods) modHash.put(modName, modName);
-      QuantificationResult result1 = LDAResultReader.readResultFile(absFilePathStartEx, showMods);
+      QuantificationResult result1 = StudyResultCache.getInstance().getModifiableResult(absFilePathStartEx, showMods);
       Hashtable<String,LipidParameterSet> paramOfInterest = getParamByAnalyteName(analyteName, result1.getIdentifications().get(groupName), modHash);
       String[] nameAndRt = StaticUtils.extractMoleculeRtAndModFromMoleculeName(analyteName);
       if (nameAndRt[1]==null) nameAndRt[1] = "";
@@ -4480,7 +4440,7 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
         for (String updateablePath : foundUpdateables){
           Hashtable<String,Boolean> updateShowMods = new Hashtable<String,Boolean>();
           try{
-            QuantificationResult result2 = LDAResultReader.readResultFile(updateablePath, updateShowMods);
+            QuantificationResult result2 = StudyResultCache.getInstance().getModifiableResult(updateablePath, updateShowMods);
             Vector<LipidParameterSet> updateParams = result2.getIdentifications().get(groupName);
             Hashtable<String,Vector<LipidParameterSet>> paramsToSelectOne = new Hashtable<String,Vector<LipidParameterSet>>();
             Vector<Integer> updateToRemove = new Vector<Integer>();
@@ -4624,7 +4584,7 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
       for (String modName : selectedMods) modHash.put(modName, modName);
       for (String absFilePathStartEx : uniqueExampleExps.keySet()){
         //System.out.println("Now I am reading: "+absFilePathStartEx);
-        QuantificationResult result1 = LDAResultReader.readResultFile(absFilePathStartEx, showMods);
+        QuantificationResult result1 = StudyResultCache.getInstance().getModifiableResult(absFilePathStartEx, showMods);
         uniqueExampleExps.put(absFilePathStartEx, result1.getMsLevels().get(groupName));
         for (int i=0; i!=analyteNames.size(); i++){
           String analyteName = analyteNames.get(i);
@@ -4640,7 +4600,7 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
       for (String updateAbsPath : uniqueUpdatePaths.keySet()){
         try{
           //System.out.println("file to be updated: "+updateAbsPath);
-          QuantificationResult result2 = LDAResultReader.readResultFile(updateAbsPath, new Hashtable<String,Boolean>());
+          QuantificationResult result2 = StudyResultCache.getInstance().getModifiableResult(updateAbsPath, new Hashtable<String,Boolean>());
           String chromSetBasePath = StaticUtils.extractChromBaseName(updateAbsPath, uniqueUpdatePaths.get(updateAbsPath));
           String[] chromPaths = StringUtils.getChromFilePaths(chromSetBasePath+".chrom");
           LipidomicsAnalyzer analyzer = new LipidomicsAnalyzer(chromPaths[1],chromPaths[2],chromPaths[3],chromPaths[0],false);
@@ -5208,278 +5168,58 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
   
   public void exportMzTab(File exportFile, short speciesTypeParam, boolean exportDoubleBondPositions)
   {
-    
-	    Metadata metadata = new Metadata();
-    metadata.setIdConfidenceMeasure(new ArrayList<Parameter>());
-    //TODO: this has to be generated somehow differently
-	    metadata.setMzTabID("1");
-	    Software software = new Software();
-	    software.setId(1);
-	    software.setParameter(new Parameter().name("LipidDataAnalyzer").value(Settings.VERSION));
-	    metadata.addSoftwareItem(software);
-	    Parameter quantMethod = new Parameter().cvLabel("MS").cvAccession("MS:1002019").name("label free raw feature quantitation").value(null);
-    metadata.setQuantificationMethod(quantMethod);
-	    List<CV> cvs = new ArrayList<CV>();
-	    CV label = new CV().id(1).label("MS").fullName("PSI-MS controlled vocabulary").version("20-06-2018").uri("https://www.ebi.ac.uk/ols/ontologies/ms");
-	    cvs.add(label);
-    label = new CV().id(2).label("PRIDE").fullName("PRIDE PRoteomics IDEntifications (PRIDE) database controlled vocabulary").version("14-06-2018").uri("https://www.ebi.ac.uk/ols/ontologies/pride");
-    cvs.add(label);
-    
-    int cvId = 3;
-    if (LipidomicsConstants.isCvSepRequired()){
-      label = new CV().id(cvId).label("SEP").fullName("Sample Processing and Separation Techniques Ontology").version("1.070708").uri("http://purl.bioontology.org/ontology/SEP");
-      cvs.add(label);
-      cvId++;
-    }
-    if (LipidomicsConstants.isCvChmoRequired()){
-      label = new CV().id(cvId).label("CHMO").fullName("Chemical Methods Ontology").version("14-11-2019").uri("http://purl.obolibrary.org/obo/chmo.owl");
-      cvs.add(label);
-      cvId++;
-    }
-    if (LipidomicsConstants.isCvNcbiTaxonRequired()){      
-      label = new CV().id(cvId).label("NCBITaxon").fullName("NCBI organismal classification").version("2018-03-02").uri("https://www.ebi.ac.uk/ols/ontologies/ncbitaxon");
-      cvs.add(label);
-      cvId++;
-    }
-    if (LipidomicsConstants.isClRequired()){      
-      label = new CV().id(cvId).label("CL").fullName("Cell Ontology").version("2018-07-07").uri("https://www.ebi.ac.uk/ols/ontologies/cl");
-      cvs.add(label);
-      cvId++;
-    }
-    if (LipidomicsConstants.isCvBtoRequired()){      
-      label = new CV().id(cvId).label("BTO").fullName("BRENDA tissue / enzyme source").version("2016-05-05").uri("https://www.ebi.ac.uk/ols/ontologies/bto");
-      cvs.add(label);
-      cvId++;
-    }
-    if (LipidomicsConstants.isCvDoidRequired()){      
-      label = new CV().id(cvId).label("DOID").fullName("Human Disease Ontology").version("2018-07-05").uri("https://www.ebi.ac.uk/ols/ontologies/doid");
-      cvs.add(label);
-      cvId++;
-    } 
-    metadata.setCv(cvs);
-    
-	    List<Database> databases = new ArrayList<Database>();
-	    //TODO: exchange with corresponding MS accession
-	////    Database database = new Database().id(1).param(new Parameter().cvLabel("MS").cvAccession("MS:XXXXXXX").name("Lipid Data Analyzer software for lipid quantification"));
-	    Database database = new Database().id(1).param(new Parameter().name("LipidDataAnalyzer2").value("lda2"));
-	    database.setPrefix("lda2");
-	    database.setVersion(Settings.VERSION);
-	    database.setUri("https://github.com/ThallingerLab/LDA2");
-	    databases.add(database);
-	    metadata.setDatabase(databases);
-	    
-	    List<Instrument> instruments = new ArrayList<Instrument>();
-	    Instrument instrument = LipidomicsConstants.getMzTabInstrument();
-	    instruments.add(instrument);
-	    if (instrument!=null)
-	      metadata.setInstrument(instruments);
-
-	    for (Contact contact : LipidomicsConstants.getMzTabContacts()){
-	      metadata.addContactItem(contact);
-	    }
-	    List<SampleProcessing> processings = LipidomicsConstants.getMzTabSampleprocessings();
-	    metadata.setSampleProcessing(processings);
-	    metadata.setPublication(LipidomicsConstants.getMzTabPublications());
-	    if (LipidomicsConstants.getMzTabSample()!=null){
-	      List<Sample> samples = new ArrayList<Sample>();
-	      samples.add(LipidomicsConstants.getMzTabSample());
-	      metadata.setSample(samples);
-	    }
-	    metadata.setSmallMoleculeQuantificationUnit(new Parameter().cvLabel("PRIDE").cvAccession("PRIDE:0000330").name("Arbitrary quantification unit"));
-	    metadata.setSmallMoleculeFeatureQuantificationUnit(new Parameter().cvLabel("PRIDE").cvAccession("PRIDE:0000330").name("Arbitrary quantification unit"));
-	    //TODO: exchange with corresponding MS accession
-	    metadata.setSmallMoleculeIdentificationReliability(new Parameter().cvLabel("MS").cvAccession("MS:1002896").name("compound identification confidence level"));
-    List<Parameter> idConfidenceMeasures = new ArrayList<Parameter>();
-    idConfidenceMeasures.add(new Parameter().id(1).cvLabel("MS").cvAccession("MS:1002890").name("fragmentation score"));
-    metadata.setIdConfidenceMeasure(idConfidenceMeasures);
-	    
+    resultsShowModification_ = new Hashtable<String,Boolean>();
+    //check if the settings type is everywhere the same, otherwise, use ResultDisplaySettingsVO.REL_VALUE
+    String valueType = null;
+    boolean allTheSame = true;
+    for (String molGroup : heatmaps_.keySet()){
+      String type = heatmaps_.get(molGroup).getValueType();
+      if (valueType==null)
+        valueType = type;
+      else if (!type.equalsIgnoreCase(valueType))
+        allTheSame = false;
+    }
+    if (!allTheSame)
+      valueType = ResultDisplaySettingsVO.REL_VALUE;
+    LinkedHashMap<String,ClassExportSelectionVO> selections = new LinkedHashMap<String,ClassExportSelectionVO>();
+    for (String molGroup : heatmaps_.keySet()){
+      HeatMapDrawing heatmap = heatmaps_.get(molGroup);
+      ResultDisplaySettingsVO settings = new ResultDisplaySettingsVO(heatmap.getSettingsVO());
+      if (valueType!=null && valueType.length()>0)
+        settings.setType(valueType);
+      int maxIsotope = heatmap.getSelectedIsotope();
+      if (analysisModule_.getMaxIsotopesOfGroup(molGroup)<1)
+        maxIsotope = -1;
+      selections.put(molGroup, new ClassExportSelectionVO(heatmap.getSelectedMoleculeNames(),maxIsotope,settings));
+    }
     try {
-	      Hashtable<String,Integer> expToMsRun = new Hashtable<String,Integer>();
-	      resultsShowModification_ = new Hashtable<String,Boolean>();
-    
-	      Hashtable<String,QuantificationResult> originalExcelResults = new Hashtable<String,QuantificationResult>();
-	      Hashtable<String,MsRun> msRuns = new Hashtable<String,MsRun>();
-	      LinkedHashMap<String,String> fullExpPaths = getSampleResultFullPaths();
-	      boolean isotopicDistributionChecked = true;
-	      Hashtable<String,Short> polarities = new Hashtable<String,Short>();
-	      HydroxyEncoding faEncoding = null;
-	      HydroxyEncoding lcbEncoding = null;
-	      for (int i=0; i!=analysisModule_.getExpNamesInSequence().size(); i++) {
-	        String exp = analysisModule_.getExpNamesInSequence().get(i);
-	        String chromFileBase = StaticUtils.extractChromBaseName(fullExpPaths.get(exp),exp);
-	        MsRun run = new MsRun();
-	        run.setId((i+1));
-	        run.setLocation("file://"+chromFileBase.replaceAll("\\\\", "/").replaceAll(" ", "%20")+".chrom");       
-	        run.setFragmentationMethod(LipidomicsConstants.getFragmentationMethods());
-	        run.setFormat(new Parameter().cvLabel("MS").cvAccession("MS:1002966").name("The Lipid Data Analyzer native chrom format."));
-	        run.setIdFormat(new Parameter().cvLabel("MS").cvAccession("MS:1000776").name("scan number only nativeID format"));
-	        run.setHashMethod(new Parameter().cvLabel("MS").cvAccession("MS:1000569").name("SHA-1"));
-	        
-	        Assay assay = new Assay();
-	        assay.setId(i+1);
-	        assay.addMsRunRefItem(run);
-	        msRuns.put(exp, run);
-////      assay.setQuantificationReagent(quantificationMethod);
-	        metadata.addAssayItem(assay);
-	        expToMsRun.put(exp, (i+1));
-	        metadata.addMsRunItem(run);
-	        originalExcelResults.put(exp, LDAResultReader.readResultFile(fullExpPaths.get(exp), new Hashtable<String,Boolean>()));
-	        if (originalExcelResults.get(exp).getFaHydroxyEncoding()!=null) faEncoding = originalExcelResults.get(exp).getFaHydroxyEncoding();
-	        if (originalExcelResults.get(exp).getLcbHydroxyEncoding()!=null) lcbEncoding = originalExcelResults.get(exp).getLcbHydroxyEncoding();
-	        if (!originalExcelResults.get(exp).getConstants().getRespectIsotopicDistribution())
-	          isotopicDistributionChecked = false;
-	        polarities.put(exp, SmallMztabMolecule.POLARITY_UNKNOWN);
-////	      factory.addAbundanceOptionalColumn(assay);
-	      }
-	      if (isotopicDistributionChecked)
-	        software.addSettingItem("isotope_pattern_checked");
-	      
-	      Hashtable<String,LinkedHashMap<String,Boolean>> adductsSortedByAbundance = LDAExporter.extractAdductsSortedByAbundance(this.heatmaps_.keySet(),originalExcelResults);
-      //check if the settings type is everywhere the same, otherwise, use ResultDisplaySettingsVO.REL_VALUE
-	      String valueType = null;
-	      boolean allTheSame = true;
-	      for (String molGroup : heatmaps_.keySet()){
-	        String type = heatmaps_.get(molGroup).getValueType();
-	        if (valueType==null)
-	          valueType = type;
-	        else if (!type.equalsIgnoreCase(valueType))
-	          allTheSame = false;
-      }
-	      if (!allTheSame)
-	        valueType = ResultDisplaySettingsVO.REL_VALUE;
-	      LinkedHashMap<String,Vector<String>> expsOfGroup = getSamplesOfGroups();
-	      int count = 0;
-	      for (String group : expsOfGroup.keySet()){
-        StudyVariable studyVariable = new StudyVariable();
-        studyVariable.setId(count+1);
-        studyVariable.setName(group);
-        studyVariable.setDescription(group);
-        studyVariable.setAverageFunction(new Parameter().cvLabel("MS").cvAccession("MS:1002962").name("The arithmetic mean"));
-        studyVariable.setVariationFunction(new Parameter().cvLabel("MS").cvAccession("MS:1002963").name("The coefficient of variation"));
-        for (String exp : expsOfGroup.get(group)){
-          Integer assayId = expToMsRun.get(exp);
-          for (Assay assay : metadata.getAssay()){
-            if (assay.getId() == assayId)
-              studyVariable.addAssayRefsItem(assay);
+      new MzTabExporter(analysisModule_).export(exportFile, speciesTypeParam, exportDoubleBondPositions, selections);
+      //the validation parses the whole file - it is done in the background and reports to the console only
+      Thread validation = new Thread(){
+        public void run(){
+          try {
+            MzTabStreamWriter.validate(exportFile, Level.Warn, 100, System.out);
           }
-        }
-        metadata.addStudyVariableItem(studyVariable);
-	        count++;
-      }  
-	  
-	      MzTab mzTabFile = new MzTab();
-	      mzTabFile.setMetadata(metadata);
-      Hashtable<String,Vector<String>> correctAnalyteSequence = this.analysisModule_.getAllMoleculeNames();
-      int summaryId = 1;
-      int featureId = 1;
-      int evidenceId = 1;
-      int evidenceGroupingId = 1;
-      short polarity;
-      boolean containsSMESection = false;
-	      for (String molGroup:this.heatmaps_.keySet()) {
-	        boolean exportDoubleBondPositionsForClass = exportDoubleBondPositions; 
-	        short speciesType = speciesTypeParam;
-	        //when lipid species level is selected, export double bond positions only for lipid species consisting of one FA chain
-	        if (exportDoubleBondPositions) {
-	          if (analysisModule_.getNrOfChainsOfClass().get(molGroup) > 1 && speciesType == LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
-	            exportDoubleBondPositionsForClass = false;
-	          } else if (analysisModule_.getNrOfChainsOfClass().get(molGroup) == 1 && speciesType != LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
-	            speciesType = LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES;
-	          }
-	        }
-	        Hashtable<String,String> selectedMolHash = new Hashtable<String,String>();
-	        HeatMapDrawing heatmap = this.heatmaps_.get(molGroup);
-	//        HeatMapDrawing groupHeatmap = null;
-	//        if (analysisModule_.getGroupNames()!=null && analysisModule_.getGroupNames().size()>0) groupHeatmap = this.groupHeatmaps_.get(molGroup);
-	        for (String molName: heatmap.getSelectedMoleculeNames()){
-	          selectedMolHash.put(molName, molName);
-	        }
-	        Hashtable<String,Hashtable<String,Vector<Double>>> results = heatmap.getResultValues(valueType);
-	//        Hashtable<String,Hashtable<String,Vector<Double>>> resultsGroup = null;
-	//        if (groupHeatmap!=null) resultsGroup = groupHeatmap.getResultValues(valueType);
-        int maxIsotopes = heatmap.getSelectedIsotope();
-        LinkedHashMap<String,Boolean> adductsSorted = adductsSortedByAbundance.get(molGroup);
-        for (String molName: correctAnalyteSequence.get(molGroup)){
-          if (selectedMolHash.containsKey(molName)){
-            Hashtable<String,Vector<Double>> resultsMol = results.get(molName); 
-//            Hashtable<String,Vector<Double>> resultsGroupMol = null;
-//	            if (resultsGroup != null) resultsGroupMol = resultsGroup.get(molName);
-//	            
-          
-	//            String identifier = null;
-	//              identifier = "IS_" + molGroup + molName.substring(internalStandardPref.length());
-	 //             identifier = "ES_" + molGroup + molName.substring(externalStandardPref.length());
-	//            else
-	//              identifier = molGroup + molName;
-            SmallMztabMolecule molecule = MztabUtils.createSmallMztabMolecule(speciesType, exportDoubleBondPositionsForClass, 
-                summaryId, featureId, evidenceId,evidenceGroupingId, maxIsotopes,analysisModule_, msRuns, originalExcelResults, 
-                molGroup, molName, resultsMol,adductsSorted, expsOfGroup, faEncoding, lcbEncoding);
-	            if (molecule==null)
-	              continue;
-	            summaryId = molecule.getCurrentSummaryId();
-            featureId = molecule.getCurrentFeatureId();
-            evidenceId = molecule.getCurrentEvidenceId();
-            evidenceGroupingId = molecule.getCurrentEvGroupingId();
-            for (SmallMoleculeSummary summary : molecule.getSummary()){
-		              mzTabFile.addSmallMoleculeSummaryItem(summary);
-	            }
-	            for (SmallMoleculeFeature feature : molecule.getFeatures()){
-	              mzTabFile.addSmallMoleculeFeatureItem(feature);
-	            }
-	            for (SmallMoleculeEvidence evidence : molecule.getEvidence()){
-	              mzTabFile.addSmallMoleculeEvidenceItem(evidence);
-	              if (!containsSMESection)
-	                containsSMESection = true;
-	            }
-	            for (int i=0; i!=analysisModule_.getExpNamesInSequence().size(); i++) {
-	              String exp = analysisModule_.getExpNamesInSequence().get(i);
-	              polarity = molecule.getPolarity().get(exp);
-	              if (polarity==SmallMztabMolecule.POLARITY_UNKNOWN || polarity==polarities.get(exp))
-	                continue;
-	              if (polarity==SmallMztabMolecule.POLARITY_BOTH)
-	                polarities.put(exp, SmallMztabMolecule.POLARITY_BOTH);
-	              else if (polarity==SmallMztabMolecule.POLARITY_POSITIVE)
-	                polarities.put(exp, polarities.get(exp)==SmallMztabMolecule.POLARITY_NEGATIVE ? SmallMztabMolecule.POLARITY_BOTH : SmallMztabMolecule.POLARITY_POSITIVE);
-	              else if (polarity==SmallMztabMolecule.POLARITY_NEGATIVE)
-	                polarities.put(exp, polarities.get(exp)==SmallMztabMolecule.POLARITY_POSITIVE ? SmallMztabMolecule.POLARITY_BOTH : SmallMztabMolecule.POLARITY_NEGATIVE);
-	            }
+          catch (IOException e) {
+            e.printStackTrace();
           }
-	        }
-	      }
-	      
-	      
-	      for (String exp : analysisModule_.getExpNamesInSequence()) {
-	        List<Parameter> polaries = new ArrayList<Parameter>();
-	        if (polarities.get(exp) == SmallMztabMolecule.POLARITY_POSITIVE || polarities.get(exp) == SmallMztabMolecule.POLARITY_BOTH)
-	          polaries.add(new Parameter().cvLabel("MS").cvAccession("MS:1000130").name("positive scan"));
-        if (polarities.get(exp) == SmallMztabMolecule.POLARITY_NEGATIVE || polarities.get(exp) == SmallMztabMolecule.POLARITY_BOTH)
-          polaries.add(new Parameter().cvLabel("MS").cvAccession("MS:1000129").name("negative scan"));
-        msRuns.get(exp).setScanPolarity(polaries);
-	      }
-      
-	      //BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(exportFile));
-	      MzTabWriter<List<ValidationMessage>> writer = null;
-	      if (containsSMESection)
-	        writer = new MzTabValidatingWriter();
-	      else
-	        writer = new MzTabValidatingWriter(new MzTabValidatingWriter.WriteAndParseValidator(System.out, Level.Warn, 100),new MzTabWriterDefaults(), true);
-
-	      OutputStreamWriter outwriter = new OutputStreamWriter(new FileOutputStream(exportFile.getAbsolutePath()), StandardCharsets.UTF_8);
-	      writer.write(outwriter, mzTabFile);
-	      outwriter.close();
-	    }
-	    catch (IOException e) {
-	      e.printStackTrace();
-	    }
-	    catch (NumberFormatException e) {
-	      e.printStackTrace();
-	    }
-	    catch (CalculationNotPossibleException e) {
-	      e.printStackTrace();
-	    }
+        }
+      };
+      validation.setDaemon(true);
+      validation.start();
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+    catch (NumberFormatException e) {
+      e.printStackTrace();
+    }
+    catch (CalculationNotPossibleException e) {
+      e.printStackTrace();
+    }
     catch (ExcelInputFileException e) {
-	      e.printStackTrace();
-	    }
+      e.printStackTrace();
+    }
     catch (ExportException | LipidCombinameEncodingException e ) {
       e.printStackTrace();
     }
@@ -5490,7 +5230,7 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
     catch (RetentionTimeGroupingException e) {
       new WarningMessage(new JFrame(), "Error", e.getMessage());
     }
-	}
+  }
   
   public void exportRdb(File exportFile){
     System.out.println("RDB export");
@@ -5513,7 +5253,7 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
         acceptedMolecules.put(molGroup, molsOfClass);
         maxIsotopes.put(molGroup, heatmap.getSelectedIsotope());
       }
-      RdbOutputWriter rdbWriter = new RdbOutputWriter(internalStandardPref,externalStandardPref);
+      RdbOutputWriter rdbWriter = new RdbOutputWriter(internalStandardPref,externalStandardPref,getAmountOfProcessorsPreferred());
       rdbWriter.write(exportFile.getAbsolutePath(), analysisModule_, classSequence, null, acceptedMolecules,maxIsotopes,null,null,false);
     }
     catch (ExcelInputFileException e) {
@@ -5564,7 +5304,7 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
 
       for (int i=0; i!=analysisModule_.getExpNamesInSequence().size(); i++) {
         String exp = analysisModule_.getExpNamesInSequence().get(i);
-        QuantificationResult result = LDAResultReader.readResultFile(analysisModule_.getFullFilePath(exp).getAbsolutePath(),  new Hashtable<String,Boolean>());
+        QuantificationResult result = StudyResultCache.getInstance().getResult(analysisModule_.getFullFilePath(exp).getAbsolutePath(),  new Hashtable<String,Boolean>(), null);
         Hashtable<String,Hashtable<String,Vector<LipidomicsMSnSet>>> resultsOfExp = new Hashtable<String,Hashtable<String,Vector<LipidomicsMSnSet>>>();
         for (String className : result.getIdentifications().keySet()){
           Hashtable<String,Vector<LipidomicsMSnSet>> msnFound = new Hashtable<String,Vector<LipidomicsMSnSet>>();
@@ -5936,14 +5676,22 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
   {
   	Hashtable<String, HeatMapDrawing> heatMaps = isGrouped ? groupHeatmaps_ : heatmaps_;
   	OmegaCollector omegaCollector = new OmegaCollector(); //to collect class overarching data
+  	//the values of the classes are extracted in parallel; the sheets are written and collected in the sequence of the classes
+  	Vector<String> molGroups = new Vector<String>(heatMaps.keySet());
+  	Vector<Future<OmegaSummaryVO>> summaries = new Vector<Future<OmegaSummaryVO>>();
+  	ExecutorService threadpool = Executors.newFixedThreadPool(Math.max(1, Math.min(getAmountOfProcessorsPreferred(), molGroups.size())));
   	try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(exportFile));)
   	{
+  		for (String molGroup : molGroups)
+  			summaries.add(threadpool.submit(heatMaps.get(molGroup).createSummaryExtractor(molGroup)));
   		XSSFWorkbook workbook = new XSSFWorkbook();
-    	for (String molGroup : heatMaps.keySet())
+    	for (int i=0; i!=molGroups.size(); i++)
     	{
-    		Sheet sheet = workbook.createSheet(molGroup);
-    		HeatMapDrawing drawing = heatMaps.get(molGroup);
-    		drawing.exportSummary(omegaCollector, sheet, workbook, out);
+    		Sheet sheet = workbook.createSheet(molGroups.get(i));
+    		try {
+    			ExcelAndTextExporter.writeExcelSheetOmegaSummary(omegaCollector, sheet, workbook, out, summaries.get(i).get());
+    		}
+    		catch (ExecutionException e) {new WarningMessage(new JFrame(), "Error", e.getCause().getMessage());}
     	}
     	ExcelAndTextExporter.writeHeatMapData(omegaCollector, workbook, out);
     	workbook.write(out);
@@ -5951,6 +5699,10 @@ public class LipidDataAnalyzer extends JApplet implements ActionListener,HeatMap
   	catch (NumberFormatException e) {new WarningMessage(new JFrame(), "Error", e.getMessage());}
     catch (FileNotFoundException e) {new WarningMessage(new JFrame(), "Error", e.getMessage());}
     catch (IOException e) {new WarningMessage(new JFrame(), "Error", e.getMessage());}
+    catch (InterruptedException e) {new WarningMessage(new JFrame(), "Error", e.getMessage());}
+    finally {
+    	threadpool.shutdownNow();
+    }
   }
   
   
@@ -191,6 +191,12 @@ public class LipidomicsConstants
   private final static String MZTAB_ADDUCT_PREFIX = "adduct_";
   
   private static LipidomicsConstants instance_ = null;
+  /** the constants of a job of the QuantificationDaemon - inherited by all threads started by the job*/
+  private static InheritableThreadLocal<LipidomicsConstants> jobInstance_ = new InheritableThreadLocal<LipidomicsConstants>();
+  /** the fragmentation rules directory of a job of the QuantificationDaemon; null if the directory selected for quantitation is used*/
+  private String jobRulesDir_;
+  /** the maximum amount of threads a job of the QuantificationDaemon may use; 0 if there is no limit*/
+  private int jobThreadBudget_;
   private String ldaVersion_;
   private String rawFileName_;
     /** was this file quantified by using a Alex123 target list*/
@@ -576,12 +582,64 @@ public class LipidomicsConstants
   private final static String INTERMEDIATE_FILE_FORMAT_DEFAULT = AbstractXMLSpectraReader.FILE_TYPE_MZ_XML;
   
   public static LipidomicsConstants getInstance() {
+    LipidomicsConstants jobInstance = jobInstance_.get();
+    if (jobInstance != null)
+      return jobInstance;
     if (instance_ == null) {
       instance_ = new LipidomicsConstants();
     }
     return instance_;
   }
   
+  /**
+   * creates the constants of one job of the QuantificationDaemon; the constants are independent of the JVM-wide instance
+   * @param confFile the settings file of the job; if null, the default settings file is used
+   * @param rulesDir the fragmentation rules directory of the job
+   * @param threadBudget the maximum amount of threads the job may use
+   * @return the constants of the job
+   * @throws IOException if the settings file cannot be read
+   * @throws SettingsException if the settings file contains invalid values
+   */
+  public static LipidomicsConstants createJobInstance(File confFile, String rulesDir, int threadBudget) throws IOException, SettingsException{
+    LipidomicsConstants constants = new LipidomicsConstants(false);
+    constants.ldaVersion_ = Settings.VERSION;
+    constants.jobRulesDir_ = rulesDir;
+    constants.jobThreadBudget_ = threadBudget;
+    Properties properties = new Properties();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(confFile!=null ? confFile : new File(LDA_PROPERTIES_FILE)))){
+      properties.load(in);
+    }
+    constants.setVariables(properties);
+    constants.readmzTabConfFile(MZTAB_PROPERTIES_FILE);
+    return constants;
+  }
+  
+  /**
+   * sets the constants for the current thread and all threads started by it; every static getter returns the values of these constants
+   * @param constants the constants of the job; null to use the JVM-wide instance again
+   */
+  public static void setJobInstance(LipidomicsConstants constants){
+    if (constants==null)
+      jobInstance_.remove();
+    else
+      jobInstance_.set(constants);
+  }
+  
+  /**
+   * @return the fragmentation rules directory of the current QuantificationDaemon job; null if no job is running in this thread
+   */
+  public static String getJobRulesDir(){
+    return getInstance().jobRulesDir_;
+  }
+  
+  /**
+   * @return the maximum amount of threads for internal thread pools - the budget of the current QuantificationDaemon job, otherwise the available processors
+   */
+  public static int getThreadBudget(){
+    int budget = getInstance().jobThreadBudget_;
+    return budget>0 ? budget : Runtime.getRuntime().availableProcessors();
+  }
+  
   public LipidomicsConstants(boolean dummy){
     cvSepRequired_ = false;
     cvNcbiTaxonRequired_ = false;
@@ -869,8 +927,7 @@ public class LipidomicsConstants
    */
   public static String getIntermediateFileFormat()
   {
-    getInstance();
-    return instance_.intermediateFileFormat_;
+    return getInstance().intermediateFileFormat_;
   }
   
   /**
@@ -878,8 +935,7 @@ public class LipidomicsConstants
    */
   public static int getmMaxFileSizeForChromTranslationAtOnceInMB()
   {
-    getInstance();
-    return instance_.maxFileSizeForChromTranslationAtOnceInMB_;
+    return getInstance().maxFileSizeForChromTranslationAtOnceInMB_;
   }
   
   /**
@@ -887,56 +943,61 @@ public class LipidomicsConstants
    */
   public static float getCoarseChromMzTolerance(float mz)
   {
-    getInstance();
-    return getCorrectMzTolerance(instance_.coarseChromMzTolerance_,instance_.mzUnit_,mz);
+    return getCorrectMzTolerance(getInstance().coarseChromMzTolerance_,getInstance().mzUnit_,mz);
+  }
+  
+  /**
+   * creates an immutable snapshot of the values that are required by the inner loops of the quantification;
+   * it shall be created once per quantification job
+   * @return the snapshot of the currently active constants
+   */
+  public static QuantificationSettings getQuantificationSettings()
+  {
+    LipidomicsConstants constants = getInstance();
+    return new QuantificationSettings(constants.sparseData_, constants.chromSmoothRange_, constants.coarseChromMzTolerance_, constants.mzUnit_,
+        constants.neutronMass_, constants.overlapPeakDistanceDivisor_, constants.overlapFullDistanceDivisor_, constants.chainCutoffValue_,
+        constants.shotgun_, constants.ms2_, constants.checkChainLabelCombination_, constants.profilePeakAcceptanceRange_,
+        constants.shotgunIntensityRemoval_, constants.shotgunRelIntCutoff_);
   }
   
   public static double getMassShift()
   {
-    getInstance();
-    return instance_.massShift_;
+    return getInstance().massShift_;
   }
   
   public static float getChromSmoothRange()
   {
-    getInstance();
-    return instance_.chromSmoothRange_;
+    return getInstance().chromSmoothRange_;
   }
 
   public static int getChromSmoothRepeats()
   {
-    getInstance();
-    return instance_.chromSmoothRepeats_;
+    return getInstance().chromSmoothRepeats_;
   }
 
   public static boolean isotopicCorrection()
   {
-    getInstance();
-    return instance_.isotopeCorrection_;
+    return getInstance().isotopeCorrection_;
   }
   
   public static boolean removeIfOtherIsotopePresent()
   {
-    getInstance();
-    return instance_.removeFromOtherIsotopes_;
+    return getInstance().removeFromOtherIsotopes_;
   }
 
   public static boolean removeIfDistriDoesNotFit()
   {
-    getInstance();
-    return instance_.respectIsotopicDistribution_;
+    return getInstance().respectIsotopicDistribution_;
   }
   
   public static boolean useNoiseCutoff()
   {
-    getInstance();
-    return instance_.useNoiseCutoff_;
+    return getInstance().useNoiseCutoff_;
   }
 
   public static boolean useDynamicNoiseCutoff()
   {
-    getInstance();
-    return instance_.useDynamicNoiseCutoff_;
+    return getInstance().useDynamicNoiseCutoff_;
   }
 
   
@@ -946,39 +1007,33 @@ public class LipidomicsConstants
    */
   public static boolean checkChainLabelCombination()
   {
-    getInstance();
-    return instance_.checkChainLabelCombination_;
+    return getInstance().checkChainLabelCombination_;
   }
   
   public static int getMinimumThresholdForHighConfidenceRTMatch() 
   {
-    getInstance();
-    return instance_.minimumThresholdForHighConfidenceRTMatch_;
+    return getInstance().minimumThresholdForHighConfidenceRTMatch_;
   }
   
   public static int getMaximumThresholdForIntermediateConfidenceRTMatch() 
   {
-    getInstance();
-    return instance_.maximumThresholdForIntermediateConfidenceRTMatch_;
+    return getInstance().maximumThresholdForIntermediateConfidenceRTMatch_;
   }
   
   public static float getNoiseCutoffDeviationValue()
   {
-    getInstance();
-    return instance_.noiseCutoffDeviationValue_;
+    return getInstance().noiseCutoffDeviationValue_;
   }
   
   public static Float getMinimumRelativeIntensity()
   {
-    getInstance();
-    return instance_.minimumRelativeIntensity_;
+    return getInstance().minimumRelativeIntensity_;
   }
   
 
   public static int getScanStep()
   {
-    getInstance();
-    return instance_.scanStep_;
+    return getInstance().scanStep_;
   }
   
   /**
@@ -986,8 +1041,7 @@ public class LipidomicsConstants
    */
   public static boolean use3D()
   {
-    getInstance();
-    return instance_.use3D_;
+    return getInstance().use3D_;
   }
   
   /**
@@ -995,8 +1049,7 @@ public class LipidomicsConstants
    */
   public static float getProfileMzRange()
   {
-    getInstance();
-    return instance_.profileMzRange_;
+    return getInstance().profileMzRange_;
   }
   
   /**
@@ -1004,8 +1057,7 @@ public class LipidomicsConstants
    */
   public static float getProfileTimeTolerance_()
   {
-    getInstance();
-    return instance_.profileTimeTolerance_;
+    return getInstance().profileTimeTolerance_;
   }
   
   /**
@@ -1013,8 +1065,7 @@ public class LipidomicsConstants
    */
   public static float getProfileIntThreshold_()
   {
-    getInstance();
-    return instance_.profileIntThreshold_;
+    return getInstance().profileIntThreshold_;
   }
   
   /**
@@ -1022,8 +1073,7 @@ public class LipidomicsConstants
    */
   public static float getBroaderProfileTimeTolerance_()
   {
-    getInstance();
-    return instance_.broaderProfileTimeTolerance_;
+    return getInstance().broaderProfileTimeTolerance_;
   }
   
   /**
@@ -1031,8 +1081,7 @@ public class LipidomicsConstants
    */
   public static float getProfileSmoothRange()
   {
-    getInstance();
-    return instance_.profileSmoothRange_;
+    return getInstance().profileSmoothRange_;
   }
   
   /**
@@ -1040,32 +1089,28 @@ public class LipidomicsConstants
    */
   public static int getProfileSmoothRepeats()
   {
-    getInstance();
-    return instance_.profileSmoothRepeats_;
+    return getInstance().profileSmoothRepeats_;
   }
   /**
    * @return the amount of smoothing repeats for the profile
    */
   public static int getProfileMeanSmoothRepeats()
   {
-    getInstance();
-    return instance_.profileMeanSmoothRepeats_;
+    return getInstance().profileMeanSmoothRepeats_;
   }  
   /**
    * @return the amount of smoothing repeats for the profile
    */
   public static float getProfileMzMinRange()
   {
-    getInstance();
-    return instance_.profileMzMinRange_;
+    return getInstance().profileMzMinRange_;
   }
   /**
    * @return steepness change1 threshold for profile
    */
   public static float getProfileSteepnessChange1()
   {
-    getInstance();
-    return instance_.profileSteepnessChange1_;
+    return getInstance().profileSteepnessChange1_;
   }
   
   /**
@@ -1073,8 +1118,7 @@ public class LipidomicsConstants
    */
   public static float getProfileSteepnessChange2()
   {
-    getInstance();
-    return instance_.profileSteepnessChange2_;
+    return getInstance().profileSteepnessChange2_;
   }  
   
   /**
@@ -1082,8 +1126,7 @@ public class LipidomicsConstants
    */
   public static float getProfileIntensityCutoff1()
   {
-    getInstance();
-    return instance_.profileIntensityCutoff1_;
+    return getInstance().profileIntensityCutoff1_;
   }  
 
   /**
@@ -1091,8 +1134,7 @@ public class LipidomicsConstants
    */
   public static float getProfileIntensityCutoff2()
   {
-    getInstance();
-    return instance_.profileIntensityCutoff2_;
+    return getInstance().profileIntensityCutoff2_;
   }  
 
   /**
@@ -1100,8 +1142,7 @@ public class LipidomicsConstants
    */
   public static float getProfileGeneralIntCutoff()
   {
-    getInstance();
-    return instance_.profileGeneralIntCutoff_;
+    return getInstance().profileGeneralIntCutoff_;
   }
   
   /**
@@ -1109,8 +1150,7 @@ public class LipidomicsConstants
    */
   public static float getProfilePeakAcceptanceRange()
   {
-    getInstance();
-    return instance_.profilePeakAcceptanceRange_;
+    return getInstance().profilePeakAcceptanceRange_;
   }
   
   /**
@@ -1118,8 +1158,7 @@ public class LipidomicsConstants
    */
   public static float getProfileSmoothingCorrection()
   {
-    getInstance();
-    return instance_.profileSmoothingCorrection_;
+    return getInstance().profileSmoothingCorrection_;
   }
   
   
@@ -1128,8 +1167,7 @@ public class LipidomicsConstants
    */
   public static float getProfileMaxRange()
   {
-    getInstance();
-    return instance_.profileMaxRange_;
+    return getInstance().profileMaxRange_;
   }
   
   /**
@@ -1137,8 +1175,7 @@ public class LipidomicsConstants
    */
   public static float getSmallChromMzRange()
   {
-    getInstance();
-    return instance_.smallChromMzRange_;
+    return getInstance().smallChromMzRange_;
   } 
   
   /**
@@ -1146,8 +1183,7 @@ public class LipidomicsConstants
    */
   public static int getSmallChromSmoothRepeats()
   {
-    getInstance();
-    return instance_.smallChromSmoothRepeats_;
+    return getInstance().smallChromSmoothRepeats_;
   }
   
   /**
@@ -1155,8 +1191,7 @@ public class LipidomicsConstants
    */
   public static int getSmallChromMeanSmoothRepeats()
   {
-    getInstance();
-    return instance_.smallChromMeanSmoothRepeats_;
+    return getInstance().smallChromMeanSmoothRepeats_;
   }
   
   /**
@@ -1164,8 +1199,7 @@ public class LipidomicsConstants
    */
   public static float getSmallChromSmoothRange()
   {
-    getInstance();
-    return instance_.smallChromSmoothRange_;
+    return getInstance().smallChromSmoothRange_;
   } 
   
   /**
@@ -1173,8 +1207,7 @@ public class LipidomicsConstants
    */
   public static float getSmallChromIntensityCutoff()
   {
-    getInstance();
-    return instance_.smallChromIntensityCutoff_;
+    return getInstance().smallChromIntensityCutoff_;
   }
   
   /**
@@ -1182,8 +1215,7 @@ public class LipidomicsConstants
    */
   public static int getBroadChromSmoothRepeats()
   {
-    getInstance();
-    return instance_.broadChromSmoothRepeats_;
+    return getInstance().broadChromSmoothRepeats_;
   }
   
   /**
@@ -1191,8 +1223,7 @@ public class LipidomicsConstants
    */
   public static int getBroadChromMeanSmoothRepeats()
   {
-    getInstance();
-    return instance_.broadChromMeanSmoothRepeats_;
+    return getInstance().broadChromMeanSmoothRepeats_;
   }
   
   /**
@@ -1200,8 +1231,7 @@ public class LipidomicsConstants
    */
   public static float getBroadChromSmoothRange()
   {
-    getInstance();
-    return instance_.broadChromSmoothRange_;
+    return getInstance().broadChromSmoothRange_;
   } 
   
   /**
@@ -1209,8 +1239,7 @@ public class LipidomicsConstants
    */
   public static float getBroadChromIntensityCutoff()
   {
-    getInstance();
-    return instance_.broadChromIntensityCutoff_;
+    return getInstance().broadChromIntensityCutoff_;
   }  
   
   /**
@@ -1219,8 +1248,7 @@ public class LipidomicsConstants
    */
   public static float getBroadChromSteepnessChangeNoSmall()
   {
-    getInstance();
-    return instance_.broadChromSteepnessChangeNoSmall_;
+    return getInstance().broadChromSteepnessChangeNoSmall_;
   }
   
   /**
@@ -1229,8 +1257,7 @@ public class LipidomicsConstants
    */
   public static float getBroadIntensityCutoffNoSmall()
   {
-    getInstance();
-    return instance_.broadChromIntensityCutoffNoSmall_;
+    return getInstance().broadChromIntensityCutoffNoSmall_;
   }
   
   /**
@@ -1238,8 +1265,7 @@ public class LipidomicsConstants
    */
   public static float getFinalProbeTimeCompTolerance()
   {
-    getInstance();
-    return instance_.finalProbeTimeCompTolerance_;
+    return getInstance().finalProbeTimeCompTolerance_;
   }
   
   /**
@@ -1247,8 +1273,7 @@ public class LipidomicsConstants
    */
   public static float getFinalProbeMzCompTolerance()
   {
-    getInstance();
-    return instance_.finalProbeMzCompTolerance_;
+    return getInstance().finalProbeMzCompTolerance_;
   }
 
   
@@ -1258,8 +1283,7 @@ public class LipidomicsConstants
    */
   public static float getOverlapDistanceDeviationFactor()
   {
-    getInstance();
-    return instance_.overlapDistanceDeviationFactor_;
+    return getInstance().overlapDistanceDeviationFactor_;
   }
   
   /**
@@ -1268,8 +1292,7 @@ public class LipidomicsConstants
    */
   public static float getOverlapPossibleIntensityThreshold()
   {
-    getInstance();
-    return instance_.overlapPossibleIntensityThreshold_;
+    return getInstance().overlapPossibleIntensityThreshold_;
   }
 
   /**
@@ -1278,8 +1301,7 @@ public class LipidomicsConstants
    */
   public static float getOverlapSureIntensityThreshold()
   {
-    getInstance();
-    return instance_.overlapSureIntensityThreshold_;
+    return getInstance().overlapSureIntensityThreshold_;
   }
   /**
    * @return a divisor to check if the peak of an isotopic peak is near
@@ -1288,8 +1310,7 @@ public class LipidomicsConstants
    */
   public static float getOverlapPeakDistanceDivisor()
   {
-    getInstance();
-    return instance_.overlapPeakDistanceDivisor_;
+    return getInstance().overlapPeakDistanceDivisor_;
   }
   /**
    * @return a divisor to check if the peak of an isotopic peak is near
@@ -1298,8 +1319,7 @@ public class LipidomicsConstants
    */
   public static float getOverlapFullDistanceDivisor()
   {
-    getInstance();
-    return instance_.overlapFullDistanceDivisor_;
+    return getInstance().overlapFullDistanceDivisor_;
   }
   
   /**
@@ -1307,16 +1327,14 @@ public class LipidomicsConstants
    */
   public static int getPeakDiscardingAreaFactor()
   {
-    getInstance();
-    return instance_.peakDiscardingAreaFactor_;
+    return getInstance().peakDiscardingAreaFactor_;
   }
   /**
    * @return allowed time distance in seconds to check if there is an isotope between the two peaks
    */
   public static int getIsotopeInBetweenTime()
   {
-    getInstance();
-    return instance_.isotopeInBetweenTime_;
+    return getInstance().isotopeInBetweenTime_;
   }
   /**
    * @return if an isotope is in between the smaller one of the two peaks is regarded to belong to be a fragment
@@ -1325,14 +1343,12 @@ public class LipidomicsConstants
    */
   public static float getIsoInBetweenAreaFactor()
   {
-    getInstance();
-    return instance_.isoInBetweenAreaFactor_;
+    return getInstance().isoInBetweenAreaFactor_;
   }
   
   public static int getIsoInBetweenMaxTimeDistance()
   {
-    getInstance();
-    return instance_.isoInBetweenMaxTimeDistance_;
+    return getInstance().isoInBetweenMaxTimeDistance_;
   }
   
   /**
@@ -1340,8 +1356,7 @@ public class LipidomicsConstants
    */
   public static int getIsoNearNormalProbeTime()
   {
-    getInstance();
-    return instance_.isoNearNormalProbeTime_;
+    return getInstance().isoNearNormalProbeTime_;
   }
   /**
    * @return after the isotopic peaks are thrown out a higher threshold is applied to discard small peaks 
@@ -1349,8 +1364,7 @@ public class LipidomicsConstants
    */
   public static float getRelativeAreaCutoff()
   {
-    getInstance();
-    return instance_.relativeAreaCutoff_;
+    return getInstance().relativeAreaCutoff_;
   }
   /**
    * @return intensities that are close to the highest one can be members of a twin peak, hence they are
@@ -1359,8 +1373,7 @@ public class LipidomicsConstants
    */
   public static float getRelativeFarAreaCutoff()
   {
-    getInstance();
-    return instance_.relativeFarAreaCutoff_;
+    return getInstance().relativeFarAreaCutoff_;
   }
   /**
    * @return intensities that are close to the highest one can be members of a twin peak, hence they are
@@ -1369,18 +1382,15 @@ public class LipidomicsConstants
    */
   public static int getRelativeFarAreaTimeSpace()
   {
-    getInstance();
-    return instance_.relativeFarAreaTimeSpace_;
+    return getInstance().relativeFarAreaTimeSpace_;
   }
   public static float getTwinInBetweenCutoff()
   {
-    getInstance();
-    return instance_.twinInBetweenCutoff_;
+    return getInstance().twinInBetweenCutoff_;
   }
   public static float getUnionInBetweenCutoff()
   {
-    getInstance();
-    return instance_.unionInBetweenCutoff_;
+    return getInstance().unionInBetweenCutoff_;
   }
   /**
    * @return if still there is an isotopic peak in between the smaller peak is normally discarded
@@ -1389,8 +1399,7 @@ public class LipidomicsConstants
    */
   public static float getRelativeIsoInBetweenCutoff()
   {
-    getInstance();
-    return instance_.relativeIsoInBetweenCutoff_;
+    return getInstance().relativeIsoInBetweenCutoff_;
   }
   
   /**
@@ -1398,33 +1407,27 @@ public class LipidomicsConstants
    */
   public static int getClosePeakTimeTolerance()
   {
-    getInstance();
-    return instance_.closePeakTimeTolerance_;
+    return getInstance().closePeakTimeTolerance_;
   }
   
   public static String getBasePeakDefaultCutoff()
   {
-    getInstance();
-    return instance_.basePeakDefaultCutoff_;
+    return getInstance().basePeakDefaultCutoff_;
   }
   public static int getChromMultiplicationFactorForInt(){
-    getInstance();
-    return instance_.chromMultiplicationFactorForInt_;
+    return getInstance().chromMultiplicationFactorForInt_;
   }
 
   public static int getChromLowestResolution(){
-    getInstance();
-    return instance_.chromLowestResolution_;
+    return getInstance().chromLowestResolution_;
   }
 
   public static String getThreeDViewerDefaultTimeResolution(){
-    getInstance();
-    return instance_.threeDViewerDefaultTimeResolution_;
+    return getInstance().threeDViewerDefaultTimeResolution_;
   }
   
   public static String getThreeDViewerDefaultMZResolution(){
-    getInstance();
-    return instance_.threeDViewerDefaultMZResolution_;
+    return getInstance().threeDViewerDefaultMZResolution_;
   }
   
   /**
@@ -1432,39 +1435,32 @@ public class LipidomicsConstants
    */
   public static boolean isMS2()
   {
-    getInstance();
-    return instance_.ms2_;
+    return getInstance().ms2_;
   }
   
   public static float getMs2PrecursorTolerance(){
-    getInstance();
-    return instance_.ms2PrecursorTolerance_;
+    return getInstance().ms2PrecursorTolerance_;
   }
   
   public static short getMs2PrecursorToleranceUnit(){
-    getInstance();
-    return instance_.ms2PrecursorToleranceUnit_;
+    return getInstance().ms2PrecursorToleranceUnit_;
   }
   
   public static int getMs2ChromMultiplicationFactorForInt(){
-    getInstance();
-    return instance_.ms2ChromMultiplicationFactorForInt_;
+    return getInstance().ms2ChromMultiplicationFactorForInt_;
   }
   
   public static String getThreeDViewerMs2DefaultTimeResolution_(){
-    getInstance();
-    return instance_.threeDViewerMs2DefaultTimeResolution_;
+    return getInstance().threeDViewerMs2DefaultTimeResolution_;
   }
 
   public static String getThreeDViewerMs2DefaultMZResolution(){
-    getInstance();
-    return instance_.threeDViewerMs2DefaultMZResolution_;
+    return getInstance().threeDViewerMs2DefaultMZResolution_;
   }
   
   public static boolean isChromExportShowLegend()
   {
-    getInstance();
-    return instance_.chromExportShowLegend_;
+    return getInstance().chromExportShowLegend_;
   }
   
   /**
@@ -1472,13 +1468,11 @@ public class LipidomicsConstants
    * @return the +/- m/z tolerance for peak detection
    */
   public static float getMs2MzTolerance(){
-    getInstance();
-    return instance_.ms2MzTolerance_;
+    return getInstance().ms2MzTolerance_;
   }
   
   public static short getMs2MzToleranceUnit(){
-    getInstance();
-    return instance_.ms2MzToleranceUnit_;
+    return getInstance().ms2MzToleranceUnit_;
   }
   
   /**
@@ -1486,8 +1480,7 @@ public class LipidomicsConstants
    * @return minimum number of detected signals to start a noise removal
    */
   public static int getMs2MinIntsForNoiseRemoval(){
-    getInstance();
-    return instance_.ms2MinIntsForNoiseRemoval_;
+    return getInstance().ms2MinIntsForNoiseRemoval_;
   }
   
   /**
@@ -1495,8 +1488,7 @@ public class LipidomicsConstants
    * @return relative intensity cutoff for exclusion of isobars regarding spectrum coverage
    */
   public static float getMs2IsobarSCExclusionRatio(){
-    getInstance();
-    return instance_.ms2IsobarSCExclusionRatio_;
+    return getInstance().ms2IsobarSCExclusionRatio_;
   }
 
   
@@ -1505,8 +1497,7 @@ public class LipidomicsConstants
    * @return relative intensity cutoff for exclusion of isobars regarding spectrum coverage, for areas that are farer away from a unique peak identification
    */
   public static float getMs2IsobarSCFarExclusionRatio(){
-    getInstance();
-    return instance_.ms2IsobarSCFarExclusionRatio_;
+    return getInstance().ms2IsobarSCFarExclusionRatio_;
   }
 
   /**
@@ -1514,8 +1505,7 @@ public class LipidomicsConstants
    * @return retention time in minutes that define a peak to be farer away, so that the ms2IsobarSCFarExclusionRatio can be used
    */
   public static float getMs2IsobaricOtherRtDifference(){
-    getInstance();
-    return instance_.ms2IsobaricOtherRtDifference_;
+    return getInstance().ms2IsobaricOtherRtDifference_;
   }
   
   /**
@@ -1523,8 +1513,7 @@ public class LipidomicsConstants
    * @return 0 when LC, 1 when shotgun, 2 when PRM
    */
   public static short isShotgun(){
-    getInstance();
-    return instance_.shotgun_;
+    return getInstance().shotgun_;
   }
   
   /**
@@ -1532,8 +1521,7 @@ public class LipidomicsConstants
    * @return the unit type of the m/z value
    */
   public static String getMzUnit(){
-    getInstance();
-    return instance_.mzUnit_;    
+    return getInstance().mzUnit_;    
   }
   
   /**
@@ -1541,8 +1529,7 @@ public class LipidomicsConstants
    * @return the shotgun processing type according to the definitions in LipidomicsAnalyzer
    */
   public static int getShogunProcessing(){
-    getInstance();
-    return instance_.shotgunProcessing_;    
+    return getInstance().shotgunProcessing_;    
   }
   
   /**
@@ -1550,8 +1537,7 @@ public class LipidomicsConstants
    * @return should shotgun intensities be removed below a certain threshold
    */
   public static boolean isShotgunIntensityRemoval(){
-    getInstance();
-    return instance_.shotgunIntensityRemoval_;    
+    return getInstance().shotgunIntensityRemoval_;    
   }
 
   /**
@@ -1559,8 +1545,7 @@ public class LipidomicsConstants
    * @return the relative intensity cutoff for the removal
    */
   public static float getShotgunRelIntCutoff(){
-    getInstance();
-    return instance_.shotgunRelIntCutoff_;    
+    return getInstance().shotgunRelIntCutoff_;    
   }
 
   /**
@@ -1568,23 +1553,19 @@ public class LipidomicsConstants
    * @return relative cutoff threshold for fatty acid chain detection - it is in relation to the most intense chain
    */
   public static double getChainCutoffValue(){
-    getInstance();
-    return instance_.chainCutoffValue_;
+    return getInstance().chainCutoffValue_;
   }
   
   public static String getCurrentMSMachine(){
-    getInstance();
-    return instance_.currentMSMachine_;
+    return getInstance().currentMSMachine_;
   }
   
   public static float getNeutronMass(){
-    getInstance();
-    return instance_.neutronMass_;
+    return getInstance().neutronMass_;
   }
   
   public static boolean useMostOverlappingIsotopeOnly(){
-    getInstance();    
-    return instance_.useMostOverlappingIsotopeOnly_;
+    return getInstance().useMostOverlappingIsotopeOnly_;
   }
   
   /**
@@ -1592,26 +1573,23 @@ public class LipidomicsConstants
    * @return contains the acquired data only sparse MS1 data points
    */
   public static boolean isSparseData(){
-    getInstance();
-    return instance_.sparseData_;
+    return getInstance().sparseData_;
   }
   
   public static Instrument getMzTabInstrument(){
-    getInstance();
-    if (instance_.mzTabInstrumentName_!=null || instance_.mzTabInstrumentSource_!=null || instance_.mzTabInstrumentAnalyzer_!=null || instance_.mzTabInstrumentDetector_!=null){
+    if (getInstance().mzTabInstrumentName_!=null || getInstance().mzTabInstrumentSource_!=null || getInstance().mzTabInstrumentAnalyzer_!=null || getInstance().mzTabInstrumentDetector_!=null){
       Instrument instrument = new Instrument().id(1);
-      instrument.addAnalyzerItem(instance_.mzTabInstrumentAnalyzer_);
-      instrument.setDetector(instance_.mzTabInstrumentDetector_);
-      instrument.setName(instance_.mzTabInstrumentName_);
-      instrument.setSource(instance_.mzTabInstrumentSource_);
+      instrument.addAnalyzerItem(getInstance().mzTabInstrumentAnalyzer_);
+      instrument.setDetector(getInstance().mzTabInstrumentDetector_);
+      instrument.setName(getInstance().mzTabInstrumentName_);
+      instrument.setSource(getInstance().mzTabInstrumentSource_);
       return instrument;
     }
     return null;
   }
   
   public static List<Contact> getMzTabContacts(){
-    getInstance();
-    return instance_.mzTabContacts_;
+    return getInstance().mzTabContacts_;
   }
 
   /**
@@ -1619,8 +1597,7 @@ public class LipidomicsConstants
    * @return for mzTab-export: list of sample processing steps defined in the MZTAB_PROPERTIES_FILE
    */
   public static List<SampleProcessing> getMzTabSampleprocessings(){
-    getInstance();
-    return instance_.mzTabSampleProcessings_;
+    return getInstance().mzTabSampleProcessings_;
   }
 
   /**
@@ -1628,8 +1605,7 @@ public class LipidomicsConstants
    * @return for mzTab-export: list of publications this data refers to
    */
   public static List<Publication> getMzTabPublications(){
-    getInstance();
-    return instance_.mzTabPubs_;
+    return getInstance().mzTabPubs_;
   }
   
   /**
@@ -1637,8 +1613,7 @@ public class LipidomicsConstants
    * @return for mzTab-export: list of fragmentation methods used for the data
    */
   public static List<Parameter> getFragmentationMethods(){
-    getInstance();
-    return instance_.fragmethods_;
+    return getInstance().fragmethods_;
   }
 
   /**
@@ -1646,8 +1621,7 @@ public class LipidomicsConstants
    * @return for mzTab-export: the sample this data originates of
    */
   public static Sample getMzTabSample(){
-    getInstance();
-    return instance_.mzTabSample_;    
+    return getInstance().mzTabSample_;    
   }
   
   /**
@@ -1655,7 +1629,6 @@ public class LipidomicsConstants
    * @return true when this is a shotgun instance
    */
   public short getShotgun(){
-    getInstance();
     return this.shotgun_;
   }
   
@@ -1665,10 +1638,9 @@ public class LipidomicsConstants
    * @return the mzTab notation
    */
   public static String getMzTabAdduct(String ldaAdduct){
-    getInstance();
     String mzTabAdduct = null;
-    if (instance_.mzTabAdductLookup_.containsKey(ldaAdduct))
-      mzTabAdduct = instance_.mzTabAdductLookup_.get(ldaAdduct);
+    if (getInstance().mzTabAdductLookup_.containsKey(ldaAdduct))
+      mzTabAdduct = getInstance().mzTabAdductLookup_.get(ldaAdduct);
     return mzTabAdduct;
   }
   
@@ -1677,8 +1649,7 @@ public class LipidomicsConstants
    * @return contains CV for SEP ontology
    */
   public static boolean isCvSepRequired(){
-    getInstance();
-    return instance_.cvSepRequired_;    
+    return getInstance().cvSepRequired_;    
   }
 
   /**
@@ -1686,8 +1657,7 @@ public class LipidomicsConstants
    * @return contains CV for NCBITaxon ontology
    */
   public static boolean isCvNcbiTaxonRequired(){
-    getInstance();
-    return instance_.cvNcbiTaxonRequired_;
+    return getInstance().cvNcbiTaxonRequired_;
   }
 
   /**
@@ -1695,8 +1665,7 @@ public class LipidomicsConstants
    * @return contains CV for CL ontology
    */
   public static boolean isClRequired(){
-    getInstance();
-    return instance_.cvClRequired_;
+    return getInstance().cvClRequired_;
   }
   
   /**
@@ -1704,8 +1673,7 @@ public class LipidomicsConstants
    * @return contains CV for BTO ontology
    */
   public static boolean isCvBtoRequired(){
-    getInstance();
-    return instance_.cvBtoRequired_;
+    return getInstance().cvBtoRequired_;
   }
 
   /**
@@ -1713,8 +1681,7 @@ public class LipidomicsConstants
    * @return contains CV for DOID ontology
    */
   public static boolean isCvDoidRequired(){
-    getInstance();
-    return instance_.cvDoidRequired_;
+    return getInstance().cvDoidRequired_;
   }
   
   /**
@@ -1722,17 +1689,14 @@ public class LipidomicsConstants
    * @return contains CV for CHMO ontology
    */
   public static boolean isCvChmoRequired(){
-    getInstance();
-    return instance_.cvChmoRequired_;    
+    return getInstance().cvChmoRequired_;    
   }
   
   public static void switchToOtherConfFile(File newConfFile){
-    getInstance();
-    instance_.readConstantsFile(newConfFile.getAbsolutePath());
+    getInstance().readConstantsFile(newConfFile.getAbsolutePath());
   }
     
   public static void switchToOtherDefaultConfFile(File newConfFile) throws IOException{
-    getInstance();
     int chunkSize = 1024;
     InputStream in = new BufferedInputStream(new FileInputStream(newConfFile));
     OutputStream out = new BufferedOutputStream(new FileOutputStream(LDA_PROPERTIES_FILE));
@@ -1743,7 +1707,7 @@ public class LipidomicsConstants
     }
     in.close();
     out.close();
-    instance_.readConstantsFile(LDA_PROPERTIES_FILE);
+    getInstance().readConstantsFile(LDA_PROPERTIES_FILE);
   }
   
   /**
@@ -2440,8 +2404,7 @@ public class LipidomicsConstants
   /** typically, for Waters files Mass++ is used; however, when msconvert shall be used, this returns true*/
   public static boolean useMsconvertForWaters()
   {
-    getInstance();
-    return instance_.useMsconvertForWaters_;
+    return getInstance().useMsconvertForWaters_;
   }
 
   /** lookup for classes whether MSn fragments were defined*/
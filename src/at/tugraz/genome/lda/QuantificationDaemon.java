@@ -0,0 +1,275 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import at.tugraz.genome.lda.exception.QuantificationException;
+import at.tugraz.genome.lda.exception.SettingsException;
+import at.tugraz.genome.lda.msn.RulesContainer;
+import at.tugraz.genome.lda.vos.RawQuantificationPairVO;
+
+/**
+ * Long-running quantification service: the JVM, the element parser, and the rule and fatty acid libraries stay loaded,
+ * and quantification jobs are picked up from a spool directory. A job is a properties file with the suffix ".job":
+ * raw.dir (required): directory containing the MS data
+ * quant.dir (required): directory containing the quant files
+ * settings.file: LDA settings file of this job (default: LipidDataAnalyzer.properties)
+ * rules.dir: fragmentation rules directory of this job (default: fragRules)
+ * threads.chrom, threads.quant: amount of threads for the chrom translation and for the quantification; both are limited to the thread budget of a job
+ * cutoff: relative base peak cutoff in per mille
+ * isotopes.match, isotopes.quantify: isotopes that must match the distribution, and isotopes that are quantified
+ * rt.before, rt.after, rt.shift: retention time tolerances and shift
+ * search.unknown: search for species with unknown retention time (true/false)
+ * When a job is picked up, it is renamed to ".running"; afterwards to ".done" or ".failed", and a ".log" file contains the status
+ * of every raw/quant pair or the error. The jobs run concurrently on a bounded executor, each with its own LipidomicsConstants, which
+ * holds the settings, the rules directory, and the thread budget of the job; the static Settings are loaded once and only read by the jobs.
+ * The daemon stops after the running jobs are finished when a file called "stop" appears in the spool directory.
+ */
+public class QuantificationDaemon
+{
+  /** suffix of a job waiting in the spool directory*/
+  public final static String SUFFIX_JOB = ".job";
+  /** suffix of a job that is currently processed*/
+  public final static String SUFFIX_RUNNING = ".running";
+  /** suffix of a successfully processed job*/
+  public final static String SUFFIX_DONE = ".done";
+  /** suffix of a job that could not be processed*/
+  public final static String SUFFIX_FAILED = ".failed";
+  /** suffix of the status report of a job*/
+  public final static String SUFFIX_LOG = ".log";
+  /** file name that stops the daemon*/
+  public final static String STOP_FILE = "stop";
+  
+  public final static String KEY_RAW_DIR = "raw.dir";
+  public final static String KEY_QUANT_DIR = "quant.dir";
+  public final static String KEY_SETTINGS_FILE = "settings.file";
+  public final static String KEY_RULES_DIR = "rules.dir";
+  public final static String KEY_THREADS_CHROM = "threads.chrom";
+  public final static String KEY_THREADS_QUANT = "threads.quant";
+  public final static String KEY_CUTOFF = "cutoff";
+  public final static String KEY_ISOTOPES_MATCH = "isotopes.match";
+  public final static String KEY_ISOTOPES_QUANTIFY = "isotopes.quantify";
+  public final static String KEY_RT_BEFORE = "rt.before";
+  public final static String KEY_RT_AFTER = "rt.after";
+  public final static String KEY_RT_SHIFT = "rt.shift";
+  public final static String KEY_SEARCH_UNKNOWN = "search.unknown";
+  
+  /** interval for checking the spool directory and the running quantifications*/
+  private final static long POLL_INTERVAL = 1000l;
+  
+  /** for logging messages*/
+  private static Logger log_ = Logger.getLogger(QuantificationDaemon.class.getName());
+  
+  /** the directory where the jobs are submitted*/
+  private File spoolDir_;
+  /** the executor shared by all jobs*/
+  private ExecutorService executor_;
+  /** free slots of the executor - a job is only picked up when there is a free slot*/
+  private Semaphore freeSlots_;
+  /** the maximum amount of threads of one job - the threads of all jobs together do not exceed the threads of the daemon*/
+  private int threadsPerJob_;
+  
+  /**
+   * @param spoolDir the directory where the jobs are submitted
+   * @param maxConcurrentJobs the maximum amount of jobs running at the same time
+   * @param maxThreads the maximum amount of threads of all running jobs together
+   */
+  public QuantificationDaemon(File spoolDir, int maxConcurrentJobs, int maxThreads){
+    this.spoolDir_ = spoolDir;
+    this.executor_ = Executors.newFixedThreadPool(maxConcurrentJobs);
+    this.freeSlots_ = new Semaphore(maxConcurrentJobs);
+    this.threadsPerJob_ = Math.max(1, maxThreads/maxConcurrentJobs);
+  }
+  
+  /**
+   * loads the libraries that are shared by all jobs and processes the jobs of the spool directory until the stop file appears
+   * @throws InterruptedException if the daemon is interrupted
+   */
+  public void run() throws InterruptedException{
+    Settings.getElementParser();
+    LipidomicsConstants.getInstance();
+    log_.info("Waiting for jobs in "+spoolDir_.getAbsolutePath());
+    File stopFile = new File(spoolDir_,STOP_FILE);
+    try{
+      while (!stopFile.exists()){
+        submitWaitingJobs();
+        Thread.sleep(POLL_INTERVAL);
+      }
+    } finally{
+      executor_.shutdown();
+      executor_.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+    log_.info("Quantification daemon stopped");
+  }
+  
+  /**
+   * picks up the waiting jobs in alphabetical order as long as there are free slots
+   */
+  private void submitWaitingJobs(){
+    File[] jobFiles = spoolDir_.listFiles();
+    if (jobFiles==null)
+      return;
+    Arrays.sort(jobFiles);
+    for (File jobFile : jobFiles){
+      if (!jobFile.isFile() || !jobFile.getName().endsWith(SUFFIX_JOB))
+        continue;
+      if (!freeSlots_.tryAcquire())
+        return;
+      File runningFile = getFileWithSuffix(jobFile,SUFFIX_RUNNING);
+      if (!jobFile.renameTo(runningFile)){
+        freeSlots_.release();
+        continue;
+      }
+      executor_.submit(new Runnable(){
+        public void run(){
+          try{
+            processJob(runningFile);
+          } finally{
+            freeSlots_.release();
+          }
+        }
+      });
+    }
+  }
+  
+  /**
+   * quantifies one job with its own constants and writes the status report
+   * @param runningFile the job file after it has been picked up
+   */
+  private void processJob(File runningFile){
+    File logFile = getFileWithSuffix(runningFile,SUFFIX_LOG);
+    StringBuilder report = new StringBuilder();
+    boolean success = false;
+    try{
+      Properties props = new Properties();
+      try (InputStream in = new BufferedInputStream(new FileInputStream(runningFile))){
+        props.load(in);
+      }
+      String settingsFile = props.getProperty(KEY_SETTINGS_FILE);
+      String rulesDir = props.getProperty(KEY_RULES_DIR, RulesContainer.DEFAULT_RULES_DIR).trim();
+      LipidomicsConstants.setJobInstance(LipidomicsConstants.createJobInstance(settingsFile!=null ? new File(settingsFile.trim()) : null,
+          rulesDir, threadsPerJob_));
+      String cutoffString = props.getProperty(KEY_CUTOFF,"").trim();
+      if (cutoffString.length()==0)
+        cutoffString = LipidomicsConstants.getBasePeakDefaultCutoff();
+      float cutoff = toFloat(KEY_CUTOFF,cutoffString);
+      LipidomicsConstants.getInstance().setRelativeMS1BasePeakCutoff(cutoffString);
+      int isotopesMustMatch = getInt(props,KEY_ISOTOPES_MATCH,1);
+      int amountOfIsotopes = getInt(props,KEY_ISOTOPES_QUANTIFY,Math.max(2,isotopesMustMatch));
+      if (amountOfIsotopes<isotopesMustMatch)
+        throw new QuantificationException("Isotopes that are quantified must not be smaller than isotopes that must match");
+      Vector<RawQuantificationPairVO> pairs = LDACmd.detectQuantificationPairs(getRequired(props,KEY_RAW_DIR), getRequired(props,KEY_QUANT_DIR));
+      if (pairs.size()==0)
+        throw new QuantificationException("There are no quantifiable raw/quant pairs");
+      BatchQuantThread batchQuantThread = LDACmd.createBatchQuantThread(pairs, Math.min(getInt(props,KEY_THREADS_CHROM,1),threadsPerJob_),
+          Math.min(getInt(props,KEY_THREADS_QUANT,1),threadsPerJob_), cutoff, isotopesMustMatch, amountOfIsotopes, getFloat(props,KEY_RT_BEFORE,0f),
+          getFloat(props,KEY_RT_AFTER,0f), getFloat(props,KEY_RT_SHIFT,0f), Boolean.parseBoolean(props.getProperty(KEY_SEARCH_UNKNOWN,"true").trim()));
+      batchQuantThread.start();
+      while (!batchQuantThread.finished())
+        Thread.sleep(POLL_INTERVAL);
+      success = true;
+      for (RawQuantificationPairVO pair : batchQuantThread.getQuantificationPairs()){
+        report.append(pair.getRawFileName()+"\t"+pair.getQuantFileName()+"\t"+pair.getStatus()+"\n");
+        if (pair.getStatus()==null || pair.getStatus().startsWith("ERROR"))
+          success = false;
+      }
+    } catch (InterruptedException ix){
+      Thread.currentThread().interrupt();
+      report.append("The job has been interrupted\n");
+    } catch (IOException | SettingsException | QuantificationException | NumberFormatException ex){
+      report.append(ex.getMessage()+"\n");
+    } catch (Exception ex){
+      StringWriter stackTrace = new StringWriter();
+      ex.printStackTrace(new PrintWriter(stackTrace));
+      report.append(stackTrace.toString());
+    } finally{
+      LipidomicsConstants.setJobInstance(null);
+    }
+    try (BufferedWriter out = new BufferedWriter(new FileWriter(logFile))){
+      out.write(report.toString());
+    } catch (IOException iox){
+      log_.severe("The report of "+runningFile.getName()+" cannot be written: "+iox.getMessage());
+    }
+    File finishedFile = getFileWithSuffix(runningFile,success ? SUFFIX_DONE : SUFFIX_FAILED);
+    if (!runningFile.renameTo(finishedFile))
+      log_.severe("The job "+runningFile.getName()+" cannot be renamed to "+finishedFile.getName());
+    log_.info("Job "+finishedFile.getName()+" finished");
+  }
+  
+  private static File getFileWithSuffix(File jobFile, String suffix){
+    String name = jobFile.getName();
+    return new File(jobFile.getParentFile(),name.substring(0,name.lastIndexOf("."))+suffix);
+  }
+  
+  private static String getRequired(Properties props, String key) throws QuantificationException{
+    String value = props.getProperty(key);
+    if (value==null || value.trim().length()==0)
+      throw new QuantificationException("The job setting \""+key+"\" is missing");
+    return value.trim();
+  }
+  
+  private static int getInt(Properties props, String key, int defaultValue) throws QuantificationException{
+    String value = props.getProperty(key);
+    if (value==null || value.trim().length()==0)
+      return defaultValue;
+    try{
+      return Integer.parseInt(value.trim());
+    }catch (NumberFormatException nfx){
+      throw new QuantificationException("The job setting \""+key+"\" is not integer format");
+    }
+  }
+  
+  private static float getFloat(Properties props, String key, float defaultValue) throws QuantificationException{
+    String value = props.getProperty(key);
+    if (value==null || value.trim().length()==0)
+      return defaultValue;
+    return toFloat(key,value.trim());
+  }
+  
+  private static float toFloat(String key, String value) throws QuantificationException{
+    try{
+      return Float.parseFloat(value);
+    }catch (NumberFormatException nfx){
+      throw new QuantificationException("The job setting \""+key+"\" is not float format");
+    }
+  }
+
+}
@@ -0,0 +1,807 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.math3.util.Pair;
+
+import at.tugraz.genome.lda.alex123.vos.TargetlistEntry;
+import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
+import at.tugraz.genome.lda.exception.NoRuleException;
+import at.tugraz.genome.lda.exception.RulesException;
+import at.tugraz.genome.lda.msn.FattyAcidsContainer;
+import at.tugraz.genome.lda.msn.LipidomicsMSnSet;
+import at.tugraz.genome.lda.msn.RulesContainer;
+import at.tugraz.genome.lda.msn.vos.ExpressionForComparisonVO;
+import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
+import at.tugraz.genome.lda.msn.vos.FragmentMultVO;
+import at.tugraz.genome.lda.msn.vos.IntensityChainVO;
+import at.tugraz.genome.lda.msn.vos.IntensityPositionVO;
+import at.tugraz.genome.lda.msn.vos.IntensityRuleVO;
+import at.tugraz.genome.lda.msn.vos.RuleHydroxyRequirementSet;
+import at.tugraz.genome.lda.msn.vos.RuleHydroxyRequirementsVO;
+import at.tugraz.genome.lda.quantification.LipidParameterSet;
+import at.tugraz.genome.lda.utils.StaticUtils;
+import at.tugraz.genome.lda.vos.QuantVO;
+import at.tugraz.genome.maspectras.parser.exceptions.SpectrummillParserException;
+import at.tugraz.genome.maspectras.quantification.CgAreaStatus;
+import at.tugraz.genome.maspectras.quantification.CgProbe;
+
+/**
+ * Content addressed store for the results of single quantification jobs (one SingleQuantThread).
+ * The results of a job are stored under a SHA-256 digest of everything the job depends on: the identity
+ * of the chrom files, the LipidomicsConstants, the general quantification parameters, the definition of
+ * the analyte (and its isobaric species), the content of the fragmentation rule files and chain libraries, and the MS-level settings.
+ * When a chrom file is quantified again (e.g. after a change of a single lipid class in the mass list
+ * or after a change of a fragmentation rule), jobs with unchanged inputs are restored from this store
+ * and only the remaining ones are calculated again.
+ * The raw results are stored before any post-processing; the objects, including the MSn evidence, are copied when they are stored
+ * and when they are restored, since the post-processing steps modify the parameter sets.
+ * The stored files are deserialized with a whitelist of the classes the results consist of; a file containing other classes is ignored.
+ * The jobs of one quantification run are stored in one file in the LDA user home directory, which is written when
+ * the run is finished (see flush); the file contains only the jobs that were used by this run. When the stored files exceed
+ * MAX_STORE_BYTES, the least recently used ones are removed. In memory, the jobs of the finished runs are held by soft references
+ * and are released when memory gets short.
+ */
+public class QuantificationResultStore
+{
+  /** the maximum amount of finished quantification runs (chrom file and settings) that are kept in memory*/
+  private final static int MAX_RUNS = 32;
+  /** the directory in the LDA user home directory that contains the stored runs*/
+  private final static String STORE_DIR_NAME = "quantificationResults";
+  /** the suffix of the files of the stored runs*/
+  private final static String STORE_FILE_SUFFIX = ".results";
+  /** the version of the format of the stored runs*/
+  private final static int STORE_FILE_VERSION = 1;
+  /** the maximum size of all stored runs in bytes*/
+  private final static long MAX_STORE_BYTES = 2048l*1024l*1024l;
+  /** the digest algorithm for the keys*/
+  private final static String DIGEST_ALGORITHM = "SHA-256";
+  /** separator between the values for the digest*/
+  private final static char SEPARATOR = '\u001f';
+  /** the classes that may be deserialized from the stored files*/
+  private final static Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+      StoredJob.class.getName(), StoredSet.class.getName(), CgProbe.class.getName(), CgAreaStatus.class.getName(),
+      IntensityRuleVO.class.getName(), IntensityChainVO.class.getName(), IntensityPositionVO.class.getName(), FattyAcidVO.class.getName(),
+      ExpressionForComparisonVO.class.getName(), FragmentMultVO.class.getName(), RuleHydroxyRequirementSet.class.getName(),
+      RuleHydroxyRequirementsVO.class.getName(), Object.class.getName(), String.class.getName(), Number.class.getName(), Integer.class.getName(),
+      Float.class.getName(), Double.class.getName(), Long.class.getName(), Short.class.getName(), Boolean.class.getName(),
+      Enum.class.getName(), Hashtable.class.getName(), Vector.class.getName(), ArrayList.class.getName(), HashMap.class.getName(),
+      LinkedHashMap.class.getName(), HashSet.class.getName(), LinkedHashSet.class.getName()));
+  
+  /** the singleton instance*/
+  private static QuantificationResultStore instance_;
+  
+  /** the stored jobs of the finished runs; first key: run key; second key: job key; the runs are sorted by their last access*/
+  private LinkedHashMap<String,SoftReference<Hashtable<String,StoredJob>>> runs_;
+  /** the stored jobs of the runs that have not been flushed yet; first key: run key; second key: job key*/
+  private Hashtable<String,Hashtable<String,StoredJob>> activeRuns_;
+  /** the keys of the jobs that were restored or stored by the runs that have not been flushed yet; key: run key*/
+  private Hashtable<String,Set<String>> usedJobs_;
+  /** cache for the digests of rule files and chain libraries; key: path, length, and modification time of the file*/
+  private ConcurrentHashMap<String,String> fileDigests_;
+  /** the directory the runs are stored in; null if the runs shall not be stored*/
+  private File storeDir_;
+  
+  /**
+   * @param storeDir the directory the runs are stored in; null if the runs shall not be stored
+   */
+  QuantificationResultStore(File storeDir){
+    runs_ = new LinkedHashMap<String,SoftReference<Hashtable<String,StoredJob>>>(16,0.75f,true){
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<String,SoftReference<Hashtable<String,StoredJob>>> eldest){
+        return size()>MAX_RUNS;
+      }
+    };
+    activeRuns_ = new Hashtable<String,Hashtable<String,StoredJob>>();
+    usedJobs_ = new Hashtable<String,Set<String>>();
+    fileDigests_ = new ConcurrentHashMap<String,String>();
+    storeDir_ = storeDir;
+  }
+  
+  /**
+   * 
+   * @return the singleton instance of the store
+   */
+  public static synchronized QuantificationResultStore getInstance(){
+    if (instance_==null){
+      File storeDir = null;
+      if (Settings.getLdaUserHomePath()!=null) storeDir = new File(Settings.getLdaUserHomePath(),STORE_DIR_NAME);
+      instance_ = new QuantificationResultStore(storeDir);
+    }
+    return instance_;
+  }
+  
+  /**
+   * creates the key for a quantification run, i.e. for a chrom file and the general settings; the identity of the chrom file
+   * is defined by the path, the length and the modification time of the files the chrom consists of
+   * @param chromPaths the paths to the files of the chrom file
+   * @param parameters the general quantification parameters that are not part of the LipidomicsConstants (e.g. the base peak cutoff)
+   * @return the key for the quantification run
+   */
+  public String createRunKey(String[] chromPaths, Object... parameters){
+    StringBuilder input = new StringBuilder();
+    for (String path : chromPaths){
+      File file = new File(path);
+      append(input,file.getAbsolutePath());
+      append(input,String.valueOf(file.length()));
+      append(input,String.valueOf(file.lastModified()));
+    }
+    for (Object parameter : parameters) append(input,String.valueOf(parameter));
+    for (Pair<String,String> row : LipidomicsConstants.getInstance().getPropertyRowList(Settings.getFaHydroxyEncoding(), Settings.getLcbHydroxyEncoding())){
+      if (row.getKey().equals(LipidomicsConstants.RAW_FILE)) continue;
+      append(input,row.getKey());
+      append(input,row.getValue());
+    }
+    append(input,RulesContainer.getCurrentRulesDir());
+    append(input,Settings.VERSION);
+    return digest(input.toString().getBytes(StandardCharsets.UTF_8));
+  }
+  
+  /**
+   * creates the key for one quantification job
+   * @param runKey the key of the quantification run
+   * @param quantSet the analyte to be quantified - the isobaric species are part of the key
+   * @param msLevel the MS-level for the quantification
+   * @param msnFirst should the MSn quantitation be performed before the MS1 quantitation
+   * @return the key for the job; null if the results of the job cannot be stored
+   * @throws IOException if a rule file or a chain library cannot be read
+   * @throws RulesException specifies in detail which rule has been infringed
+   * @throws NoRuleException thrown if the rules are not there
+   * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
+   */
+  public String createJobKey(String runKey, QuantVO quantSet, int msLevel, boolean msnFirst) throws IOException, RulesException,
+      NoRuleException, SpectrummillParserException{
+    StringBuilder input = new StringBuilder();
+    append(input,runKey);
+    append(input,String.valueOf(msLevel));
+    append(input,String.valueOf(msnFirst));
+    for (QuantVO quant : getQuantVOs(quantSet)){
+      //the fragments of the target lists are not part of the key
+      if (quant instanceof TargetlistEntry) return null;
+      append(input,quant.getAnalyteClass());
+      append(input,quant.getAnalyteName());
+      append(input,String.valueOf(quant.getDbs()));
+      append(input,String.valueOf(quant.getOhNumber()));
+      append(input,quant.getOxState());
+      append(input,quant.getAnalyteFormula());
+      append(input,String.valueOf(quant.getAnalyteMass()));
+      append(input,String.valueOf(quant.getCharge()));
+      append(input,quant.getModName());
+      append(input,quant.getModFormula());
+      append(input,String.valueOf(quant.getRetTime()));
+      append(input,String.valueOf(quant.getUsedMinusTime()));
+      append(input,String.valueOf(quant.getUsedPlusTime()));
+      append(input,String.valueOf(quant.getIsobaricRetTime_()));
+      append(input,String.valueOf(quant.getIsobaricMinusTime_()));
+      append(input,String.valueOf(quant.getIsobaricPlusTime_()));
+      append(input,String.valueOf(quant.getNegativeStartValue()));
+      append(input,String.valueOf(quant.getProbabs()));
+      append(input,String.valueOf(quant.getMustMatchProbabs()));
+      append(input,getRuleFileDigest(quant.getAnalyteClass(),quant.getModName()));
+    }
+    return digest(input.toString().getBytes(StandardCharsets.UTF_8));
+  }
+  
+  /**
+   * restores the results of a job from the store
+   * @param runKey the key of the quantification run
+   * @param jobKey the key of the job
+   * @param thread the thread that shall receive the stored results
+   * @return true if the results are present in the store and were handed over to the thread
+   * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+   */
+  public synchronized boolean restore(String runKey, String jobKey, SingleQuantThread thread) throws LipidCombinameEncodingException{
+    StoredJob stored = getStoredJob(runKey, jobKey);
+    if (stored==null) return false;
+    QuantVO quantSet = thread.getQuantSet();
+    thread.restoreResults(stored.getResults(quantSet), stored.getMs2RemovedHits(quantSet), stored.getPeaksBeforeSplit(quantSet),
+        stored.areMSnSpectraPresent());
+    return true;
+  }
+  
+  /**
+   * returns the stored results of a job, and marks the job as used by the run
+   * @param runKey the key of the quantification run
+   * @param jobKey the key of the job
+   * @return the stored results; null if they are not present in the store
+   */
+  synchronized StoredJob getStoredJob(String runKey, String jobKey){
+    if (runKey==null || jobKey==null) return null;
+    StoredJob stored = getJobs(runKey).get(jobKey);
+    if (stored!=null) usedJobs_.get(runKey).add(jobKey);
+    return stored;
+  }
+  
+  /**
+   * stores the results of a finished job
+   * @param runKey the key of the quantification run
+   * @param jobKey the key of the job
+   * @param thread the finished thread
+   */
+  public void store(String runKey, String jobKey, SingleQuantThread thread){
+    if (thread.getErrorString()!=null) return;
+    store(runKey, jobKey, thread.getQuantSet(), thread.getResults(), thread.getMs2Removedhits(), thread.getPeaksBeforeSplit(),
+        thread.areMSnSpectraPresent());
+  }
+  
+  /**
+   * stores the results of a finished job
+   * @param runKey the key of the quantification run
+   * @param jobKey the key of the job
+   * @param quantSet the quantified analyte
+   * @param results the found hits
+   * @param ms2RemovedHits the hits that were removed because of the MSn evidence
+   * @param peaksBeforeSplit the unsplit peak versions
+   * @param msnSpectraPresent are there any MSn spectra present
+   */
+  synchronized void store(String runKey, String jobKey, QuantVO quantSet, Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> results,
+      Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> ms2RemovedHits, Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> peaksBeforeSplit,
+      boolean msnSpectraPresent){
+    if (runKey==null || jobKey==null) return;
+    Vector<QuantVO> quantVOs = getQuantVOs(quantSet);
+    StoredJob stored = new StoredJob(toPositions(quantVOs, results), toPositions(quantVOs, ms2RemovedHits),
+        toPositions(quantVOs, peaksBeforeSplit), msnSpectraPresent);
+    getJobs(runKey).put(jobKey, stored);
+    usedJobs_.get(runKey).add(jobKey);
+  }
+  
+  /**
+   * finishes a quantification run: the jobs that were not used by the run are removed, and the remaining ones are
+   * written to the file of the run; afterwards, the least recently used files are removed if the store is too large
+   * @param runKey the key of the quantification run
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized void flush(String runKey) throws IOException{
+    if (runKey==null || !activeRuns_.containsKey(runKey)) return;
+    Hashtable<String,StoredJob> jobs = activeRuns_.remove(runKey);
+    Set<String> used = usedJobs_.remove(runKey);
+    jobs.keySet().retainAll(used);
+    if (storeDir_==null) return;
+    if (!storeDir_.exists()) storeDir_.mkdirs();
+    File tempFile = File.createTempFile(runKey, ".tmp", storeDir_);
+    try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))){
+      out.writeInt(STORE_FILE_VERSION);
+      out.writeObject(jobs);
+    } catch (IOException iox){
+      tempFile.delete();
+      throw iox;
+    }
+    Files.move(tempFile.toPath(), getRunFile(runKey).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    limitStoreSize();
+  }
+  
+  /**
+   * removes all stored results from memory; the stored files are not affected
+   */
+  public synchronized void clear(){
+    runs_.clear();
+    activeRuns_.clear();
+    usedJobs_.clear();
+    fileDigests_.clear();
+  }
+  
+  /**
+   * returns the stored jobs of a quantification run - if the run is not in memory, it is read from its file;
+   * the run is active until it is flushed
+   * @param runKey the key of the quantification run
+   * @return the stored jobs of a quantification run
+   */
+  private Hashtable<String,StoredJob> getJobs(String runKey){
+    Hashtable<String,StoredJob> jobs = activeRuns_.get(runKey);
+    if (jobs!=null) return jobs;
+    SoftReference<Hashtable<String,StoredJob>> reference = runs_.get(runKey);
+    if (reference!=null) jobs = reference.get();
+    if (jobs==null){
+      jobs = readRun(runKey);
+      runs_.put(runKey, new SoftReference<Hashtable<String,StoredJob>>(jobs));
+    }
+    activeRuns_.put(runKey, jobs);
+    usedJobs_.put(runKey, new HashSet<String>());
+    return jobs;
+  }
+  
+  /**
+   * reads the stored jobs of a quantification run from its file; the file is ignored if it cannot be read
+   * @param runKey the key of the quantification run
+   * @return the stored jobs of the quantification run; an empty hash if there is no readable file
+   */
+  @SuppressWarnings("unchecked")
+  private Hashtable<String,StoredJob> readRun(String runKey){
+    Hashtable<String,StoredJob> jobs = new Hashtable<String,StoredJob>();
+    if (storeDir_==null) return jobs;
+    File runFile = getRunFile(runKey);
+    if (!runFile.exists()) return jobs;
+    try (ObjectInputStream in = new WhitelistInputStream(new BufferedInputStream(new FileInputStream(runFile)))){
+      if (in.readInt()!=STORE_FILE_VERSION) return jobs;
+      jobs = (Hashtable<String,StoredJob>)in.readObject();
+      //the modification time marks the last use of the file
+      runFile.setLastModified(System.currentTimeMillis());
+    } catch (IOException | ClassNotFoundException | RuntimeException ex){
+      //an unreadable run is calculated again
+      jobs = new Hashtable<String,StoredJob>();
+    }
+    return jobs;
+  }
+  
+  /**
+   * @param runKey the key of the quantification run
+   * @return the file of the quantification run
+   */
+  private File getRunFile(String runKey){
+    return new File(storeDir_,runKey+STORE_FILE_SUFFIX);
+  }
+  
+  /**
+   * removes the least recently used files of the store until the size of the store is below MAX_STORE_BYTES
+   */
+  private void limitStoreSize(){
+    File[] files = storeDir_.listFiles((dir,name) -> name.endsWith(STORE_FILE_SUFFIX));
+    if (files==null) return;
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+    long size = 0l;
+    for (File file : files){
+      size += file.length();
+      if (size>MAX_STORE_BYTES) file.delete();
+    }
+  }
+  
+  /**
+   * 
+   * @param quantSet the analyte to be quantified
+   * @return the analyte followed by its isobaric species, in the order of the SingleQuantThread
+   */
+  private static Vector<QuantVO> getQuantVOs(QuantVO quantSet){
+    Vector<QuantVO> quantVOs = new Vector<QuantVO>();
+    quantVOs.add(quantSet);
+    quantVOs.addAll(quantSet.getOtherIsobaricSpecies());
+    return quantVOs;
+  }
+  
+  /**
+   * converts the hash keyed by QuantVO objects into a position based one, where the sets are copied into StoredSet objects
+   * @param quantVOs the analyte and its isobaric species
+   * @param hits the hits keyed by QuantVO
+   * @return the copied hits; the key is the position of the QuantVO
+   */
+  private static Hashtable<Integer,Hashtable<String,StoredSet>> toPositions(Vector<QuantVO> quantVOs,
+      Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hits){
+    Hashtable<Integer,Hashtable<String,StoredSet>> positions = new Hashtable<Integer,Hashtable<String,StoredSet>>();
+    if (hits==null) return positions;
+    for (int i=0; i!=quantVOs.size(); i++){
+      if (!hits.containsKey(quantVOs.get(i))) continue;
+      Hashtable<String,StoredSet> stored = new Hashtable<String,StoredSet>();
+      for (Map.Entry<String,LipidParameterSet> hit : hits.get(quantVOs.get(i)).entrySet())
+        stored.put(hit.getKey(), new StoredSet(hit.getValue()));
+      positions.put(i, stored);
+    }
+    return positions;
+  }
+  
+  /**
+   * converts the position based hash into a hash keyed by the QuantVO objects of the current run, where the sets are newly created
+   * @param quantVOs the analyte and its isobaric species
+   * @param positions the hits; the key is the position of the QuantVO
+   * @return the created hits keyed by QuantVO
+   * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+   */
+  private static Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> toQuantHash(Vector<QuantVO> quantVOs,
+      Hashtable<Integer,Hashtable<String,StoredSet>> positions) throws LipidCombinameEncodingException{
+    Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hits = new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>();
+    for (Integer position : positions.keySet()){
+      Hashtable<String,LipidParameterSet> sets = new Hashtable<String,LipidParameterSet>();
+      for (Map.Entry<String,StoredSet> stored : positions.get(position).entrySet())
+        sets.put(stored.getKey(), stored.getValue().toParameterSet());
+      hits.put(quantVOs.get(position), sets);
+    }
+    return hits;
+  }
+  
+  /**
+   * copies the fragments of the MSn evidence
+   * @param fragments the fragments to copy; key: the name of the fragment
+   * @return the copied fragments; null if there are no fragments
+   */
+  private static Hashtable<String,CgProbe> copyFragments(Hashtable<String,CgProbe> fragments){
+    if (fragments==null) return null;
+    Hashtable<String,CgProbe> copied = new Hashtable<String,CgProbe>();
+    for (Map.Entry<String,CgProbe> fragment : fragments.entrySet()) copied.put(fragment.getKey(), new CgProbe(fragment.getValue()));
+    return copied;
+  }
+  
+  /**
+   * copies the chain fragments of the MSn evidence
+   * @param chainFragments the fragments to copy; first key: the name of the chain
+   * @return the copied fragments; null if there are no fragments
+   */
+  private static Hashtable<String,Hashtable<String,CgProbe>> copyChainFragments(Hashtable<String,Hashtable<String,CgProbe>> chainFragments){
+    if (chainFragments==null) return null;
+    Hashtable<String,Hashtable<String,CgProbe>> copied = new Hashtable<String,Hashtable<String,CgProbe>>();
+    for (Map.Entry<String,Hashtable<String,CgProbe>> chain : chainFragments.entrySet()) copied.put(chain.getKey(), copyFragments(chain.getValue()));
+    return copied;
+  }
+  
+  /**
+   * copies a hash whose values are not modified (e.g. the intensity rules); the values are shared
+   * @param hash the hash to copy
+   * @return the copied hash; null if there is no hash
+   */
+  private static <K,V> Hashtable<K,V> copyHash(Hashtable<K,V> hash){
+    return hash!=null ? new Hashtable<K,V>(hash) : null;
+  }
+  
+  /**
+   * copies a hash of hashes whose values are not modified; the values of the inner hashes are shared
+   * @param hash the hash to copy
+   * @return the copied hash; null if there is no hash
+   */
+  private static <K,L,V> Hashtable<K,Hashtable<L,V>> copyNestedHash(Hashtable<K,Hashtable<L,V>> hash){
+    if (hash==null) return null;
+    Hashtable<K,Hashtable<L,V>> copied = new Hashtable<K,Hashtable<L,V>>();
+    for (Map.Entry<K,Hashtable<L,V>> entry : hash.entrySet()) copied.put(entry.getKey(), copyHash(entry.getValue()));
+    return copied;
+  }
+  
+  /**
+   * copies the position evidence of the MSn evidence; the intensity rules are shared
+   * @param positionEvidence the position evidence to copy
+   * @return the copied position evidence; null if there is none
+   */
+  private static Hashtable<String,Hashtable<Integer,Vector<IntensityPositionVO>>> copyPositionEvidence(
+      Hashtable<String,Hashtable<Integer,Vector<IntensityPositionVO>>> positionEvidence){
+    if (positionEvidence==null) return null;
+    Hashtable<String,Hashtable<Integer,Vector<IntensityPositionVO>>> copied = new Hashtable<String,Hashtable<Integer,Vector<IntensityPositionVO>>>();
+    for (Map.Entry<String,Hashtable<Integer,Vector<IntensityPositionVO>>> combi : positionEvidence.entrySet()){
+      Hashtable<Integer,Vector<IntensityPositionVO>> positions = new Hashtable<Integer,Vector<IntensityPositionVO>>();
+      for (Map.Entry<Integer,Vector<IntensityPositionVO>> position : combi.getValue().entrySet())
+        positions.put(position.getKey(), new Vector<IntensityPositionVO>(position.getValue()));
+      copied.put(combi.getKey(), positions);
+    }
+    return copied;
+  }
+  
+  /**
+   * copies the retention times of the MSn spectra
+   * @param msnRetentionTimes the retention times to copy; first key: the MS level
+   * @return the copied retention times; null if there are none
+   */
+  private static Hashtable<Integer,LinkedHashMap<Integer,Float>> copyMsnRetentionTimes(Hashtable<Integer,LinkedHashMap<Integer,Float>> msnRetentionTimes){
+    if (msnRetentionTimes==null) return null;
+    Hashtable<Integer,LinkedHashMap<Integer,Float>> copied = new Hashtable<Integer,LinkedHashMap<Integer,Float>>();
+    for (Map.Entry<Integer,LinkedHashMap<Integer,Float>> level : msnRetentionTimes.entrySet())
+      copied.put(level.getKey(), new LinkedHashMap<Integer,Float>(level.getValue()));
+    return copied;
+  }
+  
+  /**
+   * copies probes; a probe that is present in both lists of a set is copied once
+   * @param probes the probes to copy
+   * @param copies the already copied probes; key: original probe
+   * @return the copied probes
+   */
+  private static ArrayList<CgProbe> copyProbes(Iterable<CgProbe> probes, IdentityHashMap<CgProbe,CgProbe> copies){
+    ArrayList<CgProbe> copied = new ArrayList<CgProbe>();
+    for (CgProbe probe : probes){
+      if (!copies.containsKey(probe)) copies.put(probe, new CgProbe(probe));
+      copied.add(copies.get(probe));
+    }
+    return copied;
+  }
+  
+  /**
+   * returns the digest of the rule file that is used for a lipid class/adduct combination;
+   * for the oxidized classes the rules of the non-oxidized class are used if there is no separate rule file
+   * @param className the lipid class
+   * @param modName the adduct
+   * @return the digests of the rule file and of the used chain libraries; "none" if there is no rule file
+   * @throws IOException if the rule file or a chain library cannot be read
+   * @throws RulesException specifies in detail which rule has been infringed
+   * @throws NoRuleException thrown if the rules are not there
+   * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
+   */
+  private String getRuleFileDigest(String className, String modName) throws IOException, RulesException, NoRuleException, SpectrummillParserException{
+    File ruleFile = new File(RulesContainer.getCurrentRulesDir(),StaticUtils.getRuleFileName(className, modName));
+    String ruleName = StaticUtils.getRuleName(className, modName);
+    if (!ruleFile.exists() && className.startsWith("ox")){
+      ruleFile = new File(RulesContainer.getCurrentRulesDir(),StaticUtils.getRuleFileName(className.substring(2), modName));
+      ruleName = StaticUtils.getRuleName(className.substring(2), modName);
+    }
+    if (!ruleFile.exists()) return "none";
+    StringBuilder ruleDigest = new StringBuilder();
+    append(ruleDigest,getFileDigest(ruleFile));
+    String chainLib = RulesContainer.getChainlibrary(ruleName);
+    append(ruleDigest,chainLib!=null ? getFileDigest(FattyAcidsContainer.getLibraryFile(chainLib)) : "none");
+    String lcbLib = RulesContainer.getLcbLibrary(ruleName);
+    append(ruleDigest,lcbLib!=null ? getFileDigest(FattyAcidsContainer.getLibraryFile(lcbLib)) : "none");
+    return ruleDigest.toString();
+  }
+  
+  /**
+   * @param file the file to digest
+   * @return the digest of the content of the file; the digests are cached for the path, the length and the modification time of the file
+   * @throws IOException if the file cannot be read
+   */
+  private String getFileDigest(File file) throws IOException{
+    String fileId = file.getAbsolutePath()+SEPARATOR+file.length()+SEPARATOR+file.lastModified();
+    String fileDigest = fileDigests_.get(fileId);
+    if (fileDigest==null){
+      //two threads might digest the same file - both get the same digest
+      fileDigest = digest(Files.readAllBytes(file.toPath()));
+      fileDigests_.putIfAbsent(fileId, fileDigest);
+    }
+    return fileDigest;
+  }
+  
+  private static void append(StringBuilder input, String value){
+    input.append(value);
+    input.append(SEPARATOR);
+  }
+  
+  /**
+   * 
+   * @param input the bytes to digest
+   * @return the hex encoded SHA-256 digest
+   */
+  private static String digest(byte[] input){
+    try{
+      byte[] hash = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(input);
+      StringBuilder hex = new StringBuilder();
+      for (byte b : hash) hex.append(String.format("%02x", b));
+      return hex.toString();
+    } catch (NoSuchAlgorithmException nsx){
+      //every Java platform has to support SHA-256
+      throw new IllegalStateException(nsx);
+    }
+  }
+  
+  /**
+   * object input stream for the stored files, which resolves only the classes of the results
+   */
+  private static class WhitelistInputStream extends ObjectInputStream
+  {
+    private WhitelistInputStream(InputStream in) throws IOException{
+      super(in);
+    }
+    
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException{
+      String name = desc.getName();
+      //arrays of primitives, and arrays of allowed classes (the collections store their elements in Object arrays)
+      while (name.startsWith("[")) name = name.substring(1);
+      if (name.startsWith("L") && name.endsWith(";")) name = name.substring(1,name.length()-1);
+      else if (name.length()==1) return super.resolveClass(desc);
+      if (!ALLOWED_CLASSES.contains(name)) throw new InvalidClassException(desc.getName(),"The class is not part of quantification results");
+      return super.resolveClass(desc);
+    }
+  }
+  
+  /**
+   * the copied results of one SingleQuantThread; the key of the hashes is the position of the QuantVO in the job
+   */
+  static class StoredJob implements Serializable
+  {
+    private static final long serialVersionUID = 1L;
+    
+    private Hashtable<Integer,Hashtable<String,StoredSet>> results_;
+    private Hashtable<Integer,Hashtable<String,StoredSet>> ms2RemovedHits_;
+    private Hashtable<Integer,Hashtable<String,StoredSet>> peaksBeforeSplit_;
+    private boolean msnSpectraPresent_;
+    
+    private StoredJob(Hashtable<Integer,Hashtable<String,StoredSet>> results, Hashtable<Integer,Hashtable<String,StoredSet>> ms2RemovedHits,
+        Hashtable<Integer,Hashtable<String,StoredSet>> peaksBeforeSplit, boolean msnSpectraPresent){
+      this.results_ = results;
+      this.ms2RemovedHits_ = ms2RemovedHits;
+      this.peaksBeforeSplit_ = peaksBeforeSplit;
+      this.msnSpectraPresent_ = msnSpectraPresent;
+    }
+    
+    /**
+     * @param quantSet the analyte of the current run
+     * @return newly created hits keyed by the QuantVO objects of the current run
+     * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+     */
+    Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> getResults(QuantVO quantSet) throws LipidCombinameEncodingException{
+      return toQuantHash(getQuantVOs(quantSet), results_);
+    }
+    
+    /**
+     * @param quantSet the analyte of the current run
+     * @return newly created hits that were removed because of the MSn evidence
+     * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+     */
+    Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> getMs2RemovedHits(QuantVO quantSet) throws LipidCombinameEncodingException{
+      return toQuantHash(getQuantVOs(quantSet), ms2RemovedHits_);
+    }
+    
+    /**
+     * @param quantSet the analyte of the current run
+     * @return newly created unsplit peak versions
+     * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+     */
+    Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> getPeaksBeforeSplit(QuantVO quantSet) throws LipidCombinameEncodingException{
+      return toQuantHash(getQuantVOs(quantSet), peaksBeforeSplit_);
+    }
+    
+    boolean areMSnSpectraPresent(){
+      return msnSpectraPresent_;
+    }
+  }
+  
+  /**
+   * the serializable content of one LipidParameterSet (and of its MSn evidence); the omega information is not part of it,
+   * since it is assigned after the post-processing. A LipidomicsMSnSet is created again like in the MSnAnalyzer,
+   * i.e. the name lookups are derived from the MSn evidence and the current hydroxylation encodings.
+   */
+  private static class StoredSet implements Serializable
+  {
+    private static final long serialVersionUID = 1L;
+    
+    private float[] mz_;
+    private String name_;
+    private float area_;
+    private float lowerMzBand_;
+    private float upperMzBand_;
+    private int valleyMethod_;
+    private ArrayList<CgProbe> probes_;
+    private Vector<Vector<CgProbe>> isotopicProbes_;
+    private Integer doubleBonds_;
+    private String modificationName_;
+    private Double preciseRetentionTime_;
+    private String analyteFormula_;
+    private String modificationFormula_;
+    private Integer charge_;
+    private Integer ohNumber_;
+    private String oxState_;
+    private float lowerRtHardLimit_;
+    private float upperRtHardLimit_;
+    private float percentalSplit_;
+    private float coverage_;
+    private boolean choseMoreLikelyRtWhenEqualMSn_;
+    /** is there MSn evidence - the following fields are only set if there is*/
+    private boolean msn_;
+    private int status_;
+    private Hashtable<String,CgProbe> headGroupFragments_;
+    private Hashtable<String,IntensityRuleVO> headIntensityRules_;
+    private Hashtable<String,Hashtable<String,CgProbe>> chainFragments_;
+    private Hashtable<String,Hashtable<String,IntensityChainVO>> chainIntensityRules_;
+    private Vector<String> validChainCombinations_;
+    private Hashtable<String,Double> relativeIntensityOfCombination_;
+    private Hashtable<String,Hashtable<Integer,Integer>> positionDefinition_;
+    private Hashtable<String,Hashtable<Integer,Vector<IntensityPositionVO>>> positionEvidence_;
+    private int numberOfPositions_;
+    private Hashtable<Integer,Float> basePeakValues_;
+    private Hashtable<Integer,LinkedHashMap<Integer,Float>> msnRetentionTimes_;
+    
+    /**
+     * copies the content of a parameter set; the fragments and the containers of the MSn evidence are copied, the intensity rules are shared
+     * @param set the set to copy
+     */
+    private StoredSet(LipidParameterSet set){
+      mz_ = set.Mz.clone();
+      name_ = set.Peptide;
+      area_ = set.Area;
+      lowerMzBand_ = set.LowerMzBand;
+      upperMzBand_ = set.UpperMzBand;
+      valleyMethod_ = set.ValleyMethod;
+      IdentityHashMap<CgProbe,CgProbe> copies = new IdentityHashMap<CgProbe,CgProbe>();
+      ArrayList<CgProbe> probes = new ArrayList<CgProbe>();
+      for (int i=0; i!=set.ProbeCount(); i++) probes.add(set.Probe(i));
+      probes_ = copyProbes(probes,copies);
+      isotopicProbes_ = new Vector<Vector<CgProbe>>();
+      for (Vector<CgProbe> isoProbes : set.getIsotopicProbes()) isotopicProbes_.add(new Vector<CgProbe>(copyProbes(isoProbes,copies)));
+      doubleBonds_ = set.getDoubleBonds();
+      modificationName_ = set.getModificationName();
+      preciseRetentionTime_ = set.getPreciseRT();
+      analyteFormula_ = set.getAnalyteFormula();
+      modificationFormula_ = set.getModificationFormula();
+      charge_ = set.getCharge();
+      ohNumber_ = set.getOhNumber();
+      oxState_ = set.getOxState();
+      lowerRtHardLimit_ = set.getLowerRtHardLimit();
+      upperRtHardLimit_ = set.getUpperRtHardLimit();
+      percentalSplit_ = set.getPercentalSplit();
+      coverage_ = set.getCoverage();
+      choseMoreLikelyRtWhenEqualMSn_ = set.isChoseMoreLikelyRtWhenEqualMSn();
+      msn_ = set instanceof LipidomicsMSnSet;
+      if (!msn_) return;
+      LipidomicsMSnSet msnSet = (LipidomicsMSnSet)set;
+      status_ = msnSet.getStatus();
+      headGroupFragments_ = copyFragments(msnSet.getHeadGroupFragments());
+      headIntensityRules_ = copyHash(msnSet.getHeadIntensityRules());
+      chainFragments_ = copyChainFragments(msnSet.getChainFragments());
+      chainIntensityRules_ = copyNestedHash(msnSet.getChainIntensityRules());
+      validChainCombinations_ = new Vector<String>(msnSet.getValidChainCombinations());
+      relativeIntensityOfCombination_ = new Hashtable<String,Double>(msnSet.getChainCombinationRelativeAreas());
+      positionDefinition_ = copyNestedHash(msnSet.getPositionDefinition());
+      positionEvidence_ = copyPositionEvidence(msnSet.getPositionEvidence());
+      numberOfPositions_ = msnSet.getNumberOfPositions();
+      basePeakValues_ = copyHash(msnSet.getBasePeakValues());
+      msnRetentionTimes_ = copyMsnRetentionTimes(msnSet.getMsnRetentionTimes());
+    }
+    
+    /**
+     * 
+     * @return a new parameter set with the stored content; every set gets its own copy of the MSn evidence
+     * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+     */
+    private LipidParameterSet toParameterSet() throws LipidCombinameEncodingException{
+      LipidParameterSet set = new LipidParameterSet(mz_[0], name_, doubleBonds_, modificationName_, preciseRetentionTime_, analyteFormula_,
+          modificationFormula_, charge_, ohNumber_);
+      set.Mz = mz_.clone();
+      set.Area = area_;
+      set.LowerMzBand = lowerMzBand_;
+      set.UpperMzBand = upperMzBand_;
+      set.ValleyMethod = valleyMethod_;
+      set.setLowerRtHardLimit(lowerRtHardLimit_);
+      set.setUpperRtHardLimit(upperRtHardLimit_);
+      set.setPercentalSplit(percentalSplit_);
+      set.setOxState(oxState_);
+      if (msn_){
+        set = new LipidomicsMSnSet(set, status_, copyFragments(headGroupFragments_), copyHash(headIntensityRules_), copyChainFragments(chainFragments_),
+            copyNestedHash(chainIntensityRules_), new Vector<String>(validChainCombinations_), new Hashtable<String,Double>(relativeIntensityOfCombination_),
+            copyNestedHash(positionDefinition_), copyPositionEvidence(positionEvidence_), numberOfPositions_, copyHash(basePeakValues_),
+            copyMsnRetentionTimes(msnRetentionTimes_), Settings.getFaHydroxyEncoding(), Settings.getLcbHydroxyEncoding());
+      }
+      IdentityHashMap<CgProbe,CgProbe> copies = new IdentityHashMap<CgProbe,CgProbe>();
+      set.setProbes(copyProbes(probes_,copies));
+      Vector<Vector<CgProbe>> isotopicProbes = new Vector<Vector<CgProbe>>();
+      for (Vector<CgProbe> isoProbes : isotopicProbes_) isotopicProbes.add(new Vector<CgProbe>(copyProbes(isoProbes,copies)));
+      set.setIsotopicProbes(isotopicProbes);
+      set.setCoverage(coverage_);
+      set.setChoseMoreLikelyRtWhenEqualMSn(choseMoreLikelyRtWhenEqualMSn_);
+      return set;
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda;
+
+/**
+ * Immutable snapshot of the LipidomicsConstants that are read in the inner loops of the quantification and the MSn identification.
+ * One snapshot is created per quantification job and handed through the analyzers; thus, the values are not looked up for every
+ * analyte, and two files with different settings may be processed in the same JVM. The static getters of LipidomicsConstants
+ * remain available for all other code.
+ */
+public final class QuantificationSettings
+{
+  /** are the chromatograms stored in the sparse format*/
+  private final boolean sparseData_;
+  /** the smoothing range for the chromatograms*/
+  private final float chromSmoothRange_;
+  /** the m/z tolerance for the chromatograms*/
+  private final float coarseChromMzTolerance_;
+  /** true if the m/z tolerance for the chromatograms is in ppm*/
+  private final boolean coarseChromMzTolerancePpm_;
+  /** the mass difference between two isotopes*/
+  private final float neutronMass_;
+  /** the divisor for the peak distance when checking overlaps*/
+  private final float overlapPeakDistanceDivisor_;
+  /** the divisor for the full distance when checking overlaps*/
+  private final float overlapFullDistanceDivisor_;
+  /** the relative cutoff for chain fragments*/
+  private final double chainCutoffValue_;
+  /** the shotgun type (SHOTGUN_FALSE, SHOTGUN_TRUE, or SHOTGUN_PRM of the LipidomicsConstants)*/
+  private final short shotgun_;
+  /** are MS2 spectra present*/
+  private final boolean ms2_;
+  /** shall the labels of the chains be checked for consistency*/
+  private final boolean checkChainLabelCombination_;
+  /** the m/z range for accepting shotgun peaks*/
+  private final float profilePeakAcceptanceRange_;
+  /** shall zero intensities be discarded for shotgun data*/
+  private final boolean shotgunIntensityRemoval_;
+  /** relative intensity cutoff for shotgun data*/
+  private final float shotgunRelIntCutoff_;
+  
+  QuantificationSettings(boolean sparseData, float chromSmoothRange, float coarseChromMzTolerance, String mzUnit, float neutronMass,
+      float overlapPeakDistanceDivisor, float overlapFullDistanceDivisor, double chainCutoffValue, short shotgun, boolean ms2,
+      boolean checkChainLabelCombination, float profilePeakAcceptanceRange, boolean shotgunIntensityRemoval, float shotgunRelIntCutoff){
+    this.sparseData_ = sparseData;
+    this.chromSmoothRange_ = chromSmoothRange;
+    this.coarseChromMzTolerance_ = coarseChromMzTolerance;
+    this.coarseChromMzTolerancePpm_ = mzUnit!=null && mzUnit.equalsIgnoreCase(LipidomicsConstants.MZUNIT_PPM);
+    this.neutronMass_ = neutronMass;
+    this.overlapPeakDistanceDivisor_ = overlapPeakDistanceDivisor;
+    this.overlapFullDistanceDivisor_ = overlapFullDistanceDivisor;
+    this.chainCutoffValue_ = chainCutoffValue;
+    this.shotgun_ = shotgun;
+    this.ms2_ = ms2;
+    this.checkChainLabelCombination_ = checkChainLabelCombination;
+    this.profilePeakAcceptanceRange_ = profilePeakAcceptanceRange;
+    this.shotgunIntensityRemoval_ = shotgunIntensityRemoval;
+    this.shotgunRelIntCutoff_ = shotgunRelIntCutoff;
+  }
+
+  /**
+   * @return true if the chromatograms are stored in the sparse format
+   */
+  public boolean isSparseData()
+  {
+    return sparseData_;
+  }
+
+  /**
+   * @return the smoothing range for the chromatograms
+   */
+  public float getChromSmoothRange()
+  {
+    return chromSmoothRange_;
+  }
+
+  /**
+   * @param mz the m/z value the tolerance is calculated for
+   * @return the m/z tolerance for the chromatograms in Da
+   */
+  public float getCoarseChromMzTolerance(float mz)
+  {
+    if (coarseChromMzTolerancePpm_)
+      return (coarseChromMzTolerance_*mz)/1000000f;
+    return coarseChromMzTolerance_;
+  }
+
+  /**
+   * @return the mass difference between two isotopes
+   */
+  public float getNeutronMass()
+  {
+    return neutronMass_;
+  }
+
+  /**
+   * @return the divisor for the peak distance when checking overlaps
+   */
+  public float getOverlapPeakDistanceDivisor()
+  {
+    return overlapPeakDistanceDivisor_;
+  }
+
+  /**
+   * @return the divisor for the full distance when checking overlaps
+   */
+  public float getOverlapFullDistanceDivisor()
+  {
+    return overlapFullDistanceDivisor_;
+  }
+
+  /**
+   * @return the relative cutoff for chain fragments
+   */
+  public double getChainCutoffValue()
+  {
+    return chainCutoffValue_;
+  }
+
+  /**
+   * @return the shotgun type (SHOTGUN_FALSE, SHOTGUN_TRUE, or SHOTGUN_PRM of the LipidomicsConstants)
+   */
+  public short isShotgun()
+  {
+    return shotgun_;
+  }
+
+  /**
+   * @return true if MS2 spectra are present
+   */
+  public boolean isMS2()
+  {
+    return ms2_;
+  }
+
+  /**
+   * @return true if the labels of the chains shall be checked for consistency
+   */
+  public boolean checkChainLabelCombination()
+  {
+    return checkChainLabelCombination_;
+  }
+
+  /**
+   * @return the m/z range for accepting shotgun peaks
+   */
+  public float getProfilePeakAcceptanceRange()
+  {
+    return profilePeakAcceptanceRange_;
+  }
+
+  /**
+   * @return true if zero intensities shall be discarded for shotgun data
+   */
+  public boolean isShotgunIntensityRemoval()
+  {
+    return shotgunIntensityRemoval_;
+  }
+
+  /**
+   * @return relative intensity cutoff for shotgun data
+   */
+  public float getShotgunRelIntCutoff()
+  {
+    return shotgunRelIntCutoff_;
+  }
+  
+}
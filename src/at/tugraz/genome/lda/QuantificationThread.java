@@ -47,6 +47,7 @@ import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
 import at.tugraz.genome.lda.exception.NoRuleException;
 import at.tugraz.genome.lda.exception.RulesException;
 import at.tugraz.genome.lda.export.QuantificationResultExporter;
+import at.tugraz.genome.lda.msn.FragmentTable;
 import at.tugraz.genome.lda.msn.LipidomicsMSnSet;
 import at.tugraz.genome.lda.msn.MSnAnalyzer;
 import at.tugraz.genome.lda.msn.OtherAdductChecker;
@@ -56,6 +57,8 @@ import at.tugraz.genome.lda.msn.hydroxy.parser.HydroxyEncoding;
 import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
 import at.tugraz.genome.lda.msn.vos.RtPredictVO;
 import at.tugraz.genome.lda.parser.MassListParser;
+import at.tugraz.genome.lda.profiling.PipelineMetrics;
+import at.tugraz.genome.lda.quantification.ChromatogramSlabs;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.LipidomicsAnalyzer;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
@@ -118,10 +121,26 @@ public class QuantificationThread extends Thread
   private Hashtable<Integer,String> threadToClass_;
   private Hashtable<Integer,String> threadToAnalyte_;
   private Hashtable<Integer,String> threadToMod_;
+  /** the keys of the running jobs in the QuantificationResultStore; jobs restored from the store have no entry*/
+  private Hashtable<Integer,String> threadToJobKey_;
+  /** the key of this run in the QuantificationResultStore; null if the store is not used*/
+  private String resultStoreRunKey_;
   
   private long startCalcTime_;
+  /** the metrics of this quantification*/
+  private PipelineMetrics metrics_;
   
   private Timer timer_;
+  /** the settings of this quantification - one snapshot is shared by all analyzers*/
+  private QuantificationSettings settings_;
+  /** the precalculated MSn fragments of the mass list - one table is shared by all analyzers*/
+  private FragmentTable fragmentTable_;
+  /** the MS1 chromatogram lines of the quantification units that are currently processed - shared by all analyzers*/
+  private ChromatogramSlabs chromatogramSlabs_;
+  /** the jobs (class, analyte, modification) of the quantification units; a unit comprises the hydroxylation/oxidation variants of one species*/
+  private Hashtable<String,Vector<String[]>> variantUnits_;
+  /** the quantification units where the quantification has started*/
+  private Hashtable<String,Boolean> openUnits_;
   
   /** in the case of MSnFirst: contains LM-Models and suggestions for the next range for quantitation*/
   private Hashtable<String,Hashtable<String,RtPredictVO>> latestRtPredictions_; 
@@ -129,6 +148,8 @@ public class QuantificationThread extends Thread
   private final static int STATUS_WAITING = 0;
   private final static int STATUS_CALCULATING = 1;
   private final static int STATUS_FINISHED = 2;
+  /** read windows of the variants of a unit that are closer than this m/z value are read as one slab*/
+  private final static float MAX_SLAB_GAP = 0.5f;
   
     
   public QuantificationThread(String chromFile,String quantFile,String resultFile,//float mzTolerance, 
@@ -189,6 +210,7 @@ public class QuantificationThread extends Thread
       float minusTime, float plusTime, int amountOfIsotopes, int isotopesMustMatch, boolean searchUnknownTime, float basePeakCutoff,
       float rtShift, int numberOfProcessors, boolean ionMode) throws Exception{
     startCalcTime_ = System.currentTimeMillis();
+    metrics_ = PipelineMetrics.create(chromFile, PipelineMetrics.STAGE_QUANTIFICATION);
     totalAmountOfLipids_ = -1;
     currentLipidCount_ = -1;
     currentLipid_ = "";
@@ -198,19 +220,33 @@ public class QuantificationThread extends Thread
     String errorMessage = StaticUtils.existChromNecessaryFiles(pureFile);
     if (errorMessage!=null && errorMessage.length()>0) throw new Exception(errorMessage);
     String[] chromPaths = StringUtils.getChromFilePaths(pureFile+".chrom");
+    settings_ = LipidomicsConstants.getQuantificationSettings();
+    PipelineMetrics.Timing timing = metrics_.time("initAnalyzers");
     float[] maxRetTimes = initThreadMonitors(chromPaths, numberOfProcessors, basePeakCutoff);
+    timing.stop();
+    //the results of unchanged analytes are reused when the same file is quantified again
+    resultStoreRunKey_ = QuantificationResultStore.getInstance().createRunKey(chromPaths, minusTime, plusTime, amountOfIsotopes,
+          isotopesMustMatch, searchUnknownTime, basePeakCutoff, rtShift, ionMode);
     float highestRetTime = maxRetTimes[1];
     float lowestRetTime = maxRetTimes[0];
     @SuppressWarnings("rawtypes")
     Vector quantContent = null;
     File quant = new File(quantFile);
+    timing = metrics_.time("massListParsing");
     if (quant.isFile() && (quant.getName().endsWith(".xls") || quant.getName().endsWith(".xlsx"))){
       quantContent = (new MassListParser(quantFile, minusTime, plusTime, amountOfIsotopes, isotopesMustMatch, searchUnknownTime, rtShift, lowestRetTime, highestRetTime)).getResultsVector();
     } else if ((quant.isFile() && quant.getName().endsWith(".txt")) || quant.isDirectory()){
       quantContent = (new MassListParser(quantFile, minusTime, plusTime, amountOfIsotopes,
           isotopesMustMatch, searchUnknownTime, basePeakCutoff, rtShift, lowestRetTime, highestRetTime, true, ionMode)).getResultsVector();
     }
+    timing.stop();
     if (quantContent!=null){
+      //the fragments depend only on the mass list and the rules - they are calculated once for all files of this mass list
+      fragmentTable_ = FragmentTable.getInstance(quantFile, RulesContainer.getCurrentRulesDir());
+      for (LipidomicsAnalyzer analyzer : analyzers_.values()) analyzer.setFragmentTable(fragmentTable_);
+      //the variants of a species are quantified in parallel - overlapping chromatogram regions are read once
+      chromatogramSlabs_ = new ChromatogramSlabs();
+      for (LipidomicsAnalyzer analyzer : analyzers_.values()) analyzer.setChromatogramSlabs(chromatogramSlabs_);
       LinkedHashMap<String,Integer> classSequence = (LinkedHashMap<String,Integer>)quantContent.get(0);
  // LL    Hashtable<String,Vector<String>> analyteSequence = (Hashtable<String,Vector<String>>)quantContent.get(1);
       LinkedHashMap<String,Vector<String>> analyteSequence = (LinkedHashMap<String,Vector<String>>)quantContent.get(1);
@@ -221,10 +257,34 @@ public class QuantificationThread extends Thread
       timer_.schedule(new ThreadSupervisor(quantContent,basePeakCutoff,resultFile), 10, 100);
     } else {
       this.errorString_ = "The quantification file/folder does not contain any usable files";
+      metrics_.finishNextTo(resultFile);
       this.finished_ = true;
     }
   }
   
+  /**
+   * stores the fragments that were calculated during this quantification for the next files of the mass list
+   */
+  private void storeFragmentTable(){
+    if (fragmentTable_==null) return;
+    try{
+      fragmentTable_.store();
+    } catch (IOException iox){
+      System.out.println("Warning: The MSn fragments could not be stored: "+iox.getMessage());
+    }
+  }
+  
+  /**
+   * stores the results of the jobs of this quantification for the next quantification of the same file
+   */
+  private void flushResultStore(){
+    try{
+      QuantificationResultStore.getInstance().flush(resultStoreRunKey_);
+    } catch (IOException iox){
+      System.out.println("Warning: The quantification results could not be stored: "+iox.getMessage());
+    }
+  }
+  
   public int getTotalAmountOfLipids()
   {
     return totalAmountOfLipids_;
@@ -307,17 +367,45 @@ public class QuantificationThread extends Thread
       return null;
   }
   
+  /**
+   * restores the results of a job from the QuantificationResultStore if the inputs of the job have not changed since a previous run;
+   * otherwise, the key for storing the results of the job is remembered
+   * @param thread the thread for the job
+   * @param quantSet the analyte to be quantified
+   * @param msLevel the MS-level for the quantification
+   * @param msnFirst should the MSn quantitation be performed before the MS1 quantitation
+   * @param threadIndex the index of the thread
+   * @return true if the results were restored - then the thread must not be started
+   */
+  private boolean restoreFromResultStore(SingleQuantThread thread, QuantVO quantSet, int msLevel, boolean msnFirst, int threadIndex){
+    if (resultStoreRunKey_==null) return false;
+    try{
+      QuantificationResultStore store = QuantificationResultStore.getInstance();
+      String jobKey = store.createJobKey(resultStoreRunKey_, quantSet, msLevel, msnFirst);
+      if (jobKey==null) return false;
+      if (store.restore(resultStoreRunKey_, jobKey, thread)) return true;
+      threadToJobKey_.put(threadIndex, jobKey);
+    } catch (IOException | RulesException | NoRuleException | SpectrummillParserException ex) {
+      //without a key, the results of this job are not stored
+      System.out.println("Warning: The results of "+quantSet.getAnalyteName()+" cannot be stored: "+ex.getMessage());
+    } catch (LipidCombinameEncodingException e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
+  
   private float[] initThreadMonitors(String[] chromPaths, int numberOfProcessors, float basePeakCutoff) throws CgException{
     availableThreads_ = new Hashtable<Integer,Boolean>();
     analyzers_ = new Hashtable<Integer,LipidomicsAnalyzer>();
     threadToClass_ = new Hashtable<Integer,String> ();
     threadToAnalyte_ = new Hashtable<Integer,String>();
     threadToMod_ = new Hashtable<Integer,String>();
+    threadToJobKey_ = new Hashtable<Integer,String>();
     float[] maxRetTimes = new float[2];
     
     for (int i=0; i!=numberOfProcessors;i++){
       availableThreads_.put(i, true);
-      LipidomicsAnalyzer analyzer = new LipidomicsAnalyzer(chromPaths[1],chromPaths[2],chromPaths[3],chromPaths[0],Settings.useCuda());
+      LipidomicsAnalyzer analyzer = new LipidomicsAnalyzer(chromPaths[1],chromPaths[2],chromPaths[3],chromPaths[0],Settings.useCuda(),settings_);
       if (i==0){
         float highestRetTime = 0;
         float lowestRetTime = Float.MAX_VALUE;
@@ -336,6 +424,17 @@ public class QuantificationThread extends Thread
   }
   
   
+  /**
+   * @return the analyzers in the sequence of their thread indices - the first one is the analyzer of thread 0
+   */
+  private Vector<LipidomicsAnalyzer> getAnalyzerSequence(){
+    Vector<LipidomicsAnalyzer> analyzers = new Vector<LipidomicsAnalyzer>();
+    for (int i=0; i!=analyzers_.size(); i++)
+      analyzers.add(analyzers_.get(i));
+    return analyzers;
+  }
+  
+  
   private class ThreadSupervisor extends TimerTask{
     private LinkedHashMap<String,Integer> classSequence_;
  // LL  private Hashtable<String,Vector<String>> analyteSequence_;
@@ -359,6 +458,7 @@ public class QuantificationThread extends Thread
       bpCutoff_ = basePeakCutoff;
       rsFile_ = resultFile;
       initThreadHashes();
+      initVariantUnits(classSequence_,analyteSequence_,quantObjects_);
     }
 
     public void run()
@@ -369,6 +469,7 @@ public class QuantificationThread extends Thread
       } catch (Exception ex){
         ex.printStackTrace();
         errorString_ = ex.toString();
+        metrics_.finishNextTo(rsFile_);
         finished_ = true;
         for (Integer analyzer : analyzers_.keySet()){
           if (analyzers_.get(analyzer).getUseCuda()){
@@ -434,6 +535,9 @@ public class QuantificationThread extends Thread
           error = true;
           stopThread = true;
         }else{
+          //the results have to be stored before they are modified by the following steps
+          String jobKey = threadToJobKey_.remove(i);
+          if (jobKey!=null) QuantificationResultStore.getInstance().store(resultStoreRunKey_, jobKey, singleThread);
           Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hitsAccordingToQuant = singleThread.getResults();
           Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> ms2RemovedToQuant = singleThread.getMs2Removedhits();
           Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> beforeSplitToQuant = singleThread.getPeaksBeforeSplit();
@@ -484,11 +588,11 @@ public class QuantificationThread extends Thread
                 set.setOxState(oneQuant.getOxState());           
                 
                 boolean insideAllowedMz = false;
-                if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
+                if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
                   insideAllowedMz = true;
                 } else {
                   for (CgProbe probe : set.getIsotopicProbes().get(0)){
-                    if (((float)oneQuant.getAnalyteMass()-LipidomicsConstants.getProfilePeakAcceptanceRange())<=probe.Mz && probe.Mz<=((float)oneQuant.getAnalyteMass()+LipidomicsConstants.getProfilePeakAcceptanceRange())){
+                    if (((float)oneQuant.getAnalyteMass()-settings_.getProfilePeakAcceptanceRange())<=probe.Mz && probe.Mz<=((float)oneQuant.getAnalyteMass()+settings_.getProfilePeakAcceptanceRange())){
                       insideAllowedMz = true;
                       break;
                     }
@@ -595,6 +699,7 @@ public class QuantificationThread extends Thread
         availableThreads_.put(i,true);
       }
     }
+    releaseFinishedUnits();
     // find available threads
     Vector<Integer> availableThread = new Vector<Integer>();
     if (!error){
@@ -605,12 +710,14 @@ public class QuantificationThread extends Thread
     //if there are free threads, assign jobs to them!
     int currentThreadNumber = 0;
     if (!error && availableThread.size()>0){
-    	
+      //the remaining variants of units that are already quantified go first, so that they use the same chromatogram slabs
+      for (String unitKey : new Vector<String>(openUnits_.keySet())){
+        currentThreadNumber = startWaitingVariants(unitKey,availableThread,currentThreadNumber,classSequence,quantObjects);
+      }
       for (String className : classSequence.keySet()){
         if (currentThreadNumber>=availableThread.size())
           break;
         Hashtable<String,Hashtable<String,QuantVO>> classQuant = quantObjects.get(className);
-        quantObjects.get(className);
         int msLevel = classSequence.get(className);
 
       for (String analyteName : analyteSequence.get(className)){
@@ -622,37 +729,13 @@ public class QuantificationThread extends Thread
             if (currentThreadNumber>=availableThread.size())
               break;
             if (quantStatus_.get(className).get(analyteName).get(mod)==STATUS_WAITING){
-              int threadIndex = (availableThread.get(currentThreadNumber));
-              availableThreads_.put(threadIndex, false);
-              quantStatus_.get(className).get(analyteName).put(mod,STATUS_CALCULATING);
-              boolean msnFirst = false;
-              if (LipidomicsConstants.isMS2() && !this.msnRoundFinished_){
-                Vector<QuantVO> quants = new Vector<QuantVO>();
-                quants.add(analyteQuant.get(mod));
-                quants.addAll(analyteQuant.get(mod).getOtherIsobaricSpecies());
-                Collections.sort(quants); /// LL
-                for (int i=0; i!=quants.size();i++){
-                  QuantVO quant = quants.get(i);
-                  try{
-                    int msIdentOrder = RulesContainer.getMSIdentificationOrder(StaticUtils.getRuleName(quant.getAnalyteClass(),quant.getModName()));
-                    if (i==0 && (msIdentOrder==RulesContainer.ORDER_MSN_FIRST || msIdentOrder==RulesContainer.ORDER_MSN_ONLY)) msnFirst = true;
-                    else if (msIdentOrder==RulesContainer.ORDER_MS1_FIRST) msnFirst = false;
-                  } catch(Exception ex){
-                  }                
-
-                }
-              }
-              SingleQuantThread thread = new SingleQuantThread(analyzers_.get(threadIndex), analyteQuant.get(mod), msLevel, msnFirst);
-              threads_.put(threadIndex, thread);
-              threadToClass_.put(threadIndex,className);
-              threadToAnalyte_.put(threadIndex,analyteName);
-              threadToMod_.put(threadIndex,mod);
-              thread.start();
+              startJob(availableThread.get(currentThreadNumber),className,analyteName,mod,msLevel,quantObjects);
               if (modCount==0){
 //                currentLipidCount_++;
                 currentLipid_ = className+" "+analyteName;
               }
               currentThreadNumber++;
+              currentThreadNumber = startWaitingVariants(analyteQuant.get(mod).getVariantOf(),availableThread,currentThreadNumber,classSequence,quantObjects);
             }
             modCount++;
           }
@@ -699,7 +782,7 @@ public class QuantificationThread extends Thread
       }
       int countToProcess = 0;
       if (areThereMS1HitsToProcess){
-/*LL*/        PostQuantificationProcessor processor = new PostQuantificationProcessor(results_,ms2Removed_,adductInsensitiveRtFilter);
+/*LL*/        PostQuantificationProcessor processor = new PostQuantificationProcessor(results_,ms2Removed_,adductInsensitiveRtFilter,numberOfProcessors_);
         try {
 /*LL*/          latestRtPredictions_ = processor.predictRetentionTimesBasedOnResults(onlyMS1DataPresent_,latestRtPredictions_);
           Hashtable<String,Hashtable<String,Boolean>> predictionFound = new Hashtable<String,Hashtable<String,Boolean>>();
@@ -780,17 +863,18 @@ public class QuantificationThread extends Thread
     }
     if (stopThread){
       if (!error){
+        PipelineMetrics.Timing timing = metrics_.time("postProcessing");
         //check here for results that need other adducts to be correct
-        if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE) {
+        if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE) {
  /*LL*/         try {
- /*LL*/           results_ = OtherAdductChecker.checkTheResultsForOtherAdducts(results_,unsplittedPeaks_,quantObjects,analyzers_.get(0),classSequence,analyteSequence);
+ /*LL*/           results_ = OtherAdductChecker.checkTheResultsForOtherAdducts(results_,unsplittedPeaks_,quantObjects,getAnalyzerSequence(),classSequence,analyteSequence);
  /*LL*/         }
  /*LL*/         catch (CgException | LipidCombinameEncodingException e) {
  /*LL*/           e.printStackTrace();
   /*LL*/        }
         }
-        if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && LipidomicsConstants.isMS2()){
- /*LL*/         PostQuantificationProcessor processor = new PostQuantificationProcessor(results_,ms2Removed_,adductInsensitiveRtFilter);
+        if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && settings_.isMS2()){
+ /*LL*/         PostQuantificationProcessor processor = new PostQuantificationProcessor(results_,ms2Removed_,adductInsensitiveRtFilter,numberOfProcessors_);
           try {
  /*LL*/           results_ = processor.chooseMoreLikelyOne(quantObjects);
           }
@@ -809,17 +893,21 @@ public class QuantificationThread extends Thread
         }
         //so that the checkTheResultsForOtherAdducts is really 100% correct, remove all hits that fall below the
         //base peak cutoff, and execute OtherAdductChecker.checkTheResultsForOtherAdducts again
-        if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE) {
+        if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE) {
   /*LL*/        try {
   /*LL*/          OtherAdductChecker.removePeaksThatFallBelowTheBasepeakCutoff(results_,extractHighestArea()*(basePeakCutoff/1000f));
-    /*LL*/        results_ = OtherAdductChecker.checkTheResultsForOtherAdducts(results_,unsplittedPeaks_,quantObjects,analyzers_.get(0),classSequence,analyteSequence);
+    /*LL*/        results_ = OtherAdductChecker.checkTheResultsForOtherAdducts(results_,unsplittedPeaks_,quantObjects,getAnalyzerSequence(),classSequence,analyteSequence);
    /*LL*/       }
  /*LL*/         catch (CgException | LipidCombinameEncodingException e) {
   /*LL*/          e.printStackTrace();
   /*LL*/        }
         }
+        timing.stop();
         executeFinalProcesses(classSequence,analyteSequence,quantObjects,basePeakCutoff,resultFile,chromFile,bestMatchBySpectrumCoverage);
       }
+      storeFragmentTable();
+      flushResultStore();
+      metrics_.finishNextTo(resultFile);
       finished_ = true;
       for (Integer analyzer : analyzers_.keySet()){
         if (analyzers_.get(analyzer).getUseCuda()){
@@ -829,6 +917,161 @@ public class QuantificationThread extends Thread
     }
   }
   
+  /**
+   * starts the quantification of one analyte/modification on a thread
+   * @param threadIndex the index of the available thread
+   * @param className the analyte class
+   * @param analyteName the analyte name
+   * @param mod the modification
+   * @param msLevel the MS-level of the quantification
+   * @param quantObjects the objects defining the quantitation parameters
+   */
+  private void startJob(int threadIndex, String className, String analyteName, String mod, int msLevel,
+      Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects){
+    QuantVO quantVO = quantObjects.get(className).get(analyteName).get(mod);
+    availableThreads_.put(threadIndex, false);
+    quantStatus_.get(className).get(analyteName).put(mod,STATUS_CALCULATING);
+    boolean msnFirst = false;
+    if (LipidomicsConstants.isMS2() && !this.msnRoundFinished_){
+      Vector<QuantVO> quants = new Vector<QuantVO>();
+      quants.add(quantVO);
+      quants.addAll(quantVO.getOtherIsobaricSpecies());
+      Collections.sort(quants); /// LL
+      for (int i=0; i!=quants.size();i++){
+        QuantVO quant = quants.get(i);
+        try{
+          int msIdentOrder = RulesContainer.getMSIdentificationOrder(StaticUtils.getRuleName(quant.getAnalyteClass(),quant.getModName()));
+          if (i==0 && (msIdentOrder==RulesContainer.ORDER_MSN_FIRST || msIdentOrder==RulesContainer.ORDER_MSN_ONLY)) msnFirst = true;
+          else if (msIdentOrder==RulesContainer.ORDER_MS1_FIRST) msnFirst = false;
+        } catch(Exception ex){
+        }                
+
+      }
+    }
+    String unitKey = quantVO.getVariantOf();
+    if (variantUnits_.containsKey(unitKey) && !openUnits_.containsKey(unitKey)) openUnit(unitKey,quantObjects);
+    SingleQuantThread thread = new SingleQuantThread(analyzers_.get(threadIndex), quantVO, msLevel, msnFirst);
+    thread.setMetrics(metrics_);
+    threads_.put(threadIndex, thread);
+    threadToClass_.put(threadIndex,className);
+    threadToAnalyte_.put(threadIndex,analyteName);
+    threadToMod_.put(threadIndex,mod);
+    if (!restoreFromResultStore(thread, quantVO, msLevel, msnFirst, threadIndex))
+      thread.start();
+    else
+      metrics_.increment("resultStore.hits");
+  }
+  
+  /**
+   * groups the hydroxylation and oxidation variants of the same species and adduct to quantification units;
+   * only groups consisting of more than one variant are kept
+   * @param classSequence the sequence of the analyte classes
+   * @param analyteSequence the sequence of the analytes in the classes
+   * @param quantObjects the objects defining the quantitation parameters
+   */
+  private void initVariantUnits(LinkedHashMap<String,Integer> classSequence, LinkedHashMap<String,Vector<String>> analyteSequence,
+      Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects){
+    variantUnits_ = new Hashtable<String,Vector<String[]>>();
+    openUnits_ = new Hashtable<String,Boolean>();
+    Hashtable<String,Vector<String[]>> units = new Hashtable<String,Vector<String[]>>();
+    for (String className : classSequence.keySet()){
+      for (String analyteName : analyteSequence.get(className)){
+        Hashtable<String,QuantVO> analyteQuant = quantObjects.get(className).get(analyteName);
+        for (String mod : analyteQuant.keySet()){
+          String unitKey = analyteQuant.get(mod).getVariantOf();
+          Vector<String[]> jobs = units.get(unitKey);
+          if (jobs==null){
+            jobs = new Vector<String[]>();
+            units.put(unitKey, jobs);
+          }
+          jobs.add(new String[]{className,analyteName,mod});
+        }
+      }
+    }
+    for (String unitKey : units.keySet()){
+      if (units.get(unitKey).size()>1) variantUnits_.put(unitKey, units.get(unitKey));
+    }
+  }
+  
+  /**
+   * marks a quantification unit as open, and plans the slabs for the regions where the read windows of the variants overlap
+   * @param unitKey the key of the quantification unit
+   * @param quantObjects the objects defining the quantitation parameters
+   */
+  private void openUnit(String unitKey, Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects){
+    openUnits_.put(unitKey, true);
+    if (chromatogramSlabs_==null) return;
+    //the read windows sorted by their lower m/z value; first value: lower m/z; second value: upper m/z
+    Vector<float[]> windows = new Vector<float[]>();
+    for (String[] job : variantUnits_.get(unitKey)){
+      QuantVO quantVO = quantObjects.get(job[0]).get(job[1]).get(job[2]);
+      float mz = (float)quantVO.getAnalyteMass();
+      float isotopeDistance = LipidomicsConstants.getNeutronMass()/(float)quantVO.getCharge();
+      float tolerance = settings_.getCoarseChromMzTolerance(mz);
+      int isotopes = quantVO.getProbabs()!=null ? quantVO.getProbabs().size() : 1;
+      float[] window = new float[]{mz-(1+Math.abs(quantVO.getNegativeStartValue()))*isotopeDistance-tolerance, mz+isotopes*isotopeDistance+tolerance};
+      int position = 0;
+      while (position<windows.size() && windows.get(position)[0]<=window[0]) position++;
+      windows.add(position, window);
+    }
+    Vector<int[]> lineRanges = new Vector<int[]>();
+    LipidomicsAnalyzer analyzer = analyzers_.get(0);
+    int i=0;
+    while (i<windows.size()){
+      float lower = windows.get(i)[0];
+      float upper = windows.get(i)[1];
+      int j = i+1;
+      while (j<windows.size() && (windows.get(j)[0]-upper)<=MAX_SLAB_GAP){
+        upper = Math.max(upper, windows.get(j)[1]);
+        j++;
+      }
+      //a window that does not overlap with another one is read by its variant alone
+      if ((j-i)>1) lineRanges.add(new int[]{analyzer.getChromatogramLineNumber(lower),analyzer.getChromatogramLineNumber(upper)+1});
+      i = j;
+    }
+    if (lineRanges.size()>0) chromatogramSlabs_.plan(unitKey, lineRanges);
+  }
+  
+  /**
+   * starts the waiting variants of a quantification unit on the available threads
+   * @param unitKey the key of the quantification unit
+   * @param availableThread the indices of the available threads
+   * @param currentThreadNumber the position of the next free thread in availableThread
+   * @param classSequence the sequence of the analyte classes
+   * @param quantObjects the objects defining the quantitation parameters
+   * @return the position of the next free thread in availableThread
+   */
+  private int startWaitingVariants(String unitKey, Vector<Integer> availableThread, int currentThreadNumber, LinkedHashMap<String,Integer> classSequence,
+      Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects){
+    if (!variantUnits_.containsKey(unitKey)) return currentThreadNumber;
+    for (String[] job : variantUnits_.get(unitKey)){
+      if (currentThreadNumber>=availableThread.size())
+        break;
+      if (quantStatus_.get(job[0]).get(job[1]).get(job[2])!=STATUS_WAITING) continue;
+      startJob(availableThread.get(currentThreadNumber),job[0],job[1],job[2],classSequence.get(job[0]),quantObjects);
+      currentThreadNumber++;
+    }
+    return currentThreadNumber;
+  }
+  
+  /**
+   * closes the quantification units where all variants are finished, and releases their slabs
+   */
+  private void releaseFinishedUnits(){
+    for (String unitKey : new Vector<String>(openUnits_.keySet())){
+      boolean finished = true;
+      for (String[] job : variantUnits_.get(unitKey)){
+        if (quantStatus_.get(job[0]).get(job[1]).get(job[2])!=STATUS_FINISHED){
+          finished = false;
+          break;
+        }
+      }
+      if (!finished) continue;
+      openUnits_.remove(unitKey);
+      if (chromatogramSlabs_!=null) chromatogramSlabs_.release(unitKey);
+    }
+  }
+  
   /**
    * this looks if all except one partner were removed from a splitted peak instance -  if so, the original peak is restored and percental splits are removed
    * @param results the results of the quantitation procedure
@@ -943,7 +1186,7 @@ public class QuantificationThread extends Thread
           if (!omegaInfoAvailable && !analyteQuant.get(mod).getInfoForOmegaAssignment().isEmpty()) omegaInfoAvailable = true;
           if (results_.containsKey(className) && results_.get(className).containsKey(analyteName) && results_.get(className).get(analyteName).containsKey(mod)&&(results_.get(className).get(analyteName).get(mod)!=null)){
             Hashtable<String,LipidParameterSet> hitsOfOneMod = results_.get(className).get(analyteName).get(mod);
-            if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
+            if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
               for (String key:hitsOfOneMod.keySet()) params.add(hitsOfOneMod.get(key));
             }else{
               List<DoubleStringVO> keys = new ArrayList<DoubleStringVO>();
@@ -970,7 +1213,7 @@ public class QuantificationThread extends Thread
       Vector<LipidParameterSet> corrected = new Vector<LipidParameterSet>();
       for (LipidParameterSet param : params){
         boolean acceptProbe = false;
-        if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
+        if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
           acceptProbe = true;
         }else{
           if (param.getIsotopicProbes().size()>0){
@@ -1014,8 +1257,10 @@ public class QuantificationThread extends Thread
     }
     
     if (omegaInfoAvailable) {
+      PipelineMetrics.Timing timing = metrics_.time("omegaAssignment");
       applyOmegaInfo(correctedParams, classSequence, analyteSequence, quantObjects);
       LipidParameterSet.setOmegaInformationAvailable(true);
+      timing.stop();
     }
     
     long timeMilliSeconds = (System.currentTimeMillis()-startCalcTime_);
@@ -1047,7 +1292,9 @@ public class QuantificationThread extends Thread
       HydroxyEncoding[] encodings = getOnlyUsedHydroxyEncodings(correctedParams,Settings.getFaHydroxyEncoding(),Settings.getLcbHydroxyEncoding());
       QuantificationResult quantRes = new QuantificationResult(correctedParams,constants,classSequence,encodings[0],encodings[1]);
      
+      PipelineMetrics.Timing timing = metrics_.time("excelExport");
       QuantificationResultExporter.writeResultsToExcel(resultFile,quantRes,bestMatchBySpectrumCoverage);
+      timing.stop();
       
       if (isAlexTargetList || cli_){
         String alexResultFile = new String(resultFile);
@@ -1060,7 +1307,9 @@ public class QuantificationThread extends Thread
         Hashtable<String,Vector<String>> analyteSeq = new Hashtable<String, Vector<String>>();
         analyteSeq.putAll(analyteSequence);
  //       rdbWriter.write(alexResultFile, results, classSequence, analyteSequence, quantObjects);
+        timing = metrics_.time("rdbExport");
         rdbWriter.write(alexResultFile, results, classSequence, analyteSeq, quantObjects);
+        timing.stop();
       }
     } catch (ExportException ex) {
       new WarningMessage(new JFrame(), "Error", ex.getMessage());
@@ -42,9 +42,11 @@ import at.tugraz.genome.lda.msn.MSnAnalyzer;
 import at.tugraz.genome.lda.msn.MSnPeakSeparator;
 import at.tugraz.genome.lda.msn.RulesContainer;
 import at.tugraz.genome.lda.msn.vos.MSnNamingVO;
+import at.tugraz.genome.lda.profiling.PipelineMetrics;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.LipidomicsAnalyzer;
 import at.tugraz.genome.lda.quantification.LipidomicsDefines;
+import at.tugraz.genome.lda.utils.RtMzIntervalIndex;
 import at.tugraz.genome.lda.utils.StaticUtils;
 import at.tugraz.genome.lda.utils.StringFloatVO;
 import at.tugraz.genome.lda.vos.QuantVO;
@@ -64,6 +66,8 @@ public class SingleQuantThread extends Thread
 {
   
   private LipidomicsAnalyzer analyzer_;
+  /** the settings of the quantification job*/
+  private QuantificationSettings settings_;
   private QuantVO quantSet_;
   private int msLevel_;
   /** should the MSn quantitation be performed before the MS1 quantitation */
@@ -76,19 +80,35 @@ public class SingleQuantThread extends Thread
   private Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> ms2RemovedHits_;
   /** if a peak split has to be removed because a split partner has a wrong retention time, the unsplit peak version is stored*/
   private Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> peaksBeforeSplit_;
+  /** the metrics of the quantification this thread belongs to*/
+  private PipelineMetrics metrics_;
   
   
   public SingleQuantThread(LipidomicsAnalyzer analyzer, QuantVO quantSet, int msLevel, boolean msnFirst){
     this.analyzer_ = analyzer;
+    this.settings_ = analyzer.getSettings();
     this.quantSet_ = quantSet;
     this.msLevel_ = msLevel;
     this.msnFirst_ = msnFirst;
     finished_ = false;
     errorString_ = null;
     msnSpectraPresent_ = false;
+    metrics_ = PipelineMetrics.current();
+  }
+  
+  /**
+   * sets the metrics of the quantification this thread belongs to
+   * @param metrics the metrics of the quantification
+   */
+  public void setMetrics(PipelineMetrics metrics){
+    this.metrics_ = metrics;
   }
   
   public void run(){
+    metrics_.bind();
+    PipelineMetrics.Timing classTiming = metrics_.time(PipelineMetrics.GROUP_CLASS, quantSet_.getAnalyteClass());
+    PipelineMetrics.Timing analyteTiming = metrics_.time(PipelineMetrics.GROUP_ANALYTE, quantSet_.getAnalyteClass()+" "+
+        quantSet_.getIdString()+" "+quantSet_.getModName());
     try{
       ms2RemovedHits_ = new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>();
       peaksBeforeSplit_ = new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>();
@@ -98,6 +118,10 @@ public class SingleQuantThread extends Thread
       errorString_ = ex.toString();
       
     }
+    analyteTiming.stop();
+    classTiming.stop();
+    metrics_.increment("analytes");
+    PipelineMetrics.unbind();
     finished_ = true;
   }
   
@@ -114,7 +138,7 @@ public class SingleQuantThread extends Thread
     for (QuantVO quant : quantVOs){
       ms2RemovedHits_.put(quant, new Hashtable<String,LipidParameterSet>());
       peaksBeforeSplit_.put(quant, new Hashtable<String,LipidParameterSet>());
-      if (LipidomicsConstants.isMS2()){
+      if (settings_.isMS2()){
         try{
           String aCutoff = RulesContainer.getMS1PeakCutoff(StaticUtils.getRuleName(quant.getAnalyteClass(),quant.getModName()));
           if (aCutoff!=null && Float.parseFloat(aCutoff)<analyzer.getRelativeFarAreaCutoff() && (cutoff==null || Float.parseFloat(aCutoff)<Float.parseFloat(cutoff))){
@@ -161,9 +185,9 @@ public class SingleQuantThread extends Thread
       }
 
     } else {
-      if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
+      if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
         isotopicProbes = analyzer.processShotgunData((float)quantSet.getAnalyteMass(),quantSet.getCharge(),msLevel,quantSet.getProbabs().size(),quantSet.getMustMatchProbabs());
-      } else if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_PRM){
+      } else if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_PRM){
         //TODO: the MS-level is here always set to 2
         isotopicProbes = analyzer.processPrmData((float)quantSet.getAnalyteMass(),quantSet.getCharge(),2,quantSet.getAnalyteClass(),
             quantSet.getModName(), StaticUtils.generateLipidNameString(quantSet.getAnalyteName(), quantSet.getDbs(),-1,quantSet.getOxState()),quantSet.getAnalyteFormula(),quantSet.getOhNumber(),quantSet.getOxState());
@@ -204,7 +228,7 @@ public class SingleQuantThread extends Thread
           LipidParameterSet param = createLipidParameterSet(oneHit,oneSet.getNegativeStartValue(), (float)oneSet.getAnalyteMass(),
               oneSet.getAnalyteName(), oneSet.getDbs(), oneSet.getOhNumber(), oneSet.getModName(), oneSet.getAnalyteFormula(), oneSet.getModFormula(), 
               oneSet.getCharge());
-          if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
+          if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
             adaptMzValuesOfShotgunHits(param);
             isobars.put(oneSet, param);
           }else{
@@ -217,7 +241,7 @@ public class SingleQuantThread extends Thread
         if (isobars.size()>0) isobarsOfAllSpecies.put(key, isobars);
       }
       //second create m/z precursor and RT range VOs for each QuantVO for the caching of MS/MS spectra
-      if (LipidomicsConstants.isMS2()){
+      if (settings_.isMS2()){
         Hashtable<QuantVO,Hashtable<Integer,LipidParameterSet>> foundForQuantVO = new Hashtable<QuantVO,Hashtable<Integer,LipidParameterSet>>();
         for (QuantVO oneSet : quantVOs){
         	float tol = LipidomicsConstants.getMs2PrecursorTolerance((float)oneSet.getAnalyteMass());
@@ -225,7 +249,7 @@ public class SingleQuantThread extends Thread
           float stopMz = (float)oneSet.getAnalyteMass()+tol;
           float lowestTime = Float.MAX_VALUE;
           float highestTime = 0f;
-          if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
+          if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
             lowestTime = 0f;
             highestTime = Float.MAX_VALUE;
           }else{
@@ -238,7 +262,10 @@ public class SingleQuantThread extends Thread
             }
           }
           // third, prepare the spectral cache
+          metrics_.increment("msnCache.misses");
+          PipelineMetrics.Timing timing = metrics_.time("msnCacheRead");
           analyzer.prepareMSnSpectraCache(startMz, stopMz, lowestTime, highestTime);
+          timing.stop();
           // fourth, do the MS2 detection
           Hashtable<Integer,LipidParameterSet> sameRt = new Hashtable<Integer,LipidParameterSet>();
           for (Integer key : isobarsOfAllSpecies.keySet()){
@@ -246,7 +273,7 @@ public class SingleQuantThread extends Thread
             if (!isobars.containsKey(oneSet)) continue;
             LipidParameterSet param = isobars.get(oneSet);
             boolean addHit = true;
-            if (LipidomicsConstants.isMS2()){
+            if (settings_.isMS2()){
               try {
                 MSnAnalyzer msnAnalyzer = new MSnAnalyzer(oneSet.getAnalyteClass(),oneSet.getModName(),param,analyzer_,oneSet,false,quantVOs.size()>1);
                 int msIdentOrder = RulesContainer.ORDER_MS1_FIRST;
@@ -273,7 +300,7 @@ public class SingleQuantThread extends Thread
             if (addHit) sameRt.put(key, param);
             else {
               try{
-                if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && RulesContainer.isRtPostprocessing(StaticUtils.getRuleName(oneSet.getAnalyteClass(),oneSet.getModName())) && 
+                if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && RulesContainer.isRtPostprocessing(StaticUtils.getRuleName(oneSet.getAnalyteClass(),oneSet.getModName())) && 
                     RulesContainer.correctRtForParallelModel(StaticUtils.getRuleName(oneSet.getAnalyteClass(),oneSet.getModName()))){
                   String rt = param.getRt();
                   ms2RemovedHits_.get(oneSet).put(rt, param);
@@ -315,7 +342,7 @@ public class SingleQuantThread extends Thread
           LipidParameterSet param = isobarHitsOfOneSpecies.get(oneSet);
           isobarHitsOfOneSpecies = new Hashtable<QuantVO,LipidParameterSet>();
 //          System.out.println("!!!!!!! "+oneSet.getAnalyteClass()+param.getNameString()+"_"+oneSet.getModName()+" "+param.getRt());
-          if (LipidomicsConstants.isMS2()){
+          if (settings_.isMS2()){
             try {
               //TODO: the parameter before the last one is set to true in the meantime - maybe play around with caching in the future to improve calculation time
               MSnAnalyzer msnAnalyzer = new MSnAnalyzer(oneSet.getAnalyteClass(),oneSet.getModName(),param,analyzer_,oneSet,true,false);
@@ -335,9 +362,9 @@ public class SingleQuantThread extends Thread
           }
           if (addHit) isobarHitsOfOneSpecies.put(oneSet,param);
           else{
-            if (LipidomicsConstants.isMS2()){
+            if (settings_.isMS2()){
               try{
-                if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && RulesContainer.isRtPostprocessing(StaticUtils.getRuleName(oneSet.getAnalyteClass(),oneSet.getModName())) && 
+                if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && RulesContainer.isRtPostprocessing(StaticUtils.getRuleName(oneSet.getAnalyteClass(),oneSet.getModName())) && 
                     RulesContainer.correctRtForParallelModel(StaticUtils.getRuleName(oneSet.getAnalyteClass(),oneSet.getModName()))){
                   ms2RemovedHits_.get(oneSet).put(param.getRt(), param);
                 }
@@ -358,7 +385,7 @@ public class SingleQuantThread extends Thread
           Hashtable<String,LipidParameterSet> hitsOfOneMod = new Hashtable<String,LipidParameterSet>();
           if (hitsAccordingToQuant.containsKey(quant)) hitsOfOneMod = hitsAccordingToQuant.get(quant);
           String rt = "";
-          if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
+          if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
             rt = set.getRt();
           hitsOfOneMod.put(rt, set);
           hitsAccordingToQuant.put(quant, hitsOfOneMod);
@@ -395,7 +422,7 @@ public class SingleQuantThread extends Thread
     
     for (QuantVO oneSet : hitsAccordingToQuant.keySet()){
       Hashtable<String,LipidParameterSet> hitsOfOneMod = hitsAccordingToQuant.get(oneSet);
-      if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && LipidomicsConstants.isMS2() && hitsOfOneMod.size()>0){
+      if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && settings_.isMS2() && hitsOfOneMod.size()>0){
         try {
           String unionTimeString = RulesContainer.getPeakUnionTime(StaticUtils.getRuleName(oneSet.getAnalyteClass(),oneSet.getModName()));
           if (unionTimeString != null && unionTimeString.length()>0){
@@ -413,7 +440,7 @@ public class SingleQuantThread extends Thread
       }      
     }
     
-    if (LipidomicsConstants.isMS2()){
+    if (settings_.isMS2()){
       if (cutoff!=null){
         analyzer.setAreaCutoffs(defaultRelativeAreaCutoff, defaultRelativeFarAreaCutoff, peakDiscardingAreaFactor, false);
       }
@@ -523,11 +550,16 @@ public class SingleQuantThread extends Thread
     if (results.size()>0){
       Hashtable<MSnNamingVO,Hashtable<String,LipidParameterSet>> grouped = new  Hashtable<MSnNamingVO,Hashtable<String,LipidParameterSet>>();
       for (MSnNamingVO rangeVO : results) grouped.put(rangeVO, new Hashtable<String,LipidParameterSet>());
+      //the merging ranges are indexed in the sequence of the hash
+      RtMzIntervalIndex<MSnNamingVO> rangeIndex = new RtMzIntervalIndex<MSnNamingVO>(grouped.size());
+      for (MSnNamingVO rangeVO : grouped.keySet())
+        rangeIndex.add(rangeVO.getMergingRange().getStart(), rangeVO.getMergingRange().getStop(), Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, rangeVO);
+      rangeIndex.build();
       for (String rtString : hits.keySet()){
         float rt = Float.parseFloat(rtString);
         LipidParameterSet set = hits.get(rtString);
         Vector<MSnNamingVO> insideRanges = new Vector<MSnNamingVO>();
-        for (MSnNamingVO rangeVO : grouped.keySet()){
+        for (MSnNamingVO rangeVO : rangeIndex.findContaining(rt, 0f)){
           if (rangeVO.insideRange(rt) && rangeVO.getMs1Name().equalsIgnoreCase(set.getNameStringWithoutRt())){
             insideRanges.add(rangeVO);
           }
@@ -602,20 +634,20 @@ public class SingleQuantThread extends Thread
             probe.isotopeNumber *= -1;
           if (probe!=null&&probe.AreaStatus==CgAreaStatus.OK){
             totalArea += probe.Area;
-            if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
+            if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
               rts.add((double)probe.Peak);
           }
         }
-        if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && k==0){
+        if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE && k==0){
         	rt = Calculator.mean(rts)/60d;
         }
       }
     }
-    if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE)
+    if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE)
     	rt = null;
     LipidParameterSet param = new LipidParameterSet(analyteMass, analyteName, dbs, modName, rt, analyteFormula, modFormula,charge, ohNumber);
-    param.LowerMzBand = LipidomicsConstants.getCoarseChromMzTolerance(analyteMass);
-    param.UpperMzBand = LipidomicsConstants.getCoarseChromMzTolerance(analyteMass);
+    param.LowerMzBand = settings_.getCoarseChromMzTolerance(analyteMass);
+    param.UpperMzBand = settings_.getCoarseChromMzTolerance(analyteMass);
     param.Area = totalArea;
     param.setIsotopicProbes(isotopicProbes2);
     return param;
@@ -706,7 +738,7 @@ public class SingleQuantThread extends Thread
     for (int i=0; i!=isoProbes.size(); i++){
       Vector<CgProbe> probes = isoProbes.get(i);
       Vector<CgProbe> corrected = new Vector<CgProbe>();
-      float mz = param.Mz[0]+i*LipidomicsConstants.getNeutronMass()/(float)param.getCharge();
+      float mz = param.Mz[0]+i*settings_.getNeutronMass()/(float)param.getCharge();
       for (CgProbe aProbe : probes){
       	if (i==0)
       		mzTolerance = aProbe.LowerMzBand;
@@ -730,6 +762,25 @@ public class SingleQuantThread extends Thread
     return analyzer_;
   }
   
+  /**
+   * hands over the results of a previous calculation with the same input (see QuantificationResultStore);
+   * afterwards, the thread is finished and must not be started
+   * @param results the found hits
+   * @param ms2RemovedHits the hits that were removed because of the MSn evidence
+   * @param peaksBeforeSplit the unsplit peak versions
+   * @param msnSpectraPresent are there any MSn spectra present
+   */
+  public void restoreResults(Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> results,
+      Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> ms2RemovedHits, Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> peaksBeforeSplit,
+      boolean msnSpectraPresent)
+  {
+    this.results_ = results;
+    this.ms2RemovedHits_ = ms2RemovedHits;
+    this.peaksBeforeSplit_ = peaksBeforeSplit;
+    this.msnSpectraPresent_ = msnSpectraPresent;
+    this.finished_ = true;
+  }
+  
   
   
   
@@ -0,0 +1,144 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.alex123;
+
+/**
+ * Splits the lines of delimited text files (e.g. tab separated Alex123 target lists and RDB files) into columns.
+ * In contrast to String.split, no regular expression is involved and no String array is created for every line;
+ * the tokenizer stores solely the boundaries of the columns, and the column Strings are created on request.
+ * Thus, columns that are not of interest do not produce any garbage. The columns are the same as the ones
+ * returned by String.split, i.e. trailing empty columns are discarded.
+ * An instance is reused for every line of a file and must not be shared between threads.
+ */
+public class DelimitedLineTokenizer
+{
+  /** the delimiting character*/
+  private final char delimiter_;
+  /** the line that has been tokenized last*/
+  private String line_;
+  /** the start positions of the columns*/
+  private int[] starts_;
+  /** the end positions (exclusive) of the columns*/
+  private int[] ends_;
+  /** the number of columns of the current line*/
+  private int count_;
+
+  /**
+   * @param delimiter the delimiting character
+   */
+  public DelimitedLineTokenizer(char delimiter){
+    this.delimiter_ = delimiter;
+    this.starts_ = new int[32];
+    this.ends_ = new int[32];
+    this.count_ = 0;
+  }
+
+  /**
+   * splits a line into its columns
+   * @param line the line to split
+   * @return the number of columns
+   */
+  public int tokenize(String line){
+    line_ = line;
+    count_ = 0;
+    int length = line.length();
+    int start = 0;
+    for (int i=0; i!=length; i++){
+      if (line.charAt(i)!=delimiter_) continue;
+      addColumn(start,i);
+      start = i+1;
+    }
+    //a line without any delimiter is one column - even if it is empty
+    if (count_==0)
+      addColumn(0,length);
+    else{
+      addColumn(start,length);
+      while (count_>0 && starts_[count_-1]==ends_[count_-1]) count_--;
+    }
+    return count_;
+  }
+
+  /**
+   * @return the number of columns of the line that has been tokenized last
+   */
+  public int getColumnCount(){
+    return count_;
+  }
+
+  /**
+   * returns the content of a column
+   * @param column the column index
+   * @return the content of the column
+   * @throws ArrayIndexOutOfBoundsException if the line does not contain so many columns
+   */
+  public String getColumn(int column){
+    checkIndex(column);
+    return line_.substring(starts_[column], ends_[column]);
+  }
+
+  /**
+   * returns the content of a column without leading and trailing white spaces
+   * @param column the column index
+   * @return the trimmed content of the column; an empty String if the column contains white spaces only
+   * @throws ArrayIndexOutOfBoundsException if the line does not contain so many columns
+   */
+  public String getTrimmedColumn(int column){
+    checkIndex(column);
+    int start = starts_[column];
+    int end = ends_[column];
+    while (start<end && line_.charAt(start)<=' ') start++;
+    while (end>start && line_.charAt(end-1)<=' ') end--;
+    if (start==end)
+      return "";
+    return line_.substring(start, end);
+  }
+
+  /**
+   * stores the boundaries of a column
+   * @param start the start position
+   * @param end the end position (exclusive)
+   */
+  private void addColumn(int start, int end){
+    if (count_==starts_.length){
+      int[] starts = new int[count_*2];
+      int[] ends = new int[count_*2];
+      System.arraycopy(starts_, 0, starts, 0, count_);
+      System.arraycopy(ends_, 0, ends, 0, count_);
+      starts_ = starts;
+      ends_ = ends;
+    }
+    starts_[count_] = start;
+    ends_[count_] = end;
+    count_++;
+  }
+
+  /**
+   * @param column the column index
+   * @throws ArrayIndexOutOfBoundsException if the line does not contain so many columns
+   */
+  private void checkIndex(int column){
+    if (column<0 || column>=count_)
+      throw new ArrayIndexOutOfBoundsException(column);
+  }
+}
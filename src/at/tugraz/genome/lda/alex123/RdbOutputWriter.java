@@ -23,16 +23,23 @@
 
 package at.tugraz.genome.lda.alex123;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import at.tugraz.genome.lda.LipidomicsConstants;
 import at.tugraz.genome.lda.Settings;
@@ -45,7 +52,7 @@ import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
 import at.tugraz.genome.lda.exception.RdbWriterException;
 import at.tugraz.genome.lda.msn.LipidomicsMSnSet;
 import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.parser.LDAResultPrefetcher;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
 import at.tugraz.genome.lda.utils.StaticUtils;
@@ -119,6 +126,8 @@ public class RdbOutputWriter
   public final static String SUM_FORMULA_COLUMN = "Sum formula of lipid species";
   /**the tab delimiter*/
   public final static String TAB = "\t";
+  /** how many result files per thread may be read and formatted ahead of the file that is written*/
+  private final static int FILES_IN_FLIGHT_PER_THREAD = 2;
 
   
   
@@ -126,6 +135,8 @@ public class RdbOutputWriter
 //  private String internalStandardPrefix_;
   /** the prefix for the external standard*/
 //  private String externalStandardPrefix_;
+  /** the number of threads that format the rows of the result files*/
+  private int numberOfThreads_;
   
   /**
    * constructor without setting any standard prefixes
@@ -134,14 +145,33 @@ public class RdbOutputWriter
     this(null,null);
   }
   
+  /**
+   * constructor setting the number of threads for formatting the rows of the result files
+   * @param numberOfThreads the number of threads
+   */
+  public RdbOutputWriter(int numberOfThreads){
+    this(null,null,numberOfThreads);
+  }
+  
   /**
    * constructor setting standard prefixes
    * @param internalStandardPrefix prefix for the internal standard
    * @param externalStandardPrefix prefix for the external standard
    */
   public RdbOutputWriter(String internalStandardPrefix, String externalStandardPrefix){
+    this(internalStandardPrefix,externalStandardPrefix,Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * constructor setting standard prefixes and the number of threads for formatting the rows of the result files
+   * @param internalStandardPrefix prefix for the internal standard
+   * @param externalStandardPrefix prefix for the external standard
+   * @param numberOfThreads the number of threads
+   */
+  public RdbOutputWriter(String internalStandardPrefix, String externalStandardPrefix, int numberOfThreads){
 //    internalStandardPrefix_ = internalStandardPrefix;
 //    externalStandardPrefix_ = externalStandardPrefix;
+    numberOfThreads_ = Math.max(1, numberOfThreads);
   }
   
   /**
@@ -157,16 +187,21 @@ public class RdbOutputWriter
    */
   public void write(String fileName, Vector<QuantificationResult> results, LinkedHashMap<String,Integer> classSequence,
       Hashtable<String,Vector<String>> analyteSequence, Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects) throws RdbWriterException, ChemicalFormulaException, LipidCombinameEncodingException {
-    //the third variable is not required - only backward compatibility that is not necessary for this method
-    //the sixth and the seventh parameter is not required by this method - all of the molecules and isotopes have to be written
-    write(fileName,results,null,classSequence,analyteSequence,null,null,null,quantObjects,false);
+    //the fifth and the seventh parameter is not required by this method - all of the molecules and isotopes have to be written
+    try {
+      write(fileName,new ResultSupplier(results),classSequence,analyteSequence,null,null,null,quantObjects,false);
+    } catch (ExcelInputFileException e) {
+      //cannot happen, since the results are in memory already
+      throw new RdbWriterException(e);
+    }
   }
   
   /**
-   * starts the writing procedure
+   * starts the writing procedure; the results are requested from the supplier one file after the other, and the rows
+   * of the files are formatted by a pool of threads - the formatted files are written in their original sequence,
+   * and only a few files are held in memory at the same time
    * @param fileNameOut name of the RDB file
-   * @param results the results to be written - every entry is one LDA results file
-   * @param expLookup the name of the excel files - to be used only by export via heat map
+   * @param results provides the results to be written - every entry is one LDA results file
    * @param classSequence the sequence in which the classes shall be written
    * @param correctAnalyteSequence the sequence in which the analytes of the classes shall be written
    * @param acceptedMolecules the molecules that are accepted by the GUI - to be used only by export via heat map
@@ -175,15 +210,15 @@ public class RdbOutputWriter
    * @param quantObjects the quantification objects providing more information (only for Alex123 target lists)
    * @param alexRtGrouper is this called from the AlexRtGrouper
    * @throws RdbWriterException if something is wrong with the writing
+   * @throws ExcelInputFileException if something is wrong with the Excel quantitation files
    * @throws ChemicalFormulaException if something is wrong with the chemical formulae
    * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
    */
-  @SuppressWarnings("unchecked")
-  private void write(String fileNameOut, Vector<QuantificationResult> results, Hashtable<Integer,String> expLookup,
+  private void write(String fileNameOut, ResultSupplier results,
       LinkedHashMap<String,Integer> classSequence, Hashtable<String,Vector<String>> correctAnalyteSequence,
       Hashtable<String,Hashtable<String,String>> acceptedMolecules, ComparativeAnalysis analysisModule,
       Hashtable<String,Integer> maxIsotopes, Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects,
-      boolean alexRtGrouper) throws RdbWriterException,
+      boolean alexRtGrouper) throws RdbWriterException, ExcelInputFileException,
       ChemicalFormulaException, LipidCombinameEncodingException {
     boolean detectorColumn = false;
     boolean polarityColumn = false;
@@ -231,9 +266,10 @@ public class RdbOutputWriter
 //          break;
       }
     }
-    // get the highest MS-level    
-    if (!foundAlexQuantObjects){
-      for (QuantificationResult result : results){
+    // get the highest MS-level and the highest isotope number - the results are requested one after the other
+    for (int i=0; i!=results.size(); i++){
+      QuantificationResult result = results.get(i);
+      if (!foundAlexQuantObjects){
         for (String className : result.getIdentifications().keySet()){
           for (LipidParameterSet set : result.getIdentifications().get(className)){
             if (!(set instanceof LipidomicsMSnSet) /*|| quantObjects!=null*/) continue;
@@ -249,29 +285,45 @@ public class RdbOutputWriter
               }
             }
           }
-
         }
       }
-    }
-    
-    //get the highest isotope number
-    for (QuantificationResult result : results){
       for (String className : result.getIdentifications().keySet()){
         if (maxIsotopes!=null){
           int maxIso = maxIsotopes.get(className);
           if (maxIso>highestIsotopeNumber) highestIsotopeNumber = maxIso;
         }else{
           for (LipidParameterSet set : result.getIdentifications().get(className)){
-        	  if (set == null)
-        		  continue;
-        	  if ((set.getIsotopicProbes().size()-1)>highestIsotopeNumber) highestIsotopeNumber = (set.getIsotopicProbes().size()-1);
+            if (set == null)
+              continue;
+            if ((set.getIsotopicProbes().size()-1)>highestIsotopeNumber) highestIsotopeNumber = (set.getIsotopicProbes().size()-1);
           }
         }
       }
     }
     
+    RdbLayout layout = new RdbLayout();
+    layout.classSequence_ = classSequence;
+    layout.correctAnalyteSequence_ = correctAnalyteSequence;
+    layout.acceptedMolecules_ = acceptedMolecules;
+    layout.analysisModule_ = analysisModule;
+    layout.maxIsotopes_ = maxIsotopes;
+    layout.quantObjects_ = quantObjects;
+    layout.alexRtGrouper_ = alexRtGrouper;
+    layout.detectorColumn_ = detectorColumn;
+    layout.polarityColumn_ = polarityColumn;
+    layout.lipidIdColumn_ = lipidIdColumn;
+    layout.lipidCategoryColumn_ = lipidCategoryColumn;
+    layout.conflictsColumn_ = conflictsColumn;
+    layout.ohIndexColumn_ = ohIndexColumn;
+    layout.containsMSnInformation_ = containsMSnInformation;
+    layout.highestIsotopeNumber_ = highestIsotopeNumber;
+    layout.highestMSLevel_ = highestMSLevel;
+    
+    FileOutputStream out = null;
+    ExecutorService threadpool = null;
     try {
-      BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(fileNameOut));
+      out = new FileOutputStream(fileNameOut);
+      FileChannel channel = out.getChannel();
       StringBuilder headerLine = new StringBuilder();
       headerLine.append(FILENAME_COLUMN+"\t"+MACHINE_COLUMN);
       if (detectorColumn) headerLine.append("\t"+DETECTOR_COLUMN);
@@ -295,599 +347,680 @@ public class RdbOutputWriter
       headerLine.append("\t"+CHARGE_COLUMN+"\t"+C_INDEX_COLUMN+"\t"+DB_INDEX_COLUMN);
       if (ohIndexColumn) headerLine.append("\t"+OH_INDEX_COLUMN);
       headerLine.append("\t"+SUM_SPECIES_COLUMN+"\t"+SUM_FORMULA_COLUMN+"\n");
-      stream.write(headerLine.toString().getBytes());      
-            
+      writeToChannel(channel,headerLine.toString().getBytes());
+      
+      //the result files are read ahead in parallel by the supplier; the rows of the files are formatted
+      //in parallel, and written in the original sequence of the files
+      threadpool = Executors.newFixedThreadPool(Math.max(1,Math.min(numberOfThreads_,results.size())));
+      int maxInFlight = numberOfThreads_*FILES_IN_FLIGHT_PER_THREAD;
+      LinkedList<Future<byte[]>> inFlight = new LinkedList<Future<byte[]>>();
       for (int i=0; i!=results.size(); i++) {
-        QuantificationResult result = results.get(i);
-        String msMachine = "";
-        float mzCorrection = 0f;
-        
-        String expName = null;
-        if (expLookup!=null)
-          expName = expLookup.get(result.hashCode());
-        String resultsExcelName = null;
-        if (result.getConstants()!=null && result.getConstants().getRawFileName()!=null){
-          resultsExcelName = result.getConstants().getRawFileName();
-          if (resultsExcelName.endsWith(".chrom")) resultsExcelName = resultsExcelName.substring(0,resultsExcelName.length()-".chrom".length());
-        //the file lookup is for backward compatibility, and can be called by the heat map only
-        }else resultsExcelName = analysisModule.getFullFilePath(expName).getName();
-        
-        if (result.getConstants()!=null){
-          mzCorrection = (float)result.getConstants().getShift();
-          msMachine = result.getConstants().getMSMachine();
-        }
-        //check if all classes are in the class sequence
-        LinkedHashMap<String,Integer> classSequenceFull = new LinkedHashMap<String,Integer>();
-        if (classSequence!=null)
-          classSequenceFull = new LinkedHashMap<String,Integer>(classSequence);
-        for (String className : result.getIdentifications().keySet()){
-          if (classSequence!=null && !classSequence.containsKey(className)){
-            System.out.println("ATTENTION: the class "+className+" is not in your target list!");
-            classSequenceFull.put(className, 1);
+        inFlight.add(threadpool.submit(new RdbFileFormatter(results.get(i),results.getExpName(i),layout)));
+        if (inFlight.size()>=maxInFlight)
+          writeToChannel(channel,getFormattedRows(inFlight.removeFirst()));
+      }
+      while (inFlight.size()>0)
+        writeToChannel(channel,getFormattedRows(inFlight.removeFirst()));
+      out.close();
+      out = null;
+    }
+    catch (IOException e) {
+      throw new RdbWriterException(e);
+    } finally {
+      if (threadpool!=null)
+        threadpool.shutdownNow();
+      if (out!=null){
+        try {out.close();} catch (IOException e) {}
+      }
+    }
+  }
+  
+  /**
+   * formats the RDB rows of one LDA result file
+   * @param result the results of one LDA results file
+   * @param expName the name of the experiment - to be used only by export via heat map
+   * @param layout the column layout and the export settings
+   * @return the formatted rows
+   * @throws ChemicalFormulaException if something is wrong with the chemical formulae
+   * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+   */
+  @SuppressWarnings("unchecked")
+  private StringBuilder formatResult(QuantificationResult result, String expName, RdbLayout layout) throws ChemicalFormulaException,
+      LipidCombinameEncodingException {
+    LinkedHashMap<String,Integer> classSequence = layout.classSequence_;
+    Hashtable<String,Vector<String>> correctAnalyteSequence = layout.correctAnalyteSequence_;
+    Hashtable<String,Hashtable<String,String>> acceptedMolecules = layout.acceptedMolecules_;
+    ComparativeAnalysis analysisModule = layout.analysisModule_;
+    Hashtable<String,Integer> maxIsotopes = layout.maxIsotopes_;
+    Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects = layout.quantObjects_;
+    boolean alexRtGrouper = layout.alexRtGrouper_;
+    boolean detectorColumn = layout.detectorColumn_;
+    boolean polarityColumn = layout.polarityColumn_;
+    boolean lipidIdColumn = layout.lipidIdColumn_;
+    boolean lipidCategoryColumn = layout.lipidCategoryColumn_;
+    boolean conflictsColumn = layout.conflictsColumn_;
+    boolean ohIndexColumn = layout.ohIndexColumn_;
+    boolean containsMSnInformation = layout.containsMSnInformation_;
+    int highestIsotopeNumber = layout.highestIsotopeNumber_;
+    int highestMSLevel = layout.highestMSLevel_;
+    boolean isCompModulePresent = analysisModule!=null;
+    boolean isRtGrouped = (isCompModulePresent && analysisModule.isRtGrouped());
+    StringBuilder rows = new StringBuilder();
+    String msMachine = "";
+    float mzCorrection = 0f;
+    
+    String resultsExcelName = null;
+    if (result.getConstants()!=null && result.getConstants().getRawFileName()!=null){
+      resultsExcelName = result.getConstants().getRawFileName();
+      if (resultsExcelName.endsWith(".chrom")) resultsExcelName = resultsExcelName.substring(0,resultsExcelName.length()-".chrom".length());
+    //the file lookup is for backward compatibility, and can be called by the heat map only
+    }else resultsExcelName = analysisModule.getFullFilePath(expName).getName();
+    
+    if (result.getConstants()!=null){
+      mzCorrection = (float)result.getConstants().getShift();
+      msMachine = result.getConstants().getMSMachine();
+    }
+    //check if all classes are in the class sequence
+    LinkedHashMap<String,Integer> classSequenceFull = new LinkedHashMap<String,Integer>();
+    if (classSequence!=null)
+      classSequenceFull = new LinkedHashMap<String,Integer>(classSequence);
+    for (String className : result.getIdentifications().keySet()){
+      if (classSequence!=null && !classSequence.containsKey(className)){
+        System.out.println("ATTENTION: the class "+className+" is not in your target list!");
+        classSequenceFull.put(className, 1);
+      }
+    }
+    for (String className : classSequenceFull.keySet()){
+      if (!result.getIdentifications().containsKey(className)) continue;
+      Hashtable<String,String> selectedMolHash = null;
+      Hashtable<String,Vector<String>> fromSpeciesToSpeciesWithRt = new Hashtable<String,Vector<String>>();
+      if (acceptedMolecules!=null){
+        if (acceptedMolecules.containsKey(className)) selectedMolHash = acceptedMolecules.get(className);
+        else selectedMolHash = new Hashtable<String,String>();
+      } else if (isCompModulePresent) {
+        selectedMolHash = new Hashtable<String,String>();
+        for (String molName : analysisModule.getAllMoleculeNames().get(className))
+          selectedMolHash.put(molName, molName);
+      }
+      if (selectedMolHash!=null) {
+        Vector<String> molsWithRt;
+        for (String molWithRt : selectedMolHash.keySet()) {
+          String molName;
+          if (analysisModule.isISorES(className, molWithRt) || LipidomicsConstants.isShotgun() == 1)
+            molName = new String(molWithRt);
+          else
+            molName = molWithRt.substring(0,molWithRt.lastIndexOf("_"));
+          molsWithRt = new Vector<String>();
+          if (fromSpeciesToSpeciesWithRt.containsKey(molName))
+            molsWithRt = fromSpeciesToSpeciesWithRt.get(molName);
+          molsWithRt.add(molWithRt);
+          fromSpeciesToSpeciesWithRt.put(molName, molsWithRt);
+        }            
+      }
+      
+      Vector<LipidParameterSet> classResultsFile = result.getIdentifications().get(className);
+      Hashtable<String,Vector<LipidParameterSet>> foundSpecies = new Hashtable<String,Vector<LipidParameterSet>>();
+      for (LipidParameterSet set : classResultsFile){
+    	if (set == null)
+    		continue;
+        if (isRtGrouped) {
+          if (!fromSpeciesToSpeciesWithRt.containsKey(set.getNameStringWithoutRt()))
+            continue;
+          Vector<String> possSpeciesDiffRt = fromSpeciesToSpeciesWithRt.get(set.getNameStringWithoutRt());
+          for (String molWithRt : possSpeciesDiffRt) {
+            ResultAreaVO vo = analysisModule.getResultAreaVO(className, molWithRt, expName);
+            if (vo==null)
+              continue;
+            if (vo.belongsRtToThisAreaVO(set.getRt(), set.getModificationName())) {
+              Vector<LipidParameterSet> ofOneAnalyte = new Vector<LipidParameterSet>();
+              if (foundSpecies.containsKey(molWithRt)) ofOneAnalyte = foundSpecies.get(molWithRt);
+              ofOneAnalyte.add(set);
+              foundSpecies.put(molWithRt, ofOneAnalyte);                  
+              break;
+            }
           }
+        }else{
+          Vector<LipidParameterSet> ofOneAnalyte = new Vector<LipidParameterSet>();
+          if (foundSpecies.containsKey(set.getNameStringWithoutRt())) ofOneAnalyte = foundSpecies.get(set.getNameStringWithoutRt());
+          ofOneAnalyte.add(set);
+          foundSpecies.put(set.getNameStringWithoutRt(), ofOneAnalyte);
         }
-        for (String className : classSequenceFull.keySet()){
-          if (!result.getIdentifications().containsKey(className)) continue;
-          Hashtable<String,String> selectedMolHash = null;
-          Hashtable<String,Vector<String>> fromSpeciesToSpeciesWithRt = new Hashtable<String,Vector<String>>();
-          if (acceptedMolecules!=null){
-            if (acceptedMolecules.containsKey(className)) selectedMolHash = acceptedMolecules.get(className);
-            else selectedMolHash = new Hashtable<String,String>();
-          } else if (isCompModulePresent) {
-            selectedMolHash = new Hashtable<String,String>();
-            for (String molName : analysisModule.getAllMoleculeNames().get(className))
-              selectedMolHash.put(molName, molName);
-          }
-          if (selectedMolHash!=null) {
-            Vector<String> molsWithRt;
-            for (String molWithRt : selectedMolHash.keySet()) {
-              String molName;
-              if (analysisModule.isISorES(className, molWithRt) || LipidomicsConstants.isShotgun() == 1)
-                molName = new String(molWithRt);
-              else
-                molName = molWithRt.substring(0,molWithRt.lastIndexOf("_"));
-              molsWithRt = new Vector<String>();
-              if (fromSpeciesToSpeciesWithRt.containsKey(molName))
-                molsWithRt = fromSpeciesToSpeciesWithRt.get(molName);
-              molsWithRt.add(molWithRt);
-              fromSpeciesToSpeciesWithRt.put(molName, molsWithRt);
-            }            
-          }
+      }
+      Hashtable<String,Hashtable<String,QuantVO>> quantsOfClass = null;
+      if (quantObjects!=null && quantObjects.containsKey(className)) quantsOfClass = quantObjects.get(className);
+      
+
+      int maxIsotope = Integer.MAX_VALUE-1;
+      if (maxIsotopes!=null) maxIsotope = maxIsotopes.get(className); 
+      
+      for (String molName: correctAnalyteSequence.get(className)){
+        if ((selectedMolHash==null || selectedMolHash.containsKey(molName)) && foundSpecies.containsKey(molName)){
+          Hashtable<String,QuantVO> quantsOfAnalyte = null;
+          String molNameWoRt = molName;
+          if (isRtGrouped && !analysisModule.isISorES(className, molName))
+            molNameWoRt = /*className+" "+*/molName.substring(0,molName.lastIndexOf("_"));
+          if (quantsOfClass!=null && quantsOfClass.containsKey(molNameWoRt)) quantsOfAnalyte = quantsOfClass.get(molNameWoRt);
+          String speciesId = "";
+          String classNameToWrite = "";
+          int cIndexSpecies = 0;
+          int dbIndexSpecies = -1;
+          String sumComposition = "";
+//          if (internalStandardPrefix_!=null && internalStandardPrefix_.length()>0 && molName.startsWith(internalStandardPrefix_)){
+//            speciesId = "IS " + className+" "+ molName.substring(internalStandardPrefix_.length());
+//            classNameToWrite = "IS "+className;
+//          }else if (externalStandardPrefix_!=null && externalStandardPrefix_.length()>0 && molName.startsWith(externalStandardPrefix_)){
+//            speciesId = "ES " + className + " " + molName.substring(externalStandardPrefix_.length());
+//            classNameToWrite = "ES "+className;
+//          }else{
+            speciesId = className+" "+molName;
+            classNameToWrite = className;
+            int startChar = 0;
+            char[] chars = molName.toCharArray();
+            for (int j=0; j!=chars.length;j++){
+              startChar = j;
+              if (Character.isDigit(chars[j])) break;
+            }
+            String indices = molName.substring(startChar);
+            String[] cAndDbs = indices.split(":");
+            try{
+              cIndexSpecies = Integer.parseInt(cAndDbs[0]);
+              if (cAndDbs.length>1)
+              	dbIndexSpecies = Integer.parseInt(cAndDbs[1]);
+              sumComposition = indices;
+            }catch(NumberFormatException nfx){
+              
+            }
+//          }
           
-          Vector<LipidParameterSet> classResultsFile = result.getIdentifications().get(className);
-          Hashtable<String,Vector<LipidParameterSet>> foundSpecies = new Hashtable<String,Vector<LipidParameterSet>>();
-          for (LipidParameterSet set : classResultsFile){
-        	if (set == null)
-        		continue;
-            if (isRtGrouped) {
-              if (!fromSpeciesToSpeciesWithRt.containsKey(set.getNameStringWithoutRt()))
-                continue;
-              Vector<String> possSpeciesDiffRt = fromSpeciesToSpeciesWithRt.get(set.getNameStringWithoutRt());
-              for (String molWithRt : possSpeciesDiffRt) {
-                ResultAreaVO vo = analysisModule.getResultAreaVO(className, molWithRt, expName);
-                if (vo==null)
-                  continue;
-                if (vo.belongsRtToThisAreaVO(set.getRt(), set.getModificationName())) {
-                  Vector<LipidParameterSet> ofOneAnalyte = new Vector<LipidParameterSet>();
-                  if (foundSpecies.containsKey(molWithRt)) ofOneAnalyte = foundSpecies.get(molWithRt);
-                  ofOneAnalyte.add(set);
-                  foundSpecies.put(molWithRt, ofOneAnalyte);                  
-                  break;
+          for (LipidParameterSet set : foundSpecies.get(molName)){
+            TargetlistEntry quantObject = null;
+            if (quantsOfAnalyte!=null && quantsOfAnalyte.containsKey(set.getModificationName()) && (quantsOfAnalyte.get(set.getModificationName()) instanceof TargetlistEntry))
+              quantObject = (TargetlistEntry)quantsOfAnalyte.get(set.getModificationName());
+            String msLevel = "ms";
+            String molSpeciesId = "";
+            float totalArea = 0f;
+            Hashtable<Integer,Float> isotopicAreas = new Hashtable<Integer,Float>();
+            int maxIterate = maxIsotope+1;
+            if (maxIterate>set.getIsotopicProbes().size()) maxIterate = set.getIsotopicProbes().size();
+            float measuredMz = 0f;
+            float apexIntensity = 0f;
+            float lowerValley = Float.MAX_VALUE;
+            float lowerValley10Pc = Float.MAX_VALUE;
+            float lowerValley50Pc = Float.MAX_VALUE;
+            float upperValley = 0f;
+            float upperValley10Pc = 0f;
+            float upperValley50Pc = 0f;
+            float lowerMz = Float.MAX_VALUE;
+            float lowerMz10Pc = Float.MAX_VALUE;
+            float lowerMz50Pc = Float.MAX_VALUE;
+            float upperMz = 0f;
+            float upperMz10Pc = 0f;
+            float upperMz50Pc = 0f;
+                          
+            String apexString = "";
+            String lowerValleyString = "";
+            String lowerValley10PcString = "";
+            String lowerValley50PcString = "";
+            String upperValleyString = "";
+            String upperValley10PcString = "";
+            String upperValley50PcString = "";
+            String lowerMzString = "";
+            String lowerMz10PcString = "";
+            String lowerMz50PcString = "";
+            String upperMzString = "";
+            String upperMz10PcString = "";
+            String upperMz50PcString = "";
+              
+            String detector = "";
+            String polarity = "";
+            String speciesToWrite = new String(speciesId);
+            String groupingId = "";
+            String lipidId = "";
+            String lipidCategory = "";
+            String conflicts = "";
+            int charge = set.getCharge();
+            int cIndexSpeciesToWrite = cIndexSpecies;
+            int dbIndexSpeciesToWrite = dbIndexSpecies;
+            Integer ohIndex = null;
+            String sumCompositionToWrite = new String(sumComposition);
+            String sumFormula = set.getChemicalFormula();
+            if (quantObject!=null){
+              if (quantObject.getDetector()!=null) detector = quantObject.getDetector();
+              if (quantObject.getPolarity()!=null) polarity = quantObject.getPolarity();
+              speciesToWrite = quantObject.getSpecies();
+              classNameToWrite = quantObject.getOriginalClassName();
+              if (quantObject.getId()!=null) lipidId = quantObject.getId();
+              if (quantObject.getCategory()!=null) lipidCategory = quantObject.getCategory();
+              if (quantObject.getConflicts()!=null) conflicts = quantObject.getConflicts();
+              if (quantObject.getPolarity()!=null && quantObject.getPolarity().equalsIgnoreCase("-"))
+                charge = charge*-1;
+              if (quantObject.getOhNumber()>=0) ohIndex = quantObject.getOhNumber();
+              if (quantObject.getCarbonNumber()>=0)
+                cIndexSpeciesToWrite = quantObject.getCarbonNumber();
+              if (quantObject.getDbNumber()>=0)
+                dbIndexSpeciesToWrite = quantObject.getDbNumber();
+              if (quantObject.getSumComposition()!=null)
+                sumCompositionToWrite=quantObject.getSumComposition();
+              else
+                sumCompositionToWrite = "";
+              sumFormula = quantObject.getOriginalSumFormula();
+            }
+            if (isCompModulePresent && !alexRtGrouper && quantObject==null) {
+              sumFormula = set.getChemicalFormula();
+              Hashtable<String,Integer> categorized = StaticUtils.categorizeFormula(sumFormula);
+              if (Settings.useAlex() && result.getConstants()!=null && result.getConstants().isAlexTargetlist()){
+                Hashtable<String,String> isoLookup = Settings.getAlexIsoLookup();
+                for (String alexIso : isoLookup.keySet()){
+                  String ldaIso = isoLookup.get(alexIso);
+                  if (categorized.containsKey(ldaIso)){
+                    categorized.put(alexIso, categorized.get(ldaIso));
+                    categorized.remove(ldaIso);
+                  }
                 }
               }
-            }else{
-              Vector<LipidParameterSet> ofOneAnalyte = new Vector<LipidParameterSet>();
-              if (foundSpecies.containsKey(set.getNameStringWithoutRt())) ofOneAnalyte = foundSpecies.get(set.getNameStringWithoutRt());
-              ofOneAnalyte.add(set);
-              foundSpecies.put(set.getNameStringWithoutRt(), ofOneAnalyte);
+              sumFormula = StaticUtils.getFormulaInHillNotation(categorized, false);
             }
-          }
-          Hashtable<String,Hashtable<String,QuantVO>> quantsOfClass = null;
-          if (quantObjects!=null && quantObjects.containsKey(className)) quantsOfClass = quantObjects.get(className);
-          
+            if (isRtGrouped) {
+              groupingId = molName.substring(molName.lastIndexOf("_")+1);
+              if (speciesToWrite.endsWith("_"+groupingId))
+                speciesToWrite = speciesToWrite.substring(0,speciesToWrite.lastIndexOf("_"));
+              if (analysisModule.isISorES(className, molName))
+                groupingId = "";
+            }
+              
+            
+            for (int j=0; j!=maxIterate; j++){
+              for (CgProbe probe : set.getIsotopicProbes().get(j)){
+                totalArea += probe.Area;
+                float isoArea = 0f;
+                if (isotopicAreas.containsKey(j)) isoArea = isotopicAreas.get(j);
+                isoArea += probe.Area;
+                isotopicAreas.put(j, isoArea);
+                if (j==0){
+                  measuredMz += probe.Mz;
+                  float currentLV = probe.LowerValley; 
+                  float currentLV10 = Float.MAX_VALUE; 
+                  float currentLV50 = Float.MAX_VALUE; 
+                  float currentUV = probe.UpperValley; 
+                  float currentUV10 = 0f; 
+                  float currentUV50 = 0f; 
+                    
+                  float currentLMz = probe.Mz-probe.LowerMzBand; 
+                  float currentUMz = probe.Mz+probe.UpperMzBand; 
 
-          int maxIsotope = Integer.MAX_VALUE-1;
-          if (maxIsotopes!=null) maxIsotope = maxIsotopes.get(className); 
-          
-          for (String molName: correctAnalyteSequence.get(className)){
-            if ((selectedMolHash==null || selectedMolHash.containsKey(molName)) && foundSpecies.containsKey(molName)){
-              Hashtable<String,QuantVO> quantsOfAnalyte = null;
-              String molNameWoRt = molName;
-              if (isRtGrouped && !analysisModule.isISorES(className, molName))
-                molNameWoRt = /*className+" "+*/molName.substring(0,molName.lastIndexOf("_"));
-              if (quantsOfClass!=null && quantsOfClass.containsKey(molNameWoRt)) quantsOfAnalyte = quantsOfClass.get(molNameWoRt);
-              String speciesId = "";
-              String classNameToWrite = "";
-              int cIndexSpecies = 0;
-              int dbIndexSpecies = -1;
-              String sumComposition = "";
-//              if (internalStandardPrefix_!=null && internalStandardPrefix_.length()>0 && molName.startsWith(internalStandardPrefix_)){
-//                speciesId = "IS " + className+" "+ molName.substring(internalStandardPrefix_.length());
-//                classNameToWrite = "IS "+className;
-//              }else if (externalStandardPrefix_!=null && externalStandardPrefix_.length()>0 && molName.startsWith(externalStandardPrefix_)){
-//                speciesId = "ES " + className + " " + molName.substring(externalStandardPrefix_.length());
-//                classNameToWrite = "ES "+className;
-//              }else{
-                speciesId = className+" "+molName;
-                classNameToWrite = className;
-                int startChar = 0;
-                char[] chars = molName.toCharArray();
-                for (int j=0; j!=chars.length;j++){
-                  startChar = j;
-                  if (Character.isDigit(chars[j])) break;
+                    
+                  if (probe.getLowerValley10()!=null){
+                    currentLV10 = probe.getLowerValley10();
+                    currentLV50 = probe.getLowerValley50();
+                    currentUV10 = probe.getUpperValley10();
+                    currentUV50 = probe.getUpperValley50();
+                  }
+                  if (set.getLowerRtHardLimit()>=0){
+                    if (currentLV<set.getLowerRtHardLimit()) currentLV=set.getLowerRtHardLimit();
+                    if (currentLV10<set.getLowerRtHardLimit()) currentLV10=set.getLowerRtHardLimit();
+                    if (currentLV50<set.getLowerRtHardLimit()) currentLV50=set.getLowerRtHardLimit();
+                  }
+                  if (set.getUpperRtHardLimit()>=0){
+                    if (currentUV>set.getUpperRtHardLimit()) currentUV=set.getUpperRtHardLimit();
+                    if (currentUV10>set.getUpperRtHardLimit()) currentUV10=set.getUpperRtHardLimit();
+                    if (currentUV50>set.getUpperRtHardLimit()) currentUV50=set.getUpperRtHardLimit();
+                  }
+                    
+                  if (currentLV<lowerValley) lowerValley = currentLV;
+                  if (currentUV>upperValley) upperValley = currentUV;
+                  if (currentLMz<lowerMz) lowerMz = currentLMz;
+                  if (currentUMz>upperMz) upperMz = currentUMz;
+                    
+                  if (probe.getLowerValley10()!=null){
+                    if (probe.getApexIntensity()>apexIntensity) apexIntensity = probe.getApexIntensity();
+                    if (currentLV10<lowerValley10Pc) lowerValley10Pc = currentLV10;
+                    if (currentLV50<lowerValley50Pc) lowerValley50Pc = currentLV50;
+                    if (currentUV10>upperValley10Pc) upperValley10Pc = currentUV10;
+                    if (currentUV50>upperValley50Pc) upperValley50Pc = currentUV50;
+                  }
+                  if (probe instanceof Probe3D){
+                    Probe3D probe3D = (Probe3D)probe;
+                    float currentLMz10 = Float.MAX_VALUE; 
+                    float currentLMz50 = Float.MAX_VALUE; 
+                    float currentUMz10 = 0f; 
+                    float currentUMz50 = 0f; 
+                    if (probe3D.getLowMz10()>0){
+                      currentLMz10 = probe3D.getLowMz10();
+                      currentLMz50 = probe3D.getLowMz50();
+                      currentUMz10 = probe3D.getUpMz10();
+                      currentUMz50 = probe3D.getUpMz50();
+                    }
+                      
+                    if (probe3D.getLowMz10()>0){
+                      if (currentLMz10<lowerMz10Pc) lowerMz10Pc = currentLMz10;
+                      if (currentLMz50<lowerMz50Pc) lowerMz50Pc = currentLMz50;
+                      if (currentUMz10>upperMz10Pc) upperMz10Pc = currentUMz10;
+                      if (currentUMz50>upperMz50Pc) upperMz50Pc = currentUMz50;
+                    }
+                      
+                  }
                 }
-                String indices = molName.substring(startChar);
-                String[] cAndDbs = indices.split(":");
-                try{
-                  cIndexSpecies = Integer.parseInt(cAndDbs[0]);
-                  if (cAndDbs.length>1)
-                  	dbIndexSpecies = Integer.parseInt(cAndDbs[1]);
-                  sumComposition = indices;
-                }catch(NumberFormatException nfx){
-                  
+              }
+              if (j==0){
+                measuredMz = measuredMz/((float)set.getIsotopicProbes().get(j).size());
+                if (apexIntensity>0)  apexString = String.valueOf(Math.round(apexIntensity));
+                lowerValleyString = Calculator.FormatNumberToString(Calculator.roundFloat(lowerValley/60f,2),2d);
+                upperValleyString = Calculator.FormatNumberToString(Calculator.roundFloat(upperValley/60f,2),2d);
+                lowerMzString = String.valueOf(lowerMz);
+                upperMzString = String.valueOf(upperMz);
+
+                if (lowerValley10Pc<Float.MAX_VALUE){
+                  lowerValley10PcString = Calculator.FormatNumberToString(Calculator.roundFloat(lowerValley10Pc/60f,2),2d);
+                  upperValley10PcString = Calculator.FormatNumberToString(Calculator.roundFloat(upperValley10Pc/60f,2),2d);
+                  lowerValley50PcString = Calculator.FormatNumberToString(Calculator.roundFloat(lowerValley50Pc/60f,2),2d);
+                  upperValley50PcString = Calculator.FormatNumberToString(Calculator.roundFloat(upperValley50Pc/60f,2),2d);
                 }
-//              }
-              
-              for (LipidParameterSet set : foundSpecies.get(molName)){
-                TargetlistEntry quantObject = null;
-                if (quantsOfAnalyte!=null && quantsOfAnalyte.containsKey(set.getModificationName()) && (quantsOfAnalyte.get(set.getModificationName()) instanceof TargetlistEntry))
-                  quantObject = (TargetlistEntry)quantsOfAnalyte.get(set.getModificationName());
-                String msLevel = "ms";
-                String molSpeciesId = "";
-                float totalArea = 0f;
-                Hashtable<Integer,Float> isotopicAreas = new Hashtable<Integer,Float>();
-                int maxIterate = maxIsotope+1;
-                if (maxIterate>set.getIsotopicProbes().size()) maxIterate = set.getIsotopicProbes().size();
-                float measuredMz = 0f;
-                float apexIntensity = 0f;
-                float lowerValley = Float.MAX_VALUE;
-                float lowerValley10Pc = Float.MAX_VALUE;
-                float lowerValley50Pc = Float.MAX_VALUE;
-                float upperValley = 0f;
-                float upperValley10Pc = 0f;
-                float upperValley50Pc = 0f;
-                float lowerMz = Float.MAX_VALUE;
-                float lowerMz10Pc = Float.MAX_VALUE;
-                float lowerMz50Pc = Float.MAX_VALUE;
-                float upperMz = 0f;
-                float upperMz10Pc = 0f;
-                float upperMz50Pc = 0f;
-                              
-                String apexString = "";
-                String lowerValleyString = "";
-                String lowerValley10PcString = "";
-                String lowerValley50PcString = "";
-                String upperValleyString = "";
-                String upperValley10PcString = "";
-                String upperValley50PcString = "";
-                String lowerMzString = "";
-                String lowerMz10PcString = "";
-                String lowerMz50PcString = "";
-                String upperMzString = "";
-                String upperMz10PcString = "";
-                String upperMz50PcString = "";
-                  
-                String detector = "";
-                String polarity = "";
-                String speciesToWrite = new String(speciesId);
-                String groupingId = "";
-                String lipidId = "";
-                String lipidCategory = "";
-                String conflicts = "";
-                int charge = set.getCharge();
-                int cIndexSpeciesToWrite = cIndexSpecies;
-                int dbIndexSpeciesToWrite = dbIndexSpecies;
-                Integer ohIndex = null;
-                String sumCompositionToWrite = new String(sumComposition);
-                String sumFormula = set.getChemicalFormula();
-                if (quantObject!=null){
-                  if (quantObject.getDetector()!=null) detector = quantObject.getDetector();
-                  if (quantObject.getPolarity()!=null) polarity = quantObject.getPolarity();
-                  speciesToWrite = quantObject.getSpecies();
-                  classNameToWrite = quantObject.getOriginalClassName();
-                  if (quantObject.getId()!=null) lipidId = quantObject.getId();
-                  if (quantObject.getCategory()!=null) lipidCategory = quantObject.getCategory();
-                  if (quantObject.getConflicts()!=null) conflicts = quantObject.getConflicts();
-                  if (quantObject.getPolarity()!=null && quantObject.getPolarity().equalsIgnoreCase("-"))
-                    charge = charge*-1;
-                  if (quantObject.getOhNumber()>=0) ohIndex = quantObject.getOhNumber();
-                  if (quantObject.getCarbonNumber()>=0)
-                    cIndexSpeciesToWrite = quantObject.getCarbonNumber();
-                  if (quantObject.getDbNumber()>=0)
-                    dbIndexSpeciesToWrite = quantObject.getDbNumber();
-                  if (quantObject.getSumComposition()!=null)
-                    sumCompositionToWrite=quantObject.getSumComposition();
-                  else
-                    sumCompositionToWrite = "";
-                  sumFormula = quantObject.getOriginalSumFormula();
+                if (lowerMz10Pc<Float.MAX_VALUE){
+                  lowerMz10PcString = String.valueOf(lowerMz10Pc);
+                  upperMz10PcString = String.valueOf(upperMz10Pc);
+                  lowerMz50PcString = String.valueOf(lowerMz50Pc);
+                  upperMz50PcString = String.valueOf(upperMz50Pc);                       
                 }
-                if (isCompModulePresent && !alexRtGrouper && quantObject==null) {
-                  sumFormula = set.getChemicalFormula();
-                  Hashtable<String,Integer> categorized = StaticUtils.categorizeFormula(sumFormula);
-                  if (Settings.useAlex() && result.getConstants()!=null && result.getConstants().isAlexTargetlist()){
-                    Hashtable<String,String> isoLookup = Settings.getAlexIsoLookup();
-                    for (String alexIso : isoLookup.keySet()){
-                      String ldaIso = isoLookup.get(alexIso);
-                      if (categorized.containsKey(ldaIso)){
-                        categorized.put(alexIso, categorized.get(ldaIso));
-                        categorized.remove(ldaIso);
-                      }
-                    }
+              }
+            }
+            StringBuilder isotopeClusters = new StringBuilder();
+            for (int j=0; j!=isotopicAreas.size(); j++){
+              if (j!=0) isotopeClusters.append("+");
+              isotopeClusters.append("M"+String.valueOf(j));
+            }
+            float targetMz = set.Mz[0]-mzCorrection;
+            float correctedMeasured = measuredMz-mzCorrection;
+            float mzOffset = measuredMz-set.Mz[0];
+            float ppmError = (mzOffset*1000000f)/targetMz;
+              
+            if (set instanceof LipidomicsMSnSet){
+              msLevel = "ms/ms"; 
+              LipidomicsMSnSet msnSet = (LipidomicsMSnSet)set;
+                
+              Hashtable<Integer,LinkedHashMap<Integer,Float>> msnRets = msnSet.getMsnRetentionTimes();
+              Hashtable<Integer,Integer> nrMSnSpectra = new Hashtable<Integer,Integer>();
+              Hashtable<Integer,String> msnRetStrings = new Hashtable<Integer,String>();
+              for (int j=2; j<=highestMSLevel; j++){
+                if (msnRets.containsKey(j)){
+                  Vector<Float> rts =  new Vector<Float>(msnRets.get(j).values());
+                  String rtsString = "";
+                  for (Float rt : rts){
+                    if (rtsString.length()>0) rtsString += "|";
+                    rtsString += Calculator.FormatNumberToString(Calculator.roundFloat(rt/60f,2),2d);
                   }
-                  sumFormula = StaticUtils.getFormulaInHillNotation(categorized, false);
+                  nrMSnSpectra.put(j, rts.size());
+                  msnRetStrings.put(j, rtsString);
+                } else {
+                  nrMSnSpectra.put(j, 0);
+                  msnRetStrings.put(j, "");
                 }
-                if (isRtGrouped) {
-                  groupingId = molName.substring(molName.lastIndexOf("_")+1);
-                  if (speciesToWrite.endsWith("_"+groupingId))
-                    speciesToWrite = speciesToWrite.substring(0,speciesToWrite.lastIndexOf("_"));
-                  if (analysisModule.isISorES(className, molName))
-                    groupingId = "";
+              }
+
+              int rank = 0;
+              Hashtable<Integer,Hashtable<String,Hashtable<String,TargetlistEntry>>> alexFragments = null;
+              Hashtable<String,String> molLookup = null;
+              if (quantObject!=null && containsMSnInformation && quantObject.getMsnFragments()!=null && quantObject.getMsnFragments().size()>0) {
+                alexFragments = quantObject.getMsnFragments();
+                molLookup = quantObject.getMolSpeciesLookup();
+              }
+
+              for (Object msnNames : msnSet.getMSnIdentificationNames()){
+                String nameString = "";
+                double relativeShare = 1d;
+                String oneCombi = "";
+                rank++;
+                if (msnNames instanceof Vector){
+                  Vector<String> names = (Vector<String>)msnNames;
+                  for (int j=0; j!= names.size();j++){
+                    if (j==0 && msnSet.getMSnIdentificationNames().size()>1) relativeShare = msnSet.getRelativeIntensity(names.get(j));
+                    nameString += names.get(j)+"|";
+                    oneCombi = names.get(j);
+                  }
+                  nameString = nameString.substring(0,nameString.length()-1);
+                }else{
+                  nameString = (String)msnNames;
+                  oneCombi = nameString;
+                  if (msnSet.getMSnIdentificationNames().size()>1) relativeShare=msnSet.getRelativeIntensity(nameString);
                 }
+                oneCombi = msnSet.getCombiIdFromHumanReadable(oneCombi);
                   
-                
-                for (int j=0; j!=maxIterate; j++){
-                  for (CgProbe probe : set.getIsotopicProbes().get(j)){
-                    totalArea += probe.Area;
-                    float isoArea = 0f;
-                    if (isotopicAreas.containsKey(j)) isoArea = isotopicAreas.get(j);
-                    isoArea += probe.Area;
-                    isotopicAreas.put(j, isoArea);
-                    if (j==0){
-                      measuredMz += probe.Mz;
-                      float currentLV = probe.LowerValley; 
-                      float currentLV10 = Float.MAX_VALUE; 
-                      float currentLV50 = Float.MAX_VALUE; 
-                      float currentUV = probe.UpperValley; 
-                      float currentUV10 = 0f; 
-                      float currentUV50 = 0f; 
-                        
-                      float currentLMz = probe.Mz-probe.LowerMzBand; 
-                      float currentUMz = probe.Mz+probe.UpperMzBand; 
+                List<TargetlistFloatStringVO> fragments = new ArrayList<TargetlistFloatStringVO>();
+                if (msnSet.getStatus()>=LipidomicsMSnSet.HEAD_GROUP_DETECTED){
+                  Hashtable<String,CgProbe> headFragments = msnSet.getHeadGroupFragments();
+                  for (String key:headFragments.keySet()){
+                    TargetlistEntry ms2Target = getMSnTargetlistEntry(key,null,null,alexFragments);
+                    fragments.add(new TargetlistFloatStringVO(key,headFragments.get(key).Mz,headFragments.get(key).getMsLevel(),ms2Target));
+                  }
+                }
+                if (msnSet.getStatus()>LipidomicsMSnSet.HEAD_GROUP_DETECTED){
+                  //molSpeciesId = classNameToWrite+"("+nameString+")";
+                  Hashtable<String,Hashtable<String,CgProbe>> chainFrags =  msnSet.getChainFragments();
 
-                        
-                      if (probe.getLowerValley10()!=null){
-                        currentLV10 = probe.getLowerValley10();
-                        currentLV50 = probe.getLowerValley50();
-                        currentUV10 = probe.getUpperValley10();
-                        currentUV50 = probe.getUpperValley50();
-                      }
-                      if (set.getLowerRtHardLimit()>=0){
-                        if (currentLV<set.getLowerRtHardLimit()) currentLV=set.getLowerRtHardLimit();
-                        if (currentLV10<set.getLowerRtHardLimit()) currentLV10=set.getLowerRtHardLimit();
-                        if (currentLV50<set.getLowerRtHardLimit()) currentLV50=set.getLowerRtHardLimit();
-                      }
-                      if (set.getUpperRtHardLimit()>=0){
-                        if (currentUV>set.getUpperRtHardLimit()) currentUV=set.getUpperRtHardLimit();
-                        if (currentUV10>set.getUpperRtHardLimit()) currentUV10=set.getUpperRtHardLimit();
-                        if (currentUV50>set.getUpperRtHardLimit()) currentUV50=set.getUpperRtHardLimit();
-                      }
-                        
-                      if (currentLV<lowerValley) lowerValley = currentLV;
-                      if (currentUV>upperValley) upperValley = currentUV;
-                      if (currentLMz<lowerMz) lowerMz = currentLMz;
-                      if (currentUMz>upperMz) upperMz = currentUMz;
-                        
-                      if (probe.getLowerValley10()!=null){
-                        if (probe.getApexIntensity()>apexIntensity) apexIntensity = probe.getApexIntensity();
-                        if (currentLV10<lowerValley10Pc) lowerValley10Pc = currentLV10;
-                        if (currentLV50<lowerValley50Pc) lowerValley50Pc = currentLV50;
-                        if (currentUV10>upperValley10Pc) upperValley10Pc = currentUV10;
-                        if (currentUV50>upperValley50Pc) upperValley50Pc = currentUV50;
-                      }
-                      if (probe instanceof Probe3D){
-                        Probe3D probe3D = (Probe3D)probe;
-                        float currentLMz10 = Float.MAX_VALUE; 
-                        float currentLMz50 = Float.MAX_VALUE; 
-                        float currentUMz10 = 0f; 
-                        float currentUMz50 = 0f; 
-                        if (probe3D.getLowMz10()>0){
-                          currentLMz10 = probe3D.getLowMz10();
-                          currentLMz50 = probe3D.getLowMz50();
-                          currentUMz10 = probe3D.getUpMz10();
-                          currentUMz50 = probe3D.getUpMz50();
-                        }
-                          
-                        if (probe3D.getLowMz10()>0){
-                          if (currentLMz10<lowerMz10Pc) lowerMz10Pc = currentLMz10;
-                          if (currentLMz50<lowerMz50Pc) lowerMz50Pc = currentLMz50;
-                          if (currentUMz10>upperMz10Pc) upperMz10Pc = currentUMz10;
-                          if (currentUMz50>upperMz50Pc) upperMz50Pc = currentUMz50;
+//                  Vector<String> fas = StaticUtils.splitChainCombiToEncodedStrings(oneCombi.replaceAll(LipidomicsConstants.CHAIN_SEPARATOR_KNOWN_POS, LipidomicsConstants.CHAIN_SEPARATOR_NO_POS),
+//                      LipidomicsConstants.CHAIN_SEPARATOR_NO_POS);
+                  Vector<FattyAcidVO> fas = StaticUtils.decodeLipidNamesFromChainCombi(oneCombi);
+                  molSpeciesId = StaticUtils.encodeAlexMolSpeciesName(classNameToWrite,fas);
+                  if (molLookup!=null) {
+                    if (molLookup.containsKey(oneCombi))
+                      molSpeciesId = molLookup.get(oneCombi);
+                    else {
+                      for (String combiName : StaticUtils.getPermutedChainNames(StaticUtils.splitChainCombiToEncodedStrings(oneCombi,LipidomicsConstants.CHAIN_COMBI_SEPARATOR),LipidomicsConstants.CHAIN_COMBI_SEPARATOR)) {
+                        if (molLookup.containsKey(combiName)) {
+                          molSpeciesId = molLookup.get(combiName);
+                          break;
                         }
-                          
                       }
                     }
                   }
-                  if (j==0){
-                    measuredMz = measuredMz/((float)set.getIsotopicProbes().get(j).size());
-                    if (apexIntensity>0)  apexString = String.valueOf(Math.round(apexIntensity));
-                    lowerValleyString = Calculator.FormatNumberToString(Calculator.roundFloat(lowerValley/60f,2),2d);
-                    upperValleyString = Calculator.FormatNumberToString(Calculator.roundFloat(upperValley/60f,2),2d);
-                    lowerMzString = String.valueOf(lowerMz);
-                    upperMzString = String.valueOf(upperMz);
-
-                    if (lowerValley10Pc<Float.MAX_VALUE){
-                      lowerValley10PcString = Calculator.FormatNumberToString(Calculator.roundFloat(lowerValley10Pc/60f,2),2d);
-                      upperValley10PcString = Calculator.FormatNumberToString(Calculator.roundFloat(upperValley10Pc/60f,2),2d);
-                      lowerValley50PcString = Calculator.FormatNumberToString(Calculator.roundFloat(lowerValley50Pc/60f,2),2d);
-                      upperValley50PcString = Calculator.FormatNumberToString(Calculator.roundFloat(upperValley50Pc/60f,2),2d);
-                    }
-                    if (lowerMz10Pc<Float.MAX_VALUE){
-                      lowerMz10PcString = String.valueOf(lowerMz10Pc);
-                      upperMz10PcString = String.valueOf(upperMz10Pc);
-                      lowerMz50PcString = String.valueOf(lowerMz50Pc);
-                      upperMz50PcString = String.valueOf(upperMz50Pc);                       
+                  Hashtable<String,String> usedFAs = new Hashtable<String,String>();
+                  for (int j=0; j!= fas.size(); j++){
+                    FattyAcidVO fa = fas.get(j);
+                    Hashtable<String,CgProbe> frags =  new Hashtable<String,CgProbe>();
+                    //String faStored = StaticUtils.getStoredFAName(fa.getCarbonDbsId(),chainFrags);
+                    //if (faStored!=null) frags =  chainFrags.get(faStored);
+                    frags =  chainFrags.get(fa.getChainId());
+                    if (frags==null)
+                      continue;
+                    for (String key : frags.keySet()){
+                      String fragmentName = key;
+                      if (!fragmentName.contains(fa.getChainId())) fragmentName = StaticUtils.getChainFragmentDisplayName(fragmentName,fa.getCarbonDbsId());
+                      if (usedFAs.containsKey(fragmentName))continue;
+                      usedFAs.put(fragmentName, fragmentName);
+                      TargetlistEntry ms2Target = getMSnTargetlistEntry(key,fa.getChainId(),oneCombi,alexFragments);
+                      fragments.add(new TargetlistFloatStringVO(fragmentName,frags.get(key).Mz,frags.get(key).getMsLevel(),ms2Target)); 
                     }
                   }
+                } else {
+                  molSpeciesId = classNameToWrite+" "+nameString;
+                  if (molLookup!=null)
+                    molSpeciesId = speciesToWrite;
                 }
-                StringBuilder isotopeClusters = new StringBuilder();
-                for (int j=0; j!=isotopicAreas.size(); j++){
-                  if (j!=0) isotopeClusters.append("+");
-                  isotopeClusters.append("M"+String.valueOf(j));
+                
+                Collections.sort(fragments,new GeneralComparator("at.tugraz.genome.lda.vos.FloatStringVO", "getValue", "java.lang.Float"));
+                Hashtable<Integer,String> fragmentNameHash = new Hashtable<Integer,String>();
+                Hashtable<Integer,String> fragmentMzHash = new Hashtable<Integer,String>();
+                for (int j=2; j<=highestMSLevel; j++){
+                  fragmentNameHash.put(j, "");
+                  fragmentMzHash.put(j, "");
                 }
-                float targetMz = set.Mz[0]-mzCorrection;
-                float correctedMeasured = measuredMz-mzCorrection;
-                float mzOffset = measuredMz-set.Mz[0];
-                float ppmError = (mzOffset*1000000f)/targetMz;
-                  
-                if (set instanceof LipidomicsMSnSet){
-                  msLevel = "ms/ms"; 
-                  LipidomicsMSnSet msnSet = (LipidomicsMSnSet)set;
-                    
-                  Hashtable<Integer,LinkedHashMap<Integer,Float>> msnRets = msnSet.getMsnRetentionTimes();
-                  Hashtable<Integer,Integer> nrMSnSpectra = new Hashtable<Integer,Integer>();
-                  Hashtable<Integer,String> msnRetStrings = new Hashtable<Integer,String>();
-                  for (int j=2; j<=highestMSLevel; j++){
-                    if (msnRets.containsKey(j)){
-                      Vector<Float> rts =  new Vector<Float>(msnRets.get(j).values());
-                      String rtsString = "";
-                      for (Float rt : rts){
-                        if (rtsString.length()>0) rtsString += "|";
-                        rtsString += Calculator.FormatNumberToString(Calculator.roundFloat(rt/60f,2),2d);
-                      }
-                      nrMSnSpectra.put(j, rts.size());
-                      msnRetStrings.put(j, rtsString);
-                    } else {
-                      nrMSnSpectra.put(j, 0);
-                      msnRetStrings.put(j, "");
-                    }
-                  }
-
-                  int rank = 0;
-                  Hashtable<Integer,Hashtable<String,Hashtable<String,TargetlistEntry>>> alexFragments = null;
-                  Hashtable<String,String> molLookup = null;
-                  if (quantObject!=null && containsMSnInformation && quantObject.getMsnFragments()!=null && quantObject.getMsnFragments().size()>0) {
-                    alexFragments = quantObject.getMsnFragments();
-                    molLookup = quantObject.getMolSpeciesLookup();
+                String ms2Precursor = "";
+                String ms2Activation = "";
+                String ms3Precursor = "";
+                String ms3Activation = "";
+                for (TargetlistFloatStringVO fragment : fragments){
+                  String fragmentNames = fragmentNameHash.get(fragment.getMsLevel());
+                  String fragmentMzs = fragmentMzHash.get(fragment.getMsLevel());
+                  String mz = Calculator.FormatNumberToString(fragment.getValue(),3);
+                  if (fragmentNames.length()>0 ){
+                    fragmentNames += "|";
+                    fragmentMzs += "|";
                   }
-
-                  for (Object msnNames : msnSet.getMSnIdentificationNames()){
-                    String nameString = "";
-                    double relativeShare = 1d;
-                    String oneCombi = "";
-                    rank++;
-                    if (msnNames instanceof Vector){
-                      Vector<String> names = (Vector<String>)msnNames;
-                      for (int j=0; j!= names.size();j++){
-                        if (j==0 && msnSet.getMSnIdentificationNames().size()>1) relativeShare = msnSet.getRelativeIntensity(names.get(j));
-                        nameString += names.get(j)+"|";
-                        oneCombi = names.get(j);
-                      }
-                      nameString = nameString.substring(0,nameString.length()-1);
+                  fragmentNames += fragment.getKey()+"{"+mz+"}";
+                  fragmentMzs+=mz;
+                  fragmentNameHash.put(fragment.getMsLevel(), fragmentNames);
+                  fragmentMzHash.put(fragment.getMsLevel(), fragmentMzs);
+                  if (fragment.getMs2Target()!=null && fragment.getMs2Target().getMs2Precursor()!=null){
+                    if (ms2Precursor!=null && ms2Precursor.length()>0){
+                      if (!ms2Precursor.equalsIgnoreCase(fragment.getMs2Target().getMs2Precursor()))
+                        System.out.println("ATTENTION: The lipid species "+speciesToWrite+" contains fragments that have a different MS-precursors in the ALEX target list");
+                      if (!ms2Activation.equalsIgnoreCase(fragment.getMs2Target().getMs2Activation()))
+                        System.out.println("ATTENTION: The lipid species "+speciesToWrite+" contains fragments that have a different MS2-activation in the ALEX target list");                                
                     }else{
-                      nameString = (String)msnNames;
-                      oneCombi = nameString;
-                      if (msnSet.getMSnIdentificationNames().size()>1) relativeShare=msnSet.getRelativeIntensity(nameString);
+                      ms2Precursor = fragment.getMs2Target().getMs2Precursor();
+                      ms2Activation = fragment.getMs2Target().getMs2Activation();
                     }
-                    oneCombi = msnSet.getCombiIdFromHumanReadable(oneCombi);
-                      
-                    List<TargetlistFloatStringVO> fragments = new ArrayList<TargetlistFloatStringVO>();
-                    if (msnSet.getStatus()>=LipidomicsMSnSet.HEAD_GROUP_DETECTED){
-                      Hashtable<String,CgProbe> headFragments = msnSet.getHeadGroupFragments();
-                      for (String key:headFragments.keySet()){
-                        TargetlistEntry ms2Target = getMSnTargetlistEntry(key,null,null,alexFragments);
-                        fragments.add(new TargetlistFloatStringVO(key,headFragments.get(key).Mz,headFragments.get(key).getMsLevel(),ms2Target));
-                      }
-                    }
-                    if (msnSet.getStatus()>LipidomicsMSnSet.HEAD_GROUP_DETECTED){
-                      //molSpeciesId = classNameToWrite+"("+nameString+")";
-                      Hashtable<String,Hashtable<String,CgProbe>> chainFrags =  msnSet.getChainFragments();
-
-//                      Vector<String> fas = StaticUtils.splitChainCombiToEncodedStrings(oneCombi.replaceAll(LipidomicsConstants.CHAIN_SEPARATOR_KNOWN_POS, LipidomicsConstants.CHAIN_SEPARATOR_NO_POS),
-//                          LipidomicsConstants.CHAIN_SEPARATOR_NO_POS);
-                      Vector<FattyAcidVO> fas = StaticUtils.decodeLipidNamesFromChainCombi(oneCombi);
-                      molSpeciesId = StaticUtils.encodeAlexMolSpeciesName(classNameToWrite,fas);
-                      if (molLookup!=null) {
-                        if (molLookup.containsKey(oneCombi))
-                          molSpeciesId = molLookup.get(oneCombi);
-                        else {
-                          for (String combiName : StaticUtils.getPermutedChainNames(StaticUtils.splitChainCombiToEncodedStrings(oneCombi,LipidomicsConstants.CHAIN_COMBI_SEPARATOR),LipidomicsConstants.CHAIN_COMBI_SEPARATOR)) {
-                            if (molLookup.containsKey(combiName)) {
-                              molSpeciesId = molLookup.get(combiName);
-                              break;
-                            }
-                          }
-                        }
-                      }
-                      Hashtable<String,String> usedFAs = new Hashtable<String,String>();
-                      for (int j=0; j!= fas.size(); j++){
-                        FattyAcidVO fa = fas.get(j);
-                        Hashtable<String,CgProbe> frags =  new Hashtable<String,CgProbe>();
-                        //String faStored = StaticUtils.getStoredFAName(fa.getCarbonDbsId(),chainFrags);
-                        //if (faStored!=null) frags =  chainFrags.get(faStored);
-                        frags =  chainFrags.get(fa.getChainId());
-                        if (frags==null)
-                          continue;
-                        for (String key : frags.keySet()){
-                          String fragmentName = key;
-                          if (!fragmentName.contains(fa.getChainId())) fragmentName = StaticUtils.getChainFragmentDisplayName(fragmentName,fa.getCarbonDbsId());
-                          if (usedFAs.containsKey(fragmentName))continue;
-                          usedFAs.put(fragmentName, fragmentName);
-                          TargetlistEntry ms2Target = getMSnTargetlistEntry(key,fa.getChainId(),oneCombi,alexFragments);
-                          fragments.add(new TargetlistFloatStringVO(fragmentName,frags.get(key).Mz,frags.get(key).getMsLevel(),ms2Target)); 
-                        }
-                      }
-                    } else {
-                      molSpeciesId = classNameToWrite+" "+nameString;
-                      if (molLookup!=null)
-                        molSpeciesId = speciesToWrite;
-                    }
-                    
-                    Collections.sort(fragments,new GeneralComparator("at.tugraz.genome.lda.vos.FloatStringVO", "getValue", "java.lang.Float"));
-                    Hashtable<Integer,String> fragmentNameHash = new Hashtable<Integer,String>();
-                    Hashtable<Integer,String> fragmentMzHash = new Hashtable<Integer,String>();
-                    for (int j=2; j<=highestMSLevel; j++){
-                      fragmentNameHash.put(j, "");
-                      fragmentMzHash.put(j, "");
-                    }
-                    String ms2Precursor = "";
-                    String ms2Activation = "";
-                    String ms3Precursor = "";
-                    String ms3Activation = "";
-                    for (TargetlistFloatStringVO fragment : fragments){
-                      String fragmentNames = fragmentNameHash.get(fragment.getMsLevel());
-                      String fragmentMzs = fragmentMzHash.get(fragment.getMsLevel());
-                      String mz = Calculator.FormatNumberToString(fragment.getValue(),3);
-                      if (fragmentNames.length()>0 ){
-                        fragmentNames += "|";
-                        fragmentMzs += "|";
-                      }
-                      fragmentNames += fragment.getKey()+"{"+mz+"}";
-                      fragmentMzs+=mz;
-                      fragmentNameHash.put(fragment.getMsLevel(), fragmentNames);
-                      fragmentMzHash.put(fragment.getMsLevel(), fragmentMzs);
-                      if (fragment.getMs2Target()!=null && fragment.getMs2Target().getMs2Precursor()!=null){
-                        if (ms2Precursor!=null && ms2Precursor.length()>0){
-                          if (!ms2Precursor.equalsIgnoreCase(fragment.getMs2Target().getMs2Precursor()))
-                            System.out.println("ATTENTION: The lipid species "+speciesToWrite+" contains fragments that have a different MS-precursors in the ALEX target list");
-                          if (!ms2Activation.equalsIgnoreCase(fragment.getMs2Target().getMs2Activation()))
-                            System.out.println("ATTENTION: The lipid species "+speciesToWrite+" contains fragments that have a different MS2-activation in the ALEX target list");                                
-                        }else{
-                          ms2Precursor = fragment.getMs2Target().getMs2Precursor();
-                          ms2Activation = fragment.getMs2Target().getMs2Activation();
-                        }
-                      }
-                      if (fragment.getMs2Target()!=null && fragment.getMs2Target().getMs3Precursor()!=null){
-                        if (ms3Precursor!=null && ms3Precursor.length()>0){
-                          if (!ms3Precursor.contains(fragment.getMs2Target().getMs3Precursor())){
-                            ms3Precursor += "|"+fragment.getMs2Target().getMs3Precursor();
-                            ms3Activation += "|"+fragment.getMs2Target().getMs3Activation();
-                          }
-                        }else{
-                          ms3Precursor = fragment.getMs2Target().getMs3Precursor();
-                          ms3Activation = fragment.getMs2Target().getMs3Activation();
-                        }
-                      }
-                      //TODO: this is a workaround for later RT-grouping
-                      if (isCompModulePresent && quantObject!=null){
-                        if (quantObject.getMs2Precursor()!=null)
-                          ms2Precursor = quantObject.getMs2Precursor();
-                        if (quantObject.getMs2Activation()!=null)
-                          ms2Activation = quantObject.getMs2Activation();
-                        if (quantObject.getMs3Precursor()!=null)
-                          ms3Precursor = quantObject.getMs3Precursor();
-                        if (quantObject.getMs3Activation()!=null)
-                          ms3Activation = quantObject.getMs3Activation();
-                      }
-                    }
-                      
-                    //MSn info from quantObject
-                      
-                    //build the output String for one entry
-                    StringBuilder line = new StringBuilder();
-                    line.append(resultsExcelName).append("\t").append(msMachine);
-                    if (detectorColumn) line.append("\t").append(detector);
-                    if (polarityColumn) line.append("\t").append(polarity);
-                    line.append("\t").append(msLevel).append("\t").append(speciesToWrite);
-                    if (isRtGrouped)
-                      line.append("\t").append(groupingId);
-                    line.append("\t").append(molSpeciesId);
-                    line.append(TAB).append(String.valueOf(rank));
-                    line.append("\t").append(classNameToWrite);
-                    for (int j=2; j<=highestMSLevel; j++){
-                      line.append("\t"+fragmentNameHash.get(j)+"\t"+fragmentMzHash.get(j)+"\t"+nrMSnSpectra.get(j)+"\t"+msnRetStrings.get(j));
-                      if (containsMSnInformation){
-                        if (j==2)
-                          line.append("\t").append(ms2Precursor).append("\t").append(ms2Activation);
-                        else if (j==3)
-                          line.append("\t").append(ms3Precursor).append("\t").append(ms3Activation);
-                      }
-                    }
-                    line.append("\t").append(set.getRt()).append("\t").append(isotopeClusters).append("\t").append(lowerValleyString);
-                    line.append("\t").append(upperValleyString).append("\t").append(lowerValley10PcString).append("\t").append(upperValley10PcString);
-                    line.append("\t").append(lowerValley50PcString).append("\t").append(upperValley50PcString).append("\t").append(lowerMzString);
-                    line.append("\t").append(upperMzString).append("\t").append(lowerMz10PcString).append("\t").append(upperMz10PcString);
-                    line.append("\t").append(lowerMz50PcString).append("\t").append(upperMz50PcString).append("\t").append(String.valueOf(((double)totalArea)*relativeShare));
-                    for (int j=0; j!=(highestIsotopeNumber+1); j++){
-                      line.append("\t");
-                      if (isotopicAreas.containsKey(j)) line.append(String.valueOf(isotopicAreas.get(j)));
-                    }
-                    line.append("\t").append(apexString).append("\t").append(targetMz).append("\t").append(measuredMz);
-                    line.append("\t").append((mzCorrection*-1f)).append("\t").append(correctedMeasured).append("\t").append(mzOffset);
-                    line.append("\t").append(ppmError).append("\t").append(set.getModificationName());
-                    if (lipidIdColumn) line.append("\t").append(lipidId);
-                    if (lipidCategoryColumn) line.append("\t").append(lipidCategory);
-                    if (conflictsColumn) line.append("\t").append(conflicts);
-                    line.append("\t").append(charge).append("\t").append(cIndexSpeciesToWrite).append("\t").append(dbIndexSpeciesToWrite);
-                    if (ohIndexColumn){
-                      line.append("\t");
-                      if (ohIndex!=null) line.append(ohIndex.intValue());
-                    }
-                    line.append("\t").append(sumCompositionToWrite).append("\t").append(sumFormula).append("\n");
-                    stream.write(line.toString().getBytes());
                   }
-
-                }else{
-                  //build the output String for one entry
-                  StringBuilder line = new StringBuilder();
-                  line.append(resultsExcelName).append("\t").append(msMachine);
-                  if (detectorColumn) line.append("\t").append(detector);
-                  if (polarityColumn) line.append("\t").append(polarity);
-                  line.append("\t").append(msLevel).append("\t").append(speciesToWrite);
-                  if (isRtGrouped)
-                    line.append("\t").append(groupingId);
-                  line.append("\t").append(molSpeciesId+TAB);
-                  line.append("\t").append(classNameToWrite);
-                  for (int j=2; j<=highestMSLevel; j++){
-                    line.append("\t\t\t\t");
-                    if (containsMSnInformation){
-                      if (j==2 || j==3) line.append("\t\t");
+                  if (fragment.getMs2Target()!=null && fragment.getMs2Target().getMs3Precursor()!=null){
+                    if (ms3Precursor!=null && ms3Precursor.length()>0){
+                      if (!ms3Precursor.contains(fragment.getMs2Target().getMs3Precursor())){
+                        ms3Precursor += "|"+fragment.getMs2Target().getMs3Precursor();
+                        ms3Activation += "|"+fragment.getMs2Target().getMs3Activation();
+                      }
+                    }else{
+                      ms3Precursor = fragment.getMs2Target().getMs3Precursor();
+                      ms3Activation = fragment.getMs2Target().getMs3Activation();
                     }
                   }
-                  line.append("\t").append(set.getRt()).append("\t").append(isotopeClusters).append("\t").append(lowerValleyString);
-                  line.append("\t").append(upperValleyString).append("\t").append(lowerValley10PcString).append("\t").append(upperValley10PcString);
-                  line.append("\t").append(lowerValley50PcString).append("\t").append(upperValley50PcString).append("\t").append(lowerMzString);
-                  line.append("\t").append(upperMzString).append("\t").append(lowerMz10PcString).append("\t").append(upperMz10PcString);
-                  line.append("\t").append(lowerMz50PcString).append("\t").append(upperMz50PcString).append("\t").append(String.valueOf(totalArea));
-                  for (int j=0; j!=(highestIsotopeNumber+1); j++){
-                    line.append("\t");
-                    if (isotopicAreas.containsKey(j)) line.append(String.valueOf(isotopicAreas.get(j)));
+                  //TODO: this is a workaround for later RT-grouping
+                  if (isCompModulePresent && quantObject!=null){
+                    if (quantObject.getMs2Precursor()!=null)
+                      ms2Precursor = quantObject.getMs2Precursor();
+                    if (quantObject.getMs2Activation()!=null)
+                      ms2Activation = quantObject.getMs2Activation();
+                    if (quantObject.getMs3Precursor()!=null)
+                      ms3Precursor = quantObject.getMs3Precursor();
+                    if (quantObject.getMs3Activation()!=null)
+                      ms3Activation = quantObject.getMs3Activation();
                   }
-                  line.append("\t").append(apexString).append("\t").append(targetMz).append("\t").append(measuredMz);
-                  line.append("\t").append((mzCorrection*-1f)).append("\t").append(correctedMeasured).append("\t").append(mzOffset);
-                  line.append("\t").append(ppmError).append("\t").append(set.getModificationName());
-                  if (lipidIdColumn) line.append("\t").append(lipidId);
-                  if (lipidCategoryColumn) line.append("\t").append(lipidCategory);
-                  if (conflictsColumn) line.append("\t").append(conflicts);
-                  line.append("\t").append(charge).append("\t").append(cIndexSpeciesToWrite).append("\t").append(dbIndexSpeciesToWrite);
-                  if (ohIndexColumn){
-                    line.append("\t");
-                    if (ohIndex!=null) line.append(ohIndex.intValue());
+                }
+                  
+                //MSn info from quantObject
+                  
+                //build the output String for one entry
+                StringBuilder line = new StringBuilder();
+                line.append(resultsExcelName).append("\t").append(msMachine);
+                if (detectorColumn) line.append("\t").append(detector);
+                if (polarityColumn) line.append("\t").append(polarity);
+                line.append("\t").append(msLevel).append("\t").append(speciesToWrite);
+                if (isRtGrouped)
+                  line.append("\t").append(groupingId);
+                line.append("\t").append(molSpeciesId);
+                line.append(TAB).append(String.valueOf(rank));
+                line.append("\t").append(classNameToWrite);
+                for (int j=2; j<=highestMSLevel; j++){
+                  line.append("\t"+fragmentNameHash.get(j)+"\t"+fragmentMzHash.get(j)+"\t"+nrMSnSpectra.get(j)+"\t"+msnRetStrings.get(j));
+                  if (containsMSnInformation){
+                    if (j==2)
+                      line.append("\t").append(ms2Precursor).append("\t").append(ms2Activation);
+                    else if (j==3)
+                      line.append("\t").append(ms3Precursor).append("\t").append(ms3Activation);
                   }
-                  line.append("\t").append(sumCompositionToWrite).append("\t").append(sumFormula).append("\n");
-                  stream.write(line.toString().getBytes());
                 }
+                line.append("\t").append(set.getRt()).append("\t").append(isotopeClusters).append("\t").append(lowerValleyString);
+                line.append("\t").append(upperValleyString).append("\t").append(lowerValley10PcString).append("\t").append(upperValley10PcString);
+                line.append("\t").append(lowerValley50PcString).append("\t").append(upperValley50PcString).append("\t").append(lowerMzString);
+                line.append("\t").append(upperMzString).append("\t").append(lowerMz10PcString).append("\t").append(upperMz10PcString);
+                line.append("\t").append(lowerMz50PcString).append("\t").append(upperMz50PcString).append("\t").append(String.valueOf(((double)totalArea)*relativeShare));
+                for (int j=0; j!=(highestIsotopeNumber+1); j++){
+                  line.append("\t");
+                  if (isotopicAreas.containsKey(j)) line.append(String.valueOf(isotopicAreas.get(j)));
+                }
+                line.append("\t").append(apexString).append("\t").append(targetMz).append("\t").append(measuredMz);
+                line.append("\t").append((mzCorrection*-1f)).append("\t").append(correctedMeasured).append("\t").append(mzOffset);
+                line.append("\t").append(ppmError).append("\t").append(set.getModificationName());
+                if (lipidIdColumn) line.append("\t").append(lipidId);
+                if (lipidCategoryColumn) line.append("\t").append(lipidCategory);
+                if (conflictsColumn) line.append("\t").append(conflicts);
+                line.append("\t").append(charge).append("\t").append(cIndexSpeciesToWrite).append("\t").append(dbIndexSpeciesToWrite);
+                if (ohIndexColumn){
+                  line.append("\t");
+                  if (ohIndex!=null) line.append(ohIndex.intValue());
+                }
+                line.append("\t").append(sumCompositionToWrite).append("\t").append(sumFormula).append("\n");
+                rows.append(line);
               }
+
+            }else{
+              //build the output String for one entry
+              StringBuilder line = new StringBuilder();
+              line.append(resultsExcelName).append("\t").append(msMachine);
+              if (detectorColumn) line.append("\t").append(detector);
+              if (polarityColumn) line.append("\t").append(polarity);
+              line.append("\t").append(msLevel).append("\t").append(speciesToWrite);
+              if (isRtGrouped)
+                line.append("\t").append(groupingId);
+              line.append("\t").append(molSpeciesId+TAB);
+              line.append("\t").append(classNameToWrite);
+              for (int j=2; j<=highestMSLevel; j++){
+                line.append("\t\t\t\t");
+                if (containsMSnInformation){
+                  if (j==2 || j==3) line.append("\t\t");
+                }
+              }
+              line.append("\t").append(set.getRt()).append("\t").append(isotopeClusters).append("\t").append(lowerValleyString);
+              line.append("\t").append(upperValleyString).append("\t").append(lowerValley10PcString).append("\t").append(upperValley10PcString);
+              line.append("\t").append(lowerValley50PcString).append("\t").append(upperValley50PcString).append("\t").append(lowerMzString);
+              line.append("\t").append(upperMzString).append("\t").append(lowerMz10PcString).append("\t").append(upperMz10PcString);
+              line.append("\t").append(lowerMz50PcString).append("\t").append(upperMz50PcString).append("\t").append(String.valueOf(totalArea));
+              for (int j=0; j!=(highestIsotopeNumber+1); j++){
+                line.append("\t");
+                if (isotopicAreas.containsKey(j)) line.append(String.valueOf(isotopicAreas.get(j)));
+              }
+              line.append("\t").append(apexString).append("\t").append(targetMz).append("\t").append(measuredMz);
+              line.append("\t").append((mzCorrection*-1f)).append("\t").append(correctedMeasured).append("\t").append(mzOffset);
+              line.append("\t").append(ppmError).append("\t").append(set.getModificationName());
+              if (lipidIdColumn) line.append("\t").append(lipidId);
+              if (lipidCategoryColumn) line.append("\t").append(lipidCategory);
+              if (conflictsColumn) line.append("\t").append(conflicts);
+              line.append("\t").append(charge).append("\t").append(cIndexSpeciesToWrite).append("\t").append(dbIndexSpeciesToWrite);
+              if (ohIndexColumn){
+                line.append("\t");
+                if (ohIndex!=null) line.append(ohIndex.intValue());
+              }
+              line.append("\t").append(sumCompositionToWrite).append("\t").append(sumFormula).append("\n");
+              rows.append(line);
             }
           }
         }
-
       }
-      stream.close();
     }
-    catch (IOException e) {
-      throw new RdbWriterException(e);
+    return rows;
+  }
+  
+  /**
+   * writes the bytes completely to the channel
+   * @param channel the channel of the RDB file
+   * @param bytes the bytes to write
+   * @throws IOException if something is wrong with the writing
+   */
+  private void writeToChannel(FileChannel channel, byte[] bytes) throws IOException{
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+  
+  /**
+   * waits for the formatting of one result file and returns the formatted rows
+   * @param future the future of the formatting task
+   * @return the formatted rows
+   * @throws RdbWriterException if the formatting was interrupted or failed
+   * @throws ChemicalFormulaException if something is wrong with the chemical formulae
+   * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+   */
+  private byte[] getFormattedRows(Future<byte[]> future) throws RdbWriterException, ChemicalFormulaException, LipidCombinameEncodingException{
+    try {
+      return future.get();
+    } catch (InterruptedException ix) {
+      throw new RdbWriterException("The RDB export was interrupted!");
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof ChemicalFormulaException)
+        throw (ChemicalFormulaException)ex.getCause();
+      if (ex.getCause() instanceof LipidCombinameEncodingException)
+        throw (LipidCombinameEncodingException)ex.getCause();
+      if (ex.getCause() instanceof RuntimeException)
+        throw (RuntimeException)ex.getCause();
+      throw new RdbWriterException(ex.getCause());
     }
-
   }
   
   /**
@@ -910,8 +1043,9 @@ public class RdbOutputWriter
       Hashtable<String,Vector<String>> analyteSequence, Hashtable<String,Hashtable<String,String>> acceptedMolecules, Hashtable<String,Integer> maxIsotopes,
       Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects, Vector<String> allowedExps, boolean alexRtGrouper)
           throws RdbWriterException, ExcelInputFileException, ChemicalFormulaException, LipidCombinameEncodingException{
-    Vector<QuantificationResult> results = new Vector<QuantificationResult>();
-    Hashtable<Integer,String> expLookup = new Hashtable<Integer,String>();
+    //the results files are read by the writer when required - there are never more than a few results in memory
+    Vector<String> expNames = new Vector<String>();
+    Vector<File> resultFiles = new Vector<File>();
     for (int i=0; i!=analysisModule.getExpNamesInSequence().size(); i++) {
       String exp = analysisModule.getExpNamesInSequence().get(i);
       File resultFile = analysisModule.getFullFilePath(exp);
@@ -926,9 +1060,8 @@ public class RdbOutputWriter
         }
       }
       if (ok) {
-        QuantificationResult result = LDAResultReader.readResultFile(resultFile.getAbsolutePath(),  new Hashtable<String,Boolean>());
-        results.add(result);
-        expLookup.put(result.hashCode(), exp);
+        expNames.add(exp);
+        resultFiles.add(resultFile);
       }
     }
     Hashtable<String,Vector<String>> molNamesInSequence = analysisModule.getAllMoleculeNames();
@@ -948,9 +1081,14 @@ public class RdbOutputWriter
       }
       molNamesInSequence = changedOrder;
     }
-    this.write(fileName, results, expLookup, analysisModule.getClassSequence()!=null ? analysisModule.getClassSequence() : classSequence,
-        molNamesInSequence, acceptedMolecules, analysisModule, maxIsotopes,quantObjects!=null ? quantObjects : analysisModule.getQuantObjects(),
-        alexRtGrouper);
+    ResultSupplier results = new ResultSupplier(expNames,resultFiles,numberOfThreads_);
+    try {
+      this.write(fileName, results, analysisModule.getClassSequence()!=null ? analysisModule.getClassSequence() : classSequence,
+          molNamesInSequence, acceptedMolecules, analysisModule, maxIsotopes,quantObjects!=null ? quantObjects : analysisModule.getQuantObjects(),
+          alexRtGrouper);
+    } finally {
+      results.close();
+    }
   }
 
   
@@ -998,4 +1136,125 @@ public class RdbOutputWriter
     }
     return entry;
   }
+  
+  /**
+   * provides the LDA results one file after the other; either the results are already in memory,
+   * or the LDA results files are read ahead in parallel by an LDAResultPrefetcher - every request of the
+   * first file starts a new pass over the files
+   */
+  private static class ResultSupplier
+  {
+    /** the results that are already in memory*/
+    private Vector<QuantificationResult> results_;
+    /** the names of the experiments - only for results that are read from the files*/
+    private Vector<String> expNames_;
+    /** the LDA results files to read*/
+    private Vector<File> resultFiles_;
+    /** the number of threads reading the files*/
+    private int numberOfThreads_;
+    /** reads the files of the current pass*/
+    private LDAResultPrefetcher prefetcher_;
+    
+    /**
+     * @param results the results that are already in memory
+     */
+    private ResultSupplier(Vector<QuantificationResult> results){
+      this.results_ = results;
+    }
+    
+    /**
+     * @param expNames the names of the experiments
+     * @param resultFiles the LDA results files in the same sequence as the experiment names
+     * @param numberOfThreads the number of threads reading the files
+     */
+    private ResultSupplier(Vector<String> expNames, Vector<File> resultFiles, int numberOfThreads){
+      this.expNames_ = expNames;
+      this.resultFiles_ = resultFiles;
+      this.numberOfThreads_ = numberOfThreads;
+    }
+    
+    /**
+     * @return the number of results
+     */
+    private int size(){
+      return results_!=null ? results_.size() : resultFiles_.size();
+    }
+    
+    /**
+     * @param index the position of the result
+     * @return the result at this position - results of files are read for every pass; within a pass, the results have to be requested in sequence
+     * @throws ExcelInputFileException if something is wrong with the Excel quantitation files
+     */
+    private QuantificationResult get(int index) throws ExcelInputFileException{
+      if (results_!=null)
+        return results_.get(index);
+      if (index==0 || prefetcher_==null){
+        close();
+        prefetcher_ = new LDAResultPrefetcher(resultFiles_, numberOfThreads_);
+      }
+      return prefetcher_.next(resultFiles_.get(index));
+    }
+    
+    /**
+     * stops the reading of the files of the current pass
+     */
+    private void close(){
+      if (prefetcher_!=null)
+        prefetcher_.close();
+      prefetcher_ = null;
+    }
+    
+    /**
+     * @param index the position of the result
+     * @return the name of the experiment - null if the results are in memory
+     */
+    private String getExpName(int index){
+      return expNames_!=null ? expNames_.get(index) : null;
+    }
+  }
+  
+  /**
+   * the column layout and the export settings that are shared by the formatting of all result files;
+   * the values are not changed after the formatting has started
+   */
+  private static class RdbLayout
+  {
+    private LinkedHashMap<String,Integer> classSequence_;
+    private Hashtable<String,Vector<String>> correctAnalyteSequence_;
+    private Hashtable<String,Hashtable<String,String>> acceptedMolecules_;
+    private ComparativeAnalysis analysisModule_;
+    private Hashtable<String,Integer> maxIsotopes_;
+    private Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects_;
+    private boolean alexRtGrouper_;
+    private boolean detectorColumn_;
+    private boolean polarityColumn_;
+    private boolean lipidIdColumn_;
+    private boolean lipidCategoryColumn_;
+    private boolean conflictsColumn_;
+    private boolean ohIndexColumn_;
+    private boolean containsMSnInformation_;
+    private int highestIsotopeNumber_;
+    private int highestMSLevel_;
+  }
+  
+  /**
+   * formats the rows of one result file - to be executed by the thread pool
+   */
+  private class RdbFileFormatter implements Callable<byte[]>
+  {
+    private QuantificationResult result_;
+    private String expName_;
+    private RdbLayout layout_;
+    
+    private RdbFileFormatter(QuantificationResult result, String expName, RdbLayout layout){
+      this.result_ = result;
+      this.expName_ = expName;
+      this.layout_ = layout;
+    }
+
+    public byte[] call() throws ChemicalFormulaException, LipidCombinameEncodingException
+    {
+      return formatResult(result_,expName_,layout_).toString().getBytes();
+    }
+  }
 }
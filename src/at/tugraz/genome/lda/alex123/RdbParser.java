@@ -23,9 +23,9 @@
 
 package at.tugraz.genome.lda.alex123;
 
+import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.Vector;
@@ -69,11 +69,12 @@ public class RdbParser
     classSequence_ = new LinkedHashMap<String,Integer>();
     analyteSequence_ = new Hashtable<String,Vector<String>>();
     LinkedHashMap<String,LinkedHashMap<String,String>> analyteSequence = new LinkedHashMap<String,LinkedHashMap<String,String>>();
-    LineNumberReader reader = null;
+    BufferedReader reader = null;
     String line;
+    DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer('\t');
     
     try{
-      reader = new LineNumberReader(new FileReader(fileName_));
+      reader = new BufferedReader(new FileReader(fileName_));
       boolean headerLineFound = false;
       
       int detectorColumn = -1;
@@ -135,47 +136,49 @@ public class RdbParser
           ohNumber = -1;
           sumFormula = null;
           
-          String[] columns = line.split("\t");
+          tokenizer.tokenize(line);
           if (detectorColumn>=0)
-            detector = columns[detectorColumn];
+            detector = tokenizer.getColumn(detectorColumn);
           if (polarityColumn>=0)
-            polarity = columns[polarityColumn];
+            polarity = tokenizer.getColumn(polarityColumn);
           if (speciesColumn>=0)
-            species = columns[speciesColumn];
+            species = tokenizer.getColumn(speciesColumn);
           if (molecularSpeciesColumn>=0)
-            molecularSpecies = columns[molecularSpeciesColumn];
+            molecularSpecies = tokenizer.getColumn(molecularSpeciesColumn);
           if (classColumn>=0)
-            lClass = columns[classColumn];
+            lClass = tokenizer.getColumn(classColumn);
           if (idColumn>=0)
-            id = columns[idColumn];
+            id = tokenizer.getColumn(idColumn);
           if (categoryColumn>=0)
-            category = columns[categoryColumn];
+            category = tokenizer.getColumn(categoryColumn);
           for (Integer precColumn : precursorColumns.keySet()) {
-            precursor = columns[precColumn];
+            precursor = tokenizer.getColumn(precColumn);
             precursors.put(precursorColumns.get(precColumn), precursor);
             if (precursorColumns.get(precColumn)>msLevel)
               msLevel = precursorColumns.get(precColumn);
           }
           for (Integer actColumn : activationColumns.keySet()) {
-            activation = columns[actColumn];
+            activation = tokenizer.getColumn(actColumn);
             activations.put(activationColumns.get(actColumn), activation);
             if (activationColumns.get(actColumn)>msLevel)
               msLevel = activationColumns.get(actColumn);
           }
           if (adductColumn>=0)
-            adduct = columns[adductColumn];
+            adduct = tokenizer.getColumn(adductColumn);
           if (conflictsColumn>=0)
-            conflicts= columns[conflictsColumn];
+            conflicts= tokenizer.getColumn(conflictsColumn);
           if (ohNumberColumn>=0)
-            ohNumber = Integer.parseInt(columns[ohNumberColumn]);
+            ohNumber = Integer.parseInt(tokenizer.getColumn(ohNumberColumn));
           if (dbNumberColumn>=0)
-            dbNumber = Integer.parseInt(columns[dbNumberColumn]);
+            dbNumber = Integer.parseInt(tokenizer.getColumn(dbNumberColumn));
           if (sumFormulaColumn>=0)
-            sumFormula = columns[sumFormulaColumn];
+            sumFormula = tokenizer.getColumn(sumFormulaColumn);
           if (lClass==null || species==null || lClass==null || adduct==null)
             continue;
-          if (results_.containsKey(lClass) && results_.get(lClass).containsKey(species) && results_.get(lClass).get(species).containsKey(adduct)) {
-            TargetlistEntry entry = (TargetlistEntry)results_.get(lClass).get(species).get(adduct);
+          resultsOfClass = results_.get(lClass);
+          resultsOfSpecies = resultsOfClass!=null ? resultsOfClass.get(species) : null;
+          if (resultsOfSpecies!=null && resultsOfSpecies.containsKey(adduct)) {
+            TargetlistEntry entry = (TargetlistEntry)resultsOfSpecies.get(adduct);
             if (msLevel>entry.getMsLevel())
               entry.setMsLevel_(msLevel);
             if (molecularSpecies!=null && (entry.getMolecularSpecies()==null || entry.getMolecularSpecies().length()==0))
@@ -27,12 +27,19 @@ import java.io.File;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import at.tugraz.genome.lda.Settings;
 import at.tugraz.genome.lda.alex123.vos.TargetlistEntry;
 import at.tugraz.genome.lda.exception.AlexTargetlistParserException;
 
 /**
- * Parser for directories containing Alex123 target lists
+ * Parser for directories containing Alex123 target lists; the single target lists are parsed in parallel,
+ * and the entries of all target lists are merged afterwards in the sequence of the files
  * @author Juergen Hartler
  *
  */
@@ -42,6 +49,8 @@ public class TargetlistDirParser
   private String dirName_;
   /** was the data acquired in positive ion mode*/
   private boolean positiveIonMode_;
+  /** the number of target lists that are parsed in parallel*/
+  private int numberOfThreads_;
   /** the resulting targets sorted in the same style as in typical LDA target lists
    * first key is the lipid class; the second key is the analyte name; the third key is the modification name */
   private LinkedHashMap<String,LinkedHashMap<String,LinkedHashMap<String,TargetlistEntry>>> sortedEntries_;
@@ -52,8 +61,20 @@ public class TargetlistDirParser
    * @param positiveIonMode was the data acquired in positive ion mode
    */
   public TargetlistDirParser(String dirName, boolean positiveIonMode){
+    this(dirName,positiveIonMode,Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * constructor specifying the directory containing the Alex123 target lists, whether data were acquired in positive ion mode or not,
+   * and how many target lists shall be parsed in parallel
+   * @param dirName name of the directory containing the Alex123 target lists
+   * @param positiveIonMode was the data acquired in positive ion mode
+   * @param numberOfThreads the number of target lists that are parsed in parallel
+   */
+  public TargetlistDirParser(String dirName, boolean positiveIonMode, int numberOfThreads){
     dirName_ = dirName;
     positiveIonMode_ = positiveIonMode;
+    numberOfThreads_ = Math.max(1, numberOfThreads);
   }
   
   /**
@@ -65,23 +86,60 @@ public class TargetlistDirParser
     sortedEntries_ = new LinkedHashMap<String,LinkedHashMap<String,LinkedHashMap<String,TargetlistEntry>>>();
     if (!dir.isDirectory()) throw new AlexTargetlistParserException("The select Alex123 directory is not a directory!");
     File[] files = dir.listFiles();
-    Vector<Hashtable<Integer,Vector<TargetlistEntry>>> parsedEntries = new Vector<Hashtable<Integer,Vector<TargetlistEntry>>>();
+    Vector<String> fileNames = new Vector<String>();
     for (int i=0; i!=files.length; i++){
       String fileName = files[i].getAbsolutePath();
-      if (!fileName.endsWith(".txt")) continue;
-      try {
-        TargetlistParser parser = new TargetlistParser(fileName,positiveIonMode_);
-        parser.parse();
-        Hashtable<Integer,Vector<TargetlistEntry>> results = parser.getResults();
-        if (results.size()>0) parsedEntries.add(results);
-      } catch (AlexTargetlistParserException e) {
-        e.printStackTrace();
+      if (fileName.endsWith(".txt")) fileNames.add(fileName);
+    }
+    Vector<Hashtable<Integer,Vector<TargetlistEntry>>> parsedEntries = new Vector<Hashtable<Integer,Vector<TargetlistEntry>>>();
+    if (fileNames.size()==0){
+      sortedEntries_ = TargetlistDirParser.sortEntriesForLDA(parsedEntries);
+      return;
+    }
+    //the lazy initialization of the Settings is not thread safe - initialize them before the parsing threads start
+    Settings.getAlexIsoLookup();
+    ExecutorService threadpool = Executors.newFixedThreadPool(Math.min(numberOfThreads_, fileNames.size()));
+    try{
+      Vector<Future<Hashtable<Integer,Vector<TargetlistEntry>>>> futures = new Vector<Future<Hashtable<Integer,Vector<TargetlistEntry>>>>();
+      for (String fileName : fileNames)
+        futures.add(threadpool.submit(new TargetlistFileParser(fileName)));
+      //the results are collected in the sequence of the files to keep the order of the entries
+      for (Future<Hashtable<Integer,Vector<TargetlistEntry>>> future : futures){
+        Hashtable<Integer,Vector<TargetlistEntry>> results = getParsedEntries(future);
+        if (results!=null && results.size()>0) parsedEntries.add(results);
       }
+    } finally {
+      threadpool.shutdownNow();
     }
     //the first key is the lipid class; the second key is the analyte name; the third key is the modification name
     sortedEntries_ = TargetlistDirParser.sortEntriesForLDA(parsedEntries);
   }
   
+  /**
+   * waits for the parsing of one target list and returns its entries
+   * @param future the future of the parsing task
+   * @return the entries of the target list; key is the msLevel; then, a vector of targets; null if the target list is erroneous
+   * @throws AlexTargetlistParserException if the parsing was interrupted
+   */
+  private Hashtable<Integer,Vector<TargetlistEntry>> getParsedEntries(Future<Hashtable<Integer,Vector<TargetlistEntry>>> future) throws AlexTargetlistParserException{
+    try {
+      return future.get();
+    } catch (InterruptedException ix) {
+      throw new AlexTargetlistParserException("The parsing of the Alex123 target lists was interrupted!");
+    } catch (ExecutionException ex) {
+      //an erroneous target list is skipped as before
+      if (ex.getCause() instanceof AlexTargetlistParserException){
+        ex.getCause().printStackTrace();
+        return null;
+      }
+      if (ex.getCause() instanceof RuntimeException)
+        throw (RuntimeException)ex.getCause();
+      if (ex.getCause() instanceof Error)
+        throw (Error)ex.getCause();
+      throw new AlexTargetlistParserException(ex.getCause());
+    }
+  }
+  
   /**
    * groups the resulting targets in the same style as in typical LDA target lists
    * @param parsedEntries the entries returned from the TargetlistParser
@@ -145,4 +203,23 @@ public class TargetlistDirParser
   public LinkedHashMap<String,LinkedHashMap<String,LinkedHashMap<String,TargetlistEntry>>> getResults(){
     return sortedEntries_;
   }
+  
+  /**
+   * parses one target list - to be executed by the thread pool
+   */
+  private class TargetlistFileParser implements Callable<Hashtable<Integer,Vector<TargetlistEntry>>>
+  {
+    private String fileName_;
+    
+    private TargetlistFileParser(String fileName){
+      this.fileName_ = fileName;
+    }
+
+    public Hashtable<Integer,Vector<TargetlistEntry>> call() throws AlexTargetlistParserException
+    {
+      TargetlistParser parser = new TargetlistParser(fileName_,positiveIonMode_);
+      parser.parse();
+      return parser.getResults();
+    }
+  }
 }
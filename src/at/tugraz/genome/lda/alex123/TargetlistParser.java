@@ -23,12 +23,11 @@
 
 package at.tugraz.genome.lda.alex123;
 
+import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.util.HashMap;
 import java.util.Hashtable;
-
-
 import java.util.Vector;
 
 import at.tugraz.genome.lda.Settings;
@@ -56,6 +55,14 @@ public class TargetlistParser
   private Hashtable<String,String> isoLookup_;
   /** the results; key is the msLevel; then, a vector of targets*/ 
   private Hashtable<Integer,Vector<TargetlistEntry>> results_;
+  /** lookup for chemical formulae that have already been translated to the LDA notation; key is the Alex123 formula*/
+  private HashMap<String,String> translatedFormulae_;
+  /** lookup for formulae that have already been categorized; key is the formula in LDA notation*/
+  private HashMap<String,Hashtable<String,Integer>> categorizedFormulae_;
+  /** lookup for adducts that have already been categorized; key is the adduct as it is written in the target list*/
+  private HashMap<String,Hashtable<String,Integer>> categorizedAdducts_;
+  /** lookup for the Hill notation of the categorized adducts; key is the adduct as it is written in the target list*/
+  private HashMap<String,String> adductFormulae_;
 
   private final static String DETECTOR_COLUMN = "Detector";
   private final static String POLARITY_COLUMN = "Polarity";
@@ -106,9 +113,16 @@ public class TargetlistParser
     String line;
     isoLookup_ = new Hashtable<String,String>();
     results_ = new Hashtable<Integer,Vector<TargetlistEntry>>();
+    translatedFormulae_ = new HashMap<String,String>();
+    categorizedFormulae_ = new HashMap<String,Hashtable<String,Integer>>();
+    categorizedAdducts_ = new HashMap<String,Hashtable<String,Integer>>();
+    adductFormulae_ = new HashMap<String,String>();
+    DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer('\t');
+    //the columns that are assigned to a variable - the other ones are not read at all
+    boolean[] usedColumns = new boolean[0];
     
     ElementConfigParser elementParser = Settings.getElementParser();
-    try (LineNumberReader reader = new LineNumberReader(new FileReader(fileName_));)
+    try (BufferedReader reader = new BufferedReader(new FileReader(fileName_));)
     {
       this.isoLookup_ = Settings.getAlexIsoLookup();      
       int lineNumber = 0;
@@ -179,11 +193,11 @@ public class TargetlistParser
           String fragmentFormula = null;
 //          Hashtable<String,Integer> fragmentFormulaCategorized = null;
           
-          String[] columns = line.split("\t");
+          int nrOfColumns = tokenizer.tokenize(line);
           //reads the single cells and assigns them to the corresponding variables
-          for (int columnNr=0; columnNr!=columns.length; columnNr++){
-            if (columns[columnNr]==null) continue;
-            String entry = columns[columnNr].trim();
+          for (int columnNr=0; columnNr!=nrOfColumns; columnNr++){
+            if (columnNr>=usedColumns.length || !usedColumns[columnNr]) continue;
+            String entry = tokenizer.getTrimmedColumn(columnNr);
             if (entry.length()==0) continue;
             
             if (columnNr==detectorColumn){
@@ -220,12 +234,7 @@ public class TargetlistParser
               ms3Activation = entry;
             } else if (columnNr==adductColumn){
               adduct = entry;
-              String adductForCategorization = new String (adduct);
-              if (adductForCategorization.endsWith("+") || adductForCategorization.endsWith("-"))
-                adductForCategorization = adductForCategorization.substring(0,adductForCategorization.length()-1);
-              adductForCategorization = adductForCategorization.replaceAll("\\+ ", " ");
-              adductForCategorization = adductForCategorization.replaceAll("- ", " ");
-              adductCategorized = StaticUtils.categorizeAdduct(adductForCategorization);
+              adductCategorized = categorizeAdduct(adduct);
 //              adduct = parseChemicalFormula(elementParser, adduct, ADDUCT_COLUMN, lineNumber);
             } else if (columnNr==idColumn){
               id = entry;
@@ -245,7 +254,7 @@ public class TargetlistParser
               sumComposition = entry;
             } else if (columnNr==formulaColumn){
               formula = entry;
-              formulaCategorized = StaticUtils.categorizeFormula(parseChemicalFormula(elementParser, entry, FORMULA_COLUMN, lineNumber));
+              formulaCategorized = categorizeFormula(translateChemicalFormula(elementParser, entry, FORMULA_COLUMN, lineNumber));
             } else if (columnNr==fragmentCarbonNumberColumn){
               fragmentCarbonNumber = parseIntegerEntry(entry,FRAGMENT_CARBON_NUMBER_COLUMN,lineNumber);
             } else if (columnNr==fragmentDbNumberColumn){
@@ -255,7 +264,7 @@ public class TargetlistParser
             } else if (columnNr==fragmentSumCompositionColumn){
               fragmentSumComposition = entry;
             } else if (columnNr==fragmentFormulaColumn){
-              fragmentFormula = parseChemicalFormula(elementParser, entry, FRAGMENT_FORMULA_COLUMN, lineNumber);
+              fragmentFormula = translateChemicalFormula(elementParser, entry, FRAGMENT_FORMULA_COLUMN, lineNumber);
 //              fragmentFormulaCategorized = StaticUtils.categorizeFormula(fragmentFormula);
             }          
           }
@@ -311,21 +320,24 @@ public class TargetlistParser
           }
           TargetlistEntry entry = new TargetlistEntry(detector, polarity, msLevel, mz, fragment, structure, species,
               molecularSpecies, lipidClass, ms2Precursor, ms2Activation, ms3Precursor, ms3Activation, adduct,
-              StaticUtils.getFormulaInHillNotation(adductCategorized,true), id, category, conflicts, charge,
+              adductFormulae_.get(adduct), id, category, conflicts, charge,
               carbonNumber, dbNumber, ohNumber, sumComposition, StaticUtils.getFormulaInHillNotation(formulaCategorized,true),
               formula, fragmentCarbonNumber, fragmentDbNumber, fragmentOhNumber, fragmentSumComposition, fragmentFormula);
 //          if (lipidClass.endsWith(" O-") || lipidClass.endsWith(" P-") || lipidClass.equalsIgnoreCase("Cer")) {
 //            System.out.println("LDA: "+entry.getAnalyteClass()+" | "+entry.getAnalyteName()+":"+entry.getDbNumber()+" | "+entry.getMolecularSpecies());
 //            System.out.println("ALEX: "+entry.getOriginalClassName()+" | "+entry.getSpecies()+" | "+entry.getOriginalMolecularSpecies());
 //          }
-          Vector<TargetlistEntry> entries = new Vector<TargetlistEntry>();
-          if (results_.containsKey(msLevel)) entries = results_.get(msLevel);
+          Vector<TargetlistEntry> entries = results_.get(msLevel);
+          if (entries==null){
+            entries = new Vector<TargetlistEntry>();
+            results_.put(msLevel, entries);
+          }
           entries.add(entry);
-          results_.put(msLevel, entries);
         } else if (line.contains(POLARITY_COLUMN) && line.contains(MS_LEVEL_COLUMN) &&
             line.contains(MZ_COLUMN) && line.contains(LIPID_CLASS_COLUMN) && line.contains(ADDUCT_COLUMN) &&
             line.contains(CHARGE_COLUMN) && line.contains(FORMULA_COLUMN)){
           String[] columns = line.split("\t");
+          usedColumns = new boolean[columns.length];
           for (int columnNr=0; columnNr!=columns.length; columnNr++){
             if (columns[columnNr].equalsIgnoreCase(DETECTOR_COLUMN)){
               detectorColumn = columnNr;
@@ -383,7 +395,9 @@ public class TargetlistParser
               fragmentSumCompositionColumn = columnNr;
             } else if (columns[columnNr].equalsIgnoreCase(FRAGMENT_FORMULA_COLUMN) || columns[columnNr].startsWith(FRAGMENT_FORMULA_COLUMN_PARTIAL)){
               fragmentFormulaColumn = columnNr;
-            }
+            } else
+              continue;
+            usedColumns[columnNr] = true;
           }
           headerLineFound = true;
         }
@@ -429,6 +443,62 @@ public class TargetlistParser
     }
   }
   
+  /**
+   * categorizes the elements of an adduct - the result is cached, since there are only a few different adducts in a target list;
+   * the Hill notation of the adduct is stored in adductFormulae_
+   * @param adduct the adduct as it is written in the target list
+   * @return the categorized adduct; this object is shared and must not be changed
+   * @throws ChemicalFormulaException if the adduct cannot be categorized
+   */
+  private Hashtable<String,Integer> categorizeAdduct(String adduct) throws ChemicalFormulaException{
+    Hashtable<String,Integer> categorized = categorizedAdducts_.get(adduct);
+    if (categorized!=null)
+      return categorized;
+    String adductForCategorization = adduct;
+    if (adductForCategorization.endsWith("+") || adductForCategorization.endsWith("-"))
+      adductForCategorization = adductForCategorization.substring(0,adductForCategorization.length()-1);
+    adductForCategorization = adductForCategorization.replace("+ ", " ");
+    adductForCategorization = adductForCategorization.replace("- ", " ");
+    categorized = StaticUtils.categorizeAdduct(adductForCategorization);
+    categorizedAdducts_.put(adduct, categorized);
+    adductFormulae_.put(adduct, StaticUtils.getFormulaInHillNotation(categorized,true));
+    return categorized;
+  }
+  
+  /**
+   * categorizes the elements of a chemical formula - the categorization is cached
+   * @param formula the chemical formula in LDA notation
+   * @return a copy of the categorized formula that may be changed by the caller
+   * @throws ChemicalFormulaException if the formula cannot be categorized
+   */
+  private Hashtable<String,Integer> categorizeFormula(String formula) throws ChemicalFormulaException{
+    Hashtable<String,Integer> categorized = categorizedFormulae_.get(formula);
+    if (categorized==null){
+      categorized = StaticUtils.categorizeFormula(formula);
+      categorizedFormulae_.put(formula, categorized);
+    }
+    return new Hashtable<String,Integer>(categorized);
+  }
+  
+  /**
+   * transfers the Alex123 formula in an LDA readable one - the result is cached, since the same formula
+   * is repeated for every fragment of a species; formulae that cannot be translated are not cached
+   * @param parser object containing the LDA abundances
+   * @param formula the Alex123 chemical formula to be parsed
+   * @param columnName the name of the column for the error message
+   * @param lineNumber the line number for the error message
+   * @return the chemical formula in the LDA format
+   * @throws AlexTargetlistParserException exception if something is wrong with the entry
+   */
+  private String translateChemicalFormula(ElementConfigParser parser, String formula, String columnName, int lineNumber) throws AlexTargetlistParserException{
+    String translated = translatedFormulae_.get(formula);
+    if (translated==null){
+      translated = parseChemicalFormula(parser, formula, columnName, lineNumber);
+      translatedFormulae_.put(formula, translated);
+    }
+    return translated;
+  }
+  
   /**
    * transfers the Alex123 formula in an LDA readable one (including isotope translation)
    * @param parser object containing the LDA abundances
@@ -446,12 +516,12 @@ public class TargetlistParser
       throw new AlexTargetlistParserException("The formula "+formula+" must not contain any negative values! Affected is column \""+columnName+"\" at line "+lineNumber+" in file "+fileName_+".");
     }
     char[] formulaChars = formulaString.toCharArray();
-    String formulaToCheck = "";
+    StringBuilder formulaToCheck = new StringBuilder(formulaChars.length+16);
     boolean isPreviousDigit = false;
     for (int i=0;i!=formulaChars.length;i++){
       char currentChar = formulaChars[i];
       if (isPreviousDigit && !Character.isDigit(currentChar)){
-        formulaToCheck+=" ";
+        formulaToCheck.append(' ');
       }
       if (currentChar=='['){
         boolean isoFound = false;
@@ -459,7 +529,7 @@ public class TargetlistParser
           if ((i+iso.length()-1)>=formulaChars.length) continue;
           if (formulaString.substring(i,i+iso.length()).equalsIgnoreCase(iso)){
             isoFound = true;
-            formulaToCheck += isoLookup_.get(iso);
+            formulaToCheck.append(isoLookup_.get(iso));
             i += (iso.length()-1);
             break;
           }
@@ -467,15 +537,15 @@ public class TargetlistParser
         if (!isoFound)
           throw new AlexTargetlistParserException("The formula \""+formula+"\" contains an istope that is not defined yet. Affected is column \""+columnName+"\" at line "+lineNumber+" in file "+fileName_+".");
       } else
-        formulaToCheck+=String.valueOf(currentChar);
+        formulaToCheck.append(currentChar);
       isPreviousDigit = Character.isDigit(currentChar);
       if (!isPreviousDigit && currentChar!=' ' && (i+1)<formulaChars.length && (Character.isUpperCase(formulaChars[i+1]) || formulaChars[i+1]=='[')){
-        formulaToCheck += " "; 
+        formulaToCheck.append(' ');
       }
     }
     try {
-      parser.calculateTheoreticalMass(formulaToCheck, false);
-      return formulaToCheck;
+      parser.calculateTheoreticalMass(formulaToCheck.toString(), false);
+      return formulaToCheck.toString();
     } catch (SpectrummillParserException spx){
       throw new AlexTargetlistParserException(spx.getMessage()+" Affected is column \""+columnName+"\" at line "+lineNumber+" in file "+fileName_+".");
     }
@@ -492,18 +492,6 @@ public class TargetlistEntry extends QuantVO
     super.isobaricPlusTime_ = plusTime;
   }
   
-  /**
-   * sets the required isotopic distribution values for this target
-   * @param mustMatchProbabs the probabilities of the isotopes that must match
-   * @param probabs probabilities of all isotopes to quantify
-   * @param negativeStartValue if the distribution goes in the negative direction - how negative is the lowest isotope
-   */
-  public void setDistributionValues(Vector<Double> mustMatchProbabs, Vector<Double> probabs, int negativeStartValue){
-    mustMatchProbabs_ = mustMatchProbabs;
-    probabs_ = probabs;
-    negStartValue_ = negativeStartValue;
-  }
-  
   /**
    * 
    * @return the MSn fragments - only possibly for MS1 species - first key: msLevel; second key: fragment name; third key molecular species name
@@ -40,10 +40,12 @@ import at.tugraz.genome.lda.exception.ExcelInputFileException;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
 import at.tugraz.genome.lda.msn.LipidomicsMSnSet;
 import at.tugraz.genome.lda.msn.hydroxy.parser.HydroxyEncoding;
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.parser.LDAResultPrefetcher;
+import at.tugraz.genome.lda.parser.StudyResultCache;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
 import at.tugraz.genome.lda.utils.DoubleCalculator;
+import at.tugraz.genome.lda.utils.RtMzIntervalIndex;
 import at.tugraz.genome.lda.utils.StaticUtils;
 import at.tugraz.genome.lda.vos.AbsoluteSettingsVO;
 import at.tugraz.genome.lda.vos.DoubleStringVO;
@@ -213,6 +215,12 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
   private HydroxyEncoding lcbHydroxyEncoding_;
   /** how many attached chains contains this class*/
   private Hashtable<String,Integer> chainsOfClass_; 
+  /** the number of threads for reading the result files*/
+  private int readingThreads_;
+  /** should the QuantificationResult objects be kept in the ResultFileVOs (required by the GUI for editing the results)*/
+  private boolean keepQuantificationResults_;
+  /** reads the result files in parallel during the parsing - null if the files are read sequentially*/
+  private LDAResultPrefetcher prefetcher_;
   
   
   public ComparativeAnalysis(Vector<File> resultFiles, String isSelectionPrefix, String esSelectionPrefix, AbsoluteSettingsVO absSetting, Hashtable<String,Double> classCutoffs, int maxCutoffIsotope, 
@@ -237,6 +245,19 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
     faHydroxyEncoding_ = null;
     lcbHydroxyEncoding_ = null;
     chainsOfClass_ = new Hashtable<String,Integer>();
+    readingThreads_ = 1;
+    keepQuantificationResults_ = true;
+  }
+  
+  /**
+   * sets how the result files are read by parseInput
+   * @param readingThreads the number of threads reading the result files ahead of the parsing; the files are parsed in their original sequence
+   * @param keepQuantificationResults true when the QuantificationResult objects shall be kept in the ResultFileVOs; for large studies without
+   * a GUI, false keeps only a few result files in memory at the same time
+   */
+  public void setResultReading(int readingThreads, boolean keepQuantificationResults){
+    this.readingThreads_ = readingThreads;
+    this.keepQuantificationResults_ = keepQuantificationResults;
   }
   
   public void parseInput(int statisticsViewMode, boolean combineOxWithNonOx) throws ExcelInputFileException, LipidCombinameEncodingException{
@@ -246,7 +267,15 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
     allResults_ = new Hashtable<String,Hashtable<String,Vector<ResultAreaVO>>>();
     allResultsHash_ = new Hashtable<String,Hashtable<String,Hashtable<String,ResultAreaVO>>>();
     modifications_ = new Hashtable<String,Hashtable<String,String>>();
-    extractInformation(statisticsViewMode, combineOxWithNonOx);
+    if (readingThreads_>1)
+      prefetcher_ = new LDAResultPrefetcher(resultFiles_, readingThreads_);
+    try {
+      extractInformation(statisticsViewMode, combineOxWithNonOx);
+    } finally {
+      if (prefetcher_!=null)
+        prefetcher_.close();
+      prefetcher_ = null;
+    }
     // this is to find out the experiments for the files of the group
     if (groups_!=null){
       expNamesOfGroup_ = new Hashtable<String,Vector<String>>();
@@ -970,7 +999,11 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
   protected void parseResultFile(File resultFile, String fileName, int statisticsViewMode, boolean combineOxWithNonOx) throws ExcelInputFileException, LipidCombinameEncodingException{
     Hashtable<String,Vector<LipidParameterSet>> results = new Hashtable<String,Vector<LipidParameterSet>>();
     Hashtable<String,Boolean> showMods = new Hashtable<String,Boolean>();
-    QuantificationResult quantRes = LDAResultReader.readResultFile(resultFile.getAbsolutePath(), showMods);
+    QuantificationResult quantRes = null;
+    if (prefetcher_!=null)
+      quantRes = prefetcher_.next(resultFile);
+    else
+      quantRes = StudyResultCache.getInstance().getModifiableResult(resultFile.getAbsolutePath(), showMods);
     
     /**
      * TODO: this could also be moved to after all files have been read in (but before ComparativeNameExtractor calls buildResultHashes())
@@ -980,7 +1013,7 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
       disableRtGrouping();
     }
     
-    resultFileVO_.add(new ResultFileVO(fileName, resultFile, quantRes));
+    resultFileVO_.add(new ResultFileVO(fileName, resultFile, keepQuantificationResults_ ? quantRes : null));
     
     if (quantRes.getLcbHydroxyEncoding()!=null)
       this.lcbHydroxyEncoding_ = quantRes.getLcbHydroxyEncoding();
@@ -1411,6 +1444,38 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
     return StaticUtils.isWithinTolerance(expRtGroupingTime_, refTime, rt);
   }
   
+  /**
+   * creates an index over retention time centers; the intervals are slightly enlarged, i.e. the index delivers candidates only,
+   * which have to be checked by isWithinRtGroupingBoundaries
+   * @param rts the retention time centers in the sequence of indexing
+   * @param halfWidth the half width of the intervals around the centers
+   * @return the built index; the indexed objects are the retention time centers
+   */
+  private RtMzIntervalIndex<Double> createRtGroupingIndex(Vector<Double> rts, double halfWidth){
+    RtMzIntervalIndex<Double> index = new RtMzIntervalIndex<Double>(rts.size());
+    for (Double rt : rts){
+      //the index works with float values - the enlargement compensates for the rounding
+      float tolerance = (float)(halfWidth*1.001d)+Math.ulp((float)(Math.abs(rt)+halfWidth))*4f;
+      index.add((float)(rt-tolerance), (float)(rt+tolerance), Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, rt);
+    }
+    index.build();
+    return index;
+  }
+  
+  /**
+   * checks whether a retention time is within the grouping boundaries of any of the indexed cluster centers
+   * @param rt the retention time to check
+   * @param clusterIndex index over the cluster centers, created by createRtGroupingIndex with the grouping time as half width
+   * @return true when the retention time is inside a cluster
+   */
+  private boolean isInsideAnRtCluster(double rt, RtMzIntervalIndex<Double> clusterIndex){
+    for (Double clusterRt : clusterIndex.findContaining((float)rt, 0f)){
+      if (isWithinRtGroupingBoundaries(rt,clusterRt))
+        return true;
+    }
+    return false;
+  }
+  
   private String enterSpacesToFormula(String chemicalFormula){
     String finalFormula = "";
     char[] chars = chemicalFormula.toCharArray();
@@ -2715,6 +2780,7 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
       Hashtable<String,Set<String>> usedRts, Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,ResultAreaVO>>>> resultsInHash){
     boolean anyFound = false;
     boolean outsideDetected = false;
+    RtMzIntervalIndex<Double> clusterIndex = createRtGroupingIndex(new Vector<Double>(rtClusters.values()),expRtGroupingTime_);
     for (String fileName : fileNames){
       if (!resultsInHash.containsKey(fileName) || !resultsInHash.get(fileName).containsKey(groupName) ||
           !resultsInHash.get(fileName).get(groupName).containsKey(molName) ||
@@ -2727,13 +2793,7 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
         if (usedRts.containsKey(fileName) && usedRts.get(fileName).contains(rtHitString))
           continue;
         double rtHit = Double.parseDouble(rtHitString);
-        boolean insideACluster = false;
-        for (double rt : rtClusters.values()){
-          if (isWithinRtGroupingBoundaries(rtHit,rt)){
-            insideACluster = true;
-            break;
-          }
-        }
+        boolean insideACluster = isInsideAnRtCluster(rtHit,clusterIndex);
         
         if (!insideACluster){
           outsideDetected = true;
@@ -2762,6 +2822,7 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
       Hashtable<String,Set<String>> usedRts, Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,ResultAreaVO>>>> resultsInHash){
     String[] fileNameAndRt = new String[2];
     double highestArea = 0d;
+    RtMzIntervalIndex<Double> clusterIndex = createRtGroupingIndex(new Vector<Double>(rtClusters.values()),expRtGroupingTime_);
     for (String fileName : fileNames){
       if (!resultsInHash.containsKey(fileName) || !resultsInHash.get(fileName).containsKey(groupName) ||
           !resultsInHash.get(fileName).get(groupName).containsKey(molName) ||
@@ -2772,14 +2833,7 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
         if (usedRts.containsKey(fileName) && usedRts.get(fileName).contains(rtHitString))
           continue;
         double rtHit = Double.parseDouble(rtHitString);
-        boolean inCluster = false;
-        for (double rt : rtClusters.values()){
-          if (isWithinRtGroupingBoundaries(rtHit,rt)){
-            inCluster = true;
-            break;
-          }
-        }
-        if (inCluster)
+        if (isInsideAnRtCluster(rtHit,clusterIndex))
           continue;      
         ResultAreaVO result = results.get(rtHitString);
         double area = result.getTotalArea(Integer.MAX_VALUE);
@@ -2958,16 +3012,25 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
    * @return true when cluster centers are overlapping with one another
    */
   private boolean clusterOverlap(Hashtable<Integer,Double> rtClusters){
-    for (int i=0; i!=rtClusters.size(); i++){
-      double firstRt = rtClusters.get(i);
-      for (int j=(i+1); j<(rtClusters.size()); j++){
-        double secondRt = rtClusters.get(j);
-        if (isWithinRtGroupingBoundaries(firstRt, secondRt)){
-          return true;
-        }
-      }
+    return detectOverlappingClusters(rtClusters).size()>0;
+  }
+  
+  
+  /**
+   * detects all pairs of cluster centers that are within the other influence regions
+   * @param rtClusters hash containing the cluster id and weighted retention time center; key: cluster ID; value: area weighted retention time center
+   * @return the pairs of overlapping cluster ids; int[0] is smaller than int[1]; sorted ascendingly by int[0] and then by int[1]
+   */
+  private Vector<int[]> detectOverlappingClusters(Hashtable<Integer,Double> rtClusters){
+    Vector<Double> rts = new Vector<Double>();
+    for (int i=0; i!=rtClusters.size(); i++) rts.add(rtClusters.get(i));
+    //two centers are within the grouping boundaries if the intervals of half the grouping time overlap
+    Vector<int[]> overlapping = new Vector<int[]>();
+    for (int[] pair : createRtGroupingIndex(rts,expRtGroupingTime_/2d).selfJoin()){
+      if (isWithinRtGroupingBoundaries(rts.get(pair[0]), rts.get(pair[1])))
+        overlapping.add(pair);
     }
-    return false;
+    return overlapping;
   }
   
   
@@ -2979,18 +3042,12 @@ public class ComparativeAnalysis extends ComparativeNameExtractor implements Com
   private int[] detectClosestOverlap(Hashtable<Integer,Double> rtClusters){
     double lowestOverlap = this.expRtGroupingTime_;
     int[] clusterIds = new int[2];
-    for (int i=0; i!=rtClusters.size(); i++){
-      double firstRt = rtClusters.get(i);
-      for (int j=(i+1); j<(rtClusters.size()); j++){
-        double secondRt = rtClusters.get(j);
-        if (!isWithinRtGroupingBoundaries(firstRt, secondRt))
-          continue;
-        double overlap = Math.abs(firstRt-secondRt);
-        if (overlap>lowestOverlap)
-          continue;
-        clusterIds[0] = i;
-        clusterIds[1] = j;
-      }
+    for (int[] pair : detectOverlappingClusters(rtClusters)){
+      double overlap = Math.abs(rtClusters.get(pair[0])-rtClusters.get(pair[1]));
+      if (overlap>lowestOverlap)
+        continue;
+      clusterIds[0] = pair[0];
+      clusterIds[1] = pair[1];
     }
     return clusterIds;
   }
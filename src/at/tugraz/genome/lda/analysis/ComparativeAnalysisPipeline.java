@@ -0,0 +1,459 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.QuantificationThread;
+import at.tugraz.genome.lda.Settings;
+import at.tugraz.genome.lda.alex123.RdbOutputWriter;
+import at.tugraz.genome.lda.analysis.exception.CalculationNotPossibleException;
+import at.tugraz.genome.lda.exception.ExcelInputFileException;
+import at.tugraz.genome.lda.exception.ExportException;
+import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
+import at.tugraz.genome.lda.exception.NoRuleException;
+import at.tugraz.genome.lda.exception.RetentionTimeGroupingException;
+import at.tugraz.genome.lda.exception.RulesException;
+import at.tugraz.genome.lda.export.ExcelAndTextExporter;
+import at.tugraz.genome.lda.msn.RulesContainer;
+import at.tugraz.genome.lda.mztab.MzTabExporter;
+import at.tugraz.genome.lda.utils.StaticUtils;
+import at.tugraz.genome.lda.vos.ClassExportSelectionVO;
+import at.tugraz.genome.lda.vos.ExportOptionsVO;
+import at.tugraz.genome.lda.vos.QuantVO;
+import at.tugraz.genome.lda.vos.ResultCompVO;
+import at.tugraz.genome.lda.vos.ResultDisplaySettingsVO;
+import at.tugraz.genome.maspectras.parser.exceptions.SpectrummillParserException;
+
+/**
+ * Runs the comparative analysis of a whole study without GUI: the result files are read, the statistics are calculated,
+ * and the results are exported to Excel/text and PNG heat maps (one file per class), RDB and mzTab-M as defined in a settings file.
+ * The settings file is a properties file with the following keys:
+ * results.dir (required): directory containing the LDA result files (xlsx)
+ * output.dir (required): directory where the exported files are stored
+ * standard.internal.prefix, standard.external.prefix: prefixes of the standards
+ * quant.file, quant.positive: quant file defining the order of the analytes, and whether it is in positive ion mode
+ * rt.grouping: separate hits by retention time with this tolerance in minutes
+ * groups: comma separated group names; group.[name]: comma separated result file names belonging to this group
+ * value.type: relative value|relative to base peak|relative to measured class amount|relative to highest total peak|relative to total amount
+ * standard.internal.correction, standard.external.correction: none|best|median
+ * export.type: species|chain|position
+ * export.doubleBonds, export.excel, export.text, export.heatmap, export.rdb, export.mztab: true|false
+ * A class that cannot be exported does not stop the export of the other classes; the amount of failures is provided by getFailures()
+ * threads: amount of threads for reading the result files and for the exports
+ */
+public class ComparativeAnalysisPipeline
+{
+  public final static String KEY_RESULTS_DIR = "results.dir";
+  public final static String KEY_OUTPUT_DIR = "output.dir";
+  public final static String KEY_IS_PREFIX = "standard.internal.prefix";
+  public final static String KEY_ES_PREFIX = "standard.external.prefix";
+  public final static String KEY_QUANT_FILE = "quant.file";
+  public final static String KEY_QUANT_POSITIVE = "quant.positive";
+  public final static String KEY_RT_GROUPING = "rt.grouping";
+  public final static String KEY_GROUPS = "groups";
+  public final static String KEY_GROUP_PREFIX = "group.";
+  public final static String KEY_VALUE_TYPE = "value.type";
+  public final static String KEY_IS_CORRECTION = "standard.internal.correction";
+  public final static String KEY_ES_CORRECTION = "standard.external.correction";
+  public final static String KEY_EXPORT_TYPE = "export.type";
+  public final static String KEY_EXPORT_DOUBLE_BONDS = "export.doubleBonds";
+  public final static String KEY_EXPORT_EXCEL = "export.excel";
+  public final static String KEY_EXPORT_TEXT = "export.text";
+  public final static String KEY_EXPORT_HEATMAP = "export.heatmap";
+  public final static String KEY_EXPORT_RDB = "export.rdb";
+  public final static String KEY_EXPORT_MZTAB = "export.mztab";
+  public final static String KEY_THREADS = "threads";
+  
+  /** the name of the group when no groups are defined*/
+  private final static String UNDEFINED_GROUP = "undefined";
+
+  private Vector<File> resultFiles_;
+  private File outputDir_;
+  private String isPrefix_;
+  private String esPrefix_;
+  private String quantFile_;
+  private boolean quantPositive_;
+  private double rtGroupingTime_;
+  private Vector<String> groups_;
+  private Hashtable<String,Vector<File>> filesOfGroup_;
+  private String valueType_;
+  private int isCorrection_;
+  private int esCorrection_;
+  private short speciesType_;
+  private boolean exportDoubleBonds_;
+  private boolean exportExcel_;
+  private boolean exportText_;
+  private boolean exportHeatmap_;
+  private boolean exportRdb_;
+  private boolean exportMzTab_;
+  private int threads_;
+  /** the amount of classes/exports that failed*/
+  private AtomicInteger failures_;
+  
+  /**
+   * reads and checks the settings file
+   * @param settingsFile the properties file containing the settings
+   * @throws IOException if the settings file cannot be read
+   * @throws ExportException if a setting is missing or invalid
+   */
+  public ComparativeAnalysisPipeline(File settingsFile) throws IOException, ExportException{
+    Properties props = new Properties();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(settingsFile))){
+      props.load(in);
+    }
+    readSettings(props);
+  }
+  
+  /**
+   * @param props the settings
+   * @throws ExportException if a setting is missing or invalid
+   */
+  public ComparativeAnalysisPipeline(Properties props) throws ExportException{
+    readSettings(props);
+  }
+  
+  private void readSettings(Properties props) throws ExportException{
+    File resultDir = new File(getRequired(props,KEY_RESULTS_DIR));
+    if (!resultDir.exists() || !resultDir.isDirectory())
+      throw new ExportException("The result directory \""+resultDir.getAbsolutePath()+"\" does not exist");
+    resultFiles_ = new Vector<File>();
+    File[] candidates = resultDir.listFiles();
+    Arrays.sort(candidates);
+    for (File candidate : candidates){
+      if (candidate.isFile() && StaticUtils.extractFileNameAndSuffix(candidate.getAbsolutePath())[1].equalsIgnoreCase("xlsx"))
+        resultFiles_.add(candidate);
+    }
+    if (resultFiles_.size()==0)
+      throw new ExportException("In the result directory \""+resultDir.getAbsolutePath()+"\" are no LDA result files");
+    outputDir_ = new File(getRequired(props,KEY_OUTPUT_DIR));
+    if (!outputDir_.exists() && !outputDir_.mkdirs())
+      throw new ExportException("The output directory \""+outputDir_.getAbsolutePath()+"\" cannot be created");
+    isPrefix_ = props.getProperty(KEY_IS_PREFIX, Settings.getInternalStandardDefaultInput());
+    esPrefix_ = props.getProperty(KEY_ES_PREFIX, Settings.getExternalStandardDefaultInput());
+    quantFile_ = props.getProperty(KEY_QUANT_FILE);
+    quantPositive_ = getBoolean(props,KEY_QUANT_POSITIVE,false);
+    rtGroupingTime_ = -1d;
+    try{
+      if (props.getProperty(KEY_RT_GROUPING)!=null) rtGroupingTime_ = Double.parseDouble(props.getProperty(KEY_RT_GROUPING).trim());
+    }catch (NumberFormatException nfx){
+      throw new ExportException("The value of "+KEY_RT_GROUPING+" is not float format");
+    }
+    readGroups(props);
+    valueType_ = props.getProperty(KEY_VALUE_TYPE, ResultDisplaySettingsVO.REL_VALUE).trim();
+    if (!valueType_.equalsIgnoreCase(ResultDisplaySettingsVO.REL_VALUE) && !valueType_.equalsIgnoreCase(ResultDisplaySettingsVO.REL_BASE_PEAK) &&
+        !valueType_.equalsIgnoreCase(ResultDisplaySettingsVO.REL_MEASURED_CLASS_AMOUNT) && !valueType_.equalsIgnoreCase(ResultDisplaySettingsVO.REL_HIGHEST_TOTAL_PEAK) &&
+        !valueType_.equalsIgnoreCase(ResultDisplaySettingsVO.REL_TOTAL_AMOUNT))
+      throw new ExportException("The value type \""+valueType_+"\" is not supported without GUI - only relative values are allowed");
+    isCorrection_ = getCorrection(props,KEY_IS_CORRECTION);
+    esCorrection_ = getCorrection(props,KEY_ES_CORRECTION);
+    speciesType_ = LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES;
+    String type = props.getProperty(KEY_EXPORT_TYPE, "species").trim();
+    if (type.equalsIgnoreCase("chain"))
+      speciesType_ = LipidomicsConstants.EXPORT_ANALYTE_TYPE_CHAIN;
+    else if (type.equalsIgnoreCase("position"))
+      speciesType_ = LipidomicsConstants.EXPORT_ANALYTE_TYPE_POSITION;
+    else if (!type.equalsIgnoreCase("species"))
+      throw new ExportException("For "+KEY_EXPORT_TYPE+" is only species/chain/position allowed and not \""+type+"\"");
+    exportDoubleBonds_ = getBoolean(props,KEY_EXPORT_DOUBLE_BONDS,false);
+    exportExcel_ = getBoolean(props,KEY_EXPORT_EXCEL,true);
+    exportText_ = getBoolean(props,KEY_EXPORT_TEXT,false);
+    exportHeatmap_ = getBoolean(props,KEY_EXPORT_HEATMAP,false);
+    exportRdb_ = getBoolean(props,KEY_EXPORT_RDB,false);
+    exportMzTab_ = getBoolean(props,KEY_EXPORT_MZTAB,false);
+    threads_ = Runtime.getRuntime().availableProcessors();
+    try{
+      if (props.getProperty(KEY_THREADS)!=null) threads_ = Integer.parseInt(props.getProperty(KEY_THREADS).trim());
+    }catch (NumberFormatException nfx){
+      throw new ExportException("The value of "+KEY_THREADS+" is not integer format");
+    }
+    if (threads_<1)
+      throw new ExportException("The value of "+KEY_THREADS+" must be at least 1");
+  }
+  
+  private void readGroups(Properties props) throws ExportException{
+    groups_ = null;
+    filesOfGroup_ = null;
+    if (props.getProperty(KEY_GROUPS)==null || props.getProperty(KEY_GROUPS).trim().length()==0)
+      return;
+    Hashtable<String,File> filesByName = new Hashtable<String,File>();
+    for (File file : resultFiles_) filesByName.put(file.getName(), file);
+    groups_ = new Vector<String>();
+    filesOfGroup_ = new Hashtable<String,Vector<File>>();
+    for (String group : props.getProperty(KEY_GROUPS).split(",")){
+      group = group.trim();
+      if (group.length()==0)
+        continue;
+      String fileNames = getRequired(props,KEY_GROUP_PREFIX+group);
+      Vector<File> files = new Vector<File>();
+      for (String fileName : fileNames.split(",")){
+        fileName = fileName.trim();
+        if (fileName.length()==0)
+          continue;
+        if (!filesByName.containsKey(fileName))
+          throw new ExportException("The file \""+fileName+"\" of group \""+group+"\" is not in the result directory");
+        files.add(filesByName.get(fileName));
+      }
+      groups_.add(group);
+      filesOfGroup_.put(group, files);
+    }
+  }
+  
+  private static String getRequired(Properties props, String key) throws ExportException{
+    String value = props.getProperty(key);
+    if (value==null || value.trim().length()==0)
+      throw new ExportException("The setting \""+key+"\" is missing");
+    return value.trim();
+  }
+  
+  private static boolean getBoolean(Properties props, String key, boolean defaultValue){
+    String value = props.getProperty(key);
+    if (value==null || value.trim().length()==0)
+      return defaultValue;
+    return Boolean.parseBoolean(value.trim());
+  }
+  
+  private static int getCorrection(Properties props, String key) throws ExportException{
+    String value = props.getProperty(key, "none").trim();
+    if (value.equalsIgnoreCase("none"))
+      return ResultCompVO.NO_STANDARD_CORRECTION;
+    else if (value.equalsIgnoreCase("best"))
+      return ResultCompVO.STANDARD_CORRECTION_INTERNAL;
+    else if (value.equalsIgnoreCase("median"))
+      return ResultCompVO.STANDARD_CORRECTION_MEDIAN;
+    throw new ExportException("For "+key+" is only none/best/median allowed and not \""+value+"\"");
+  }
+  
+  /**
+   * reads the result files, calculates the statistics, and writes all exports selected in the settings; the classes that
+   * cannot be exported are reported and counted (see getFailures())
+   * @throws IOException if a file cannot be read or written
+   * @throws ExcelInputFileException if there is something wrong with an LDA result file
+   * @throws CalculationNotPossibleException if the values cannot be calculated
+   * @throws ExportException if there is something wrong with the export
+   * @throws SpectrummillParserException if there are elements missing in the elementconfig.xml
+   * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+   * @throws RetentionTimeGroupingException if the retention times of the species cannot be grouped
+   */
+  @SuppressWarnings("unchecked")
+  public void run() throws IOException, ExcelInputFileException, CalculationNotPossibleException, ExportException, SpectrummillParserException,
+      LipidCombinameEncodingException, RetentionTimeGroupingException{
+    failures_ = new AtomicInteger(0);
+    LinkedHashMap<String,Integer> classSequence = null;
+    LinkedHashMap<String,Vector<String>> correctAnalyteSequence = null;
+    Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects = null;
+    if (quantFile_!=null){
+      try{
+        @SuppressWarnings("rawtypes")
+        Vector quantInfo = QuantificationThread.getCorrectAnalyteSequence(quantFile_,quantPositive_);
+        classSequence = (LinkedHashMap<String,Integer>)quantInfo.get(0);
+        correctAnalyteSequence = (LinkedHashMap<String,Vector<String>>)quantInfo.get(1);
+        quantObjects = (Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>>)quantInfo.get(4);
+      }catch (Exception ex){
+        throw new ExportException("The quant file \""+quantFile_+"\" cannot be read: "+ex.getMessage());
+      }
+    }
+    ComparativeAnalysis analysisModule;
+    if (groups_!=null)
+      analysisModule = new ComparativeAnalysis(resultFiles_, isPrefix_, esPrefix_, null, null, -1, groups_, filesOfGroup_, classSequence,
+          correctAnalyteSequence, quantObjects, rtGroupingTime_);
+    else
+      analysisModule = new ComparativeAnalysis(resultFiles_, isPrefix_, esPrefix_, null, null, -1, classSequence,
+          correctAnalyteSequence, quantObjects, rtGroupingTime_);
+    //the exports read what they need from the ResultCompVOs - the parsed result files are not kept in memory
+    analysisModule.setResultReading(threads_, false);
+    analysisModule.parseInput(0, false);
+    analysisModule.calculateStatistics();
+    if (exportExcel_ || exportText_ || exportHeatmap_)
+      exportClasses(analysisModule);
+    if (exportRdb_)
+      exportRdb(analysisModule, classSequence);
+    if (exportMzTab_)
+      exportMzTab(analysisModule);
+  }
+  
+  /**
+   * exports every analyte class to an own Excel, text and/or PNG file; the classes are exported in parallel;
+   * a class that cannot be exported is reported and counted as failure
+   */
+  private void exportClasses(ComparativeAnalysis analysisModule) throws ExportException{
+    LinkedHashMap<String,String> expFullPaths = new LinkedHashMap<String,String>();
+    for (String exp : analysisModule.getExpNamesInSequence())
+      expFullPaths.put(exp, analysisModule.getFullFilePath(exp).getAbsolutePath());
+    LinkedHashMap<String,Vector<String>> expsOfGroup = new LinkedHashMap<String,Vector<String>>();
+    if (analysisModule.getGroupNames()!=null && analysisModule.getGroupNames().size()>0){
+      for (String group : analysisModule.getGroupNames())
+        expsOfGroup.put(group, analysisModule.getExpsOfGroup(group));
+    }else
+      expsOfGroup.put(UNDEFINED_GROUP, analysisModule.getExpNamesInSequence());
+    ExecutorService threadpool = Executors.newFixedThreadPool(threads_);
+    try{
+      LinkedHashMap<String,Future<Void>> futures = new LinkedHashMap<String,Future<Void>>();
+      for (String className : analysisModule.getResults().keySet()){
+        Vector<String> molNames = analysisModule.getAllMoleculeNames().get(className);
+        if (molNames==null || molNames.isEmpty())
+          continue;
+        futures.put(className,threadpool.submit(new Callable<Void>(){
+          public Void call() throws Exception{
+            exportClass(analysisModule, className, molNames, expFullPaths, expsOfGroup);
+            return null;
+          }
+        }));
+      }
+      for (String className : futures.keySet()){
+        try{
+          futures.get(className).get();
+        }catch (InterruptedException ix){
+          Thread.currentThread().interrupt();
+          throw new ExportException("The export has been interrupted");
+        }catch (ExecutionException ex){
+          Throwable cause = ex.getCause()!=null ? ex.getCause() : ex;
+          System.err.println("The class "+className+" cannot be exported: "+cause.getMessage());
+          failures_.incrementAndGet();
+        }
+      }
+    } finally{
+      threadpool.shutdownNow();
+    }
+  }
+  
+  private void exportClass(ComparativeAnalysis analysisModule, String className, Vector<String> molNames, LinkedHashMap<String,String> expFullPaths,
+      LinkedHashMap<String,Vector<String>> expsOfGroup) throws IOException, ExcelInputFileException, CalculationNotPossibleException,
+      ExportException, SpectrummillParserException, LipidCombinameEncodingException, RetentionTimeGroupingException{
+    ResultDisplaySettingsVO settingsVO = new ResultDisplaySettingsVO(valueType_,isCorrection_,esCorrection_,false,false);
+    int maxIsotope = analysisModule.getMaxIsotopesOfGroup(className)-1;
+    ArrayList<String> modifications = new ArrayList<String>(analysisModule.getModifications().get(className));
+    Hashtable<String,Hashtable<String,ResultCompVO>> compVOs = analysisModule.getResults().get(className);
+    Hashtable<String,Hashtable<String,Vector<Double>>> resultValues = new Hashtable<String,Hashtable<String,Vector<Double>>>();
+    for (String molName : compVOs.keySet())
+      resultValues.put(molName, StaticUtils.extractValuesOfMolecule(compVOs.get(molName), maxIsotope, settingsVO, ""));
+    String preferredUnit = StaticUtils.getCorrespondingUnit(settingsVO,"",true);
+    boolean exportDoubleBondPositionsForClass = exportDoubleBonds_;
+    short speciesType = speciesType_;
+    if (exportDoubleBondPositionsForClass) {
+      int numberOfChains = 2;
+      try {
+        numberOfChains = Integer.parseInt(RulesContainer.getAmountOfChains(StaticUtils.getRuleName(className, modifications.get(0))));
+      } catch (RulesException | NoRuleException ex) {
+        System.err.println("The amount of chains of the class "+className+" is unknown: "+ex.getMessage());
+        failures_.incrementAndGet();
+      }
+      if (numberOfChains > 1 && speciesType == LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
+        exportDoubleBondPositionsForClass = false;
+      //for lipid species with only one FA chain we export the double bond position information on species level
+      } else if (numberOfChains == 1 && speciesType != LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
+        speciesType = LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES;
+      }
+    }
+    ExportOptionsVO expOptions = new ExportOptionsVO(ExportOptionsVO.EXPORT_NO_DEVIATION,null,true,false,false,exportDoubleBondPositionsForClass,6,speciesType);
+    if (exportExcel_){
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(outputDir_,className+".xlsx")))){
+        ExcelAndTextExporter.exportToFile(true,speciesType, exportDoubleBondPositionsForClass, className, out, true, maxIsotope, molNames,
+            analysisModule.getRtTolerance()!=null, false, analysisModule.getExpNamesInSequence(), analysisModule.getExpNames(), expFullPaths,
+            expsOfGroup, resultValues, preferredUnit, StaticUtils.getAreaTypeString(settingsVO), expOptions, analysisModule, modifications);
+      }
+    }
+    if (exportText_){
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(outputDir_,className+".txt")))){
+        ExcelAndTextExporter.exportToFile(true,speciesType, exportDoubleBondPositionsForClass, className, out, false, maxIsotope, molNames,
+            analysisModule.getRtTolerance()!=null, false, analysisModule.getExpNamesInSequence(), analysisModule.getExpNames(), expFullPaths,
+            expsOfGroup, resultValues, preferredUnit, StaticUtils.getAreaTypeString(settingsVO), expOptions, analysisModule, modifications);
+      }
+    }
+    if (exportHeatmap_){
+      LipidomicsHeatMap heatmap = new LipidomicsHeatMap(compVOs, analysisModule.getExpNamesInSequence(), molNames, maxIsotope, settingsVO,
+          speciesType_==LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES);
+      ImageIO.write(heatmap.createImage(), "PNG", new File(outputDir_,className+".png"));
+    }
+  }
+  
+  private void exportRdb(ComparativeAnalysis analysisModule, LinkedHashMap<String,Integer> classSequence) throws ExportException, ExcelInputFileException,
+      LipidCombinameEncodingException{
+    Hashtable<String,Hashtable<String,String>> acceptedMolecules = new Hashtable<String,Hashtable<String,String>>();
+    Hashtable<String,Integer> maxIsotopes = new Hashtable<String,Integer>();
+    for (String className : analysisModule.getResults().keySet()){
+      Hashtable<String,String> molecules = new Hashtable<String,String>();
+      for (String molName : analysisModule.getAllMoleculeNames().get(className)) molecules.put(molName, molName);
+      acceptedMolecules.put(className, molecules);
+      maxIsotopes.put(className, analysisModule.getMaxIsotopesOfGroup(className)-1);
+    }
+    File rdbFile = new File(outputDir_,"results.rdb");
+    try{
+      new RdbOutputWriter(isPrefix_,esPrefix_,threads_).write(rdbFile.getAbsolutePath(), analysisModule, classSequence, null, acceptedMolecules,
+          maxIsotopes, null, null, false);
+    }catch (Exception ex){
+      if (ex instanceof ExcelInputFileException) throw (ExcelInputFileException)ex;
+      if (ex instanceof LipidCombinameEncodingException) throw (LipidCombinameEncodingException)ex;
+      throw new ExportException(ex.getMessage(),ex);
+    }
+  }
+  
+  private void exportMzTab(ComparativeAnalysis analysisModule) throws IOException, ExcelInputFileException, CalculationNotPossibleException,
+      ExportException, SpectrummillParserException, LipidCombinameEncodingException, RetentionTimeGroupingException{
+    LinkedHashMap<String,ClassExportSelectionVO> selections = MzTabExporter.createDefaultSelections(analysisModule, valueType_);
+    for (String className : selections.keySet()){
+      ClassExportSelectionVO selection = selections.get(className);
+      selections.put(className, new ClassExportSelectionVO(selection.getSelectedMolecules(),selection.getMaxIsotope(),
+          new ResultDisplaySettingsVO(valueType_,isCorrection_,esCorrection_,false,false)));
+    }
+    new MzTabExporter(analysisModule).export(new File(outputDir_,"results.mzTab"), speciesType_, exportDoubleBonds_, selections);
+  }
+  
+  /**
+   * @return the amount of classes/exports that failed in the last run
+   */
+  public int getFailures(){
+    return failures_!=null ? failures_.get() : 0;
+  }
+  
+  /**
+   * @return the directory where the exported files are stored
+   */
+  public File getOutputDir(){
+    return outputDir_;
+  }
+
+}
@@ -113,13 +113,39 @@ public class LipidomicsHeatMap
   	this.isSumCompOnly_ = parent.getSelectedShowOption().equalsIgnoreCase(HeatMapDrawing.DISPLAY_OPTION_SUM_COMP);
   	this.isAllAnalyteGroups_ = parent.getSelectedShowOptionMSn().equalsIgnoreCase(HeatMapDrawing.DISPLAY_OPTION_ALL_GROUPS);
   	this.sampleNames_ = parent.getExperimentNames();
-  	this.heatMapRows_ = computeRows(parent);
+  	this.heatMapRows_ = computeRows(parent.getResultsOfOneGroup(), parent.getSelectedMoleculeNames(), parent.getSelectedIsotope(),
+  			parent.getSettingsVO(), parent.getSortMode());
     this.analyteNames_ = computeAnalyteNames();
     this.gradient_ = this.createThreeColGradientImage(this.defaultNrOfGradientPixels_);
     this.lookup_ = parent.getHeatMapListener();
     this.ignorePlatformSettings_ = false;
   }
   
+  /**
+   * constructor for rendering the heat map of one analyte class without GUI; the settings are the defaults of the HeatMapDrawing,
+   * i.e. double peaks are marked, all analyte groups are shown, and the rows are in the order of the molecule names
+   * @param resultsOfOneGroup the results of the analyte class; first key: molecule name; second key: experiment name
+   * @param experimentNames the experiments (columns) in the order to display
+   * @param moleculeNames the analytes (rows) in the order to display
+   * @param maxIsotope the highest isotope to use
+   * @param settingsVO the settings for the calculation of the values
+   * @param sumCompOnly should only the sum compositions be shown
+   * @throws CalculationNotPossibleException if the values cannot be calculated
+   */
+  public LipidomicsHeatMap(Hashtable<String,Hashtable<String,ResultCompVO>> resultsOfOneGroup, Vector<String> experimentNames,
+  		Vector<String> moleculeNames, int maxIsotope, ResultDisplaySettingsVO settingsVO, boolean sumCompOnly) throws CalculationNotPossibleException
+  {
+  	this.isMarkDoublePeaks_ = true;
+  	this.isSumCompOnly_ = sumCompOnly;
+  	this.isAllAnalyteGroups_ = true;
+  	this.sampleNames_ = experimentNames;
+  	this.heatMapRows_ = computeRows(resultsOfOneGroup, moleculeNames, maxIsotope, settingsVO, HeatMapDrawing.SORT_OPTION_DEFAULT);
+    this.analyteNames_ = computeAnalyteNames();
+    this.gradient_ = this.createThreeColGradientImage(this.defaultNrOfGradientPixels_);
+    this.lookup_ = null;
+    this.ignorePlatformSettings_ = true;
+  }
+  
   private ArrayList<String> computeAnalyteNames()
   {
   	ArrayList<String> analyteNames = new ArrayList<String>();
@@ -133,28 +159,26 @@ public class LipidomicsHeatMap
   /**
    * Computes the rows for the heatmap.
    * @param resultsOfOneGroup
-   * @param experimentNames
    * @param moleculeNames
    * @param maxIsotope
-   * @param settingVO
+   * @param settingsVO
+   * @param sortMode
    * @return
    * @throws CalculationNotPossibleException
    */
-  private ArrayList<HeatMapRow> computeRows(HeatMapDrawing parent) throws CalculationNotPossibleException
+  private ArrayList<HeatMapRow> computeRows(Hashtable<String,Hashtable<String,ResultCompVO>> resultsOfOneGroup, Vector<String> moleculeNames,
+  		Integer maxIsotope, ResultDisplaySettingsVO settingsVO, String sortMode) throws CalculationNotPossibleException
   {
-  	Vector<String> moleculeNames = parent.getSelectedMoleculeNames();
-  	Integer maxIsotope = parent.getSelectedIsotope();;
-  	
   	ArrayList<HeatMapRow> rows = new ArrayList<HeatMapRow>();
     for (int j=0; j!=moleculeNames.size();j++)
     {
     	String sumCompositionName = moleculeNames.get(j);
-    	Hashtable<String,ResultCompVO> resultsOfOneSumComp = parent.getResultsOfOneGroup().get(sumCompositionName);
+    	Hashtable<String,ResultCompVO> resultsOfOneSumComp = resultsOfOneGroup.get(sumCompositionName);
     	if (!isDesiredLevelOfVerification(resultsOfOneSumComp)) continue;
-    	Hashtable<String,ArrayList<Double>> medianValues = computeMedianAreaAtMolSpeciesLevel(resultsOfOneSumComp, parent.getSettingsVO(), maxIsotope);
+    	Hashtable<String,ArrayList<Double>> medianValues = computeMedianAreaAtMolSpeciesLevel(resultsOfOneSumComp, settingsVO, maxIsotope);
     	ResultCompVO dummyCompVO = new ResultCompVO();
     	
-    	HeatMapRow rowSumComp = computeHeatMapRow(ResultCompVO.SUM_COMPOSITION, medianValues, sumCompositionName, parent.getSettingsVO(), resultsOfOneSumComp, maxIsotope, dummyCompVO);
+    	HeatMapRow rowSumComp = computeHeatMapRow(ResultCompVO.SUM_COMPOSITION, medianValues, sumCompositionName, settingsVO, resultsOfOneSumComp, maxIsotope, dummyCompVO);
     	rows.add(rowSumComp);
     	
     	if (!isSumCompOnly_)
@@ -162,53 +186,84 @@ public class LipidomicsHeatMap
     		for (String name : medianValues.keySet())
       	{
       		if (name.equals(ResultCompVO.SUM_COMPOSITION)) continue;
-      		HeatMapRow row = computeHeatMapRow(name, medianValues, sumCompositionName, parent.getSettingsVO(), resultsOfOneSumComp, maxIsotope, dummyCompVO);
+      		HeatMapRow row = computeHeatMapRow(name, medianValues, sumCompositionName, settingsVO, resultsOfOneSumComp, maxIsotope, dummyCompVO);
       		row.setAttentionValues(rowSumComp.getAttentionValues());
       		rows.add(row);
       	}
     	}
     }
-    sortRows(rows, parent);
+    sortRows(rows, sortMode, moleculeNames, maxIsotope, settingsVO);
     return rows;
   }
   
-  private ArrayList<HeatMapRow> sortRows(ArrayList<HeatMapRow> rows, HeatMapDrawing parent)
+  private ArrayList<HeatMapRow> sortRows(ArrayList<HeatMapRow> rows, String sortMode, Vector<String> moleculeNames, Integer maxIsotope,
+  		ResultDisplaySettingsVO settingsVO)
   {
-  	if (parent.getSortMode().equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_SPECIES))
+  	if (sortMode.equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_SPECIES))
   	{
   		rows.sort(new SpeciesComparator());
   	}
-  	else if (parent.getSortMode().equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_RT))
+  	else if (sortMode.equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_RT))
   	{
   		rows.sort(new ElutionOrderComparator());
   	}
-  	else if (parent.getSortMode().equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_DEFAULT))
+  	else if (sortMode.equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_DEFAULT))
   	{
-  		rows.sort(new DefaultComparator(parent.getSelectedMoleculeNames()));
+  		rows.sort(new DefaultComparator(moleculeNames));
   	}
-  	else if (parent.getSortMode().equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_MZ))
+  	else if (sortMode.equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_MZ))
   	{
   		rows.sort(new MZComparator());
   	}
-  	else if (parent.getSortMode().equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_AREA))
+  	else if (sortMode.equalsIgnoreCase(HeatMapDrawing.SORT_OPTION_AREA))
   	{
-  		rows.sort(new AreaComparator(parent));
+  		rows.sort(new AreaComparator(maxIsotope, settingsVO));
   	}
   	return rows;
   }
   
+  /**
+   * 
+   * @param vos the results of one analyte in several experiments
+   * @param maxIsotope the highest isotope to use
+   * @param settingsVO the settings for the calculation of the values
+   * @return the average of the areas that are greater than zero
+   */
+  public static Double getAverageArea(ArrayList<ResultCompVO> vos, int maxIsotope, ResultDisplaySettingsVO settingsVO)
+	{
+  	int count = 0;
+  	Double sum = 0d;
+  	for (ResultCompVO vo : vos)
+  	{
+  		Double value = 0d;
+  		try
+  		{
+  			int isotopes = vo.getAvailableIsotopeNr(maxIsotope);
+  			value = vo.getArea(isotopes, settingsVO);
+  		} catch (CalculationNotPossibleException ex) {}
+  		if (value > 0)
+  		{
+  			sum += value;
+  			count++;
+  		}
+  	}
+  	return count > 0 ? sum/count : 0d;
+	}
+  
   class AreaComparator implements Comparator<HeatMapRow> {
-  	HeatMapDrawing parent_;
+  	int maxIsotope_;
+  	ResultDisplaySettingsVO settingsVO_;
   	
-  	AreaComparator(HeatMapDrawing parent)
+  	AreaComparator(int maxIsotope, ResultDisplaySettingsVO settingsVO)
   	{
-  		this.parent_ = parent;
+  		this.maxIsotope_ = maxIsotope;
+  		this.settingsVO_ = settingsVO;
   	}
   	
   	@Override
     public int compare(HeatMapRow a, HeatMapRow b) {
   		return Comparator.comparing(HeatMapRow::isMolecularSpeciesLevel)
-  				.thenComparing((HeatMapRow r) -> parent_.getAverageArea(r.getAllCompVO())).reversed()
+  				.thenComparing((HeatMapRow r) -> getAverageArea(r.getAllCompVO(), maxIsotope_, settingsVO_)).reversed()
   				.thenComparing(HeatMapRow::getOriginalAnalyteName)
       		.thenComparing(HeatMapRow::getMolecularSpeciesName)
       		.thenComparing(HeatMapRow::getRtGroupValue)
@@ -867,6 +922,7 @@ public class LipidomicsHeatMap
   }
   
   public String getSampleNameToDisplay(String sampleName){
+    if (this.lookup_==null) return sampleName;
     return this.lookup_.getDisplayName(sampleName);
   }
   
@@ -55,11 +55,12 @@ import at.tugraz.genome.lda.exception.ExcelInputFileException;
 import at.tugraz.genome.lda.exception.ExportException;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
 import at.tugraz.genome.lda.exception.RetentionTimeGroupingException;
+import at.tugraz.genome.lda.export.vos.OmegaSummaryVO;
 import at.tugraz.genome.lda.export.vos.SpeciesExportVO;
 import at.tugraz.genome.lda.export.vos.SummaryVO;
 import at.tugraz.genome.lda.msn.hydroxy.parser.HydroxyEncoding;
 import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.parser.StudyResultCache;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
 import at.tugraz.genome.lda.swing.LipidomicsTableCellRenderer;
@@ -119,12 +120,13 @@ public class ExcelAndTextExporter extends LDAExporter
     HydroxyEncoding faEncoding = null;
     HydroxyEncoding lcbEncoding = null;
     for (String expId : expFullPaths.keySet()){
-      QuantificationResult result = LDAResultReader.readResultFile(expFullPaths.get(expId),  new Hashtable<String,Boolean>(), sheetName);
+      QuantificationResult result = StudyResultCache.getInstance().getResult(expFullPaths.get(expId),  new Hashtable<String,Boolean>(), sheetName);
       if (result.getFaHydroxyEncoding()!=null) faEncoding = result.getFaHydroxyEncoding();
       if (result.getLcbHydroxyEncoding()!=null) lcbEncoding = result.getLcbHydroxyEncoding();
       originalExcelResults.put(expId, result);
     }
     LinkedHashMap<String,Boolean> adductsSorted = extractAdductsSortedByAbundance(sheetName,originalExcelResults);
+    Hashtable<String,Hashtable<String,Vector<LipidParameterSet>>> speciesTable = createSpeciesTable(includeResultFiles,sheetName,originalExcelResults);
     
     //extract the values according to the molecular species
     boolean rtGroupingUsed = isRtGrouped;
@@ -141,7 +143,7 @@ public class ExcelAndTextExporter extends LDAExporter
           if (areaVO!=null){
             if (areaVO.isAStandard())
               rtGroupingUsed = false;
-            Hashtable<String,Vector<LipidParameterSet>> sets = getRelevantOriginalResults(originalExcelResults.get(expId).getIdentifications().get(sheetName),areaVO,false);
+            Hashtable<String,Vector<LipidParameterSet>> sets = getRelevantOriginalResults(speciesTable.get(expId),areaVO,false);
             relevantOriginals.put(expId, sets);
           }
         }
@@ -601,18 +603,51 @@ public class ExcelAndTextExporter extends LDAExporter
       String preferredUnit, String headerText, ExportOptionsVO expVO, ComparativeResultsLookup compLookup, ArrayList<String> modifications)
           throws ExportException,
       SpectrummillParserException, ExcelInputFileException, IOException, LipidCombinameEncodingException, RetentionTimeGroupingException{
+    OmegaSummaryVO summary = extractOmegaSummary(sheet.getSheetName(), includeResultFiles, speciesType, exportDoubleBondPositionsForClass, maxIsotope, molNames,
+        isRtGrouped, isGrouped, expIdNames, expNames, expFullPaths, expsOfGroup, results, preferredUnit, expVO, compLookup, modifications);
+    writeExcelSheetOmegaSummary(omegaCollector, sheet, workbook, out, summary);
+  }
+  
+  /**
+   * writes the omega summary of one analyte class, and adds its values to the class overarching OmegaCollector;
+   * this has to be called in the sequence of the classes
+   * @param omegaCollector the collector of the class overarching data
+   * @param sheet the sheet of the analyte class
+   * @param workbook the workbook to write to
+   * @param out the output stream
+   * @param summary the values extracted by extractOmegaSummary
+   * @throws IOException when there is a general IO problem
+   */
+  public static void writeExcelSheetOmegaSummary(OmegaCollector omegaCollector, Sheet sheet, XSSFWorkbook workbook, OutputStream out, OmegaSummaryVO summary)
+      throws IOException{
+    writeExcelSheetToFile(omegaCollector, sheet, workbook, out, summary.getMolSpeciesDetails(), summary.isGrouped(), summary.getExpIdNames(), summary.getExpNames(),
+        summary.getExpsOfGroup(), summary.getPreferredUnit(), summary.getExpVO(), summary.getModifications(), summary.getOmegaSuggestionAvailable());
+  }
+  
+  /**
+   * extracts the values of one analyte class for the omega summary; this method does not write anything,
+   * and may be called for several classes in parallel
+   * @return the extracted values together with the settings for writing them
+   */
+  public static OmegaSummaryVO extractOmegaSummary(String lClass, boolean includeResultFiles, short speciesType, boolean exportDoubleBondPositionsForClass, 
+      int maxIsotope, Vector<String> molNames, boolean isRtGrouped, boolean isGrouped, Vector<String> expIdNames, Hashtable<String,String> expNames, 
+      LinkedHashMap<String,String> expFullPaths, LinkedHashMap<String,Vector<String>> expsOfGroup, Hashtable<String,Hashtable<String,Vector<Double>>> results,
+      String preferredUnit, ExportOptionsVO expVO, ComparativeResultsLookup compLookup, ArrayList<String> modifications)
+          throws ExportException,
+      SpectrummillParserException, ExcelInputFileException, IOException, LipidCombinameEncodingException, RetentionTimeGroupingException{
 
     //first read the original Excel results of this analyte class
     Hashtable<String,QuantificationResult> originalExcelResults = new Hashtable<String,QuantificationResult>();
     HydroxyEncoding faEncoding = null;
     HydroxyEncoding lcbEncoding = null;
     for (String expId : expFullPaths.keySet()){
-      QuantificationResult result = LDAResultReader.readResultFile(expFullPaths.get(expId),  new Hashtable<String,Boolean>(), sheet.getSheetName());
+      QuantificationResult result = StudyResultCache.getInstance().getResult(expFullPaths.get(expId),  new Hashtable<String,Boolean>(), lClass);
       if (result.getFaHydroxyEncoding()!=null) faEncoding = result.getFaHydroxyEncoding();
       if (result.getLcbHydroxyEncoding()!=null) lcbEncoding = result.getLcbHydroxyEncoding();
       originalExcelResults.put(expId, result);
     }
-    LinkedHashMap<String,Boolean> adductsSorted = extractAdductsSortedByAbundance(sheet.getSheetName(),originalExcelResults);
+    LinkedHashMap<String,Boolean> adductsSorted = extractAdductsSortedByAbundance(lClass,originalExcelResults);
+    Hashtable<String,Hashtable<String,Vector<LipidParameterSet>>> speciesTable = createSpeciesTable(includeResultFiles,lClass,originalExcelResults);
 
     //extract the values according to the molecular species
     boolean rtGroupingUsed = isRtGrouped;
@@ -625,7 +660,7 @@ public class ExcelAndTextExporter extends LDAExporter
       if (includeResultFiles){
         relevantOriginals = new Hashtable<String,Hashtable<String,Vector<LipidParameterSet>>>();
         for (String expId : expFullPaths.keySet()){
-          ResultAreaVO areaVO = compLookup.getResultAreaVO(sheet.getSheetName(),molName,expId);
+          ResultAreaVO areaVO = compLookup.getResultAreaVO(lClass,molName,expId);
           for (String mod : modifications)
           {
           	if (areaVO == null) continue;
@@ -642,7 +677,7 @@ public class ExcelAndTextExporter extends LDAExporter
           if (areaVO!=null){
             if (areaVO.isAStandard())
               rtGroupingUsed = false;
-            Hashtable<String,Vector<LipidParameterSet>> sets = getRelevantOriginalResults(originalExcelResults.get(expId).getIdentifications().get(sheet.getSheetName()),areaVO,false);
+            Hashtable<String,Vector<LipidParameterSet>> sets = getRelevantOriginalResults(speciesTable.get(expId),areaVO,false);
             relevantOriginals.put(expId, sets);
           }
         }
@@ -653,7 +688,7 @@ public class ExcelAndTextExporter extends LDAExporter
         String id = "";
         //only for the classes overview, the name of the analyte class is not added
         if (includeResultFiles)
-          id += sheet.getSheetName()+" ";
+          id += lClass+" ";
         id += sumVO.getSpeciesId();
         if (sumVO.getMolecularId()!=null)
           id += " | "+sumVO.getMolecularId();
@@ -661,7 +696,24 @@ public class ExcelAndTextExporter extends LDAExporter
         omegaSuggestionAvailable.put(id, omegaSuggestionAvailable.get(molName));
       }
     }
-    writeExcelSheetToFile(omegaCollector, sheet,workbook,out,molSpeciesDetails, isGrouped, expIdNames, expNames, expsOfGroup, preferredUnit, expVO, modifications, omegaSuggestionAvailable);
+    return new OmegaSummaryVO(molSpeciesDetails, omegaSuggestionAvailable, isGrouped, expIdNames, expNames, expsOfGroup, preferredUnit, expVO, modifications);
+  }
+  
+  /**
+   * indexes the identifications of one analyte class of every experiment by the species name
+   * @param includeResultFiles if false, the original results are not used, and the table stays empty
+   * @param lClass the analyte class
+   * @param originalExcelResults the read LDA results; key: the experiment
+   * @return key: the experiment; value: the identifications indexed by LDAExporter.indexByNameWithoutRt
+   */
+  private static Hashtable<String,Hashtable<String,Vector<LipidParameterSet>>> createSpeciesTable(boolean includeResultFiles, String lClass,
+      Hashtable<String,QuantificationResult> originalExcelResults){
+    Hashtable<String,Hashtable<String,Vector<LipidParameterSet>>> speciesTable = new Hashtable<String,Hashtable<String,Vector<LipidParameterSet>>>();
+    if (!includeResultFiles)
+      return speciesTable;
+    for (String expId : originalExcelResults.keySet())
+      speciesTable.put(expId, indexByNameWithoutRt(originalExcelResults.get(expId).getIdentifications().get(lClass)));
+    return speciesTable;
   }
 
 
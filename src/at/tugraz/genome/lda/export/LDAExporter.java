@@ -98,6 +98,43 @@ public abstract class LDAExporter
   }
   
   
+  /**
+   * extracts original information that belongs exactly to one data point (rectangle) in the heat map out of indexed results
+   * @param indexedResults all detected results of a certain experiment and lipid class indexed by indexByNameWithoutRt
+   * @param areaVO the value object corresponding to one data point (rectangle) in the heat map
+   * @param msnOnly if true, only species verified by MSn evidence are exported
+   * @return the original information relevant to this one data point (rectangle)
+   */
+  protected static Hashtable<String,Vector<LipidParameterSet>> getRelevantOriginalResults(Hashtable<String,Vector<LipidParameterSet>> indexedResults,
+      ResultAreaVO areaVO, boolean msnOnly){
+    Vector<LipidParameterSet> ofSpecies = indexedResults.get(areaVO.getMoleculeNameWoRT().toLowerCase());
+    if (ofSpecies==null)
+      return new Hashtable<String,Vector<LipidParameterSet>>();
+    return getRelevantOriginalResults(ofSpecies, areaVO, msnOnly);
+  }
+  
+  /**
+   * indexes the detected results by the molecule name without retention time, so that the results of one data point
+   * (rectangle) in the heat map are found without going through all results of the lipid class
+   * @param all all detected results of a certain experiment and lipid class - may be null
+   * @return key: the molecule name without retention time in lower case; value: the results in their original sequence
+   */
+  protected static Hashtable<String,Vector<LipidParameterSet>> indexByNameWithoutRt(Vector<LipidParameterSet> all){
+    Hashtable<String,Vector<LipidParameterSet>> indexed = new Hashtable<String,Vector<LipidParameterSet>>();
+    if (all==null)
+      return indexed;
+    for (LipidParameterSet set : all){
+      String key = set.getNameStringWithoutRt().toLowerCase();
+      Vector<LipidParameterSet> ofSpecies = indexed.get(key);
+      if (ofSpecies==null){
+        ofSpecies = new Vector<LipidParameterSet>();
+        indexed.put(key, ofSpecies);
+      }
+      ofSpecies.add(set);
+    }
+    return indexed;
+  }
+  
   /**
    * checks whether this species is in vector (respects potential permutations)
    * @param species the species to check
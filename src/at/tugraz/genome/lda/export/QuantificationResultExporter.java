@@ -55,6 +55,7 @@ import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
 import at.tugraz.genome.lda.msn.vos.IntensityChainVO;
 import at.tugraz.genome.lda.msn.vos.IntensityPositionVO;
 import at.tugraz.genome.lda.msn.vos.IntensityRuleVO;
+import at.tugraz.genome.lda.parser.StudyResultCache;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
 import at.tugraz.genome.lda.utils.StaticUtils;
@@ -275,6 +276,8 @@ public class QuantificationResultExporter
 			Hashtable<String,Boolean> bestMatchBySpectrumCoverage)
 			throws ExportException
 	{
+		// a cached version of a previous result file must not be used any longer
+		StudyResultCache.getInstance().invalidate(filePath);
 
 		// remove oxLipids also identified as conventional lipids
 		ArrayList<LipidParameterSet> removeElements = new ArrayList<LipidParameterSet>();
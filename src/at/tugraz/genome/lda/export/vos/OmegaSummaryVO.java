@@ -0,0 +1,129 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.export.vos;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.vos.DoubleBondPositionVO;
+import at.tugraz.genome.lda.vos.ExportOptionsVO;
+
+/**
+ * The extracted values of one analyte class for the omega summary export, together with the settings for writing them;
+ * the extraction may be executed in parallel for several classes, while the sheets are written in sequence
+ */
+public class OmegaSummaryVO
+{
+  /** the details for every line; key: the line identifier*/
+  private LinkedHashMap<String,SummaryVO> molSpeciesDetails_;
+  /** the double bond position information found for the lines; key: the line identifier*/
+  private LinkedHashMap<String,Vector<DoubleBondPositionVO>> omegaSuggestionAvailable_;
+  /** true when sample groups are exported*/
+  private boolean isGrouped_;
+  /** the names of the experiments*/
+  private Vector<String> expIdNames_;
+  /** a lookup from the original names to the displayed ones in the heat map*/
+  private Hashtable<String,String> expNames_;
+  /** a sorted hash map containing the sample groups as key, and the abbreviated experiment names belonging to this group as values*/
+  private LinkedHashMap<String,Vector<String>> expsOfGroup_;
+  /** a description of the physical unit*/
+  private String preferredUnit_;
+  /** value object specifying which values shall be exported*/
+  private ExportOptionsVO expVO_;
+  /** the modifications for this analyte class*/
+  private ArrayList<String> modifications_;
+  
+  /**
+   * @param molSpeciesDetails the details for every line; key: the line identifier
+   * @param omegaSuggestionAvailable the double bond position information found for the lines; key: the line identifier
+   * @param isGrouped true when sample groups are exported
+   * @param expIdNames the names of the experiments
+   * @param expNames a lookup from the original names to the displayed ones in the heat map
+   * @param expsOfGroup a sorted hash map containing the sample groups as key, and the abbreviated experiment names belonging to this group as values
+   * @param preferredUnit a description of the physical unit
+   * @param expVO value object specifying which values shall be exported
+   * @param modifications the modifications for this analyte class
+   */
+  public OmegaSummaryVO(LinkedHashMap<String,SummaryVO> molSpeciesDetails, LinkedHashMap<String,Vector<DoubleBondPositionVO>> omegaSuggestionAvailable,
+      boolean isGrouped, Vector<String> expIdNames, Hashtable<String,String> expNames, LinkedHashMap<String,Vector<String>> expsOfGroup,
+      String preferredUnit, ExportOptionsVO expVO, ArrayList<String> modifications){
+    this.molSpeciesDetails_ = molSpeciesDetails;
+    this.omegaSuggestionAvailable_ = omegaSuggestionAvailable;
+    this.isGrouped_ = isGrouped;
+    this.expIdNames_ = expIdNames;
+    this.expNames_ = expNames;
+    this.expsOfGroup_ = expsOfGroup;
+    this.preferredUnit_ = preferredUnit;
+    this.expVO_ = expVO;
+    this.modifications_ = modifications;
+  }
+
+  public LinkedHashMap<String,SummaryVO> getMolSpeciesDetails()
+  {
+    return molSpeciesDetails_;
+  }
+
+  public LinkedHashMap<String,Vector<DoubleBondPositionVO>> getOmegaSuggestionAvailable()
+  {
+    return omegaSuggestionAvailable_;
+  }
+
+  public boolean isGrouped()
+  {
+    return isGrouped_;
+  }
+
+  public Vector<String> getExpIdNames()
+  {
+    return expIdNames_;
+  }
+
+  public Hashtable<String,String> getExpNames()
+  {
+    return expNames_;
+  }
+
+  public LinkedHashMap<String,Vector<String>> getExpsOfGroup()
+  {
+    return expsOfGroup_;
+  }
+
+  public String getPreferredUnit()
+  {
+    return preferredUnit_;
+  }
+
+  public ExportOptionsVO getExpVO()
+  {
+    return expVO_;
+  }
+
+  public ArrayList<String> getModifications()
+  {
+    return modifications_;
+  }
+  
+}
@@ -24,16 +24,19 @@
 package at.tugraz.genome.lda.masslist;
 
 import java.io.BufferedOutputStream;
-import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.JFrame;
 
@@ -41,6 +44,7 @@ import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
@@ -49,13 +53,10 @@ import at.tugraz.genome.lda.WarningMessage;
 import at.tugraz.genome.lda.exception.ChemicalFormulaException;
 import at.tugraz.genome.lda.exception.RulesException;
 import at.tugraz.genome.lda.exception.SheetNotPresentException;
-import at.tugraz.genome.lda.msn.parser.FALibParser;
-import at.tugraz.genome.lda.msn.parser.SPBLibParser;
-import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
+import at.tugraz.genome.lda.masslist.MassListSpeciesGenerator.MassListSpecies;
 import at.tugraz.genome.lda.utils.ExcelUtils;
 import at.tugraz.genome.lda.utils.StaticUtils;
 import at.tugraz.genome.lda.vos.AdductVO;
-import at.tugraz.genome.maspectras.parser.spectrummill.ElementConfigParser;
 
 /**
  * 
@@ -89,24 +90,49 @@ public class MassListExporter
   private final static int OPTIONS_ROW_LDA = 0;
   private final static int HEADER_ROW_LDA = 2;
   private final static int FIRST_VALUE_ROW_LDA = 3;
+  /** the number of rows kept in memory per sheet; the other rows are streamed to temporary files*/
+  private final static int ROWS_IN_MEMORY = 1000;
+  /** how many lipid classes per thread may be generated ahead of the one that is written*/
+  private final static int CLASSES_AHEAD_PER_THREAD = 2;
 	
 	private String outPath_;
 	private ArrayList<LipidClassVO> lipidClasses_;
 	private String exportIonMode_;
 	private String exportFormat_;
+	/** the number of threads generating the species of the lipid classes*/
+	private int numberOfThreads_;
 	
+	/**
+	 * @param outPath the path of the Excel file to write
+	 * @param lipidClasses the lipid classes to export
+	 * @param exportIonMode which adducts shall be exported (MassListCreatorPanel.EXPORT_OPTION_NEG, EXPORT_OPTION_POS, or EXPORT_OPTION_BOTH)
+	 * @param exportFormat the format of the mass list (MassListCreatorPanel.EXPORT_FORMAT_LDA, EXPORT_FORMAT_LONG_LIST, or EXPORT_FORMAT_SHORT_LIST)
+	 */
 	public MassListExporter(String outPath, ArrayList<LipidClassVO> lipidClasses, String exportIonMode, String exportFormat)
+	{
+		this(outPath, lipidClasses, exportIonMode, exportFormat, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param outPath the path of the Excel file to write
+	 * @param lipidClasses the lipid classes to export
+	 * @param exportIonMode which adducts shall be exported (MassListCreatorPanel.EXPORT_OPTION_NEG, EXPORT_OPTION_POS, or EXPORT_OPTION_BOTH)
+	 * @param exportFormat the format of the mass list (MassListCreatorPanel.EXPORT_FORMAT_LDA, EXPORT_FORMAT_LONG_LIST, or EXPORT_FORMAT_SHORT_LIST)
+	 * @param numberOfThreads the number of threads generating the species of the lipid classes
+	 */
+	public MassListExporter(String outPath, ArrayList<LipidClassVO> lipidClasses, String exportIonMode, String exportFormat, int numberOfThreads)
 	{
 		this.outPath_ = outPath;
 		this.lipidClasses_ = lipidClasses;
 		this.exportIonMode_ = exportIonMode;
 		this.exportFormat_ = exportFormat;
+		this.numberOfThreads_ = numberOfThreads;
 	}
 	
 	public void export()
 	{
-		try (	BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outPath_));
-				XSSFWorkbook workbook = new XSSFWorkbook();)
+		SXSSFWorkbook workbook = new SXSSFWorkbook(new XSSFWorkbook(), ROWS_IN_MEMORY);
+		try (	BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outPath_)))
 		{
 			if (exportFormat_.equals(MassListCreatorPanel.EXPORT_FORMAT_LDA))
 			{
@@ -127,136 +153,79 @@ public class MassListExporter
 		catch (IOException | RulesException | SheetNotPresentException | ChemicalFormulaException ex) {
 			new WarningMessage(new JFrame(), "Error", "The following error occurred during the export: "+ex.getMessage());
 		}
+		finally
+		{
+			//removes the temporary files of the streamed rows
+			workbook.dispose();
+		}
 	}
 	
 	
-	private void exportLongListFormat(XSSFWorkbook workbook) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+	private void exportLongListFormat(SXSSFWorkbook workbook) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
 	{
 		Sheet sheet = workbook.createSheet("Mass List");
-		XSSFCellStyle headerStyle = ExcelUtils.getMassListHeaderStyle(workbook);
+		XSSFCellStyle headerStyle = ExcelUtils.getMassListHeaderStyle(workbook.getXSSFWorkbook());
 		List<String> headerTitles = createCDHeaderTitles();
 		createHeader(0, sheet, headerTitles, headerStyle);
-		int rowCount = 0;
-		Row row;
-    Cell cell;
-		for (LipidClassVO lClassVO : lipidClasses_)
-		{
-			ArrayList<FattyAcidVO> chainsFA = new ArrayList<FattyAcidVO>();
-	  	ArrayList<FattyAcidVO> chainsLCB = new ArrayList<FattyAcidVO>();
-	    if (lClassVO.getNumberOfFAChains() > 0)
-	    {
-	    	FALibParser faParser = new FALibParser(lClassVO.getFAChainListPath());
-		    faParser.parseFile();
-	    	chainsFA = faParser.getFattyAcidSet(false); //do not include the oxstate, as that is currently buggy
-	    }
-	    if (lClassVO.getNumberOfLCBChains() > 0)
-	    {
-	    	SPBLibParser faParser = new SPBLibParser(new File(lClassVO.getLCBChainListPath()));
-		    faParser.parseFile();
-	    	chainsLCB = faParser.getFattyAcidSet(false); //do not include the oxstate, as that is currently buggy
-	    }
-			
-	    for (int i=lClassVO.getMinChainC(); i<=lClassVO.getMaxChainC(); i++)
+		int[] rowCount = new int[]{0};
+		generateSpecies(true, (lClassVO, generator, species) -> {
+			Row row;
+			Cell cell;
+			for (MassListSpecies spec : species)
 			{
-				for (int j=lClassVO.getMinChainDB(); j<=lClassVO.getMaxChainDB(); j++)
+				Hashtable<String,Integer> elements = generator.getElements(spec);
+				double massNeutral = generator.getNeutralMass(spec);
+				String speciesString = buildLipidSpeciesString(lClassVO, spec.getcAtoms(), spec.getDoubleBonds(), spec.getOhNumber());
+				String formula = StaticUtils.getFormulaInHillNotation(elements, false);
+				for (AdductVO adduct : lClassVO.getAdducts())
 				{
-					for (int k=lClassVO.getOhRangeFrom(); k<=lClassVO.getOhRangeTo(); k++)
+					if ( isAdductExport(adduct.getCharge()) )
 					{
-						ArrayList<ArrayList<FattyAcidVO>> filtered = getPossCombis(lClassVO.getNumberOfFAChains(),lClassVO.getNumberOfLCBChains(),i,j,k,
-								chainsFA,chainsLCB, new ArrayList<FattyAcidVO>()); 
-						if (filtered.isEmpty()) continue; //no combinations possible
-						
-						Hashtable<String,Hashtable<String,Integer>> prefixElements = new Hashtable<String,Hashtable<String,Integer>>();
-						prefixElements = computeElementsFromChains(prefixElements,lClassVO,filtered);
-						for (String label : prefixElements.keySet())
-	          {
-							Hashtable<String,Integer> elements = prefixElements.get(label);
-							double massNeutral = computeNeutralMass(elements);
-							for (AdductVO adduct : lClassVO.getAdducts())
-	            {
-	            	if ( isAdductExport(adduct.getCharge()) )
-								{
-	            		double massAdduct = computeAdductMass(massNeutral, adduct);
-	            		row = sheet.createRow(++rowCount);
-	            		cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_CLASS),HSSFCell.CELL_TYPE_STRING);
-	                cell.setCellValue(lClassVO.getLipidClass());
-	                cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_SPECIES),HSSFCell.CELL_TYPE_STRING);
-	                cell.setCellValue(buildLipidSpeciesString(lClassVO, i,j,k));
-	                cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_FORMULA),HSSFCell.CELL_TYPE_STRING);
-	                cell.setCellValue(StaticUtils.getFormulaInHillNotation(elements, false));
-	                cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_MASS_NEUTRAL),HSSFCell.CELL_TYPE_NUMERIC);
-	                cell.setCellValue(massNeutral);
-	                cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_ADDUCT_NAME),HSSFCell.CELL_TYPE_STRING);
-	                cell.setCellValue(adduct.getAdductName());
-	                cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_ADDUCT_FORMULA),HSSFCell.CELL_TYPE_STRING);
-	                cell.setCellValue(StaticUtils.getFormulaInHillNotation(computeAdductFormula(elements, adduct), false));
-	                cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_ADDUCT_MASS),HSSFCell.CELL_TYPE_NUMERIC);
-	                cell.setCellValue(massAdduct);
-								}
-	            }
-	          }
+						double massAdduct = computeAdductMass(massNeutral, adduct);
+						row = sheet.createRow(++rowCount[0]);
+						cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_CLASS),HSSFCell.CELL_TYPE_STRING);
+						cell.setCellValue(lClassVO.getLipidClass());
+						cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_SPECIES),HSSFCell.CELL_TYPE_STRING);
+						cell.setCellValue(speciesString);
+						cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_FORMULA),HSSFCell.CELL_TYPE_STRING);
+						cell.setCellValue(formula);
+						cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_MASS_NEUTRAL),HSSFCell.CELL_TYPE_NUMERIC);
+						cell.setCellValue(massNeutral);
+						cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_ADDUCT_NAME),HSSFCell.CELL_TYPE_STRING);
+						cell.setCellValue(adduct.getAdductName());
+						cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_ADDUCT_FORMULA),HSSFCell.CELL_TYPE_STRING);
+						cell.setCellValue(StaticUtils.getFormulaInHillNotation(computeAdductFormula(elements, adduct), false));
+						cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_ADDUCT_MASS),HSSFCell.CELL_TYPE_NUMERIC);
+						cell.setCellValue(massAdduct);
 					}
 				}
 			}
-		}
+		});
 	}
 	
-	private void exportShortListFormat(XSSFWorkbook workbook) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+	private void exportShortListFormat(SXSSFWorkbook workbook) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
 	{
 		Sheet sheet = workbook.createSheet("Mass List");
-		XSSFCellStyle headerStyle = ExcelUtils.getMassListHeaderStyle(workbook);
+		XSSFCellStyle headerStyle = ExcelUtils.getMassListHeaderStyle(workbook.getXSSFWorkbook());
 		List<String> headerTitles = createCDHeaderTitles();
 		createHeader(0, sheet, headerTitles, headerStyle);
-		int rowCount = 0;
-		Row row;
-    Cell cell;
-		for (LipidClassVO lClassVO : lipidClasses_)
-		{
-			ArrayList<FattyAcidVO> chainsFA = new ArrayList<FattyAcidVO>();
-	  	ArrayList<FattyAcidVO> chainsLCB = new ArrayList<FattyAcidVO>();
-	    if (lClassVO.getNumberOfFAChains() > 0)
-	    {
-	    	FALibParser faParser = new FALibParser(lClassVO.getFAChainListPath());
-		    faParser.parseFile();
-	    	chainsFA = faParser.getFattyAcidSet(false); //do not include the oxstate, as that is currently buggy
-	    }
-	    if (lClassVO.getNumberOfLCBChains() > 0)
-	    {
-	    	SPBLibParser faParser = new SPBLibParser(new File(lClassVO.getLCBChainListPath()));
-		    faParser.parseFile();
-	    	chainsLCB = faParser.getFattyAcidSet(false); //do not include the oxstate, as that is currently buggy
-	    }
-			
-	    for (int i=lClassVO.getMinChainC(); i<=lClassVO.getMaxChainC(); i++)
+		int[] rowCount = new int[]{0};
+		generateSpecies(true, (lClassVO, generator, species) -> {
+			Row row;
+			Cell cell;
+			for (MassListSpecies spec : species)
 			{
-				for (int j=lClassVO.getMinChainDB(); j<=lClassVO.getMaxChainDB(); j++)
-				{
-					for (int k=lClassVO.getOhRangeFrom(); k<=lClassVO.getOhRangeTo(); k++)
-					{
-						ArrayList<ArrayList<FattyAcidVO>> filtered = getPossCombis(lClassVO.getNumberOfFAChains(),lClassVO.getNumberOfLCBChains(),i,j,k,
-								chainsFA,chainsLCB, new ArrayList<FattyAcidVO>()); 
-						if (filtered.isEmpty()) continue; //no combinations possible
-						
-						Hashtable<String,Hashtable<String,Integer>> prefixElements = new Hashtable<String,Hashtable<String,Integer>>();
-						prefixElements = computeElementsFromChains(prefixElements,lClassVO,filtered);
-						for (String label : prefixElements.keySet())
-	          {
-							Hashtable<String,Integer> elements = prefixElements.get(label);
-							double massNeutral = computeNeutralMass(elements);
-							row = sheet.createRow(++rowCount);
-          		cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_CLASS),HSSFCell.CELL_TYPE_STRING);
-              cell.setCellValue(lClassVO.getLipidClass());
-              cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_SPECIES),HSSFCell.CELL_TYPE_STRING);
-              cell.setCellValue(buildLipidSpeciesString(lClassVO, i,j,k));
-              cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_FORMULA),HSSFCell.CELL_TYPE_STRING);
-              cell.setCellValue(StaticUtils.getFormulaInHillNotation(elements, false));
-              cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_MASS_NEUTRAL),HSSFCell.CELL_TYPE_NUMERIC);
-              cell.setCellValue(massNeutral);
-	          }
-					}
-				}
+				row = sheet.createRow(++rowCount[0]);
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_CLASS),HSSFCell.CELL_TYPE_STRING);
+				cell.setCellValue(lClassVO.getLipidClass());
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_SPECIES),HSSFCell.CELL_TYPE_STRING);
+				cell.setCellValue(buildLipidSpeciesString(lClassVO, spec.getcAtoms(), spec.getDoubleBonds(), spec.getOhNumber()));
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_FORMULA),HSSFCell.CELL_TYPE_STRING);
+				cell.setCellValue(StaticUtils.getFormulaInHillNotation(generator.getElements(spec), false));
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_CD_MASS_NEUTRAL),HSSFCell.CELL_TYPE_NUMERIC);
+				cell.setCellValue(generator.getNeutralMass(spec));
 			}
-		}
+		});
 	}
 	
 	private String buildLipidSpeciesString(LipidClassVO lClassVO, int cAtoms, int doubleBonds, int ohNumber)
@@ -274,89 +243,107 @@ public class MassListExporter
 		return String.format("%s %s:%s%s", lClassVO.getLipidClass(), cAtoms, doubleBonds, ohString);
 	}
 	
-	private void exportLDAFormat(XSSFWorkbook workbook) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+	private void exportLDAFormat(SXSSFWorkbook workbook) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
 	{
-		for (LipidClassVO lClassVO : lipidClasses_)
-		{
+		XSSFCellStyle headerStyle = ExcelUtils.getMassListHeaderStyle(workbook.getXSSFWorkbook());
+		generateSpecies(false, (lClassVO, generator, species) -> {
 			Sheet sheet = workbook.createSheet(lClassVO.getLipidClass());
-			
-			XSSFCellStyle headerStyle = ExcelUtils.getMassListHeaderStyle(workbook);
 			createHeader(OPTIONS_ROW_LDA, sheet, createLDAOptionsTitles(lClassVO), headerStyle);
 			List<String> headerTitles = createLDAHeaderTitles(lClassVO);
 			createHeader(HEADER_ROW_LDA, sheet, headerTitles, headerStyle);
-			
-	  	ArrayList<FattyAcidVO> chainsFA = new ArrayList<FattyAcidVO>();
-	  	ArrayList<FattyAcidVO> chainsLCB = new ArrayList<FattyAcidVO>();
-	    if (lClassVO.getNumberOfFAChains() > 0)
-	    {
-	    	FALibParser faParser = new FALibParser(lClassVO.getFAChainListPath());
-		    faParser.parseFile();
-	    	chainsFA = faParser.getFattyAcidSet(false); //do not include the oxstate, as that is currently buggy
-	    }
-	    if (lClassVO.getNumberOfLCBChains() > 0)
-	    {
-	    	SPBLibParser faParser = new SPBLibParser(new File(lClassVO.getLCBChainListPath()));
-		    faParser.parseFile();
-	    	chainsLCB = faParser.getFattyAcidSet(false); //do not include the oxstate, as that is currently buggy
-	    }
-	    
-	    String psmString = getPSMString(lClassVO);
-	    int rowCount = FIRST_VALUE_ROW_LDA;
+			String psmString = getPSMString(lClassVO);
+			int rowCount = FIRST_VALUE_ROW_LDA;
 			Row row;
-	    Cell cell;
-			for (int i=lClassVO.getMinChainC(); i<=lClassVO.getMaxChainC(); i++)
+			Cell cell;
+			for (MassListSpecies spec : species)
 			{
-				for (int j=lClassVO.getMinChainDB(); j<=lClassVO.getMaxChainDB(); j++)
+				row = sheet.createRow(rowCount);
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_NAME),HSSFCell.CELL_TYPE_STRING);
+				cell.setCellValue(spec.getLabel()+spec.getcAtoms());
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_COLON),HSSFCell.CELL_TYPE_STRING);
+				cell.setCellValue(":");
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_DBS),HSSFCell.CELL_TYPE_NUMERIC);
+				cell.setCellValue(spec.getDoubleBonds());
+				for (String element : determineLDAHeaderElements())
 				{
-					ArrayList<ArrayList<FattyAcidVO>> filtered = getPossCombis(lClassVO.getNumberOfFAChains(),lClassVO.getNumberOfLCBChains(),i,j,lClassVO.getOhNumber(),
-							chainsFA,chainsLCB, new ArrayList<FattyAcidVO>()); 
-					if (filtered.isEmpty()) continue; //no combinations possible
-					Hashtable<String,Hashtable<String,Integer>> prefixElements = new Hashtable<String,Hashtable<String,Integer>>();
-					prefixElements = computeElementsFromChains(prefixElements,lClassVO,filtered);
-					for (String label : prefixElements.keySet())
-          {
-						row = sheet.createRow(rowCount);
-          	Hashtable<String,Integer> elements = prefixElements.get(label);
-          	
-            cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_NAME),HSSFCell.CELL_TYPE_STRING);
-	          cell.setCellValue(label+i);
-	          cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_COLON),HSSFCell.CELL_TYPE_STRING);
-	          cell.setCellValue(":");
-	          cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_DBS),HSSFCell.CELL_TYPE_NUMERIC);
-	          cell.setCellValue(j);
-	          for (String element : determineLDAHeaderElements())
-	          {
-	          	cell = row.createCell(headerTitles.indexOf(element),HSSFCell.CELL_TYPE_NUMERIC);
-	          	if (!elements.containsKey(element))
-	          	{
-	          		cell.setCellValue(0);
-	          	}
-	          	else
-	          	{
-	          		cell.setCellValue(elements.get(element));
-	          	}
-	          }
-	          double massNeutral = computeNeutralMass(elements);
-	          cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_MASS_NEUTRAL),HSSFCell.CELL_TYPE_NUMERIC);
-	          cell.setCellValue(massNeutral);
-            for (AdductVO adduct : lClassVO.getAdducts())
-            {
-            	if ( isAdductExport(adduct.getCharge()) )
-							{
-            		double massAdduct = computeAdductMass(massNeutral, adduct);
-              	cell = row.createCell(headerTitles.indexOf(getAdductHeader(adduct)),HSSFCell.CELL_TYPE_NUMERIC);
-                cell.setCellValue(massAdduct);
-							}
-            }
-            cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_PSM),HSSFCell.CELL_TYPE_STRING);
-	          cell.setCellValue(psmString);
-            rowCount++;
-          }
+					cell = row.createCell(headerTitles.indexOf(element),HSSFCell.CELL_TYPE_NUMERIC);
+					cell.setCellValue(generator.getAmount(spec, element));
 				}
+				double massNeutral = generator.getNeutralMass(spec);
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_MASS_NEUTRAL),HSSFCell.CELL_TYPE_NUMERIC);
+				cell.setCellValue(massNeutral);
+				for (AdductVO adduct : lClassVO.getAdducts())
+				{
+					if ( isAdductExport(adduct.getCharge()) )
+					{
+						double massAdduct = computeAdductMass(massNeutral, adduct);
+						cell = row.createCell(headerTitles.indexOf(getAdductHeader(adduct)),HSSFCell.CELL_TYPE_NUMERIC);
+						cell.setCellValue(massAdduct);
+					}
+				}
+				cell = row.createCell(headerTitles.indexOf(MassListExporter.HEADER_PSM),HSSFCell.CELL_TYPE_STRING);
+				cell.setCellValue(psmString);
+				rowCount++;
 			}
+		});
+	}
+	
+	/**
+	 * generates the species of the lipid classes in parallel, and hands them over in the sequence of the lipid classes
+	 * @param useOhRange true if the species shall be generated for the OH range of the classes; false for the OH number of the classes
+	 * @param writer the receiver of the species
+	 * @throws IOException if a chain list cannot be read
+	 * @throws RulesException if a chain list contains invalid entries
+	 * @throws SheetNotPresentException if a sheet of a chain list is missing
+	 * @throws ChemicalFormulaException if a chemical formula cannot be decoded
+	 */
+	private void generateSpecies(boolean useOhRange, SpeciesWriter writer) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+	{
+		int threads = Math.max(1, Math.min(numberOfThreads_, lipidClasses_.size()));
+		ExecutorService threadpool = Executors.newFixedThreadPool(threads);
+		LinkedList<Future<ClassSpecies>> inFlight = new LinkedList<Future<ClassSpecies>>();
+		int nextToSubmit = 0;
+		try
+		{
+			for (int i=0; i!=lipidClasses_.size(); i++)
+			{
+				while (nextToSubmit<lipidClasses_.size() && inFlight.size()<threads*CLASSES_AHEAD_PER_THREAD)
+				{
+					inFlight.add(threadpool.submit(new SpeciesGeneration(lipidClasses_.get(nextToSubmit), useOhRange)));
+					nextToSubmit++;
+				}
+				ClassSpecies classSpecies = getClassSpecies(inFlight.removeFirst());
+				writer.write(classSpecies.lClassVO_, classSpecies.generator_, classSpecies.species_);
+			}
+		}
+		finally
+		{
+			threadpool.shutdownNow();
 		}
 	}
 	
+	private ClassSpecies getClassSpecies(Future<ClassSpecies> future) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException ix)
+		{
+			throw new IOException("The mass list export was interrupted!");
+		}
+		catch (ExecutionException ex)
+		{
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) throw (IOException)cause;
+			if (cause instanceof RulesException) throw (RulesException)cause;
+			if (cause instanceof SheetNotPresentException) throw (SheetNotPresentException)cause;
+			if (cause instanceof ChemicalFormulaException) throw (ChemicalFormulaException)cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof Error) throw (Error)cause;
+			throw new IOException(cause);
+		}
+	}
 	
 	private boolean isAdductExport(int charge)
 	{
@@ -389,131 +376,6 @@ public class MassListExporter
 		return builder.toString();
 	}
 	
-	private ArrayList<ArrayList<FattyAcidVO>> getPossCombis(int numberOfFAChains, int numberOfLCBChains, int cAtoms, int dbs, int oxNum, 
-			ArrayList<FattyAcidVO> fas, ArrayList<FattyAcidVO> lcbs, ArrayList<FattyAcidVO> added){
-		ArrayList<ArrayList<FattyAcidVO>> combis = new ArrayList<ArrayList<FattyAcidVO>>();
-		int totalChains = numberOfFAChains + numberOfLCBChains;
-		
-		ArrayList<FattyAcidVO> toIterate = fas;
-		int faMinus = 1;
-		int lcbMinus = 0;
-		if (numberOfFAChains == 0 && totalChains>0)
-		{
-			toIterate = lcbs;
-			faMinus = 0;
-			lcbMinus = 1;
-		}
-		
-		int maxC = checkMaxCAvailable(added, cAtoms);
-		int maxD = checkMaxDBAvailable(added, dbs);
-		int maxO = checkMaxOxAvailable(added, oxNum);
-		
-    for (FattyAcidVO fa : toIterate) {
-    	if (fa.getcAtoms()<=maxC && fa.getDoubleBonds()<=maxD && fa.getOhNumber()<=maxO)
-    	{
-    		ArrayList<FattyAcidVO> toAdd = new ArrayList<FattyAcidVO>(added);
-        toAdd.add(fa);
-        if (totalChains>1) {
-        	ArrayList<ArrayList<FattyAcidVO>> combis2 = getPossCombis(numberOfFAChains-faMinus, numberOfLCBChains-lcbMinus, cAtoms, dbs, oxNum, fas, lcbs, toAdd);
-          combis.addAll(combis2);
-        }else{
-          if (checkTotalCDbsOxValid(toAdd,cAtoms,dbs,oxNum)) {
-            combis.add(toAdd);
-          }
-        }
-    	}
-    }
-    return combis;
-  }
-	
-	private int checkMaxCAvailable(ArrayList<FattyAcidVO> added, int cAtoms)
-	{
-		int tot = cAtoms;
-    for (FattyAcidVO fa : added) {
-    	tot -= fa.getcAtoms();
-    }
-    return tot;
-	}
-	
-	private int checkMaxDBAvailable(ArrayList<FattyAcidVO> added, int dbs)
-	{
-		int tot = dbs;
-    for (FattyAcidVO fa : added) {
-    	tot -= fa.getDoubleBonds();
-    }
-    return tot;
-	}
-	
-	private int checkMaxOxAvailable(ArrayList<FattyAcidVO> added, int ox)
-	{
-		int tot = ox;
-    for (FattyAcidVO fa : added) {
-    	tot -= fa.getOhNumber();
-    }
-    return tot;
-	}
-	
-	private boolean checkTotalCDbsOxValid(ArrayList<FattyAcidVO> toAdd, int cAtoms, int dbs, int oxNum) {
-		int totC = 0;
-    int totD = 0;
-    int totO = 0;
-    for (FattyAcidVO fa : toAdd) {
-      totC += fa.getcAtoms();
-      totD += fa.getDoubleBonds();
-      totO += fa.getOhNumber();
-    }
-    return (totC==cAtoms && totD==dbs && totO==oxNum);
-  }
-	
-	/**
-	 * 
-	 * @param labelElements
-	 * @param fattyAcidC
-	 * @param dbs
-	 * @param lClassVO
-	 * @param filtered
-	 * @return
-	 * @throws ChemicalFormulaException
-	 */
-	private Hashtable<String,Hashtable<String,Integer>> computeElementsFromChains(Hashtable<String,Hashtable<String,Integer>>labelElements, 
-  		LipidClassVO lClassVO, ArrayList<ArrayList<FattyAcidVO>> filtered) throws ChemicalFormulaException
-  {
-		for (ArrayList<FattyAcidVO> comb : filtered)
-    {
-    	Vector<String> labels = new Vector<String>();
-    	Hashtable<String,Integer> combElements = new Hashtable<String,Integer>(lClassVO.getHeadgroupFormula());
-    	for (FattyAcidVO fa : comb) 
-    	{
-    		Hashtable<String,Integer> formula = StaticUtils.categorizeFormula(fa.getFormula(), true);
-    		for (String element : formula.keySet())
-    		{
-    			if (!combElements.containsKey(element))
-    			{
-    				combElements.put(element, 0);
-    			}
-    			combElements.put(element, combElements.get(element) + formula.get(element));
-    		}
-    		combElements.put("H", combElements.get("H")-1); //removing a hydrogen from each FA
-    		labels.add(fa.getPrefix());
-    	}
-    	Collections.sort(labels);
-    	StringBuilder builder = new StringBuilder();
-    	for (String label : labels) 
-  		{
-  			builder.append(label);
-  		}
-    	String labelID = builder.toString();
-    	//removing a hydroxy group for each FA chain that is esterified to an LCB chain (a hydrogen is already removed earlier)
-    	if (lClassVO.getNumberOfLCBChains()>0)
-    	{
-    		combElements.put("H", combElements.get("H")-lClassVO.getNumberOfFAChains());
-    		combElements.put("O", combElements.get("O")-lClassVO.getNumberOfFAChains());
-    	}
-    	labelElements.put(labelID, combElements);
-    }
-  	return labelElements;
-  }
-	
 	private Hashtable<String,Integer> computeAdductFormula(Hashtable<String,Integer> neutralElements, AdductVO adduct)
 	{
 		Hashtable<String,Integer> elements = new Hashtable<String,Integer>();
@@ -529,18 +391,6 @@ public class MassListExporter
 		return elements;
 	}
 	
-	private double computeNeutralMass(Hashtable<String,Integer> elements)
-	{
-		double neutralMass = 0.0;
-		ElementConfigParser parser = Settings.getElementParser();
-		
-		for (String element : elements.keySet())
-		{
-			neutralMass += parser.getElementDetails(element).getMonoMass()*elements.get(element);
-		}
-		return neutralMass;
-	}
-	
 	private double computeAdductMass(double neutralMass, AdductVO adduct)
 	{
 		double massAdduct = neutralMass;
@@ -658,6 +508,54 @@ public class MassListExporter
   	}
   }
 	
+	/**
+	 * receives the generated species of one lipid class
+	 */
+	private interface SpeciesWriter
+	{
+		public void write(LipidClassVO lClassVO, MassListSpeciesGenerator generator, ArrayList<MassListSpecies> species);
+	}
 	
+	/**
+	 * the generated species of one lipid class
+	 */
+	private static class ClassSpecies
+	{
+		private LipidClassVO lClassVO_;
+		private MassListSpeciesGenerator generator_;
+		private ArrayList<MassListSpecies> species_;
+		
+		private ClassSpecies(LipidClassVO lClassVO, MassListSpeciesGenerator generator, ArrayList<MassListSpecies> species)
+		{
+			this.lClassVO_ = lClassVO;
+			this.generator_ = generator;
+			this.species_ = species;
+		}
+	}
 	
+	/**
+	 * reads the chain lists of one lipid class and generates its species
+	 */
+	private class SpeciesGeneration implements Callable<ClassSpecies>
+	{
+		private LipidClassVO lClassVO_;
+		private boolean useOhRange_;
+		
+		private SpeciesGeneration(LipidClassVO lClassVO, boolean useOhRange)
+		{
+			this.lClassVO_ = lClassVO;
+			this.useOhRange_ = useOhRange;
+		}
+		
+		public ClassSpecies call() throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+		{
+			MassListSpeciesGenerator generator = new MassListSpeciesGenerator(lClassVO_);
+			ArrayList<MassListSpecies> species;
+			if (useOhRange_)
+				species = generator.generateSpecies(lClassVO_.getOhRangeFrom(), lClassVO_.getOhRangeTo());
+			else
+				species = generator.generateSpecies(lClassVO_.getOhNumber(), lClassVO_.getOhNumber());
+			return new ClassSpecies(lClassVO_, generator, species);
+		}
+	}
 }
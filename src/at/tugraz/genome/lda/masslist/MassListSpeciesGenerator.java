@@ -0,0 +1,382 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.masslist;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+import at.tugraz.genome.lda.Settings;
+import at.tugraz.genome.lda.exception.ChemicalFormulaException;
+import at.tugraz.genome.lda.exception.RulesException;
+import at.tugraz.genome.lda.exception.SheetNotPresentException;
+import at.tugraz.genome.lda.msn.parser.FALibParser;
+import at.tugraz.genome.lda.msn.parser.SPBLibParser;
+import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
+import at.tugraz.genome.lda.utils.StaticUtils;
+
+/**
+ * Generates the species of one lipid class for a mass list.
+ * The chain combinations are enumerated without permutations, and only one combination per label
+ * combination is kept; the elemental compositions are calculated on primitive element vectors.
+ * The species are delivered sorted by carbon atoms, double bonds, hydroxylation and label.
+ */
+public class MassListSpeciesGenerator
+{
+	private LipidClassVO lClassVO_;
+	/** the chemical elements of the vectors; the position corresponds to the position in the vectors*/
+	private String[] elements_;
+	/** the monoisotopic masses of the elements*/
+	private double[] monoMasses_;
+	/** the elemental composition of the head group*/
+	private int[] headgroup_;
+	/** the fatty acid chains*/
+	private ArrayList<ChainVector> fas_;
+	/** the long chain bases*/
+	private ArrayList<ChainVector> lcbs_;
+	/** the position of hydrogen in the vectors*/
+	private int hydrogen_;
+	/** the position of oxygen in the vectors*/
+	private int oxygen_;
+	
+	/**
+	 * reads the chain lists of the lipid class
+	 * @param lClassVO the lipid class
+	 * @throws IOException if a chain list cannot be read
+	 * @throws RulesException if a chain list contains invalid entries
+	 * @throws SheetNotPresentException if a sheet of a chain list is missing
+	 * @throws ChemicalFormulaException if a chemical formula cannot be decoded
+	 */
+	public MassListSpeciesGenerator(LipidClassVO lClassVO) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+	{
+		this(lClassVO, readFAChains(lClassVO), readLCBChains(lClassVO));
+	}
+	
+	/**
+	 * @param lClassVO the lipid class
+	 * @param chainsFA the fatty acid chains of the lipid class
+	 * @param chainsLCB the long chain bases of the lipid class
+	 * @throws ChemicalFormulaException if a chemical formula cannot be decoded
+	 */
+	MassListSpeciesGenerator(LipidClassVO lClassVO, ArrayList<FattyAcidVO> chainsFA, ArrayList<FattyAcidVO> chainsLCB) throws ChemicalFormulaException
+	{
+		this.lClassVO_ = lClassVO;
+		LinkedHashMap<String,Integer> positions = new LinkedHashMap<String,Integer>();
+		positions.put("H", 0);
+		positions.put("O", 1);
+		ArrayList<Hashtable<String,Integer>> faFormulas = categorizeChains(chainsFA, positions);
+		ArrayList<Hashtable<String,Integer>> lcbFormulas = categorizeChains(chainsLCB, positions);
+		for (String element : lClassVO.getHeadgroupFormula().keySet())
+		{
+			if (!positions.containsKey(element)) positions.put(element, positions.size());
+		}
+		elements_ = positions.keySet().toArray(new String[positions.size()]);
+		monoMasses_ = new double[elements_.length];
+		for (int i=0; i!=elements_.length; i++)
+		{
+			monoMasses_[i] = Settings.getElementParser().getElementDetails(elements_[i]).getMonoMass();
+		}
+		hydrogen_ = positions.get("H");
+		oxygen_ = positions.get("O");
+		headgroup_ = toVector(lClassVO.getHeadgroupFormula(), positions);
+		fas_ = toChainVectors(chainsFA, faFormulas, positions);
+		lcbs_ = toChainVectors(chainsLCB, lcbFormulas, positions);
+	}
+	
+	/**
+	 * generates the species of one carbon atom, double bond and hydroxylation combination
+	 * @param cAtoms the total number of carbon atoms of the chains
+	 * @param dbs the total number of double bonds of the chains
+	 * @param oxNum the total number of hydroxylations of the chains
+	 * @return the species sorted by their label; an empty list if there is no chain combination
+	 */
+	public ArrayList<MassListSpecies> generateSpecies(int cAtoms, int dbs, int oxNum)
+	{
+		TreeMap<String,int[]> labelElements = new TreeMap<String,int[]>();
+		int totalChains = lClassVO_.getNumberOfFAChains() + lClassVO_.getNumberOfLCBChains();
+		if (totalChains>0)
+		{
+			addCombinations(lClassVO_.getNumberOfFAChains(), lClassVO_.getNumberOfLCBChains(), 0, cAtoms, dbs, oxNum, new ChainVector[totalChains], 0, labelElements);
+		}
+		ArrayList<MassListSpecies> species = new ArrayList<MassListSpecies>();
+		for (String label : labelElements.keySet())
+		{
+			species.add(new MassListSpecies(label, cAtoms, dbs, oxNum, labelElements.get(label)));
+		}
+		return species;
+	}
+	
+	/**
+	 * generates all species of the lipid class within the carbon atom and double bond ranges
+	 * @param ohFrom the lowest total number of hydroxylations
+	 * @param ohTo the highest total number of hydroxylations
+	 * @return the species sorted by carbon atoms, double bonds, hydroxylation and label
+	 */
+	public ArrayList<MassListSpecies> generateSpecies(int ohFrom, int ohTo)
+	{
+		ArrayList<MassListSpecies> species = new ArrayList<MassListSpecies>();
+		for (int i=lClassVO_.getMinChainC(); i<=lClassVO_.getMaxChainC(); i++)
+		{
+			for (int j=lClassVO_.getMinChainDB(); j<=lClassVO_.getMaxChainDB(); j++)
+			{
+				for (int k=ohFrom; k<=ohTo; k++)
+				{
+					species.addAll(generateSpecies(i,j,k));
+				}
+			}
+		}
+		return species;
+	}
+	
+	/**
+	 * recursively adds the chain combinations; the fatty acids are added before the long chain bases, and within each group
+	 * the chains are added in the sequence of the chain list, so that permutations of a combination are not enumerated again
+	 * @param numberOfFAChains the number of fatty acid chains still to add
+	 * @param numberOfLCBChains the number of long chain bases still to add
+	 * @param start the position in the current chain list from where on chains may be added
+	 * @param cAtoms the remaining carbon atoms
+	 * @param dbs the remaining double bonds
+	 * @param oxNum the remaining hydroxylations
+	 * @param added the chains added so far
+	 * @param nrAdded the number of chains added so far
+	 * @param labelElements the elemental compositions of the found combinations; key: the sorted labels of the chains
+	 */
+	private void addCombinations(int numberOfFAChains, int numberOfLCBChains, int start, int cAtoms, int dbs, int oxNum, 
+			ChainVector[] added, int nrAdded, TreeMap<String,int[]> labelElements)
+	{
+		ArrayList<ChainVector> toIterate = fas_;
+		boolean lastFA = numberOfFAChains==1;
+		if (numberOfFAChains == 0)
+		{
+			toIterate = lcbs_;
+		}
+		for (int i=start; i<toIterate.size(); i++)
+		{
+			ChainVector chain = toIterate.get(i);
+			if (chain.cAtoms_>cAtoms || chain.dbs_>dbs || chain.ohNumber_>oxNum) continue;
+			added[nrAdded] = chain;
+			if (nrAdded+1<added.length)
+			{
+				if (numberOfFAChains>0)
+					addCombinations(numberOfFAChains-1, numberOfLCBChains, lastFA ? 0 : i, cAtoms-chain.cAtoms_, dbs-chain.dbs_, oxNum-chain.ohNumber_, added, nrAdded+1, labelElements);
+				else
+					addCombinations(0, numberOfLCBChains-1, i, cAtoms-chain.cAtoms_, dbs-chain.dbs_, oxNum-chain.ohNumber_, added, nrAdded+1, labelElements);
+			}
+			else if (chain.cAtoms_==cAtoms && chain.dbs_==dbs && chain.ohNumber_==oxNum)
+			{
+				addCombination(added, labelElements);
+			}
+		}
+	}
+	
+	/**
+	 * calculates the elemental composition of a chain combination and stores it under its label
+	 * @param combi the chains of the combination
+	 * @param labelElements the elemental compositions of the found combinations; key: the sorted labels of the chains
+	 */
+	private void addCombination(ChainVector[] combi, TreeMap<String,int[]> labelElements)
+	{
+		String[] labels = new String[combi.length];
+		for (int i=0; i!=combi.length; i++) labels[i] = combi[i].prefix_;
+		Arrays.sort(labels);
+		StringBuilder builder = new StringBuilder();
+		for (String label : labels) builder.append(label);
+		String labelID = builder.toString();
+		if (labelElements.containsKey(labelID)) return;
+		int[] elements = headgroup_.clone();
+		for (ChainVector chain : combi)
+		{
+			for (int i=0; i!=elements.length; i++) elements[i] += chain.elements_[i];
+		}
+		//removing a hydroxy group for each FA chain that is esterified to an LCB chain (a hydrogen is already removed for each chain)
+		if (lClassVO_.getNumberOfLCBChains()>0)
+		{
+			elements[hydrogen_] -= lClassVO_.getNumberOfFAChains();
+			elements[oxygen_] -= lClassVO_.getNumberOfFAChains();
+		}
+		labelElements.put(labelID, elements);
+	}
+	
+	/**
+	 * @param species a generated species
+	 * @return the elemental composition of the species; elements with an amount of zero are omitted
+	 */
+	public Hashtable<String,Integer> getElements(MassListSpecies species)
+	{
+		Hashtable<String,Integer> elements = new Hashtable<String,Integer>();
+		for (int i=0; i!=elements_.length; i++)
+		{
+			if (species.elements_[i]!=0) elements.put(elements_[i], species.elements_[i]);
+		}
+		return elements;
+	}
+	
+	/**
+	 * @param species a generated species
+	 * @param element a chemical element
+	 * @return the amount of the element in the species
+	 */
+	public int getAmount(MassListSpecies species, String element)
+	{
+		for (int i=0; i!=elements_.length; i++)
+		{
+			if (elements_[i].equals(element)) return species.elements_[i];
+		}
+		return 0;
+	}
+	
+	/**
+	 * @param species a generated species
+	 * @return the neutral monoisotopic mass of the species
+	 */
+	public double getNeutralMass(MassListSpecies species)
+	{
+		double neutralMass = 0.0;
+		for (int i=0; i!=elements_.length; i++) neutralMass += monoMasses_[i]*species.elements_[i];
+		return neutralMass;
+	}
+	
+	private static ArrayList<FattyAcidVO> readFAChains(LipidClassVO lClassVO) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+	{
+		if (lClassVO.getNumberOfFAChains() == 0) return new ArrayList<FattyAcidVO>();
+		FALibParser faParser = new FALibParser(lClassVO.getFAChainListPath());
+		faParser.parseFile();
+		return faParser.getFattyAcidSet(false); //do not include the oxstate, as that is currently buggy
+	}
+	
+	private static ArrayList<FattyAcidVO> readLCBChains(LipidClassVO lClassVO) throws IOException, RulesException, SheetNotPresentException, ChemicalFormulaException
+	{
+		if (lClassVO.getNumberOfLCBChains() == 0) return new ArrayList<FattyAcidVO>();
+		SPBLibParser faParser = new SPBLibParser(new File(lClassVO.getLCBChainListPath()));
+		faParser.parseFile();
+		return faParser.getFattyAcidSet(false); //do not include the oxstate, as that is currently buggy
+	}
+	
+	private static ArrayList<Hashtable<String,Integer>> categorizeChains(ArrayList<FattyAcidVO> chains, LinkedHashMap<String,Integer> positions) throws ChemicalFormulaException
+	{
+		ArrayList<Hashtable<String,Integer>> formulas = new ArrayList<Hashtable<String,Integer>>();
+		for (FattyAcidVO fa : chains)
+		{
+			Hashtable<String,Integer> formula = StaticUtils.categorizeFormula(fa.getFormula(), true);
+			for (String element : formula.keySet())
+			{
+				if (!positions.containsKey(element)) positions.put(element, positions.size());
+			}
+			formulas.add(formula);
+		}
+		return formulas;
+	}
+	
+	private static int[] toVector(Hashtable<String,Integer> formula, LinkedHashMap<String,Integer> positions)
+	{
+		int[] vector = new int[positions.size()];
+		for (String element : formula.keySet()) vector[positions.get(element)] += formula.get(element);
+		return vector;
+	}
+	
+	/**
+	 * @param chains the chains of a chain list
+	 * @param formulas the categorized formulas of the chains
+	 * @param positions the positions of the elements in the vectors
+	 * @return the chains with their elemental compositions, where one hydrogen is removed for the linkage
+	 */
+	private ArrayList<ChainVector> toChainVectors(ArrayList<FattyAcidVO> chains, ArrayList<Hashtable<String,Integer>> formulas, LinkedHashMap<String,Integer> positions)
+	{
+		ArrayList<ChainVector> vectors = new ArrayList<ChainVector>();
+		for (int i=0; i!=chains.size(); i++)
+		{
+			FattyAcidVO fa = chains.get(i);
+			int[] elements = toVector(formulas.get(i), positions);
+			elements[hydrogen_] -= 1; //removing a hydrogen from each FA
+			vectors.add(new ChainVector(fa.getPrefix(), fa.getcAtoms(), fa.getDoubleBonds(), fa.getOhNumber(), elements));
+		}
+		return vectors;
+	}
+	
+	/**
+	 * one chain of a chain list with its elemental composition
+	 */
+	private static class ChainVector
+	{
+		private String prefix_;
+		private int cAtoms_;
+		private int dbs_;
+		private int ohNumber_;
+		private int[] elements_;
+		
+		private ChainVector(String prefix, int cAtoms, int dbs, int ohNumber, int[] elements)
+		{
+			this.prefix_ = prefix;
+			this.cAtoms_ = cAtoms;
+			this.dbs_ = dbs;
+			this.ohNumber_ = ohNumber;
+			this.elements_ = elements;
+		}
+	}
+	
+	/**
+	 * one generated species of a mass list
+	 */
+	public static class MassListSpecies
+	{
+		private String label_;
+		private int cAtoms_;
+		private int dbs_;
+		private int ohNumber_;
+		private int[] elements_;
+		
+		private MassListSpecies(String label, int cAtoms, int dbs, int ohNumber, int[] elements)
+		{
+			this.label_ = label;
+			this.cAtoms_ = cAtoms;
+			this.dbs_ = dbs;
+			this.ohNumber_ = ohNumber;
+			this.elements_ = elements;
+		}
+
+		public String getLabel()
+		{
+			return label_;
+		}
+
+		public int getcAtoms()
+		{
+			return cAtoms_;
+		}
+
+		public int getDoubleBonds()
+		{
+			return dbs_;
+		}
+
+		public int getOhNumber()
+		{
+			return ohNumber_;
+		}
+	}
+}
@@ -397,5 +397,14 @@ public class FattyAcidsContainer
     checkIfFALibExists(libName,libDir);
     return instance_.availableLabels_.get(libName);
   }
+  
+  /**
+   * returns the file of a chain library in the current directory of the chain libraries
+   * @param libName name of the FA or LCB library
+   * @return the file of the library
+   */
+  public static File getLibraryFile(String libName){
+    return new File(faDir_,libName);
+  }
 
 }
@@ -36,6 +36,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.QuantificationSettings;
 import at.tugraz.genome.lda.Settings;
 import at.tugraz.genome.lda.exception.ChemicalFormulaException;
 import at.tugraz.genome.lda.exception.HydroxylationEncodingException;
@@ -119,6 +120,10 @@ public class FragmentCalculator
   private Hashtable<String,Integer> allowedLabelsInChains_;
   
   private String analyteOxState_;
+  /** shall the labels of the chains be checked for consistency*/
+  private final boolean checkChainLabelCombination_;
+  /** the table containing the fragments that were calculated before; null if the fragments shall always be calculated*/
+  private final FragmentTable fragmentTable_;
  
   /**
    * constructor requiring information about the MS1 analyte -
@@ -141,6 +146,62 @@ public class FragmentCalculator
    */
   public FragmentCalculator(String rulesDir, String className, String modName, String analyteName, String analyteFormula, String formulaWoDeducts,
       double precursorMz, int precursorCharge, int ohNumber, String analyteOxState) throws RulesException, NoRuleException, IOException, SpectrummillParserException, HydroxylationEncodingException, ChemicalFormulaException {
+    this(rulesDir,className,modName,analyteName,analyteFormula,formulaWoDeducts,precursorMz,precursorCharge,ohNumber,analyteOxState,
+        LipidomicsConstants.getQuantificationSettings());
+  }
+  
+  /**
+   * constructor requiring information about the MS1 analyte and the settings of the quantification job -
+   * fetch of rule information is immediately started
+   * @param rulesDir directory containing the fragmentation rules
+   * @param className name of the lipid class
+   * @param modName name of the adduct
+   * @param analyteName the name of the analyte - containing the number of C atoms and double bonds
+   * @param analyteFormula  chemical formula of the analyte (precursor)
+   * @param formulaWoDeducts chemical formula of the analyte (precursor), but modifications causing element reductions are not counted
+   * @param precursorMz m/z value of the precursor
+   * @param precursorCharge charge of the precursor
+   * @param ohNumber (total) number of hydroxylation sites present on the molecule
+   * @param analyteOxState the oxidation state of the analyte
+   * @param settings the settings of the quantification job
+   * @throws RulesException specifies in detail which rule has been infringed
+   * @throws NoRuleException thrown if the rules are not there
+   * @throws IOException exception if there is something wrong about the file
+   * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
+   * @throws HydroxylationEncodingException thrown if the encoding does not exist
+   * @throws ChemicalFormulaException thrown if there is something wrong with the formula
+   */
+  public FragmentCalculator(String rulesDir, String className, String modName, String analyteName, String analyteFormula, String formulaWoDeducts,
+      double precursorMz, int precursorCharge, int ohNumber, String analyteOxState, QuantificationSettings settings) throws RulesException, NoRuleException, IOException, SpectrummillParserException, HydroxylationEncodingException, ChemicalFormulaException {
+    this(rulesDir,className,modName,analyteName,analyteFormula,formulaWoDeducts,precursorMz,precursorCharge,ohNumber,analyteOxState,settings,null);
+  }
+  
+  /**
+   * constructor requiring information about the MS1 analyte, the settings of the quantification job, and the table of the precalculated fragments -
+   * fetch of rule information is immediately started
+   * @param rulesDir directory containing the fragmentation rules
+   * @param className name of the lipid class
+   * @param modName name of the adduct
+   * @param analyteName the name of the analyte - containing the number of C atoms and double bonds
+   * @param analyteFormula  chemical formula of the analyte (precursor)
+   * @param formulaWoDeducts chemical formula of the analyte (precursor), but modifications causing element reductions are not counted
+   * @param precursorMz m/z value of the precursor
+   * @param precursorCharge charge of the precursor
+   * @param ohNumber (total) number of hydroxylation sites present on the molecule
+   * @param analyteOxState the oxidation state of the analyte
+   * @param settings the settings of the quantification job
+   * @param fragmentTable the table of the fragments for the rules directory - the calculated fragments are added to it; null if the fragments shall always be calculated
+   * @throws RulesException specifies in detail which rule has been infringed
+   * @throws NoRuleException thrown if the rules are not there
+   * @throws IOException exception if there is something wrong about the file
+   * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
+   * @throws HydroxylationEncodingException thrown if the encoding does not exist
+   * @throws ChemicalFormulaException thrown if there is something wrong with the formula
+   */
+  public FragmentCalculator(String rulesDir, String className, String modName, String analyteName, String analyteFormula, String formulaWoDeducts,
+      double precursorMz, int precursorCharge, int ohNumber, String analyteOxState, QuantificationSettings settings, FragmentTable fragmentTable) throws RulesException, NoRuleException, IOException, SpectrummillParserException, HydroxylationEncodingException, ChemicalFormulaException {
+    this.checkChainLabelCombination_ = settings.checkChainLabelCombination();
+    this.fragmentTable_ = fragmentTable;
     this.rulesDir_ = rulesDir;
     this.ruleName_ = StaticUtils.getRuleName(className, modName);
     this.analyteName_ = analyteName;
@@ -184,7 +245,7 @@ public class FragmentCalculator
         if (amountOfChains >0) {
           int cAtoms = getIntValueFromParsingRule(RulesContainer.getCAtomsFromNamePattern(ruleName_,rulesDir_), analyteName_, ruleName_, FragRuleParser.GENERAL_CATOMS_PARSE);
           int dbs = getIntValueFromParsingRule(RulesContainer.getDoubleBondsFromNamePattern(ruleName_,rulesDir_), analyteName_, ruleName_, FragRuleParser.GENERAL_DBOND_PARSE);
-          if (LipidomicsConstants.checkChainLabelCombination()) {
+          if (checkChainLabelCombination_) {
             this.labelInName_ = this.analyteName_.substring(0,this.analyteName_.indexOf(String.valueOf(cAtoms)));
           }
         
@@ -494,6 +555,12 @@ public class FragmentCalculator
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public Hashtable<Boolean,Vector<FragmentVO>> getHeadFragments(int ohNumber) throws RulesException, NoRuleException, IOException, SpectrummillParserException{
+    String tableKey = null;
+    if (fragmentTable_!=null){
+      tableKey = FragmentTable.getHeadKey(ruleName_, analyteFormula_, precursorMz_, precursorCharge_, ohNumber);
+      Hashtable<Boolean,Vector<FragmentVO>> stored = fragmentTable_.getFragments(tableKey);
+      if (stored!=null) return stored;
+    }
     Hashtable<Boolean,Vector<FragmentVO>> allHeadFragments = new Hashtable<Boolean,Vector<FragmentVO>>();
     Vector<FragmentVO> mandatoryFragments = new Vector<FragmentVO>();
     Vector<FragmentVO> addFragments = new Vector<FragmentVO>();
@@ -511,6 +578,7 @@ public class FragmentCalculator
     
     allHeadFragments.put(true, mandatoryFragments);
     allHeadFragments.put(false, addFragments);
+    if (fragmentTable_!=null) fragmentTable_.putFragments(tableKey, allHeadFragments);
     return allHeadFragments;
   }
   
@@ -709,6 +777,13 @@ public class FragmentCalculator
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public Hashtable<Boolean,Vector<FragmentVO>> getChainFragments(FattyAcidVO chain) throws RulesException, NoRuleException, IOException, SpectrummillParserException{
+    String tableKey = null;
+    if (fragmentTable_!=null){
+      tableKey = FragmentTable.getChainKey(ruleName_, analyteFormula_, precursorMz_, precursorCharge_, chain.getChainType(), chain.getOhNumber(),
+          chain.getFormula(), chain.getMass());
+      Hashtable<Boolean,Vector<FragmentVO>> stored = fragmentTable_.getFragments(tableKey);
+      if (stored!=null) return stored;
+    }
     Hashtable<Boolean,Vector<FragmentVO>> chainFragments = new Hashtable<Boolean,Vector<FragmentVO>>();
     Vector<FragmentVO> mandatoryFragments = new Vector<FragmentVO>();
     Vector<FragmentVO> addFragments = new Vector<FragmentVO>();
@@ -725,6 +800,7 @@ public class FragmentCalculator
     }
     chainFragments.put(true, mandatoryFragments);
     chainFragments.put(false, addFragments);
+    if (fragmentTable_!=null) fragmentTable_.putFragments(tableKey, chainFragments);
     return chainFragments;
 
   }
@@ -790,7 +866,7 @@ public class FragmentCalculator
       }
       if (allFAsThere || (oneFAIsThere && singleChainIdentification)) {
         boolean labelingIsOK = true;
-        if (LipidomicsConstants.checkChainLabelCombination()) {
+        if (checkChainLabelCombination_) {
           labelsOfChains = new Hashtable<String,Integer>(labelsOfChainsBase);
           for (FattyAcidVO chain : chains){
             if (chain.getPrefix()!=null && chain.getPrefix().length()>0) {
@@ -967,7 +1043,7 @@ public class FragmentCalculator
       }
     }
     
-    if (LipidomicsConstants.checkChainLabelCombination()) 
+    if (checkChainLabelCombination_) 
     {
       for (String label : availableSingleLabels_) {
         allowedLabelsInChains_.put(label, 0);        
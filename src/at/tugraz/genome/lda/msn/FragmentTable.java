@@ -0,0 +1,498 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.msn;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import at.tugraz.genome.lda.Settings;
+import at.tugraz.genome.lda.msn.vos.FragmentVO;
+import at.tugraz.genome.lda.utils.GenerationalCacheFile;
+import at.tugraz.genome.lda.utils.StaticUtils;
+
+/**
+ * Table of the theoretical head group and chain fragments of the analytes of one mass list for one rules directory.
+ * The fragments depend only on the rules, the chemical formula and m/z value of the precursor, and the chains; thus, they are
+ * calculated once by the FragmentCalculator, and all quantification threads and the following files of a batch take them from the table.
+ * The table is stored in a compact binary file in the LDA user home directory, which is read with memory mapping in later runs;
+ * the entries are decoded from the mapped file only when they are requested. The mapping is released as soon as all entries are decoded,
+ * and when the table is evicted from memory. The identity of the table consists of the mass list, the rules directory passed by the caller,
+ * and the rule files - if one of them changes, a new table replaces the old one.
+ * Several processes may use the same table: a stored table is written to a new generation of the table file (see GenerationalCacheFile),
+ * and the entries of generations written by other processes in the meantime are merged; a generation is never overwritten.
+ */
+public class FragmentTable
+{
+  /** the directory in the LDA user home directory that contains the tables*/
+  private final static String TABLE_DIR_NAME = "fragmentTables";
+  /** the suffix of the table files*/
+  private final static String TABLE_FILE_SUFFIX = ".fragments";
+  /** the version of the format of the table files*/
+  private final static int TABLE_FILE_VERSION = 1;
+  /** the digest algorithm for the identity of the tables*/
+  private final static String DIGEST_ALGORITHM = "SHA-256";
+  /** the separator for the components of the keys*/
+  private final static String SEPARATOR = "|";
+  /** how many tables are kept in memory*/
+  private final static int MAX_TABLES_IN_MEMORY = 4;
+  
+  /** the tables in memory; key: the mass list and the rules directory*/
+  private static LinkedHashMap<String,FragmentTable> instances_ = new LinkedHashMap<String,FragmentTable>(16,0.75f,true){
+    private static final long serialVersionUID = 1L;
+
+    protected boolean removeEldestEntry(Map.Entry<String,FragmentTable> eldest){
+      if (size()<=MAX_TABLES_IN_MEMORY) return false;
+      eldest.getValue().releaseTableFile();
+      return true;
+    }
+  };
+  
+  /** the identity of the table*/
+  private String tableId_;
+  /** the generations of the table file; null if the table shall not be stored*/
+  private GenerationalCacheFile tableFile_;
+  /** the generation of the table file the entries were read from; a stored table gets the next generation*/
+  private int generation_;
+  /** the content of the table file; null if there is no file, or if it has been released*/
+  private ByteBuffer mapped_;
+  /** the positions of the entries in the table file that are not decoded yet; key: the key of the entry*/
+  private HashMap<String,Integer> positions_;
+  /** the decoded and the calculated entries; key: the key of the entry*/
+  private ConcurrentHashMap<String,FragmentEntry> entries_;
+  /** are there calculated entries that have not been stored in the table file*/
+  private volatile boolean modified_;
+  
+  /**
+   * constructor for a table that is not stored
+   */
+  public FragmentTable(){
+    this(null,null);
+  }
+  
+  /**
+   * @param tableId the identity of the table
+   * @param tableDir the directory the table file is stored in; null if the table shall not be stored
+   */
+  private FragmentTable(String tableId, File tableDir){
+    this.tableId_ = tableId;
+    this.tableFile_ = tableDir!=null ? new GenerationalCacheFile(tableDir,tableId,TABLE_FILE_SUFFIX) : null;
+    this.generation_ = 0;
+    this.mapped_ = null;
+    this.positions_ = new HashMap<String,Integer>();
+    this.entries_ = new ConcurrentHashMap<String,FragmentEntry>();
+    this.modified_ = false;
+    if (tableFile_!=null) readTable();
+  }
+  
+  /**
+   * returns the table for a mass list and a rules directory; the table is read from its file if it was stored before.
+   * If the mass list or the rule files have changed, the table of the previous identity is released.
+   * @param massListPath the path to the mass list
+   * @param rulesDir the directory containing the fragmentation rules of the quantification
+   * @return the table for the mass list and the rules directory
+   */
+  public static FragmentTable getInstance(String massListPath, String rulesDir){
+    return getInstance(massListPath, rulesDir, new File(Settings.getLdaUserHomePath(),TABLE_DIR_NAME));
+  }
+  
+  /**
+   * returns the table for a mass list and a rules directory
+   * @param massListPath the path to the mass list
+   * @param rulesDir the directory containing the fragmentation rules of the quantification
+   * @param tableDir the directory the table files are stored in
+   * @return the table for the mass list and the rules directory
+   */
+  static synchronized FragmentTable getInstance(String massListPath, String rulesDir, File tableDir){
+    String tableId = null;
+    try{
+      tableId = createTableId(massListPath, rulesDir);
+    } catch (IOException iox){
+      //without the identity of the table, the table is not stored
+      return new FragmentTable();
+    }
+    String instanceKey = new File(massListPath).getAbsolutePath()+SEPARATOR+new File(rulesDir).getAbsolutePath();
+    FragmentTable table = instances_.get(instanceKey);
+    if (table==null || !table.tableId_.equals(tableId)){
+      if (table!=null) table.releaseTableFile();
+      table = new FragmentTable(tableId,tableDir);
+      instances_.put(instanceKey, table);
+    }
+    return table;
+  }
+  
+  /**
+   * @param ruleName the name of the rule (lipid class and adduct)
+   * @param analyteFormula the chemical formula of the precursor
+   * @param precursorMz the m/z value of the precursor
+   * @param precursorCharge the charge of the precursor
+   * @param ohNumber the degree of hydroxylation
+   * @return the key for the head group fragments of a precursor
+   */
+  public static String getHeadKey(String ruleName, String analyteFormula, double precursorMz, int precursorCharge, int ohNumber){
+    return ruleName+SEPARATOR+analyteFormula+SEPARATOR+precursorMz+SEPARATOR+precursorCharge+SEPARATOR+ohNumber;
+  }
+  
+  /**
+   * @param ruleName the name of the rule (lipid class and adduct)
+   * @param analyteFormula the chemical formula of the precursor
+   * @param precursorMz the m/z value of the precursor
+   * @param precursorCharge the charge of the precursor
+   * @param chainType the type of the chain
+   * @param ohNumber the number of hydroxylation sites of the chain
+   * @param chainFormula the chemical formula of the chain
+   * @param chainMass the mass of the chain
+   * @return the key for the fragments of one chain of a precursor
+   */
+  public static String getChainKey(String ruleName, String analyteFormula, double precursorMz, int precursorCharge, short chainType, int ohNumber,
+      String chainFormula, double chainMass){
+    return ruleName+SEPARATOR+analyteFormula+SEPARATOR+precursorMz+SEPARATOR+precursorCharge+SEPARATOR+chainType+SEPARATOR+ohNumber+
+        SEPARATOR+chainFormula+SEPARATOR+chainMass;
+  }
+  
+  /**
+   * @param key the key of the fragments
+   * @return the fragments - first key: are these fragments mandatory; null if the fragments are not in the table
+   */
+  public Hashtable<Boolean,Vector<FragmentVO>> getFragments(String key){
+    FragmentEntry entry = entries_.get(key);
+    if (entry==null){
+      entry = decodeEntry(key);
+      if (entry==null) return null;
+    }
+    return entry.toHashtable();
+  }
+  
+  /**
+   * adds calculated fragments to the table
+   * @param key the key of the fragments
+   * @param fragments the fragments - first key: are these fragments mandatory
+   */
+  public synchronized void putFragments(String key, Hashtable<Boolean,Vector<FragmentVO>> fragments){
+    FragmentEntry entry = new FragmentEntry(fragments.get(true).toArray(new FragmentVO[0]),fragments.get(false).toArray(new FragmentVO[0]));
+    if (entries_.putIfAbsent(key, entry)!=null) return;
+    //an entry of the table file that has not been decoded yet does not have to be stored again
+    if (positions_.remove(key)==null) modified_ = true;
+    else if (positions_.isEmpty()) mapped_ = null;
+  }
+  
+  /**
+   * 
+   * @return the number of entries of the table
+   */
+  public synchronized int size(){
+    return positions_.size()+entries_.size();
+  }
+  
+  /**
+   * 
+   * @return true if the table file is still mapped
+   */
+  synchronized boolean isTableFileMapped(){
+    return mapped_!=null;
+  }
+  
+  /**
+   * stores the table in a new generation of the table file, if there are new entries. A new file is written instead of
+   * replacing the old one, since the old one might still be mapped. If other processes have stored newer generations
+   * in the meantime, their entries are merged before the next generation is written.
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized void store() throws IOException{
+    if (tableFile_==null || !modified_) return;
+    decodeAllEntries();
+    TableContent content = new TableContent();
+    generation_ = tableFile_.store(generation_, content);
+    //other threads might have added entries in the meantime
+    modified_ = entries_.size()>content.written_;
+  }
+  
+  /**
+   * reads the newest generation of the table file; the file is ignored if it cannot be read.
+   * The older generations are not removed, since other processes might still use them.
+   */
+  private void readTable(){
+    int newest = tableFile_.getNewestGeneration();
+    if (newest==0) return;
+    generation_ = newest;
+    try{
+      ByteBuffer mapped = mapTableFile(tableFile_.getFile(newest));
+      HashMap<String,Integer> positions = readPositions(mapped);
+      if (positions==null) return;
+      positions_ = positions;
+      mapped_ = mapped;
+    } catch (IOException | RuntimeException ex){
+      //an unreadable table is calculated again
+      positions_ = new HashMap<String,Integer>();
+      mapped_ = null;
+    }
+  }
+  
+  /**
+   * adds the entries of a generation written by another process that are not present in this table; the generation is read
+   * into the heap, since all of its entries are decoded at once
+   * @param file the file of the generation
+   */
+  private void mergeTable(File file){
+    try{
+      ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      HashMap<String,Integer> positions = readPositions(content);
+      if (positions==null) return;
+      for (String key : positions.keySet()){
+        if (entries_.containsKey(key)) continue;
+        ByteBuffer buffer = content.duplicate();
+        buffer.position(positions.get(key));
+        entries_.putIfAbsent(key, FragmentEntry.read(buffer));
+      }
+    } catch (IOException | RuntimeException ex){
+      //an unreadable generation is replaced by the next one
+    }
+  }
+  
+  /**
+   * decodes the entries that are still in the mapped table file, and releases the mapping
+   */
+  private synchronized void decodeAllEntries(){
+    for (String key : new ArrayList<String>(positions_.keySet())) decodeEntry(key);
+    releaseTableFile();
+  }
+  
+  /**
+   * releases the mapped table file; the entries that have not been decoded yet are calculated again when they are requested,
+   * and they are merged from the table file again when the table is stored
+   */
+  private synchronized void releaseTableFile(){
+    if (!positions_.isEmpty()) generation_ = 0;
+    mapped_ = null;
+    positions_ = new HashMap<String,Integer>();
+  }
+  
+  /**
+   * @param file the file of a generation
+   * @return the content of the table file, mapped read-only
+   * @throws IOException if the file cannot be read
+   */
+  private ByteBuffer mapTableFile(File file) throws IOException{
+    try (RandomAccessFile raf = new RandomAccessFile(file,"r"); FileChannel channel = raf.getChannel()){
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+  
+  /**
+   * @param mapped the content of a table file
+   * @return the positions of the entries in the table file; null if the file is of another version or table
+   */
+  private HashMap<String,Integer> readPositions(ByteBuffer mapped){
+    if (mapped.getInt()!=TABLE_FILE_VERSION || !tableId_.equals(readString(mapped))) return null;
+    HashMap<String,Integer> positions = new HashMap<String,Integer>();
+    int size = mapped.getInt();
+    for (int i=0; i!=size; i++){
+      String key = readString(mapped);
+      positions.put(key, mapped.position());
+      FragmentEntry.skip(mapped);
+    }
+    return positions;
+  }
+  
+  /**
+   * decodes an entry from the mapped table file; the entry is removed from the positions, since it is in the decoded entries afterwards
+   * @param key the key of the entry
+   * @return the decoded entry; null if the entry is not in the mapped table file
+   */
+  private synchronized FragmentEntry decodeEntry(String key){
+    FragmentEntry entry = entries_.get(key);
+    if (entry!=null) return entry;
+    Integer position = positions_.get(key);
+    if (position==null) return null;
+    ByteBuffer buffer = mapped_.duplicate();
+    buffer.position(position);
+    entry = FragmentEntry.read(buffer);
+    entries_.put(key, entry);
+    positions_.remove(key);
+    if (positions_.isEmpty()) mapped_ = null;
+    return entry;
+  }
+  
+  /**
+   * creates the identity of a table; it consists of the path, the length and the modification time of the mass list,
+   * and of the rule files and the element configuration
+   * @param massListPath the path to the mass list
+   * @param rulesDir the directory containing the fragmentation rules
+   * @return the identity of the table
+   * @throws IOException if there is no rules directory, or if it cannot be read
+   */
+  private static String createTableId(String massListPath, String rulesDir) throws IOException{
+    if (rulesDir==null || rulesDir.length()==0) throw new IOException("There is no rules directory for the fragment table!");
+    StringBuilder input = new StringBuilder();
+    appendFileId(input,new File(massListPath));
+    appendFileId(input,new File(rulesDir));
+    File[] ruleFiles = new File(rulesDir).listFiles();
+    if (ruleFiles==null) throw new IOException("The rules directory "+rulesDir+" cannot be read!");
+    Arrays.sort(ruleFiles);
+    for (File ruleFile : ruleFiles){
+      if (ruleFile.getName().endsWith(StaticUtils.RULE_FILE_SUFFIX)) appendFileId(input,ruleFile);
+    }
+    appendFileId(input,new File(Settings.getElementConfigPath()));
+    try{
+      byte[] hash = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(input.toString().getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : hash) hex.append(String.format("%02x", b));
+      return hex.toString();
+    } catch (NoSuchAlgorithmException nsx){
+      //every Java platform has to support SHA-256
+      throw new IllegalStateException(nsx);
+    }
+  }
+  
+  private static void appendFileId(StringBuilder input, File file){
+    input.append(file.getAbsolutePath()).append(SEPARATOR).append(file.length()).append(SEPARATOR).append(file.lastModified()).append(SEPARATOR);
+  }
+  
+  private static void writeString(DataOutputStream out, String value) throws IOException{
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+  
+  private static String readString(ByteBuffer buffer){
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes,StandardCharsets.UTF_8);
+  }
+  
+  /**
+   * the entries of the table as content of a generation of the table file
+   */
+  private class TableContent implements GenerationalCacheFile.CacheContent
+  {
+    /** the number of entries that were written to the last generation*/
+    private int written_;
+    
+    public void merge(File file){
+      mergeTable(file);
+    }
+    
+    public void write(DataOutputStream out) throws IOException{
+      //other threads might add entries in the meantime
+      ArrayList<String> keys = new ArrayList<String>(entries_.keySet());
+      out.writeInt(TABLE_FILE_VERSION);
+      writeString(out,tableId_);
+      out.writeInt(keys.size());
+      for (String key : keys){
+        writeString(out,key);
+        entries_.get(key).write(out);
+      }
+      written_ = keys.size();
+    }
+  }
+  
+  /**
+   * the mandatory and the additional fragments of one head group or chain
+   */
+  private static class FragmentEntry{
+    private FragmentVO[] mandatory_;
+    private FragmentVO[] additional_;
+    
+    private FragmentEntry(FragmentVO[] mandatory, FragmentVO[] additional){
+      this.mandatory_ = mandatory;
+      this.additional_ = additional;
+    }
+    
+    /**
+     * @return the fragments in the format of the FragmentCalculator - the vectors are new ones for each call
+     */
+    private Hashtable<Boolean,Vector<FragmentVO>> toHashtable(){
+      Hashtable<Boolean,Vector<FragmentVO>> fragments = new Hashtable<Boolean,Vector<FragmentVO>>();
+      fragments.put(true, new Vector<FragmentVO>(Arrays.asList(mandatory_)));
+      fragments.put(false, new Vector<FragmentVO>(Arrays.asList(additional_)));
+      return fragments;
+    }
+    
+    private void write(DataOutputStream out) throws IOException{
+      //the length of the entry allows to skip it when the positions are read
+      int length = 8;
+      for (FragmentVO frag : mandatory_) length += getLength(frag);
+      for (FragmentVO frag : additional_) length += getLength(frag);
+      out.writeInt(length);
+      out.writeInt(mandatory_.length);
+      for (FragmentVO frag : mandatory_) write(out,frag);
+      out.writeInt(additional_.length);
+      for (FragmentVO frag : additional_) write(out,frag);
+    }
+    
+    private static int getLength(FragmentVO frag){
+      return 4+frag.getName().getBytes(StandardCharsets.UTF_8).length+8+4+frag.getFormula().getBytes(StandardCharsets.UTF_8).length+4+4+2+2;
+    }
+    
+    private static void write(DataOutputStream out, FragmentVO frag) throws IOException{
+      writeString(out,frag.getName());
+      out.writeDouble(frag.getMass());
+      writeString(out,frag.getFormula());
+      out.writeInt(frag.getCharge());
+      out.writeInt(frag.getMsLevel());
+      out.writeShort(frag.isMandatory());
+      out.writeShort(frag.getChainType());
+    }
+    
+    private static void skip(ByteBuffer buffer){
+      int length = buffer.getInt();
+      buffer.position(buffer.position()+length);
+    }
+    
+    private static FragmentEntry read(ByteBuffer buffer){
+      buffer.getInt();
+      FragmentVO[] mandatory = new FragmentVO[buffer.getInt()];
+      for (int i=0; i!=mandatory.length; i++) mandatory[i] = readFragment(buffer);
+      FragmentVO[] additional = new FragmentVO[buffer.getInt()];
+      for (int i=0; i!=additional.length; i++) additional[i] = readFragment(buffer);
+      return new FragmentEntry(mandatory,additional);
+    }
+    
+    private static FragmentVO readFragment(ByteBuffer buffer){
+      String name = readString(buffer);
+      double mass = buffer.getDouble();
+      String formula = readString(buffer);
+      int charge = buffer.getInt();
+      int msLevel = buffer.getInt();
+      short mandatory = buffer.getShort();
+      short chainType = buffer.getShort();
+      return new FragmentVO(name,mass,formula,charge,msLevel,mandatory,chainType);
+    }
+  }
+}
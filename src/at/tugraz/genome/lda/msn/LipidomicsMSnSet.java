@@ -745,6 +745,24 @@ public class LipidomicsMSnSet extends LipidParameterSet
     return status_;
   }
   
+  /**
+   * 
+   * @return at how many positions the fatty acids may be assigned
+   */
+  public int getNumberOfPositions()
+  {
+    return numberOfPositions_;
+  }
+  
+  /**
+   * 
+   * @return the found values for the base peak; key: MS-level
+   */
+  public Hashtable<Integer,Float> getBasePeakValues()
+  {
+    return basePeakValues_;
+  }
+  
   
   /**
    * @return the retention times of the used MSn spectra; the first key is the msLevel; second key scan number; value: retention time
@@ -38,6 +38,7 @@ import java.util.Vector;
 
 import at.tugraz.genome.dbutilities.Base64;
 import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.QuantificationSettings;
 import at.tugraz.genome.lda.Settings;
 import at.tugraz.genome.lda.alex123.vos.TargetlistEntry;
 import at.tugraz.genome.lda.exception.ChemicalFormulaException;
@@ -54,6 +55,7 @@ import at.tugraz.genome.lda.msn.vos.IntensityRuleVO;
 import at.tugraz.genome.lda.msn.vos.MSnDebugVO;
 import at.tugraz.genome.lda.msn.vos.SharedMS1PeakVO;
 import at.tugraz.genome.lda.msn.vos.SharedPeakContributionVO;
+import at.tugraz.genome.lda.profiling.PipelineMetrics;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.LipidomicsAnalyzer;
 import at.tugraz.genome.lda.quantification.LipidomicsChromatogram;
@@ -95,6 +97,10 @@ public class MSnAnalyzer
   /** object that holds MS data and can quantify fragments of interest 
    * at the end of the analysis, the MSn information is transferred to this object */
   private LipidomicsAnalyzer analyzer_;
+  /** the settings of the quantification job*/
+  private QuantificationSettings settings_;
+  /** the table of the precalculated fragments of the mass list; null if the fragments shall always be calculated*/
+  private FragmentTable fragmentTable_;
   /** if true, stores the details why a class, chain, etc. was abandoned */
   private boolean debug_;
   /** the achieved status by MSn checks */
@@ -238,7 +244,7 @@ public class MSnAnalyzer
         //This is checking if there exist any rules - used only for definition of a base peak cutoff!!!! - I am not sure if I should remove this
         try{
           fragCalc_ = new FragmentCalculator(rulesDir_,className_,modName_,set_.getNameStringWithoutRt(),set_.getChemicalFormula(),
-              set_.getChemicalFormulaWODeducts(),set_.Mz[0],set_.getCharge(),set_.getOhNumber(),quantVO.getOxState());          
+              set_.getChemicalFormulaWODeducts(),set_.Mz[0],set_.getCharge(),set_.getOhNumber(),quantVO.getOxState(),settings_,fragmentTable_);          
         } catch (NoRuleException nrx){
         }
         this.checkMSnByAlexFragments((TargetlistEntry)quantVO,msLevels_);
@@ -250,7 +256,7 @@ public class MSnAnalyzer
 	    		oxState = set.getOxState();
 	
 	    	fragCalc_ = new FragmentCalculator(rulesDir_,className_,modName_,set_.getNameStringWithoutRt(),set_.getChemicalFormula(),
-	            set_.getChemicalFormulaWODeducts(),set_.Mz[0],set_.getCharge(),set_.getOhNumber(),oxState);
+	            set_.getChemicalFormulaWODeducts(),set_.Mz[0],set_.getCharge(),set_.getOhNumber(),oxState,settings_,fragmentTable_);
 	        this.checkMSnEvidence(msLevels_);
       }
       transferResultsToLipidParameterSet();
@@ -280,8 +286,10 @@ public class MSnAnalyzer
     this.className_ = className;
     this.modName_ = modName;
     this.status_ = LipidomicsMSnSet.NO_MSN_PRESENT;
-    this.relativeChainCutoff_ = LipidomicsConstants.getChainCutoffValue();
     analyzer_ = analyzer;
+    this.settings_ = analyzer!=null ? analyzer.getSettings() : LipidomicsConstants.getQuantificationSettings();
+    this.fragmentTable_ = analyzer!=null ? analyzer.getFragmentTable() : null;
+    this.relativeChainCutoff_ = settings_.getChainCutoffValue();
     this.ignoreAbsolute_ = ignoreAbsolute;
   }
   
@@ -340,7 +348,7 @@ public class MSnAnalyzer
         return;
       }
       fragCalc_ = new FragmentCalculator(rulesDir_,className_,modName_,set_.getNameStringWithoutRt(),set_.getChemicalFormula(),set_.getChemicalFormulaWODeducts(),
-          set_.Mz[0],set_.getCharge(),set_.getOhNumber(),set_.getOxState());
+          set_.Mz[0],set_.getCharge(),set_.getOhNumber(),set_.getOxState(),settings_,fragmentTable_);
       Vector<Range> ranges = analyzer_.findSingleSpectraRanges(fragCalc_.getSpectrumLevelRange());
       if (ranges.size()>0) this.msnSpectraPresent_ = false;
       for (Range range : ranges){
@@ -354,8 +362,8 @@ public class MSnAnalyzer
         probe.LowerValley = range.getStart();
         probe.UpperValley = range.getStop();
         probe.Mz = set_.Mz[0];
-        probe.LowerMzBand = LipidomicsConstants.getCoarseChromMzTolerance(set_.Mz[0]);
-        probe.UpperMzBand = LipidomicsConstants.getCoarseChromMzTolerance(set_.Mz[0]);
+        probe.LowerMzBand = settings_.getCoarseChromMzTolerance(set_.Mz[0]);
+        probe.UpperMzBand = settings_.getCoarseChromMzTolerance(set_.Mz[0]);
         probe.isotopeNumber = 0;
         probes.add(probe);
         set_.setProbes(probes);
@@ -597,10 +605,15 @@ public class MSnAnalyzer
     Hashtable<Boolean,Vector<FragmentVO>> headFragments = fragCalc_.getHeadFragments(set_.getOhNumber());
     Vector<FragmentVO> mandatoryHeadFragments = headFragments.get(true);
     Vector<FragmentVO> addHeadFragments = headFragments.get(false);
+    Vector<Vector<FragmentVO>> fragmentVectors = new Vector<Vector<FragmentVO>>();
+    fragmentVectors.add(mandatoryHeadFragments);
+    fragmentVectors.add(addHeadFragments);
+    Vector<CgProbe[]> headAreas = calculateFragmentAreas(fragmentVectors, probesWithMSnSpectra);
     boolean foundHeadFragments = false;
-    for (FragmentVO fragment : mandatoryHeadFragments){
+    for (int i=0; i!=mandatoryHeadFragments.size(); i++){
+      FragmentVO fragment = mandatoryHeadFragments.get(i);
       if (!probesWithMSnSpectra.containsKey(fragment.getMsLevel())) continue;
-      CgProbe probe = analyzer_.calculateMs2Area(fragment.getMass(), fragment.getFormula(), fragment.getMsLevel(), fragment.getCharge(), fragment.isMandatory()==FragmentRuleVO.MANDATORY_OTHER, probesWithMSnSpectra.get(fragment.getMsLevel()));
+      CgProbe probe = headAreas.get(0)[i];
 //      System.out.println("Mand: "+fragment.getName()+";"+fragment.getMass()+";"+probe.Area+";"+probe.AreaStatus+";"+checkBasePeakCutoff(probe,fragment.getMsLevel()));
       if (probe.AreaStatus == CgAreaStatus.OK && checkCutoffs(probe,fragment.getMsLevel(),0f)){
         foundHeadFragments = true;
@@ -614,9 +627,10 @@ public class MSnAnalyzer
         }
       }
     }
-    for (FragmentVO fragment : addHeadFragments){
+    for (int i=0; i!=addHeadFragments.size(); i++){
+      FragmentVO fragment = addHeadFragments.get(i);
       if (!probesWithMSnSpectra.containsKey(fragment.getMsLevel())) continue;
-      CgProbe probe = analyzer_.calculateMs2Area(fragment.getMass(), fragment.getFormula(), fragment.getMsLevel(), fragment.getCharge(), fragment.isMandatory()==FragmentRuleVO.MANDATORY_OTHER, probesWithMSnSpectra.get(fragment.getMsLevel()));
+      CgProbe probe = headAreas.get(1)[i];
 //      System.out.println("Add: "+fragment.getName()+";"+fragment.getMass()+";"+probe.Area+";"+probe.AreaStatus+";"+checkBasePeakCutoff(probe,fragment.getMsLevel()));
       if (probe.AreaStatus == CgAreaStatus.OK && checkCutoffs(probe,fragment.getMsLevel(),0f)){
         foundHeadFragments = true;
@@ -671,6 +685,41 @@ public class MSnAnalyzer
     return basePeak;
   }
   
+  /**
+   * calculates the areas of the fragments of several fragment vectors; the fragments of one MS-level are quantified together,
+   * so that every MSn spectrum is decoded only once
+   * @param fragmentVectors the vectors holding the fragments
+   * @param probesWithMSnSpectra MS1 identifications where MSn spectra can be extracted
+   * @return the areas in the sequence of the vectors and their fragments; null for fragments of MS-levels without spectra
+   * @throws CgException errors from the quantitation process
+   */
+  private Vector<CgProbe[]> calculateFragmentAreas(Vector<Vector<FragmentVO>> fragmentVectors, Hashtable<Integer,Vector<CgProbe>> probesWithMSnSpectra) throws CgException{
+    Vector<CgProbe[]> areas = new Vector<CgProbe[]>();
+    Hashtable<Integer,Vector<FragmentVO>> fragmentsOfLevel = new Hashtable<Integer,Vector<FragmentVO>>();
+    Hashtable<Integer,Vector<int[]>> positionsOfLevel = new Hashtable<Integer,Vector<int[]>>();
+    for (int i=0; i!=fragmentVectors.size(); i++){
+      Vector<FragmentVO> fragments = fragmentVectors.get(i);
+      areas.add(new CgProbe[fragments.size()]);
+      for (int j=0; j!=fragments.size(); j++){
+        int msLevel = fragments.get(j).getMsLevel();
+        if (!probesWithMSnSpectra.containsKey(msLevel)) continue;
+        if (!fragmentsOfLevel.containsKey(msLevel)){
+          fragmentsOfLevel.put(msLevel, new Vector<FragmentVO>());
+          positionsOfLevel.put(msLevel, new Vector<int[]>());
+        }
+        fragmentsOfLevel.get(msLevel).add(fragments.get(j));
+        positionsOfLevel.get(msLevel).add(new int[]{i,j});
+      }
+    }
+    for (Integer msLevel : fragmentsOfLevel.keySet()){
+      CgProbe[] levelAreas = analyzer_.calculateMs2Areas(fragmentsOfLevel.get(msLevel), msLevel, probesWithMSnSpectra.get(msLevel));
+      Vector<int[]> positions = positionsOfLevel.get(msLevel);
+      for (int k=0; k!=levelAreas.length; k++)
+        areas.get(positions.get(k)[0])[positions.get(k)[1]] = levelAreas[k];
+    }
+    return areas;
+  }
+  
   /**
    * verifies if the chain fragment rules are fulfilled
    * stores all verified chain combinations, and discards hits below the cutoff
@@ -689,17 +738,26 @@ public class MSnAnalyzer
     Hashtable<Short,Vector<IntensityRuleVO>> intRules = fragCalc_.getChainIntensityRulesSameChain();
     Set<String> forbiddenChains = new HashSet<String>();
     Hashtable<String,Vector<IntensityRuleVO>> absRulesToCheck = new Hashtable<String,Vector<IntensityRuleVO>>();
+    //the fragments of all chains are quantified at once; first the mandatory, then the additional fragments of each chain
+    Vector<Vector<FragmentVO>> fragmentVectors = new Vector<Vector<FragmentVO>>();
     for (FattyAcidVO chain : fas){
       Hashtable<Boolean,Vector<FragmentVO>> chainFragments = fragCalc_.getChainFragments(chain);
+      fragmentVectors.add(chainFragments.get(true));
+      fragmentVectors.add(chainFragments.get(false));
+    }
+    Vector<CgProbe[]> chainAreas = calculateFragmentAreas(fragmentVectors, probesWithMSnSpectra);
+    for (int j=0; j!=fas.size(); j++){
+      FattyAcidVO chain = fas.get(j);
 //      for (Integer chainType : allChainFragments.keySet()){
         //System.out.println(fa.getName()+": "+chainType);
-      Vector<FragmentVO> mandatoryChainFragments = chainFragments.get(true);
-      Vector<FragmentVO> addChainFragments = chainFragments.get(false);
+      Vector<FragmentVO> mandatoryChainFragments = fragmentVectors.get(2*j);
+      Vector<FragmentVO> addChainFragments = fragmentVectors.get(2*j+1);
       boolean discardChain = false;
       boolean foundChainFragments = false;
       Hashtable<String,CgProbe> foundFragments = new Hashtable<String,CgProbe>();
 //    System.out.println(fa.getName()+";"+mandatoryChainFragments.size());
-      for (FragmentVO fragment : mandatoryChainFragments){
+      for (int i=0; i!=mandatoryChainFragments.size(); i++){
+        FragmentVO fragment = mandatoryChainFragments.get(i);
         // a fragment cannot have any negative chemical elements
         if (fragment.getFormula().indexOf("-")!=-1) {
           discardChain = true;
@@ -707,7 +765,7 @@ public class MSnAnalyzer
         }
         //if (chain.getName().equalsIgnoreCase("18:1")) System.out.println(chain.getChainId()+";"+fragment.getName()+" ; "+fragment.getMass());
         if (!probesWithMSnSpectra.containsKey(fragment.getMsLevel())) continue;
-        CgProbe probe = analyzer_.calculateMs2Area(fragment.getMass(), fragment.getFormula(), fragment.getMsLevel(), fragment.getCharge(), fragment.isMandatory()==FragmentRuleVO.MANDATORY_OTHER, probesWithMSnSpectra.get(fragment.getMsLevel()));
+        CgProbe probe = chainAreas.get(2*j)[i];
         if (probe.AreaStatus == CgAreaStatus.OK && checkCutoffs(probe,fragment.getMsLevel(),RulesContainer.getChainAbsoluteThreshold(StaticUtils.getRuleName(this.className_, this.modName_)))){
           //if (chain.getName().equalsIgnoreCase("18:1")) System.out.println("!!! "+chain.getChainId()+";"+fragment.getMass()+";"+fragment.getName()+";"+probe.Area);
           foundChainFragments = true;
@@ -721,13 +779,14 @@ public class MSnAnalyzer
         }
       }
       if (discardChain) continue;
-      for (FragmentVO fragment : addChainFragments){
+      for (int i=0; i!=addChainFragments.size(); i++){
+        FragmentVO fragment = addChainFragments.get(i);
         // a fragment cannot have any negative chemical elements
         if (fragment.getFormula().indexOf("-")!=-1) 
           continue;
 //      if (chainType==FragmentRuleVO.ALKYL_CHAIN && fa.getName().equalsIgnoreCase("18:1")) System.out.println("!!! 18:1: "+fragment.getMass());
         if (!probesWithMSnSpectra.containsKey(fragment.getMsLevel())) continue;
-        CgProbe probe = analyzer_.calculateMs2Area(fragment.getMass(), fragment.getFormula(), fragment.getMsLevel(), fragment.getCharge(), fragment.isMandatory()==FragmentRuleVO.MANDATORY_OTHER, probesWithMSnSpectra.get(fragment.getMsLevel()));
+        CgProbe probe = chainAreas.get(2*j+1)[i];
         if (probe.AreaStatus == CgAreaStatus.OK && checkCutoffs(probe,fragment.getMsLevel(),RulesContainer.getChainAbsoluteThreshold(StaticUtils.getRuleName(this.className_, this.modName_)))){
 //        System.out.println(fa.getName()+";"+fragment.getName()+";"+fragment.getMass()+";"+probe.Area+";"+probe.AreaStatus+"; Add");
           foundChainFragments = true;
@@ -2730,11 +2789,17 @@ public class MSnAnalyzer
   }
   
   public static Hashtable<Integer,Boolean> prepareCachedSpectra(LipidomicsAnalyzer analyzer, LipidParameterSet set, boolean readMSnSpectra) throws CgException{
+    PipelineMetrics metrics = PipelineMetrics.current();
     if (readMSnSpectra) {
+      metrics.increment("msnCache.misses");
+      PipelineMetrics.Timing timing = metrics.time("msnCacheRead");
     	float tol = LipidomicsConstants.getMs2PrecursorTolerance(set.Mz[0]);
-      return analyzer.prepareMSnSpectraCache(set.Mz[0]-tol, set.Mz[0]+tol,
+      Hashtable<Integer,Boolean> msLevels = analyzer.prepareMSnSpectraCache(set.Mz[0]-tol, set.Mz[0]+tol,
           LipidomicsConstants.getMs2MinIntsForNoiseRemoval());
+      timing.stop();
+      return msLevels;
     } else{
+      metrics.increment("msnCache.hits");
       return analyzer.checkMSnLevels();
     }
   }
@@ -2752,26 +2817,17 @@ public class MSnAnalyzer
     if (combiFAs.get(combiFAs.keySet().iterator().next()).size()<3)
       return false;
     // check if some are sharing the same fatty acids; if yes -> predict intensities
-    boolean split = false;
-    Vector<String> combis = new Vector<String>(combiFAs.keySet());
-    for (int i=0; i<combis.size(); i++) {
-      Vector<FattyAcidVO> firstFAs = combiFAs.get(combis.get(i));
-      for (int j=i+1; j<combis.size(); j++) {
-        Vector<FattyAcidVO> secondFAs = combiFAs.get(combis.get(j));
-        for (FattyAcidVO firstFA: firstFAs) {
-          for (FattyAcidVO secondFA: secondFAs) {
-            if (firstFA.getChainId().equalsIgnoreCase(secondFA.getChainId())) {
-              split=true;
-              break;
-            }
-          }
-          if (split) break;
-        }
-        if (split) break;
+    Set<String> chainsOfOtherCombis = new HashSet<String>();
+    for (Vector<FattyAcidVO> fas : combiFAs.values()) {
+      Set<String> chains = new HashSet<String>();
+      for (FattyAcidVO fa : fas) chains.add(fa.getChainId().toLowerCase());
+      for (String chain : chains) {
+        if (chainsOfOtherCombis.contains(chain))
+          return true;
       }
-      if (split) break;
+      chainsOfOtherCombis.addAll(chains);
     }
-    return split;
+    return false;
   }
 
   
@@ -2780,7 +2836,7 @@ public class MSnAnalyzer
    * @return appropriate CgProbes
    */
   private Vector<CgProbe> getCorrespondingCgProbes(){
-    if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
+    if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
       if (this.shotgunProbes_==null){
         shotgunProbes_ = getCorrespondingCgProbes(set_);
       }
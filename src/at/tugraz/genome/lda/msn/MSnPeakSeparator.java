@@ -25,11 +25,13 @@ package at.tugraz.genome.lda.msn;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Set;
 import java.util.Vector;
 
 import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.QuantificationSettings;
 import at.tugraz.genome.lda.exception.ChemicalFormulaException;
 import at.tugraz.genome.lda.exception.HydroxylationEncodingException;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
@@ -40,6 +42,7 @@ import at.tugraz.genome.lda.msn.vos.SharedPeakContributionVO;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.LipidomicsAnalyzer;
 import at.tugraz.genome.lda.quantification.LipidomicsChromatogram;
+import at.tugraz.genome.lda.utils.RtMzIntervalIndex;
 import at.tugraz.genome.lda.utils.StaticUtils;
 import at.tugraz.genome.lda.vos.QuantVO;
 import at.tugraz.genome.maspectras.parser.exceptions.SpectrummillParserException;
@@ -57,6 +60,8 @@ public class MSnPeakSeparator
   private Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> result_;
   /** object that holds MS data and can quantify fragments of interest*/
   private LipidomicsAnalyzer analyzer_;
+  /** the settings of the quantification job*/
+  private QuantificationSettings settings_;
   /** MS level of the quantitation*/
   private int msLevel_;
   /** if a peak split has to be removed because a split partner has a wrong retention time, the unsplit peak version is stored*/
@@ -80,6 +85,7 @@ public class MSnPeakSeparator
       this.result_.put(quant, new Hashtable<String,LipidParameterSet>(hitsAccordingToQuant.get(quant)));
     }
     this.analyzer_ = analyzer;
+    this.settings_ = analyzer.getSettings();
     this.msLevel_ = msLevel;
     peaksBeforeSplit_ = peaksBeforeSplit;
     adductsThatRequireOtherAdduct_ = adductsThatRequireOtherAdduct;
@@ -194,7 +200,7 @@ public class MSnPeakSeparator
     // and the peak is left to the other partner
     
     //for shotgun: only separation by distinct fragments is possible
-    if (LipidomicsConstants.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
+    if (settings_.isShotgun()==LipidomicsConstants.SHOTGUN_TRUE){
       for (SharedMS1PeakVO shared : sharedPeaks){
         calculatePercentualSplitValueAccordingToMSn(shared);
         for (SharedPeakContributionVO contr : shared.getPartners()){
@@ -403,43 +409,85 @@ public class MSnPeakSeparator
   public static Vector<SharedMS1PeakVO> detectSharedMS1PeakInstances(Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hitsAccordingToQuant){
     Vector<SharedMS1PeakVO> sharedPeaks = new Vector<SharedMS1PeakVO>();
     Vector<QuantVO> quants = new Vector<QuantVO>(hitsAccordingToQuant.keySet());
-    Hashtable<Integer,Hashtable<String,String>> alreadyAdded = new Hashtable<Integer,Hashtable<String,String>>();
-    for (int i1=0; i1!=quants.size(); i1++){
-      QuantVO quant1 = quants.get(i1);
-      Hashtable<String,LipidParameterSet> hits1 =  hitsAccordingToQuant.get(quant1);
-      Hashtable<String,String> added = new Hashtable<String,String>();
-      if (alreadyAdded.containsKey(i1)) added = alreadyAdded.get(i1);
-      for (String rt1 : hits1.keySet()){
-        if (added.containsKey(rt1)) continue;
-        LipidParameterSet set1 = hits1.get(rt1);        
-        SharedMS1PeakVO sharedPeak = new SharedMS1PeakVO();
-        sharedPeak.addSharedInstance(quant1, set1);
-        boolean otherAdded = false;
-        for (int i2=i1+1; i2<quants.size(); i2++){
-          Hashtable<String,String> added2 = new Hashtable<String,String>();
-          if (alreadyAdded.containsKey(i2)) added2 = alreadyAdded.get(i2);
-          QuantVO quant2 = quants.get(i2);
-          Hashtable<String,LipidParameterSet> hits2 =  hitsAccordingToQuant.get(quant2);
-          for (String rt2 : hits2.keySet()){
-            if (added2.containsKey(rt2)) continue;
-            LipidParameterSet set2 = hits2.get(rt2);
-            if (rt1.equalsIgnoreCase(rt2) || LipidomicsAnalyzer.isPeakCenterTheSame(set1, set2)){
-              sharedPeak.addSharedInstance(quant2, set2);
-              otherAdded = true;
-              added2.put(rt2, rt2);
-            }
-          }
-          alreadyAdded.put(i2, added2);
+    //every hit gets a position; the positions follow the sequence of the pairwise comparison
+    Vector<Integer> quantIndices = new Vector<Integer>();
+    Vector<String> rts = new Vector<String>();
+    Hashtable<String,Vector<Integer>> sameRts = new Hashtable<String,Vector<Integer>>();
+    //the hits are indexed by the retention time range where another peak center can be regarded as the same;
+    //the m/z is not restricted, since all of the hits are isobaric anyway
+    RtMzIntervalIndex<Integer> index = new RtMzIntervalIndex<Integer>();
+    for (int i=0; i!=quants.size(); i++){
+      Hashtable<String,LipidParameterSet> hits = hitsAccordingToQuant.get(quants.get(i));
+      for (String rt : hits.keySet()){
+        int position = rts.size();
+        quantIndices.add(i);
+        rts.add(rt);
+        String rtLowerCase = rt.toLowerCase();
+        if (!sameRts.containsKey(rtLowerCase)) sameRts.put(rtLowerCase, new Vector<Integer>());
+        sameRts.get(rtLowerCase).add(position);
+        LipidParameterSet set = hits.get(rt);
+        if (set.getIsotopicProbes().size()==0)
+          continue;
+        for (CgProbe probe : set.getIsotopicProbes().get(0)){
+          float reach = LipidomicsAnalyzer.getPeakCenterReach(probe);
+          index.add(probe.Peak-reach, probe.Peak+reach, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, position);
         }
-        if (otherAdded && sharedPeak.areThereMS2Hits()){
-          sharedPeaks.add(sharedPeak);
-          added.put(rt1, rt1);
-          alreadyAdded.put(i1, added);
+      }
+    }
+    index.build();
+    boolean[] alreadyAdded = new boolean[rts.size()];
+    for (int position1=0; position1!=rts.size(); position1++){
+      if (alreadyAdded[position1]) continue;
+      int i1 = quantIndices.get(position1);
+      QuantVO quant1 = quants.get(i1);
+      String rt1 = rts.get(position1);
+      LipidParameterSet set1 = hitsAccordingToQuant.get(quant1).get(rt1);
+      SharedMS1PeakVO sharedPeak = new SharedMS1PeakVO();
+      sharedPeak.addSharedInstance(quant1, set1);
+      boolean otherAdded = false;
+      for (int position2 : getSharedPeakCandidates(position1,set1,rt1,index,sameRts)){
+        if (alreadyAdded[position2] || quantIndices.get(position2)<=i1) continue;
+        QuantVO quant2 = quants.get(quantIndices.get(position2));
+        String rt2 = rts.get(position2);
+        LipidParameterSet set2 = hitsAccordingToQuant.get(quant2).get(rt2);
+        if (rt1.equalsIgnoreCase(rt2) || LipidomicsAnalyzer.isPeakCenterTheSame(set1, set2)){
+          sharedPeak.addSharedInstance(quant2, set2);
+          otherAdded = true;
+          alreadyAdded[position2] = true;
         }
       }
+      if (otherAdded && sharedPeak.areThereMS2Hits()){
+        sharedPeaks.add(sharedPeak);
+      }
     }
     return sharedPeaks;
   }
+  
+  
+  /**
+   * returns the positions of the hits that might share the peak with a hit - the ones having the same retention time
+   * and the ones where the reach of the peak centers overlap
+   * @param position the position of the hit
+   * @param set the hit
+   * @param rt the retention time of the hit
+   * @param index the index over the reach of the peak centers
+   * @param sameRts positions of the hits having the same retention time; key: lower case retention time
+   * @return ascendingly sorted positions of the candidates (without the hit itself)
+   */
+  private static Vector<Integer> getSharedPeakCandidates(int position, LipidParameterSet set, String rt, RtMzIntervalIndex<Integer> index,
+      Hashtable<String,Vector<Integer>> sameRts){
+    Set<Integer> candidates = new HashSet<Integer>(sameRts.get(rt.toLowerCase()));
+    if (set.getIsotopicProbes().size()>0){
+      for (CgProbe probe : set.getIsotopicProbes().get(0)){
+        float reach = LipidomicsAnalyzer.getPeakCenterReach(probe);
+        candidates.addAll(index.findOverlapping(probe.Peak-reach, probe.Peak+reach, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY));
+      }
+    }
+    candidates.remove(position);
+    Vector<Integer> sorted = new Vector<Integer>(candidates);
+    Collections.sort(sorted);
+    return sorted;
+  }
 
   
   /**
@@ -455,7 +503,7 @@ public class MSnPeakSeparator
       if (!partner.hasDistinctFragments()){
         Hashtable<String,LipidParameterSet> sets = hitsAccordingToQuant.get(partner.getQuantVO());
         String rt = "";
-        if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
+        if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
           rt = partner.getSet().getRt();
         sets.remove(rt);
         if (sets.size()==0) hitsAccordingToQuant.remove(partner.getQuantVO());
@@ -480,7 +528,7 @@ public class MSnPeakSeparator
       if (partner.getQuantVO().equals(contr.getQuantVO())){
         Hashtable<String,LipidParameterSet> sets = hitsAccordingToQuant.get(partner.getQuantVO());
         String rt = "";
-        if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
+        if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
           rt = partner.getSet().getRt();
         sets.remove(rt);
         if (sets.size()==0) hitsAccordingToQuant.remove(partner.getQuantVO());
@@ -505,7 +553,7 @@ public class MSnPeakSeparator
       Hashtable<String,LipidParameterSet> quantsOfMod = hitsAccordingToQuant.get(oneSet);
       try {
         String rt = "";
-        if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
+        if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
           rt = contr.getSet().getRt();
         //TODO: this is set to true in the meantime - maybe play around with caching in the future to improve calculation time
         MSnAnalyzer msnAnalyzer = new MSnAnalyzer(oneSet.getAnalyteClass(),oneSet.getModName(),contr.getSet(),analyzer,oneSet,true,false);  
@@ -555,7 +603,7 @@ public class MSnPeakSeparator
       }
       if (remove){
         String rt = "";
-        if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
+        if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
           rt = contr.getSet().getRt();
         hitsAccordingToQuant.get(contr.getQuantVO()).remove(rt);
         partnersToRemove.add(i);
@@ -615,7 +663,7 @@ public class MSnPeakSeparator
           SharedPeakContributionVO cont = shared.getPartners().get(i);
           if (!(cont.getSet() instanceof LipidomicsMSnSet)) continue;
           String rt = "";
-          if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
+          if (settings_.isShotgun()!=LipidomicsConstants.SHOTGUN_TRUE)
             rt = cont.getSet().getRt();
           hitsAccordingToQuant.get(cont.getQuantVO()).remove(rt);
         }
@@ -29,17 +29,16 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
-import at.tugraz.genome.lda.exception.LMException;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
 import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
 import at.tugraz.genome.lda.msn.vos.MSnDebugVO;
-import at.tugraz.genome.lda.utils.LMLinearFaCombination;
+import at.tugraz.genome.lda.utils.NonNegativeFaCombination;
 import at.tugraz.genome.lda.utils.StaticUtils;
 import at.tugraz.genome.lda.vos.FloatStringVO;
 import at.tugraz.genome.maspectras.quantification.CgProbe;
-import at.tugraz.genome.util.FloatMatrix;
 import at.tugraz.genome.voutils.GeneralComparator;
 
 /**
@@ -54,11 +53,15 @@ public class MSnRelativeShareCalculator
   private Hashtable<String,String> combiLookup_;
   private LinkedHashMap<FattyAcidVO,Double> sortedFAs_;
   private Vector<String> sortedCombis_;
+  /** the row of each chain in the fit; key: the lower case chain id*/
+  private Hashtable<String,Integer> chainIndices_;
+  /** the summed fragment areas of the chains in the sequence of the rows*/
+  private float[] chainIntensities_;
   /** the cutoff value relative to the highest chain combination*/
   private double relativeChainCutoff_;
   /** the final result; i.e. the relative intensity split according to the prediction - a kind of percentual value*/
   private Hashtable<String,Double> relativeIntensities_;
-  /** true when discards by the relative chain cutoff shall be stored in a debug VO*/
+  /** true when discards by the relative chain cutoff and fits that did not converge shall be stored in a debug VO*/
   private boolean debug_;
   /** value object for debug purposes*/
   private MSnDebugVO debugVO_;
@@ -68,7 +71,7 @@ public class MSnRelativeShareCalculator
    * @param combiFAs hash table containing the individual chain names; key: name of the chain combination; value: vector containing the individual chains
    * @param chainFragments the detected chain fragments; first key: chain combination name; second key: fragment name; value: the detected fragments and areas
    * @param relativeChainCutoff cutoff value relative to the highest chain combination
-   * @param debug true when discards by the relative chain cutoff shall be stored in a debug VO
+   * @param debug true when discards by the relative chain cutoff and fits that did not converge shall be stored in a debug VO
    * @param debugVO value object for debug purposes
    * @throws LipidCombinameEncodingException thrown when there is something wrong with the lipid name
    */
@@ -86,6 +89,12 @@ public class MSnRelativeShareCalculator
     	  sortedFAs_.put(fa, area);
 //      System.out.println("original:\t"+fa+"\t"+area);
     }
+    chainIndices_ = new Hashtable<String,Integer>();
+    chainIntensities_ = new float[sortedFAs_.size()];
+    for (FattyAcidVO fa : sortedFAs_.keySet()){
+      chainIntensities_[chainIndices_.size()] = sortedFAs_.get(fa).floatValue();
+      chainIndices_.put(fa.getChainId().toLowerCase(), chainIndices_.size());
+    }
     combiLookup_ = new Hashtable<String,String>();
     for (String combi : combiFAs.keySet()){
       combiLookup_.put(StaticUtils.encodeLipidCombi(StaticUtils.sortChainVOs(StaticUtils.decodeLipidNamesFromChainCombi(combi))),combi);
@@ -105,7 +114,7 @@ public class MSnRelativeShareCalculator
   
   
   /**
-   * splits the intensities of the species after LM optimization was performed
+   * splits the intensities of the species after the non-negative least squares fit of the combination shares
    */
   @SuppressWarnings("unchecked")
   public void splitIntensities(){
@@ -114,28 +123,28 @@ public class MSnRelativeShareCalculator
     Hashtable<String,Integer> lookup;
     Vector<Integer> toRemove;
     Vector<FattyAcidVO> fasToRemove;
-    //int itNumber = 1;
-    FloatMatrix params = null;
-    LMLinearFaCombination optimizer = null;
+    double[] params = null;
+    //the shares of a fit are the start values for the fit of the remaining combinations
+    Hashtable<String,Double> previousShares = null;
     while (negativeParams>0){
-      //System.out.println("Iteration: "+itNumber);
       negativeParams = 0;
-      optimizer = parameterPrediction();
-      params = optimizer.getResultParams();
+      params = parameterPrediction(previousShares).getResultParams();
       negatives = new ArrayList<FloatStringVO>();
       lookup = new Hashtable<String,Integer>();
-      float highest = 0f;
-      for (int i=0;i!=params.A.length; i++) {
-        if (params.A[i][0]>highest)
-          highest = params.A[i][0];
+      previousShares = new Hashtable<String,Double>();
+      double highest = 0d;
+      for (int i=0;i!=params.length; i++) {
+        if (params[i]>highest)
+          highest = params[i];
+        previousShares.put(sortedCombis_.get(i), params[i]);
       }
-      for (int i=0;i!=params.A.length; i++){
-        //System.out.println(/*i+"."+*/sortedCombis_.get(i)+"\t\t"+params.A[i][0]);
-        if (params.A[i][0]>=relativeChainCutoff_*highest)
+      for (int i=0;i!=params.length; i++){
+        //combinations that cannot contribute get a share of zero - they are treated like the ones below the cutoff
+        if (params[i]>=relativeChainCutoff_*highest && (params[i]>0d || highest==0d))
           continue;
         if (debug_) debugVO_.addViolatedCombinations(combiLookup_.get(sortedCombis_.get(i)), MSnDebugVO.COMBINATION_LOWER_CHAIN_CUTOFF);
         negativeParams++;
-        negatives.add(new FloatStringVO(sortedCombis_.get(i),params.A[i][0]));
+        negatives.add(new FloatStringVO(sortedCombis_.get(i),(float)params[i]));
         lookup.put(sortedCombis_.get(i), i);
       }
       Collections.sort(negatives,new GeneralComparator("at.tugraz.genome.lda.vos.FloatStringVO", "getValue", "java.lang.Float"));
@@ -148,110 +157,68 @@ public class MSnRelativeShareCalculator
       for (int i=(toRemove.size()-1); i!=-1; i--){
         sortedCombis_.remove(toRemove.get(i).intValue());
       }
+      Set<String> remainingChains = new HashSet<String>();
+      for (String combi : sortedCombis_){
+        for (FattyAcidVO fa : combiFAs_.get(combiLookup_.get(combi)))
+          remainingChains.add(fa.getChainId().toLowerCase());
+      }
       fasToRemove = new Vector<FattyAcidVO>();
       for (FattyAcidVO fa : sortedFAs_.keySet()){
-        boolean faFound = false;
-        for (String combi : sortedCombis_){
-          for (FattyAcidVO otherFA : combiFAs_.get(combiLookup_.get(combi))){
-            if (fa.getChainId().equalsIgnoreCase(otherFA.getChainId())){
-              faFound = true;
-              break;
-            }            
-          }
-          if (faFound)
-            break;
-        }
-        if (!faFound){
-          //System.out.println("Removing FA: "+fa);
+        if (!remainingChains.contains(fa.getChainId().toLowerCase()))
           fasToRemove.add(fa);
-        }
       }
       for (FattyAcidVO fa : fasToRemove){
         sortedFAs_.remove(fa);
       }
-
-      
-//      for (FloatStringVO neg : negatives){
-//        System.out.println(neg.getKey()+": "+neg.getValue());
-//      }
-      
-      //itNumber++;
-      //System.out.println("----------------------------------------------------------");
-      //this is for stopping the loop
-      //negativeParams = 0;
     }
-    float total = 0f;
-    for (int i=0;i!=params.A.length; i++) total += params.A[i][0];
+    double total = 0d;
+    for (int i=0;i!=params.length; i++) total += params[i];
     relativeIntensities_ = new Hashtable<String,Double>();
-    for (int i=0;i!=params.A.length; i++){
-      relativeIntensities_.put(combiLookup_.get(sortedCombis_.get(i)), ((double)params.A[i][0])/total);
+    for (int i=0;i!=params.length; i++){
+      //if none of the chains has an intensity, there is no evidence for any combination - the intensity is split equally
+      double share = total>0d ? params[i]/total : 1d/((double)params.length);
+      relativeIntensities_.put(combiLookup_.get(sortedCombis_.get(i)), share);
     }
-//    System.out.println("----------------------------------------------------------");
-    
-    //for testing the output
-//    float[][] values = new float[sortedFAs_.size()][sortedCombis_.size()];
-//    int rowCount = 0;
-//    for (String fa : sortedFAs_.keySet()){
-//      int columnCount = 0;
-//      for (String combi : sortedCombis_){
-//        int faCount = 0;
-//        for (String otherFA : combiFAs_.get(combiLookup_.get(combi))){
-//          if (fa.equalsIgnoreCase(otherFA))
-//            faCount++;
-//        }
-//        values[rowCount][columnCount] = faCount;
-//        columnCount++;
-//      }
-//      rowCount++;
-//    }
-//    int faCount = 0;
-//    for (String fa : sortedFAs_.keySet()){
-//      try {
-//        System.out.println(fa+"\t"+optimizer.calculateFitValue(values[faCount]));
-//      }
-//      catch (LMException e) {
-//        // TODO Auto-generated catch block
-//        e.printStackTrace();
-//      }
-//      faCount++;
-//    }
   }
   
   /**
-   * applies the Levenberg-Marquardt algorithm to predict the contributions of each individiual fatty acid
-   * @return the fitted Levenberg-Marquardt model containing the final parameters - getResultParams() returns the fitted parameters
+   * fits the shares of the remaining chain combinations to the chain intensities by non-negative least squares
+   * @param startShares the shares of a previous fit as start values; key: the sorted combination name; null to start from an equal distribution
+   * @return the fitted model containing the final parameters - getResultParams() returns the shares in the sequence of sortedCombis_
    */
-  private LMLinearFaCombination parameterPrediction(){
-    //create the input matrices
-    float[][] values = new float[sortedFAs_.size()][sortedCombis_.size()];
-    float[] intensities = new float[sortedFAs_.size()];
-    int rowCount = 0;
-    for (FattyAcidVO fa : sortedFAs_.keySet()){
-//      System.out.println("!!! "+fa);
-      int columnCount = 0;
-      for (String combi : sortedCombis_){
-        int faCount = 0;
-        for (FattyAcidVO otherFA : combiFAs_.get(combiLookup_.get(combi))){
-          if (fa.getChainId().equalsIgnoreCase(otherFA.getChainId()))
-            faCount++;
-        }
-        values[rowCount][columnCount] = faCount;
-        columnCount++;
+  private NonNegativeFaCombination parameterPrediction(Hashtable<String,Double> startShares){
+    //create the sparse input matrix - one column for each combination containing its chains only
+    int[][] chainIndices = new int[sortedCombis_.size()][];
+    float[][] chainCounts = new float[sortedCombis_.size()][];
+    double[] startParams = startShares==null ? null : new double[sortedCombis_.size()];
+    for (int i=0; i!=sortedCombis_.size(); i++){
+      LinkedHashMap<Integer,Integer> counts = new LinkedHashMap<Integer,Integer>();
+      for (FattyAcidVO fa : combiFAs_.get(combiLookup_.get(sortedCombis_.get(i)))){
+        Integer index = chainIndices_.get(fa.getChainId().toLowerCase());
+        if (index==null)
+          continue;
+        counts.put(index, counts.containsKey(index) ? counts.get(index)+1 : 1);
       }
-      intensities[rowCount] = sortedFAs_.get(fa).floatValue();
-      rowCount++;
-    }
-
-    LMLinearFaCombination optimizer = new LMLinearFaCombination(values,intensities);
-    try {
-      optimizer.fit();
-      
-      return optimizer;
+      chainIndices[i] = new int[counts.size()];
+      chainCounts[i] = new float[counts.size()];
+      int count = 0;
+      for (Integer index : counts.keySet()){
+        chainIndices[i][count] = index;
+        chainCounts[i][count] = counts.get(index);
+        count++;
+      }
+      if (startParams!=null)
+        startParams[i] = startShares.get(sortedCombis_.get(i));
     }
-    catch (LMException e) {
-      e.printStackTrace();
+    if (ShareFitRecorder.isEnabled())
+      ShareFitRecorder.record(chainIntensities_,chainIndices,chainCounts);
+    NonNegativeFaCombination optimizer = new NonNegativeFaCombination(chainIntensities_,chainIndices,chainCounts);
+    optimizer.fit(startParams);
+    if (!optimizer.isConverged()){
+      System.out.println("Warning: the fit of the shares of the chain combinations "+sortedCombis_+" did not converge within "+optimizer.getSweeps()+" sweeps");
+      if (debug_) debugVO_.setShareFitConverged(false);
     }
-    return null;
+    return optimizer;
   }
   
   
@@ -28,6 +28,12 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import at.tugraz.genome.lda.exception.ChemicalFormulaException;
 import at.tugraz.genome.lda.exception.HydroxylationEncodingException;
@@ -71,6 +77,30 @@ public class OtherAdductChecker
       Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> unsplittedPeaks,
       Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects, LipidomicsAnalyzer analyzer,
       LinkedHashMap<String,Integer> classSequence, LinkedHashMap<String,Vector<String>> analyteSequence) throws CgException, LipidCombinameEncodingException{
+    Vector<LipidomicsAnalyzer> analyzers = new Vector<LipidomicsAnalyzer>();
+    analyzers.add(analyzer);
+    return checkTheResultsForOtherAdducts(results, unsplittedPeaks, quantObjects, analyzers, classSequence, analyteSequence);
+  }
+  
+  
+  /**
+   * checks if the other required adducts are present to count this adduct as valid;
+   * isobaric groups that do not share any species are processed in parallel - one thread per analyzer
+   * @param results the detected results
+   * @param unsplittedPeaks hash table containing unsplitted peaks; in case of a peak split, this hash is filled with unsplitted versions of the peak
+   * @param quantObjects the original quantitation instructions that were read from the Excel file
+   * @param analyzers objects that hold MS data and can quantify fragments of interest - each one is used by one thread at a time only
+   * @param classSequence the MS levels of each lipid class
+   * @param analyteSequence the sorted lists of analytes
+   * @return the results after removing adducts where the required other adducts are not present, and where the peaks were split correspondingly
+   * @throws CgException exception that is thrown when there is something wrong with the fragment detection
+   * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+   */
+  public static Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> checkTheResultsForOtherAdducts(
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> results,
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> unsplittedPeaks,
+      Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> quantObjects, Vector<LipidomicsAnalyzer> analyzers,
+      LinkedHashMap<String,Integer> classSequence, LinkedHashMap<String,Vector<String>> analyteSequence) throws CgException, LipidCombinameEncodingException{
     
     String ruleName;
     Hashtable<String,Boolean> requiresOtherAdducts = new Hashtable<String,Boolean>();
@@ -144,153 +174,60 @@ public class OtherAdductChecker
     }
     
     //now enforce the adduct or split peaks having different adducts
-    Vector<QuantVO> allQuants;
     //these two lines do not work, because the sequence of the objects is important to get the correct number of isobars
 //    for (String lClass : quantObjects.keySet()) {
 //      for (String analyte : quantObjects.get(lClass).keySet()){
+    Vector<QuantVO> groupSequence = new Vector<QuantVO>();
     for (String lClass : classSequence.keySet()) {
     	for (String analyte : analyteSequence.get(lClass)){
         for (String mod : quantObjects.get(lClass).get(analyte).keySet()) {
           QuantVO quantSet = quantObjects.get(lClass).get(analyte).get(mod);
           if (quantSet.isQuantifiedByOtherIsobar())
           	continue;
-          allQuants = new Vector<QuantVO>();
-          boolean isAffected = false;
-          allQuants.add(quantSet);
-          allQuants.addAll(quantSet.getOtherIsobaricSpecies());
-          //check whether this quantVO is shared with something requiring other adducts, and if so, if the other one was found
-          for (QuantVO one : allQuants) {
-            if (!affectedMods.containsKey(StaticUtils.getRuleName(one.getAnalyteClass(),one.getModName())))
-              continue;
-            //in the old version, the next line was wrong - always the default lClass and analyte was provided - could only work if the removed one comes first
-            if (interestingQuantVOs.containsKey(getUniqueId(one.getAnalyteClass(),StaticUtils.generateLipidNameString(one.getAnalyteName(), one.getDbs(), -1, one.getOxState()),mod,"")))
-              isAffected = true;
-          }
-          if (!isAffected)
-            continue;
-          Hashtable<String,Hashtable<String,LipidParameterSet>> sameRt = getGroupsOfSameRt(allQuants,results);
-          String uniqueId;
-          for (String rt : sameRt.keySet()) {
-            Hashtable<String,LipidParameterSet> same = sameRt.get(rt);
-            //nothing has to be done where there is no uncertainty
-            if (same.size()<2)
-              continue;
-            Hashtable<String,LipidParameterSet> force = new Hashtable<String,LipidParameterSet>();
-            boolean ms2InformationPresent = false;
-            for (String rule : same.keySet()) {
-              LipidParameterSet set = same.get(rule);
-              String lipClass = rule.substring(0,rule.indexOf("_"));
-              if (set instanceof LipidomicsMSnSet)
-                ms2InformationPresent = true;
-              if (!affectedMods.containsKey(rule) || !affectedMods.get(rule))
-                continue;
-              uniqueId = getUniqueId(lipClass,set.getNameStringWithoutRt(),set.getModificationName(),rt);
-              if (correct.containsKey(uniqueId)) {
-                force.put(uniqueId, set);
-                //System.out.println("I have to force the following ones: "+lClass+analyte+"_"+mod+"_"+rt);
-              }
-            }
-            // if there are hits that have to be forced - all the other ones have to be removed
-            Hashtable<String,LipidParameterSet> forSplit = new Hashtable<String,LipidParameterSet>();
-            if (force.size()>0) {
-              forSplit = force;
-              for (String rule : same.keySet()) {
-                String lipClass = rule.substring(0,rule.indexOf("_"));
-                LipidParameterSet set = same.get(rule);
-                uniqueId = getUniqueId(lipClass,set.getNameStringWithoutRt(),set.getModificationName(),rt);
-                if (!forSplit.containsKey(uniqueId))
-                  toRemove.put(uniqueId, set);
-              }
-            // if there are no hits to force, all other ones have to be added to the split that are correct
-            } else {
-              for (String rule : same.keySet()) {
-                String lipClass = rule.substring(0,rule.indexOf("_"));
-                LipidParameterSet set = same.get(rule);
-                uniqueId = getUniqueId(lipClass,set.getNameStringWithoutRt(),set.getModificationName(),rt);
-                if (!toRemove.containsKey(uniqueId))
-                  forSplit.put(uniqueId, set);
-              }
-            }
-            
-            if (!ms2InformationPresent)
-              continue;
-            if (forSplit.size()<2) {
-              //if there is only one left, and this one has MS2 information -> check whether the $BASEPEAK rules are fulfilled
-              if (forSplit.size()==1) {
-                String id = forSplit.keySet().iterator().next();
-                String lipClass = getLipidClassFromUniqueId(id);
-                LipidParameterSet set = forSplit.get(id);
-                QuantVO quant = null;
-                for (QuantVO one : allQuants) {
-                  if (lipClass.equalsIgnoreCase(one.getAnalyteClass()) && set.getNameStringWithoutRt().equalsIgnoreCase(one.getIdString()) &&
-                    set.getModificationName().equalsIgnoreCase(one.getModName())) {
-                    quant = one;
-                    break;
-                  }
-                }
-                try {
-                  MSnAnalyzer msnAnalyzer = new MSnAnalyzer(quant.getAnalyteClass(),quant.getModName(),set,analyzer,quant,true,false);
-                  if (msnAnalyzer.checkStatus()==LipidomicsMSnSet.DISCARD_HIT)
-                    toRemove.put(id, set);
-                } catch (RulesException | IOException | SpectrummillParserException | HydroxylationEncodingException | ChemicalFormulaException e) {
-                  e.printStackTrace();
-                }  
-              }
-              continue;
-            }
-            Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hitsWithQuant = new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>();
-            Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> peaksBeforeSplit = new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>();
-            String lipClass = null;
-            for (String id : forSplit.keySet()) {
-              LipidParameterSet set = forSplit.get(id);
-              lipClass = getLipidClassFromUniqueId(id);
-              QuantVO quant = null;
-              for (QuantVO one : allQuants) {
-                if (lipClass.equalsIgnoreCase(one.getAnalyteClass()) && set.getNameStringWithoutRt().equalsIgnoreCase(one.getIdString()) &&
-                  set.getModificationName().equalsIgnoreCase(one.getModName())) {
-                  quant = one;
-                  break;
-                }
-              }
-              if (!hitsWithQuant.containsKey(quant))
-                hitsWithQuant.put(quant, new Hashtable<String,LipidParameterSet>());
-              hitsWithQuant.get(quant).put(set.getRt(), set);
-              //take the unsplitted version if there is any
-              if (unsplittedPeaks.containsKey(quant.getAnalyteClass()) && unsplittedPeaks.get(quant.getAnalyteClass()).containsKey(quant.getIdString())
-              		&& unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).containsKey(quant.getModName())
-              		&& unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).get(quant.getModName()).containsKey(rt))
-              	hitsWithQuant.get(quant).put(set.getRt(), unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).get(quant.getModName()).get(rt));
-              peaksBeforeSplit.put(quant, new Hashtable<String,LipidParameterSet>());
-            }
-            MSnPeakSeparator separator = new MSnPeakSeparator(hitsWithQuant, peaksBeforeSplit, analyzer,  classSequence.get(lipClass),new HashSet<String>());
-            Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hitsAccordingToQuant = separator.disentagleSharedMS1Peaks();
-            //if the hit was removed in the splitting process, add it for removal here
-            for (QuantVO quant : hitsWithQuant.keySet()) {
-              for (String ret : hitsWithQuant.get(quant).keySet()) {
-                if (!hitsAccordingToQuant.containsKey(quant) || !hitsAccordingToQuant.get(quant).containsKey(ret)) {
-                  toRemove.put(getUniqueId(quant.getAnalyteClass(),quant.getIdString(),quant.getModName(),ret), hitsWithQuant.get(quant).get(ret));
-                }
-              }
-            }
-            //replace the unsplitted hits with the splitted ones
-            for (QuantVO quant : hitsAccordingToQuant.keySet()) {
-              for (String ret : hitsAccordingToQuant.get(quant).keySet()) {
-                LipidParameterSet set = hitsAccordingToQuant.get(quant).get(ret);
-                results.get(quant.getAnalyteClass()).get(quant.getIdString()).get(set.getModificationName()).put(ret, set);
-              }
+          groupSequence.add(quantSet);
+        }
+      }
+    }
+    //isobaric groups sharing a species have to be processed in sequence - independent partitions are processed in parallel
+    Vector<Vector<QuantVO>> partitions = partitionIsobaricGroups(groupSequence);
+    if (analyzers.size()<2 || partitions.size()<2) {
+      for (Vector<QuantVO> partition : partitions) {
+        for (QuantVO quantSet : partition)
+          checkIsobaricGroup(quantSet,results,unsplittedPeaks,analyzers.get(0),classSequence,affectedMods,interestingQuantVOs,correct,toRemove);
+      }
+    } else {
+      LinkedBlockingQueue<LipidomicsAnalyzer> analyzerPool = new LinkedBlockingQueue<LipidomicsAnalyzer>(analyzers);
+      ExecutorService threadpool = Executors.newFixedThreadPool(Math.min(analyzers.size(),partitions.size()));
+      Vector<Future<Void>> futures = new Vector<Future<Void>>();
+      for (Vector<QuantVO> partition : partitions) {
+        futures.add(threadpool.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            LipidomicsAnalyzer analyzer = analyzerPool.take();
+            try {
+              for (QuantVO quantSet : partition)
+                checkIsobaricGroup(quantSet,results,unsplittedPeaks,analyzer,classSequence,affectedMods,interestingQuantVOs,correct,toRemove);
+            } finally {
+              analyzerPool.put(analyzer);
             }
-            for (QuantVO quant : peaksBeforeSplit.keySet()) {
-              for (String ret : peaksBeforeSplit.get(quant).keySet()) {
-                LipidParameterSet set = peaksBeforeSplit.get(quant).get(ret);
-                Hashtable<String,LipidParameterSet> unsplitted = new Hashtable<String,LipidParameterSet>();
-                if (unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).containsKey(set.getModificationName()))
-                  unsplitted = unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).get(set.getModificationName());
-                unsplitted.put(ret, set);
-                unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).put(set.getModificationName(), unsplitted);
-              }
-            }              
+            return null;
           }
-        }
+        }));
+      }
+      threadpool.shutdown();
+      try {
+        for (Future<Void> future : futures)
+          future.get();
+      } catch (InterruptedException ix) {
+        threadpool.shutdownNow();
+        Thread.currentThread().interrupt();
+        throw new CgException("The check for other adducts was interrupted!");
+      } catch (ExecutionException ex) {
+        threadpool.shutdownNow();
+        if (ex.getCause() instanceof CgException)
+          throw (CgException)ex.getCause();
+        if (ex.getCause() instanceof LipidCombinameEncodingException)
+          throw (LipidCombinameEncodingException)ex.getCause();
+        throw new CgException(ex.getCause().getMessage());
       }
     }
     
@@ -303,6 +240,212 @@ public class OtherAdductChecker
   }
   
   
+  /**
+   * enforces the adduct or splits peaks having different adducts for one quantitation instruction and its isobaric species
+   * @param quantSet the quantitation instruction (not quantified by another isobar)
+   * @param results the detected results
+   * @param unsplittedPeaks hash table containing unsplitted peaks; in case of a peak split, this hash is filled with unsplitted versions of the peak
+   * @param analyzer object that holds MS data and can quantify fragments of interest - must not be used by another thread at the same time
+   * @param classSequence the MS levels of each lipid class
+   * @param affectedMods rules that require other adducts; value: is the adduct validity forced
+   * @param interestingQuantVOs unique ids of the quantitation instructions requiring other adducts
+   * @param correct hits where the other adducts were found
+   * @param toRemove hits that have to be removed - is filled by this method
+   * @throws CgException exception that is thrown when there is something wrong with the fragment detection
+   * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+   */
+  private static void checkIsobaricGroup(QuantVO quantSet, Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> results,
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> unsplittedPeaks, LipidomicsAnalyzer analyzer,
+      LinkedHashMap<String,Integer> classSequence, Hashtable<String,Boolean> affectedMods, Hashtable<String,String> interestingQuantVOs,
+      Hashtable<String,LipidParameterSet> correct, Hashtable<String,LipidParameterSet> toRemove) throws CgException, LipidCombinameEncodingException{
+    String mod = quantSet.getModName();
+    Vector<QuantVO> allQuants = new Vector<QuantVO>();
+    boolean isAffected = false;
+    allQuants.add(quantSet);
+    allQuants.addAll(quantSet.getOtherIsobaricSpecies());
+    //check whether this quantVO is shared with something requiring other adducts, and if so, if the other one was found
+    for (QuantVO one : allQuants) {
+      if (!affectedMods.containsKey(StaticUtils.getRuleName(one.getAnalyteClass(),one.getModName())))
+        continue;
+      //in the old version, the next line was wrong - always the default lClass and analyte was provided - could only work if the removed one comes first
+      if (interestingQuantVOs.containsKey(getUniqueId(one.getAnalyteClass(),StaticUtils.generateLipidNameString(one.getAnalyteName(), one.getDbs(), -1, one.getOxState()),mod,"")))
+        isAffected = true;
+    }
+    if (!isAffected)
+      return;
+    Hashtable<String,Hashtable<String,LipidParameterSet>> sameRt = getGroupsOfSameRt(allQuants,results);
+    String uniqueId;
+    for (String rt : sameRt.keySet()) {
+      Hashtable<String,LipidParameterSet> same = sameRt.get(rt);
+      //nothing has to be done where there is no uncertainty
+      if (same.size()<2)
+        continue;
+      Hashtable<String,LipidParameterSet> force = new Hashtable<String,LipidParameterSet>();
+      boolean ms2InformationPresent = false;
+      for (String rule : same.keySet()) {
+        LipidParameterSet set = same.get(rule);
+        String lipClass = rule.substring(0,rule.indexOf("_"));
+        if (set instanceof LipidomicsMSnSet)
+          ms2InformationPresent = true;
+        if (!affectedMods.containsKey(rule) || !affectedMods.get(rule))
+          continue;
+        uniqueId = getUniqueId(lipClass,set.getNameStringWithoutRt(),set.getModificationName(),rt);
+        if (correct.containsKey(uniqueId)) {
+          force.put(uniqueId, set);
+          //System.out.println("I have to force the following ones: "+lClass+analyte+"_"+mod+"_"+rt);
+        }
+      }
+      // if there are hits that have to be forced - all the other ones have to be removed
+      Hashtable<String,LipidParameterSet> forSplit = new Hashtable<String,LipidParameterSet>();
+      if (force.size()>0) {
+        forSplit = force;
+        for (String rule : same.keySet()) {
+          String lipClass = rule.substring(0,rule.indexOf("_"));
+          LipidParameterSet set = same.get(rule);
+          uniqueId = getUniqueId(lipClass,set.getNameStringWithoutRt(),set.getModificationName(),rt);
+          if (!forSplit.containsKey(uniqueId))
+            toRemove.put(uniqueId, set);
+        }
+      // if there are no hits to force, all other ones have to be added to the split that are correct
+      } else {
+        for (String rule : same.keySet()) {
+          String lipClass = rule.substring(0,rule.indexOf("_"));
+          LipidParameterSet set = same.get(rule);
+          uniqueId = getUniqueId(lipClass,set.getNameStringWithoutRt(),set.getModificationName(),rt);
+          if (!toRemove.containsKey(uniqueId))
+            forSplit.put(uniqueId, set);
+        }
+      }
+      
+      if (!ms2InformationPresent)
+        continue;
+      if (forSplit.size()<2) {
+        //if there is only one left, and this one has MS2 information -> check whether the $BASEPEAK rules are fulfilled
+        if (forSplit.size()==1) {
+          String id = forSplit.keySet().iterator().next();
+          String lipClass = getLipidClassFromUniqueId(id);
+          LipidParameterSet set = forSplit.get(id);
+          QuantVO quant = null;
+          for (QuantVO one : allQuants) {
+            if (lipClass.equalsIgnoreCase(one.getAnalyteClass()) && set.getNameStringWithoutRt().equalsIgnoreCase(one.getIdString()) &&
+              set.getModificationName().equalsIgnoreCase(one.getModName())) {
+              quant = one;
+              break;
+            }
+          }
+          try {
+            MSnAnalyzer msnAnalyzer = new MSnAnalyzer(quant.getAnalyteClass(),quant.getModName(),set,analyzer,quant,true,false);
+            if (msnAnalyzer.checkStatus()==LipidomicsMSnSet.DISCARD_HIT)
+              toRemove.put(id, set);
+          } catch (RulesException | IOException | SpectrummillParserException | HydroxylationEncodingException | ChemicalFormulaException e) {
+            e.printStackTrace();
+          }  
+        }
+        continue;
+      }
+      Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hitsWithQuant = new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>();
+      Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> peaksBeforeSplit = new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>();
+      String lipClass = null;
+      for (String id : forSplit.keySet()) {
+        LipidParameterSet set = forSplit.get(id);
+        lipClass = getLipidClassFromUniqueId(id);
+        QuantVO quant = null;
+        for (QuantVO one : allQuants) {
+          if (lipClass.equalsIgnoreCase(one.getAnalyteClass()) && set.getNameStringWithoutRt().equalsIgnoreCase(one.getIdString()) &&
+            set.getModificationName().equalsIgnoreCase(one.getModName())) {
+            quant = one;
+            break;
+          }
+        }
+        if (!hitsWithQuant.containsKey(quant))
+          hitsWithQuant.put(quant, new Hashtable<String,LipidParameterSet>());
+        hitsWithQuant.get(quant).put(set.getRt(), set);
+        //take the unsplitted version if there is any
+        if (unsplittedPeaks.containsKey(quant.getAnalyteClass()) && unsplittedPeaks.get(quant.getAnalyteClass()).containsKey(quant.getIdString())
+        		&& unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).containsKey(quant.getModName())
+        		&& unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).get(quant.getModName()).containsKey(rt))
+        	hitsWithQuant.get(quant).put(set.getRt(), unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).get(quant.getModName()).get(rt));
+        peaksBeforeSplit.put(quant, new Hashtable<String,LipidParameterSet>());
+      }
+      MSnPeakSeparator separator = new MSnPeakSeparator(hitsWithQuant, peaksBeforeSplit, analyzer,  classSequence.get(lipClass),new HashSet<String>());
+      Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hitsAccordingToQuant = separator.disentagleSharedMS1Peaks();
+      //if the hit was removed in the splitting process, add it for removal here
+      for (QuantVO quant : hitsWithQuant.keySet()) {
+        for (String ret : hitsWithQuant.get(quant).keySet()) {
+          if (!hitsAccordingToQuant.containsKey(quant) || !hitsAccordingToQuant.get(quant).containsKey(ret)) {
+            toRemove.put(getUniqueId(quant.getAnalyteClass(),quant.getIdString(),quant.getModName(),ret), hitsWithQuant.get(quant).get(ret));
+          }
+        }
+      }
+      //replace the unsplitted hits with the splitted ones
+      for (QuantVO quant : hitsAccordingToQuant.keySet()) {
+        for (String ret : hitsAccordingToQuant.get(quant).keySet()) {
+          LipidParameterSet set = hitsAccordingToQuant.get(quant).get(ret);
+          results.get(quant.getAnalyteClass()).get(quant.getIdString()).get(set.getModificationName()).put(ret, set);
+        }
+      }
+      for (QuantVO quant : peaksBeforeSplit.keySet()) {
+        for (String ret : peaksBeforeSplit.get(quant).keySet()) {
+          LipidParameterSet set = peaksBeforeSplit.get(quant).get(ret);
+          Hashtable<String,LipidParameterSet> unsplitted = new Hashtable<String,LipidParameterSet>();
+          if (unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).containsKey(set.getModificationName()))
+            unsplitted = unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).get(set.getModificationName());
+          unsplitted.put(ret, set);
+          unsplittedPeaks.get(quant.getAnalyteClass()).get(quant.getIdString()).put(set.getModificationName(), unsplitted);
+        }
+      }              
+    }
+  }
+  
+  
+  /**
+   * partitions the quantitation instructions into sets that do not share any isobaric species;
+   * within one partition, the original sequence is kept
+   * @param groupSequence the quantitation instructions in the sequence of processing
+   * @return the independent partitions
+   */
+  private static Vector<Vector<QuantVO>> partitionIsobaricGroups(Vector<QuantVO> groupSequence){
+    Hashtable<QuantVO,QuantVO> parents = new Hashtable<QuantVO,QuantVO>();
+    for (QuantVO quantSet : groupSequence) {
+      QuantVO root = findPartitionRoot(quantSet,parents);
+      for (QuantVO isobar : quantSet.getOtherIsobaricSpecies()) {
+        QuantVO other = findPartitionRoot(isobar,parents);
+        if (other!=root)
+          parents.put(other, root);
+      }
+    }
+    LinkedHashMap<QuantVO,Vector<QuantVO>> partitions = new LinkedHashMap<QuantVO,Vector<QuantVO>>();
+    for (QuantVO quantSet : groupSequence) {
+      QuantVO root = findPartitionRoot(quantSet,parents);
+      if (!partitions.containsKey(root))
+        partitions.put(root, new Vector<QuantVO>());
+      partitions.get(root).add(quantSet);
+    }
+    return new Vector<Vector<QuantVO>>(partitions.values());
+  }
+  
+  
+  /**
+   * returns the representative of the partition a quantitation instruction belongs to
+   * @param quant the quantitation instruction
+   * @param parents the links to the parent instructions
+   * @return the representative of the partition
+   */
+  private static QuantVO findPartitionRoot(QuantVO quant, Hashtable<QuantVO,QuantVO> parents) {
+    QuantVO root = quant;
+    while (parents.containsKey(root))
+      root = parents.get(root);
+    //shorten the path for the next lookup
+    QuantVO current = quant;
+    while (current!=root) {
+      QuantVO next = parents.get(current);
+      parents.put(current, root);
+      current = next;
+    }
+    return root;
+  }
+  
+  
   /**
    * searches the results whether another required modification is present in the results
    * @param lClass the lipid class to look for
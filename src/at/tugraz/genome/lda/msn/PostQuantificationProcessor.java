@@ -31,6 +31,11 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -79,6 +84,8 @@ public class PostQuantificationProcessor
   private Hashtable<String,LevenbergMarquardtOptimizer> predictedModels_;
   /** does the predicted model respect OH*/
   private Hashtable<String,Boolean> respectOhs_;
+  /** the number of threads for the filtering of the lipid classes*/
+  private int numberOfThreads_;
   
   
   /**
@@ -88,6 +95,20 @@ public class PostQuantificationProcessor
    */
   public PostQuantificationProcessor(Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> results,
       Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> ms2Removed, Hashtable<String,Boolean> adductInsensitiveRtFilter){
+    this(results,ms2Removed,adductInsensitiveRtFilter,1);
+  }
+  
+  /**
+   * constructor requiring the analytes that have to be filtered and the ones for the negative filter (the ones for the negative filter may be empty)
+   * @param results analytes that have to pass the filter
+   * @param ms2Removed analytes for the negative filter (may be empty)
+   * @param adductInsensitiveRtFilter should the RT filter be calculated based on all modifications
+   * @param numberOfThreads the number of threads for filtering the lipid classes in parallel
+   */
+  public PostQuantificationProcessor(Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> results,
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> ms2Removed, Hashtable<String,Boolean> adductInsensitiveRtFilter,
+      int numberOfThreads){
+    numberOfThreads_ = numberOfThreads;
     results_ = results;
     ms2Removed_ = ms2Removed;
     adductInsensitiveRtFilter_ = adductInsensitiveRtFilter;
@@ -116,122 +137,151 @@ public class PostQuantificationProcessor
    * @throws IOException general exception if there is something wrong about the file
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
-  @SuppressWarnings("unchecked")
   public Hashtable<String,Hashtable<String,RtPredictVO>> predictRetentionTimesBasedOnResults(Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> ms1ToPredict, Hashtable<String,Hashtable<String,RtPredictVO>> prevPredictions) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
     Vector<Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>>> dataOrdered = orderData(results_,ms2Removed_,null);
     Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> postProcessData = dataOrdered.get(1);
     Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> negativeExamples = dataOrdered.get(2);
     Hashtable<String,Hashtable<String,RtPredictVO>> rtPredictVOs = new Hashtable<String,Hashtable<String,RtPredictVO>>();
     
+    // the models of the classes are independent of each other
+    Vector<Callable<Void>> tasks = new Vector<Callable<Void>>();
     for (String className : ms1ToPredict.keySet()){
       if (!postProcessData.containsKey(className)) continue;
-      Hashtable<String,RtPredictVO> classRtPredictVOs = new Hashtable<String,RtPredictVO>();
-      for (String mod : postProcessData.get(className).keySet()){
-        Hashtable<String,Hashtable<String,LipidParameterSet>> negatives = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
-        if (negativeExamples.containsKey(className) && negativeExamples.get(className).containsKey(mod)) negatives = negativeExamples.get(className).get(mod);
-        String ruleName = StaticUtils.getRuleName(className, mod);
-        Hashtable<String,Hashtable<String,LipidParameterSet>> result = postProcessData.get(className).get(mod);
-        try {
-          Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>> paramsOrdered = new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>();
-          Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>> negativesOrdered = new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>();
-          @SuppressWarnings("rawtypes")
-          Vector ranges;
-          RangeInteger cAtomsRange = null;
-          Hashtable<Integer,RangeInteger> dbsRanges = null;
+      tasks.add(new Callable<Void>() {
+        public Void call() throws Exception {
+          predictClassRetentionTimes(className,ms1ToPredict,postProcessData,negativeExamples,prevPredictions,rtPredictVOs);
+          return null;
+        }
+      });
+    }
+    executeClassTasks(tasks);
+    return rtPredictVOs;
+  }
+  
+  /**
+   * fits the RT models of one lipid class and predicts the RT of the lipids of this class where no MSn spectra are present
+   * @param className the lipid class
+   * @param ms1ToPredict lipids to quantify where no MSn spectra are present
+   * @param postProcessData the data that is used for the model
+   * @param negativeExamples hits removed by MSn - useable for counter curve
+   * @param prevPredictions the predictions of a previous round - null if there are none
+   * @param rtPredictVOs the returning hash - the predictions of this class are stored there
+   * @throws RulesException specifies in detail which rule has been infringed
+   * @throws NoRuleException thrown if the library is not there
+   * @throws IOException general exception if there is something wrong about the file
+   * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
+   */
+  @SuppressWarnings("unchecked")
+  private void predictClassRetentionTimes(String className, Hashtable<String,Hashtable<String,Hashtable<String,QuantVO>>> ms1ToPredict,
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> postProcessData,
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> negativeExamples,
+      Hashtable<String,Hashtable<String,RtPredictVO>> prevPredictions, Hashtable<String,Hashtable<String,RtPredictVO>> rtPredictVOs)
+      throws RulesException, NoRuleException, IOException, SpectrummillParserException {
+    Hashtable<String,RtPredictVO> classRtPredictVOs = new Hashtable<String,RtPredictVO>();
+    for (String mod : postProcessData.get(className).keySet()){
+      Hashtable<String,Hashtable<String,LipidParameterSet>> negatives = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
+      if (negativeExamples.containsKey(className) && negativeExamples.get(className).containsKey(mod)) negatives = negativeExamples.get(className).get(mod);
+      String ruleName = StaticUtils.getRuleName(className, mod);
+      Hashtable<String,Hashtable<String,LipidParameterSet>> result = postProcessData.get(className).get(mod);
+      try {
+        Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>> paramsOrdered = new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>();
+        Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>> negativesOrdered = new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>();
+        @SuppressWarnings("rawtypes")
+        Vector ranges;
+        RangeInteger cAtomsRange = null;
+        Hashtable<Integer,RangeInteger> dbsRanges = null;
 //          if (prevPredictions!=null && prevPredictions.containsKey(className) && prevPredictions.get(className).containsKey(mod)){
 //            RtPredictVO predVO = prevPredictions.get(className).get(mod);
 //            cAtomsRange = predVO.getcAtomsRange();
 //            dbsRanges = predVO.getDbsRanges();
 //          }else{
-            ranges = groupAccordingToCAtomsAndDoubleBonds(result,new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>(),paramsOrdered,className,ruleName);
-            cAtomsRange = (RangeInteger)ranges.get(0);
-            dbsRanges = (Hashtable<Integer,RangeInteger>)ranges.get(1);
+          ranges = groupAccordingToCAtomsAndDoubleBonds(result,new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>(),paramsOrdered,className,ruleName);
+          cAtomsRange = (RangeInteger)ranges.get(0);
+          dbsRanges = (Hashtable<Integer,RangeInteger>)ranges.get(1);
 //          }
-          @SuppressWarnings({ "rawtypes", "unused" })
-          Vector rangesNeg = groupAccordingToCAtomsAndDoubleBonds(negatives,new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>(),negativesOrdered,className,ruleName);
-          float tolerance = 4f;
-          float maxDev = -1f;
-          if (RulesContainer.getRetentionTimeMaxDeviation(ruleName)!=null) maxDev = new Float(RulesContainer.getRetentionTimeMaxDeviation(ruleName));
-          
-          //this is for oh
-          boolean diffOh = false;
-          int oh = -1;
-          for (Hashtable<Integer,Hashtable<String,LipidParameterSet>> sameC : paramsOrdered.values()){
-            for (Hashtable<String,LipidParameterSet> sameDbs : sameC.values()) {
-              for (LipidParameterSet set : sameDbs.values()) {
-                if (oh==-1)
-                  oh = set.getOhNumber();
-                else if (oh!=set.getOhNumber())
-                  diffOh = true;
-              }
+        @SuppressWarnings({ "rawtypes", "unused" })
+        Vector rangesNeg = groupAccordingToCAtomsAndDoubleBonds(negatives,new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>(),negativesOrdered,className,ruleName);
+        float tolerance = 4f;
+        float maxDev = -1f;
+        if (RulesContainer.getRetentionTimeMaxDeviation(ruleName)!=null) maxDev = new Float(RulesContainer.getRetentionTimeMaxDeviation(ruleName));
+        
+        //this is for oh
+        boolean diffOh = false;
+        int oh = -1;
+        for (Hashtable<Integer,Hashtable<String,LipidParameterSet>> sameC : paramsOrdered.values()){
+          for (Hashtable<String,LipidParameterSet> sameDbs : sameC.values()) {
+            for (LipidParameterSet set : sameDbs.values()) {
+              if (oh==-1)
+                oh = set.getOhNumber();
+              else if (oh!=set.getOhNumber())
+                diffOh = true;
             }
           }
-          @SuppressWarnings("rawtypes")
-          Vector resultsLM = doIterativeLMOptimization(paramsOrdered,paramsOrdered,cAtomsRange,dbsRanges,negativesOrdered,tolerance,maxDev,diffOh);
-          LevenbergMarquardtOptimizer optimizer = (LevenbergMarquardtOptimizer)resultsLM.get(0);
-          LevenbergMarquardtOptimizer counterModel = (LevenbergMarquardtOptimizer)resultsLM.get(1);
-                    
-          // the model was fitted - now check for which hits shall we make the prediction
-          Hashtable<String,Hashtable<String,LipidParameterSet>> unprocResult = new Hashtable<String,Hashtable<String,LipidParameterSet>>(result); 
-          for (String analyteName : ms1ToPredict.get(className).keySet()){
-            Hashtable<String,QuantVO> analytesMod = ms1ToPredict.get(className).get(analyteName);
-            if (!analytesMod.containsKey(mod) || unprocResult.containsKey(analyteName)) continue;
-            QuantVO quantVO = analytesMod.get(mod);
-            LipidParameterSet setForPred = new LipidParameterSet((float)quantVO.getAnalyteMass(), quantVO.getAnalyteName(),
-                quantVO.getDbs(), quantVO.getModName(), -1.0, quantVO.getAnalyteFormula(), quantVO.getModFormula(),
-                quantVO.getCharge(), quantVO.getOhNumber());
-            Hashtable<String,LipidParameterSet> forPred = new Hashtable<String,LipidParameterSet>();
-            forPred.put(setForPred.getRt(), setForPred);
-            unprocResult.put(analyteName, forPred);
-          }
-          Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>> unprocessed = new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>();
-          ranges = groupAccordingToCAtomsAndDoubleBonds(unprocResult,new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>(),unprocessed,className,ruleName);
-          RangeInteger cAtomsMaxRange = (RangeInteger)ranges.get(0);
-          Hashtable<Integer,RangeInteger> dbsMaxRanges = (Hashtable<Integer,RangeInteger>)ranges.get(1);
-          if (prevPredictions!=null && prevPredictions.containsKey(className) && prevPredictions.get(className).containsKey(mod)){
-            RtPredictVO predVO = prevPredictions.get(className).get(mod);
-            cAtomsRange = predVO.getcAtomsRange();
-            dbsRanges = predVO.getDbsRanges();
-          }
-          @SuppressWarnings("rawtypes")
-          Vector proposedRanges = proposeLMFilterRanges(unprocessed, cAtomsMaxRange, dbsMaxRanges, cAtomsRange, dbsRanges);
-          RangeInteger newCAtomsRange = (RangeInteger)proposedRanges.get(0);
-          Hashtable<Integer,RangeInteger> newDbsRanges = (Hashtable<Integer,RangeInteger>) proposedRanges.get(1);
+        }
+        @SuppressWarnings("rawtypes")
+        Vector resultsLM = doIterativeLMOptimization(paramsOrdered,paramsOrdered,cAtomsRange,dbsRanges,negativesOrdered,tolerance,maxDev,diffOh);
+        LevenbergMarquardtOptimizer optimizer = (LevenbergMarquardtOptimizer)resultsLM.get(0);
+        LevenbergMarquardtOptimizer counterModel = (LevenbergMarquardtOptimizer)resultsLM.get(1);
+                  
+        // the model was fitted - now check for which hits shall we make the prediction
+        Hashtable<String,Hashtable<String,LipidParameterSet>> unprocResult = new Hashtable<String,Hashtable<String,LipidParameterSet>>(result); 
+        for (String analyteName : ms1ToPredict.get(className).keySet()){
+          Hashtable<String,QuantVO> analytesMod = ms1ToPredict.get(className).get(analyteName);
+          if (!analytesMod.containsKey(mod) || unprocResult.containsKey(analyteName)) continue;
+          QuantVO quantVO = analytesMod.get(mod);
+          LipidParameterSet setForPred = new LipidParameterSet((float)quantVO.getAnalyteMass(), quantVO.getAnalyteName(),
+              quantVO.getDbs(), quantVO.getModName(), -1.0, quantVO.getAnalyteFormula(), quantVO.getModFormula(),
+              quantVO.getCharge(), quantVO.getOhNumber());
+          Hashtable<String,LipidParameterSet> forPred = new Hashtable<String,LipidParameterSet>();
+          forPred.put(setForPred.getRt(), setForPred);
+          unprocResult.put(analyteName, forPred);
+        }
+        Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>> unprocessed = new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>();
+        ranges = groupAccordingToCAtomsAndDoubleBonds(unprocResult,new Hashtable<Integer,Hashtable<Integer,Hashtable<String,LipidParameterSet>>>(),unprocessed,className,ruleName);
+        RangeInteger cAtomsMaxRange = (RangeInteger)ranges.get(0);
+        Hashtable<Integer,RangeInteger> dbsMaxRanges = (Hashtable<Integer,RangeInteger>)ranges.get(1);
+        if (prevPredictions!=null && prevPredictions.containsKey(className) && prevPredictions.get(className).containsKey(mod)){
+          RtPredictVO predVO = prevPredictions.get(className).get(mod);
+          cAtomsRange = predVO.getcAtomsRange();
+          dbsRanges = predVO.getDbsRanges();
+        }
+        @SuppressWarnings("rawtypes")
+        Vector proposedRanges = proposeLMFilterRanges(unprocessed, cAtomsMaxRange, dbsMaxRanges, cAtomsRange, dbsRanges);
+        RangeInteger newCAtomsRange = (RangeInteger)proposedRanges.get(0);
+        Hashtable<Integer,RangeInteger> newDbsRanges = (Hashtable<Integer,RangeInteger>) proposedRanges.get(1);
 //        this is only for debug purposes
 //          for (int i=newCAtomsRange.getStart(); i<=newCAtomsRange.getStop(); i++){
 //            if (!newDbsRanges.containsKey(i)) continue;
 //            RangeInteger dbsRange = newDbsRanges.get(i);
 //            System.out.println("Proposed Range calculation: "+i+":"+dbsRange.getStart()+"-"+dbsRange.getStop());
 //          }
-          RtPredictVO predVO = new RtPredictVO(optimizer,counterModel,newCAtomsRange,newDbsRanges);
-          classRtPredictVOs.put(mod, predVO);
-          
-          Pattern cAtomsPattern =  Pattern.compile(RulesContainer.getCAtomsFromNamePattern(ruleName));
-          Pattern dbsPattern =  Pattern.compile(RulesContainer.getDoubleBondsFromNamePattern(ruleName));
-          for (String analyteName : ms1ToPredict.get(className).keySet()){
-            Hashtable<String,QuantVO> analytesMod = ms1ToPredict.get(className).get(analyteName);
-            if (!analytesMod.containsKey(mod)) continue;
-            QuantVO quantVO = analytesMod.get(mod);
-            Matcher cAtomsMatcher = cAtomsPattern.matcher(analyteName.split(LipidomicsConstants.CHAIN_MOD_SEPARATOR)[0]);
-            if (!cAtomsMatcher.matches()) throw new RulesException("The analyte "+analyteName+" does not match the "+FragRuleParser.GENERAL_CATOMS_PARSE+" pattern \""+RulesContainer.getCAtomsFromNamePattern(ruleName)+"\" of the class "+ruleName+"!");
-            Matcher dbsMatcher = dbsPattern.matcher(analyteName.split(LipidomicsConstants.CHAIN_MOD_SEPARATOR)[0]);
-            int cAtoms = Integer.parseInt(cAtomsMatcher.group(1));
-            if (!dbsMatcher.matches()) throw new RulesException("The analyte "+analyteName+" does not match the "+FragRuleParser.GENERAL_DBOND_PARSE+" pattern \""+RulesContainer.getDoubleBondsFromNamePattern(ruleName)+"\" of the class "+ruleName+"!");
-            int dbs = Integer.parseInt(dbsMatcher.group(1));
+        RtPredictVO predVO = new RtPredictVO(optimizer,counterModel,newCAtomsRange,newDbsRanges);
+        classRtPredictVOs.put(mod, predVO);
+        
+        Pattern cAtomsPattern =  Pattern.compile(RulesContainer.getCAtomsFromNamePattern(ruleName));
+        Pattern dbsPattern =  Pattern.compile(RulesContainer.getDoubleBondsFromNamePattern(ruleName));
+        for (String analyteName : ms1ToPredict.get(className).keySet()){
+          Hashtable<String,QuantVO> analytesMod = ms1ToPredict.get(className).get(analyteName);
+          if (!analytesMod.containsKey(mod)) continue;
+          QuantVO quantVO = analytesMod.get(mod);
+          Matcher cAtomsMatcher = cAtomsPattern.matcher(analyteName.split(LipidomicsConstants.CHAIN_MOD_SEPARATOR)[0]);
+          if (!cAtomsMatcher.matches()) throw new RulesException("The analyte "+analyteName+" does not match the "+FragRuleParser.GENERAL_CATOMS_PARSE+" pattern \""+RulesContainer.getCAtomsFromNamePattern(ruleName)+"\" of the class "+ruleName+"!");
+          Matcher dbsMatcher = dbsPattern.matcher(analyteName.split(LipidomicsConstants.CHAIN_MOD_SEPARATOR)[0]);
+          int cAtoms = Integer.parseInt(cAtomsMatcher.group(1));
+          if (!dbsMatcher.matches()) throw new RulesException("The analyte "+analyteName+" does not match the "+FragRuleParser.GENERAL_DBOND_PARSE+" pattern \""+RulesContainer.getDoubleBondsFromNamePattern(ruleName)+"\" of the class "+ruleName+"!");
+          int dbs = Integer.parseInt(dbsMatcher.group(1));
 // the lines with the 4/ are necessary if the prediction is based on consecutive model predictions
 ////            if (!newDbsRanges.containsKey(cAtoms)) continue;
 ////            RangeInteger dbsRange = newDbsRanges.get(cAtoms);
 ////            if (dbsRange.insideRange(dbs))
-              quantVO.setRetTime(optimizer.calculateFitValue(new float[]{cAtoms,dbs}));
-          }          
-        }
-        catch (LMException e) {
-          System.out.println("Warning: "+className+"_"+mod+" was not RT filtered: "+e.getMessage());
-        }
+            quantVO.setRetTime(optimizer.calculateFitValue(new float[]{cAtoms,dbs}));
+        }          
+      }
+      catch (LMException e) {
+        System.out.println("Warning: "+className+"_"+mod+" was not RT filtered: "+e.getMessage());
       }
-      if (classRtPredictVOs.size()>0) rtPredictVOs.put(className, classRtPredictVOs);
     }
-    return rtPredictVOs;
+    if (classRtPredictVOs.size()>0) rtPredictVOs.put(className, classRtPredictVOs);
   }
 
   
@@ -247,130 +297,210 @@ public class PostQuantificationProcessor
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   private Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> correctByRetentionTimeSeries(Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> unprocessed,
-      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> ms2Removed, Hashtable<String,Boolean> adductInsensitiveRtFilter_) throws RulesException, NoRuleException, IOException, SpectrummillParserException{
-    Vector<Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>>> dataOrdered = orderData(unprocessed,ms2Removed,adductInsensitiveRtFilter_);
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> ms2Removed, Hashtable<String,Boolean> adductInsensitiveRtFilter) throws RulesException, NoRuleException, IOException, SpectrummillParserException{
+    Vector<Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>>> dataOrdered = orderData(unprocessed,ms2Removed,adductInsensitiveRtFilter);
     Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> results = dataOrdered.get(0);
     Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> postProcessData = dataOrdered.get(1);
     Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> negativeExamples = dataOrdered.get(2);
-    // start post processing for every class mod combination
+    // start post processing for every class mod combination - the classes are independent of each other
+    Vector<Callable<Void>> tasks = new Vector<Callable<Void>>();
     for (String className : postProcessData.keySet()){
-      if (adductInsensitiveRtFilter_.get(className)){
-        boolean diffOh = false;
-        int oh = -1;
-        Hashtable<String,Hashtable<String,LipidParameterSet>> resultsModIgnored = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
-        Hashtable<String,Hashtable<String,LipidParameterSet>> negatives = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
-        String anyValidRuleName = null;
-        float maxDev = -1f;
-        //TODO: here have to introduce separate RT processing according to the number of OHs!!!
-        for (String mod : postProcessData.get(className).keySet()){
-          try{
-            if (RulesContainer.isRtPostprocessing(StaticUtils.getRuleName(className,mod))){
-              anyValidRuleName = StaticUtils.getRuleName(className,mod);
-              float aDev = -1f;
-              if (RulesContainer.getRetentionTimeMaxDeviation(anyValidRuleName)!=null) aDev = new Float(RulesContainer.getRetentionTimeMaxDeviation(anyValidRuleName));
-              if (aDev>0 && aDev>maxDev) maxDev = aDev;
-            }
-          }catch(Exception ex){}
-          Hashtable<String,Hashtable<String,LipidParameterSet>> analytes = postProcessData.get(className).get(mod);
-          Hashtable<String,Hashtable<String,LipidParameterSet>> negative = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
-          if (negativeExamples.containsKey(className) && negativeExamples.get(className).containsKey(mod)) negative = negativeExamples.get(className).get(mod);
-          for (String analyteName : analytes.keySet()){
-            Hashtable<String,LipidParameterSet> sameAnalyte = new Hashtable<String,LipidParameterSet>();
-            if (resultsModIgnored.containsKey(analyteName)) sameAnalyte = resultsModIgnored.get(analyteName);
-            for (String rt : analytes.get(analyteName).keySet()){
-              if (sameAnalyte.containsKey(rt)){
-                int count = 1;
-                while (sameAnalyte.containsKey(rt+"_"+count)) count++;
-                sameAnalyte.put(rt+"_"+String.valueOf(count), analytes.get(analyteName).get(rt));
-              } else sameAnalyte.put(rt, analytes.get(analyteName).get(rt));
-              
-              //for oh
-              if (oh==-1)
-                oh = analytes.get(analyteName).get(rt).getOhNumber();
-              else if (oh!=analytes.get(analyteName).get(rt).getOhNumber())
-                diffOh = true;
-            }
-            resultsModIgnored.put(analyteName,sameAnalyte);
+      tasks.add(new Callable<Void>() {
+        public Void call() throws Exception {
+          correctClassByRetentionTimeSeries(className,results,postProcessData,negativeExamples,adductInsensitiveRtFilter);
+          return null;
+        }
+      });
+    }
+    executeClassTasks(tasks);
+    return results;
+  }
+  
+  /**
+   * executes the tasks of independent lipid classes - in parallel if more than one thread is allowed
+   * @param tasks the tasks for the lipid classes
+   * @throws RulesException specifies in detail which rule has been infringed
+   * @throws NoRuleException thrown if the library is not there
+   * @throws IOException general exception if there is something wrong about the file
+   * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
+   */
+  private void executeClassTasks(Vector<Callable<Void>> tasks) throws RulesException, NoRuleException, IOException, SpectrummillParserException{
+    if (numberOfThreads_<2 || tasks.size()<2) {
+      for (Callable<Void> task : tasks){
+        try {
+          task.call();
+        } catch (Exception ex) {
+          throwClassTaskException(ex);
+        }
+      }
+    } else {
+      ExecutorService threadpool = Executors.newFixedThreadPool(Math.min(numberOfThreads_,tasks.size()));
+      Vector<Future<Void>> futures = new Vector<Future<Void>>();
+      for (Callable<Void> task : tasks)
+        futures.add(threadpool.submit(task));
+      threadpool.shutdown();
+      try {
+        for (Future<Void> future : futures)
+          future.get();
+      } catch (InterruptedException ix) {
+        threadpool.shutdownNow();
+        Thread.currentThread().interrupt();
+        throw new RulesException("The retention time post processing was interrupted!");
+      } catch (ExecutionException ex) {
+        threadpool.shutdownNow();
+        throwClassTaskException(ex.getCause());
+      }
+    }
+  }
+  
+  /**
+   * rethrows an exception of a lipid class task in its original type
+   * @param cause the exception thrown by the task
+   * @throws RulesException specifies in detail which rule has been infringed
+   * @throws NoRuleException thrown if the library is not there
+   * @throws IOException general exception if there is something wrong about the file
+   * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
+   */
+  private void throwClassTaskException(Throwable cause) throws RulesException, NoRuleException, IOException, SpectrummillParserException{
+    if (cause instanceof RulesException) throw (RulesException)cause;
+    if (cause instanceof NoRuleException) throw (NoRuleException)cause;
+    if (cause instanceof IOException) throw (IOException)cause;
+    if (cause instanceof SpectrummillParserException) throw (SpectrummillParserException)cause;
+    if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+    throw new RulesException(cause.getMessage());
+  }
+  
+  /**
+   * filters the hits of one lipid class by the retention time series
+   * @param className the lipid class
+   * @param results the returning hash - the results of this class are stored here
+   * @param postProcessData the data that has to be post processed
+   * @param negativeExamples hits removed by MSn - useable for counter curve
+   * @param adductInsensitiveRtFilter should the RT filter be calculated based on all modifications
+   * @throws RulesException specifies in detail which rule has been infringed
+   * @throws NoRuleException thrown if the library is not there
+   * @throws IOException general exception if there is something wrong about the file
+   * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
+   */
+  private void correctClassByRetentionTimeSeries(String className, Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> results,
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> postProcessData,
+      Hashtable<String,Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>> negativeExamples,
+      Hashtable<String,Boolean> adductInsensitiveRtFilter) throws RulesException, NoRuleException, IOException, SpectrummillParserException{
+    if (adductInsensitiveRtFilter.get(className)){
+      boolean diffOh = false;
+      int oh = -1;
+      Hashtable<String,Hashtable<String,LipidParameterSet>> resultsModIgnored = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
+      Hashtable<String,Hashtable<String,LipidParameterSet>> negatives = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
+      String anyValidRuleName = null;
+      float maxDev = -1f;
+      //TODO: here have to introduce separate RT processing according to the number of OHs!!!
+      for (String mod : postProcessData.get(className).keySet()){
+        try{
+          if (RulesContainer.isRtPostprocessing(StaticUtils.getRuleName(className,mod))){
+            anyValidRuleName = StaticUtils.getRuleName(className,mod);
+            float aDev = -1f;
+            if (RulesContainer.getRetentionTimeMaxDeviation(anyValidRuleName)!=null) aDev = new Float(RulesContainer.getRetentionTimeMaxDeviation(anyValidRuleName));
+            if (aDev>0 && aDev>maxDev) maxDev = aDev;
           }
-          for (String analyteName : negative.keySet()){
-            Hashtable<String,LipidParameterSet> sameAnalyte = new Hashtable<String,LipidParameterSet>();
-            if (negatives.containsKey(analyteName)) sameAnalyte = negatives.get(analyteName);
-            for (String rt : negative.get(analyteName).keySet()){
-              if (sameAnalyte.containsKey(rt)){
-                int count = 1;
-                while (sameAnalyte.containsKey(rt+"_"+count)) count++;
-                sameAnalyte.put(rt+"_"+String.valueOf(count), negative.get(analyteName).get(rt));
-              } else sameAnalyte.put(rt, negative.get(analyteName).get(rt));
-            }
-            negatives.put(analyteName,sameAnalyte);
+        }catch(Exception ex){}
+        Hashtable<String,Hashtable<String,LipidParameterSet>> analytes = postProcessData.get(className).get(mod);
+        Hashtable<String,Hashtable<String,LipidParameterSet>> negative = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
+        if (negativeExamples.containsKey(className) && negativeExamples.get(className).containsKey(mod)) negative = negativeExamples.get(className).get(mod);
+        for (String analyteName : analytes.keySet()){
+          Hashtable<String,LipidParameterSet> sameAnalyte = new Hashtable<String,LipidParameterSet>();
+          if (resultsModIgnored.containsKey(analyteName)) sameAnalyte = resultsModIgnored.get(analyteName);
+          for (String rt : analytes.get(analyteName).keySet()){
+            if (sameAnalyte.containsKey(rt)){
+              int count = 1;
+              while (sameAnalyte.containsKey(rt+"_"+count)) count++;
+              sameAnalyte.put(rt+"_"+String.valueOf(count), analytes.get(analyteName).get(rt));
+            } else sameAnalyte.put(rt, analytes.get(analyteName).get(rt));
+            
+            //for oh
+            if (oh==-1)
+              oh = analytes.get(analyteName).get(rt).getOhNumber();
+            else if (oh!=analytes.get(analyteName).get(rt).getOhNumber())
+              diffOh = true;
+          }
+          resultsModIgnored.put(analyteName,sameAnalyte);
+        }
+        for (String analyteName : negative.keySet()){
+          Hashtable<String,LipidParameterSet> sameAnalyte = new Hashtable<String,LipidParameterSet>();
+          if (negatives.containsKey(analyteName)) sameAnalyte = negatives.get(analyteName);
+          for (String rt : negative.get(analyteName).keySet()){
+            if (sameAnalyte.containsKey(rt)){
+              int count = 1;
+              while (sameAnalyte.containsKey(rt+"_"+count)) count++;
+              sameAnalyte.put(rt+"_"+String.valueOf(count), negative.get(analyteName).get(rt));
+            } else sameAnalyte.put(rt, negative.get(analyteName).get(rt));
           }
+          negatives.put(analyteName,sameAnalyte);
+        }
+      }
+      float minDev = extractMinimumAcceptedDeviationValue(className,resultsModIgnored);
+      try {
+        resultsModIgnored = filterRetentionTimeSeries(className,anyValidRuleName,resultsModIgnored,negatives,maxDev,minDev,true,diffOh);
+      }
+      catch (LMException e) {
+        System.out.println("Warning: "+className+" was not RT filtered: "+e.getMessage());
+      }
+      // store the results to the returning hash
+      Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>> resultsClass = new Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>();
+      for (String analyteName : resultsModIgnored.keySet()){
+        Hashtable<String,Hashtable<String,LipidParameterSet>> resultsAnalyte = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
+        Hashtable<String,LipidParameterSet> sameAnalyte = resultsModIgnored.get(analyteName);
+        for (String rt : sameAnalyte.keySet()){
+          LipidParameterSet set = sameAnalyte.get(rt);
+          String finalRt = new String(rt);
+          if (finalRt.indexOf("_")!=-1) finalRt = finalRt.substring(0,finalRt.indexOf("_"));
+          String mod = set.getModificationName();
+          Hashtable<String,LipidParameterSet> resultsMod = new Hashtable<String,LipidParameterSet>();
+          if (resultsAnalyte.containsKey(mod)) resultsMod = resultsAnalyte.get(mod);
+          resultsMod.put(finalRt, set);
+          resultsAnalyte.put(mod, resultsMod);
+          resultsClass.put(analyteName, resultsAnalyte);
+          results.put(className,resultsClass);
+        }
+      }
+    }else{ 
+      for (String mod : postProcessData.get(className).keySet()){
+        Hashtable<String,Hashtable<String,LipidParameterSet>> negatives = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
+        if (negativeExamples.containsKey(className) && negativeExamples.get(className).containsKey(mod)) negatives = negativeExamples.get(className).get(mod);
+        String ruleName = StaticUtils.getRuleName(className, mod);
+        Hashtable<String,Hashtable<String,LipidParameterSet>> result = postProcessData.get(className).get(mod);
+        //this is for oh
+        boolean diffOh = false;
+        int oh = -1;
+        for (Hashtable<String,LipidParameterSet> sameAnalyte : result.values()){
+          for (LipidParameterSet set : sameAnalyte.values()) {
+            if (oh==-1)
+              oh = set.getOhNumber();
+            else if (oh!=set.getOhNumber())
+              diffOh = true;
+         }
         }
-        float minDev = extractMinimumAcceptedDeviationValue(className,resultsModIgnored);
         try {
-          resultsModIgnored = filterRetentionTimeSeries(className,anyValidRuleName,resultsModIgnored,negatives,maxDev,minDev,true,diffOh);
+          float maxDev = -1f;
+          if (RulesContainer.getRetentionTimeMaxDeviation(ruleName)!=null) maxDev = new Float(RulesContainer.getRetentionTimeMaxDeviation(ruleName));
+          float minDev = extractMinimumAcceptedDeviationValue(className,postProcessData.get(className).get(mod));
+          result = filterRetentionTimeSeries(className,ruleName,postProcessData.get(className).get(mod),negatives,maxDev,minDev,false,diffOh);
         }
         catch (LMException e) {
-          System.out.println("Warning: "+className+" was not RT filtered: "+e.getMessage());
+          System.out.println("Warning: "+className+"_"+mod+" was not RT filtered: "+e.getMessage());
         }
+
         // store the results to the returning hash
         Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>> resultsClass = new Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>();
-        for (String analyteName : resultsModIgnored.keySet()){
+        if (results.containsKey(className)) resultsClass = results.get(className);
+        for (String analyteName : result.keySet()){
           Hashtable<String,Hashtable<String,LipidParameterSet>> resultsAnalyte = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
-          Hashtable<String,LipidParameterSet> sameAnalyte = resultsModIgnored.get(analyteName);
-          for (String rt : sameAnalyte.keySet()){
-            LipidParameterSet set = sameAnalyte.get(rt);
-            String finalRt = new String(rt);
-            if (finalRt.indexOf("_")!=-1) finalRt = finalRt.substring(0,finalRt.indexOf("_"));
-            String mod = set.getModificationName();
-            Hashtable<String,LipidParameterSet> resultsMod = new Hashtable<String,LipidParameterSet>();
-            if (resultsAnalyte.containsKey(mod)) resultsMod = resultsAnalyte.get(mod);
-            resultsMod.put(finalRt, set);
-            resultsAnalyte.put(mod, resultsMod);
-            resultsClass.put(analyteName, resultsAnalyte);
-            results.put(className,resultsClass);
-          }
-        }
-      }else{ 
-        for (String mod : postProcessData.get(className).keySet()){
-          Hashtable<String,Hashtable<String,LipidParameterSet>> negatives = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
-          if (negativeExamples.containsKey(className) && negativeExamples.get(className).containsKey(mod)) negatives = negativeExamples.get(className).get(mod);
-          String ruleName = StaticUtils.getRuleName(className, mod);
-          Hashtable<String,Hashtable<String,LipidParameterSet>> result = postProcessData.get(className).get(mod);
-          //this is for oh
-          boolean diffOh = false;
-          int oh = -1;
-          for (Hashtable<String,LipidParameterSet> sameAnalyte : result.values()){
-            for (LipidParameterSet set : sameAnalyte.values()) {
-              if (oh==-1)
-                oh = set.getOhNumber();
-              else if (oh!=set.getOhNumber())
-                diffOh = true;
-           }
-          }
-          try {
-            float maxDev = -1f;
-            if (RulesContainer.getRetentionTimeMaxDeviation(ruleName)!=null) maxDev = new Float(RulesContainer.getRetentionTimeMaxDeviation(ruleName));
-            float minDev = extractMinimumAcceptedDeviationValue(className,postProcessData.get(className).get(mod));
-            result = filterRetentionTimeSeries(className,ruleName,postProcessData.get(className).get(mod),negatives,maxDev,minDev,false,diffOh);
-          }
-          catch (LMException e) {
-            System.out.println("Warning: "+className+"_"+mod+" was not RT filtered: "+e.getMessage());
-          }
-
-          // store the results to the returning hash
-          Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>> resultsClass = new Hashtable<String,Hashtable<String,Hashtable<String,LipidParameterSet>>>();
-          if (results.containsKey(className)) resultsClass = results.get(className);
-          for (String analyteName : result.keySet()){
-            Hashtable<String,Hashtable<String,LipidParameterSet>> resultsAnalyte = new Hashtable<String,Hashtable<String,LipidParameterSet>>();
-            if (resultsClass.containsKey(analyteName)) resultsAnalyte = resultsClass.get(analyteName);
-            resultsAnalyte.put(mod, result.get(analyteName));
-            resultsClass.put(analyteName, resultsAnalyte);
-            results.put(className,resultsClass);
-          }
+          if (resultsClass.containsKey(analyteName)) resultsAnalyte = resultsClass.get(analyteName);
+          resultsAnalyte.put(mod, result.get(analyteName));
+          resultsClass.put(analyteName, resultsAnalyte);
+          results.put(className,resultsClass);
         }
       }
     }
-    return results;
   }
   
   /**
@@ -30,6 +30,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
 
+import at.tugraz.genome.lda.LipidomicsConstants;
 import at.tugraz.genome.lda.Settings;
 import at.tugraz.genome.lda.exception.NoRuleException;
 import at.tugraz.genome.lda.exception.RulesException;
@@ -96,6 +97,14 @@ public class RulesContainer
     return instances_.get(rulesDir);
   }
   
+  /**
+   * @return the rules directory of the QuantificationDaemon job running in this thread; otherwise the directory selected for quantitation
+   */
+  public static String getCurrentRulesDir(){
+    String jobRulesDir = LipidomicsConstants.getJobRulesDir();
+    return jobRulesDir!=null ? jobRulesDir : currentRulesDir_;
+  }
+  
   /** tells to RulesContainer to use the permanent rules directory for quantitation*/
   public static void usePermanentRulesDir(){
     currentRulesDir_ = DEFAULT_RULES_DIR;
@@ -161,7 +170,7 @@ public class RulesContainer
    */
   private static RulesContainer checkIfRuleExists(String rule, String rulesDir) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
     String rDir = rulesDir;
-    if (rDir==null || rDir.length()==0) rDir = currentRulesDir_;
+    if (rDir==null || rDir.length()==0) rDir = getCurrentRulesDir();
     RulesContainer instance = getInstance(rDir);
     if (!instance.hasRule(rule)) {
       throw new NoRuleException(String.format("There is no MS2 rule for the analyte class \"%s\"!", rule));
@@ -179,7 +188,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getChainlibrary(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getChainlibrary(ruleName, currentRulesDir_);
+    return getChainlibrary(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -206,7 +215,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getLcbLibrary(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getLcbLibrary(ruleName, currentRulesDir_);
+    return getLcbLibrary(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -234,7 +243,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getCAtomsFromNamePattern(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getCAtomsFromNamePattern(ruleName, currentRulesDir_);
+    return getCAtomsFromNamePattern(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -262,7 +271,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getDoubleBondsFromNamePattern(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getDoubleBondsFromNamePattern(ruleName, currentRulesDir_);
+    return getDoubleBondsFromNamePattern(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -290,7 +299,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getAmountOfChains(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getAmountOfChains(ruleName, currentRulesDir_);
+    return getAmountOfChains(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -318,7 +327,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getAmountOfAlkylChains(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getAmountOfAlkylChains(ruleName, currentRulesDir_);
+    return getAmountOfAlkylChains(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -346,7 +355,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getAmountOfAlkenylChains(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getAmountOfAlkenylChains(ruleName, currentRulesDir_);
+    return getAmountOfAlkenylChains(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -374,7 +383,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getAmountOfLCBs(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getAmountOfLCBs(ruleName, currentRulesDir_);
+    return getAmountOfLCBs(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -402,7 +411,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static RangeInteger getFaHydroxyRange(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getFaHydroxyRange(ruleName, currentRulesDir_);
+    return getFaHydroxyRange(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -430,7 +439,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static RangeInteger getLcbHydroxyRange(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getLcbHydroxyRange(ruleName, currentRulesDir_);
+    return getLcbHydroxyRange(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -459,7 +468,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static double getBasePeakCutoff(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getBasePeakCutoff(ruleName, currentRulesDir_);
+    return getBasePeakCutoff(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -488,7 +497,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getBasePeakCutoffAsString(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getBasePeakCutoffAsString(ruleName, currentRulesDir_);
+    return getBasePeakCutoffAsString(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -518,7 +527,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static double getChainCutoff(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getChainCutoff(ruleName, currentRulesDir_);
+    return getChainCutoff(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -546,7 +555,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getChainCutoffAsString(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getChainCutoffAsString(ruleName, currentRulesDir_);
+    return getChainCutoffAsString(ruleName, getCurrentRulesDir());
   }
 
   /** 
@@ -579,7 +588,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static double getSpectrumCoverageMin(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getSpectrumCoverageMin(ruleName, currentRulesDir_);
+    return getSpectrumCoverageMin(ruleName, getCurrentRulesDir());
   }
 
   
@@ -609,7 +618,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getSpectrumCoverageMinAsString(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getSpectrumCoverageMinAsString(ruleName, currentRulesDir_);
+    return getSpectrumCoverageMinAsString(ruleName, getCurrentRulesDir());
   }
 
   
@@ -640,7 +649,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static boolean isRtPostprocessing(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return isRtPostprocessing(ruleName, currentRulesDir_);
+    return isRtPostprocessing(ruleName, getCurrentRulesDir());
   }
 
   
@@ -670,7 +679,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static boolean correctRtForParallelModel(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return correctRtForParallelModel(ruleName, currentRulesDir_);
+    return correctRtForParallelModel(ruleName, getCurrentRulesDir());
   }
 
   
@@ -701,7 +710,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getRetentionTimeMaxDeviation(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getRetentionTimeMaxDeviation(ruleName, currentRulesDir_);
+    return getRetentionTimeMaxDeviation(ruleName, getCurrentRulesDir());
   }
 
   
@@ -732,7 +741,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getPeakUnionTime(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getPeakUnionTime(ruleName, currentRulesDir_);
+    return getPeakUnionTime(ruleName, getCurrentRulesDir());
   }
 
   
@@ -763,7 +772,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static boolean isUnionWithoutPosition(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return isUnionWithoutPosition(ruleName, currentRulesDir_);
+    return isUnionWithoutPosition(ruleName, getCurrentRulesDir());
   }
 
   
@@ -794,7 +803,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getMS1PeakCutoff(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getMS1PeakCutoff(ruleName, currentRulesDir_);
+    return getMS1PeakCutoff(ruleName, getCurrentRulesDir());
   }
 
   
@@ -824,7 +833,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getIsobarExclusionRatio(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getIsobarExclusionRatio(ruleName, currentRulesDir_);
+    return getIsobarExclusionRatio(ruleName, getCurrentRulesDir());
   }
 
   
@@ -854,7 +863,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getIsobarFarExclusionRatio(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getIsobarFarExclusionRatio(ruleName, currentRulesDir_);
+    return getIsobarFarExclusionRatio(ruleName, getCurrentRulesDir());
   }
 
   
@@ -884,7 +893,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static String getIsobarFarRtDifference(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getIsobarFarRtDifference(ruleName, currentRulesDir_);
+    return getIsobarFarRtDifference(ruleName, getCurrentRulesDir());
   }
 
   
@@ -914,7 +923,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static Hashtable<String,FragmentRuleVO> getHeadFragmentRules(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getHeadFragmentRules(ruleName, currentRulesDir_);
+    return getHeadFragmentRules(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -942,7 +951,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static Vector<IntensityRuleVO> getHeadIntensityRules(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getHeadIntensityRules(ruleName, currentRulesDir_);
+    return getHeadIntensityRules(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -970,7 +979,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static Hashtable<String,FragmentRuleVO> getChainFragmentRules(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getChainFragmentRules(ruleName, currentRulesDir_);
+    return getChainFragmentRules(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -998,7 +1007,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static Vector<IntensityRuleVO> getChainIntensityRules(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getChainIntensityRules(ruleName, currentRulesDir_);
+    return getChainIntensityRules(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -1026,7 +1035,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */  
   public static Vector<IntensityRuleVO> getPositionIntensityRules(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getPositionIntensityRules(ruleName, currentRulesDir_);
+    return getPositionIntensityRules(ruleName, getCurrentRulesDir());
   }
   
   /** 
@@ -1055,7 +1064,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static boolean isSingleChainIdentification(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return isSingleChainIdentification(ruleName, currentRulesDir_);
+    return isSingleChainIdentification(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1084,7 +1093,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static int getMSIdentificationOrder(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getMSIdentificationOrder(ruleName, currentRulesDir_);
+    return getMSIdentificationOrder(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1114,7 +1123,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static int[] getSpectrumLevelRange(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getSpectrumLevelRange(ruleName, currentRulesDir_);
+    return getSpectrumLevelRange(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1145,7 +1154,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static Integer getAddChainPositions(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getAddChainPositions(ruleName, currentRulesDir_);
+    return getAddChainPositions(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1175,7 +1184,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static int getAllowedChainPositions(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getAllowedChainPositions(ruleName, currentRulesDir_);
+    return getAllowedChainPositions(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1206,7 +1215,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static boolean requiresOtherValidAdduct(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return requiresOtherValidAdduct(ruleName, currentRulesDir_);
+    return requiresOtherValidAdduct(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1237,7 +1246,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static Vector<String> getOtherRequiredAdducts(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getOtherRequiredAdducts(ruleName, currentRulesDir_);
+    return getOtherRequiredAdducts(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1268,7 +1277,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static boolean areAllOtherAdductsRequired(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return areAllOtherAdductsRequired(ruleName, currentRulesDir_);
+    return areAllOtherAdductsRequired(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1299,7 +1308,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static float getOtherTimeTolerance(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getOtherTimeTolerance(ruleName, currentRulesDir_);
+    return getOtherTimeTolerance(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1330,7 +1339,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static float getChainAbsoluteThreshold(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return getChainAbsoluteThreshold(ruleName, currentRulesDir_);
+    return getChainAbsoluteThreshold(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1362,7 +1371,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static boolean forceOtherAdductValidity(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return forceOtherAdductValidity(ruleName, currentRulesDir_);
+    return forceOtherAdductValidity(ruleName, getCurrentRulesDir());
   }
 
   
@@ -1393,7 +1402,7 @@ public class RulesContainer
    * @throws SpectrummillParserException exception if there is something wrong about the elementconfig.xml, or an element is not there
    */
   public static boolean choseMoreLikelyRtWhenEqualMSn(String ruleName) throws RulesException, NoRuleException, IOException, SpectrummillParserException {
-    return choseMoreLikelyRtWhenEqualMSn(ruleName, currentRulesDir_);
+    return choseMoreLikelyRtWhenEqualMSn(ruleName, getCurrentRulesDir());
   }
 
   
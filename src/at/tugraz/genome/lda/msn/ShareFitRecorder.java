@@ -0,0 +1,175 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.msn;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * Records the share fits of the MSnRelativeShareCalculator in a text file, so that the solvers can be compared
+ * on real cases (see FaCombinationBenchmark). The recording is enabled by the system property "lda.shareFitRecording",
+ * which holds the path of the file the cases are appended to. Every fit is one line: the first column contains the
+ * chain intensities separated by commas; every further column (tab separated) is one combination containing its chains
+ * as "chain index:count" separated by commas.
+ */
+public class ShareFitRecorder
+{
+  /** system property holding the file the share fits are recorded to*/
+  public final static String SYSTEM_PROPERTY_FILE = "lda.shareFitRecording";
+  
+  /** the file the share fits are recorded to - null if the recording is disabled*/
+  private static volatile String recordingFile_ = System.getProperty(SYSTEM_PROPERTY_FILE);
+  
+  /**
+   * @return true if the share fits shall be recorded
+   */
+  public static boolean isEnabled(){
+    String file = recordingFile_;
+    return file!=null && file.length()>0;
+  }
+  
+  /**
+   * sets the file the share fits are recorded to
+   * @param file the recording file; null to disable the recording
+   */
+  public static void setRecordingFile(String file){
+    recordingFile_ = file;
+  }
+  
+  /**
+   * appends one share fit to the recording file; write errors are reported as warning only
+   * @param observations the observed intensities of the chains
+   * @param chainIndices for each combination the indices of its chains in the observations
+   * @param chainCounts for each combination how often the chain at the same position of chainIndices is contained
+   */
+  public static synchronized void record(float[] observations, int[][] chainIndices, float[][] chainCounts){
+    String file = recordingFile_;
+    if (file==null || file.length()==0)
+      return;
+    StringBuilder line = new StringBuilder();
+    for (int i=0; i!=observations.length; i++){
+      if (i>0) line.append(",");
+      line.append(observations[i]);
+    }
+    for (int i=0; i!=chainIndices.length; i++){
+      line.append("\t");
+      for (int j=0; j!=chainIndices[i].length; j++){
+        if (j>0) line.append(",");
+        line.append(chainIndices[i][j]).append(":").append(chainCounts[i][j]);
+      }
+    }
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file,true))){
+      writer.write(line.toString());
+      writer.newLine();
+    } catch (IOException ex){
+      System.out.println("Warning: the share fit could not be recorded to "+file+": "+ex.getMessage());
+    }
+  }
+  
+  /**
+   * reads the share fits of a recording file
+   * @param path the recording file
+   * @return the recorded share fits in the sequence of the file
+   * @throws IOException if the file cannot be read or a line is not in the recording format
+   */
+  public static Vector<RecordedFit> read(String path) throws IOException{
+    Vector<RecordedFit> fits = new Vector<RecordedFit>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(path))){
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine())!=null){
+        lineNumber++;
+        if (line.trim().length()==0)
+          continue;
+        try{
+          String[] columns = line.split("\t",-1);
+          String[] values = columns[0].split(",");
+          float[] observations = new float[values.length];
+          for (int i=0; i!=values.length; i++) observations[i] = Float.parseFloat(values[i]);
+          int[][] chainIndices = new int[columns.length-1][];
+          float[][] chainCounts = new float[columns.length-1][];
+          for (int i=1; i!=columns.length; i++){
+            String[] chains = columns[i].length()>0 ? columns[i].split(",") : new String[0];
+            chainIndices[i-1] = new int[chains.length];
+            chainCounts[i-1] = new float[chains.length];
+            for (int j=0; j!=chains.length; j++){
+              int separator = chains[j].indexOf(":");
+              chainIndices[i-1][j] = Integer.parseInt(chains[j].substring(0,separator));
+              chainCounts[i-1][j] = Float.parseFloat(chains[j].substring(separator+1));
+            }
+          }
+          fits.add(new RecordedFit(observations,chainIndices,chainCounts));
+        } catch (NumberFormatException | IndexOutOfBoundsException ex){
+          throw new IOException("The line "+lineNumber+" of "+path+" is not a recorded share fit: "+ex.getMessage());
+        }
+      }
+    }
+    return fits;
+  }
+  
+  /**
+   * the input of one recorded share fit
+   */
+  public static class RecordedFit
+  {
+    /** the observed intensities of the chains*/
+    private float[] observations_;
+    /** for each combination the indices of its chains in the observations*/
+    private int[][] chainIndices_;
+    /** for each combination how often the chain is contained*/
+    private float[][] chainCounts_;
+    
+    private RecordedFit(float[] observations, int[][] chainIndices, float[][] chainCounts){
+      this.observations_ = observations;
+      this.chainIndices_ = chainIndices;
+      this.chainCounts_ = chainCounts;
+    }
+
+    /**
+     * @return the observed intensities of the chains
+     */
+    public float[] getObservations(){
+      return observations_;
+    }
+
+    /**
+     * @return for each combination the indices of its chains in the observations
+     */
+    public int[][] getChainIndices(){
+      return chainIndices_;
+    }
+
+    /**
+     * @return for each combination how often the chain at the same position of getChainIndices() is contained
+     */
+    public float[][] getChainCounts(){
+      return chainCounts_;
+    }
+  }
+}
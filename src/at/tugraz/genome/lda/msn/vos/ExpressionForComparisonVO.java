@@ -23,6 +23,7 @@
 
 package at.tugraz.genome.lda.msn.vos;
 
+import java.io.Serializable;
 import java.util.Hashtable;
 import java.util.Objects;
 import java.util.Vector;
@@ -35,8 +36,10 @@ import at.tugraz.genome.maspectras.quantification.CgProbe;
  * @author Juergen Hartler
  *
  */
-public class ExpressionForComparisonVO
+public class ExpressionForComparisonVO implements Serializable
 {
+  private static final long serialVersionUID = 1L;
+  
   /** the global multiplier of an equation (multiplier outside of the brackets) */
   private String globalMultiplier_;
   /** the fragments and their multiplication factors */
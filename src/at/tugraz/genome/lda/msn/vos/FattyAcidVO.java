@@ -23,6 +23,7 @@
 
 package at.tugraz.genome.lda.msn.vos;
 
+import java.io.Serializable;
 import java.util.Comparator;
 import java.util.Objects;
 
@@ -34,8 +35,10 @@ import at.tugraz.genome.lda.utils.StaticUtils;
  * @author Juergen Hartler
  *
  */
-public class FattyAcidVO implements Comparable<FattyAcidVO>
+public class FattyAcidVO implements Comparable<FattyAcidVO>, Serializable
 {
+  private static final long serialVersionUID = 1L;
+  
   /** the type of chain: LipidomicsConstants.CHAIN_TYPE_FA or LipidomicsConstants.CHAIN_TYPE_LCB*/
   private short chainType_;
   // prefix to separate fatty acid
@@ -23,6 +23,7 @@
 
 package at.tugraz.genome.lda.msn.vos;
 
+import java.io.Serializable;
 import java.util.Objects;
 
 /**
@@ -32,8 +33,10 @@ import java.util.Objects;
  * @author Juergen Hartler
  *
  */
-public class FragmentMultVO
+public class FragmentMultVO implements Serializable
 {
+  private static final long serialVersionUID = 1L;
+  
   /** the name of the fragment */
   private String fragmentName_;
   /** the type of the fragment none, acyl, alkyl or lcb*/
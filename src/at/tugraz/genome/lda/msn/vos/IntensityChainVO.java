@@ -42,6 +42,8 @@ import at.tugraz.genome.maspectras.quantification.CgProbe;
  */
 public class IntensityChainVO extends IntensityRuleVO
 {
+  private static final long serialVersionUID = 1L;
+  
   
   /** the chains at the 'greater than' side of this rule*/
   private Hashtable<String,FattyAcidVO> biggerChains_;
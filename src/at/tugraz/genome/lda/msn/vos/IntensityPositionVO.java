@@ -43,6 +43,8 @@ import at.tugraz.genome.maspectras.quantification.CgProbe;
  */
 public class IntensityPositionVO extends IntensityRuleVO
 {
+  private static final long serialVersionUID = 1L;
+  
   /** the chains at the 'greater than' side of this rule*/
   private Hashtable<String,FattyAcidVO> biggerChains_;
   /** the chains at the 'smaller than' side of this rule*/
@@ -23,6 +23,7 @@
 
 package at.tugraz.genome.lda.msn.vos;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -45,8 +46,10 @@ import at.tugraz.genome.maspectras.quantification.CgProbe;
  * @author Juergen Hartler
  *
  */
-public class IntensityRuleVO
+public class IntensityRuleVO implements Serializable
 {
+  private static final long serialVersionUID = 1L;
+  
   // identifier for the base peak in the rule file
   public final static String BASEPEAK_NAME = "$BASEPEAK";
   
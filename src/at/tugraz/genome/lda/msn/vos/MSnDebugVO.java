@@ -90,6 +90,9 @@ public class MSnDebugVO
   /** is the spectrum coverage fulfilled*/
   private boolean spectrumCoverageFulfilled_;
   
+  /** did the fit of the chain combination shares converge*/
+  private boolean shareFitConverged_;
+  
   /**
    * constructor: initializes all the necessary hashes
    */
@@ -99,6 +102,7 @@ public class MSnDebugVO
     violatedChainRules_ = new Hashtable<String,Hashtable<String,Object>>();
     violatedCombinations_ = new Hashtable<String,Integer>();
     spectrumCoverageFulfilled_ = false;
+    shareFitConverged_ = true;
     unfulfilledPositionRules_ = new Hashtable<String,Hashtable<String,IntensityRuleVO>>();
     contradictingPositionRules_ = new Hashtable<String,Vector<Vector<IntensityRuleVO>>>();
   }
@@ -225,6 +229,24 @@ public class MSnDebugVO
     this.spectrumCoverageFulfilled_ = spectrumCoverageFulfilled;
   }
   
+  /**
+   * 
+   * @return false if a fit of the chain combination shares reached the maximum number of sweeps without converging
+   */
+  public boolean isShareFitConverged()
+  {
+    return shareFitConverged_;
+  }
+  
+  /**
+   * defines if the fit of the chain combination shares converged
+   * @param shareFitConverged did the fit converge?
+   */
+  public void setShareFitConverged(boolean shareFitConverged)
+  {
+    this.shareFitConverged_ = shareFitConverged;
+  }
+  
   /**
    * adds rules where there was no position assignment possible
    * @param combiName name of the fatty acid chain combination
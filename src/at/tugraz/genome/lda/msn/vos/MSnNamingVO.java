@@ -181,6 +181,14 @@ public class MSnNamingVO
     return this.mergingRange_.insideRange(rt);
   }
   
+  /**
+   * 
+   * @return the potential merging range
+   */
+  public Range getMergingRange(){
+    return this.mergingRange_;
+  }
+  
   /**
    * contains the identification at this certain MSn evidence level the same evidence, or does it contradict
    * @param status MSn evidence status
@@ -23,6 +23,7 @@
 
 package at.tugraz.genome.lda.msn.vos;
 
+import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
@@ -37,8 +38,10 @@ import at.tugraz.genome.lda.msn.parser.FragRuleParser;
  * @author Juergen Hartler
  *
  */
-public class RuleHydroxyRequirementSet
+public class RuleHydroxyRequirementSet implements Serializable
 {
+  private static final long serialVersionUID = 1L;
+  
   
   /** Vector containing the various hydroxylation requirements for one intensity rule*/
   private Vector<RuleHydroxyRequirementsVO> requirements_;
@@ -23,13 +23,17 @@
 
 package at.tugraz.genome.lda.msn.vos;
 
+import java.io.Serializable;
+
 /**
  * value object holding mandatory settings specific to hydroxylation
  * @author Juergen Hartler
  *
  */
-public class RuleHydroxyRequirementsVO
+public class RuleHydroxyRequirementsVO implements Serializable
 {
+  private static final long serialVersionUID = 1L;
+  
   /** the OH number*/
   short oh_;
   /** the type of chain: $CHAIN, $ALKYLCHAIN, $ALKENYLCHAIN or $LCB*/
@@ -0,0 +1,367 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.mztab;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.Settings;
+import at.tugraz.genome.lda.analysis.ComparativeAnalysis;
+import at.tugraz.genome.lda.analysis.exception.CalculationNotPossibleException;
+import at.tugraz.genome.lda.exception.ExcelInputFileException;
+import at.tugraz.genome.lda.exception.ExportException;
+import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
+import at.tugraz.genome.lda.exception.RetentionTimeGroupingException;
+import at.tugraz.genome.lda.export.LDAExporter;
+import at.tugraz.genome.lda.msn.hydroxy.parser.HydroxyEncoding;
+import at.tugraz.genome.lda.parser.StudyResultCache;
+import at.tugraz.genome.lda.quantification.QuantificationResult;
+import at.tugraz.genome.lda.utils.StaticUtils;
+import at.tugraz.genome.lda.vos.ClassExportSelectionVO;
+import at.tugraz.genome.lda.vos.ResultCompVO;
+import at.tugraz.genome.lda.vos.ResultDisplaySettingsVO;
+import at.tugraz.genome.maspectras.parser.exceptions.SpectrummillParserException;
+import de.isas.mztab2.model.Assay;
+import de.isas.mztab2.model.CV;
+import de.isas.mztab2.model.Contact;
+import de.isas.mztab2.model.Database;
+import de.isas.mztab2.model.Instrument;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MsRun;
+import de.isas.mztab2.model.Parameter;
+import de.isas.mztab2.model.Sample;
+import de.isas.mztab2.model.SampleProcessing;
+import de.isas.mztab2.model.Software;
+import de.isas.mztab2.model.StudyVariable;
+
+/**
+ * Exports the results of a ComparativeAnalysis to an mzTab-M file. The molecules are written one by one
+ * by an MzTabStreamWriter, thus, the complete mzTab object model is never held in memory. Which species
+ * and which values are exported is defined by ClassExportSelectionVO objects - they are either taken from
+ * the heat maps of the GUI, or from the defaults in createDefaultSelections (for the command line).
+ */
+public class MzTabExporter
+{
+  /** the identifier of the optional column holding the lipid species*/
+  public final static String OPT_LIPID_SPECIES = "global_lipid_species";
+  /** the identifier of the optional column holding the lipid species including the retention time (only for RT grouped analyses)*/
+  public final static String OPT_LIPID_LDA_SPECIES = "global_lipid_lda_species";
+  
+  /** the comparative analysis containing the results*/
+  private ComparativeAnalysis analysisModule_;
+  
+  /**
+   * @param analysisModule the comparative analysis containing the results - the statistics must be calculated already
+   */
+  public MzTabExporter(ComparativeAnalysis analysisModule){
+    this.analysisModule_ = analysisModule;
+  }
+  
+  /**
+   * creates selections where all species of all classes are exported with the highest available isotope and without standardization
+   * @param analysisModule the comparative analysis containing the results
+   * @param valueType the type of the exported values (see ResultDisplaySettingsVO)
+   * @return the selections; key: analyte class; value: the selection for this class
+   */
+  public static LinkedHashMap<String,ClassExportSelectionVO> createDefaultSelections(ComparativeAnalysis analysisModule, String valueType){
+    LinkedHashMap<String,ClassExportSelectionVO> selections = new LinkedHashMap<String,ClassExportSelectionVO>();
+    for (String molGroup : analysisModule.getResults().keySet()){
+      Vector<String> molNames = analysisModule.getAllMoleculeNames().get(molGroup);
+      if (molNames==null || molNames.isEmpty())
+        continue;
+      ResultDisplaySettingsVO settings = new ResultDisplaySettingsVO(valueType,ResultCompVO.NO_STANDARD_CORRECTION,ResultCompVO.NO_STANDARD_CORRECTION,false,false);
+      selections.put(molGroup, new ClassExportSelectionVO(new Vector<String>(molNames),analysisModule.getMaxIsotopesOfGroup(molGroup)-1,settings));
+    }
+    return selections;
+  }
+  
+  /**
+   * exports the selected species to an mzTab-M file
+   * @param exportFile the file to write to
+   * @param speciesTypeParam structural level of data export (lipid species, chain level, position level - for details see LipidomicsConstants.EXPORT_ANALYTE_TYPE)
+   * @param exportDoubleBondPositions true when double bond positions shall be exported
+   * @param selections the selections of species and values; key: analyte class; value: the selection for this class
+   * @throws IOException when the file cannot be written
+   * @throws ExcelInputFileException when there is something wrong with an LDA result file
+   * @throws CalculationNotPossibleException when the values cannot be calculated
+   * @throws ExportException when there is something wrong with the export
+   * @throws SpectrummillParserException when there are elements missing in the elementconfig.xml
+   * @throws LipidCombinameEncodingException thrown when a lipid combi id (containing type and OH number) cannot be decoded
+   * @throws RetentionTimeGroupingException when the retention times of the species cannot be grouped
+   */
+  public void export(File exportFile, short speciesTypeParam, boolean exportDoubleBondPositions, LinkedHashMap<String,ClassExportSelectionVO> selections)
+      throws IOException, ExcelInputFileException, CalculationNotPossibleException, ExportException, SpectrummillParserException,
+      LipidCombinameEncodingException, RetentionTimeGroupingException{
+    Metadata metadata = createMetadata();
+    Software software = metadata.getSoftware().get(0);
+    Hashtable<String,Integer> expToMsRun = new Hashtable<String,Integer>();
+    Hashtable<String,QuantificationResult> originalExcelResults = new Hashtable<String,QuantificationResult>();
+    Hashtable<String,MsRun> msRuns = new Hashtable<String,MsRun>();
+    boolean isotopicDistributionChecked = true;
+    Hashtable<String,Short> polarities = new Hashtable<String,Short>();
+    HydroxyEncoding faEncoding = null;
+    HydroxyEncoding lcbEncoding = null;
+    for (int i=0; i!=analysisModule_.getExpNamesInSequence().size(); i++) {
+      String exp = analysisModule_.getExpNamesInSequence().get(i);
+      String fullPath = analysisModule_.getFullFilePath(exp).getAbsolutePath();
+      String chromFileBase = StaticUtils.extractChromBaseName(fullPath,exp);
+      MsRun run = new MsRun();
+      run.setId((i+1));
+      run.setLocation("file://"+chromFileBase.replaceAll("\\\\", "/").replaceAll(" ", "%20")+".chrom");       
+      run.setFragmentationMethod(LipidomicsConstants.getFragmentationMethods());
+      run.setFormat(new Parameter().cvLabel("MS").cvAccession("MS:1002966").name("The Lipid Data Analyzer native chrom format."));
+      run.setIdFormat(new Parameter().cvLabel("MS").cvAccession("MS:1000776").name("scan number only nativeID format"));
+      run.setHashMethod(new Parameter().cvLabel("MS").cvAccession("MS:1000569").name("SHA-1"));
+      
+      Assay assay = new Assay();
+      assay.setId(i+1);
+      assay.addMsRunRefItem(run);
+      msRuns.put(exp, run);
+      metadata.addAssayItem(assay);
+      expToMsRun.put(exp, (i+1));
+      metadata.addMsRunItem(run);
+      originalExcelResults.put(exp, StudyResultCache.getInstance().getResult(fullPath, new Hashtable<String,Boolean>(), null));
+      if (originalExcelResults.get(exp).getFaHydroxyEncoding()!=null) faEncoding = originalExcelResults.get(exp).getFaHydroxyEncoding();
+      if (originalExcelResults.get(exp).getLcbHydroxyEncoding()!=null) lcbEncoding = originalExcelResults.get(exp).getLcbHydroxyEncoding();
+      if (!originalExcelResults.get(exp).getConstants().getRespectIsotopicDistribution())
+        isotopicDistributionChecked = false;
+      polarities.put(exp, SmallMztabMolecule.POLARITY_UNKNOWN);
+    }
+    if (isotopicDistributionChecked)
+      software.addSettingItem("isotope_pattern_checked");
+    
+    Hashtable<String,LinkedHashMap<String,Boolean>> adductsSortedByAbundance = LDAExporter.extractAdductsSortedByAbundance(selections.keySet(),originalExcelResults);
+    LinkedHashMap<String,Vector<String>> expsOfGroup = getSamplesOfGroups();
+    int count = 0;
+    for (String group : expsOfGroup.keySet()){
+      StudyVariable studyVariable = new StudyVariable();
+      studyVariable.setId(count+1);
+      studyVariable.setName(group);
+      studyVariable.setDescription(group);
+      studyVariable.setAverageFunction(new Parameter().cvLabel("MS").cvAccession("MS:1002962").name("The arithmetic mean"));
+      studyVariable.setVariationFunction(new Parameter().cvLabel("MS").cvAccession("MS:1002963").name("The coefficient of variation"));
+      for (String exp : expsOfGroup.get(group)){
+        Integer assayId = expToMsRun.get(exp);
+        for (Assay assay : metadata.getAssay()){
+          if (assay.getId() == assayId)
+            studyVariable.addAssayRefsItem(assay);
+        }
+      }
+      metadata.addStudyVariableItem(studyVariable);
+      count++;
+    }
+    
+    //the optional columns must be known before the first row is written
+    List<String> optColumns = new ArrayList<String>();
+    optColumns.add(OPT_LIPID_SPECIES);
+    if (analysisModule_.isRtGrouped())
+      optColumns.add(OPT_LIPID_LDA_SPECIES);
+    MzTabStreamWriter writer = new MzTabStreamWriter(exportFile, metadata, optColumns, optColumns);
+    try{
+      Hashtable<String,Vector<String>> correctAnalyteSequence = this.analysisModule_.getAllMoleculeNames();
+      int summaryId = 1;
+      int featureId = 1;
+      int evidenceId = 1;
+      int evidenceGroupingId = 1;
+      short polarity;
+      for (String molGroup : selections.keySet()) {
+        ClassExportSelectionVO selection = selections.get(molGroup);
+        //no isotopes available - there are no values for the export
+        if (selection.getMaxIsotope()<0)
+          continue;
+        boolean exportDoubleBondPositionsForClass = exportDoubleBondPositions; 
+        short speciesType = speciesTypeParam;
+        //when lipid species level is selected, export double bond positions only for lipid species consisting of one FA chain
+        if (exportDoubleBondPositions) {
+          if (analysisModule_.getNrOfChainsOfClass().get(molGroup) > 1 && speciesType == LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
+            exportDoubleBondPositionsForClass = false;
+          } else if (analysisModule_.getNrOfChainsOfClass().get(molGroup) == 1 && speciesType != LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
+            speciesType = LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES;
+          }
+        }
+        Hashtable<String,String> selectedMolHash = new Hashtable<String,String>();
+        for (String molName: selection.getSelectedMolecules()){
+          selectedMolHash.put(molName, molName);
+        }
+        Hashtable<String,Hashtable<String,ResultCompVO>> resultsOfClass = analysisModule_.getResults().get(molGroup);
+        int maxIsotopes = selection.getMaxIsotope();
+        LinkedHashMap<String,Boolean> adductsSorted = adductsSortedByAbundance.get(molGroup);
+        for (String molName: correctAnalyteSequence.get(molGroup)){
+          if (!selectedMolHash.containsKey(molName))
+            continue;
+          Hashtable<String,Vector<Double>> resultsMol = StaticUtils.extractValuesOfMolecule(resultsOfClass.get(molName), maxIsotopes, selection.getSettings(), null);
+          SmallMztabMolecule molecule = MztabUtils.createSmallMztabMolecule(speciesType, exportDoubleBondPositionsForClass, 
+              summaryId, featureId, evidenceId,evidenceGroupingId, maxIsotopes,analysisModule_, msRuns, originalExcelResults, 
+              molGroup, molName, resultsMol,adductsSorted, expsOfGroup, faEncoding, lcbEncoding);
+          if (molecule==null)
+            continue;
+          summaryId = molecule.getCurrentSummaryId();
+          featureId = molecule.getCurrentFeatureId();
+          evidenceId = molecule.getCurrentEvidenceId();
+          evidenceGroupingId = molecule.getCurrentEvGroupingId();
+          writer.addMolecule(molecule);
+          for (int i=0; i!=analysisModule_.getExpNamesInSequence().size(); i++) {
+            String exp = analysisModule_.getExpNamesInSequence().get(i);
+            polarity = molecule.getPolarity().get(exp);
+            if (polarity==SmallMztabMolecule.POLARITY_UNKNOWN || polarity==polarities.get(exp))
+              continue;
+            if (polarity==SmallMztabMolecule.POLARITY_BOTH)
+              polarities.put(exp, SmallMztabMolecule.POLARITY_BOTH);
+            else if (polarity==SmallMztabMolecule.POLARITY_POSITIVE)
+              polarities.put(exp, polarities.get(exp)==SmallMztabMolecule.POLARITY_NEGATIVE ? SmallMztabMolecule.POLARITY_BOTH : SmallMztabMolecule.POLARITY_POSITIVE);
+            else if (polarity==SmallMztabMolecule.POLARITY_NEGATIVE)
+              polarities.put(exp, polarities.get(exp)==SmallMztabMolecule.POLARITY_POSITIVE ? SmallMztabMolecule.POLARITY_BOTH : SmallMztabMolecule.POLARITY_NEGATIVE);
+          }
+        }
+      }
+      
+      //the polarities are known after all molecules are written; the MTD section is written at the very end
+      for (String exp : analysisModule_.getExpNamesInSequence()) {
+        List<Parameter> polaries = new ArrayList<Parameter>();
+        if (polarities.get(exp) == SmallMztabMolecule.POLARITY_POSITIVE || polarities.get(exp) == SmallMztabMolecule.POLARITY_BOTH)
+          polaries.add(new Parameter().cvLabel("MS").cvAccession("MS:1000130").name("positive scan"));
+        if (polarities.get(exp) == SmallMztabMolecule.POLARITY_NEGATIVE || polarities.get(exp) == SmallMztabMolecule.POLARITY_BOTH)
+          polaries.add(new Parameter().cvLabel("MS").cvAccession("MS:1000129").name("negative scan"));
+        msRuns.get(exp).setScanPolarity(polaries);
+      }
+      writer.finish();
+    } finally {
+      writer.discard();
+    }
+  }
+  
+  /**
+   * creates the general part of the metadata; the MS runs, assays, and study variables are added by the export method
+   * @return the metadata
+   */
+  private Metadata createMetadata(){
+    Metadata metadata = new Metadata();
+    metadata.setIdConfidenceMeasure(new ArrayList<Parameter>());
+    //TODO: this has to be generated somehow differently
+    metadata.setMzTabID("1");
+    Software software = new Software();
+    software.setId(1);
+    software.setParameter(new Parameter().name("LipidDataAnalyzer").value(Settings.VERSION));
+    metadata.addSoftwareItem(software);
+    Parameter quantMethod = new Parameter().cvLabel("MS").cvAccession("MS:1002019").name("label free raw feature quantitation").value(null);
+    metadata.setQuantificationMethod(quantMethod);
+    List<CV> cvs = new ArrayList<CV>();
+    CV label = new CV().id(1).label("MS").fullName("PSI-MS controlled vocabulary").version("20-06-2018").uri("https://www.ebi.ac.uk/ols/ontologies/ms");
+    cvs.add(label);
+    label = new CV().id(2).label("PRIDE").fullName("PRIDE PRoteomics IDEntifications (PRIDE) database controlled vocabulary").version("14-06-2018").uri("https://www.ebi.ac.uk/ols/ontologies/pride");
+    cvs.add(label);
+    
+    int cvId = 3;
+    if (LipidomicsConstants.isCvSepRequired()){
+      label = new CV().id(cvId).label("SEP").fullName("Sample Processing and Separation Techniques Ontology").version("1.070708").uri("http://purl.bioontology.org/ontology/SEP");
+      cvs.add(label);
+      cvId++;
+    }
+    if (LipidomicsConstants.isCvChmoRequired()){
+      label = new CV().id(cvId).label("CHMO").fullName("Chemical Methods Ontology").version("14-11-2019").uri("http://purl.obolibrary.org/obo/chmo.owl");
+      cvs.add(label);
+      cvId++;
+    }
+    if (LipidomicsConstants.isCvNcbiTaxonRequired()){      
+      label = new CV().id(cvId).label("NCBITaxon").fullName("NCBI organismal classification").version("2018-03-02").uri("https://www.ebi.ac.uk/ols/ontologies/ncbitaxon");
+      cvs.add(label);
+      cvId++;
+    }
+    if (LipidomicsConstants.isClRequired()){      
+      label = new CV().id(cvId).label("CL").fullName("Cell Ontology").version("2018-07-07").uri("https://www.ebi.ac.uk/ols/ontologies/cl");
+      cvs.add(label);
+      cvId++;
+    }
+    if (LipidomicsConstants.isCvBtoRequired()){      
+      label = new CV().id(cvId).label("BTO").fullName("BRENDA tissue / enzyme source").version("2016-05-05").uri("https://www.ebi.ac.uk/ols/ontologies/bto");
+      cvs.add(label);
+      cvId++;
+    }
+    if (LipidomicsConstants.isCvDoidRequired()){      
+      label = new CV().id(cvId).label("DOID").fullName("Human Disease Ontology").version("2018-07-05").uri("https://www.ebi.ac.uk/ols/ontologies/doid");
+      cvs.add(label);
+      cvId++;
+    } 
+    metadata.setCv(cvs);
+    
+    List<Database> databases = new ArrayList<Database>();
+    //TODO: exchange with corresponding MS accession
+    Database database = new Database().id(1).param(new Parameter().name("LipidDataAnalyzer2").value("lda2"));
+    database.setPrefix("lda2");
+    database.setVersion(Settings.VERSION);
+    database.setUri("https://github.com/ThallingerLab/LDA2");
+    databases.add(database);
+    metadata.setDatabase(databases);
+    
+    List<Instrument> instruments = new ArrayList<Instrument>();
+    Instrument instrument = LipidomicsConstants.getMzTabInstrument();
+    instruments.add(instrument);
+    if (instrument!=null)
+      metadata.setInstrument(instruments);
+
+    for (Contact contact : LipidomicsConstants.getMzTabContacts()){
+      metadata.addContactItem(contact);
+    }
+    List<SampleProcessing> processings = LipidomicsConstants.getMzTabSampleprocessings();
+    metadata.setSampleProcessing(processings);
+    metadata.setPublication(LipidomicsConstants.getMzTabPublications());
+    if (LipidomicsConstants.getMzTabSample()!=null){
+      List<Sample> samples = new ArrayList<Sample>();
+      samples.add(LipidomicsConstants.getMzTabSample());
+      metadata.setSample(samples);
+    }
+    metadata.setSmallMoleculeQuantificationUnit(new Parameter().cvLabel("PRIDE").cvAccession("PRIDE:0000330").name("Arbitrary quantification unit"));
+    metadata.setSmallMoleculeFeatureQuantificationUnit(new Parameter().cvLabel("PRIDE").cvAccession("PRIDE:0000330").name("Arbitrary quantification unit"));
+    //TODO: exchange with corresponding MS accession
+    metadata.setSmallMoleculeIdentificationReliability(new Parameter().cvLabel("MS").cvAccession("MS:1002896").name("compound identification confidence level"));
+    List<Parameter> idConfidenceMeasures = new ArrayList<Parameter>();
+    idConfidenceMeasures.add(new Parameter().id(1).cvLabel("MS").cvAccession("MS:1002890").name("fragmentation score"));
+    metadata.setIdConfidenceMeasure(idConfidenceMeasures);
+    return metadata;
+  }
+  
+  /**
+   * 
+   * @return key: group name; value: the experiments of this group; if no groups are defined, all experiments belong to the group "undefined"
+   */
+  private LinkedHashMap<String,Vector<String>> getSamplesOfGroups(){
+    LinkedHashMap<String,Vector<String>> expsOfGroup = new LinkedHashMap<String,Vector<String>>();
+    if (analysisModule_.getGroupNames()!=null && analysisModule_.getGroupNames().size()>0){
+      for (int i=0; i!=analysisModule_.getGroupNames().size(); i++){
+        String group = analysisModule_.getGroupNames().get(i);
+        expsOfGroup.put(group, analysisModule_.getExpsOfGroup(group));
+      }
+    }else{
+      String group = "undefined";
+      expsOfGroup.put(group, analysisModule_.getExpNamesInSequence());
+    }
+    return expsOfGroup;
+  }
+}
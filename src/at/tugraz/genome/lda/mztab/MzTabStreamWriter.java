@@ -0,0 +1,240 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.mztab;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+import de.isas.mztab2.io.MzTabFileParser;
+import de.isas.mztab2.io.MzTabWriterDefaults;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.OptColumnMapping;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import de.isas.mztab2.model.ValidationMessage;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType.Level;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
+
+/**
+ * Writes an mzTab-M file without holding the SML, SMF, and SME rows in memory. The rows are streamed
+ * section by section to temporary files next to the export file; when the export is finished, the MTD
+ * section (which may still change while the rows are written, e.g. the scan polarities of the MS runs)
+ * is written, and the section files are appended. The output corresponds to the one of the
+ * MzTabNonValidatingWriter of the jmztab-m library; since the CSV schemas have to be fixed before the
+ * first row is written, the optional columns have to be known at construction time.
+ */
+public class MzTabStreamWriter
+{
+  /** the file where the mzTab shall be written to*/
+  private File exportFile_;
+  /** the metadata - it is written when the export is finished*/
+  private Metadata metadata_;
+  /** the jmztab-m defaults for the mappers and the schemas*/
+  private MzTabWriterDefaults defaults_;
+  
+  /** temporary file for the SML section*/
+  private File summaryFile_;
+  /** temporary file for the SMF section*/
+  private File featureFile_;
+  /** temporary file for the SME section*/
+  private File evidenceFile_;
+  
+  /** the writers of the temporary files*/
+  private List<Writer> writers_;
+  /** row writer for the SML section*/
+  private SequenceWriter summaryWriter_;
+  /** row writer for the SMF section*/
+  private SequenceWriter featureWriter_;
+  /** row writer for the SME section*/
+  private SequenceWriter evidenceWriter_;
+  
+  /**
+   * constructor opening the temporary files for the sections
+   * @param exportFile the file where the mzTab shall be written to
+   * @param metadata the metadata; the assays, study variables, and identification confidence measures must be set already, since they define the columns of the sections
+   * @param summaryOptColumns the identifiers of the optional columns of the SML section (e.g. "global_lipid_species")
+   * @param evidenceOptColumns the identifiers of the optional columns of the SME section
+   * @throws IOException if the temporary files cannot be written
+   */
+  public MzTabStreamWriter(File exportFile, Metadata metadata, List<String> summaryOptColumns, List<String> evidenceOptColumns) throws IOException{
+    this.exportFile_ = exportFile.getAbsoluteFile();
+    this.metadata_ = metadata;
+    this.defaults_ = new MzTabWriterDefaults();
+    this.writers_ = new ArrayList<Writer>();
+    //the schemas are derived from the metadata and from the optional columns of the rows - thus, prototype rows are sufficient
+    MzTab prototype = new MzTab();
+    prototype.setMetadata(metadata);
+    SmallMoleculeSummary summary = new SmallMoleculeSummary();
+    summary.setOpt(createOptColumns(summaryOptColumns));
+    prototype.addSmallMoleculeSummaryItem(summary);
+    prototype.addSmallMoleculeFeatureItem(new SmallMoleculeFeature());
+    SmallMoleculeEvidence evidence = new SmallMoleculeEvidence();
+    evidence.setOpt(createOptColumns(evidenceOptColumns));
+    prototype.addSmallMoleculeEvidenceItem(evidence);
+    try{
+      File dir = exportFile_.getParentFile();
+      summaryFile_ = File.createTempFile("mztab", ".sml", dir);
+      CsvMapper mapper = defaults_.smallMoleculeSummaryMapper();
+      summaryWriter_ = mapper.writer(defaults_.smallMoleculeSummarySchema(mapper, prototype)).writeValues(openWriter(summaryFile_));
+      featureFile_ = File.createTempFile("mztab", ".smf", dir);
+      mapper = defaults_.smallMoleculeFeatureMapper();
+      featureWriter_ = mapper.writer(defaults_.smallMoleculeFeatureSchema(mapper, prototype)).writeValues(openWriter(featureFile_));
+      evidenceFile_ = File.createTempFile("mztab", ".sme", dir);
+      mapper = defaults_.smallMoleculeEvidenceMapper();
+      evidenceWriter_ = mapper.writer(defaults_.smallMoleculeEvidenceSchema(mapper, prototype)).writeValues(openWriter(evidenceFile_));
+    } catch (MZTabException | IOException ex){
+      discard();
+      throw new IOException(ex);
+    }
+  }
+  
+  /**
+   * creates empty optional columns
+   * @param identifiers the identifiers of the columns
+   * @return the optional columns
+   */
+  private List<OptColumnMapping> createOptColumns(List<String> identifiers){
+    List<OptColumnMapping> opts = new ArrayList<OptColumnMapping>();
+    for (String identifier : identifiers)
+      opts.add(new OptColumnMapping().identifier(identifier));
+    return opts;
+  }
+  
+  /**
+   * opens a UTF-8 writer on a temporary file and registers it for closing
+   * @param file the temporary file
+   * @return the writer
+   * @throws IOException if the file cannot be opened
+   */
+  private Writer openWriter(File file) throws IOException{
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    writers_.add(writer);
+    return writer;
+  }
+  
+  /**
+   * writes the SML, SMF, and SME rows of one molecule
+   * @param molecule the mzTab information of one molecule
+   * @throws IOException if the rows cannot be written
+   */
+  public void addMolecule(SmallMztabMolecule molecule) throws IOException{
+    for (SmallMoleculeSummary summary : molecule.getSummary())
+      summaryWriter_.write(summary);
+    for (SmallMoleculeFeature feature : molecule.getFeatures())
+      featureWriter_.write(feature);
+    for (SmallMoleculeEvidence evidence : molecule.getEvidence())
+      evidenceWriter_.write(evidence);
+  }
+  
+  /**
+   * writes the metadata and the collected sections to the export file, and removes the temporary files
+   * @throws IOException if the export file cannot be written
+   */
+  public void finish() throws IOException{
+    try{
+      summaryWriter_.close();
+      featureWriter_.close();
+      evidenceWriter_.close();
+      for (Writer writer : writers_)
+        writer.close();
+      writers_.clear();
+      try (FileOutputStream out = new FileOutputStream(exportFile_)){
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        CsvMapper mapper = defaults_.metadataMapper();
+        mapper.writer(defaults_.metaDataSchema(mapper)).writeValue(writer, metadata_);
+        writer.write("\n");
+        writer.flush();
+        FileChannel target = out.getChannel();
+        appendFile(summaryFile_, target, out);
+        appendFile(featureFile_, target, out);
+        appendFile(evidenceFile_, target, null);
+      }
+    } finally {
+      discard();
+    }
+  }
+  
+  /**
+   * appends the content of a section file to the export file
+   * @param file the section file
+   * @param target the channel of the export file
+   * @param out the stream of the export file; if not null, a line separator is written after the section
+   * @throws IOException if the file cannot be copied
+   */
+  private void appendFile(File file, FileChannel target, OutputStream out) throws IOException{
+    try (FileChannel source = new FileInputStream(file).getChannel()){
+      long position = 0l;
+      long size = source.size();
+      while (position<size)
+        position += source.transferTo(position, size-position, target);
+    }
+    if (out!=null)
+      out.write('\n');
+  }
+  
+  /**
+   * closes the writers and removes the temporary files - to be called when the export is aborted
+   */
+  public void discard(){
+    for (Writer writer : writers_){
+      try {writer.close();} catch (IOException e) {}
+    }
+    writers_.clear();
+    for (File file : new File[]{summaryFile_,featureFile_,evidenceFile_}){
+      if (file!=null && file.exists() && !file.delete())
+        file.deleteOnExit();
+    }
+  }
+  
+  /**
+   * validates a written mzTab file by parsing it
+   * @param mzTabFile the mzTab file
+   * @param level the lowest level of the messages to report
+   * @param maxErrors the maximum number of reported errors
+   * @param out where the messages of the parser are printed to
+   * @return the validation messages
+   * @throws IOException if the file cannot be read
+   */
+  public static List<ValidationMessage> validate(File mzTabFile, Level level, int maxErrors, OutputStream out) throws IOException{
+    MzTabFileParser parser = new MzTabFileParser(mzTabFile);
+    parser.parse(out, level, maxErrors);
+    return parser.getErrorList().convertToValidationMessages();
+  }
+}
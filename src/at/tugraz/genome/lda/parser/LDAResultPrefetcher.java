@@ -0,0 +1,131 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.parser;
+
+import java.io.File;
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import at.tugraz.genome.lda.exception.ExcelInputFileException;
+import at.tugraz.genome.lda.quantification.QuantificationResult;
+
+/**
+ * Reads LDA result files in parallel into the StudyResultCache, while the results are handed out in the sequence of the files.
+ * Only a limited number of files is read ahead of the one that is currently requested; thus, the memory
+ * consumption depends on the number of threads, and not on the number of files. The results that are handed out belong
+ * to the caller, and are removed from the cache.
+ */
+public class LDAResultPrefetcher
+{
+  /** how many files per thread may be read ahead of the requested one*/
+  private final static int FILES_AHEAD_PER_THREAD = 2;
+  
+  /** the result files in the sequence they are requested*/
+  private Vector<File> resultFiles_;
+  /** the maximum number of files that are read or waiting to be requested*/
+  private int maxInFlight_;
+  /** the thread pool reading the files*/
+  private ExecutorService threadpool_;
+  /** the reading tasks in the sequence of the files*/
+  private LinkedList<Future<Void>> inFlight_;
+  /** the index of the next file to be submitted for reading*/
+  private int nextToSubmit_;
+  /** the index of the next file to be requested*/
+  private int nextToRequest_;
+  
+  /**
+   * constructor starting the reading of the first files
+   * @param resultFiles the LDA result files in the sequence they are requested
+   * @param numberOfThreads the number of threads reading the files
+   */
+  public LDAResultPrefetcher(Vector<File> resultFiles, int numberOfThreads){
+    this.resultFiles_ = resultFiles;
+    int threads = Math.max(1, Math.min(numberOfThreads, resultFiles.size()));
+    this.maxInFlight_ = threads*FILES_AHEAD_PER_THREAD;
+    this.threadpool_ = Executors.newFixedThreadPool(threads);
+    this.inFlight_ = new LinkedList<Future<Void>>();
+    this.nextToSubmit_ = 0;
+    this.nextToRequest_ = 0;
+    fillUp();
+  }
+  
+  /**
+   * returns the result of the next file; the file has to correspond to the sequence of the files handed to the constructor;
+   * if the reading of a file fails, the subsequent files may still be requested
+   * @param resultFile the file whose result is requested
+   * @return the content of the LDA result file - the result may be modified by the caller
+   * @throws ExcelInputFileException when there is something wrong with the Excel file, or the file is not the next one in the sequence
+   */
+  public QuantificationResult next(File resultFile) throws ExcelInputFileException{
+    if (nextToRequest_>=resultFiles_.size() || !resultFiles_.get(nextToRequest_).getAbsolutePath().equals(resultFile.getAbsolutePath()))
+      throw new ExcelInputFileException("The file "+resultFile.getAbsolutePath()+" is not the next one in the sequence of the prefetched files!");
+    Future<Void> future = inFlight_.removeFirst();
+    nextToRequest_++;
+    fillUp();
+    try {
+      future.get();
+    } catch (InterruptedException ix) {
+      close();
+      throw new ExcelInputFileException("The reading of the file "+resultFile.getAbsolutePath()+" was interrupted!");
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof ExcelInputFileException)
+        throw (ExcelInputFileException)ex.getCause();
+      throw new ExcelInputFileException(ex.getCause());
+    }
+    return StudyResultCache.getInstance().getModifiableResult(resultFile.getAbsolutePath(), new Hashtable<String,Boolean>());
+  }
+  
+  /**
+   * stops the reading of any pending files and shuts down the thread pool - must be called when the results are not required any longer
+   */
+  public void close(){
+    threadpool_.shutdownNow();
+    inFlight_.clear();
+  }
+  
+  /**
+   * submits files for reading until the maximum number of files in flight is reached
+   */
+  private void fillUp(){
+    while (nextToSubmit_<resultFiles_.size() && inFlight_.size()<maxInFlight_){
+      final String filePath = resultFiles_.get(nextToSubmit_).getAbsolutePath();
+      inFlight_.add(threadpool_.submit(new Callable<Void>(){
+        public Void call() throws ExcelInputFileException
+        {
+          StudyResultCache.getInstance().prefetch(filePath);
+          return null;
+        }
+      }));
+      nextToSubmit_++;
+    }
+    if (nextToSubmit_>=resultFiles_.size())
+      threadpool_.shutdown();
+  }
+}
@@ -81,11 +81,14 @@ import at.tugraz.genome.maspectras.quantification.Probe3D;
 public class LDAResultReader
 {  
   
-  private static LipidomicsConstants lipidomicsConstants_;
-  private static HydroxyEncoding faHydroxyEncoding_;
-  private static HydroxyEncoding lcbHydroxyEncoding_;
-  private static Hashtable<String,Vector<LipidParameterSet>> resultParameterSets_;
-  private static Hashtable<String,Integer> msLevels_;
+  /** the state of one reading process is kept in an instance, which is created for every file - thus, several files may be read in parallel*/
+  private LipidomicsConstants lipidomicsConstants_;
+  private HydroxyEncoding faHydroxyEncoding_;
+  private HydroxyEncoding lcbHydroxyEncoding_;
+  private Hashtable<String,Vector<LipidParameterSet>> resultParameterSets_;
+  private Hashtable<String,Integer> msLevels_;
+  /** was an omega sheet read*/
+  private boolean omegaInformationRead_;
 
   /**
    * reads an LDA results file in Excel format
@@ -109,7 +112,21 @@ public class LDAResultReader
    */
 	public static QuantificationResult readResultFile(String filePath, Hashtable<String,Boolean> showModifications, 
       String specificClass) throws ExcelInputFileException{
+    return new LDAResultReader().read(filePath, showModifications, specificClass);
+  }
+  
+  /**
+   * reads an LDA results file in Excel format - the state of the reading process is stored in this instance
+   * @param filePath the absolute path to the Excel file
+   * @param showModifications this hash is filled by the method and gives information whether there are more than one modifications present; key: lipid class
+   * @param specificClass filter for parsing only the results of one analyte class; enter null when no filter is required
+   * @return the contents of the Excel file stored in the corresponding value object
+   * @throws ExcelInputFileException when there is something wrong with the Excel file
+   */
+  QuantificationResult read(String filePath, Hashtable<String,Boolean> showModifications, 
+      String specificClass) throws ExcelInputFileException{
     lipidomicsConstants_ = null;
+    omegaInformationRead_ = false;
     faHydroxyEncoding_ = null;
     lcbHydroxyEncoding_ = null;
     resultParameterSets_ = new Hashtable<String,Vector<LipidParameterSet>>();
@@ -164,6 +181,13 @@ public class LDAResultReader
     
   }
   
+  /**
+   * @return true if the last read file contained omega information
+   */
+  boolean hasReadOmegaInformation(){
+    return omegaInformationRead_;
+  }
+  
   /**
    * Calls the corresponding method for the individual Excel sheets
    * @param sheet the Excel sheet
@@ -173,7 +197,7 @@ public class LDAResultReader
    * @throws RulesException
    * @throws LipidCombinameEncodingException
    */
-  private static void readSheet(Sheet sheet, Hashtable<String,Boolean> showModifications, TreeMap<String,String> lipidClassNames) 
+  private void readSheet(Sheet sheet, Hashtable<String,Boolean> showModifications, TreeMap<String,String> lipidClassNames) 
       throws SettingsException, RulesException, LipidCombinameEncodingException, IOException 
   {
     String name = sheet.getName();
@@ -192,6 +216,7 @@ public class LDAResultReader
     {
       readOmegaSheet(sheet, buildLipidClassName(name, lipidClassNames, QuantificationResultExporter.ADDUCT_OMEGA_SHEET));
       LipidParameterSet.setOmegaInformationAvailable(true);
+      omegaInformationRead_ = true;
     } 
     else 
     {
@@ -288,7 +313,7 @@ public class LDAResultReader
    * @throws LipidCombinameEncodingException thrown when a lipid combi ID (containing type and OH number) cannot be decoded
    * @throws IOException 
    */
-  private static void readMSnSheet(Sheet sheet, String lipidClass) throws RulesException, LipidCombinameEncodingException, IOException {
+  private void readMSnSheet(Sheet sheet, String lipidClass) throws RulesException, LipidCombinameEncodingException, IOException {
     Hashtable<String,LipidParameterSet> msHash = new Hashtable<String,LipidParameterSet>();
     Vector<LipidParameterSet> resultPrms = resultParameterSets_.get(lipidClass);
     resultPrms.stream().forEach((p) -> msHash.put(p.getNamePlusModHumanReadable(), p));
@@ -992,7 +1017,7 @@ public class LDAResultReader
    * @param lipidClass
    * @throws IOException 
    */
-  private static void readOmegaSheet(Sheet sheet, String lipidClass) throws IOException {
+  private void readOmegaSheet(Sheet sheet, String lipidClass) throws IOException {
     Hashtable<String,LipidParameterSet> msHash = new Hashtable<String,LipidParameterSet>();
     for (LipidParameterSet param : resultParameterSets_.get(lipidClass)){
       msHash.put(param.getNamePlusModHumanReadable(), param);
@@ -1002,6 +1027,13 @@ public class LDAResultReader
     Row headerRow = rows.get(QuantificationResultExporter.HEADER_ROW);
     List<String> headerTitles = readSheetHeaderTitles(headerRow);
     List<Row> contentRows = rows.subList(QuantificationResultExporter.HEADER_ROW+1, rows.size());
+    //the columns are looked up once, and not for every cell
+    int identifierColumn = headerTitles.indexOf(QuantificationResultExporter.HEADER_IDENTIFIER);
+    int molecularSpeciesColumn = headerTitles.indexOf(QuantificationResultExporter.HEADER_MOLECULAR_SPECIES);
+    int doubleBondPositionColumn = headerTitles.indexOf(QuantificationResultExporter.HEADER_DOUBLE_BOND_POSITION_LEVEL);
+    int expectedRtColumn = headerTitles.indexOf(QuantificationResultExporter.HEADER_EXPECTED_RT);
+    int accuracyColumn = headerTitles.indexOf(QuantificationResultExporter.HEADER_ACCURACY);
+    int assignedColumn = headerTitles.indexOf(QuantificationResultExporter.HEADER_ASSIGNED);
     
     String identifier = null;
     String molecularSpecies = null;
@@ -1018,17 +1050,17 @@ public class LDAResultReader
         index = cell.getColumnIndex();
         rawValue = cell.getRawValue();
         
-        if (index == headerTitles.indexOf(QuantificationResultExporter.HEADER_IDENTIFIER)) {
+        if (index == identifierColumn) {
           identifier = rawValue;
-        } else if (index == headerTitles.indexOf(QuantificationResultExporter.HEADER_MOLECULAR_SPECIES)) {
+        } else if (index == molecularSpeciesColumn) {
           molecularSpecies = rawValue;
-        } else if (index == headerTitles.indexOf(QuantificationResultExporter.HEADER_DOUBLE_BOND_POSITION_LEVEL)) {
+        } else if (index == doubleBondPositionColumn) {
           doubleBondPosition = rawValue;
-        } else if (index == headerTitles.indexOf(QuantificationResultExporter.HEADER_EXPECTED_RT)) {
+        } else if (index == expectedRtColumn) {
           expectedRetentionTime = Float.parseFloat(rawValue);
-        } else if (index == headerTitles.indexOf(QuantificationResultExporter.HEADER_ACCURACY)) {
+        } else if (index == accuracyColumn) {
           accuracy = Integer.parseInt(rawValue);
-        } else if (index == headerTitles.indexOf(QuantificationResultExporter.HEADER_ASSIGNED)) {
+        } else if (index == assignedColumn) {
           isAssigned = rawValue.equalsIgnoreCase("1");
         } 
       }
@@ -1058,7 +1090,7 @@ public class LDAResultReader
    * @param lipidClass
    * @throws IOException 
    */
-  private static void readMS1Sheet(Sheet sheet, Hashtable<String,Boolean> showModifications, String lipidClass) throws IOException
+  private void readMS1Sheet(Sheet sheet, Hashtable<String,Boolean> showModifications, String lipidClass) throws IOException
   {
     int msLevel=1;
     Vector<LipidParameterSet> resultParams = new Vector<LipidParameterSet>();
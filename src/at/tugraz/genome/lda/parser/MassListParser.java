@@ -32,6 +32,7 @@ import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.Vector;
 
+import org.apache.commons.math3.util.Pair;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
@@ -55,6 +56,7 @@ import at.tugraz.genome.lda.masslist.MassListExporter;
 import at.tugraz.genome.lda.msn.RulesContainer;
 import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
 import at.tugraz.genome.lda.target.export.TargetListExporter;
+import at.tugraz.genome.lda.utils.IsotopeDistributionService;
 import at.tugraz.genome.lda.utils.RangeInteger;
 import at.tugraz.genome.lda.utils.StaticUtils;
 import at.tugraz.genome.lda.vos.DoubleBondPositionVO;
@@ -92,6 +94,8 @@ public class MassListParser
 	private Hashtable<String,Float> fixedStopTime_;
 	private Hashtable<String,Integer> ohNumber_;
 	private Hashtable<String,RangeInteger> ohRange_;
+	/** the targets whose isotopic distributions have not been calculated yet, with their chemical formula*/
+	private Vector<Pair<QuantVO,String>> pendingDistributions_;
 	
 	/**
    * Constructor that parses an LDA mass list file
@@ -180,6 +184,7 @@ public class MassListParser
 		this.fixedStopTime_ = new Hashtable<String,Float>();
 		this.ohNumber_ = new Hashtable<String,Integer>();
 		this.ohRange_ = new Hashtable<String,RangeInteger>();
+		this.pendingDistributions_ = new Vector<Pair<QuantVO,String>>();
 		this.parseTargetListFile();
 	}
 	
@@ -229,6 +234,7 @@ public class MassListParser
 		this.fixedStopTime_ = new Hashtable<String,Float>();
 		this.ohNumber_ = new Hashtable<String,Integer>();
 		this.ohRange_ = new Hashtable<String,RangeInteger>();
+		this.pendingDistributions_ = new Vector<Pair<QuantVO,String>>();
 		this.parseAlex123TargetList();
 	}
 
@@ -539,17 +545,12 @@ public class MassListParser
                   //no negative elements are allowed after an applied modification
                   if (chemicalFormula.indexOf("-")!=-1)
                     continue;
-                  Object[] distris = getTheoreticalIsoDistributions(aaParser,isotopesMustMatch_,amountOfIsotopes_,chemicalFormula);
-                  @SuppressWarnings("unchecked")
-									Vector<Double> mustMatchProbabs = (Vector<Double>)distris[0];
-                  @SuppressWarnings("unchecked")
-                  Vector<Double> probabs = (Vector<Double>)distris[1];
-                  int negativeStartValue = (Integer)distris[2];
-
+                  //the isotopic distributions are filled in after the whole mass list is parsed
                   QuantVO quantVO = new QuantVO(sheet.getSheetName(), sideChain, doubleBonds,
                       ohToUse,analyteFormula, massOfInterest, charge, modName,
                       modificationFormula, retTime, usedMinusTime, usedPlusTime,
-                      mustMatchProbabs, probabs,negativeStartValue, "");
+                      null, null, 0, "");
+                  pendingDistributions_.add(new Pair<QuantVO,String>(quantVO,chemicalFormula));
                   
                   analEncoded = quantVO.getAnalyteName();
                   quantsOfAnalyte.put(modName, quantVO);
@@ -625,12 +626,6 @@ public class MassListParser
                     //no negative elements are allowed after an applied modification
                     if (chemicalFormula.indexOf("-")!=-1)
                       continue;
-                    Object[] distris = getTheoreticalIsoDistributions(aaParser,isotopesMustMatch_,amountOfIsotopes_,chemicalFormula);
-                    @SuppressWarnings("unchecked")
-                    Vector<Double> mustMatchProbabs = (Vector<Double>)distris[0];
-                    @SuppressWarnings("unchecked")
-                    Vector<Double> probabs = (Vector<Double>)distris[1];
-                    int negativeStartValue = (Integer)distris[2];
                 	
                 	//add ox-prefix to modified lipids
                 	if(!oxMod.equals("")) {
@@ -640,7 +635,9 @@ public class MassListParser
                 	QuantVO quantVO = new QuantVO(analyteClass, sideChain, doubleBonds,
                             ohToUse,analyteFormula, massOfInterest, charge, modName,
                             modificationFormula, retTime, usedMinusTime, usedPlusTime,
-                            mustMatchProbabs, probabs,negativeStartValue,oxMod);
+                            null, null, 0, oxMod);
+                    quantVO.setMassListClass(sheet.getSheetName());
+                    pendingDistributions_.add(new Pair<QuantVO,String>(quantVO,chemicalFormula));
                             analEncoded = quantVO.getAnalyteName();
                             
                     /*add oxLipids to another sheet (effectively becoming a tab in the GUI)*/
@@ -688,6 +685,7 @@ public class MassListParser
     }
     myxls.close();
     if (!excelOK) throw new ExcelInputFileException("The Excel file is not valid!");
+    fillTheoreticalIsoDistributions();
     if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_PRM)
     	checkForIsobaricSpecies(classSequence_,analyteSequence_,quantObjects_);
   }
@@ -743,7 +741,6 @@ public class MassListParser
       throw new AlexTargetlistParserException("There are unusable entries in your target list");
 
     //now generate the corresponding objects
-    ElementConfigParser elementParser = Settings.getElementParser();
     for (String className : sortedEntries.keySet()){
       classSequence_.put(className, 1);
       LinkedHashMap<String,LinkedHashMap<String,TargetlistEntry>> classEntries = sortedEntries.get(className);
@@ -767,13 +764,7 @@ public class MassListParser
 //          String modificationFormula = formulas[1];
           String chemicalFormula = formulas[2];
 //          System.out.println(className+StaticUtils.generateLipidNameString(sideChain, doubleBonds)+": "+chemicalFormula);
-          Object[] distris = getTheoreticalIsoDistributions(elementParser,isotopesMustMatch_,amountOfIsotopes_,chemicalFormula);
-          @SuppressWarnings("unchecked")
-					Vector<Double> mustMatchProbabs = (Vector<Double>)distris[0];
-          @SuppressWarnings("unchecked")
-          Vector<Double> probabs = (Vector<Double>)distris[1];
-          int negativeStartValue = (Integer)distris[2];
-          entry.setDistributionValues(mustMatchProbabs,probabs,negativeStartValue);
+          pendingDistributions_.add(new Pair<QuantVO,String>(entry,chemicalFormula));
           
           
           quantsOfAnalyte.put(entry.getModName(), entry);
@@ -788,6 +779,7 @@ public class MassListParser
       adductInsensitiveRtFilter_.put(className, false);
       bestMatchBySpectrumCoverage_.put(className, false);
     }
+    fillTheoreticalIsoDistributions();
     if (LipidomicsConstants.isShotgun()!=LipidomicsConstants.SHOTGUN_PRM)
     	checkForIsobaricSpecies(classSequence_,analyteSequence_,quantObjects_);
     //TODO: these few lines are only for testing purposes
@@ -831,59 +823,30 @@ public class MassListParser
   }
   
   /**
-   * calculates the positive and the negative isotopic distribution, and decides which on has to be used
-   * @param elementParser parser containint the relative abundances of the elements
-   * @param isotopesMustMatch number of isotopes that have to fit the theoretical isotopic distribution
-   * @param amountOfIsotopes number of isotopes that shall be quantified by the LDA algorithm
-   * @param chemicalFormula the chemical formula of the analyte where the isotopic distribution has to match
-   * @return [0] Vector<Double> containing the probabilities of the isotopes that must match; [1] Vector<Double> containing probabilities of all isotopes; [2] if the distribution goes in the negative direction - how negative is the lowest isotope 
+   * calculates the isotopic distributions of the parsed targets - the distributions of the distinct chemical formulas are calculated in parallel
    * @throws SpectrummillParserException if there is something wrong with the elementconfig.xml
    */
-  private Object[] getTheoreticalIsoDistributions(ElementConfigParser elementParser, int isotopesMustMatch, int amountOfIsotopes, String chemicalFormula) throws SpectrummillParserException{  
-    boolean negativeDistribution = false;
-    Vector<Double> probabs = new Vector<Double>();
-    if (amountOfIsotopes<isotopesMustMatch)
-      amountOfIsotopes = isotopesMustMatch;
-    if (amountOfIsotopes>0){
-      Vector<Vector<Double>> bothDistris = elementParser.calculateChemicalFormulaIntensityDistribution(chemicalFormula, amountOfIsotopes+1, false);
-      probabs = bothDistris.get(0);
-      if (bothDistris.size()>1){
-        Vector<Double> negDistri = bothDistris.get(1);
-        if (StaticUtils.useNegativeDistribution(probabs,negDistri)){
-          probabs = negDistri;
-          negativeDistribution = true;
-        }
-      }
-
-    }else{
-      probabs.add(1d);
+  private void fillTheoreticalIsoDistributions() throws SpectrummillParserException{
+    IsotopeDistributionService distributionService = IsotopeDistributionService.getInstance();
+    if (Math.max(amountOfIsotopes_,isotopesMustMatch_)>0){
+      Vector<String> formulas = new Vector<String>();
+      for (Pair<QuantVO,String> pending : pendingDistributions_) formulas.add(pending.getValue());
+      distributionService.fill(formulas, Math.max(amountOfIsotopes_,isotopesMustMatch_)+1, LipidomicsConstants.getThreadBudget());
     }
-    Vector<Double> mustMatchProbabs = new Vector<Double>();
-    if (isotopesMustMatch>0){
-      if (amountOfIsotopes == isotopesMustMatch){
-        mustMatchProbabs = new Vector<Double>(probabs);
-      }else{
-        Vector<Vector<Double>> bothDistris = elementParser.calculateChemicalFormulaIntensityDistribution(chemicalFormula, isotopesMustMatch+1, false);
-        mustMatchProbabs = bothDistris.get(0);
-        if (bothDistris.size()>1){
-          Vector<Double> negDistri = bothDistris.get(1);
-          if (StaticUtils.useNegativeDistribution(mustMatchProbabs,negDistri)){
-            mustMatchProbabs = negDistri;
-            negativeDistribution = true;
-          }
-        }
-      }
+    for (Pair<QuantVO,String> pending : pendingDistributions_){
+      Object[] distris = distributionService.getTheoreticalIsoDistributions(pending.getValue(),isotopesMustMatch_,amountOfIsotopes_);
+      @SuppressWarnings("unchecked")
+      Vector<Double> mustMatchProbabs = (Vector<Double>)distris[0];
+      @SuppressWarnings("unchecked")
+      Vector<Double> probabs = (Vector<Double>)distris[1];
+      pending.getKey().setDistributionValues(mustMatchProbabs,probabs,(Integer)distris[2]);
     }
-    int negativeStartValue = 0;
-    if (negativeDistribution){
-      negativeStartValue = (mustMatchProbabs.size()*-1)+1;
+    pendingDistributions_.clear();
+    try{
+      distributionService.store();
+    } catch (IOException iox){
+      System.out.println("Warning: The isotopic distributions could not be cached: "+iox.getMessage());
     }
-    
-    Object[] distris = new Object[3];
-    distris[0] = mustMatchProbabs;
-    distris[1] = probabs;
-    distris[2] = negativeStartValue;
-    return distris;
   }
   
   /**
@@ -25,9 +25,14 @@ package at.tugraz.genome.lda.parser;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Comparator;
 import java.util.Hashtable;
+import java.util.PriorityQueue;
 import java.util.Vector;
 
 import at.tugraz.genome.lda.exception.MzXMLReaderException;
@@ -36,6 +41,9 @@ import at.tugraz.genome.lda.exception.MzXMLReaderException;
  * Waters usually stores the data in several mass traces
  * When the data is converted in mzXML, for each mass trace, one mzXML is generated
  * this class merges this mzXML files in one mzXML file
+ * The mzXML files are merged in one pass ordered by the retention time; the scan entries are copied
+ * as byte ranges between the file channels, and the offset index is streamed to a temporary file
+ * that is appended at the end
  * @author Juergen Hartler
  *
  */
@@ -68,88 +76,144 @@ public class MzXMLMergerForWaters
    */
   public void merge() throws IOException, MzXMLReaderException {
     readers_ = new Hashtable<Integer,MzXMLNextScanReader>();
-    // this inits the mzXML readers and lets them read to the first <scan> tag
-    int totalNumberOfScans = 0;
-    for (int i=1; i<=msLevels_; i++){
-      String fileName = new String(mzXMLBaseFile_);
-      if (i!=1) fileName += String.valueOf(i);
-      File file = new File(fileName);
-      if (!file.exists()) continue;
-      MzXMLNextScanReader scanReader = new MzXMLNextScanReader(fileName);
-      scanReader.openReader(i==1);
-      totalNumberOfScans += scanReader.getScanCount();
-      readers_.put(i, scanReader);
-    }
-    BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(mergedFileName_));
-    // this writes out the general contents of the mzXML file
-    byte[] bytes = replaceScanCount(readers_.get(1).getCachedContents(),totalNumberOfScans).getBytes();
-    long currentByteOffset = bytes.length;
-    out.write(bytes);
-    //this reads the first scans in each mzXML file
-    for (int i=1; i<=msLevels_; i++){
-      if (!readers_.containsKey(i)) continue;
-      readers_.get(i).readNextScan();
-    }
-    int currentScanNumber = 1;
-    String indexEntry = "  <index name=\"scan\">\n";
-    String lastScanEntry = null;
-    int lastMSLevel = 1;
-    Vector<String> closingLines = new Vector<String>();
-    boolean foundMS1Scan = false;
-    boolean lastIteration = false;
-    while (!lastIteration){
-      if (allFinished()) lastIteration = true;
-      MzXMLNextScanReader scanReader = getReaderAtNextTimePoint();
-      if (lastScanEntry!=null){
-        indexEntry += createOffsetString(currentScanNumber,currentByteOffset);
-        String toWrite = replaceScanNumber(lastScanEntry,currentScanNumber);
-        currentScanNumber++;
-        if (scanReader==null){
-          for (int i=(closingLines.size()-1); i!=-1; i--){
-            toWrite += closingLines.get(i);
-          }
-        } else if (scanReader.getMsLevel()<lastMSLevel){
-          for (int i=lastMSLevel; i>scanReader.getMsLevel(); i--){
-            toWrite += closingLines.lastElement();
-            closingLines.remove(closingLines.size()-1);
+    File mergedFile = new File(mergedFileName_);
+    File indexFile = null;
+    FileOutputStream outStream = null;
+    BufferedOutputStream indexOut = null;
+    try{
+      // this inits the mzXML readers and lets them read to the first <scan> tag
+      int totalNumberOfScans = 0;
+      for (int i=1; i<=msLevels_; i++){
+        String fileName = new String(mzXMLBaseFile_);
+        if (i!=1) fileName += String.valueOf(i);
+        File file = new File(fileName);
+        if (!file.exists()) continue;
+        MzXMLNextScanReader scanReader = new MzXMLNextScanReader(fileName);
+        readers_.put(i, scanReader);
+        scanReader.openReader(i==1);
+        totalNumberOfScans += scanReader.getScanCount();
+      }
+      indexFile = File.createTempFile("mzXMLIndex", ".tmp", mergedFile.getAbsoluteFile().getParentFile());
+      indexOut = new BufferedOutputStream(new FileOutputStream(indexFile));
+      outStream = new FileOutputStream(mergedFile);
+      FileChannel out = outStream.getChannel();
+      // this writes out the general contents of the mzXML file
+      long currentByteOffset = write(out,replaceScanCount(readers_.get(1).getCachedContents(),totalNumberOfScans).getBytes());
+      //this reads the first scans in each mzXML file; the readers are sorted by the retention time of their next scan
+      PriorityQueue<Integer> nextInTime = new PriorityQueue<Integer>(Math.max(1,readers_.size()),new NextTimePointComparator());
+      for (int i=1; i<=msLevels_; i++){
+        if (!readers_.containsKey(i)) continue;
+        readers_.get(i).readNextScan();
+        if (!readers_.get(i).isFinished()) nextInTime.add(i);
+      }
+      int currentScanNumber = 1;
+      ScanEntry lastScanEntry = null;
+      Vector<ScanEntry> closingLines = new Vector<ScanEntry>();
+      boolean foundMS1Scan = false;
+      while (true){
+        Integer readerIndex = nextInTime.poll();
+        MzXMLNextScanReader scanReader = null;
+        if (readerIndex!=null) scanReader = readers_.get(readerIndex);
+        if (lastScanEntry!=null){
+          indexOut.write(createOffsetString(currentScanNumber,currentByteOffset).getBytes());
+          lastScanEntry.scanNumber_ = String.valueOf(currentScanNumber).getBytes();
+          currentScanNumber++;
+          if (scanReader==null){
+            currentByteOffset += writeRange(lastScanEntry,lastScanEntry.start_,lastScanEntry.end_,out);
+            for (int i=(closingLines.size()-1); i!=-1; i--){
+              currentByteOffset += writeClosingLine(closingLines.get(i),out);
+            }
+          } else if (scanReader.getMsLevel()<lastScanEntry.msLevel_){
+            currentByteOffset += writeRange(lastScanEntry,lastScanEntry.start_,lastScanEntry.end_,out);
+            for (int i=lastScanEntry.msLevel_; i>scanReader.getMsLevel() && closingLines.size()>0; i--){
+              currentByteOffset += writeClosingLine(closingLines.lastElement(),out);
+              closingLines.remove(closingLines.size()-1);
+            }
+          } else if (scanReader.getMsLevel()==lastScanEntry.msLevel_){
+            // nothing to do if it is the same MS level
+            currentByteOffset += writeRange(lastScanEntry,lastScanEntry.start_,lastScanEntry.end_,out);
+          } else if (scanReader.getMsLevel()>lastScanEntry.msLevel_){
+            // the closing line is written after the scans of the higher MS level
+            currentByteOffset += writeRange(lastScanEntry,lastScanEntry.start_,lastScanEntry.lastLineStart_,out);
+            closingLines.add(lastScanEntry);
           }
-        } else if (scanReader.getMsLevel()==lastMSLevel){
-          // nothing to do if it is the same MS level
-        } else if (scanReader.getMsLevel()>lastMSLevel){
-          int indexLastLineBreak = toWrite.substring(0,toWrite.length()-1).lastIndexOf("\n");
-          closingLines.add(toWrite.substring(indexLastLineBreak+1));
-          toWrite = toWrite.substring(0,indexLastLineBreak+1);
         }
-        bytes = toWrite.getBytes();
-        currentByteOffset += bytes.length;
-        out.write(bytes);
-      }
-      if (!lastIteration){
+        if (scanReader==null) break;
         if (foundMS1Scan || scanReader.getMsLevel()==1) {
           foundMS1Scan = true;
-          lastScanEntry = scanReader.getCachedContents();
-          lastMSLevel = scanReader.getMsLevel();
+          lastScanEntry = new ScanEntry(scanReader);
         }
         scanReader.readNextScan();
+        if (!scanReader.isFinished()) nextInTime.add(readerIndex);
       }
-    }
 
-    String endTag = "  </msRun>\n";
-    bytes = endTag.getBytes();
-    currentByteOffset += bytes.length;
-    out.write(bytes);
-    
-    indexEntry += "  </index>\n";
-    indexEntry += "  <indexOffset>"+String.valueOf(currentByteOffset)+"</indexOffset>\n";
-    out.write(indexEntry.getBytes());
-    out.write("</mzXML>\n".getBytes());
-    out.close();
-    for (int i=1; i<=msLevels_; i++){
-      if (!readers_.containsKey(i)) continue;
-      readers_.get(i).closeReader();
+      currentByteOffset += write(out,"  </msRun>\n".getBytes());
+      
+      indexOut.close();
+      indexOut = null;
+      write(out,"  <index name=\"scan\">\n".getBytes());
+      try (FileInputStream indexIn = new FileInputStream(indexFile)){
+        FileChannel indexChannel = indexIn.getChannel();
+        long size = indexChannel.size();
+        long transferred = 0l;
+        while (transferred<size) transferred += indexChannel.transferTo(transferred, size-transferred, out);
+      }
+      String indexEnd = "  </index>\n";
+      indexEnd += "  <indexOffset>"+String.valueOf(currentByteOffset)+"</indexOffset>\n";
+      indexEnd += "</mzXML>\n";
+      write(out,indexEnd.getBytes());
+    } finally {
+      if (indexOut!=null) try{indexOut.close();}catch(IOException e){}
+      if (outStream!=null) outStream.close();
+      if (indexFile!=null) indexFile.delete();
+      for (MzXMLNextScanReader reader : readers_.values()) reader.closeReader();
     }
   }
   
+  /**
+   * writes bytes to the channel
+   * @param out the channel to write to
+   * @param bytes the bytes to write
+   * @return the number of written bytes
+   * @throws IOException if the bytes cannot be written
+   */
+  private long write(FileChannel out, byte[] bytes) throws IOException{
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) out.write(buffer);
+    return bytes.length;
+  }
+  
+  /**
+   * copies a byte range of a scan entry to the channel; the scan number is replaced on the fly
+   * @param entry the scan entry
+   * @param from the file position of the first byte
+   * @param to the file position of the end of the range (exclusive)
+   * @param out the channel to write to
+   * @return the number of written bytes
+   * @throws IOException if the bytes cannot be copied
+   */
+  private long writeRange(ScanEntry entry, long from, long to, FileChannel out) throws IOException{
+    if (from<=entry.scanNumberStart_ && entry.scanNumberEnd_<=to){
+      entry.reader_.transferTo(from, entry.scanNumberStart_-from, out);
+      write(out,entry.scanNumber_);
+      entry.reader_.transferTo(entry.scanNumberEnd_, to-entry.scanNumberEnd_, out);
+      return (to-from)-(entry.scanNumberEnd_-entry.scanNumberStart_)+entry.scanNumber_.length;
+    }
+    entry.reader_.transferTo(from, to-from, out);
+    return to-from;
+  }
+  
+  /**
+   * copies the last line of a scan entry, which was held back for the entries of a higher MS level
+   * @param entry the scan entry
+   * @param out the channel to write to
+   * @return the number of written bytes
+   * @throws IOException if the bytes cannot be copied
+   */
+  private long writeClosingLine(ScanEntry entry, FileChannel out) throws IOException{
+    return writeRange(entry,entry.lastLineStart_,entry.end_,out);
+  }
+  
   /**
    * method that stores the bytes to the individual offset
    * @param scanNumber the current scan number
@@ -161,55 +225,43 @@ public class MzXMLMergerForWaters
   }
   
   /**
-   * checks if all of the mzXMLReaders reached the end of the file
-   * @return true if all mzXMLReaders reached the end
-   */
-  private boolean allFinished(){
-    boolean allFinished = true;
-    for (int i=1; i<=msLevels_; i++){
-      if (!readers_.containsKey(i)) continue;
-      if (!readers_.get(i).isFinished()){
-        allFinished = false;
-        break;
-      }
-    }    
-    return allFinished;
-  }
-  
-  /**
-   * 
-   * @return the mzXMLReader that is the next one in time
+   * sorts the indices of the readers by the retention time of their current scan entry;
+   * for equal retention times, the reader of the higher MS level file comes first
    */
-  private MzXMLNextScanReader getReaderAtNextTimePoint(){
-    MzXMLNextScanReader currentReader = null;
-    float lowestTime = Float.MAX_VALUE;
-    for (MzXMLNextScanReader reader : readers_.values()){
-      if (reader.isFinished()) continue;
-      float time = Float.parseFloat(reader.getRetentionTime());
-      if (time<lowestTime){
-        currentReader = reader;
-        lowestTime = time;
-      }
+  private class NextTimePointComparator implements Comparator<Integer>
+  {
+    public int compare(Integer o1, Integer o2){
+      int result = Float.compare(Float.parseFloat(readers_.get(o1).getRetentionTime()), Float.parseFloat(readers_.get(o2).getRetentionTime()));
+      if (result==0) result = o2.compareTo(o1);
+      return result;
     }
-    return currentReader;
   }
   
   /**
-   * in the merging process, the scans have to be renumbered
-   * @param entry one scan entry
-   * @param currentScanNumber the new scan number to replace the old one
-   * @return the renumbered scan entry
-   * @throws MzXMLReaderException an exception if the scan entry contains no "num" attribute
+   * the byte positions of one scan entry in its mzXML file
    */
-  private String replaceScanNumber(String entry, int currentScanNumber) throws MzXMLReaderException{
-    if (entry.indexOf("num=\"")!=-1 || entry.indexOf("num = \"")!=-1){
-      String beforeString = "";
-      if (entry.indexOf("num=\"")!=-1) beforeString = entry.substring(0,entry.indexOf("num=\"")+"num=\"".length());
-      else if (entry.indexOf("num = \"")!=-1) beforeString = entry.substring(0,entry.indexOf("num = \"")+"num = \"".length());
-      String restString = entry.substring(beforeString.length());
-      restString = restString.substring(restString.indexOf("\""));
-      return (beforeString+String.valueOf(currentScanNumber)+restString);
-    } else throw new MzXMLReaderException("A mzXML File has no mandatory scan number!");
+  private class ScanEntry
+  {
+    private MzXMLNextScanReader reader_;
+    private int msLevel_;
+    private long start_;
+    private long end_;
+    private long lastLineStart_;
+    private long scanNumberStart_;
+    private long scanNumberEnd_;
+    /** the new scan number in the merged file*/
+    private byte[] scanNumber_;
+    
+    private ScanEntry(MzXMLNextScanReader reader) throws MzXMLReaderException{
+      if (reader.getScanNumberStart()<0) throw new MzXMLReaderException("A mzXML File has no mandatory scan number!");
+      this.reader_ = reader;
+      this.msLevel_ = reader.getMsLevel();
+      this.start_ = reader.getScanStart();
+      this.end_ = reader.getScanEnd();
+      this.lastLineStart_ = reader.getLastLineStart();
+      this.scanNumberStart_ = reader.getScanNumberStart();
+      this.scanNumberEnd_ = reader.getScanNumberEnd();
+    }
   }
   
   /**
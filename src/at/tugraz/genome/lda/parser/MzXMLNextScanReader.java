@@ -23,37 +23,83 @@
 
 package at.tugraz.genome.lda.parser;
 
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 import at.tugraz.genome.lda.exception.MzXMLReaderException;
 
 /**
  * This is an mzXML Reader that reads scan entries one by one;
- * The method readNextScan will extract the next scan entry from the mzXML file and
- * provides the original contents and information about the msLevel and the retention time
+ * The method readNextScan will locate the next scan entry in the mzXML file and
+ * provides the byte positions of the entry and information about the msLevel and the retention time.
+ * The scan entries are not decoded to Strings; they can be copied to another channel by transferTo
  * @author Juergen Hartler
  *
  */
 public class MzXMLNextScanReader
 {
+  /** the initial size of the read buffer; the buffer grows if a line is longer*/
+  private final static int BUFFER_SIZE = 1024*1024;
+  
+  private final static byte[] SCAN_TAG = "<scan".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[] SCAN_TAG_SPACE = "< scan".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[] SCAN_END_TAG = "</scan".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[] SCAN_END_TAG_SPACE = "</ scan".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[][] MSRUN_END_TAGS = new byte[][]{"</msRun>".getBytes(StandardCharsets.US_ASCII),
+    "</ msRun>".getBytes(StandardCharsets.US_ASCII),"</ msRun >".getBytes(StandardCharsets.US_ASCII)};
+  private final static byte[] MS_LEVEL = "msLevel=\"".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[] MS_LEVEL_SPACE = "msLevel = \"".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[] RETENTION_TIME = "retentionTime=\"".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[] RETENTION_TIME_SPACE = "retentionTime = \"".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[] SCAN_NUMBER = "num=\"".getBytes(StandardCharsets.US_ASCII);
+  private final static byte[] SCAN_NUMBER_SPACE = "num = \"".getBytes(StandardCharsets.US_ASCII);
+  
   /** the path to the mzXML file */
   private String fileName_;
   /** the msLevel of the read scan entry */
   private int msLevel_;
-  /** the full scan entry contents */
+  /** the lines before the first scan entry */
   private String cachedContents_;
   /** the number of scans in the file */
   private int scanCount_;
   /** the retention time of the current scan entry contents*/
   private String retentionTime_;
-  /** the last read line */
-  private String line_;
   /** was the last scan entry alread read? */
   private boolean finished_;
-  /** the line reader for reading lines of the mzXML file */
-  private LineNumberReader reader_;
+  /** the channel of the mzXML file */
+  private FileChannel channel_;
+  
+  /** the read buffer*/
+  private byte[] buffer_;
+  /** the file position of the first byte in the buffer*/
+  private long bufferOffset_;
+  /** the end of the valid bytes in the buffer*/
+  private int bufferEnd_;
+  /** the buffer position where the next line starts*/
+  private int nextLineStart_;
+  /** the buffer position where the current line starts*/
+  private int lineStart_;
+  /** the buffer position where the contents of the current line end - without line break*/
+  private int lineEnd_;
+  /** the number of read lines*/
+  private int lineNumber_;
+  /** is the current line a scan start tag*/
+  private boolean lineIsScanStart_;
+  
+  /** the file position where the current scan entry starts*/
+  private long scanStart_;
+  /** the file position where the current scan entry ends (exclusive)*/
+  private long scanEnd_;
+  /** the file position where the last line of the current scan entry starts*/
+  private long lastLineStart_;
+  /** the file position of the value of the "num" attribute*/
+  private long scanNumberStart_;
+  /** the file position of the end of the value of the "num" attribute (exclusive)*/
+  private long scanNumberEnd_;
   
   /**
    * constructor setting the file name
@@ -64,26 +110,38 @@ public class MzXMLNextScanReader
   }
   
   /**
-   * initiates the line reader and reads until a "<scan" tag is detected
+   * initiates the reader and reads until a "<scan" tag is detected
    * @param cacheLinesBeforeScan should the lines before the scan tag be cached (in the first mzXML file this information is used)
    * @throws IOException thrown if something is wrong with the file
    */
+  @SuppressWarnings("resource")
   public void openReader(boolean cacheLinesBeforeScan) throws IOException{
-    reader_ = new LineNumberReader(new FileReader(fileName_));
-    cachedContents_ = "";
+    channel_ = new RandomAccessFile(fileName_,"r").getChannel();
+    buffer_ = new byte[BUFFER_SIZE];
+    bufferOffset_ = 0l;
+    bufferEnd_ = 0;
+    nextLineStart_ = 0;
+    lineNumber_ = 0;
+    lineIsScanStart_ = false;
+    StringBuilder cached = new StringBuilder();
     finished_ = false;
-    while ((line_ = reader_.readLine()) != null){
-      if (line_.trim().startsWith("<scan") || line_.trim().startsWith("< scan")) break;
+    while (readLine()){
+      if (startsWithTrimmed(SCAN_TAG) || startsWithTrimmed(SCAN_TAG_SPACE)){
+        lineIsScanStart_ = true;
+        break;
+      }
+      String line = new String(buffer_,lineStart_,lineEnd_-lineStart_);
       //find out the scan count
-      if (line_.indexOf("scanCount")!=-1){
-        String subLine = line_.trim().substring(line_.trim().indexOf("scanCount")+"scanCount".length());
+      if (line.indexOf("scanCount")!=-1){
+        String subLine = line.trim().substring(line.trim().indexOf("scanCount")+"scanCount".length());
         subLine = subLine.substring(subLine.indexOf("=")+1);
         subLine = subLine.substring(subLine.indexOf("\"")+1);
         subLine = subLine.substring(0,subLine.indexOf("\"")).trim();
         scanCount_ = Integer.parseInt(subLine);
       }
-      if (cacheLinesBeforeScan) cachedContents_ += line_+"\n";
+      if (cacheLinesBeforeScan) cached.append(line).append("\n");
     }
+    cachedContents_ = cached.toString();
   }
   
   /**
@@ -93,32 +151,56 @@ public class MzXMLNextScanReader
    */
   public void readNextScan() throws IOException,MzXMLReaderException{
     msLevel_ = -1;
-    cachedContents_ = "";
     retentionTime_ = "";
+    scanNumberStart_ = -1l;
+    scanNumberEnd_ = -1l;
     if (finished_) return;
-    if (line_ !=null && (line_.trim().startsWith("<scan") || line_.trim().startsWith("< scan"))) cachedContents_ += line_+"\n";
-    while ((line_ = reader_.readLine()) != null){
-      if (line_.indexOf("</msRun>")!=-1 || line_.indexOf("</ msRun>")!=-1 || line_.indexOf("</ msRun >")!=-1){
+    long numberStart = -1l;
+    long numberEnd = -1l;
+    long numberSpaceStart = -1l;
+    long numberSpaceEnd = -1l;
+    //the scan start tag has been read by the previous call
+    boolean scanStartRead = lineIsScanStart_;
+    if (scanStartRead){
+      scanStart_ = bufferOffset_+lineStart_;
+    } else {
+      scanStart_ = bufferOffset_+nextLineStart_;
+    }
+    lineIsScanStart_ = false;
+    boolean lineRead = false;
+    while (scanStartRead || readLine()){
+      scanStartRead = false;
+      lineRead = true;
+      if (containsAny(MSRUN_END_TAGS)){
         finished_ = true;
         return;
       }
-      cachedContents_ += line_+"\n";
-      if (line_.indexOf("msLevel=\"")!=-1 || line_.indexOf("msLevel = \"")!=-1){
-        String msLevelString = "";
-        if (line_.indexOf("msLevel=\"")!=-1) msLevelString = line_.substring(line_.indexOf("msLevel=\"")+"msLevel=\"".length());
-        else if (line_.indexOf("msLevel = \"")!=-1) msLevelString = line_.substring(line_.indexOf("msLevel = \"")+"msLevel = \"".length());
-        msLevelString = msLevelString.substring(0,msLevelString.indexOf("\""));
+      lastLineStart_ = bufferOffset_+lineStart_;
+      scanEnd_ = bufferOffset_+nextLineStart_;
+      if (numberStart<0){
+        int index = indexOf(SCAN_NUMBER);
+        if (index!=-1){
+          numberStart = bufferOffset_+index+SCAN_NUMBER.length;
+          numberEnd = bufferOffset_+indexOfQuote(index+SCAN_NUMBER.length);
+        }
+      }
+      if (numberSpaceStart<0){
+        int index = indexOf(SCAN_NUMBER_SPACE);
+        if (index!=-1){
+          numberSpaceStart = bufferOffset_+index+SCAN_NUMBER_SPACE.length;
+          numberSpaceEnd = bufferOffset_+indexOfQuote(index+SCAN_NUMBER_SPACE.length);
+        }
+      }
+      String msLevelString = getAttributeValue(MS_LEVEL,MS_LEVEL_SPACE);
+      if (msLevelString!=null){
         try{
           msLevel_ = Integer.parseInt(msLevelString);
         } catch (NumberFormatException nfx){
-          throw new MzXMLReaderException("There is something wrong with the msLevel at line "+reader_.getLineNumber()+" with the file: "+fileName_);
+          throw new MzXMLReaderException("There is something wrong with the msLevel at line "+lineNumber_+" with the file: "+fileName_);
         }
       }
-      if (line_.indexOf("retentionTime=\"")!=-1 || line_.indexOf("retentionTime = \"")!=-1){
-        String retentionTimeString = "";
-        if (line_.indexOf("retentionTime=\"")!=-1) retentionTimeString = line_.substring(line_.indexOf("retentionTime=\"")+"retentionTime=\"".length());
-        else if (line_.indexOf("retentionTime = \"")!=-1) retentionTimeString = line_.substring(line_.indexOf("retentionTime = \"")+"retentionTime = \"".length());
-        retentionTimeString = retentionTimeString.substring(0,retentionTimeString.indexOf("\""));
+      String retentionTimeString = getAttributeValue(RETENTION_TIME,RETENTION_TIME_SPACE);
+      if (retentionTimeString!=null){
         char[] rtChars = retentionTimeString.toCharArray();
         for (int i=0; i!=rtChars.length; i++){
           if (Character.isDigit(rtChars[i])){
@@ -135,18 +217,182 @@ public class MzXMLNextScanReader
         }
         try{
           Double.parseDouble(retentionTimeString);
-          retentionTime_ = new String(retentionTimeString);
+          retentionTime_ = retentionTimeString;
         } catch (NumberFormatException nfx){
-          throw new MzXMLReaderException("There is something wrong with the retention time at line "+reader_.getLineNumber()+" with the file: "+fileName_);
+          throw new MzXMLReaderException("There is something wrong with the retention time at line "+lineNumber_+" with the file: "+fileName_);
         }
       }
-      if (line_.trim().startsWith("</scan") || line_.trim().startsWith("</ scan")) break;
+      if (startsWithTrimmed(SCAN_END_TAG) || startsWithTrimmed(SCAN_END_TAG_SPACE)) break;
+    }
+    //the end of the file is reached without a closing msRun tag
+    if (!lineRead){
+      finished_ = true;
+      return;
+    }
+    if (numberStart>=0){
+      scanNumberStart_ = numberStart;
+      scanNumberEnd_ = numberEnd;
+    } else if (numberSpaceStart>=0){
+      scanNumberStart_ = numberSpaceStart;
+      scanNumberEnd_ = numberSpaceEnd;
+    }
+  }
+  
+  /**
+   * copies a byte range of the mzXML file to another channel
+   * @param position the file position of the first byte
+   * @param count the number of bytes
+   * @param target the channel to write to
+   * @throws IOException thrown if something is wrong with the file
+   */
+  public void transferTo(long position, long count, WritableByteChannel target) throws IOException{
+    long transferred = 0l;
+    while (transferred<count){
+      long bytes = channel_.transferTo(position+transferred, count-transferred, target);
+      if (bytes<=0){
+        //fallback if the channel does not support the transfer
+        ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(count-transferred, BUFFER_SIZE));
+        int read = channel_.read(buffer, position+transferred);
+        if (read<=0) throw new IOException("Unexpected end of file "+fileName_);
+        buffer.flip();
+        while (buffer.hasRemaining()) target.write(buffer);
+        bytes = read;
+      }
+      transferred += bytes;
     }
   }
   
+  /**
+   * reads the next line into the buffer; the buffer is refilled and enlarged if necessary
+   * @return false if the end of the file is reached
+   * @throws IOException thrown if something is wrong with the file
+   */
+  private boolean readLine() throws IOException{
+    int searchFrom = nextLineStart_;
+    while (true){
+      for (int i=searchFrom; i<bufferEnd_; i++){
+        if (buffer_[i]=='\n'){
+          setLine(nextLineStart_,i,i+1);
+          return true;
+        }
+      }
+      //there is no line break in the buffer - more bytes have to be read
+      if (nextLineStart_>0){
+        System.arraycopy(buffer_, nextLineStart_, buffer_, 0, bufferEnd_-nextLineStart_);
+        bufferOffset_ += nextLineStart_;
+        bufferEnd_ -= nextLineStart_;
+        nextLineStart_ = 0;
+      }
+      if (bufferEnd_==buffer_.length){
+        byte[] newBuffer = new byte[buffer_.length*2];
+        System.arraycopy(buffer_, 0, newBuffer, 0, bufferEnd_);
+        buffer_ = newBuffer;
+      }
+      searchFrom = bufferEnd_;
+      int read = channel_.read(ByteBuffer.wrap(buffer_, bufferEnd_, buffer_.length-bufferEnd_));
+      if (read<0){
+        if (nextLineStart_==bufferEnd_) return false;
+        //the last line has no line break
+        setLine(nextLineStart_,bufferEnd_,bufferEnd_);
+        return true;
+      }
+      bufferEnd_ += read;
+    }
+  }
+  
+  /**
+   * sets the positions of the current line
+   * @param start the start of the line in the buffer
+   * @param lineBreak the position of the line break in the buffer
+   * @param next the start of the next line in the buffer
+   */
+  private void setLine(int start, int lineBreak, int next){
+    lineStart_ = start;
+    lineEnd_ = lineBreak;
+    if (lineEnd_>lineStart_ && buffer_[lineEnd_-1]=='\r') lineEnd_--;
+    nextLineStart_ = next;
+    lineNumber_++;
+  }
+  
   /**
    * 
-   * @return the scan entry in its original format
+   * @param pattern the pattern to look for
+   * @return true if the current line starts with the pattern, when leading white spaces are ignored
+   */
+  private boolean startsWithTrimmed(byte[] pattern){
+    int start = lineStart_;
+    while (start<lineEnd_ && (buffer_[start]&0xff)<=' ') start++;
+    if (lineEnd_-start<pattern.length) return false;
+    for (int i=0; i!=pattern.length; i++){
+      if (buffer_[start+i]!=pattern[i]) return false;
+    }
+    return true;
+  }
+  
+  /**
+   * 
+   * @param patterns the patterns to look for
+   * @return true if the current line contains any of the patterns
+   */
+  private boolean containsAny(byte[][] patterns){
+    for (byte[] pattern : patterns){
+      if (indexOf(pattern)!=-1) return true;
+    }
+    return false;
+  }
+  
+  /**
+   * 
+   * @param pattern the pattern to look for
+   * @return the buffer position of the first occurrence of the pattern in the current line; -1 if it is not there
+   */
+  private int indexOf(byte[] pattern){
+    int last = lineEnd_-pattern.length;
+    byte first = pattern[0];
+    for (int i=lineStart_; i<=last; i++){
+      if (buffer_[i]!=first) continue;
+      int j = 1;
+      while (j<pattern.length && buffer_[i+j]==pattern[j]) j++;
+      if (j==pattern.length) return i;
+    }
+    return -1;
+  }
+  
+  /**
+   * 
+   * @param from the buffer position to start from
+   * @return the buffer position of the next quote in the current line
+   * @throws MzXMLReaderException thrown if there is no closing quote
+   */
+  private int indexOfQuote(int from) throws MzXMLReaderException{
+    for (int i=from; i<lineEnd_; i++){
+      if (buffer_[i]=='"') return i;
+    }
+    throw new MzXMLReaderException("There is an attribute without a closing quote at line "+lineNumber_+" with the file: "+fileName_);
+  }
+  
+  /**
+   * returns the value of an attribute in the current line
+   * @param pattern the attribute name including '="'
+   * @param patternSpace the attribute name including ' = "'
+   * @return the value of the attribute; null if the current line does not contain it
+   * @throws MzXMLReaderException thrown if there is no closing quote
+   */
+  private String getAttributeValue(byte[] pattern, byte[] patternSpace) throws MzXMLReaderException{
+    int start = indexOf(pattern);
+    if (start!=-1){
+      start += pattern.length;
+    } else {
+      start = indexOf(patternSpace);
+      if (start==-1) return null;
+      start += patternSpace.length;
+    }
+    return new String(buffer_,start,indexOfQuote(start)-start,StandardCharsets.US_ASCII);
+  }
+  
+  /**
+   * 
+   * @return the lines before the first scan entry (if they were cached by openReader)
    */
   public String getCachedContents()
   {
@@ -167,7 +413,7 @@ public class MzXMLNextScanReader
    * closes the reader and releases the file handle
    */
   public void closeReader(){
-    try {if (reader_!=null) reader_.close();}catch (IOException e) {}
+    try {if (channel_!=null) channel_.close();}catch (IOException e) {}
   }
 
   /**
@@ -196,5 +442,50 @@ public class MzXMLNextScanReader
   {
     return finished_;
   }
+
+  /**
+   * 
+   * @return the file position where the current scan entry starts
+   */
+  public long getScanStart()
+  {
+    return scanStart_;
+  }
+
+  /**
+   * 
+   * @return the file position where the current scan entry ends (exclusive)
+   */
+  public long getScanEnd()
+  {
+    return scanEnd_;
+  }
+
+  /**
+   * 
+   * @return the file position where the last line of the current scan entry starts
+   */
+  public long getLastLineStart()
+  {
+    return lastLineStart_;
+  }
+
+  /**
+   * 
+   * @return the file position of the value of the "num" attribute; -1 if the scan entry has no scan number
+   */
+  public long getScanNumberStart()
+  {
+    return scanNumberStart_;
+  }
+
+  /**
+   * 
+   * @return the file position of the end of the value of the "num" attribute (exclusive); -1 if the scan entry has no scan number
+   */
+  public long getScanNumberEnd()
+  {
+    return scanNumberEnd_;
+  }
   
 }
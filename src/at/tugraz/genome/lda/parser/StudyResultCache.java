@@ -0,0 +1,273 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.parser;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import at.tugraz.genome.lda.exception.ExcelInputFileException;
+import at.tugraz.genome.lda.profiling.PipelineMetrics;
+import at.tugraz.genome.lda.quantification.LipidParameterSet;
+import at.tugraz.genome.lda.quantification.QuantificationResult;
+
+/**
+ * Cache for parsed LDA result files shared by the exports of a study. The exports request the results
+ * class by class; instead of parsing the Excel file once for every class, the file is parsed once
+ * completely, and the classes are handed out as slices of the cached result.
+ * The entries are identified by the absolute path, the modification time, and the length of the file;
+ * thus, a file that has been changed is read again. The parsed results are held by soft references, and
+ * the number of cached files is limited - so the cache is cleared by the garbage collector before memory runs out.
+ * The slices contain their own hash tables and vectors, but the LipidParameterSet objects are shared - they must
+ * not be modified by the caller. Callers that modify the results (e.g. the editing in the GUI, or the isotopic correction)
+ * request a result of their own by getModifiableResult(); this is the result that was read ahead by prefetch(), or a freshly
+ * parsed one if the cached result has been handed out as a slice already.
+ */
+public class StudyResultCache
+{
+  /** the default maximum number of result files that are kept*/
+  private final static int DEFAULT_MAX_FILES = 1000;
+  
+  /** the instance shared by the exporters, the statistical analysis, and the GUI*/
+  private static StudyResultCache instance_ = null;
+  
+  /** the maximum number of result files that are kept*/
+  private int maxFiles_;
+  /** the cached files in the sequence of their last access - key: absolute file path*/
+  private LinkedHashMap<String,CachedFile> files_;
+  
+  /**
+   * @return the instance shared by the exporters, the statistical analysis, and the GUI
+   */
+  public static synchronized StudyResultCache getInstance(){
+    if (instance_==null) instance_ = new StudyResultCache(DEFAULT_MAX_FILES);
+    return instance_;
+  }
+  
+  /**
+   * @param maxFiles the maximum number of result files that are kept
+   */
+  @SuppressWarnings("serial")
+  public StudyResultCache(int maxFiles){
+    this.maxFiles_ = maxFiles;
+    this.files_ = new LinkedHashMap<String,CachedFile>(16,0.75f,true){
+      protected boolean removeEldestEntry(Map.Entry<String,CachedFile> eldest){
+        return size()>maxFiles_;
+      }
+    };
+  }
+  
+  /**
+   * returns the content of an LDA result file - the file is parsed only if it is not cached, or if it has been changed
+   * @param filePath the absolute path to the Excel file
+   * @param showModifications this hash is filled by the method and gives information whether there are more than one modifications present; key: lipid class
+   * @param specificClass filter for returning only the results of one analyte class; enter null when no filter is required
+   * @return the contents of the Excel file stored in the corresponding value object
+   * @throws ExcelInputFileException when there is something wrong with the Excel file
+   */
+  public QuantificationResult getResult(String filePath, Hashtable<String,Boolean> showModifications, String specificClass)
+      throws ExcelInputFileException{
+    CachedFile cached = getEntry(filePath);
+    QuantificationResult result = cached.getSharedResult(filePath);
+    cached.setShowModifications(showModifications, specificClass);
+    return result.createView(specificClass, null);
+  }
+  
+  /**
+   * returns the content of an LDA result file that belongs to the caller and may be modified - if the result has been read ahead
+   * by prefetch() and has not been handed out yet, it is taken from the cache; otherwise, the file is parsed
+   * @param filePath the absolute path to the Excel file
+   * @param showModifications this hash is filled by the method and gives information whether there are more than one modifications present; key: lipid class
+   * @return the contents of the Excel file stored in the corresponding value object
+   * @throws ExcelInputFileException when there is something wrong with the Excel file
+   */
+  public QuantificationResult getModifiableResult(String filePath, Hashtable<String,Boolean> showModifications)
+      throws ExcelInputFileException{
+    CachedFile cached = getEntry(filePath);
+    QuantificationResult result = cached.takeResult(filePath);
+    cached.setShowModifications(showModifications, null);
+    return result;
+  }
+  
+  /**
+   * parses an LDA result file and stores the result in the cache, unless it is cached already - for reading files ahead in parallel
+   * @param filePath the absolute path to the Excel file
+   * @throws ExcelInputFileException when there is something wrong with the Excel file
+   */
+  public void prefetch(String filePath) throws ExcelInputFileException{
+    getEntry(filePath).getParsedResult(filePath);
+  }
+  
+  /**
+   * @param filePath the path to the Excel file
+   * @return the cache entry of the file - a new entry is created if there is none, or if the file has been changed
+   */
+  private CachedFile getEntry(String filePath){
+    File file = new File(filePath);
+    String key = file.getAbsolutePath();
+    synchronized (files_){
+      CachedFile cached = files_.get(key);
+      if (cached==null || !cached.isUpToDate(file)){
+        cached = new CachedFile(file);
+        files_.put(key, cached);
+      }
+      return cached;
+    }
+  }
+  
+  /**
+   * removes a file from the cache - must be called when a result file is written
+   * @param filePath the path to the Excel file
+   */
+  public void invalidate(String filePath){
+    synchronized (files_){
+      files_.remove(new File(filePath).getAbsolutePath());
+    }
+  }
+  
+  /**
+   * removes all files from the cache
+   */
+  public void clear(){
+    synchronized (files_){
+      files_.clear();
+    }
+  }
+  
+  /**
+   * one cached result file
+   */
+  private class CachedFile{
+    /** the modification time of the file at the time of parsing*/
+    private long lastModified_;
+    /** the length of the file at the time of parsing*/
+    private long length_;
+    /** the parsed result - the garbage collector may remove it*/
+    private SoftReference<QuantificationResult> result_;
+    /** the show modifications information that was filled by the reader*/
+    private Hashtable<String,Boolean> showModifications_;
+    /** was there omega information in the file*/
+    private boolean omegaInformation_;
+    /** has the cached result been handed out as a slice - then, it must not be handed out for modification*/
+    private boolean shared_;
+    
+    private CachedFile(File file){
+      this.lastModified_ = file.lastModified();
+      this.length_ = file.length();
+      this.result_ = new SoftReference<QuantificationResult>(null);
+      this.showModifications_ = new Hashtable<String,Boolean>();
+      this.omegaInformation_ = false;
+      this.shared_ = false;
+    }
+    
+    /**
+     * @param file the result file
+     * @return true if the file has not been changed since this entry was created
+     */
+    private boolean isUpToDate(File file){
+      return file.lastModified()==lastModified_ && file.length()==length_;
+    }
+    
+    /**
+     * returns the parsed result; if it is not available, the file is parsed - a file is parsed only once at the same time
+     * @param filePath the path to the Excel file
+     * @return the parsed result
+     * @throws ExcelInputFileException when there is something wrong with the Excel file
+     */
+    private synchronized QuantificationResult getParsedResult(String filePath) throws ExcelInputFileException{
+      QuantificationResult result = result_.get();
+      if (result!=null){
+        PipelineMetrics.current().increment("resultCache.hits");
+        return result;
+      }
+      PipelineMetrics.current().increment("resultCache.misses");
+      result = parse(filePath);
+      shared_ = false;
+      result_ = new SoftReference<QuantificationResult>(result);
+      return result;
+    }
+    
+    /**
+     * returns the parsed result, which is handed out as slices from now on
+     * @param filePath the path to the Excel file
+     * @return the parsed result
+     * @throws ExcelInputFileException when there is something wrong with the Excel file
+     */
+    private synchronized QuantificationResult getSharedResult(String filePath) throws ExcelInputFileException{
+      QuantificationResult result = getParsedResult(filePath);
+      shared_ = true;
+      return result;
+    }
+    
+    /**
+     * returns a result that belongs to the caller - a result that has not been handed out yet is removed from the entry;
+     * otherwise, the file is parsed
+     * @param filePath the path to the Excel file
+     * @return the parsed result
+     * @throws ExcelInputFileException when there is something wrong with the Excel file
+     */
+    private synchronized QuantificationResult takeResult(String filePath) throws ExcelInputFileException{
+      QuantificationResult result = result_.get();
+      if (result!=null && !shared_){
+        PipelineMetrics.current().increment("resultCache.hits");
+        result_ = new SoftReference<QuantificationResult>(null);
+        return result;
+      }
+      PipelineMetrics.current().increment("resultCache.misses");
+      return parse(filePath);
+    }
+    
+    /**
+     * parses the file and stores the information that was collected by the reader
+     * @param filePath the path to the Excel file
+     * @return the parsed result
+     * @throws ExcelInputFileException when there is something wrong with the Excel file
+     */
+    private QuantificationResult parse(String filePath) throws ExcelInputFileException{
+      LDAResultReader reader = new LDAResultReader();
+      Hashtable<String,Boolean> showModifications = new Hashtable<String,Boolean>();
+      QuantificationResult result = reader.read(filePath, showModifications, null);
+      showModifications_ = showModifications;
+      omegaInformation_ = reader.hasReadOmegaInformation();
+      return result;
+    }
+    
+    /**
+     * fills the show modifications information of the file into the hash of the caller
+     * @param showModifications the hash of the caller
+     * @param specificClass take over only the information of one analyte class; null when no filter is required
+     */
+    private synchronized void setShowModifications(Hashtable<String,Boolean> showModifications, String specificClass){
+      if (omegaInformation_)
+        LipidParameterSet.setOmegaInformationAvailable(true);
+      for (String className : showModifications_.keySet()){
+        if (specificClass==null || specificClass.equals(className))
+          showModifications.put(className, showModifications_.get(className));
+      }
+    }
+  }
+  
+}
@@ -0,0 +1,439 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.profiling;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects counters and timers of one processing stage (translation or quantification) of one file.
+ * All methods are thread-safe; the counters are LongAdders, so that the threads of one stage can record
+ * without contention. When metrics are disabled, create() returns a shared instance that does not record
+ * anything - thus, the instrumented code does not need to check whether metrics are enabled.
+ * Code that has no reference to the instance of its stage can use current(); the thread processing
+ * a file has to bind() the instance beforehand. 
+ */
+public class PipelineMetrics
+{
+  /** the stage for the translation of raw files to chrom files*/
+  public final static String STAGE_TRANSLATION = "translation";
+  /** the stage for the quantification of chrom files*/
+  public final static String STAGE_QUANTIFICATION = "quantification";
+  
+  /** timer group for the time per analyte class*/
+  public final static String GROUP_CLASS = "class";
+  /** timer group for the time per analyte*/
+  public final static String GROUP_ANALYTE = "analyte";
+  
+  /** system property that enables the metrics collection*/
+  public final static String SYSTEM_PROPERTY_ENABLED = "lda.metrics";
+  /** the suffix of the metrics report that is written next to the processed file*/
+  public final static String REPORT_SUFFIX = "_metrics.json";
+  /** the object name under which the MXBean is registered*/
+  public final static String OBJECT_NAME = "at.tugraz.genome.lda:type=PipelineMetrics";
+  
+  private final static long NANOS_PER_MILLI = 1000000l;
+
+  /** is the collection of metrics enabled*/
+  private static volatile boolean enabled_ = Boolean.getBoolean(SYSTEM_PROPERTY_ENABLED);
+  /** the instances that are currently recording*/
+  private final static Set<PipelineMetrics> active_ = ConcurrentHashMap.newKeySet();
+  /** the instance bound to the current thread*/
+  private final static ThreadLocal<PipelineMetrics> current_ = new ThreadLocal<PipelineMetrics>();
+  /** the instance that is returned if metrics are disabled*/
+  private final static PipelineMetrics DISABLED = new PipelineMetrics(null,null,false);
+  
+  /** the processed file*/
+  private final String file_;
+  /** the processing stage*/
+  private final String stage_;
+  /** false for the instance that does not record anything*/
+  private final boolean recording_;
+  /** the start of the recording in milliseconds*/
+  private final long startTime_;
+  /** the counters - key: name of the counter*/
+  private final ConcurrentHashMap<String,LongAdder> counters_;
+  /** the timers - key: name of the timer*/
+  private final ConcurrentHashMap<String,TimerValues> timers_;
+  /** the grouped timers - first key: name of the group; second key: the timed entity (e.g. the class name)*/
+  private final ConcurrentHashMap<String,ConcurrentHashMap<String,TimerValues>> groupedTimers_;
+  
+  private PipelineMetrics(String file, String stage, boolean recording){
+    this.file_ = file;
+    this.stage_ = stage;
+    this.recording_ = recording;
+    this.startTime_ = System.currentTimeMillis();
+    this.counters_ = new ConcurrentHashMap<String,LongAdder>();
+    this.timers_ = new ConcurrentHashMap<String,TimerValues>();
+    this.groupedTimers_ = new ConcurrentHashMap<String,ConcurrentHashMap<String,TimerValues>>();
+  }
+  
+  /**
+   * creates the metrics collector for a stage of one file
+   * @param file the processed file
+   * @param stage the processing stage (STAGE_TRANSLATION or STAGE_QUANTIFICATION)
+   * @return the metrics collector; if metrics are disabled, an instance that does not record anything
+   */
+  public static PipelineMetrics create(String file, String stage){
+    if (!enabled_) return DISABLED;
+    PipelineMetrics metrics = new PipelineMetrics(file,stage,true);
+    active_.add(metrics);
+    return metrics;
+  }
+  
+  /**
+   * @return true if the collection of metrics is enabled
+   */
+  public static boolean isEnabled(){
+    return enabled_;
+  }
+  
+  /**
+   * enables or disables the collection of metrics for stages started afterwards
+   * @param enabled true if metrics shall be collected
+   */
+  public static void setEnabled(boolean enabled){
+    enabled_ = enabled;
+  }
+  
+  /**
+   * registers the MXBean exposing the metrics of the running stages at the platform MBean server
+   * @throws JMException if the registration failed
+   */
+  public static synchronized void registerMXBean() throws JMException{
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (!server.isRegistered(name))
+      server.registerMBean(new PipelineMetricsMXBeanImpl(), name);
+  }
+  
+  /**
+   * @return the instances that are currently recording
+   */
+  protected static Set<PipelineMetrics> getActive(){
+    return active_;
+  }
+  
+  /**
+   * @return the instance bound to the current thread; if there is none, an instance that does not record anything
+   */
+  public static PipelineMetrics current(){
+    PipelineMetrics metrics = current_.get();
+    if (metrics==null) return DISABLED;
+    return metrics;
+  }
+  
+  /**
+   * binds this instance to the current thread - it is returned by current() until unbind() is called
+   */
+  public void bind(){
+    if (recording_) current_.set(this);
+  }
+  
+  /**
+   * removes the binding of the current thread
+   */
+  public static void unbind(){
+    current_.remove();
+  }
+  
+  /**
+   * @return false if this instance does not record anything
+   */
+  public boolean isRecording(){
+    return recording_;
+  }
+  
+  /**
+   * @return the processed file
+   */
+  public String getFile(){
+    return file_;
+  }
+
+  /**
+   * @return the processing stage
+   */
+  public String getStage(){
+    return stage_;
+  }
+
+  /**
+   * increments a counter by one
+   * @param counter the name of the counter
+   */
+  public void increment(String counter){
+    add(counter,1l);
+  }
+  
+  /**
+   * adds a value to a counter
+   * @param counter the name of the counter
+   * @param value the value to add
+   */
+  public void add(String counter, long value){
+    if (!recording_) return;
+    counters_.computeIfAbsent(counter, k -> new LongAdder()).add(value);
+  }
+  
+  /**
+   * starts the timing of an operation; stop() of the returned object records the elapsed time;
+   * if a JFR recording is running, long operations are additionally emitted as LongOperationEvent
+   * @param timer the name of the timer
+   * @return the running timing
+   */
+  public Timing time(String timer){
+    return new Timing(this,null,timer);
+  }
+  
+  /**
+   * starts the timing of an operation that is recorded per entity of a group
+   * @param group the name of the group (e.g. GROUP_CLASS)
+   * @param key the timed entity (e.g. the class name)
+   * @return the running timing
+   */
+  public Timing time(String group, String key){
+    return new Timing(this,group,key);
+  }
+  
+  /**
+   * records the elapsed time for a timer
+   * @param timer the name of the timer
+   * @param nanos the elapsed time in nanoseconds
+   */
+  public void record(String timer, long nanos){
+    if (!recording_) return;
+    timers_.computeIfAbsent(timer, k -> new TimerValues()).record(nanos);
+  }
+  
+  /**
+   * records the elapsed time for an entity of a group
+   * @param group the name of the group
+   * @param key the timed entity
+   * @param nanos the elapsed time in nanoseconds
+   */
+  public void record(String group, String key, long nanos){
+    if (!recording_) return;
+    groupedTimers_.computeIfAbsent(group, k -> new ConcurrentHashMap<String,TimerValues>()).computeIfAbsent(key, k -> new TimerValues()).record(nanos);
+  }
+  
+  /**
+   * @return the current values of the counters - key: name of the counter
+   */
+  public Map<String,Long> getCounters(){
+    Map<String,Long> counters = new TreeMap<String,Long>();
+    for (String name : counters_.keySet()) counters.put(name, counters_.get(name).sum());
+    return counters;
+  }
+  
+  /**
+   * @return the total times of the timers in milliseconds - key: name of the timer
+   */
+  public Map<String,Long> getTimerTotals(){
+    Map<String,Long> totals = new TreeMap<String,Long>();
+    for (String name : timers_.keySet()) totals.put(name, timers_.get(name).total_.sum()/NANOS_PER_MILLI);
+    return totals;
+  }
+  
+  /**
+   * finishes the recording and writes the report as JSON file
+   * @param report the report file
+   * @throws IOException if the file cannot be written
+   */
+  public void finish(File report) throws IOException{
+    if (!recording_) return;
+    active_.remove(this);
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(report))){
+      writer.write(toJson());
+    }
+  }
+  
+  /**
+   * finishes the recording and writes the report next to a file
+   * @param file the path of the file the report belongs to - the file suffix is replaced
+   */
+  public void finishNextTo(String file){
+    if (!recording_) return;
+    String base = file;
+    if (base.endsWith("/")||base.endsWith("\\")) base = base.substring(0,base.length()-1);
+    int index = base.lastIndexOf(".");
+    if (index>Math.max(base.lastIndexOf("/"), base.lastIndexOf("\\"))) base = base.substring(0,index);
+    File report = new File(base+"_"+stage_+REPORT_SUFFIX);
+    try{
+      finish(report);
+    } catch (IOException iox){
+      iox.printStackTrace();
+    }
+  }
+  
+  /**
+   * @return the collected metrics as JSON object
+   */
+  public String toJson(){
+    StringBuilder json = new StringBuilder();
+    json.append("{\n");
+    json.append("  \"file\": ").append(quote(file_)).append(",\n");
+    json.append("  \"stage\": ").append(quote(stage_)).append(",\n");
+    json.append("  \"started\": ").append(quote(String.valueOf(new Date(startTime_)))).append(",\n");
+    json.append("  \"wallTimeMs\": ").append(System.currentTimeMillis()-startTime_).append(",\n");
+    json.append("  \"counters\": {");
+    boolean first = true;
+    for (Map.Entry<String,Long> entry : getCounters().entrySet()){
+      json.append(first ? "\n" : ",\n").append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue());
+      first = false;
+    }
+    json.append(first ? "" : "\n  ").append("},\n");
+    json.append("  \"timers\": ");
+    appendTimers(json, timers_, "  ");
+    json.append(",\n  \"groups\": {");
+    first = true;
+    for (String group : new TreeMap<String,ConcurrentHashMap<String,TimerValues>>(groupedTimers_).keySet()){
+      json.append(first ? "\n" : ",\n").append("    ").append(quote(group)).append(": ");
+      appendTimers(json, groupedTimers_.get(group), "    ");
+      first = false;
+    }
+    json.append(first ? "" : "\n  ").append("}\n");
+    json.append("}\n");
+    return json.toString();
+  }
+  
+  /**
+   * appends timers as JSON object
+   * @param json the builder to append to
+   * @param timers the timers
+   * @param indent the indentation of the object
+   */
+  private static void appendTimers(StringBuilder json, Map<String,TimerValues> timers, String indent){
+    json.append("{");
+    boolean first = true;
+    for (String name : new TreeMap<String,TimerValues>(timers).keySet()){
+      TimerValues values = timers.get(name);
+      json.append(first ? "\n" : ",\n").append(indent).append("  ").append(quote(name)).append(": {\"count\": ").append(values.count_.sum());
+      json.append(", \"totalMs\": ").append(toMillis(values.total_.sum()));
+      json.append(", \"maxMs\": ").append(toMillis(values.max_.get())).append("}");
+      first = false;
+    }
+    json.append(first ? "" : "\n"+indent).append("}");
+  }
+  
+  /**
+   * @param nanos a time in nanoseconds
+   * @return the time in milliseconds with three decimal places
+   */
+  private static String toMillis(long nanos){
+    return String.valueOf(nanos/NANOS_PER_MILLI)+"."+String.format("%03d", (nanos%NANOS_PER_MILLI)/1000l);
+  }
+  
+  /**
+   * @param value a string value
+   * @return the value as JSON string
+   */
+  private static String quote(String value){
+    if (value==null) return "null";
+    StringBuilder quoted = new StringBuilder(value.length()+2);
+    quoted.append("\"");
+    for (int i=0; i!=value.length(); i++){
+      char c = value.charAt(i);
+      if (c=='"' || c=='\\') quoted.append('\\').append(c);
+      else if (c<0x20) quoted.append(String.format("\\u%04x", (int)c));
+      else quoted.append(c);
+    }
+    quoted.append("\"");
+    return quoted.toString();
+  }
+  
+  /**
+   * the values of one timer
+   */
+  private static class TimerValues{
+    private final LongAdder count_ = new LongAdder();
+    private final LongAdder total_ = new LongAdder();
+    private final LongAccumulator max_ = new LongAccumulator(Math::max, 0l);
+    
+    private void record(long nanos){
+      count_.increment();
+      total_.add(nanos);
+      max_.accumulate(nanos);
+    }
+  }
+  
+  /**
+   * a running timing of an operation
+   */
+  public static class Timing{
+    private final PipelineMetrics metrics_;
+    private final String group_;
+    private final String name_;
+    private final long start_;
+    private final LongOperationEvent event_;
+    
+    private Timing(PipelineMetrics metrics, String group, String name){
+      this.metrics_ = metrics;
+      this.group_ = group;
+      this.name_ = name;
+      LongOperationEvent event = new LongOperationEvent();
+      if (event.isEnabled()){
+        event.begin();
+        event_ = event;
+      } else
+        event_ = null;
+      this.start_ = metrics.recording_ ? System.nanoTime() : 0l;
+    }
+    
+    /**
+     * stops the timing and records the elapsed time
+     */
+    public void stop(){
+      if (metrics_.recording_){
+        long nanos = System.nanoTime()-start_;
+        if (group_==null) metrics_.record(name_, nanos);
+        else metrics_.record(group_, name_, nanos);
+      }
+      if (event_!=null){
+        event_.end();
+        if (event_.shouldCommit()){
+          event_.operation = group_==null ? name_ : group_;
+          event_.detail = group_==null ? null : name_;
+          event_.file = metrics_.file_;
+          event_.commit();
+        }
+      }
+    }
+  }
+
+}
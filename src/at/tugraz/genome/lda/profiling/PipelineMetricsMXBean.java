@@ -0,0 +1,47 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.profiling;
+
+import java.util.Map;
+
+/**
+ * Management interface exposing the metrics of the currently running processing stages
+ */
+public interface PipelineMetricsMXBean
+{
+  /**
+   * @return the stages currently recording, in the format "stage: file"
+   */
+  public String[] getActiveStages();
+  
+  /**
+   * @return the counters summed over all running stages - key: name of the counter
+   */
+  public Map<String,Long> getCounters();
+  
+  /**
+   * @return the total times in milliseconds summed over all running stages - key: name of the timer
+   */
+  public Map<String,Long> getTimerTotals();
+}
@@ -0,0 +1,58 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.profiling;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+
+/**
+ * Implementation of the PipelineMetricsMXBean - reads the values of the active PipelineMetrics
+ */
+public class PipelineMetricsMXBeanImpl implements PipelineMetricsMXBean
+{
+
+  public String[] getActiveStages(){
+    Vector<String> stages = new Vector<String>();
+    for (PipelineMetrics metrics : PipelineMetrics.getActive()) stages.add(metrics.getStage()+": "+metrics.getFile());
+    return stages.toArray(new String[stages.size()]);
+  }
+
+  public Map<String,Long> getCounters(){
+    Map<String,Long> counters = new TreeMap<String,Long>();
+    for (PipelineMetrics metrics : PipelineMetrics.getActive()){
+      for (Map.Entry<String,Long> entry : metrics.getCounters().entrySet()) counters.merge(entry.getKey(), entry.getValue(), Long::sum);
+    }
+    return counters;
+  }
+
+  public Map<String,Long> getTimerTotals(){
+    Map<String,Long> totals = new TreeMap<String,Long>();
+    for (PipelineMetrics metrics : PipelineMetrics.getActive()){
+      for (Map.Entry<String,Long> entry : metrics.getTimerTotals().entrySet()) totals.merge(entry.getKey(), entry.getValue(), Long::sum);
+    }
+    return totals;
+  }
+
+}
@@ -0,0 +1,137 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.quantification;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import at.tugraz.genome.maspectras.quantification.CgException;
+import at.tugraz.genome.util.IndexedLineNumberReader;
+import at.tugraz.genome.util.index.IndexFileException;
+
+/**
+ * Shared line ranges ("slabs") of the MS1 chromatogram file that are read once and served to all analyzers;
+ * a slab is planned for the overlapping read windows of the hydroxylation/oxidation variants of one species,
+ * read from the disk by the first analyzer that requests lines inside it, and released when all variants are quantified.
+ * The class is thread safe - one instance is shared by all LipidomicsAnalyzers of a quantification job
+ */
+public class ChromatogramSlabs
+{
+  /** the maximum amount of chromatogram lines a slab may hold*/
+  private final static int MAX_SLAB_LINES = 4000;
+
+  /** the slabs of the currently open quantification units*/
+  private Hashtable<String,Vector<Slab>> slabsOfUnit_;
+  
+  public ChromatogramSlabs(){
+    slabsOfUnit_ = new Hashtable<String,Vector<Slab>>();
+  }
+  
+  /**
+   * plans the slabs of a quantification unit - the lines are not read before they are requested
+   * @param unitKey the key of the quantification unit
+   * @param lineRanges the line ranges of the slabs; every entry holds the start line (included) and the stop line (excluded)
+   */
+  public synchronized void plan(String unitKey, Vector<int[]> lineRanges){
+    Vector<Slab> slabs = new Vector<Slab>();
+    for (int[] range : lineRanges){
+      int startLine = Math.max(0, range[0]);
+      if (range[1]<=startLine || (range[1]-startLine)>MAX_SLAB_LINES) continue;
+      slabs.add(new Slab(startLine,range[1]));
+    }
+    if (slabs.size()>0) slabsOfUnit_.put(unitKey, slabs);
+  }
+  
+  /**
+   * releases the slabs of a quantification unit
+   * @param unitKey the key of the quantification unit
+   */
+  public synchronized void release(String unitKey){
+    slabsOfUnit_.remove(unitKey);
+  }
+  
+  /**
+   * @return true if there are no open slabs
+   */
+  public synchronized boolean isEmpty(){
+    return slabsOfUnit_.isEmpty();
+  }
+  
+  /**
+   * returns chromatogram lines out of a slab; if the slab is not read yet, the lines of the whole slab are read by the calling reader
+   * @param startLine the first line (included)
+   * @param stopLine the last line (excluded)
+   * @param reader the reader of the calling analyzer - used if the slab has to be read
+   * @return the chromatogram lines; null if there is no slab covering the requested lines
+   * @throws CgException if there is something wrong with the chromatogram file
+   */
+  public String[] getLines(int startLine, int stopLine, IndexedLineNumberReader reader) throws CgException{
+    Slab slab = findSlab(startLine, stopLine);
+    if (slab==null) return null;
+    return slab.getLines(startLine, stopLine, reader);
+  }
+  
+  private synchronized Slab findSlab(int startLine, int stopLine){
+    for (Vector<Slab> slabs : slabsOfUnit_.values()){
+      for (Slab slab : slabs){
+        if (slab.startLine_<=startLine && stopLine<=slab.stopLine_) return slab;
+      }
+    }
+    return null;
+  }
+  
+  /**
+   * one range of chromatogram lines
+   */
+  private class Slab
+  {
+    /** the first line of the slab (included)*/
+    private final int startLine_;
+    /** the last line of the slab (excluded)*/
+    private final int stopLine_;
+    /** the read lines - null as long as the slab was not requested*/
+    private String[] lines_;
+    
+    private Slab(int startLine, int stopLine){
+      startLine_ = startLine;
+      stopLine_ = stopLine;
+    }
+    
+    private synchronized String[] getLines(int startLine, int stopLine, IndexedLineNumberReader reader) throws CgException{
+      if (lines_==null){
+        try{
+          lines_ = reader.readLines(startLine_, stopLine_);
+        } catch (IndexFileException ifx){
+          throw new CgException(ifx.getMessage());
+        }
+      }
+      //the lines of the slab end earlier if the slab exceeds the end of the file
+      int from = Math.min(startLine-startLine_, lines_.length);
+      int to = Math.min(stopLine-startLine_, lines_.length);
+      String[] lines = new String[Math.max(0, to-from)];
+      System.arraycopy(lines_, from, lines, 0, lines.length);
+      return lines;
+    }
+  }
+}
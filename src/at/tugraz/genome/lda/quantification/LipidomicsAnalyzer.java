@@ -27,7 +27,10 @@ package at.tugraz.genome.lda.quantification;
 //import java.io.BufferedOutputStream;
 //import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Hashtable;
@@ -53,25 +56,30 @@ import java.util.Vector;
 
 
 
+import at.tugraz.genome.dbutilities.Base64;
 import at.tugraz.genome.maspectras.parser.exceptions.SpectrummillParserException;
 import at.tugraz.genome.maspectras.quantification.Analyzer;
 import at.tugraz.genome.maspectras.quantification.CgAreaStatus;
 import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.QuantificationSettings;
 import at.tugraz.genome.lda.exception.ChemicalFormulaException;
 import at.tugraz.genome.lda.exception.HydroxylationEncodingException;
 import at.tugraz.genome.lda.exception.NoRuleException;
 import at.tugraz.genome.lda.exception.QuantificationException;
 import at.tugraz.genome.lda.exception.RulesException;
 import at.tugraz.genome.lda.msn.FragmentCalculator;
+import at.tugraz.genome.lda.msn.FragmentTable;
 import at.tugraz.genome.lda.msn.vos.FragmentRuleVO;
 import at.tugraz.genome.lda.msn.vos.FragmentVO;
 import at.tugraz.genome.lda.swing.Range;
+import at.tugraz.genome.lda.utils.RtMzIntervalIndex;
 import at.tugraz.genome.lda.utils.StaticUtils;
 import at.tugraz.genome.maspectras.quantification.CgChromatogram;
 import at.tugraz.genome.maspectras.quantification.CgDefines;
 import at.tugraz.genome.maspectras.quantification.CgException;
 import at.tugraz.genome.maspectras.quantification.CgProbe;
 import at.tugraz.genome.maspectras.quantification.ChromaAnalyzer;
+import at.tugraz.genome.maspectras.quantification.ChromatogramReader;
 import at.tugraz.genome.maspectras.quantification.Probe3D;
 import at.tugraz.genome.maspectras.utils.Calculator;
 
@@ -85,14 +93,33 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
   
   private boolean useCuda_;
   protected SavGolJNI sav_gol_jni_;
+  /** the settings of the quantification job this analyzer belongs to*/
+  private final QuantificationSettings settings_;
+  /** the table of the precalculated MSn fragments of the mass list; null if the fragments shall always be calculated*/
+  private FragmentTable fragmentTable_;
   
   public LipidomicsAnalyzer(String headerFilePath, String indexFilePath, String retentionTimeFilePath, String chromatogramFilePath, boolean useCuda)throws CgException{
+    this(headerFilePath,indexFilePath,retentionTimeFilePath,chromatogramFilePath,useCuda,LipidomicsConstants.getQuantificationSettings());
+  }
+  
+  /**
+   * @param headerFilePath path to the header file of the chrom
+   * @param indexFilePath path to the index file of the chrom
+   * @param retentionTimeFilePath path to the retention time file of the chrom
+   * @param chromatogramFilePath path to the chromatogram file of the chrom
+   * @param useCuda shall CUDA be used for smoothing
+   * @param settings the settings of the quantification job - shared by all analyzers of the job
+   * @throws CgException if the chrom cannot be read
+   */
+  public LipidomicsAnalyzer(String headerFilePath, String indexFilePath, String retentionTimeFilePath, String chromatogramFilePath, boolean useCuda,
+      QuantificationSettings settings)throws CgException{
     super();
+    this.settings_ = settings;
     if (useCuda){
       sav_gol_jni_ = new SavGolJNI();
     }
-    reader_ = new LipidomicsChromReader(headerFilePath,indexFilePath,retentionTimeFilePath,chromatogramFilePath,LipidomicsConstants.isSparseData(),
-        LipidomicsConstants.getChromSmoothRange(), useCuda);
+    reader_ = new LipidomicsChromReader(headerFilePath,indexFilePath,retentionTimeFilePath,chromatogramFilePath,settings_.isSparseData(),
+        settings_.getChromSmoothRange(), useCuda);
     m_chroma = new LipidomicsChromatogram[CgDefines.MaxCharge];
     LipidomicsChromReader lReader = (LipidomicsChromReader) reader_;
     if (useCuda){
@@ -219,8 +246,12 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
   public final static int SHOTGUN_TYPE_MEDIAN = 1;
   /** the shotgun intensity value is the sum of the scan intensities*/
   public final static int SHOTGUN_TYPE_SUM = 2;
+  /** up to this number of probe pairs, the peak centers are compared pairwise; above, an index is used*/
+  private final static int PAIRWISE_PEAK_CENTER_LIMIT = 16;
   /** which intensity type shall be used for shotgun data*/;
   private int shotgunType_;
+  /** calculator for the shotgun intensities - reuses its buffers for every isotope and analyte*/
+  private ShotgunIntensityCalculator shotgunCalculator_;
 
   private void init(){
     useSameCgHashFor3D_ = false;
@@ -390,6 +421,42 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
     this.msnMzToleranceUnit_ = msnMzToleranceUnit;
   }
   
+  /**
+   * @return the settings of the quantification job this analyzer belongs to
+   */
+  public QuantificationSettings getSettings(){
+    return settings_;
+  }
+  
+  /**
+   * @return the table of the precalculated MSn fragments of the mass list; null if the fragments shall always be calculated
+   */
+  public FragmentTable getFragmentTable(){
+    return fragmentTable_;
+  }
+  
+  /**
+   * @param fragmentTable the table of the precalculated MSn fragments of the mass list - shared by all analyzers of the job
+   */
+  public void setFragmentTable(FragmentTable fragmentTable){
+    this.fragmentTable_ = fragmentTable;
+  }
+  
+  /**
+   * @param slabs the MS1 chromatogram lines that are read once for all variants of a quantification unit - shared by all analyzers of the job
+   */
+  public void setChromatogramSlabs(ChromatogramSlabs slabs){
+    ((LipidomicsChromReader)reader_).setChromatogramSlabs(slabs);
+  }
+  
+  /**
+   * @param mz an m/z value
+   * @return the line in the MS1 chromatogram file where the m/z value is stored
+   */
+  public int getChromatogramLineNumber(float mz){
+    return ((LipidomicsChromReader)reader_).getLineNumber(mz);
+  }
+  
   /**
    * sets the parameters necessary for processing shotgun data
    * @param mzTolerance the mzTolerance
@@ -398,6 +465,7 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
    */
   public void setShotgunParameters(int shotgunType, float msnMzTolerance, short msnMzToleranceUnit){
     this.shotgunType_ = shotgunType;
+    this.shotgunCalculator_ = new ShotgunIntensityCalculator(shotgunType,settings_.isShotgunIntensityRemoval(),settings_.getShotgunRelIntCutoff());
     setMSnMzTolerance(msnMzTolerance, msnMzToleranceUnit);
   }
     
@@ -480,7 +548,7 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
    * @throws CgException
    */
   public Hashtable<Integer,Hashtable<Integer,Vector<CgProbe>>> processShotgunData(float mz, int charge, int msLevel, int nrOfIsotopes, Vector<Double> mustMatchIsos) throws CgException{
-    float mzTolerance = LipidomicsConstants.getCoarseChromMzTolerance(mz);
+    float mzTolerance = settings_.getCoarseChromMzTolerance(mz);
     CgProbe probe = calculateAShotgunIntensity(mz,mzTolerance,charge,msLevel);
     if (!(probe.Area>0f))
       return null;
@@ -491,7 +559,7 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
     oneResult.put(0, probes);
     if (nrOfIsotopes>1){
       for (int i=1; i!=nrOfIsotopes; i++){
-        probe = calculateAShotgunIntensity(mz+i*LipidomicsConstants.getNeutronMass()/(float)charge,mzTolerance,charge,msLevel);
+        probe = calculateAShotgunIntensity(mz+i*settings_.getNeutronMass()/(float)charge,mzTolerance,charge,msLevel);
         if (probe.Area==0f) {
           // in this case, less isotopes have been found than required -> the hit should be discarded
           if (i<mustMatchIsos.size()) {
@@ -525,11 +593,11 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
       String analyteName, String formula, int ohNumber, String oxState) {
     Hashtable<Integer,Hashtable<Integer,Vector<CgProbe>>> finalResults = null;
     try{
-      float mzTolerance = LipidomicsConstants.getCoarseChromMzTolerance(mz);
+      float mzTolerance = settings_.getCoarseChromMzTolerance(mz);
       this.prepareMSnSpectraCache(mz-mzTolerance, mz+mzTolerance,LipidomicsConstants.getMs2MinIntsForNoiseRemoval());
 
       //TODO: here, the analyteFormula without deducts is not implemented - has to be changed in future!
-      FragmentCalculator fragCalc = new FragmentCalculator(null,className,modName,analyteName,formula,formula,mz,charge,ohNumber,oxState);
+      FragmentCalculator fragCalc = new FragmentCalculator(null,className,modName,analyteName,formula,formula,mz,charge,ohNumber,oxState,settings_,fragmentTable_);
       Vector<FragmentVO> mandHeadFragments = fragCalc.getHeadFragments(ohNumber).get(true);
       Hashtable<String,Vector<CgProbe>> headPeaks = new Hashtable<String,Vector<CgProbe>>();
       for (FragmentVO frag : mandHeadFragments){
@@ -713,7 +781,9 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
    */
   private CgProbe calculateAShotgunIntensity(float mz, float mzTolerance, int charge, int msLevel) throws CgException{
     CgChromatogram cgChrom = readAChromatogram(mz, mzTolerance, mzTolerance, msLevel, 0f, 0);
-    return calculateAShotgunIntensity(cgChrom, charge, msLevel, shotgunType_);
+    if (shotgunCalculator_==null)
+      shotgunCalculator_ = new ShotgunIntensityCalculator(shotgunType_,settings_.isShotgunIntensityRemoval(),settings_.getShotgunRelIntCutoff());
+    return createShotgunProbe(cgChrom, charge, shotgunCalculator_.calculateIntensity(cgChrom.Value));
   }
   
   /**
@@ -725,8 +795,19 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
    * @return the detected VO
    */
   public static CgProbe calculateAShotgunIntensity(CgChromatogram cgChrom, int charge, int msLevel, int shotgunType) {
+    return createShotgunProbe(cgChrom, charge, new ShotgunIntensityCalculator(shotgunType).calculateIntensity(cgChrom.Value));
+  }
+  
+  /**
+   * creates the VO for a shotgun intensity
+   * @param cgChrom the chromatogram
+   * @param charge the charge of the analyte
+   * @param area the calculated shotgun intensity
+   * @return the detected VO
+   */
+  private static CgProbe createShotgunProbe(CgChromatogram cgChrom, int charge, float area) {
     CgProbe probe = new CgProbe(0,charge);
-    probe.Area = calculateShotgunIntensity(cgChrom,shotgunType);
+    probe.Area = area;
     probe.AreaStatus = CgAreaStatus.OK;
     probe.LowerMzBand = cgChrom.LowerMzBand;
     probe.UpperMzBand = cgChrom.UpperMzBand;
@@ -739,10 +820,10 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
   
   @SuppressWarnings("unchecked")
   private Hashtable<Integer,Hashtable<Integer,Vector<CgProbe>>> processByMzProbabsAndPossibleRetentionTime(float mz, int charge, float retentionTime, Vector<Float> retentionTimes, float prevTimeTolerance, float afterTimeTolerance, int timeType, Vector<Double>probabs, Vector<Double>possibleProbabs,int msLevel, boolean negative) throws CgException{
-    coarseChromMzTolerance_ = LipidomicsConstants.getCoarseChromMzTolerance(mz);
+    coarseChromMzTolerance_ = settings_.getCoarseChromMzTolerance(mz);
     useSameCgHashFor3D_ = true;
     this.initCacheHashes();
-    float massToAdd = LipidomicsConstants.getNeutronMass();
+    float massToAdd = settings_.getNeutronMass();
     if (negative) massToAdd*=-1;
 //    this.sameCgHash_ = new Vector<CgProbe>();
 //    this.same3DProbes_ = new Vector<Probe3D>();
@@ -1313,8 +1394,8 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
   public Hashtable<Integer,Hashtable<Integer,Vector<CgProbe>>> processByMzAndRetentionTime(float mz, int charge, //float mzTolerance, 
       float retentionTime, float prevTimeTolerance, float afterTimeTolerance, int timeType, Vector<Double>probabs,
       Vector<Double>possibleProbabs, int msLevel, boolean negative) throws CgException{
-    this.coarseChromMzTolerance_ = LipidomicsConstants.getCoarseChromMzTolerance(mz);
-    float massToAdd = LipidomicsConstants.getNeutronMass();
+    this.coarseChromMzTolerance_ = settings_.getCoarseChromMzTolerance(mz);
+    float massToAdd = settings_.getNeutronMass();
     if (negative) massToAdd*=-1;
 //    return this.processByMzProbabsAndPossibleRetentionTime(mz, //mzTolerance, 
 //        retentionTime, prevTimeTolerance, afterTimeTolerance, timeType, probabs, probabs);
@@ -1798,8 +1879,8 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
       Vector<Double>probabs, Vector<Double>possibleProbabs, int msLevel, boolean negative) throws CgException{
 //    return this.processByMzProbabsAndPossibleRetentionTime(mz, //mzTolerance, 
 //        -1, -1, -1, -1, probabs, possibleProbabs);
-    this.coarseChromMzTolerance_ = LipidomicsConstants.getCoarseChromMzTolerance(mz);
-    float massToAdd = LipidomicsConstants.getNeutronMass();
+    this.coarseChromMzTolerance_ = settings_.getCoarseChromMzTolerance(mz);
+    float massToAdd = settings_.getNeutronMass();
     LipidomicsChromatogram mainChrom = new LipidomicsChromatogram(readAChromatogram(mz, this.coarseChromMzTolerance_, this.coarseChromMzTolerance_, msLevel, chromSmoothRange_,chromSmoothRepeats_));
     mainChrom.GetMaximumAndAverage();
     LipidomicsChromatogram previousIsoChrom = new LipidomicsChromatogram(readAChromatogram(mz-massToAdd/(float)charge, this.coarseChromMzTolerance_, this.coarseChromMzTolerance_, msLevel, chromSmoothRange_,chromSmoothRepeats_));
@@ -4542,10 +4623,8 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
     float tol = StaticUtils.calculatedMzTolValue((float)fragmentMass, msnMzTolerance_, msnMzToleranceUnit_);
     LipidomicsChromatogram chrom = new LipidomicsChromatogram(this.readJustIntensitiesOfInterest((float)fragmentMass-tol,(float)fragmentMass+tol,lowestRt,highestRt,msLevel));
     float area = 0f;
-    CgProbe result = new CgProbe(0,charge,msLevel,fragmentFormula);
     float peakRt = 0f;
     float highestInt = 0f;
-    result.AreaStatus = CgAreaStatus.NothingThere;
     if (chrom.getHighestIntensity()>0){
       int startScan = getStartPosition(chrom,lowestRt);
       for (int i=startScan; i!=chrom.Value.length; i++){
@@ -4560,6 +4639,136 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
         }
       }
     }
+    CgProbe result = createMs2Probe(area, peakRt, lowestRt, highestRt, fragmentMass, tol, fragmentFormula, msLevel, charge, isFromOtherSpecies);
+//    for (CgProbe probe : probes){
+//      System.out.println(probe.LowerValley+";"+probe.UpperValley);
+//    }
+//    String basePath = "E:\\lipidomicsMS2\\20130729\\";
+//    printChromaToFile(chrom,basePath+String.valueOf(fragmentMass)+".png",1);
+    return result;
+  }
+  
+  /**
+   * calculates the areas of several MSn fragments of one MS-level at once; for precursor fragmentation data, every spectrum
+   * inside the retention time range is decoded only once, and its m/z-sorted peaks are merge-joined against the m/z-sorted
+   * extraction windows of all fragments - the results are the same as calling calculateMs2Area for every fragment
+   * @param fragments the fragments to quantify - all of them must be observed at msLevel
+   * @param msLevel the level these fragments should be observed
+   * @param probes the MS1 peak - defining the retention time limits
+   * @return the calculated fragment areas in the sequence of the fragments
+   * @throws CgException thrown if there is something wrong with the chrom access
+   */
+  public CgProbe[] calculateMs2Areas(List<FragmentVO> fragments, int msLevel, Vector<CgProbe> probes) throws CgException{
+    int nrOfFragments = fragments.size();
+    CgProbe[] results = new CgProbe[nrOfFragments];
+    String msmsType = reader_.getMsmsType();
+    if (msLevel<2 || msmsType==null || !msmsType.equalsIgnoreCase(ChromatogramReader.CHROMATOGRAM_HEADER_FILE_MSMS_TYPE_PRECURSOR)){
+      for (int i=0; i!=nrOfFragments; i++){
+        FragmentVO fragment = fragments.get(i);
+        results[i] = calculateMs2Area(fragment.getMass(), fragment.getFormula(), msLevel, fragment.getCharge(), fragment.isMandatory()==FragmentRuleVO.MANDATORY_OTHER, probes);
+      }
+      return results;
+    }
+    float[] startStopRt = this.getStartStopTimeFromProbes(probes);
+    float lowestRt = startStopRt[0];
+    float highestRt = startStopRt[1];
+    
+    //the extraction windows of the fragments, and their sequence in ascending order of the lower border
+    float[] tols = new float[nrOfFragments];
+    float[] lowerMzs = new float[nrOfFragments];
+    float[] upperMzs = new float[nrOfFragments];
+    Integer[] sequence = new Integer[nrOfFragments];
+    for (int i=0; i!=nrOfFragments; i++){
+      float mass = (float)fragments.get(i).getMass();
+      tols[i] = StaticUtils.calculatedMzTolValue(mass, msnMzTolerance_, msnMzToleranceUnit_);
+      lowerMzs[i] = mass-tols[i];
+      upperMzs[i] = mass+tols[i];
+      sequence[i] = i;
+    }
+    Arrays.sort(sequence, (i1,i2) -> Float.compare(lowerMzs[i1],lowerMzs[i2]));
+    int[] order = new int[nrOfFragments];
+    for (int i=0; i!=nrOfFragments; i++) order[i] = sequence[i];
+    
+    float[] areas = new float[nrOfFragments];
+    float[] highestInts = new float[nrOfFragments];
+    float[] peakRts = new float[nrOfFragments];
+    Hashtable<Integer,String> spectra = reader_.getMSnSpectraCache().get(msLevel);
+    if (spectra!=null && nrOfFragments>0){
+      Hashtable<Integer,Float> noiseLevels = reader_.getMSnSpectraNoise().get(msLevel);
+      Hashtable<Integer,Float> rtTimes = reader_.getRetentionTimes(msLevel, true);
+      CgChromatogram rtChrom = new CgChromatogram(rtTimes.size());
+      for (int i=0; i!=rtChrom.Value.length; i++) rtChrom.Value[i][0] = rtTimes.get(i);
+      float[] peakMzs = new float[0];
+      float[] peakInts = new float[0];
+      int startScan = getStartPosition(rtChrom,lowestRt);
+      for (int i=startScan; i!=rtChrom.Value.length; i++){
+        float rt = rtChrom.Value[i][0];
+        if (rt>highestRt) break;
+        if (rt<=lowestRt || !spectra.containsKey(i)) continue;
+        //decode the peaks above the noise
+        float noiseThreshold = noiseLevels.get(i)*ChromatogramReader.NOISE_CUTOFF_MULTIPLICATOR;
+        String spectrum = spectra.get(i);
+        spectrum = spectrum.substring(spectrum.indexOf(" ")+1);
+        FloatBuffer buffer = ByteBuffer.wrap(Base64.decode(spectrum)).asFloatBuffer();
+        int nrOfValues = buffer.limit()/2;
+        if (peakMzs.length<nrOfValues){
+          peakMzs = new float[nrOfValues];
+          peakInts = new float[nrOfValues];
+        }
+        int nrOfPeaks = 0;
+        boolean sorted = true;
+        for (int j=0; j!=nrOfValues; j++){
+          float mz = buffer.get();
+          float intensity = buffer.get();
+          if (intensity>0 && intensity>noiseThreshold){
+            if (nrOfPeaks>0 && mz<peakMzs[nrOfPeaks-1]) sorted = false;
+            peakMzs[nrOfPeaks] = mz;
+            peakInts[nrOfPeaks] = intensity;
+            nrOfPeaks++;
+          }
+        }
+        if (!sorted) sortPeaksByMz(peakMzs,peakInts,nrOfPeaks);
+        //merge-join the sorted peaks against the sorted extraction windows
+        int firstPeak = 0;
+        for (int j=0; j!=nrOfFragments; j++){
+          int fragment = order[j];
+          while (firstPeak<nrOfPeaks && peakMzs[firstPeak]<lowerMzs[fragment]) firstPeak++;
+          float intensity = 0f;
+          for (int k=firstPeak; k<nrOfPeaks && peakMzs[k]<=upperMzs[fragment]; k++) intensity += peakInts[k];
+          areas[fragment] += intensity;
+          if (intensity>highestInts[fragment]){
+            highestInts[fragment] = intensity;
+            peakRts[fragment] = rt;
+          }
+        }
+      }
+    }
+    for (int i=0; i!=nrOfFragments; i++){
+      FragmentVO fragment = fragments.get(i);
+      results[i] = createMs2Probe(areas[i], peakRts[i], lowestRt, highestRt, fragment.getMass(), tols[i], fragment.getFormula(), msLevel,
+          fragment.getCharge(), fragment.isMandatory()==FragmentRuleVO.MANDATORY_OTHER);
+    }
+    return results;
+  }
+  
+  /**
+   * creates the CgProbe holding the area of an MSn fragment
+   * @param area the summed intensity of the fragment
+   * @param peakRt the retention time of the most intense scan
+   * @param lowestRt the start time of the MS1 peak
+   * @param highestRt the stop time of the MS1 peak
+   * @param fragmentMass the theoretical mass for the exctraction
+   * @param tol the m/z tolerance of the extraction
+   * @param fragmentFormula the chemical formula of the fragment
+   * @param msLevel the level this fragment should be observed
+   * @param charge the charge state of the fragment
+   * @param isFromOtherSpecies defined if this fragment belongs to another isobaric species
+   * @return the fragment area; if the area is zero, the area status is NothingThere
+   */
+  private CgProbe createMs2Probe(float area, float peakRt, float lowestRt, float highestRt, double fragmentMass, float tol, String fragmentFormula, int msLevel,
+      int charge, boolean isFromOtherSpecies){
+    CgProbe result = new CgProbe(0,charge,msLevel,fragmentFormula);
+    result.AreaStatus = CgAreaStatus.NothingThere;
     if (area>0){
       result.AreaStatus = CgAreaStatus.OK;
       result.Area = area;
@@ -4574,14 +4783,30 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
       result.isotopeNumber = 0;
       result.setFromOtherSpecies(isFromOtherSpecies);
     }
-//    for (CgProbe probe : probes){
-//      System.out.println(probe.LowerValley+";"+probe.UpperValley);
-//    }
-//    String basePath = "E:\\lipidomicsMS2\\20130729\\";
-//    printChromaToFile(chrom,basePath+String.valueOf(fragmentMass)+".png",1);
     return result;
   }
   
+  /**
+   * sorts the first peaks of a spectrum ascendingly by m/z; peaks with the same m/z keep their sequence
+   * @param mzs the m/z values of the peaks
+   * @param intensities the intensities of the peaks
+   * @param nrOfPeaks the number of peaks to sort
+   */
+  private static void sortPeaksByMz(float[] mzs, float[] intensities, int nrOfPeaks){
+    for (int i=1; i<nrOfPeaks; i++){
+      float mz = mzs[i];
+      float intensity = intensities[i];
+      int j = i-1;
+      while (j>=0 && mzs[j]>mz){
+        mzs[j+1] = mzs[j];
+        intensities[j+1] = intensities[j];
+        j--;
+      }
+      mzs[j+1] = mz;
+      intensities[j+1] = intensity;
+    }
+  }
+  
   /**
    * returns the retention times of MSn spectra that are within the detected MS1 peaks
    * @param msLevel the MS-level of the spectra
@@ -4821,8 +5046,13 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
    */
   public static boolean isPeakCenterTheSame(LipidParameterSet set1, LipidParameterSet set2){
     boolean theSame = false;
-    for (CgProbe probe1 : set1.getIsotopicProbes().get(0)){
-      for (CgProbe probe2 : set2.getIsotopicProbes().get(0)){
+    Vector<CgProbe> probes1 = set1.getIsotopicProbes().get(0);
+    Vector<CgProbe> probes2 = set2.getIsotopicProbes().get(0);
+    //for identifications consisting of many peaks, the candidates are looked up in an index
+    if (probes1.size()*probes2.size()>PAIRWISE_PEAK_CENTER_LIMIT)
+      return isPeakCenterTheSame(probes1,createPeakCenterIndex(probes2));
+    for (CgProbe probe1 : probes1){
+      for (CgProbe probe2 : probes2){
         if (isOneProbeInOtherInnerThird(probe1,probe2,LipidomicsConstants.getOverlapPeakDistanceDivisor(),LipidomicsConstants.getOverlapFullDistanceDivisor()))
           return true;
       }
@@ -4830,6 +5060,57 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
     return theSame;
   }
   
+  /**
+   * this method checks if any of the probes shares the same peak center with any of the indexed probes
+   * @param probes1 the 0 isotopic probes of the first MS1 identification
+   * @param peakCenters2 an index of the 0 isotopic probes of the second identification, created by createPeakCenterIndex
+   * @return true if there any of the peak centers the same
+   */
+  public static boolean isPeakCenterTheSame(Vector<CgProbe> probes1, RtMzIntervalIndex<CgProbe> peakCenters2){
+    for (CgProbe probe1 : probes1){
+      float reach = getPeakCenterReach(probe1);
+      for (CgProbe probe2 : peakCenters2.findOverlapping(probe1.Peak-reach, probe1.Peak+reach, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY)){
+        if (isOneProbeInOtherInnerThird(probe1,probe2,LipidomicsConstants.getOverlapPeakDistanceDivisor(),LipidomicsConstants.getOverlapFullDistanceDivisor()))
+          return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * creates an index over the retention time ranges where other peak centers can be regarded as the same peak center;
+   * the m/z is not restricted
+   * @param probes the 0 isotopic probes of an MS1 identification
+   * @return the built index
+   */
+  public static RtMzIntervalIndex<CgProbe> createPeakCenterIndex(Vector<CgProbe> probes){
+    RtMzIntervalIndex<CgProbe> index = new RtMzIntervalIndex<CgProbe>(probes.size());
+    for (CgProbe probe : probes){
+      float reach = getPeakCenterReach(probe);
+      index.add(probe.Peak-reach, probe.Peak+reach, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, probe);
+    }
+    index.build();
+    return index;
+  }
+  
+  /**
+   * returns the maximum retention time distance of another peak center to the center of this probe that may still be
+   * regarded as the same peak center by isPeakCenterTheSame; the value is slightly enlarged to be robust against rounding
+   * @param probe the 0 isotopic probe
+   * @return the maximum distance; Float.POSITIVE_INFINITY if the overlap divisors do not allow a restriction
+   */
+  public static float getPeakCenterReach(CgProbe probe){
+    float peakDivisor = LipidomicsConstants.getOverlapPeakDistanceDivisor();
+    float fullDivisor = LipidomicsConstants.getOverlapFullDistanceDivisor();
+    if (!(peakDivisor>0) || !(fullDivisor>0))
+      return Float.POSITIVE_INFINITY;
+    float reach = Math.max(Math.abs(probe.Peak-probe.LowerValley),Math.abs(probe.UpperValley-probe.Peak))/peakDivisor;
+    reach = Math.max(reach, Math.abs(probe.UpperValley-probe.LowerValley)/fullDivisor);
+    if (Float.isNaN(reach) || Float.isInfinite(reach))
+      return Float.POSITIVE_INFINITY;
+    return reach*1.001f+Math.ulp(Math.abs(probe.Peak)+reach)*4f;
+  }
+  
   /**
    * returns one chromatogram at a speciefied m/z value and MS level
    * @param mz the m/z value for the chromatogram
@@ -5097,42 +5378,4 @@ public class LipidomicsAnalyzer extends ChromaAnalyzer
     return availableLevels;
   }
   
-  
-  /**
-   * calculates the shotgun intensity out of one chromatogram
-   * @param cgChrom
-   * @param shotgunType the type of shotgun processing (i.e. SHOTGUN_TYPE_MEAN, SHOTGUN_TYPE_MEDIAN, or SHOTGUN_TYPE_SUM)
-   * @return calculated value
-   */
-  private static float calculateShotgunIntensity(CgChromatogram cgChrom, int shotgunType){
-    //build the values of interest
-    Vector<Float> ints = new Vector<Float>();
-    float sum = 0f;
-    for (int i=0; i!=cgChrom.Value.length; i++){
-      sum += cgChrom.Value[i][1];
-      if (!LipidomicsConstants.isShotgunIntensityRemoval() || cgChrom.Value[i][1]>0f)
-        ints.add(cgChrom.Value[i][1]);
-    }
-    //if there is another threshold set, calculate the average, and remove the hits according to the cutoff
-    if (LipidomicsConstants.isShotgunIntensityRemoval() && LipidomicsConstants.getShotgunRelIntCutoff()>0) {
-      float cutoff = (sum*LipidomicsConstants.getShotgunRelIntCutoff())/((float)ints.size());
-      Vector<Float> intermediate = new Vector<Float>();
-      for (Float inten : ints) {
-        if (inten>cutoff)
-          intermediate.add(inten);
-      }
-    }
-        
-    float intensity = 0f;
-    float[] intValues = new float[ints.size()];
-    for (int i=0; i!=ints.size(); i++) intValues[i] = ints.get(i);
-    if (shotgunType==SHOTGUN_TYPE_MEAN)
-      intensity = Calculator.mean(intValues);
-    else if (shotgunType==SHOTGUN_TYPE_MEDIAN)
-      intensity = Calculator.median(intValues);
-    else if (shotgunType==SHOTGUN_TYPE_SUM)
-      intensity = sum;
-    return intensity;
-  }
-  
 }
@@ -23,6 +23,8 @@
 
 package at.tugraz.genome.lda.quantification;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -40,6 +42,8 @@ public class LipidomicsChromReader extends ChromatogramReader
 {
   private boolean useCuda_;
   protected SavGolJNI sav_gol_jni_;
+  /** the shared MS1 chromatogram lines of the quantification units - null if not used*/
+  private ChromatogramSlabs slabs_;
   
   /**
    * This constructor is used on the cluster; here all of the information is definable
@@ -89,4 +93,38 @@ public class LipidomicsChromReader extends ChromatogramReader
     return msmsNrOfScans_;
   }
   
+  /**
+   * @param slabs the shared MS1 chromatogram lines of the quantification units - null if the lines shall always be read from the file
+   */
+  public void setChromatogramSlabs(ChromatogramSlabs slabs){
+    this.slabs_ = slabs;
+  }
+  
+  /**
+   * reads the lines from a shared slab, if there is one covering the requested m/z range; otherwise, from the file
+   */
+  public String[] getRawLines(float from, float to) throws CgException{
+    //for full MSn scans, the same method is used for the MSn files - the slabs contain MS1 lines only
+    if (slabs_!=null && !CHROMATOGRAM_HEADER_FILE_MSMS_TYPE_FULL.equalsIgnoreCase(getMsmsType())){
+      int startLine = getLineNumber(from);
+      if (startLine<0) startLine = 0;
+      String[] lines = slabs_.getLines(startLine, getLineNumber(to), this);
+      if (lines!=null) return lines;
+    }
+    return super.getRawLines(from, to);
+  }
+  
+  /**
+   * the calculation must stay identical to the private getLineNumber of the ChromatogramReader, since the lines
+   * of the slab cache and the ones read by the superclass have to correspond to the same m/z values
+   * @param mzValue an m/z value
+   * @return the line in the chromatogram file where the m/z value is stored
+   */
+  public int getLineNumber(float mzValue){
+    float value = mzValue*(getMultiplicationFactorForInt_()/getLowestResolution_());
+    if (!Float.isInfinite(value) && !Float.isNaN(value))
+      value = new BigDecimal(value).setScale(0,RoundingMode.DOWN).floatValue();
+    return Math.round(value)-getLowestMz_()/getLowestResolution_();
+  }
+  
 }
@@ -26,6 +26,7 @@ package at.tugraz.genome.lda.quantification;
 import java.util.Collections;
 import java.util.Vector;
 
+import at.tugraz.genome.lda.profiling.PipelineMetrics;
 import at.tugraz.genome.maspectras.quantification.CgChromatogram;
 import at.tugraz.genome.maspectras.utils.Calculator;
 import at.tugraz.genome.util.FloatMatrix;
@@ -118,8 +119,15 @@ public class LipidomicsChromatogram extends CgChromatogram
           GetValleysOriginal();
   }
   
+  public void Smooth(float range, int repeats, boolean copyRawDataFirst)
+  {
+    PipelineMetrics.current().increment("smoothings");
+    super.Smooth(range, repeats, copyRawDataFirst);
+  }
+  
   public void Smooth(float range, int repeats, boolean copyRawDataFirst, SavGolJNI sav_gol)
   {
+    PipelineMetrics.current().increment("smoothings.cuda");
     if (copyRawDataFirst) copyRawData();
 
     float result[];
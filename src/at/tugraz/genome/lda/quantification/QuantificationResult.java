@@ -26,6 +26,7 @@ package at.tugraz.genome.lda.quantification;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.Vector;
+import java.util.function.Predicate;
 
 import at.tugraz.genome.lda.LipidomicsConstants;
 import at.tugraz.genome.lda.msn.hydroxy.parser.HydroxyEncoding;
@@ -67,7 +68,8 @@ public class QuantificationResult
   }
   
   /**
-   * constructor to create a deep copy
+   * constructor to create a copy - ATTENTION: the identifications are shared with the original; use createView() for
+   * a copy that can be modified independently
    * @param that
    */
   public QuantificationResult(QuantificationResult that) {
@@ -127,6 +129,34 @@ public class QuantificationResult
     return lcbHydroxyEncoding_;
   }
   
+  /**
+   * creates a lightweight view on this result: the view has its own hash tables and vectors - thus, identifications can be
+   * added and removed without changing this result - while the identifications themselves, the constants, and the encodings
+   * are shared; no file has to be read again
+   * @param specificClass filter for taking only the identifications of one analyte class; null when no filter is required
+   * @param filter filter for the identifications to take over; null when no filter is required
+   * @return the view on this result
+   */
+  public QuantificationResult createView(String specificClass, Predicate<LipidParameterSet> filter){
+    Hashtable<String,Vector<LipidParameterSet>> identifications = new Hashtable<String,Vector<LipidParameterSet>>();
+    for (String className : identifications_.keySet()){
+      if (specificClass!=null && !specificClass.equals(className)) continue;
+      Vector<LipidParameterSet> sets = identifications_.get(className);
+      if (filter==null){
+        identifications.put(className, new Vector<LipidParameterSet>(sets));
+      }else{
+        Vector<LipidParameterSet> accepted = new Vector<LipidParameterSet>();
+        for (LipidParameterSet set : sets){
+          if (filter.test(set)) accepted.add(set);
+        }
+        identifications.put(className, accepted);
+      }
+    }
+    Hashtable<String,Integer> msLevels = new Hashtable<String,Integer>();
+    if (msLevels_!=null) msLevels.putAll(msLevels_);
+    return new QuantificationResult(identifications,constants_,msLevels,faHydroxyEncoding_,lcbHydroxyEncoding_);
+  }
+  
   
   
   
@@ -0,0 +1,190 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.quantification;
+
+import java.util.Arrays;
+
+import at.tugraz.genome.lda.LipidomicsConstants;
+
+/**
+ * Calculates shotgun intensities directly on the primitive value arrays of the chromatograms.
+ * The instance keeps one work buffer that is reused for every isotope of every analyte; thus,
+ * an instance must not be shared between threads (one LipidomicsAnalyzer is used per thread).
+ */
+public class ShotgunIntensityCalculator
+{
+  /** the type of shotgun processing (i.e. SHOTGUN_TYPE_MEAN, SHOTGUN_TYPE_MEDIAN, or SHOTGUN_TYPE_SUM)*/
+  private final int shotgunType_;
+  /** should zero intensities be discarded*/
+  private final boolean discardZeros_;
+  /** relative cutoff to the average without zeros - 0 for no cutoff*/
+  private final float relIntCutoff_;
+  /** reusable buffer for the intensities of interest*/
+  private float[] workBuffer_;
+
+  /**
+   * constructor taking the zero-handling settings from the LipidomicsConstants
+   * @param shotgunType the type of shotgun processing (i.e. SHOTGUN_TYPE_MEAN, SHOTGUN_TYPE_MEDIAN, or SHOTGUN_TYPE_SUM)
+   */
+  public ShotgunIntensityCalculator(int shotgunType){
+    this(shotgunType,LipidomicsConstants.isShotgunIntensityRemoval(),LipidomicsConstants.getShotgunRelIntCutoff());
+  }
+
+  /**
+   * @param shotgunType the type of shotgun processing (i.e. SHOTGUN_TYPE_MEAN, SHOTGUN_TYPE_MEDIAN, or SHOTGUN_TYPE_SUM)
+   * @param discardZeros should zero intensities be discarded
+   * @param relIntCutoff relative cutoff to the average without zeros - 0 for no cutoff; applied only if discardZeros is true
+   */
+  public ShotgunIntensityCalculator(int shotgunType, boolean discardZeros, float relIntCutoff){
+    this.shotgunType_ = shotgunType;
+    this.discardZeros_ = discardZeros;
+    this.relIntCutoff_ = relIntCutoff;
+    this.workBuffer_ = new float[0];
+  }
+
+  /**
+   * calculates the shotgun intensity out of the values of one chromatogram
+   * @param values the Value array of a CgChromatogram (second dimension: 0 retention time; 1 intensity)
+   * @return calculated value
+   */
+  public float calculateIntensity(float[][] values){
+    if (workBuffer_.length<values.length)
+      workBuffer_ = new float[values.length];
+    float[] ints = workBuffer_;
+    int count = 0;
+    float sum = 0f;
+    for (int i=0; i!=values.length; i++){
+      float inten = values[i][1];
+      sum += inten;
+      if (!discardZeros_ || inten>0f){
+        ints[count] = inten;
+        count++;
+      }
+    }
+    if (shotgunType_==LipidomicsAnalyzer.SHOTGUN_TYPE_SUM)
+      return sum;
+    //if there is another threshold set, remove the hits according to the cutoff calculated on the average
+    if (discardZeros_ && relIntCutoff_>0) {
+      float cutoff = (sum*relIntCutoff_)/((float)count);
+      int kept = 0;
+      for (int i=0; i!=count; i++){
+        if (ints[i]>cutoff){
+          ints[kept] = ints[i];
+          kept++;
+        }
+      }
+      count = kept;
+    }
+    if (shotgunType_==LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN)
+      return mean(ints,count);
+    else if (shotgunType_==LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN)
+      return median(ints,count);
+    return 0f;
+  }
+
+  /**
+   * calculates the mean of the first values of an array; NaN values are skipped (as in Calculator.mean)
+   * @param values the values
+   * @param length the number of values to use
+   * @return the mean; NaN if there are no values
+   */
+  public static float mean(float[] values, int length){
+    int count = 0;
+    float sum = 0f;
+    for (int i=0; i!=length; i++){
+      if (!Float.isNaN(values[i])){
+        sum += values[i];
+        count++;
+      }
+    }
+    if (count==0)
+      return Float.NaN;
+    return sum/count;
+  }
+
+  /**
+   * calculates the median of the first values of an array by a selection algorithm; NaN values are
+   * treated as the highest values (as by the sorting of Calculator.median)
+   * ATTENTION: the order of the values in the array is changed
+   * @param values the values
+   * @param length the number of values to use
+   * @return the median; 0 if there are no values
+   */
+  public static float median(float[] values, int length){
+    if (length==0)
+      return 0f;
+    //the selection cannot compare NaN values
+    for (int i=0; i!=length; i++){
+      if (Float.isNaN(values[i])){
+        Arrays.sort(values,0,length);
+        if (length%2==0)
+          return (values[(length/2)-1]+values[length/2])/2;
+        else
+          return values[((length+1)/2)-1];
+      }
+    }
+    int upper = length/2;
+    float upperValue = select(values,length,upper);
+    if (length%2!=0)
+      return upperValue;
+    //after the selection, all values below the index "upper" are smaller or equal
+    float lowerValue = values[0];
+    for (int i=1; i<upper; i++){
+      if (values[i]>lowerValue) lowerValue = values[i];
+    }
+    return (lowerValue+upperValue)/2;
+  }
+
+  /**
+   * returns the k-th smallest value of the first values of an array (Hoare's selection)
+   * @param values the values - the order is changed
+   * @param length the number of values to use
+   * @param k the index of the value in an ascendingly sorted array
+   * @return the k-th smallest value
+   */
+  private static float select(float[] values, int length, int k){
+    int left = 0;
+    int right = length-1;
+    while (left<right){
+      float pivot = values[(left+right)>>>1];
+      int i = left;
+      int j = right;
+      while (i<=j){
+        while (values[i]<pivot) i++;
+        while (values[j]>pivot) j--;
+        if (i<=j){
+          float tmp = values[i];
+          values[i] = values[j];
+          values[j] = tmp;
+          i++;
+          j--;
+        }
+      }
+      if (k<=j) right = j;
+      else if (k>=i) left = i;
+      else return values[k];
+    }
+    return values[k];
+  }
+}
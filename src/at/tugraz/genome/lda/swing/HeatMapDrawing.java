@@ -57,6 +57,7 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.imageio.ImageIO;
@@ -89,6 +90,7 @@ import at.tugraz.genome.lda.LipidomicsConstants;
 import at.tugraz.genome.lda.TooltipTexts;
 import at.tugraz.genome.lda.WarningMessage;
 import at.tugraz.genome.lda.analysis.ComparativeAnalysis;
+import at.tugraz.genome.lda.analysis.ComparativeResultsLookup;
 import at.tugraz.genome.lda.analysis.HeatMapClickListener;
 import at.tugraz.genome.lda.analysis.LipidomicsHeatMap;
 import at.tugraz.genome.lda.analysis.exception.CalculationNotPossibleException;
@@ -100,6 +102,7 @@ import at.tugraz.genome.lda.exception.RetentionTimeGroupingException;
 import at.tugraz.genome.lda.exception.RulesException;
 import at.tugraz.genome.lda.export.ExcelAndTextExporter;
 import at.tugraz.genome.lda.export.OmegaCollector;
+import at.tugraz.genome.lda.export.vos.OmegaSummaryVO;
 import at.tugraz.genome.lda.msn.RulesContainer;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.utils.StaticUtils;
@@ -1218,23 +1221,7 @@ public class HeatMapDrawing extends JPanel implements ActionListener
   private static Hashtable<String,Hashtable<String,Vector<Double>>> extractValuesOfInterest(Hashtable<String,Hashtable<String,ResultCompVO>> vos, int maxIsotope, ResultDisplaySettingsVO settingVO, String preferredUnit, ExportOptionsVO expOptions, ArrayList<String> modifications) throws CalculationNotPossibleException{
     Hashtable<String,Hashtable<String,Vector<Double>>> results = new Hashtable<String,Hashtable<String,Vector<Double>>>();
     for (String molKey : vos.keySet()){
-      Hashtable<String,Vector<Double>> expValues = new Hashtable<String,Vector<Double>>();
-      for (String expKey : vos.get(molKey).keySet()){
-        ResultCompVO compVO = vos.get(molKey).get(expKey);
-        int isoNr = maxIsotope;
-        if (!settingVO.getType().equalsIgnoreCase(ResultDisplaySettingsVO.REL_MEASURED_CLASS_AMOUNT) && 
-            !settingVO.getType().equalsIgnoreCase(ResultDisplaySettingsVO.REL_TOTAL_AMOUNT))
-          isoNr = compVO.getAvailableIsotopeNr(maxIsotope);
-        double myArea = compVO.getArea(isoNr, settingVO);
-        if (settingVO.getType().equalsIgnoreCase(ResultDisplaySettingsVO.REL_MEASURED_CLASS_AMOUNT) || 
-            settingVO.getType().equalsIgnoreCase(ResultDisplaySettingsVO.REL_TOTAL_AMOUNT))
-          compVO.getArea(maxIsotope, settingVO);
-        myArea = StaticUtils.getAreaInCorrespondingUnit(myArea, preferredUnit);
-        Vector<Double> areaPlusDev = new Vector<Double>();
-        areaPlusDev.add(myArea);
-        expValues.put(expKey, areaPlusDev);
-      }   
-      results.put(molKey, expValues);
+      results.put(molKey, StaticUtils.extractValuesOfMolecule(vos.get(molKey), maxIsotope, settingVO, preferredUnit));
     }
     return results;
   }
@@ -1834,38 +1821,8 @@ public class HeatMapDrawing extends JPanel implements ActionListener
   //TODO: for SILDA analysis, improve reusability or hide
   public void exportSummary(OmegaCollector omegaCollector, Sheet sheet, XSSFWorkbook workbook, OutputStream out)
   {
-  	ExportOptionsVO expOptions = getExportOptions();
-    LinkedHashMap<String,String> expFullPaths = heatMapListener_.getSampleResultFullPaths();
-    Hashtable<String,String> expIdToString = new Hashtable<String,String>();
-    for (String expId : experimentNames_)
-      expIdToString.put(expId, heatMapListener_.getDisplayName(expId));
     try {
-      int maxIsotope = getSelectedIsotope();
-      Hashtable<String,Hashtable<String,ResultCompVO>> compVOs = resultsOfOneGroup_;
-      if (isGrouped_)
-        compVOs = ungroupedPartner_.resultsOfOneGroup_;
-      String preferredUnit = heatmap_.extractPreferredUnitForExp();
-      Hashtable<String,Hashtable<String,Vector<Double>>> resultValues = HeatMapDrawing.extractValuesOfInterest(compVOs, maxIsotope, settingsVO_, preferredUnit, expOptions,modifications_);
-      preferredUnit = StaticUtils.getCorrespondingUnit(settingsVO_,preferredUnit,true);
-      boolean exportDoubleBondPositionsForClass = expOptions.isExportDoubleBondPositions();
-      short speciesType = expOptions.getSpeciesType();
-      if (exportDoubleBondPositionsForClass) {
-        int numberOfChains = 2;
-        try {
-          numberOfChains = Integer.parseInt(RulesContainer.getAmountOfChains(StaticUtils.getRuleName(groupName_, modifications_.get(0))));
-        } catch (RulesException | NoRuleException | IOException | SpectrummillParserException ex) {
-          ex.printStackTrace();
-        }
-        if (numberOfChains > 1 && speciesType == LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
-          exportDoubleBondPositionsForClass = false;
-        //for lipid species with only one FA chain we export the double bond position information on species level
-        } else if (numberOfChains == 1 && speciesType != LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
-          speciesType = LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES;
-        }
-      }
-      ExcelAndTextExporter.writeExcelSheetOmegaSummary(omegaCollector, sheet, workbook, out, true, speciesType, exportDoubleBondPositionsForClass, maxIsotope, getSelectedMoleculeNames(), 
-      		rtTolerance_!=null, isGrouped_, experimentNames_,expIdToString, expFullPaths, heatMapListener_.getSamplesOfGroups(),
-          resultValues, preferredUnit, StaticUtils.getAreaTypeString(settingsVO_), expOptions, heatMapListener_.getComparativeResultsLookup(), modifications_);
+      ExcelAndTextExporter.writeExcelSheetOmegaSummary(omegaCollector, sheet, workbook, out, createSummaryExtractor(sheet.getSheetName()).call());
     } 
     catch (NumberFormatException e) {new WarningMessage(new JFrame(), "Error", e.getMessage());}
     catch (FileNotFoundException e) {new WarningMessage(new JFrame(), "Error", e.getMessage());}
@@ -1875,6 +1832,103 @@ public class HeatMapDrawing extends JPanel implements ActionListener
     }
   }
   
+  /**
+   * collects the selections and settings of this heat map for the omega summary; the returned extractor
+   * does not access the GUI - thus, the extractors of several classes may be executed in parallel
+   * @param lClass the analyte class (the name of the sheet)
+   * @return the extractor of the omega summary values of this heat map
+   */
+  public OmegaSummaryExtractor createSummaryExtractor(String lClass)
+  {
+    ExportOptionsVO expOptions = getExportOptions();
+    Hashtable<String,String> expIdToString = new Hashtable<String,String>();
+    for (String expId : experimentNames_)
+      expIdToString.put(expId, heatMapListener_.getDisplayName(expId));
+    int maxIsotope = getSelectedIsotope();
+    Hashtable<String,Hashtable<String,ResultCompVO>> compVOs = resultsOfOneGroup_;
+    if (isGrouped_)
+      compVOs = ungroupedPartner_.resultsOfOneGroup_;
+    String preferredUnit = heatmap_.extractPreferredUnitForExp();
+    boolean exportDoubleBondPositionsForClass = expOptions.isExportDoubleBondPositions();
+    short speciesType = expOptions.getSpeciesType();
+    if (exportDoubleBondPositionsForClass) {
+      int numberOfChains = 2;
+      try {
+        numberOfChains = Integer.parseInt(RulesContainer.getAmountOfChains(StaticUtils.getRuleName(groupName_, modifications_.get(0))));
+      } catch (RulesException | NoRuleException | IOException | SpectrummillParserException ex) {
+        ex.printStackTrace();
+      }
+      if (numberOfChains > 1 && speciesType == LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
+        exportDoubleBondPositionsForClass = false;
+      //for lipid species with only one FA chain we export the double bond position information on species level
+      } else if (numberOfChains == 1 && speciesType != LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES) {
+        speciesType = LipidomicsConstants.EXPORT_ANALYTE_TYPE_SPECIES;
+      }
+    }
+    ResultDisplaySettingsVO settingsVO = new ResultDisplaySettingsVO(settingsVO_);
+    settingsVO.setPercent(settingsVO_.isPercent());
+    return new OmegaSummaryExtractor(lClass, compVOs, maxIsotope, preferredUnit, speciesType, exportDoubleBondPositionsForClass, getSelectedMoleculeNames(),
+        expIdToString, heatMapListener_.getSampleResultFullPaths(), heatMapListener_.getSamplesOfGroups(), heatMapListener_.getComparativeResultsLookup(), expOptions,
+        settingsVO, rtTolerance_!=null, isGrouped_, new Vector<String>(experimentNames_), new ArrayList<String>(modifications_));
+  }
+  
+  /**
+   * extracts the values of one analyte class for the omega summary out of the selections made before in the heat map;
+   * all the settings are copied when the extractor is created, since it is executed on another thread
+   */
+  public static class OmegaSummaryExtractor implements Callable<OmegaSummaryVO>
+  {
+    private String lClass_;
+    private Hashtable<String,Hashtable<String,ResultCompVO>> compVOs_;
+    private int maxIsotope_;
+    private String preferredUnit_;
+    private short speciesType_;
+    private boolean exportDoubleBondPositionsForClass_;
+    private Vector<String> molNames_;
+    private Hashtable<String,String> expIdToString_;
+    private LinkedHashMap<String,String> expFullPaths_;
+    private LinkedHashMap<String,Vector<String>> expsOfGroup_;
+    private ComparativeResultsLookup compLookup_;
+    private ExportOptionsVO expOptions_;
+    private ResultDisplaySettingsVO settingsVO_;
+    private boolean rtGrouped_;
+    private boolean isGrouped_;
+    private Vector<String> experimentNames_;
+    private ArrayList<String> modifications_;
+    
+    private OmegaSummaryExtractor(String lClass, Hashtable<String,Hashtable<String,ResultCompVO>> compVOs, int maxIsotope, String preferredUnit,
+        short speciesType, boolean exportDoubleBondPositionsForClass, Vector<String> molNames, Hashtable<String,String> expIdToString,
+        LinkedHashMap<String,String> expFullPaths, LinkedHashMap<String,Vector<String>> expsOfGroup, ComparativeResultsLookup compLookup, ExportOptionsVO expOptions,
+        ResultDisplaySettingsVO settingsVO, boolean rtGrouped, boolean isGrouped, Vector<String> experimentNames, ArrayList<String> modifications){
+      lClass_ = lClass;
+      compVOs_ = compVOs;
+      maxIsotope_ = maxIsotope;
+      preferredUnit_ = preferredUnit;
+      speciesType_ = speciesType;
+      exportDoubleBondPositionsForClass_ = exportDoubleBondPositionsForClass;
+      molNames_ = molNames;
+      expIdToString_ = expIdToString;
+      expFullPaths_ = expFullPaths;
+      expsOfGroup_ = expsOfGroup;
+      compLookup_ = compLookup;
+      expOptions_ = expOptions;
+      settingsVO_ = settingsVO;
+      rtGrouped_ = rtGrouped;
+      isGrouped_ = isGrouped;
+      experimentNames_ = experimentNames;
+      modifications_ = modifications;
+    }
+
+    public OmegaSummaryVO call() throws CalculationNotPossibleException, ExportException, SpectrummillParserException, ExcelInputFileException, IOException,
+        LipidCombinameEncodingException, RetentionTimeGroupingException
+    {
+      Hashtable<String,Hashtable<String,Vector<Double>>> resultValues = HeatMapDrawing.extractValuesOfInterest(compVOs_, maxIsotope_, settingsVO_, preferredUnit_, expOptions_, modifications_);
+      String preferredUnit = StaticUtils.getCorrespondingUnit(settingsVO_,preferredUnit_,true);
+      return ExcelAndTextExporter.extractOmegaSummary(lClass_, true, speciesType_, exportDoubleBondPositionsForClass_, maxIsotope_, molNames_, 
+          rtGrouped_, isGrouped_, experimentNames_, expIdToString_, expFullPaths_, expsOfGroup_, resultValues, preferredUnit, expOptions_, compLookup_, modifications_);
+    }
+  }
+  
   public void adjustDisplaySettings(ResultDisplaySettings settings)
   {
   	displaySettings_.copySettings(settings);
@@ -1888,23 +1942,7 @@ public class HeatMapDrawing extends JPanel implements ActionListener
   
   public Double getAverageArea(ArrayList<ResultCompVO> vos)
 	{
-  	int count = 0;
-  	Double sum = 0d;
-  	for (ResultCompVO vo : vos)
-  	{
-  		Double value = 0d;
-  		try
-  		{
-  			int isotopes = vo.getAvailableIsotopeNr(getSelectedIsotope());
-  			value = vo.getArea(isotopes, this.getSettingsVO());
-  		} catch (CalculationNotPossibleException ex) {}
-  		if (value > 0)
-  		{
-  			sum += value;
-  			count++;
-  		}
-  	}
-  	return count > 0 ? sum/count : 0d;
+  	return LipidomicsHeatMap.getAverageArea(vos, getSelectedIsotope(), this.getSettingsVO());
 	}
   
   
@@ -52,7 +52,7 @@ import javax.swing.JLabel;
 
 import at.tugraz.genome.lda.WarningMessage;
 import at.tugraz.genome.lda.exception.ExcelInputFileException;
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.parser.StudyResultCache;
 import at.tugraz.genome.lda.quantification.LipidParameterSet;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
 import at.tugraz.genome.lda.target.JDefaultComponents;
@@ -828,7 +828,7 @@ public class CalibrationGraphPanel extends JOptionPanel
   	ArrayList<IdentificationVO> identifications = new ArrayList<IdentificationVO>();
   	for (File file : files)
   	{
-  		QuantificationResult quantResOriginal = LDAResultReader.readResultFile(file.getAbsolutePath(), new Hashtable<String,Boolean>());
+  		QuantificationResult quantResOriginal = StudyResultCache.getInstance().getModifiableResult(file.getAbsolutePath(), new Hashtable<String,Boolean>());
   		computeIdentificationVOs(file, quantResOriginal, identifications);
   	}
   	return identifications;
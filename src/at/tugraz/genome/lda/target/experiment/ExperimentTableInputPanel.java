@@ -49,7 +49,7 @@ import javax.swing.table.TableCellEditor;
 
 import at.tugraz.genome.lda.WarningMessage;
 import at.tugraz.genome.lda.exception.ExcelInputFileException;
-import at.tugraz.genome.lda.parser.LDAResultReader;
+import at.tugraz.genome.lda.parser.StudyResultCache;
 import at.tugraz.genome.lda.quantification.QuantificationResult;
 import at.tugraz.genome.lda.target.JDefaultComponents;
 import at.tugraz.genome.lda.target.JOptionPanel;
@@ -202,7 +202,7 @@ public abstract class ExperimentTableInputPanel extends JOptionPanel
 		{
 			for (File file : files)
 			{
-				QuantificationResult quantRes = LDAResultReader.readResultFile(file.getAbsolutePath(), new Hashtable<String,Boolean>());
+				QuantificationResult quantRes = StudyResultCache.getInstance().getModifiableResult(file.getAbsolutePath(), new Hashtable<String,Boolean>());
 				resultFileVO_.add(new ResultFileVO(file.getAbsolutePath(), file, quantRes));
 			}
 		}
@@ -0,0 +1,200 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+
+/**
+ * A cache file in the LDA user home directory that several processes may update at the same time. Every store writes
+ * a new generation of the file: the content is written to a temporary file in the same directory, which is then published
+ * under the name of the next generation. Publishing fails if another process has stored this generation in the meantime;
+ * then, the entries of the other generation are merged, and the store is tried again. A generation is never overwritten,
+ * thus, a process reading (or mapping) a generation is not affected by the stores of other processes.
+ */
+public class GenerationalCacheFile
+{
+  /** how often the storing is tried again when another process has written the same generation in the meantime*/
+  private final static int MAX_STORE_ATTEMPTS = 16;
+  /** the age in milliseconds after which a superseded generation is removed - it is assumed that no other process reads it anymore*/
+  private final static long SUPERSEDED_FILE_AGE = 24l*60l*60l*1000l;
+  /** the suffix of temporary files*/
+  private final static String TEMP_FILE_SUFFIX = ".tmp";
+  
+  /** the directory containing the generations*/
+  private File dir_;
+  /** the name of the cache file - the generation files are called [name].[generation][suffix]*/
+  private String name_;
+  /** the suffix of the generation files*/
+  private String suffix_;
+  
+  /**
+   * @param dir the directory containing the generations
+   * @param name the name of the cache file - it must be at least three characters long
+   * @param suffix the suffix of the generation files, including the dot
+   */
+  public GenerationalCacheFile(File dir, String name, String suffix){
+    this.dir_ = dir;
+    this.name_ = name;
+    this.suffix_ = suffix;
+  }
+  
+  /**
+   * @param generation the generation of the cache file
+   * @return the file of the generation
+   */
+  public File getFile(int generation){
+    return new File(dir_,name_+"."+generation+suffix_);
+  }
+  
+  /**
+   * @return the newest generation of the cache file; 0 if there is none
+   */
+  public int getNewestGeneration(){
+    File[] files = dir_.listFiles();
+    if (files==null) return 0;
+    int newest = 0;
+    for (File file : files){
+      int generation = getGeneration(file);
+      if (generation>newest) newest = generation;
+    }
+    return newest;
+  }
+  
+  /**
+   * stores the content in the next generation of the cache file; if other processes have stored newer generations than
+   * the one the content is based on, their entries are merged before
+   * @param generation the generation the content is based on; 0 if it is not based on a stored generation
+   * @param content the content of the cache
+   * @return the stored generation
+   * @throws IOException if the file cannot be written, or if other processes kept storing the same generations
+   */
+  public int store(int generation, CacheContent content) throws IOException{
+    if (!dir_.exists()) dir_.mkdirs();
+    for (int attempt=0; attempt!=MAX_STORE_ATTEMPTS; attempt++){
+      int newest = getNewestGeneration();
+      if (newest>generation){
+        content.merge(getFile(newest));
+        generation = newest;
+      }
+      File tempFile = File.createTempFile(name_, TEMP_FILE_SUFFIX, dir_);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))){
+        content.write(out);
+      } catch (IOException iox){
+        tempFile.delete();
+        throw iox;
+      }
+      try{
+        publish(tempFile,getFile(newest+1));
+      } catch (FileAlreadyExistsException fae){
+        //another process has stored the same generation - its entries are merged in the next attempt
+        tempFile.delete();
+        continue;
+      } catch (IOException iox){
+        tempFile.delete();
+        throw iox;
+      }
+      removeSupersededFiles(newest+1);
+      return newest+1;
+    }
+    throw new IOException("The cache file "+getFile(generation).getName()+" could not be stored, since other processes are storing it at the same time!");
+  }
+  
+  /**
+   * makes a completely written temporary file available under the name of a generation; the generation file is created
+   * as hard link, which fails atomically when the file exists already - if the file system does not support hard links, the file is moved
+   * @param tempFile the temporary file
+   * @param target the file of the generation
+   * @throws FileAlreadyExistsException if the generation exists already
+   * @throws IOException if the file cannot be published
+   */
+  private static void publish(File tempFile, File target) throws FileAlreadyExistsException, IOException{
+    try{
+      Files.createLink(target.toPath(), tempFile.toPath());
+    } catch (FileAlreadyExistsException fae){
+      throw fae;
+    } catch (UnsupportedOperationException | IOException ex){
+      Files.move(tempFile.toPath(), target.toPath());
+      return;
+    }
+    Files.delete(tempFile.toPath());
+  }
+  
+  /**
+   * removes the generations older than the current one, and temporary files of aborted stores, when they have not been
+   * modified for SUPERSEDED_FILE_AGE; on some platforms, a file that is still mapped cannot be deleted - it is removed by a later store
+   * @param current the current generation
+   */
+  private void removeSupersededFiles(int current){
+    File[] files = dir_.listFiles();
+    if (files==null) return;
+    long oldest = System.currentTimeMillis()-SUPERSEDED_FILE_AGE;
+    for (File file : files){
+      if (file.lastModified()>=oldest) continue;
+      int generation = getGeneration(file);
+      if ((generation>0 && generation<current) || (file.getName().startsWith(name_) && file.getName().endsWith(TEMP_FILE_SUFFIX)))
+        file.delete();
+    }
+  }
+  
+  /**
+   * @param file a file in the directory
+   * @return the generation of the file if it is a generation of this cache file; 0 otherwise
+   */
+  private int getGeneration(File file){
+    String name = file.getName();
+    if (!name.startsWith(name_+".") || !name.endsWith(suffix_) || name.length()<=name_.length()+1+suffix_.length()) return 0;
+    try{
+      return Integer.parseInt(name.substring(name_.length()+1,name.length()-suffix_.length()));
+    } catch (NumberFormatException nfx){
+      return 0;
+    }
+  }
+  
+  /**
+   * the content of a cache that is stored in a GenerationalCacheFile
+   */
+  public interface CacheContent
+  {
+    /**
+     * adds the entries of a generation stored by another process that are not present in the cache;
+     * a generation that cannot be read shall be ignored - it is replaced by the stored one
+     * @param file the file of the generation
+     */
+    public void merge(File file);
+    
+    /**
+     * writes the entries of the cache
+     * @param out the stream of the temporary file
+     * @throws IOException if the entries cannot be written
+     */
+    public void write(DataOutputStream out) throws IOException;
+  }
+}
@@ -0,0 +1,573 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import at.tugraz.genome.lda.Settings;
+import at.tugraz.genome.maspectras.parser.exceptions.SpectrummillParserException;
+import at.tugraz.genome.maspectras.parser.spectrummill.ElementConfigParser;
+
+/**
+ * Calculates theoretical isotopic distributions of chemical formulas and memoises them.
+ * The distribution is calculated by aggregating the isotopes of each element: the isotope pattern of an element
+ * is raised to the power of its amount by squaring, and the patterns of the elements are convolved, where every
+ * convolution is truncated at the highest isotope of interest. As in the ElementConfigParser, the n-th isotope of an
+ * element counts as a mass shift of n. The results correspond to ElementConfigParser.calculateChemicalFormulaIntensityDistribution,
+ * apart from rounding differences in the last digits.
+ * The unnormalized distributions are cached per formula, so that the distribution for the isotopes that must match and the one
+ * for the isotopes to quantify are derived from one calculation. The cache is stored in the LDA user home directory and is read
+ * again in the next run; it is bound to the content of the element configuration file. Several processes may store the cache:
+ * every store writes a new generation of the cache file (see GenerationalCacheFile), and the distributions of generations
+ * stored by other processes in the meantime are merged.
+ */
+public class IsotopeDistributionService
+{
+  /** the name of the file that stores the cache*/
+  private final static String CACHE_FILE_NAME = "isotopeDistributions";
+  /** the suffix of the generations of the cache file*/
+  private final static String CACHE_FILE_SUFFIX = ".cache";
+  /** the version of the format of the cache file*/
+  private final static int CACHE_FILE_VERSION = 1;
+  /** the digest algorithm for the identity of the element configuration*/
+  private final static String DIGEST_ALGORITHM = "SHA-256";
+  /** the number of formulas that are calculated by one task*/
+  private final static int FORMULAS_PER_TASK = 256;
+  
+  /** the singleton instance*/
+  private static IsotopeDistributionService instance_;
+  
+  /** the parser containing the relative abundances of the elements*/
+  private ElementConfigParser elementParser_;
+  /** the generations of the cache file; null if the distributions shall not be stored*/
+  private GenerationalCacheFile cacheFile_;
+  /** the generation of the cache file the distributions were read from; a stored cache gets the next generation*/
+  private int generation_;
+  /** the digest of the element configuration the cached distributions are based on*/
+  private String elementConfigDigest_;
+  /** the cached distributions; key: chemical formula*/
+  private ConcurrentHashMap<String,IsotopeDistribution> distributions_;
+  /** are there distributions that have not been stored in the cache file*/
+  private volatile boolean modified_;
+  
+  /**
+   * constructor for a service that does not store its cache
+   * @param elementParser the parser containing the relative abundances of the elements
+   */
+  public IsotopeDistributionService(ElementConfigParser elementParser){
+    this(elementParser,null,null);
+  }
+  
+  /**
+   * @param elementParser the parser containing the relative abundances of the elements
+   * @param cacheDir the directory for storing the cache; null if the distributions shall not be stored
+   * @param elementConfigDigest the identity of the element configuration - cached distributions based on other configurations are discarded
+   */
+  IsotopeDistributionService(ElementConfigParser elementParser, File cacheDir, String elementConfigDigest){
+    this.elementParser_ = elementParser;
+    this.cacheFile_ = cacheDir!=null ? new GenerationalCacheFile(cacheDir,CACHE_FILE_NAME,CACHE_FILE_SUFFIX) : null;
+    this.generation_ = 0;
+    this.elementConfigDigest_ = elementConfigDigest;
+    this.distributions_ = new ConcurrentHashMap<String,IsotopeDistribution>();
+    this.modified_ = false;
+    if (cacheFile_!=null) readCache();
+  }
+  
+  /**
+   * 
+   * @return the service for the element configuration of the Settings
+   */
+  public static synchronized IsotopeDistributionService getInstance(){
+    ElementConfigParser elementParser = Settings.getElementParser();
+    if (instance_==null || instance_.elementParser_!=elementParser){
+      File cacheDir = null;
+      String digest = null;
+      try{
+        digest = digest(Files.readAllBytes(new File(Settings.getElementConfigPath()).toPath()));
+        cacheDir = new File(Settings.getLdaUserHomePath());
+      } catch (IOException iox){
+        //without the identity of the element configuration, the cache is not stored
+      }
+      instance_ = new IsotopeDistributionService(elementParser,cacheDir,digest);
+    }
+    return instance_;
+  }
+  
+  /**
+   * calculates the positive and the negative isotopic distribution, and decides which on has to be used
+   * @param chemicalFormula the chemical formula of the analyte where the isotopic distribution has to match
+   * @param isotopesMustMatch number of isotopes that have to fit the theoretical isotopic distribution
+   * @param amountOfIsotopes number of isotopes that shall be quantified by the LDA algorithm
+   * @return [0] Vector<Double> containing the probabilities of the isotopes that must match; [1] Vector<Double> containing probabilities of all isotopes; [2] if the distribution goes in the negative direction - how negative is the lowest isotope 
+   * @throws SpectrummillParserException if there is something wrong with the elementconfig.xml
+   */
+  public Object[] getTheoreticalIsoDistributions(String chemicalFormula, int isotopesMustMatch, int amountOfIsotopes) throws SpectrummillParserException{  
+    boolean negativeDistribution = false;
+    Vector<Double> probabs = new Vector<Double>();
+    if (amountOfIsotopes<isotopesMustMatch)
+      amountOfIsotopes = isotopesMustMatch;
+    IsotopeDistribution distri = null;
+    if (amountOfIsotopes>0){
+      distri = getDistribution(chemicalFormula, amountOfIsotopes+1);
+      probabs = distri.getPositive(amountOfIsotopes+1);
+      if (distri.hasNegative()){
+        Vector<Double> negDistri = distri.getNegative(amountOfIsotopes+1);
+        if (StaticUtils.useNegativeDistribution(probabs,negDistri)){
+          probabs = negDistri;
+          negativeDistribution = true;
+        }
+      }
+    }else{
+      probabs.add(1d);
+    }
+    Vector<Double> mustMatchProbabs = new Vector<Double>();
+    if (isotopesMustMatch>0){
+      if (amountOfIsotopes == isotopesMustMatch){
+        mustMatchProbabs = new Vector<Double>(probabs);
+      }else{
+        mustMatchProbabs = distri.getPositive(isotopesMustMatch+1);
+        if (distri.hasNegative()){
+          Vector<Double> negDistri = distri.getNegative(isotopesMustMatch+1);
+          if (StaticUtils.useNegativeDistribution(mustMatchProbabs,negDistri)){
+            mustMatchProbabs = negDistri;
+            negativeDistribution = true;
+          }
+        }
+      }
+    }
+    int negativeStartValue = 0;
+    if (negativeDistribution){
+      negativeStartValue = (mustMatchProbabs.size()*-1)+1;
+    }
+    
+    Object[] distris = new Object[3];
+    distris[0] = mustMatchProbabs;
+    distris[1] = probabs;
+    distris[2] = negativeStartValue;
+    return distris;
+  }
+  
+  /**
+   * calculates the missing distributions of several formulas in parallel
+   * @param chemicalFormulas the chemical formulas
+   * @param lastIsotope the number of isotopes of interest
+   * @param nrOfThreads the number of threads for the calculation
+   * @throws SpectrummillParserException if there is something wrong with the elementconfig.xml, or a formula contains an unknown element
+   */
+  public void fill(Collection<String> chemicalFormulas, int lastIsotope, int nrOfThreads) throws SpectrummillParserException{
+    List<String> missing = new ArrayList<String>();
+    for (String formula : new LinkedHashSet<String>(chemicalFormulas)){
+      IsotopeDistribution distri = distributions_.get(formula);
+      if (distri==null || distri.lastIsotope_<lastIsotope) missing.add(formula);
+    }
+    if (missing.size()==0) return;
+    if (nrOfThreads<2 || missing.size()<=FORMULAS_PER_TASK){
+      for (String formula : missing) getDistribution(formula, lastIsotope);
+      return;
+    }
+    ExecutorService threadpool = Executors.newFixedThreadPool(nrOfThreads);
+    try{
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i=0; i<missing.size(); i+=FORMULAS_PER_TASK){
+        futures.add(threadpool.submit(new DistributionCalculator(missing.subList(i, Math.min(i+FORMULAS_PER_TASK,missing.size())),lastIsotope)));
+      }
+      for (Future<Void> future : futures){
+        try{
+          future.get();
+        } catch (InterruptedException ix){
+          throw new SpectrummillParserException("The calculation of the isotopic distributions was interrupted!");
+        } catch (ExecutionException ex){
+          if (ex.getCause() instanceof SpectrummillParserException) throw (SpectrummillParserException)ex.getCause();
+          if (ex.getCause() instanceof RuntimeException) throw (RuntimeException)ex.getCause();
+          throw new SpectrummillParserException(String.valueOf(ex.getCause()));
+        }
+      }
+    } finally {
+      threadpool.shutdownNow();
+    }
+  }
+  
+  /**
+   * stores the cached distributions in a new generation of the cache file, if there are new ones; if other processes
+   * have stored newer generations in the meantime, their distributions are merged before
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized void store() throws IOException{
+    if (cacheFile_==null || !modified_) return;
+    modified_ = false;
+    try{
+      generation_ = cacheFile_.store(generation_, new DistributionContent());
+    } catch (IOException iox){
+      modified_ = true;
+      throw iox;
+    }
+  }
+  
+  /**
+   * 
+   * @return the number of cached distributions
+   */
+  public int size(){
+    return distributions_.size();
+  }
+  
+  /**
+   * removes all cached distributions
+   */
+  public void clear(){
+    distributions_.clear();
+    modified_ = true;
+  }
+  
+  /**
+   * returns the cached distribution of a formula, and calculates it if it is not present or if it covers too little isotopes
+   * @param chemicalFormula the chemical formula
+   * @param lastIsotope the number of isotopes of interest
+   * @return the unnormalized distribution
+   * @throws SpectrummillParserException if a formula contains an unknown element
+   */
+  private IsotopeDistribution getDistribution(String chemicalFormula, int lastIsotope) throws SpectrummillParserException{
+    IsotopeDistribution distri = distributions_.get(chemicalFormula);
+    if (distri!=null && distri.lastIsotope_>=lastIsotope) return distri;
+    distri = calculateDistribution(chemicalFormula, lastIsotope);
+    distributions_.put(chemicalFormula, distri);
+    modified_ = true;
+    return distri;
+  }
+  
+  /**
+   * calculates the probabilities of the mass shifts of a chemical formula up to the last isotope of interest
+   * @param chemicalFormula the chemical formula
+   * @param lastIsotope the number of isotopes of interest
+   * @return the unnormalized distribution
+   * @throws SpectrummillParserException if a formula contains an unknown element
+   */
+  private IsotopeDistribution calculateDistribution(String chemicalFormula, int lastIsotope) throws SpectrummillParserException{
+    TreeMap<String,Integer> amounts = decodeFormula(chemicalFormula);
+    int nrOfPlusMValues = 0;
+    int startValue = 0;
+    boolean negative = false;
+    for (String symbol : amounts.keySet()){
+      Vector<Double> probabilities = elementParser_.getElementDetails(symbol).getProbabilities();
+      int amount = amounts.get(symbol);
+      nrOfPlusMValues += amount*(probabilities.size()-1);
+      int highestProbPosition = 0;
+      double highestProb = 0d;
+      for (int i=0; i!=probabilities.size(); i++){
+        if (probabilities.get(i)>highestProb){
+          highestProb = probabilities.get(i);
+          highestProbPosition = i;
+        }
+      }
+      if (highestProbPosition>0){
+        startValue += highestProbPosition*amount;
+        negative = true;
+      }
+    }
+    //the positive distribution ends before nrOfPlusMValues; the negative one starts at startValue
+    int length = Math.max(Math.min(nrOfPlusMValues, startValue+lastIsotope),startValue+1);
+    double[] intensities = new double[]{1d};
+    for (String symbol : amounts.keySet()){
+      Vector<Double> probabilities = elementParser_.getElementDetails(symbol).getProbabilities();
+      double[] pattern = new double[probabilities.size()];
+      for (int i=0; i!=pattern.length; i++) pattern[i] = probabilities.get(i);
+      intensities = convolve(intensities, power(pattern, amounts.get(symbol), length), length);
+    }
+    return new IsotopeDistribution(chemicalFormula, lastIsotope, startValue, nrOfPlusMValues, negative, intensities);
+  }
+  
+  /**
+   * decodes a chemical formula in the format of SmModificationVO.decodeFormula, e.g. "C42 H83 N1 O8 P1"
+   * @param chemicalFormula the chemical formula
+   * @return the amounts of the elements; elements with a non-positive amount are not contained
+   * @throws SpectrummillParserException if the formula cannot be decoded, or contains an unknown element
+   */
+  private TreeMap<String,Integer> decodeFormula(String chemicalFormula) throws SpectrummillParserException{
+    TreeMap<String,Integer> amounts = new TreeMap<String,Integer>();
+    StringTokenizer tokenizer = new StringTokenizer(chemicalFormula," ");
+    while (tokenizer.hasMoreTokens()){
+      String part = tokenizer.nextToken();
+      String symbol = part;
+      int amount = 1;
+      try{
+        StringTokenizer tok2 = new StringTokenizer(part,"-");
+        if (tok2.countTokens()==2){
+          symbol = tok2.nextToken();
+          amount = Integer.parseInt(tok2.nextToken())*-1;
+        }else{
+          for (int i=0; i!=part.length(); i++){
+            if (Character.isDigit(part.charAt(i))){
+              if (i>0){
+                symbol = part.substring(0,i);
+                amount = Integer.parseInt(part.substring(i));
+              }
+              break;
+            }
+          }
+        }
+      } catch (NumberFormatException nfx){
+        throw new SpectrummillParserException("The formula "+chemicalFormula+"could not be decoded");
+      }
+      if (!elementParser_.isElementAvailable(symbol)) throw new SpectrummillParserException("The formula "+chemicalFormula+" contains a element "+symbol+" which is not defined at the elements definition");
+      if (amounts.containsKey(symbol)) amount += amounts.get(symbol);
+      amounts.put(symbol, Math.max(0, amount));
+    }
+    amounts.values().removeIf(amount -> amount==0);
+    return amounts;
+  }
+  
+  /**
+   * raises an isotope pattern to a power by squaring
+   * @param pattern the isotope pattern of an element
+   * @param exponent the amount of the element
+   * @param length the number of mass shifts of interest
+   * @return the isotope pattern of the element amount, truncated after length mass shifts
+   */
+  private static double[] power(double[] pattern, int exponent, int length){
+    double[] result = new double[]{1d};
+    double[] base = pattern;
+    while (exponent>0){
+      if ((exponent&1)==1) result = convolve(result, base, length);
+      exponent >>= 1;
+      if (exponent>0) base = convolve(base, base, length);
+    }
+    return result;
+  }
+  
+  /**
+   * convolves two isotope patterns
+   * @param one the first pattern
+   * @param two the second pattern
+   * @param length the number of mass shifts of interest
+   * @return the convolved pattern, truncated after length mass shifts
+   */
+  private static double[] convolve(double[] one, double[] two, int length){
+    double[] result = new double[Math.min(length, one.length+two.length-1)];
+    for (int i=0; i!=one.length && i!=result.length; i++){
+      if (one[i]==0d) continue;
+      int end = Math.min(two.length, result.length-i);
+      for (int j=0; j!=end; j++) result[i+j] += one[i]*two[j];
+    }
+    return result;
+  }
+  
+  /**
+   * reads the newest generation of the cache file; the file is ignored if it belongs to another element configuration or cannot be read
+   */
+  private void readCache(){
+    int newest = cacheFile_.getNewestGeneration();
+    if (newest==0 || elementConfigDigest_==null) return;
+    generation_ = newest;
+    try{
+      for (IsotopeDistribution distri : readGeneration(cacheFile_.getFile(newest))) distributions_.put(distri.formula_, distri);
+    } catch (IOException iox){
+      distributions_.clear();
+      modified_ = true;
+    }
+  }
+  
+  /**
+   * @param file the file of a generation of the cache
+   * @return the distributions of the generation; an empty list if the generation belongs to another element configuration
+   * @throws IOException if the file cannot be read
+   */
+  private List<IsotopeDistribution> readGeneration(File file) throws IOException{
+    List<IsotopeDistribution> distris = new ArrayList<IsotopeDistribution>();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+      if (in.readInt()!=CACHE_FILE_VERSION || !elementConfigDigest_.equals(in.readUTF())) return distris;
+      int size = in.readInt();
+      for (int i=0; i!=size; i++) distris.add(IsotopeDistribution.read(in));
+    }
+    return distris;
+  }
+  
+  /**
+   * 
+   * @param input the bytes to digest
+   * @return the hex encoded SHA-256 digest
+   */
+  private static String digest(byte[] input){
+    try{
+      byte[] hash = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(input);
+      StringBuilder hex = new StringBuilder();
+      for (byte b : hash) hex.append(String.format("%02x", b));
+      return hex.toString();
+    } catch (NoSuchAlgorithmException nsx){
+      //every Java platform has to support SHA-256
+      throw new IllegalStateException(nsx);
+    }
+  }
+  
+  /**
+   * calculates the distributions for a part of the formulas
+   */
+  private class DistributionCalculator implements Callable<Void>{
+    private List<String> formulas_;
+    private int lastIsotope_;
+    
+    private DistributionCalculator(List<String> formulas, int lastIsotope){
+      this.formulas_ = formulas;
+      this.lastIsotope_ = lastIsotope;
+    }
+
+    public Void call() throws SpectrummillParserException
+    {
+      for (String formula : formulas_) getDistribution(formula, lastIsotope_);
+      return null;
+    }
+  }
+  
+  /**
+   * the unnormalized probabilities of the mass shifts of one chemical formula
+   */
+  /**
+   * the cached distributions as content of a generation of the cache file
+   */
+  private class DistributionContent implements GenerationalCacheFile.CacheContent
+  {
+    public void merge(File file){
+      try{
+        for (IsotopeDistribution distri : readGeneration(file)){
+          IsotopeDistribution own = distributions_.putIfAbsent(distri.formula_, distri);
+          //the distribution covering more isotopes is kept
+          if (own!=null && own.lastIsotope_<distri.lastIsotope_) distributions_.replace(distri.formula_, own, distri);
+        }
+      } catch (IOException iox){
+        //an unreadable generation is replaced by the stored one
+      }
+    }
+    
+    public void write(DataOutputStream out) throws IOException{
+      //other threads might add distributions in the meantime
+      List<IsotopeDistribution> distris = new ArrayList<IsotopeDistribution>(distributions_.values());
+      out.writeInt(CACHE_FILE_VERSION);
+      out.writeUTF(elementConfigDigest_);
+      out.writeInt(distris.size());
+      for (IsotopeDistribution distri : distris) distri.write(out);
+    }
+  }
+  
+  private static class IsotopeDistribution{
+    /** the chemical formula*/
+    private String formula_;
+    /** the number of isotopes of interest this distribution was calculated for*/
+    private int lastIsotope_;
+    /** the mass shift of the most abundant isotopes of the elements - the start of the distributions*/
+    private int startValue_;
+    /** the highest mass shift that is possible for this formula*/
+    private int nrOfPlusMValues_;
+    /** is there an element where the most abundant isotope is not the lightest one*/
+    private boolean negative_;
+    /** the probabilities of the mass shifts*/
+    private double[] intensities_;
+    
+    private IsotopeDistribution(String formula, int lastIsotope, int startValue, int nrOfPlusMValues, boolean negative, double[] intensities){
+      this.formula_ = formula;
+      this.lastIsotope_ = lastIsotope;
+      this.startValue_ = startValue;
+      this.nrOfPlusMValues_ = nrOfPlusMValues;
+      this.negative_ = negative;
+      this.intensities_ = intensities;
+    }
+    
+    private boolean hasNegative(){
+      return negative_;
+    }
+    
+    /**
+     * @param lastIsotope the number of isotopes of interest
+     * @return the normalized probabilities of the isotopes in the positive direction, starting at startValue_
+     */
+    private Vector<Double> getPositive(int lastIsotope){
+      Vector<Double> probabilities = new Vector<Double>();
+      for (int i=startValue_; (i!=nrOfPlusMValues_&&i!=(lastIsotope+startValue_));i++) probabilities.add(intensities_[i]);
+      return normalize(probabilities);
+    }
+    
+    /**
+     * @param lastIsotope the number of isotopes of interest
+     * @return the normalized probabilities of the isotopes in the negative direction, starting at startValue_
+     */
+    private Vector<Double> getNegative(int lastIsotope){
+      Vector<Double> probabilities = new Vector<Double>();
+      for (int i=startValue_; i!=-1&&i!=(startValue_-lastIsotope);i--) probabilities.add(intensities_[i]);
+      return normalize(probabilities);
+    }
+    
+    /**
+     * @param probabilities the probabilities - the values are replaced by the normalized ones
+     * @return the probabilities in relation to the highest one
+     */
+    private static Vector<Double> normalize(Vector<Double> probabilities){
+      double highestValue = 0;
+      for (Double probability : probabilities){
+        if (probability>highestValue) highestValue = probability; 
+      }
+      for (int i=0; i!=probabilities.size(); i++) probabilities.set(i, probabilities.get(i)/highestValue);
+      return probabilities;
+    }
+    
+    private void write(DataOutputStream out) throws IOException{
+      out.writeUTF(formula_);
+      out.writeInt(lastIsotope_);
+      out.writeInt(startValue_);
+      out.writeInt(nrOfPlusMValues_);
+      out.writeBoolean(negative_);
+      out.writeInt(intensities_.length);
+      for (double intensity : intensities_) out.writeDouble(intensity);
+    }
+    
+    private static IsotopeDistribution read(DataInputStream in) throws IOException{
+      String formula = in.readUTF();
+      int lastIsotope = in.readInt();
+      int startValue = in.readInt();
+      int nrOfPlusMValues = in.readInt();
+      boolean negative = in.readBoolean();
+      double[] intensities = new double[in.readInt()];
+      for (int i=0; i!=intensities.length; i++) intensities[i] = in.readDouble();
+      return new IsotopeDistribution(formula, lastIsotope, startValue, nrOfPlusMValues, negative, intensities);
+    }
+  }
+}
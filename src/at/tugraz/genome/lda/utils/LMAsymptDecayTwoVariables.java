@@ -59,23 +59,20 @@ public class LMAsymptDecayTwoVariables extends LevenbergMarquardtOptimizer
   }
 
   
-  protected FloatMatrix calculateEquationResults(float[][] values,
-      FloatMatrix paramsVector)
+  protected void calculateEquationResults(float[][] values,
+      float[][] parameters, float[] results)
   {
-    float[][] results = new float[values.length][1];
     for (int i=0;i!=values.length;i++){
-      float equationResult = paramsVector.A[0][0]*(1f-paramsVector.A[1][0]/values[i][0]);
-      equationResult += (float)(((double)paramsVector.A[2][0])*Math.exp((double)(paramsVector.A[4][0]*values[i][0]-paramsVector.A[3][0]*values[i][1])));
-      equationResult += paramsVector.A[5][0];
-      results[i][0] = equationResult;
+      float equationResult = parameters[0][0]*(1f-parameters[1][0]/values[i][0]);
+      equationResult += (float)(((double)parameters[2][0])*Math.exp((double)(parameters[4][0]*values[i][0]-parameters[3][0]*values[i][1])));
+      equationResult += parameters[5][0];
+      results[i] = equationResult;
     }
-    return new FloatMatrix(results);
   }
 
-  protected FloatMatrix calculateJacobianMatrix(float[][] values,
-      float[][] parameters)
+  protected void calculateJacobianMatrix(float[][] values,
+      float[][] parameters, float[][] jacobian)
   {
-    float[][] jacobian = new float[values.length][6];
     for (int i=0; i!=values.length; i++){      
       jacobian[i][0] = 1f-parameters[1][0]/values[i][0];
       jacobian[i][1] = -1f*parameters[0][0]/values[i][0];
@@ -84,7 +81,6 @@ public class LMAsymptDecayTwoVariables extends LevenbergMarquardtOptimizer
       jacobian[i][4] = parameters[2][0]*values[i][0]*(float)Math.exp((double)(parameters[4][0]*values[i][0]-parameters[3][0]*values[i][1]));
       jacobian[i][5] = 1f;
     }
-    return new FloatMatrix(jacobian);
   }
 
   protected float[][] getValues()
@@ -59,24 +59,21 @@ public class LMAsymptVarDecayThreeVariables extends LevenbergMarquardtOptimizer
   }
 
   
-  protected FloatMatrix calculateEquationResults(float[][] values,
-      FloatMatrix paramsVector)
+  protected void calculateEquationResults(float[][] values,
+      float[][] parameters, float[] results)
   {
-    float[][] results = new float[values.length][1];
     for (int i=0;i!=values.length;i++){
-      float equationResult = paramsVector.A[0][0]*(1f-paramsVector.A[1][0]*(float)Math.pow(values[i][0],-1f*paramsVector.A[2][0]));
-      equationResult += (float)(((double)paramsVector.A[3][0])*Math.exp((double)(paramsVector.A[5][0]*values[i][0]-paramsVector.A[4][0]*values[i][1])));
-      equationResult += paramsVector.A[6][0]*values[i][2];
-      equationResult += paramsVector.A[7][0];
-      results[i][0] = equationResult;
+      float equationResult = parameters[0][0]*(1f-parameters[1][0]*(float)Math.pow(values[i][0],-1f*parameters[2][0]));
+      equationResult += (float)(((double)parameters[3][0])*Math.exp((double)(parameters[5][0]*values[i][0]-parameters[4][0]*values[i][1])));
+      equationResult += parameters[6][0]*values[i][2];
+      equationResult += parameters[7][0];
+      results[i] = equationResult;
     }
-    return new FloatMatrix(results);
   }
 
-  protected FloatMatrix calculateJacobianMatrix(float[][] values,
-      float[][] parameters)
+  protected void calculateJacobianMatrix(float[][] values,
+      float[][] parameters, float[][] jacobian)
   {
-    float[][] jacobian = new float[values.length][8];
     for (int i=0; i!=values.length; i++){      
       jacobian[i][0] = 1f-parameters[1][0]*(float)Math.pow(values[i][0],-1f*parameters[2][0]);
       jacobian[i][1] = -1f*parameters[0][0]*(float)Math.pow(values[i][0],-1f*parameters[2][0]);
@@ -87,7 +84,6 @@ public class LMAsymptVarDecayThreeVariables extends LevenbergMarquardtOptimizer
       jacobian[i][6] = values[i][2];
       jacobian[i][7] = 1f;
     }
-    return new FloatMatrix(jacobian);
   }
 
   protected float[][] getValues()
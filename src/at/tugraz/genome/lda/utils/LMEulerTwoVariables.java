@@ -69,24 +69,21 @@ public class LMEulerTwoVariables extends LevenbergMarquardtOptimizer
     fit(parameters);
   }
   
-  protected FloatMatrix calculateEquationResults(float[][] values,
-      FloatMatrix paramsVector)
+  protected void calculateEquationResults(float[][] values,
+      float[][] parameters, float[] results)
   {
-    float[][] results = new float[values.length][1];
     for (int i=0;i!=values.length;i++){
       //here the formula has to be changed if another distribution is used
-      float equationResult = (float)(((double)paramsVector.A[0][0])*Math.exp((double)(paramsVector.A[1][0]*values[i][0])));
-      equationResult += (float)(((double)paramsVector.A[2][0])*Math.exp(-1d*(double)(paramsVector.A[3][0]*values[i][1])));
-      equationResult += paramsVector.A[4][0];
-      results[i][0] = equationResult;
+      float equationResult = (float)(((double)parameters[0][0])*Math.exp((double)(parameters[1][0]*values[i][0])));
+      equationResult += (float)(((double)parameters[2][0])*Math.exp(-1d*(double)(parameters[3][0]*values[i][1])));
+      equationResult += parameters[4][0];
+      results[i] = equationResult;
     }
-    return new FloatMatrix(results);
   }
 
-  protected FloatMatrix calculateJacobianMatrix(float[][] values,
-      float[][] parameters)
+  protected void calculateJacobianMatrix(float[][] values,
+      float[][] parameters, float[][] jacobian)
   {
-    float[][] jacobian = new float[values.length][5];
     for (int i=0; i!=values.length; i++){
       jacobian[i][0] = (float)Math.exp((double)(parameters[1][0]*values[i][0]));
       jacobian[i][1] = (float)(((double)(values[i][0]*parameters[0][0]))*Math.exp((double)(parameters[1][0]*values[i][0])));   
@@ -94,7 +91,6 @@ public class LMEulerTwoVariables extends LevenbergMarquardtOptimizer
       jacobian[i][3] = (float)(-1d*((double)(values[i][1]*parameters[2][0]))*Math.exp(-1d*(double)(parameters[3][0]*values[i][1])));
       jacobian[i][4] = 1f;
     }
-    return new FloatMatrix(jacobian);
   }
 
   protected float[][] getValues()
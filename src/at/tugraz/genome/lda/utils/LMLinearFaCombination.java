@@ -24,7 +24,6 @@
 package at.tugraz.genome.lda.utils;
 
 import at.tugraz.genome.lda.exception.LMException;
-import at.tugraz.genome.util.FloatMatrix;
 
 /**
  * Implements the LevenbergMarquardtOptimizer for a variable set of fatty acid combinations
@@ -54,32 +53,28 @@ public class LMLinearFaCombination extends LevenbergMarquardtOptimizer
   }
   
   
-  protected FloatMatrix calculateEquationResults(float[][] values,
-      FloatMatrix paramsVector)
+  protected void calculateEquationResults(float[][] values,
+      float[][] parameters, float[] results)
   {
-    float[][] results = new float[values.length][1];
     for (int i=0;i!=values.length;i++){
       float equationResult = 0f;
       for (int j=0; j!=values[i].length;j++){
-        equationResult += paramsVector.A[j][0]*values[i][j];
+        equationResult += parameters[j][0]*values[i][j];
       }
-      results[i][0] = equationResult;
+      results[i] = equationResult;
     }
-    return new FloatMatrix(results);
   }
 
   
-  protected FloatMatrix calculateJacobianMatrix(float[][] values,
-      float[][] parameters)
+  protected void calculateJacobianMatrix(float[][] values,
+      float[][] parameters, float[][] jacobian)
   {
     //in the linear case, the jacobian matrix is the same as the values matrix*/
-    float[][] jacobian = new float[values.length][values[0].length];
     for (int i=0; i!=values.length; i++){
       for (int j=0; j!=values[i].length; j++){
         jacobian[i][j] = values[i][j];
       }
     }
-    return new FloatMatrix(jacobian);
   }
 
   
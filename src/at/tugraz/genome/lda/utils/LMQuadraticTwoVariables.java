@@ -70,26 +70,23 @@ public class LMQuadraticTwoVariables extends LevenbergMarquardtOptimizer
     fit(parameters);
   }
   
-  protected FloatMatrix calculateEquationResults(float[][] values,
-      FloatMatrix paramsVector)
+  protected void calculateEquationResults(float[][] values,
+      float[][] parameters, float[] results)
   {
-    float[][] results = new float[values.length][1];
     for (int i=0;i!=values.length;i++){
-      float equationResult = ((float)Math.pow(values[i][0],2d))*paramsVector.A[0][0];
-      equationResult += values[i][0]*paramsVector.A[1][0];
-      equationResult += (float)Math.pow(values[i][1],2d)*paramsVector.A[2][0];
-      equationResult += values[i][1]*paramsVector.A[3][0];
-      equationResult += values[i][0]*values[i][1]*paramsVector.A[4][0];
-      equationResult += paramsVector.A[5][0];
-      results[i][0] = equationResult;
+      float equationResult = ((float)Math.pow(values[i][0],2d))*parameters[0][0];
+      equationResult += values[i][0]*parameters[1][0];
+      equationResult += (float)Math.pow(values[i][1],2d)*parameters[2][0];
+      equationResult += values[i][1]*parameters[3][0];
+      equationResult += values[i][0]*values[i][1]*parameters[4][0];
+      equationResult += parameters[5][0];
+      results[i] = equationResult;
     }
-    return new FloatMatrix(results);
   }
 
-  protected FloatMatrix calculateJacobianMatrix(float[][] values,
-      float[][] parameters)
+  protected void calculateJacobianMatrix(float[][] values,
+      float[][] parameters, float[][] jacobian)
   {
-    float[][] jacobian = new float[values.length][6];
     for (int i=0; i!=values.length; i++){
       jacobian[i][0] = (float)Math.pow(values[i][0],2d);
       jacobian[i][1] = values[i][0];
@@ -98,7 +95,6 @@ public class LMQuadraticTwoVariables extends LevenbergMarquardtOptimizer
       jacobian[i][4] = values[i][0]*values[i][1];      
       jacobian[i][5] = 1f;
     }
-    return new FloatMatrix(jacobian);
   }
 
   public float calculateFitValue(float[] input) throws LMException
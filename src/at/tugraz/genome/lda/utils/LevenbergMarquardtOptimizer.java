@@ -23,8 +23,6 @@
 
 package at.tugraz.genome.lda.utils;
 
-import java.util.Vector;
-
 import at.tugraz.genome.lda.exception.LMException;
 import at.tugraz.genome.util.FloatMatrix;
 
@@ -53,10 +51,14 @@ public abstract class LevenbergMarquardtOptimizer
   protected void fit(float[][] initParameters) throws LMException{
     
     maxDev_ = null;
-    FloatMatrix paramsVector = new FloatMatrix(initParameters);
-    FloatMatrix resultVector = new FloatMatrix(getObservations());
+    float[][] values = getValues();
+    float[][] observations = getObservations();
+    // all matrices required by the iterations are allocated once per fit and reused in every LM cycle
+    LMWorkspace workspace = new LMWorkspace(observations.length,initParameters.length);
+    for (int i=0; i!=initParameters.length; i++) workspace.current_.params_[i][0] = initParameters[i][0];
+    calculateState(values,observations,workspace.current_);
+    int df = getDegreesOfFreedom(initParameters.length,observations.length);
 
-//    int df = getDegreesOfFreedom(paramsVector,resultVector);
 //    ChiSqrDistribution dist = new ChiSqrDistribution(df);
     //double pValue = 1e-12d;
     double previousChiSqr = Double.POSITIVE_INFINITY;
@@ -65,11 +67,8 @@ public abstract class LevenbergMarquardtOptimizer
     float vLambda = getLambdaMultiplierStartValue();
     // algorithm iterates until a pre-defined number of iterations or if chi squared does not change anymore 
     for (int i=0; i!=getMaximumOfIterations(); i++){
-      @SuppressWarnings("rawtypes")
-      Vector paramsAndLambda = levenbergMarquadtIteration(paramsVector,getValues(),resultVector,lambda,vLambda);
-      paramsVector = (FloatMatrix)paramsAndLambda.get(0);
-      lambda = (Float)paramsAndLambda.get(1);
-      double chiSquared = calculateChiSquared(paramsVector,getValues(),resultVector);
+      lambda = levenbergMarquadtIteration(values,observations,workspace,lambda,vLambda);
+      double chiSquared = calculateChiSquared(workspace.current_,df);
       // this is for stopping the iterations if the result does not change anymore
       if (/*chiSquared<chiSqr ||*/ previousChiSqr == chiSquared && !Double.isInfinite(chiSquared)){
         previousChiSqr = chiSquared;
@@ -82,49 +81,41 @@ public abstract class LevenbergMarquardtOptimizer
     //double chiSqr = dist.inverse(pValue);
     //if (previousChiSqr>chiSqr) throw new LMException("The fit did not converge - no fitting possible!");
     
-    resultParams_ = paramsVector;
+    resultParams_ = new FloatMatrix(workspace.current_.params_);
     resultChiSqr_ = previousChiSqr;
     resultLambda_ = lambda;
   }
   
   /**
    * calculates the degrees of freedom for chi squared calculation
-   * @param params the current parameters vector
-   * @param resultVector the vector of equation results (a m x 1 matrix)
+   * @param nrOfParams the number of parameters of the equation
+   * @param nrOfObservations the number of measured values
    * @return degrees of freedom for chi squared calculation
    */
-  private int getDegreesOfFreedom(FloatMatrix params,FloatMatrix resultVector){
-    int df = resultVector.m-params.m;
+  private int getDegreesOfFreedom(int nrOfParams, int nrOfObservations){
+    int df = nrOfObservations-nrOfParams;
     return df;
   }
   
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   /**
-   * performs one Levenberg-Marquardt iteration 
-   * @param params the current parameters vector (a m x 1 matrix)
+   * performs one Levenberg-Marquardt iteration; the corrected parameters (and their equation results and residues)
+   * are stored in the current state of the workspace
    * @param values the values of the input parameters (a m x n matrix)
-   * @param resultVector the measured results of the input parameters (a m x 1 matrix)
+   * @param observations the measured results of the input parameters (a m x 1 matrix)
+   * @param workspace the preallocated matrices - the current state has to contain the parameters of the previous cycle
    * @param lambdaBefore the current lambda which was used for the last LM cycle - lambda is the damping parameter of the equation
    * @param vLambda multiplication factor to change lambda
-   * @return a Vector containing the corrected parameters of this cycle and the used lambda for this correction
+   * @return the lambda used for this correction
    * @throws LMException exception if model adaption is not possible
    */
-  private Vector levenbergMarquadtIteration(FloatMatrix params, float[][] values,FloatMatrix resultVector, float lambdaBefore, float vLambda) throws LMException{    
-    Vector paramsAndLambda = new Vector();
+  private float levenbergMarquadtIteration(float[][] values, float[][] observations, LMWorkspace workspace, float lambdaBefore,
+      float vLambda) throws LMException{
     // for each LM iteration - various versions of the Jacobian matrix have to be calculated
-    FloatMatrix jacobian = calculateJacobianMatrix(values,params.A);    
-    FloatMatrix jacobianTransposed = jacobian.transpose();
-    FloatMatrix jacobianProduct = jacobianTransposed.times(jacobian);
-    FloatMatrix jacobianDiag = getDiagonalMatrix(jacobianProduct);
-    // the lambda changes in each LM cycle - this method finds the best one to use
-    float lambda = detectBestLambda(params, values,resultVector, lambdaBefore, vLambda,jacobianTransposed,jacobianProduct,
-        jacobianDiag);
-    // with the lambda, we can correct the parameters (the outcome of each LM iteration)
-    FloatMatrix correctedParams = solveOneLMCycle(params,values,resultVector,lambda,jacobianTransposed,jacobianProduct,jacobianDiag);
-    paramsAndLambda.add(correctedParams);
-    paramsAndLambda.add(lambda);
-    return paramsAndLambda;
-
+    calculateJacobianMatrix(values,workspace.current_.params_,workspace.jacobian_);
+    workspace.calculateJacobianProducts();
+    // the lambda changes in each LM cycle - this method finds the best one to use;
+    // the parameters corrected with this lambda are the outcome of each LM iteration
+    return detectBestLambda(values,observations,workspace,lambdaBefore,vLambda);
   }
   
   /**
@@ -133,45 +124,45 @@ public abstract class LevenbergMarquardtOptimizer
    * the sum of squares is calculated for the current model, the one corrected with lambda and the one with lambda/vLambda
    * if lambda/vLambda leads to an improvement lambda/vLambda is the next proposed lambda,
    * else if lambda leads to a reduced sum of squares, lambda is taken,
-   * if none of these improve the sum of squares, lambda is increased by successive multiplication of vLambda until the sum of squares are reduced
-   * @param params the current parameters vector (a m x 1 matrix)
+   * if none of these improve the sum of squares, lambda is increased by successive multiplication of vLambda until the sum of squares are reduced;
+   * the parameters corrected by the returned lambda become the current state of the workspace
    * @param values the values of the input parameters (a m x n matrix)
-   * @param resultVector the measured results of the input parameters (a m x 1 matrix)
+   * @param observations the measured results of the input parameters (a m x 1 matrix)
+   * @param workspace the preallocated matrices containing the current state and the Jacobian products
    * @param lambdaBefore the current lambda which was used for the last LM cycle - lambda is the damping parameter of the equation
    * @param vLambda multiplication factor to change lambda
-   * @param jacobianTransposed the transposed Jacobian matrix
-   * @param jacobianProduct the product of transposed Jacobian matrix and the Jacobian matrix
-   * @param jacobianDiag diagonal matrix of the Jacobian product
    * @return the proposed lambda value to be used
    * @throws LMException exception if model adaption is not possible
    */
-  private float detectBestLambda(FloatMatrix params, float[][] values,FloatMatrix resultVector, float lambdaBefore, float vLambda,
-      FloatMatrix jacobianTransposed, FloatMatrix jacobianProduct, FloatMatrix jacobianDiag) throws LMException{
-    FloatMatrix currentResidues = calculateResidues(resultVector,values,params);
-    float sumOfSquaresCurrent = calculateSumOfSquares(currentResidues);
-    FloatMatrix paramsLambda = solveOneLMCycle(params,values,resultVector,lambdaBefore,jacobianTransposed,jacobianProduct,jacobianDiag);
-    float sumOfSquaresLambda = Float.NaN;
-    if (paramsLambda!=null)
-      sumOfSquaresLambda = calculateSumOfSquares(calculateResidues(resultVector,values,paramsLambda));
-    FloatMatrix paramsLambdaSmaller = solveOneLMCycle(params,values,resultVector,lambdaBefore/vLambda,jacobianTransposed,jacobianProduct,jacobianDiag);
-    float sumOfSquaresLambdaSmaller = Float.NaN;
-    if (paramsLambdaSmaller!=null)
-      sumOfSquaresLambdaSmaller = calculateSumOfSquares(calculateResidues(resultVector,values,paramsLambdaSmaller));
+  private float detectBestLambda(float[][] values, float[][] observations, LMWorkspace workspace, float lambdaBefore, float vLambda) throws LMException{
+    float sumOfSquaresCurrent = workspace.current_.sumOfSquares_;
+    solveOneLMCycle(workspace,lambdaBefore,workspace.candidate_);
+    calculateState(values,observations,workspace.candidate_);
+    float sumOfSquaresLambda = workspace.candidate_.sumOfSquares_;
+    solveOneLMCycle(workspace,lambdaBefore/vLambda,workspace.smallerCandidate_);
+    calculateState(values,observations,workspace.smallerCandidate_);
+    float sumOfSquaresLambdaSmaller = workspace.smallerCandidate_.sumOfSquares_;
     if ((!Float.isNaN(sumOfSquaresLambda) && sumOfSquaresLambda<sumOfSquaresCurrent) || (!Float.isNaN(sumOfSquaresLambdaSmaller) && sumOfSquaresLambdaSmaller<sumOfSquaresCurrent)){
-      if (Float.isNaN(sumOfSquaresLambdaSmaller)) return lambdaBefore;
-      else if (Float.isNaN(sumOfSquaresLambda)) return (lambdaBefore/vLambda);
-      else if (sumOfSquaresLambdaSmaller<sumOfSquaresCurrent) return (lambdaBefore/vLambda);
-      else return lambdaBefore;
+      if (Float.isNaN(sumOfSquaresLambdaSmaller)){
+        workspace.accept(workspace.candidate_);
+        return lambdaBefore;
+      } else if (Float.isNaN(sumOfSquaresLambda) || sumOfSquaresLambdaSmaller<sumOfSquaresCurrent){
+        workspace.accept(workspace.smallerCandidate_);
+        return (lambdaBefore/vLambda);
+      } else{
+        workspace.accept(workspace.candidate_);
+        return lambdaBefore;
+      }
     }else{
       float lambda = lambdaBefore;
       while (Float.isNaN(sumOfSquaresLambda) || sumOfSquaresLambda>sumOfSquaresCurrent){
         lambda = lambda*vLambda;
         if (Float.isInfinite(lambda)) throw new LMException("The curve cannot be fitted - singular matrix");
-        paramsLambda = solveOneLMCycle(params,values,resultVector,lambda,jacobianTransposed,jacobianProduct,jacobianDiag);
-        sumOfSquaresLambda = Float.NaN;
-        if (paramsLambda!=null)
-          sumOfSquaresLambda = calculateSumOfSquares(calculateResidues(resultVector,values,paramsLambda));
+        solveOneLMCycle(workspace,lambda,workspace.candidate_);
+        calculateState(values,observations,workspace.candidate_);
+        sumOfSquaresLambda = workspace.candidate_.sumOfSquares_;
       }
+      workspace.accept(workspace.candidate_);
       return lambda;
     }
   }
@@ -186,86 +177,116 @@ public abstract class LevenbergMarquardtOptimizer
    * delta ...       delta of parameters (the values we want to find out)
    * y ...           the results vector (measured values)
    * f (beta) ...    the results calculated by solving the equation
-   * @param params the current parameters vector (a m x 1 matrix)
-   * @param values the values of the input parameters (a m x n matrix)
-   * @param resultVector the measured results of the input parameters (a m x 1 matrix)
+   * The inverse is calculated by an LU decomposition (Crout/Doolittle with partial pivoting) on the preallocated
+   * matrices of the workspace; the operations are the same as in FloatMatrix.inverse() to keep the results identical
+   * @param workspace the preallocated matrices containing the current state and the Jacobian products
    * @param lambda the damping factor of the equation
-   * @param jacobianTransposed the transposed Jacobian matrix
-   * @param jacobianProduct the product of transposed Jacobian matrix and the Jacobian matrix
-   * @param jacobianDiag diagonal matrix of the Jacobian product
-   * @return the corrected parameters vector of this LM cycle
+   * @param corrected the state where the corrected parameters vector of this LM cycle is stored
    */
-  private FloatMatrix solveOneLMCycle(FloatMatrix params, float[][] values,FloatMatrix resultVector, float lambda, FloatMatrix jacobianTransposed,
-      FloatMatrix jacobianProduct, FloatMatrix jacobianDiag) {
-    // calculates the residus (deviation from measured values - y-f(beta))) 
-    FloatMatrix residues = calculateResidues(resultVector,values,params);
-    // calculates the right side of the equation: Jt[y - f(beta))
-    FloatMatrix rightSide = jacobianTransposed.times(residues);
-    // calculates the lambda matrix: lambda*diag(JtJ)
-    FloatMatrix lambdaMatrix = new FloatMatrix(jacobianDiag.A.clone());
-    lambdaMatrix = lambdaMatrix.times(lambda);
+  private void solveOneLMCycle(LMWorkspace workspace, float lambda, LMState corrected) {
+    int n = workspace.jacobianProduct_.length;
+    float[][] lu = workspace.lu_;
+    int[] piv = workspace.pivots_;
+    float[] luColj = workspace.luColumn_;
     // the left side of the equation: (JtJ + lambda*diag(JtJ))
-    FloatMatrix leftSide = jacobianProduct.plus(lambdaMatrix);
-    FloatMatrix delta = null;
+    for (int i=0; i!=n; i++){
+      for (int j=0; j!=n; j++)
+        lu[i][j] = workspace.jacobianProduct_[i][j] + lambda*(i==j ? workspace.jacobianProduct_[i][j] : 0f);
+      piv[i] = i;
+    }
+    for (int j=0; j<n; j++){
+      for (int i=0; i<n; i++) luColj[i] = lu[i][j];
+      for (int i=0; i<n; i++){
+        float[] luRowi = lu[i];
+        int kmax = Math.min(i,j);
+        double s = 0.0;
+        for (int k=0; k<kmax; k++) s += luRowi[k]*luColj[k];
+        luRowi[j] = luColj[i] -= s;
+      }
+      int p = j;
+      for (int i=j+1; i<n; i++){
+        if (Math.abs(luColj[i]) > Math.abs(luColj[p])) p = i;
+      }
+      if (p!=j){
+        float[] row = lu[p];
+        lu[p] = lu[j];
+        lu[j] = row;
+        int k = piv[p];
+        piv[p] = piv[j];
+        piv[j] = k;
+      }
+      if (lu[j][j] != 0.0){
+        for (int i=j+1; i<n; i++) lu[i][j] /= lu[j][j];
+      }
+    }
+    for (int j=0; j<n; j++){
+      if (lu[j][j] == 0) throw new RuntimeException("Matrix is singular.");
+    }
+    // the inverse of the left side: the identity matrix permuted by the pivots solved by L*Y = B(piv,:) and U*X = Y
+    float[][] x = workspace.inverse_;
+    for (int i=0; i<n; i++){
+      for (int j=0; j<n; j++) x[i][j] = (piv[i]==j ? 1f : 0f);
+    }
+    for (int k=0; k<n; k++){
+      for (int i=k+1; i<n; i++){
+        for (int j=0; j<n; j++) x[i][j] -= x[k][j]*lu[i][k];
+      }
+    }
+    for (int k=n-1; k>=0; k--){
+      for (int j=0; j<n; j++) x[k][j] /= lu[k][k];
+      for (int i=0; i<k; i++){
+        for (int j=0; j<n; j++) x[i][j] -= x[k][j]*lu[i][k];
+      }
+    }
     // the parameter corrective values we want to find out: delta = (JtJ + lambda*diag(JtJ))^-1 * Jt[y - f(beta))]
-    delta = leftSide.inverse().times(rightSide);
-    // correct the parameters by delta
-    FloatMatrix correctedParams = params.plus(delta);
-    return correctedParams;
-  }
-
-  private FloatMatrix calculateResidues(FloatMatrix resultVector, float[][] values, FloatMatrix paramsVector){
-    float[][] residues = new float[values.length][1];
-    FloatMatrix results = calculateEquationResults(values, paramsVector);
-    for (int i=0;i!=values.length;i++){
-      residues[i][0] = resultVector.A[i][0]-results.A[i][0];
+    // and the parameters are corrected by delta
+    float[][] params = workspace.current_.params_;
+    for (int i=0; i<n; i++){
+      float delta = 0;
+      for (int k=0; k<n; k++) delta += x[i][k]*workspace.rightSide_[k];
+      corrected.params_[i][0] = params[i][0] + delta;
     }
-    return new FloatMatrix(residues);
   }
 
   /**
-   * calculates the diagonal matrix of a given matrix
-   * @param in the given matrix
-   * @return the diagonal matrix
+   * calculates the equation results, the residues (deviation from measured values - y-f(beta))) and
+   * the sum of squares for the parameters of a state
+   * @param values the values of the input parameters (a m x n matrix)
+   * @param observations the measured results of the input parameters (a m x 1 matrix)
+   * @param state the state containing the parameters - the results are stored there too
    */
-  private FloatMatrix getDiagonalMatrix(FloatMatrix in){
-    FloatMatrix mx = in.copy();
-    for (int i=0;i!=mx.A.length;i++){
-      for (int j=0; j!=mx.A[i].length;j++){
-        if (i!=j)mx.A[i][j] = 0f;
-      }
+  private void calculateState(float[][] values, float[][] observations, LMState state){
+    calculateEquationResults(values,state.params_,state.results_);
+    for (int i=0;i!=values.length;i++){
+      state.residues_[i] = observations[i][0]-state.results_[i];
     }
-    return mx;
+    state.sumOfSquares_ = calculateSumOfSquares(state.residues_);
   }
   
   /**
-   * calculates the sum of squares of the calculated residues (a m x 1 matrix)
-   * @param res the residues (a m x 1 matrix)
+   * calculates the sum of squares of the calculated residues
+   * @param res the residues
    * @return the sum of squares of this matrix
    */
-  private float calculateSumOfSquares(FloatMatrix res){
+  private float calculateSumOfSquares(float[] res){
     float sumOfSquares = 0f;
-    for (int i=0; i!=res.m; i++){
-      sumOfSquares += Math.pow(res.A[i][0],2d);
+    for (int i=0; i!=res.length; i++){
+      sumOfSquares += Math.pow(res[i],2d);
     }
     return sumOfSquares;
   }
   
   /**
    * calculates the chi squared value for the equation
-   * @param params the current parameters vector (a m x 1 matrix)
-   * @param values the values of the input parameters (a m x n matrix)
-   * @param resultVector the measured results of the input parameters (a m x 1 matrix)
+   * @param state the state containing the equation results and the residues of the current parameters
+   * @param df the degrees of freedom
    * @return chi squared value
    */
-  private float calculateChiSquared(FloatMatrix params, float[][] values,FloatMatrix resultVector){
-    FloatMatrix residues = calculateResidues(resultVector,values,params);
-    FloatMatrix results = calculateEquationResults(values,params);
+  private float calculateChiSquared(LMState state, int df){
     float chiSquared = 0f;
-    for (int i=0;i!=values.length;i++){
-      chiSquared +=   Math.pow(residues.A[i][0],2d)/Math.abs(results.A[i][0]);
+    for (int i=0;i!=state.results_.length;i++){
+      chiSquared +=   Math.pow(state.residues_[i],2d)/Math.abs(state.results_[i]);
     }
-    int df = getDegreesOfFreedom(params,resultVector);
     chiSquared = chiSquared/df;
     return chiSquared;
   }
@@ -278,9 +299,10 @@ public abstract class LevenbergMarquardtOptimizer
   public float getMeanDeviation() throws LMException{
     if (maxDev_!=null) return maxDev_;
     else{
-      FloatMatrix res = calculateResidues(new FloatMatrix(getObservations()), getValues(), resultParams_);
-      float sumOfSquares = calculateSumOfSquares(res);
-      return (float)Math.sqrt(sumOfSquares/((float)res.m));
+      float[][] observations = getObservations();
+      LMState state = new LMState(observations.length,resultParams_.A);
+      calculateState(getValues(),observations,state);
+      return (float)Math.sqrt(state.sumOfSquares_/((float)observations.length));
     }
   }
   
@@ -322,15 +344,31 @@ public abstract class LevenbergMarquardtOptimizer
    * @param paramsVector the measured results of the input parameters (a m x 1 matrix)
    * @return equation results
    */
-  protected abstract FloatMatrix calculateEquationResults(float[][] values, FloatMatrix paramsVector);
+  protected FloatMatrix calculateEquationResults(float[][] values, FloatMatrix paramsVector){
+    float[] results = new float[values.length];
+    calculateEquationResults(values,paramsVector.A,results);
+    float[][] resultVector = new float[values.length][1];
+    for (int i=0; i!=values.length; i++) resultVector[i][0] = results[i];
+    return new FloatMatrix(resultVector);
+  }
   
   /**
-   * calculates the Jacobian matrix based on the used function and the input values
+   * calculates the results of the equation and writes them to a provided array;
+   * this method is called for every LM cycle, thus, it shall not allocate memory
    * @param values the values of the input parameters (a m x n matrix)
-   * @param parameters the current parameters vector (a m x 1 matrix)
-   * @return Jacobian matrix
+   * @param parameters the current parameters vector (a p x 1 matrix)
+   * @param results the array (length m) where the equation results are written to
    */
-  protected abstract FloatMatrix calculateJacobianMatrix(float[][] values, float[][] parameters);
+  protected abstract void calculateEquationResults(float[][] values, float[][] parameters, float[] results);
+  
+  /**
+   * calculates the analytic Jacobian matrix based on the used function and the input values and writes it to a provided matrix;
+   * this method is called for every LM cycle, thus, it shall not allocate memory
+   * @param values the values of the input parameters (a m x n matrix)
+   * @param parameters the current parameters vector (a p x 1 matrix)
+   * @param jacobian the matrix (m x p) where the Jacobian matrix is written to
+   */
+  protected abstract void calculateJacobianMatrix(float[][] values, float[][] parameters, float[][] jacobian);
   
   /**
    * 
@@ -385,5 +423,99 @@ public abstract class LevenbergMarquardtOptimizer
     return resultLambda_;
   }
   
+  /**
+   * the parameters of one LM step together with the equation results, the residues and the sum of squares
+   */
+  private static class LMState
+  {
+    /** the parameters vector (a p x 1 matrix)*/
+    private float[][] params_;
+    /** the equation results for these parameters*/
+    private float[] results_;
+    /** the deviation from measured values - y-f(beta)*/
+    private float[] residues_;
+    /** the sum of squares of the residues*/
+    private float sumOfSquares_;
+    
+    private LMState(int nrOfObservations, int nrOfParams){
+      params_ = new float[nrOfParams][1];
+      results_ = new float[nrOfObservations];
+      residues_ = new float[nrOfObservations];
+    }
+    
+    private LMState(int nrOfObservations, float[][] params){
+      params_ = params;
+      results_ = new float[nrOfObservations];
+      residues_ = new float[nrOfObservations];
+    }
+  }
+  
+  /**
+   * the matrices that are required by the LM cycles of one fit
+   */
+  private static class LMWorkspace
+  {
+    /** the state of the current parameters*/
+    private LMState current_;
+    /** the state corrected by lambda*/
+    private LMState candidate_;
+    /** the state corrected by lambda/vLambda*/
+    private LMState smallerCandidate_;
+    /** the Jacobian matrix (m x p)*/
+    private float[][] jacobian_;
+    /** the product of transposed Jacobian matrix and the Jacobian matrix (p x p)*/
+    private float[][] jacobianProduct_;
+    /** the right side of the equation: Jt[y - f(beta))*/
+    private float[] rightSide_;
+    /** the LU decomposition of the left side of the equation*/
+    private float[][] lu_;
+    /** the row pivots of the LU decomposition*/
+    private int[] pivots_;
+    /** buffer for one column of the LU decomposition*/
+    private float[] luColumn_;
+    /** the inverse of the left side of the equation*/
+    private float[][] inverse_;
+    
+    private LMWorkspace(int nrOfObservations, int nrOfParams){
+      current_ = new LMState(nrOfObservations,nrOfParams);
+      candidate_ = new LMState(nrOfObservations,nrOfParams);
+      smallerCandidate_ = new LMState(nrOfObservations,nrOfParams);
+      jacobian_ = new float[nrOfObservations][nrOfParams];
+      jacobianProduct_ = new float[nrOfParams][nrOfParams];
+      rightSide_ = new float[nrOfParams];
+      lu_ = new float[nrOfParams][nrOfParams];
+      pivots_ = new int[nrOfParams];
+      luColumn_ = new float[nrOfParams];
+      inverse_ = new float[nrOfParams][nrOfParams];
+    }
+    
+    /**
+     * calculates JtJ and Jt[y - f(beta)) for the Jacobian matrix and the residues of the current state
+     */
+    private void calculateJacobianProducts(){
+      int n = jacobianProduct_.length;
+      for (int i=0; i!=n; i++){
+        for (int j=0; j!=n; j++){
+          float s = 0;
+          for (int k=0; k!=jacobian_.length; k++) s += jacobian_[k][i]*jacobian_[k][j];
+          jacobianProduct_[i][j] = s;
+        }
+        float s = 0;
+        for (int k=0; k!=jacobian_.length; k++) s += jacobian_[k][i]*current_.residues_[k];
+        rightSide_[i] = s;
+      }
+    }
+    
+    /**
+     * the state becomes the current one - the buffers of the previous state are reused for the next candidate
+     * @param state the accepted state
+     */
+    private void accept(LMState state){
+      LMState previous = current_;
+      current_ = state;
+      if (state==candidate_) candidate_ = previous;
+      else smallerCandidate_ = previous;
+    }
+  }
     
 }
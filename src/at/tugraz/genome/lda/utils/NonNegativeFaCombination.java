@@ -0,0 +1,168 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.utils;
+
+/**
+ * Fits the shares of chain combinations to the observed chain intensities by non-negative least squares;
+ * every combination contains a few chains only, thus the chain x combination matrix is stored sparsely
+ * per combination, and the fit is done by cyclic coordinate descent, which can be warm started
+ * with the shares of a previous fit
+ */
+public class NonNegativeFaCombination
+{
+  /** the maximum number of coordinate descent sweeps over all combinations*/
+  private final static int MAX_SWEEPS = 20000;
+  /** the fit is converged when no share changes more than this fraction of the highest share during one sweep*/
+  private final static double RELATIVE_TOLERANCE = 1e-9d;
+  
+  /** the observed intensities of the chains*/
+  private double[] observations_;
+  /** for each combination the indices of its chains in the observations*/
+  private int[][] chainIndices_;
+  /** for each combination how often the chain is contained*/
+  private double[][] chainCounts_;
+  /** the fitted shares of the combinations*/
+  private double[] resultParams_;
+  /** the number of sweeps the last fit required*/
+  private int sweeps_;
+  /** true when the last fit converged before the maximum number of sweeps*/
+  private boolean converged_;
+  
+  /**
+   * @param observations the observed intensities of the chains
+   * @param chainIndices for each combination the indices of its chains in the observations
+   * @param chainCounts for each combination how often the chain at the same position of chainIndices is contained
+   */
+  public NonNegativeFaCombination(float[] observations, int[][] chainIndices, float[][] chainCounts){
+    observations_ = new double[observations.length];
+    for (int i=0; i!=observations.length; i++) observations_[i] = observations[i];
+    chainIndices_ = chainIndices;
+    chainCounts_ = new double[chainCounts.length][];
+    for (int i=0; i!=chainCounts.length; i++){
+      chainCounts_[i] = new double[chainCounts[i].length];
+      for (int j=0; j!=chainCounts[i].length; j++) chainCounts_[i][j] = chainCounts[i][j];
+    }
+  }
+  
+  /**
+   * fits the shares starting from an equal distribution of the total intensity
+   */
+  public void fit(){
+    fit(null);
+  }
+  
+  /**
+   * fits the shares of the combinations
+   * @param startParams start values for the shares, e.g. the result of a previous fit; null for an equal distribution of the total intensity
+   */
+  public void fit(double[] startParams){
+    int nrOfCombis = chainIndices_.length;
+    double[] params = new double[nrOfCombis];
+    if (startParams!=null){
+      for (int i=0; i!=nrOfCombis; i++) params[i] = Math.max(0d, startParams[i]);
+    }else{
+      double total = 0d;
+      for (int i=0; i!=observations_.length; i++) total += observations_[i];
+      for (int i=0; i!=nrOfCombis; i++){
+        double chains = 0d;
+        for (int j=0; j!=chainCounts_[i].length; j++) chains += chainCounts_[i][j];
+        if (chains>0d) params[i] = total/(chains*nrOfCombis);
+      }
+    }
+    double[] residuals = observations_.clone();
+    double[] norms = new double[nrOfCombis];
+    for (int i=0; i!=nrOfCombis; i++){
+      for (int j=0; j!=chainIndices_[i].length; j++){
+        residuals[chainIndices_[i][j]] -= chainCounts_[i][j]*params[i];
+        norms[i] += chainCounts_[i][j]*chainCounts_[i][j];
+      }
+    }
+    converged_ = false;
+    for (sweeps_=1; sweeps_<=MAX_SWEEPS; sweeps_++){
+      double highestChange = 0d;
+      double highestParam = 0d;
+      for (int i=0; i!=nrOfCombis; i++){
+        if (norms[i]==0d){
+          params[i] = 0d;
+          continue;
+        }
+        double gradient = 0d;
+        for (int j=0; j!=chainIndices_[i].length; j++) gradient += chainCounts_[i][j]*residuals[chainIndices_[i][j]];
+        double param = Math.max(0d, params[i]+gradient/norms[i]);
+        double change = param-params[i];
+        if (change!=0d){
+          for (int j=0; j!=chainIndices_[i].length; j++) residuals[chainIndices_[i][j]] -= chainCounts_[i][j]*change;
+          params[i] = param;
+        }
+        highestChange = Math.max(highestChange, Math.abs(change));
+        highestParam = Math.max(highestParam, param);
+      }
+      if (highestChange<=RELATIVE_TOLERANCE*highestParam){
+        converged_ = true;
+        break;
+      }
+    }
+    if (!converged_) sweeps_ = MAX_SWEEPS;
+    resultParams_ = params;
+  }
+  
+  /**
+   * 
+   * @return the fitted shares of the combinations
+   */
+  public double[] getResultParams(){
+    return resultParams_;
+  }
+  
+  /**
+   * 
+   * @return the number of sweeps the last fit required
+   */
+  public int getSweeps(){
+    return sweeps_;
+  }
+  
+  /**
+   * 
+   * @return true when the last fit converged before the maximum number of sweeps
+   */
+  public boolean isConverged(){
+    return converged_;
+  }
+  
+  /**
+   * calculates the intensity of a chain according to the fitted shares
+   * @param chainIndex the index of the chain in the observations
+   * @return the fitted intensity of the chain
+   */
+  public double calculateFitValue(int chainIndex){
+    double result = 0d;
+    for (int i=0; i!=chainIndices_.length; i++){
+      for (int j=0; j!=chainIndices_[i].length; j++){
+        if (chainIndices_[i][j]==chainIndex) result += chainCounts_[i][j]*resultParams_[i];
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,337 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.quantification.LipidParameterSet;
+import at.tugraz.genome.maspectras.quantification.CgProbe;
+
+/**
+ * Index over objects that cover a retention time interval and an m/z interval.
+ * The objects are added first; after calling build(), overlap queries can be executed.
+ * The retention time dimension is stored as an implicit interval tree (the entries are
+ * sorted by their start, and every node of the implicit binary tree stores the maximum
+ * stop of its subtree); the m/z dimension is checked for the retention time candidates only.
+ * After the build, the index is read-only and can be queried by several threads.
+ * Besides overlap queries, stabbing queries (which intervals contain a point) and overlap joins
+ * (which pairs of entries of two indices overlap) are supported.
+ * @param <T> the type of the indexed objects
+ */
+public class RtMzIntervalIndex<T>
+{
+  /** the indexed objects in the sequence they were added*/
+  private Vector<T> objects_;
+  /** start of the retention time intervals - in the sequence of adding; sorted by start after the build*/
+  private float[] rtStarts_;
+  /** stop of the retention time intervals*/
+  private float[] rtStops_;
+  /** lower m/z value of the intervals*/
+  private float[] mzLowers_;
+  /** upper m/z value of the intervals*/
+  private float[] mzUppers_;
+  /** the original position of the entry - in the sequence of adding*/
+  private int[] ordinals_;
+  /** the maximum stop of the subtree - implicit tree over the sorted entries*/
+  private float[] maxStops_;
+  /** the number of added entries*/
+  private int size_;
+  /** has the index already been built*/
+  private boolean built_;
+  
+  public RtMzIntervalIndex(){
+    this(16);
+  }
+  
+  /**
+   * @param expectedSize the expected number of entries - avoids resizing at bulk loading
+   */
+  public RtMzIntervalIndex(int expectedSize){
+    int capacity = Math.max(expectedSize, 1);
+    objects_ = new Vector<T>(capacity);
+    rtStarts_ = new float[capacity];
+    rtStops_ = new float[capacity];
+    mzLowers_ = new float[capacity];
+    mzUppers_ = new float[capacity];
+    size_ = 0;
+    built_ = false;
+  }
+  
+  /**
+   * builds an index over probes: the retention time interval is defined by the valleys, the m/z interval by the m/z bands
+   * @param probes the probes to be indexed
+   * @return the built index
+   */
+  public static RtMzIntervalIndex<CgProbe> buildProbeIndex(Collection<CgProbe> probes){
+    RtMzIntervalIndex<CgProbe> index = new RtMzIntervalIndex<CgProbe>(probes.size());
+    for (CgProbe probe : probes)
+      index.add(probe.LowerValley, probe.UpperValley, probe.Mz-probe.LowerMzBand, probe.Mz+probe.UpperMzBand, probe);
+    index.build();
+    return index;
+  }
+  
+  /**
+   * builds an index over MS1 identifications: the intervals cover all probes of all isotopes of an identification
+   * @param sets the identifications to be indexed
+   * @return the built index
+   */
+  public static RtMzIntervalIndex<LipidParameterSet> buildSetIndex(Collection<LipidParameterSet> sets){
+    RtMzIntervalIndex<LipidParameterSet> index = new RtMzIntervalIndex<LipidParameterSet>(sets.size());
+    for (LipidParameterSet set : sets){
+      float rtStart = Float.POSITIVE_INFINITY;
+      float rtStop = Float.NEGATIVE_INFINITY;
+      float mzLower = Float.POSITIVE_INFINITY;
+      float mzUpper = Float.NEGATIVE_INFINITY;
+      for (Vector<CgProbe> probes : set.getIsotopicProbes()){
+        for (CgProbe probe : probes){
+          if (probe.LowerValley<rtStart) rtStart = probe.LowerValley;
+          if (probe.UpperValley>rtStop) rtStop = probe.UpperValley;
+          if ((probe.Mz-probe.LowerMzBand)<mzLower) mzLower = probe.Mz-probe.LowerMzBand;
+          if ((probe.Mz+probe.UpperMzBand)>mzUpper) mzUpper = probe.Mz+probe.UpperMzBand;
+        }
+      }
+      //an identification without any probe cannot overlap with anything
+      if (rtStart>rtStop)
+        continue;
+      index.add(rtStart, rtStop, mzLower, mzUpper, set);
+    }
+    index.build();
+    return index;
+  }
+  
+  /**
+   * adds an object to the index - an object may be added several times with different intervals
+   * @param rtStart the start of the retention time interval
+   * @param rtStop the stop of the retention time interval
+   * @param mzLower the lower m/z value
+   * @param mzUpper the upper m/z value
+   * @param object the object to be indexed
+   */
+  public void add(float rtStart, float rtStop, float mzLower, float mzUpper, T object){
+    if (built_)
+      throw new IllegalStateException("No entries can be added after the index has been built!");
+    if (size_==rtStarts_.length){
+      int newLength = rtStarts_.length*2;
+      rtStarts_ = Arrays.copyOf(rtStarts_, newLength);
+      rtStops_ = Arrays.copyOf(rtStops_, newLength);
+      mzLowers_ = Arrays.copyOf(mzLowers_, newLength);
+      mzUppers_ = Arrays.copyOf(mzUppers_, newLength);
+    }
+    rtStarts_[size_] = rtStart;
+    rtStops_[size_] = rtStop;
+    mzLowers_[size_] = mzLower;
+    mzUppers_[size_] = mzUpper;
+    objects_.add(object);
+    size_++;
+  }
+  
+  /**
+   * sorts the entries and builds the implicit interval tree; has to be called before any query
+   */
+  public void build(){
+    if (built_)
+      return;
+    Integer[] order = new Integer[size_];
+    for (int i=0; i!=size_; i++) order[i] = i;
+    final float[] starts = rtStarts_;
+    Arrays.sort(order, (o1,o2) -> Float.compare(starts[o1], starts[o2]));
+    float[] rtStarts = new float[size_];
+    float[] rtStops = new float[size_];
+    float[] mzLowers = new float[size_];
+    float[] mzUppers = new float[size_];
+    ordinals_ = new int[size_];
+    for (int i=0; i!=size_; i++){
+      int original = order[i];
+      rtStarts[i] = rtStarts_[original];
+      rtStops[i] = rtStops_[original];
+      mzLowers[i] = mzLowers_[original];
+      mzUppers[i] = mzUppers_[original];
+      ordinals_[i] = original;
+    }
+    rtStarts_ = rtStarts;
+    rtStops_ = rtStops;
+    mzLowers_ = mzLowers;
+    mzUppers_ = mzUppers;
+    maxStops_ = new float[size_];
+    calculateMaxStops(0,size_);
+    built_ = true;
+  }
+  
+  /**
+   * calculates the maximum stop values of the implicit subtree [from,to)
+   * @param from the first index of the subtree
+   * @param to the index after the last one of the subtree
+   * @return the maximum stop value of the subtree
+   */
+  private float calculateMaxStops(int from, int to){
+    if (from>=to)
+      return Float.NEGATIVE_INFINITY;
+    int mid = (from+to)>>>1;
+    float max = rtStops_[mid];
+    float left = calculateMaxStops(from,mid);
+    float right = calculateMaxStops(mid+1,to);
+    if (left>max) max = left;
+    if (right>max) max = right;
+    maxStops_[mid] = max;
+    return max;
+  }
+  
+  /**
+   * returns all objects whose intervals overlap with the query intervals (the borders are inclusive)
+   * @param rtStart the start of the retention time interval
+   * @param rtStop the stop of the retention time interval
+   * @param mzLower the lower m/z value
+   * @param mzUpper the upper m/z value
+   * @return the overlapping objects in the sequence they were added; an object that was added several times is returned once per matching entry
+   */
+  public Vector<T> findOverlapping(float rtStart, float rtStop, float mzLower, float mzUpper){
+    int[] hits = findOverlappingOrdinals(rtStart,rtStop,mzLower,mzUpper);
+    Vector<T> result = new Vector<T>(hits.length);
+    for (int ordinal : hits) result.add(objects_.get(ordinal));
+    return result;
+  }
+  
+  /**
+   * returns the positions (in the sequence of adding) of the entries whose intervals overlap with the query intervals (the borders are inclusive)
+   * @param rtStart the start of the retention time interval
+   * @param rtStop the stop of the retention time interval
+   * @param mzLower the lower m/z value
+   * @param mzUpper the upper m/z value
+   * @return ascendingly sorted positions of the overlapping entries
+   */
+  public int[] findOverlappingOrdinals(float rtStart, float rtStop, float mzLower, float mzUpper){
+    if (!built_)
+      throw new IllegalStateException("The index has to be built before it can be queried!");
+    Vector<Integer> hits = new Vector<Integer>();
+    collectOverlapping(0,size_,rtStart,rtStop,mzLower,mzUpper,hits);
+    int[] result = new int[hits.size()];
+    for (int i=0; i!=result.length; i++) result[i] = hits.get(i);
+    Arrays.sort(result);
+    return result;
+  }
+  
+  /**
+   * collects the overlapping entries of the implicit subtree [from,to)
+   * @param from the first index of the subtree
+   * @param to the index after the last one of the subtree
+   * @param rtStart the start of the retention time interval
+   * @param rtStop the stop of the retention time interval
+   * @param mzLower the lower m/z value
+   * @param mzUpper the upper m/z value
+   * @param hits the positions of the hits are added to this vector
+   */
+  private void collectOverlapping(int from, int to, float rtStart, float rtStop, float mzLower, float mzUpper, Vector<Integer> hits){
+    if (from>=to)
+      return;
+    int mid = (from+to)>>>1;
+    //no interval in this subtree reaches the query
+    if (maxStops_[mid]<rtStart)
+      return;
+    collectOverlapping(from,mid,rtStart,rtStop,mzLower,mzUpper,hits);
+    //the entries of mid and the right subtree start after the query
+    if (rtStarts_[mid]>rtStop)
+      return;
+    if (rtStops_[mid]>=rtStart && mzLowers_[mid]<=mzUpper && mzUppers_[mid]>=mzLower)
+      hits.add(ordinals_[mid]);
+    collectOverlapping(mid+1,to,rtStart,rtStop,mzLower,mzUpper,hits);
+  }
+  
+  /**
+   * returns all objects whose intervals contain a retention time and an m/z value (the borders are inclusive)
+   * @param rt the retention time
+   * @param mz the m/z value
+   * @return the objects in the sequence they were added
+   */
+  public Vector<T> findContaining(float rt, float mz){
+    return findOverlapping(rt,rt,mz,mz);
+  }
+  
+  /**
+   * returns the positions (in the sequence of adding) of the entries whose intervals contain a retention time and an m/z value (the borders are inclusive)
+   * @param rt the retention time
+   * @param mz the m/z value
+   * @return ascendingly sorted positions of the entries
+   */
+  public int[] findContainingOrdinals(float rt, float mz){
+    return findOverlappingOrdinals(rt,rt,mz,mz);
+  }
+  
+  /**
+   * returns all pairs of overlapping entries of this and another index
+   * @param other the other index
+   * @return the overlapping pairs; int[0]: position of the entry in this index; int[1]: position of the entry in the other index;
+   *         the pairs are sorted ascendingly by the first and then by the second position
+   */
+  public Vector<int[]> overlapJoin(RtMzIntervalIndex<?> other){
+    if (!built_ || !other.built_)
+      throw new IllegalStateException("The indices have to be built before they can be joined!");
+    Vector<int[]> pairs = new Vector<int[]>();
+    //the smaller index is iterated, the bigger one is queried
+    boolean queryThis = other.size_<=size_;
+    RtMzIntervalIndex<?> iterated = queryThis ? other : this;
+    RtMzIntervalIndex<?> queried = queryThis ? this : other;
+    Vector<Integer> hits = new Vector<Integer>();
+    for (int i=0; i!=iterated.size_; i++){
+      hits.clear();
+      queried.collectOverlapping(0,queried.size_,iterated.rtStarts_[i],iterated.rtStops_[i],iterated.mzLowers_[i],iterated.mzUppers_[i],hits);
+      for (int hit : hits){
+        if (queryThis) pairs.add(new int[]{hit,iterated.ordinals_[i]});
+        else pairs.add(new int[]{iterated.ordinals_[i],hit});
+      }
+    }
+    Collections.sort(pairs, (p1,p2) -> p1[0]!=p2[0] ? Integer.compare(p1[0],p2[0]) : Integer.compare(p1[1],p2[1]));
+    return pairs;
+  }
+  
+  /**
+   * returns all pairs of overlapping entries within this index
+   * @return the overlapping pairs; int[0]: position of the first entry; int[1]: position of the second entry; int[0] is always smaller than int[1];
+   *         the pairs are sorted ascendingly by the first and then by the second position
+   */
+  public Vector<int[]> selfJoin(){
+    Vector<int[]> pairs = new Vector<int[]>();
+    for (int[] pair : overlapJoin(this)){
+      if (pair[0]<pair[1]) pairs.add(pair);
+    }
+    return pairs;
+  }
+  
+  /**
+   * @return the number of entries in the index
+   */
+  public int size(){
+    return size_;
+  }
+  
+  /**
+   * @param ordinal the position of the entry in the sequence of adding
+   * @return the object of this entry
+   */
+  public T get(int ordinal){
+    return objects_.get(ordinal);
+  }
+}
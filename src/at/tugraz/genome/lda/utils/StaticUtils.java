@@ -50,6 +50,7 @@ import org.apache.poi.ss.usermodel.Row;
 import at.tugraz.genome.lda.LipidomicsConstants;
 import at.tugraz.genome.lda.Settings;
 import at.tugraz.genome.lda.WarningMessage;
+import at.tugraz.genome.lda.analysis.exception.CalculationNotPossibleException;
 import at.tugraz.genome.lda.exception.ChemicalFormulaException;
 import at.tugraz.genome.lda.exception.HydroxylationEncodingException;
 import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
@@ -374,6 +375,36 @@ public class StaticUtils
     return myArea;
   }
   
+  /**
+   * extracts the values of one analyte in the various experiments according to the display settings
+   * @param expVOs the results of the analyte; key: experiment name; value: the result value object
+   * @param maxIsotope the highest isotope that shall be used
+   * @param settingVO the display settings for the calculation of the values
+   * @param preferredUnit the unit the values shall be converted to; null for no conversion
+   * @return key: experiment name; value: vector containing the area in the corresponding unit
+   * @throws CalculationNotPossibleException if there is something wrong with the calculations
+   */
+  public static Hashtable<String,Vector<Double>> extractValuesOfMolecule(Hashtable<String,ResultCompVO> expVOs, int maxIsotope, ResultDisplaySettingsVO settingVO,
+      String preferredUnit) throws CalculationNotPossibleException{
+    Hashtable<String,Vector<Double>> expValues = new Hashtable<String,Vector<Double>>();
+    for (String expKey : expVOs.keySet()){
+      ResultCompVO compVO = expVOs.get(expKey);
+      int isoNr = maxIsotope;
+      if (!settingVO.getType().equalsIgnoreCase(ResultDisplaySettingsVO.REL_MEASURED_CLASS_AMOUNT) && 
+          !settingVO.getType().equalsIgnoreCase(ResultDisplaySettingsVO.REL_TOTAL_AMOUNT))
+        isoNr = compVO.getAvailableIsotopeNr(maxIsotope);
+      double myArea = compVO.getArea(isoNr, settingVO);
+      if (settingVO.getType().equalsIgnoreCase(ResultDisplaySettingsVO.REL_MEASURED_CLASS_AMOUNT) || 
+          settingVO.getType().equalsIgnoreCase(ResultDisplaySettingsVO.REL_TOTAL_AMOUNT))
+        compVO.getArea(maxIsotope, settingVO);
+      myArea = getAreaInCorrespondingUnit(myArea, preferredUnit);
+      Vector<Double> areaPlusDev = new Vector<Double>();
+      areaPlusDev.add(myArea);
+      expValues.put(expKey, areaPlusDev);
+    }
+    return expValues;
+  }
+  
   public static double getValueDividedByUnit(double inValue, String unit){
     double value = new Double(inValue);
     if (unit!=null&&unit.length()>0){
@@ -0,0 +1,81 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.vos;
+
+import java.util.Vector;
+
+/**
+ * Value object holding the selections of one analyte class that are relevant for an export
+ * (i.e. the selected species, the highest isotope, and the display settings for the values);
+ * this way, the exports do not depend on the heat map GUI
+ */
+public class ClassExportSelectionVO
+{
+  /** the selected species in the sequence of the export*/
+  private Vector<String> selectedMolecules_;
+  /** the highest isotope that shall be used for the export*/
+  private int maxIsotope_;
+  /** the settings for the calculation of the values*/
+  private ResultDisplaySettingsVO settings_;
+  
+  /**
+   * @param selectedMolecules the selected species in the sequence of the export
+   * @param maxIsotope the highest isotope that shall be used for the export
+   * @param settings the settings for the calculation of the values
+   */
+  public ClassExportSelectionVO(Vector<String> selectedMolecules, int maxIsotope, ResultDisplaySettingsVO settings)
+  {
+    this.selectedMolecules_ = selectedMolecules;
+    this.maxIsotope_ = maxIsotope;
+    this.settings_ = settings;
+  }
+
+  /**
+   * 
+   * @return the selected species in the sequence of the export
+   */
+  public Vector<String> getSelectedMolecules()
+  {
+    return selectedMolecules_;
+  }
+
+  /**
+   * 
+   * @return the highest isotope that shall be used for the export
+   */
+  public int getMaxIsotope()
+  {
+    return maxIsotope_;
+  }
+
+  /**
+   * 
+   * @return the settings for the calculation of the values
+   */
+  public ResultDisplaySettingsVO getSettings()
+  {
+    return settings_;
+  }
+  
+}
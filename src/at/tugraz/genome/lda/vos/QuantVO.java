@@ -65,6 +65,8 @@ public class QuantVO implements Comparable<QuantVO>
   /** Vector of value objects required for omega assignment */
   private Vector<DoubleBondPositionVO> infoForOmegaAssignment_;
   protected String oxState_;
+  /** the class of the mass list this object was defined in; oxidized variants are stored in a class of their own*/
+  protected String massListClass_;
   
   /**
    * constructor for an object holding necessary information for 
@@ -121,6 +123,7 @@ public class QuantVO implements Comparable<QuantVO>
     this.quantifiedByOtherIsobar_ = false;
     this.infoForOmegaAssignment_ = new Vector<DoubleBondPositionVO>();
     this.oxState_ = oxState;
+    this.massListClass_ = analyteClass;
   }
   
   /**
@@ -231,6 +234,18 @@ public class QuantVO implements Comparable<QuantVO>
     return this.negStartValue_;
   }
   
+  /**
+   * sets the required isotopic distribution values for this target
+   * @param mustMatchProbabs the probabilities of the isotopes that must match
+   * @param probabs probabilities of all isotopes to quantify
+   * @param negativeStartValue if the distribution goes in the negative direction - how negative is the lowest isotope
+   */
+  public void setDistributionValues(Vector<Double> mustMatchProbabs, Vector<Double> probabs, int negativeStartValue){
+    mustMatchProbabs_ = mustMatchProbabs;
+    probabs_ = probabs;
+    negStartValue_ = negativeStartValue;
+  }
+  
   /**
    * @return original string for the analyte name
    */
@@ -238,6 +253,28 @@ public class QuantVO implements Comparable<QuantVO>
     return StaticUtils.generateLipidNameString(getAnalyteName(),dbs_,-1,oxState_);
   }
   
+  /**
+   * sets the class of the mass list this object was defined in, if it is stored in a different class
+   * @param massListClass the class of the mass list
+   */
+  public void setMassListClass(String massListClass){
+    massListClass_ = massListClass;
+  }
+  
+  /**
+   * @return the class of the mass list this object was defined in
+   */
+  public String getMassListClass(){
+    return massListClass_;
+  }
+  
+  /**
+   * @return a key that is identical for all hydroxylation and oxidation variants of the same species and adduct
+   */
+  public String getVariantOf(){
+    return massListClass_+"_"+prefixOrName_+(carbons_>=0 ? String.valueOf(carbons_) : "")+":"+dbs_+"_"+modName_;
+  }
+  
   /**
    * Adds a value object for omega assignment
    * 
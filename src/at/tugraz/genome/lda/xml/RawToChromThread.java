@@ -38,6 +38,7 @@ import java.util.Set;
 import java.util.Vector;
 
 import at.tugraz.genome.dbutilities.Base64;
+import at.tugraz.genome.lda.profiling.PipelineMetrics;
 import at.tugraz.genome.maspectras.quantification.CgDefines;
 import at.tugraz.genome.maspectras.quantification.CgException;
 import at.tugraz.genome.maspectras.quantification.CgScan;
@@ -131,6 +132,9 @@ public class RawToChromThread extends Thread  implements AddScan
    */
   private CgScan negativeDummyMS1Scan_;
   
+  /** the metrics of the translation this thread belongs to*/
+  private PipelineMetrics metrics_;
+  
   /** the suffix to be added to the positive chrom file of polarity switched data*/
   public final static String FILE_SUFFIX_POLARITY_POSITIVE = "_positive";
   /** the suffix to be added to the negative chrom file of polarity switched data*/
@@ -149,6 +153,7 @@ public class RawToChromThread extends Thread  implements AddScan
     this.msms_ = false;
     positiveDummyMS1Scan_ = null;
     negativeDummyMS1Scan_ = null;
+    metrics_ = PipelineMetrics.current();
   }
   
   /**
@@ -183,6 +188,7 @@ public class RawToChromThread extends Thread  implements AddScan
     this.lowestMz_ = otherThread.lowestMz_;
     this.highestMz_ = otherThread.highestMz_;
     this.highestMsLevel_ = otherThread.highestMsLevel_;
+    this.metrics_ = otherThread.metrics_;
   }
   
   public void run(){
@@ -306,6 +312,7 @@ public class RawToChromThread extends Thread  implements AddScan
    * @throws IOException thrown when there is something wrong with the file/directory access
    */
   public void writeToChrom() throws IOException{
+    PipelineMetrics.Timing timing = metrics_.time("write");
     if (directories_[1]==null){
       writeToChrom(directories_[0],CgDefines.POLARITY_NO);
     }else{
@@ -313,8 +320,16 @@ public class RawToChromThread extends Thread  implements AddScan
       writeToChrom(directories_[0],CgDefines.POLARITY_POSITIVE);
       writeToChrom(directories_[1],CgDefines.POLARITY_NEGATIVE);
     }
- 
-  }  
+    timing.stop();
+  }
+  
+  /**
+   * sets the metrics of the translation this thread belongs to
+   * @param metrics the metrics of the translation
+   */
+  public void setMetrics(PipelineMetrics metrics){
+    this.metrics_ = metrics;
+  }
 
   /**
    * the individual translation (in the case of polarity switched data, this method is called twice)
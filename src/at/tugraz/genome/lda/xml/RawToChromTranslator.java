@@ -42,6 +42,7 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import at.tugraz.genome.lda.profiling.PipelineMetrics;
 import at.tugraz.genome.lda.utils.RangeInteger;
 import at.tugraz.genome.maspectras.GlobalConstants;
 import at.tugraz.genome.maspectras.quantification.CgDefines;
@@ -162,6 +163,8 @@ public class RawToChromTranslator implements AddScan
   
   /** was polarity switching used*/
   private boolean polaritySwitching_ = false;
+  /** the metrics of the current translation*/
+  private PipelineMetrics metrics_;
   
   
   /**
@@ -292,25 +295,33 @@ public class RawToChromTranslator implements AddScan
     polarityScanCounts_ = new Hashtable<Integer,Hashtable<String,Hashtable<Integer,Integer>>>();
     oneIterationFinished_ = false;
     errorString_ = null;
-    if (msms_){
-      int msLevel = 2;
-      while ((new File(m_fileName+String.valueOf(msLevel))).exists()){
-        msmsInSeveralFiles_ = true;
-        msmsSeveralFilesHighestLevel_ = msLevel;
-        msLevel++;
+    metrics_ = PipelineMetrics.create(m_fileName, PipelineMetrics.STAGE_TRANSLATION);
+    PipelineMetrics.Timing total = metrics_.time("total");
+    try{
+      if (msms_){
+        int msLevel = 2;
+        while ((new File(m_fileName+String.valueOf(msLevel))).exists()){
+          msmsInSeveralFiles_ = true;
+          msmsSeveralFilesHighestLevel_ = msLevel;
+          msLevel++;
+        }
+        for (int i=msmsSeveralFilesHighestLevel_;i!=0;i--)translateToChromatograms(i); 
+      }else{
+        translateToChromatograms(1);
       }
-      for (int i=msmsSeveralFilesHighestLevel_;i!=0;i--)translateToChromatograms(i); 
-    }else{
-      translateToChromatograms(1);
-    }
-    try {
-      this.writeHeaderFile();
-    }
-    catch (IOException e) {
-      e.printStackTrace();
-      throw new CgException(e.getMessage());
+      PipelineMetrics.Timing timing = metrics_.time("writeHeader");
+      try {
+        this.writeHeaderFile();
+      }
+      catch (IOException e) {
+        e.printStackTrace();
+        throw new CgException(e.getMessage());
+      }
+      timing.stop();
+    } finally {
+      total.stop();
+      metrics_.finishNextTo(m_fileName);
     }
-
   }
 
   /**
@@ -328,7 +339,10 @@ public class RawToChromTranslator implements AddScan
    */
   private void translateToChromatograms(int msLevel) throws CgException{
     long time = System.currentTimeMillis();
+    PipelineMetrics.Timing timing = metrics_.time("readHeader");
     this.readHeaderInformation(msLevel);
+    timing.stop();
+    for (CgScanHeader header : headerHash_.values()) metrics_.add("scans", header.ScanCount);
         
     if (this.numberOfIterations_>1 || this.numberOfThreads_>1){
       m_scanCount = new Hashtable<String,Integer>();
@@ -356,8 +370,11 @@ public class RawToChromTranslator implements AddScan
       }
       AddScan[] adders = getAdders();
       m_reader.setAdders(adders);
+      metrics_.increment("iterations");
       if (this.numberOfIterations_>1 || this.numberOfThreads_>1){
+        timing = metrics_.time("read");
         this.m_reader.ReadFile(m_fileName+suffix);
+        timing.stop();
       }else{
         this.translators_.get(0).setReadXmlContent(headerHash_,scanHash_,m_scanCount,polarity_scanCount_);
       }
@@ -420,7 +437,9 @@ public class RawToChromTranslator implements AddScan
 
     if (errorString_!=null) throw new CgException(errorString_);
       
+    timing = metrics_.time("merge");
     mergeResults();
+    timing.stop();
     try {
       checkHighestMsLevel();
     }
@@ -689,6 +708,7 @@ public class RawToChromTranslator implements AddScan
       RawToChromThread thread = new RawToChromThread(this.msms_,this.multiplicationFactorForInt_,this.lowestResolution_,this.highestMsLevel_);
       thread.setStaticInformation(elementsForBatchCalculation_,lowestMz,highestMz,chromFileName_,indexFileName_,
           retentionTimeFileName_);
+      thread.setMetrics(metrics_);
       this.translators_.put(i,thread);
     }
   }
@@ -0,0 +1,239 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Junit Test class for the MgfSorter and the MgfIndex: the sorted files are compared with the sorting of the previous
+ * implementation, and the index entries with the spectra of the sorted file
+ */
+class MgfIndexTest
+{
+  private File dir;
+  
+  @BeforeEach
+  void init() throws IOException
+  {
+    dir = Files.createTempDirectory("mgfIndex").toFile();
+  }
+  
+  @AfterEach
+  void cleanUp()
+  {
+    File[] files = dir.listFiles();
+    if (files!=null){
+      for (File file : files) file.delete();
+    }
+    dir.delete();
+  }
+  
+  @Test
+  @DisplayName("The peaks are sorted like by the previous implementation; peaks with the same m/z keep their sequence")
+  void testSorting() throws IOException
+  {
+    String content = "BEGIN IONS\nTITLE=scan 1\nPEPMASS=760.58 1000\nRTINSECONDS=300.5\nCHARGE=1+\n"+
+        "184.07 500\n86.1 20\n184.07 300\n104.1   40\n50 1\nEND IONS\n\n"+
+        "BEGIN IONS\nTITLE=scan 2\nPEPMASS=758.57\nRTINSECONDS=120\n300.2 5\n299.9 6\nEND IONS\n";
+    File mgf = writeMgf("sample.mgf", content);
+    String expected = sortLikeBefore(content);
+    sort();
+    assertEquals(expected, read(mgf));
+    assertTrue(read(mgf).contains("50 1\r\n86.1 20\r\n104.1 40\r\n184.07 500\r\n184.07 300\r\n"));
+  }
+  
+  @Test
+  @DisplayName("The peaks of a file that does not end with an END IONS line are not dropped")
+  void testPeaksAtEndOfFile() throws IOException
+  {
+    File mgf = writeMgf("truncated.mgf", "BEGIN IONS\nPEPMASS=500.1\n3.0 1\n1.0 2\n2.0 3");
+    sort();
+    assertEquals("BEGIN IONS\r\nPEPMASS=500.1\r\n1.0 2\r\n2.0 3\r\n3.0 1\r\n", read(mgf));
+    //a spectrum without END IONS is not indexed
+    assertEquals(0, MgfIndex.read(indexFile(mgf)).getEntries().size());
+  }
+  
+  @Test
+  @DisplayName("The index is sorted by precursor m/z and retention time, and points to the spectra of the sorted file")
+  void testIndexEntries() throws IOException
+  {
+    String content = "HEADER LINE\n"+
+        "BEGIN IONS\nTITLE=late\tscan\nPEPMASS=700.5 20\nRTINSECONDS=600\n2.0 1\n1.0 1\nEND IONS\n"+
+        "BEGIN IONS\nTITLE=early\nRTINSECONDS=100\nPEPMASS=700.5\n1.0 1\nEND IONS\n"+
+        "BEGIN IONS\nTITLE=low\nPEPMASS=650.25\nRTINSECONDS=900\n1.0 1\nEND IONS\n"+
+        //a scan without retention time and one without precursor m/z
+        "BEGIN IONS\nTITLE=noRt\nPEPMASS=680\n1.0 1\nEND IONS\n"+
+        "BEGIN IONS\nRTINSECONDS=50\nPEPMASS=abc\n1.0 1\nEND IONS\n"+
+        //a scan whose END IONS line is missing is not indexed
+        "BEGIN IONS\nTITLE=broken\nPEPMASS=690\n1.0 1\n"+
+        "BEGIN IONS\nTITLE=afterBroken\nPEPMASS=690\nRTINSECONDS=10\n1.0 1\nEND IONS\n";
+    File mgf = writeMgf("index.mgf", content);
+    sort();
+    MgfIndex index = MgfIndex.read(indexFile(mgf));
+    List<String> titles = new ArrayList<String>();
+    for (MgfIndex.Entry entry : index.getEntries()) titles.add(entry.getTitle());
+    assertEquals(listOf("low","noRt","afterBroken","early","late scan",""), titles);
+    MgfIndex.Entry noRt = index.getEntries().get(1);
+    assertTrue(Double.isNaN(noRt.getRt()));
+    assertTrue(Double.isNaN(index.getEntries().get(5).getPrecursorMz()));
+    assertEquals(700.5d, index.getEntries().get(4).getPrecursorMz());
+    assertEquals(600d, index.getEntries().get(4).getRt());
+    
+    //every entry covers exactly one spectrum of the sorted file
+    String sorted = read(mgf);
+    try (RandomAccessFile file = new RandomAccessFile(mgf,"r")){
+      for (MgfIndex.Entry entry : index.getEntries()){
+        String spectrum = MgfIndex.readSpectrum(file, entry);
+        assertEquals(sorted.substring((int)entry.getOffset(), (int)(entry.getOffset()+entry.getLength())), spectrum);
+        assertTrue(spectrum.startsWith("BEGIN IONS\r\n"));
+        assertTrue(spectrum.endsWith("END IONS\r\n"));
+        assertEquals(spectrum.indexOf("BEGIN IONS"), spectrum.lastIndexOf("BEGIN IONS"));
+      }
+      assertTrue(MgfIndex.readSpectrum(file, index.getEntries().get(4)).contains("1.0 1\r\n2.0 1\r\n"));
+    }
+  }
+  
+  @Test
+  @DisplayName("The search borders are inclusive; empty ranges and ranges outside the index return nothing")
+  void testFind() throws IOException
+  {
+    StringBuilder content = new StringBuilder();
+    for (int i=0; i!=10; i++)
+      content.append("BEGIN IONS\nTITLE="+i+"\nPEPMASS="+(500+i*10)+"\nRTINSECONDS="+(i*60)+"\n1.0 1\nEND IONS\n");
+    File mgf = writeMgf("find.mgf", content.toString());
+    sort();
+    MgfIndex index = MgfIndex.read(indexFile(mgf));
+    assertEquals(listOf("2","3","4"), titles(index.find(520d, 540d, 0d, 1000d)));
+    assertEquals(listOf("3"), titles(index.find(520d, 540d, 180d, 180d)));
+    assertEquals(listOf("0"), titles(index.find(500d, 500d, 0d, 0d)));
+    assertEquals(listOf("9"), titles(index.find(590d, 2000d, 0d, 1000d)));
+    assertEquals(0, index.find(Math.nextUp(590d), 2000d, 0d, 1000d).size());
+    assertEquals(0, index.find(0d, Math.nextDown(500d), 0d, 1000d).size());
+    assertEquals(0, index.find(541d, 549d, 0d, 1000d).size());
+    assertEquals(0, index.find(540d, 520d, 0d, 1000d).size());
+    assertEquals(0, index.find(500d, 600d, 1000d, 0d).size());
+  }
+  
+  @Test
+  @DisplayName("An empty file gives an empty index, and an invalid index file is rejected")
+  void testEmptyAndInvalid() throws IOException
+  {
+    File mgf = writeMgf("empty.mgf", "");
+    sort();
+    assertEquals("", read(mgf));
+    MgfIndex index = MgfIndex.read(indexFile(mgf));
+    assertEquals(0, index.getEntries().size());
+    assertEquals(0, index.find(0d, Double.MAX_VALUE, 0d, Double.MAX_VALUE).size());
+    File invalid = new File(dir,"invalid.idx");
+    Files.write(invalid.toPath(), "#header\n0\t10\tabc\t1\ttitle\n".getBytes(StandardCharsets.UTF_8));
+    assertThrows(IOException.class, () -> MgfIndex.read(invalid));
+    Files.write(invalid.toPath(), "0\t10\t500\t1\n".getBytes(StandardCharsets.UTF_8));
+    assertThrows(IOException.class, () -> MgfIndex.read(invalid));
+  }
+  
+  /**
+   * the sorting of the previous implementation - all lines of a file in memory, and a stable sort of the peaks by their m/z value;
+   * in difference to the previous implementation, the peaks at the end of a file are written
+   */
+  private static String sortLikeBefore(String content)
+  {
+    StringBuilder result = new StringBuilder();
+    List<String[]> values = new ArrayList<String[]>();
+    for (String line : content.split("\n",-1)){
+      if (isDataLine(line)){
+        StringTokenizer tokenizer = new StringTokenizer(line);
+        values.add(new String[]{tokenizer.nextToken(),tokenizer.nextToken()});
+      }else{
+        appendSorted(values,result);
+        result.append(line+"\r\n");
+      }
+    }
+    appendSorted(values,result);
+    //the split returns an empty last line for content ending with a line break
+    return result.substring(0, result.length()-2);
+  }
+  
+  private static void appendSorted(List<String[]> values, StringBuilder result)
+  {
+    Collections.sort(values, (v1,v2) -> Float.valueOf(v1[0]).compareTo(Float.valueOf(v2[0])));
+    for (String[] value : values) result.append(value[0]+" "+value[1]+"\r\n");
+    values.clear();
+  }
+  
+  private static boolean isDataLine(String line)
+  {
+    return line.length()>0 && line.indexOf(' ')!=-1 && line.matches("[0-9. ]+");
+  }
+  
+  private void sort()
+  {
+    MgfSorter.main(new String[]{dir.getAbsolutePath(),"2"});
+  }
+  
+  private File writeMgf(String name, String content) throws IOException
+  {
+    File mgf = new File(dir,name);
+    Files.write(mgf.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return mgf;
+  }
+  
+  private static File indexFile(File mgf)
+  {
+    return new File(mgf.getAbsolutePath()+MgfSorter.INDEX_SUFFIX);
+  }
+  
+  private static String read(File file) throws IOException
+  {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+  
+  private static List<String> titles(List<MgfIndex.Entry> entries)
+  {
+    List<String> titles = new ArrayList<String>();
+    for (MgfIndex.Entry entry : entries) titles.add(entry.getTitle());
+    return titles;
+  }
+  
+  private static List<String> listOf(String... values)
+  {
+    List<String> list = new ArrayList<String>();
+    Collections.addAll(list, values);
+    return list;
+  }
+}
@@ -0,0 +1,218 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.exception.HydroxylationEncodingException;
+import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
+import at.tugraz.genome.lda.msn.LipidomicsMSnSet;
+import at.tugraz.genome.lda.msn.vos.IntensityChainVO;
+import at.tugraz.genome.lda.msn.vos.IntensityPositionVO;
+import at.tugraz.genome.lda.msn.vos.IntensityRuleVO;
+import at.tugraz.genome.lda.quantification.LipidParameterSet;
+import at.tugraz.genome.lda.vos.QuantVO;
+import at.tugraz.genome.maspectras.quantification.CgProbe;
+
+/**
+ * Junit Test class for the QuantificationResultStore: the keys of the runs and jobs, hits and misses in memory and in the stored files,
+ * and the copies of the restored results
+ */
+class QuantificationResultStoreTest
+{
+  private File dir;
+  private String[] chromPaths;
+  private QuantVO quantSet;
+  
+  @BeforeEach
+  void init() throws IOException, HydroxylationEncodingException
+  {
+    dir = Files.createTempDirectory("resultStore").toFile();
+    File chrom = new File(dir,"sample.chrom");
+    Files.write(chrom.toPath(), new byte[]{1,2,3});
+    chromPaths = new String[]{chrom.getAbsolutePath()};
+    quantSet = createQuantVO(758.57d);
+  }
+  
+  @AfterEach
+  void cleanUp()
+  {
+    delete(dir);
+  }
+  
+  @Test
+  @DisplayName("The keys change with the chrom file, the general parameters, and the analyte")
+  void testKeys() throws Exception
+  {
+    QuantificationResultStore store = new QuantificationResultStore(null);
+    String runKey = store.createRunKey(chromPaths, 0.1f, 2);
+    assertEquals(runKey, store.createRunKey(chromPaths, 0.1f, 2));
+    assertNotEquals(runKey, store.createRunKey(chromPaths, 0.2f, 2));
+    String jobKey = store.createJobKey(runKey, quantSet, 1, false);
+    assertEquals(jobKey, store.createJobKey(runKey, createQuantVO(758.57d), 1, false));
+    assertNotEquals(jobKey, store.createJobKey(runKey, createQuantVO(760.58d), 1, false));
+    assertNotEquals(jobKey, store.createJobKey(runKey, quantSet, 2, false));
+    assertNotEquals(jobKey, store.createJobKey(runKey, quantSet, 1, true));
+    assertNotEquals(jobKey, store.createJobKey(store.createRunKey(chromPaths, 0.2f, 2), quantSet, 1, false));
+    //a changed chrom file is another run
+    Files.write(new File(chromPaths[0]).toPath(), new byte[]{1,2,3,4});
+    assertNotEquals(runKey, store.createRunKey(chromPaths, 0.1f, 2));
+  }
+  
+  @Test
+  @DisplayName("Stored jobs are hits in memory and in the stored file; other jobs and runs are misses")
+  void testHitAndMiss() throws Exception
+  {
+    QuantificationResultStore store = new QuantificationResultStore(dir);
+    String runKey = store.createRunKey(chromPaths, 0.1f, 2);
+    String jobKey = store.createJobKey(runKey, quantSet, 1, false);
+    String otherJobKey = store.createJobKey(runKey, createQuantVO(760.58d), 1, false);
+    assertNull(store.getStoredJob(runKey, jobKey));
+    store.store(runKey, jobKey, quantSet, createHits(quantSet), new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>(), null, true);
+    assertNotNull(store.getStoredJob(runKey, jobKey));
+    assertNull(store.getStoredJob(runKey, otherJobKey));
+    assertNull(store.getStoredJob(store.createRunKey(chromPaths, 0.2f, 2), jobKey));
+    assertNull(store.getStoredJob(null, jobKey));
+    store.flush(runKey);
+    
+    QuantificationResultStore next = new QuantificationResultStore(dir);
+    QuantificationResultStore.StoredJob stored = next.getStoredJob(runKey, jobKey);
+    assertNotNull(stored);
+    assertTrue(stored.areMSnSpectraPresent());
+    QuantVO restoredQuantSet = createQuantVO(758.57d);
+    Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> results = stored.getResults(restoredQuantSet);
+    LipidParameterSet set = results.get(restoredQuantSet).get("34:1");
+    assertTrue(set instanceof LipidomicsMSnSet);
+    assertEquals(1500f, set.Area);
+    assertEquals(2, set.ProbeCount());
+    assertEquals(1, ((LipidomicsMSnSet)set).getHeadGroupFragments().size());
+    assertEquals(0, stored.getMs2RemovedHits(restoredQuantSet).size());
+    assertEquals(0, stored.getPeaksBeforeSplit(restoredQuantSet).size());
+    assertNull(next.getStoredJob(runKey, otherJobKey));
+  }
+  
+  @Test
+  @DisplayName("Every restore creates new parameter sets and new MSn evidence")
+  void testRestoredCopies() throws Exception
+  {
+    QuantificationResultStore store = new QuantificationResultStore(null);
+    String runKey = store.createRunKey(chromPaths, 0.1f, 2);
+    String jobKey = store.createJobKey(runKey, quantSet, 1, false);
+    Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hits = createHits(quantSet);
+    store.store(runKey, jobKey, quantSet, hits, null, null, false);
+    LipidomicsMSnSet original = (LipidomicsMSnSet)hits.get(quantSet).get("34:1");
+    LipidomicsMSnSet first = (LipidomicsMSnSet)store.getStoredJob(runKey, jobKey).getResults(quantSet).get(quantSet).get("34:1");
+    LipidomicsMSnSet second = (LipidomicsMSnSet)store.getStoredJob(runKey, jobKey).getResults(quantSet).get(quantSet).get("34:1");
+    assertNotSame(first, second);
+    assertNotSame(first.getHeadGroupFragments(), second.getHeadGroupFragments());
+    assertNotSame(first.getHeadGroupFragments().get("PO4"), second.getHeadGroupFragments().get("PO4"));
+    assertNotSame(original.getHeadGroupFragments().get("PO4"), first.getHeadGroupFragments().get("PO4"));
+    assertNotSame(first.getBasePeakValues(), second.getBasePeakValues());
+    //a modification by one caller is not visible to the others
+    first.getHeadGroupFragments().get("PO4").Area = 0f;
+    first.getHeadGroupFragments().clear();
+    original.getHeadGroupFragments().get("PO4").Area = 1f;
+    LipidomicsMSnSet third = (LipidomicsMSnSet)store.getStoredJob(runKey, jobKey).getResults(quantSet).get(quantSet).get("34:1");
+    assertEquals(1, third.getHeadGroupFragments().size());
+    assertEquals(200f, third.getHeadGroupFragments().get("PO4").Area);
+  }
+  
+  @Test
+  @DisplayName("A stored file containing other classes than the ones of the results is not deserialized")
+  void testForeignClasses() throws Exception
+  {
+    QuantificationResultStore store = new QuantificationResultStore(dir);
+    String runKey = store.createRunKey(chromPaths, 0.1f, 2);
+    String jobKey = store.createJobKey(runKey, quantSet, 1, false);
+    Hashtable<String,Object> foreign = new Hashtable<String,Object>();
+    foreign.put(jobKey, new File(dir,"foreign"));
+    try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir,runKey+".results"))))){
+      out.writeInt(1);
+      out.writeObject(foreign);
+    }
+    assertNull(store.getStoredJob(runKey, jobKey));
+  }
+  
+  private QuantVO createQuantVO(double mass) throws HydroxylationEncodingException
+  {
+    return new QuantVO("XYZ", "34", 1, 0, "C42 H82 N1 O8 P1", mass, 1, "H", "H1", 5.5f, 0.5f, 0.5f,
+        new Vector<Double>(), new Vector<Double>(), 0, "");
+  }
+  
+  private Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> createHits(QuantVO quantSet) throws LipidCombinameEncodingException
+  {
+    LipidParameterSet set = new LipidParameterSet(758.57f, "34", 1, "H", 5.5d, "C42 H82 N1 O8 P1", "H1", 1, 0);
+    set.Area = 1500f;
+    ArrayList<CgProbe> probes = new ArrayList<CgProbe>();
+    for (int i=0; i!=2; i++){
+      CgProbe probe = new CgProbe(100+i,1);
+      probe.Area = 750f;
+      probes.add(probe);
+    }
+    set.setProbes(probes);
+    Vector<Vector<CgProbe>> isotopicProbes = new Vector<Vector<CgProbe>>();
+    isotopicProbes.add(new Vector<CgProbe>(probes));
+    set.setIsotopicProbes(isotopicProbes);
+    Hashtable<String,CgProbe> headFragments = new Hashtable<String,CgProbe>();
+    CgProbe fragment = new CgProbe(101,1);
+    fragment.Area = 200f;
+    headFragments.put("PO4", fragment);
+    Hashtable<Integer,Float> basePeakValues = new Hashtable<Integer,Float>();
+    basePeakValues.put(2, 1000f);
+    LipidomicsMSnSet msnSet = new LipidomicsMSnSet(set, LipidomicsMSnSet.HEAD_GROUP_DETECTED, headFragments, new Hashtable<String,IntensityRuleVO>(),
+        new Hashtable<String,Hashtable<String,CgProbe>>(), new Hashtable<String,Hashtable<String,IntensityChainVO>>(), new Vector<String>(),
+        new Hashtable<String,Double>(), new Hashtable<String,Hashtable<Integer,Integer>>(), new Hashtable<String,Hashtable<Integer,Vector<IntensityPositionVO>>>(),
+        0, basePeakValues, new Hashtable<Integer,LinkedHashMap<Integer,Float>>(), Settings.getFaHydroxyEncoding(), Settings.getLcbHydroxyEncoding());
+    Hashtable<String,LipidParameterSet> sets = new Hashtable<String,LipidParameterSet>();
+    sets.put("34:1", msnSet);
+    Hashtable<QuantVO,Hashtable<String,LipidParameterSet>> hits = new Hashtable<QuantVO,Hashtable<String,LipidParameterSet>>();
+    hits.put(quantSet, sets);
+    return hits;
+  }
+  
+  private static void delete(File file)
+  {
+    File[] files = file.listFiles();
+    if (files!=null){
+      for (File child : files) delete(child);
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,126 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.alex123;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Junit Test class for the DelimitedLineTokenizer: the columns are compared with the ones of String.split, which was used
+ * by the Alex123 parsers before
+ */
+class DelimitedLineTokenizerTest
+{
+  
+  @Test
+  @DisplayName("Empty lines, lines of delimiters, and leading, inner and trailing empty columns are split like by String.split")
+  void testEmptyColumns()
+  {
+    DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer('\t');
+    assertSameAsSplit(tokenizer, '\t', "");
+    assertSameAsSplit(tokenizer, '\t', "\t");
+    assertSameAsSplit(tokenizer, '\t', "\t\t\t");
+    assertSameAsSplit(tokenizer, '\t', "\ta");
+    assertSameAsSplit(tokenizer, '\t', "a\t\tb");
+    assertSameAsSplit(tokenizer, '\t', "a\tb\t\t");
+    assertSameAsSplit(tokenizer, '\t', " \t \t");
+    assertSameAsSplit(tokenizer, '\t', "single column");
+    assertEquals(1, tokenizer.tokenize(""));
+    assertEquals("", tokenizer.getColumn(0));
+    assertEquals(0, tokenizer.tokenize("\t\t"));
+  }
+  
+  @Test
+  @DisplayName("Quoted and escaped delimiters are split like by String.split - the target lists do not quote their columns")
+  void testQuotedAndEscaped()
+  {
+    DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer('\t');
+    assertSameAsSplit(tokenizer, '\t', "\"PC 34:1\tPC 16:0_18:1\"\t760.58");
+    assertSameAsSplit(tokenizer, '\t', "PC\\\t34:1\t\\\t");
+    assertSameAsSplit(tokenizer, '\t', "\"\"\t\"\t\"");
+    DelimitedLineTokenizer commas = new DelimitedLineTokenizer(',');
+    assertSameAsSplit(commas, ',', "\"a,b\",c\\,d,\"\",");
+    assertSameAsSplit(commas, ',', "a\tb,c");
+    assertEquals(3, tokenizer.tokenize("\"a\tb\"\tc"));
+    assertEquals("\"a", tokenizer.getColumn(0));
+    assertEquals("b\"", tokenizer.getColumn(1));
+  }
+  
+  @Test
+  @DisplayName("The trimmed columns are the same as the ones of String.trim")
+  void testTrimmedColumns()
+  {
+    DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer('\t');
+    assertSameAsSplit(tokenizer, '\t', "  PC \t\u0001 34:1\u0000\t   \t x");
+    assertSameAsSplit(tokenizer, '\t', " \t  a  ");
+  }
+  
+  @Test
+  @DisplayName("Lines with many columns, and a reused tokenizer give the same columns as String.split")
+  void testManyColumnsAndReuse()
+  {
+    DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer('\t');
+    StringBuilder line = new StringBuilder();
+    for (int i=0; i!=100; i++) line.append("column"+i+"\t");
+    assertSameAsSplit(tokenizer, '\t', line.toString());
+    assertSameAsSplit(tokenizer, '\t', "a\tb");
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> tokenizer.getColumn(2));
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> tokenizer.getTrimmedColumn(-1));
+  }
+  
+  @Test
+  @DisplayName("Random lines give the same columns as String.split")
+  void testRandomLines()
+  {
+    char[] chars = new char[]{'\t','\t',',','"','\\',' ','a','1','.'};
+    Random random = new Random(815l);
+    DelimitedLineTokenizer tabs = new DelimitedLineTokenizer('\t');
+    DelimitedLineTokenizer commas = new DelimitedLineTokenizer(',');
+    for (int i=0; i!=5000; i++){
+      char[] line = new char[random.nextInt(60)];
+      for (int j=0; j!=line.length; j++) line[j] = chars[random.nextInt(chars.length)];
+      assertSameAsSplit(tabs, '\t', new String(line));
+      assertSameAsSplit(commas, ',', new String(line));
+    }
+  }
+  
+  /**
+   * compares the columns of the tokenizer with the ones of String.split, and the trimmed columns with String.trim
+   */
+  private static void assertSameAsSplit(DelimitedLineTokenizer tokenizer, char delimiter, String line)
+  {
+    String[] columns = line.split(Pattern.quote(String.valueOf(delimiter)));
+    assertEquals(columns.length, tokenizer.tokenize(line), "column count of \""+line+"\"");
+    assertEquals(columns.length, tokenizer.getColumnCount());
+    for (int i=0; i!=columns.length; i++){
+      assertEquals(columns[i], tokenizer.getColumn(i), "column "+i+" of \""+line+"\"");
+      assertEquals(columns[i].trim(), tokenizer.getTrimmedColumn(i), "trimmed column "+i+" of \""+line+"\"");
+    }
+  }
+}
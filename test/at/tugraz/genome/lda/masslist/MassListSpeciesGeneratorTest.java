@@ -0,0 +1,246 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.masslist;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.Settings;
+import at.tugraz.genome.lda.exception.ChemicalFormulaException;
+import at.tugraz.genome.lda.masslist.MassListSpeciesGenerator.MassListSpecies;
+import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
+import at.tugraz.genome.lda.utils.StaticUtils;
+import at.tugraz.genome.lda.vos.AdductVO;
+
+/**
+ * Junit Test class for the MassListSpeciesGenerator; the generated species are compared to the ones
+ * of the enumeration of the MassListExporter before the MassListSpeciesGenerator.
+ */
+class MassListSpeciesGeneratorTest
+{
+	/** the tolerated deviation of the neutral masses*/
+	private final static double MASS_TOLERANCE = 0.000001d;
+	
+	private final static String[] PREFIXES = new String[]{"","O-","P-"};
+	
+	@Test
+	@DisplayName("The species of a class with three fatty acid chains correspond to the previous enumeration")
+	void testFattyAcidChains() throws Exception
+	{
+		ArrayList<FattyAcidVO> chainsFA = createSyntheticChains(LipidomicsConstants.CHAIN_TYPE_FA_ACYL, PREFIXES, 14, 20, 3, 0, 0);
+		LipidClassVO lClassVO = new LipidClassVO("TG", true, false, 0, 0, -1, -1, createAdducts(), "C3 H5", 42, 60, 0, 6, 3, 0, null, null);
+		assertSameSpecies(lClassVO, chainsFA, new ArrayList<FattyAcidVO>(), 0, 0);
+	}
+	
+	@Test
+	@DisplayName("The species of a class with a fatty acid chain and a long chain base correspond to the previous enumeration")
+	void testLongChainBases() throws Exception
+	{
+		ArrayList<FattyAcidVO> chainsFA = createSyntheticChains(LipidomicsConstants.CHAIN_TYPE_FA_ACYL, new String[]{""}, 14, 26, 4, 0, 1);
+		ArrayList<FattyAcidVO> chainsLCB = createSyntheticChains(LipidomicsConstants.CHAIN_TYPE_LCB, new String[]{"","t"}, 16, 20, 2, 2, 3);
+		LipidClassVO lClassVO = new LipidClassVO("SM", true, false, 2, 4, -1, -1, createAdducts(), "C5 H13 N1 O3 P1", 30, 46, 0, 6, 1, 1, null, null);
+		assertSameSpecies(lClassVO, chainsFA, chainsLCB, 2, 4);
+	}
+	
+	@Test
+	@DisplayName("There are no species for combinations that cannot be formed by the chains")
+	void testNoCombination() throws Exception
+	{
+		ArrayList<FattyAcidVO> chainsFA = createSyntheticChains(LipidomicsConstants.CHAIN_TYPE_FA_ACYL, PREFIXES, 12, 22, 6, 0, 0);
+		LipidClassVO lClassVO = new LipidClassVO("DG", true, false, 0, 0, -1, -1, createAdducts(), "C3 H6 O1", 24, 44, 0, 12, 2, 0, null, null);
+		MassListSpeciesGenerator generator = new MassListSpeciesGenerator(lClassVO, chainsFA, new ArrayList<FattyAcidVO>());
+		assertEquals(0, generator.generateSpecies(23, 0, 0).size());
+		assertEquals(0, generator.generateSpecies(36, 13, 0).size());
+		assertEquals(0, generator.generateSpecies(36, 2, 1).size());
+	}
+	
+	private void assertSameSpecies(LipidClassVO lClassVO, ArrayList<FattyAcidVO> chainsFA, ArrayList<FattyAcidVO> chainsLCB, int ohFrom, int ohTo)
+			throws Exception
+	{
+		MassListSpeciesGenerator generator = new MassListSpeciesGenerator(lClassVO, chainsFA, chainsLCB);
+		int nrOfSpecies = 0;
+		for (int i=lClassVO.getMinChainC(); i<=lClassVO.getMaxChainC(); i++)
+		{
+			for (int j=lClassVO.getMinChainDB(); j<=lClassVO.getMaxChainDB(); j++)
+			{
+				for (int k=ohFrom; k<=ohTo; k++)
+				{
+					String id = i+":"+j+";"+k;
+					Hashtable<String,Hashtable<String,Integer>> expected = computeElementsFromChains(lClassVO, 
+							getPossCombis(lClassVO.getNumberOfFAChains(), lClassVO.getNumberOfLCBChains(), i, j, k, chainsFA, chainsLCB, new ArrayList<FattyAcidVO>()));
+					ArrayList<MassListSpecies> species = generator.generateSpecies(i, j, k);
+					assertEquals(expected.size(), species.size(), id+": number of species");
+					for (MassListSpecies spec : species)
+					{
+						assertTrue(expected.containsKey(spec.getLabel()), id+": unexpected label "+spec.getLabel());
+						Hashtable<String,Integer> expectedElements = expected.get(spec.getLabel());
+						assertEquals(StaticUtils.getFormulaInHillNotation(expectedElements, false),
+								StaticUtils.getFormulaInHillNotation(generator.getElements(spec), false), spec.getLabel()+id);
+						assertEquals(getMonoMass(expectedElements), generator.getNeutralMass(spec), MASS_TOLERANCE, spec.getLabel()+id);
+					}
+					nrOfSpecies += species.size();
+				}
+			}
+		}
+		assertTrue(nrOfSpecies>0);
+		assertEquals(nrOfSpecies, generator.generateSpecies(ohFrom, ohTo).size());
+	}
+	
+	private static ArrayList<AdductVO> createAdducts() throws ChemicalFormulaException
+	{
+		ArrayList<AdductVO> adducts = new ArrayList<AdductVO>();
+		adducts.add(new AdductVO("NH4", "N1 H4", 1, null));
+		return adducts;
+	}
+	
+	private static double getMonoMass(Hashtable<String,Integer> elements) throws Exception
+	{
+		double mass = 0d;
+		for (String element : elements.keySet())
+			mass += Settings.getElementParser().getElementDetails(element).getMonoMass()*elements.get(element);
+		return mass;
+	}
+	
+	/**
+	 * generates a chain list with every prefix for every carbon atom, double bond and hydroxylation combination
+	 */
+	private static ArrayList<FattyAcidVO> createSyntheticChains(short chainType, String[] prefixes, int minC, int maxC, int maxDB, int minOH, int maxOH)
+	{
+		ArrayList<FattyAcidVO> chains = new ArrayList<FattyAcidVO>();
+		for (String prefix : prefixes)
+		{
+			for (int c=minC; c<=maxC; c++)
+			{
+				for (int db=0; db<=maxDB && db<c/2; db++)
+				{
+					for (int oh=minOH; oh<=maxOH; oh++)
+					{
+						int hydrogens = 2*c-2*db;
+						int oxygens = 2+oh;
+						if (prefix.equals("O-"))
+						{
+							hydrogens += 2;
+							oxygens -= 1;
+						}
+						else if (prefix.equals("P-"))
+						{
+							oxygens -= 1;
+						}
+						String formula = "C"+c+" H"+hydrogens+" O"+oxygens;
+						chains.add(new FattyAcidVO(chainType, prefix, c, db, oh, 0d, formula, ""));
+					}
+				}
+			}
+		}
+		return chains;
+	}
+	
+	/**
+	 * the enumeration of the MassListExporter before the MassListSpeciesGenerator
+	 */
+	private static ArrayList<ArrayList<FattyAcidVO>> getPossCombis(int numberOfFAChains, int numberOfLCBChains, int cAtoms, int dbs, int oxNum, 
+			ArrayList<FattyAcidVO> fas, ArrayList<FattyAcidVO> lcbs, ArrayList<FattyAcidVO> added)
+	{
+		ArrayList<ArrayList<FattyAcidVO>> combis = new ArrayList<ArrayList<FattyAcidVO>>();
+		int totalChains = numberOfFAChains + numberOfLCBChains;
+		ArrayList<FattyAcidVO> toIterate = fas;
+		int faMinus = 1;
+		int lcbMinus = 0;
+		if (numberOfFAChains == 0 && totalChains>0)
+		{
+			toIterate = lcbs;
+			faMinus = 0;
+			lcbMinus = 1;
+		}
+		int maxC = cAtoms;
+		int maxD = dbs;
+		int maxO = oxNum;
+		for (FattyAcidVO fa : added)
+		{
+			maxC -= fa.getcAtoms();
+			maxD -= fa.getDoubleBonds();
+			maxO -= fa.getOhNumber();
+		}
+		for (FattyAcidVO fa : toIterate)
+		{
+			if (fa.getcAtoms()<=maxC && fa.getDoubleBonds()<=maxD && fa.getOhNumber()<=maxO)
+			{
+				ArrayList<FattyAcidVO> toAdd = new ArrayList<FattyAcidVO>(added);
+				toAdd.add(fa);
+				if (totalChains>1)
+				{
+					combis.addAll(getPossCombis(numberOfFAChains-faMinus, numberOfLCBChains-lcbMinus, cAtoms, dbs, oxNum, fas, lcbs, toAdd));
+				}
+				else if (fa.getcAtoms()==maxC && fa.getDoubleBonds()==maxD && fa.getOhNumber()==maxO)
+				{
+					combis.add(toAdd);
+				}
+			}
+		}
+		return combis;
+	}
+	
+	/**
+	 * the calculation of the elemental compositions of the MassListExporter before the MassListSpeciesGenerator
+	 */
+	private static Hashtable<String,Hashtable<String,Integer>> computeElementsFromChains(LipidClassVO lClassVO, ArrayList<ArrayList<FattyAcidVO>> filtered) 
+			throws Exception
+	{
+		Hashtable<String,Hashtable<String,Integer>> labelElements = new Hashtable<String,Hashtable<String,Integer>>();
+		for (ArrayList<FattyAcidVO> comb : filtered)
+		{
+			Vector<String> labels = new Vector<String>();
+			Hashtable<String,Integer> combElements = new Hashtable<String,Integer>(lClassVO.getHeadgroupFormula());
+			for (FattyAcidVO fa : comb)
+			{
+				Hashtable<String,Integer> formula = StaticUtils.categorizeFormula(fa.getFormula(), true);
+				for (String element : formula.keySet())
+				{
+					if (!combElements.containsKey(element)) combElements.put(element, 0);
+					combElements.put(element, combElements.get(element) + formula.get(element));
+				}
+				combElements.put("H", combElements.get("H")-1);
+				labels.add(fa.getPrefix());
+			}
+			Collections.sort(labels);
+			StringBuilder builder = new StringBuilder();
+			for (String label : labels) builder.append(label);
+			String labelID = builder.toString();
+			if (lClassVO.getNumberOfLCBChains()>0)
+			{
+				combElements.put("H", combElements.get("H")-lClassVO.getNumberOfFAChains());
+				combElements.put("O", combElements.get("O")-lClassVO.getNumberOfFAChains());
+			}
+			labelElements.put(labelID, combElements);
+		}
+		return labelElements;
+	}
+}
@@ -0,0 +1,178 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.msn;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.msn.vos.FragmentRuleVO;
+import at.tugraz.genome.lda.msn.vos.FragmentVO;
+import at.tugraz.genome.lda.utils.StaticUtils;
+
+/**
+ * Junit Test class for the FragmentTable: identity of the tables, reading of stored tables, and release of the mapped table files
+ */
+class FragmentTableTest
+{
+  private final static String RULE_FILE = "PC_H"+StaticUtils.RULE_FILE_SUFFIX;
+  
+  private File dir;
+  private File massList;
+  private File tableDir;
+  
+  @BeforeEach
+  void init() throws IOException
+  {
+    dir = Files.createTempDirectory("fragmentTable").toFile();
+    massList = new File(dir,"massList.txt");
+    Files.write(massList.toPath(), "PC\n".getBytes(StandardCharsets.UTF_8));
+    tableDir = new File(dir,"tables");
+  }
+  
+  @AfterEach
+  void cleanUp()
+  {
+    delete(dir);
+  }
+  
+  @Test
+  @DisplayName("The table is keyed on the rules directory passed by the caller")
+  void testRulesDirIdentity() throws IOException
+  {
+    File rulesDir = createRulesDir("rules");
+    FragmentTable table = getTable(rulesDir);
+    assertSame(table, getTable(rulesDir));
+    assertNotSame(table, getTable(createRulesDir("otherRules")));
+    //without a rules directory, the table is not stored and not shared
+    assertNotSame(FragmentTable.getInstance(massList.getAbsolutePath(), null, tableDir),
+        FragmentTable.getInstance(massList.getAbsolutePath(), null, tableDir));
+  }
+  
+  @Test
+  @DisplayName("A stored table is read again, and the mapped table file is released when all entries are decoded")
+  void testStoreAndRead() throws IOException
+  {
+    File rulesDir = createRulesDir("rules");
+    FragmentTable table = getTable(rulesDir);
+    table.putFragments("head", createFragments("head",184.07d));
+    table.putFragments("chain", createFragments("chain",255.23d));
+    table.store();
+    assertFalse(table.isTableFileMapped());
+    //a changed rule file replaces the table
+    writeRuleFile(rulesDir,"[GENERAL]");
+    FragmentTable changed = getTable(rulesDir);
+    assertNotSame(table, changed);
+    assertEquals(0, changed.size());
+    //with the original rule file, the stored table is read
+    writeRuleFile(rulesDir,"");
+    FragmentTable reread = getTable(rulesDir);
+    assertEquals(2, reread.size());
+    assertTrue(reread.isTableFileMapped());
+    assertEquals(184.07d, reread.getFragments("head").get(true).get(0).getMass());
+    assertTrue(reread.isTableFileMapped());
+    assertEquals(255.23d, reread.getFragments("chain").get(true).get(0).getMass());
+    assertFalse(reread.isTableFileMapped());
+    assertEquals(2, reread.size());
+    assertNull(reread.getFragments("unknown"));
+  }
+  
+  @Test
+  @DisplayName("An evicted table releases its mapped file, and keeps the stored entries when it is stored again")
+  void testEviction() throws IOException
+  {
+    File rulesDir = createRulesDir("rules");
+    FragmentTable table = getTable(rulesDir);
+    table.putFragments("head", createFragments("head",184.07d));
+    table.putFragments("chain", createFragments("chain",255.23d));
+    table.store();
+    writeRuleFile(rulesDir,"[GENERAL]");
+    getTable(rulesDir);
+    writeRuleFile(rulesDir,"");
+    FragmentTable reread = getTable(rulesDir);
+    assertTrue(reread.isTableFileMapped());
+    for (int i=0; i!=4; i++) getTable(createRulesDir("otherRules"+i));
+    assertFalse(reread.isTableFileMapped());
+    assertNull(reread.getFragments("head"));
+    reread.putFragments("other", createFragments("other",300.5d));
+    reread.store();
+    FragmentTable next = getTable(rulesDir);
+    assertNotSame(reread, next);
+    assertEquals(3, next.size());
+    assertEquals(255.23d, next.getFragments("chain").get(true).get(0).getMass());
+  }
+  
+  private FragmentTable getTable(File rulesDir)
+  {
+    return FragmentTable.getInstance(massList.getAbsolutePath(), rulesDir.getAbsolutePath(), tableDir);
+  }
+  
+  private File createRulesDir(String name) throws IOException
+  {
+    File rulesDir = new File(dir,name);
+    rulesDir.mkdir();
+    writeRuleFile(rulesDir,"");
+    return rulesDir;
+  }
+  
+  /**
+   * writes the rule file with a fixed modification time - the identity of the table depends on the content only
+   */
+  private void writeRuleFile(File rulesDir, String content) throws IOException
+  {
+    File ruleFile = new File(rulesDir,RULE_FILE);
+    Files.write(ruleFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    ruleFile.setLastModified(1000000l);
+    rulesDir.setLastModified(1000000l);
+  }
+  
+  private Hashtable<Boolean,Vector<FragmentVO>> createFragments(String name, double mass)
+  {
+    Hashtable<Boolean,Vector<FragmentVO>> fragments = new Hashtable<Boolean,Vector<FragmentVO>>();
+    Vector<FragmentVO> mandatory = new Vector<FragmentVO>();
+    mandatory.add(new FragmentVO(name, mass, "P1 O4 H2", 1, 2, FragmentRuleVO.MANDATORY_TRUE));
+    fragments.put(true, mandatory);
+    fragments.put(false, new Vector<FragmentVO>());
+    return fragments;
+  }
+  
+  private static void delete(File file)
+  {
+    File[] files = file.listFiles();
+    if (files!=null){
+      for (File child : files) delete(child);
+    }
+    file.delete();
+  }
+}
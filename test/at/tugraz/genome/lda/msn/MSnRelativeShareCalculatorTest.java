@@ -0,0 +1,164 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.msn;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.LipidomicsConstants;
+import at.tugraz.genome.lda.exception.LipidCombinameEncodingException;
+import at.tugraz.genome.lda.msn.ShareFitRecorder.RecordedFit;
+import at.tugraz.genome.lda.msn.vos.FattyAcidVO;
+import at.tugraz.genome.lda.msn.vos.MSnDebugVO;
+import at.tugraz.genome.lda.utils.StaticUtils;
+import at.tugraz.genome.maspectras.quantification.CgProbe;
+
+/**
+ * Junit Test class for the MSnRelativeShareCalculator and the recording of its share fits by the ShareFitRecorder
+ */
+class MSnRelativeShareCalculatorTest
+{
+  /** the chains of the combinations; every combination contains one chain, that is not contained in any other one*/
+  private final static int[][] COMBINATIONS = new int[][]{{16,0,18,1,18,2},{16,0,18,1,20,4},{18,1,18,2,22,6}};
+  
+  File recordingFile;
+  
+  @AfterEach
+  void cleanup()
+  {
+    ShareFitRecorder.setRecordingFile(null);
+    if (recordingFile!=null)
+      recordingFile.delete();
+  }
+  
+  @Test
+  @DisplayName("The intensities are split according to the chain intensities")
+  void testSplitIntensities() throws LipidCombinameEncodingException
+  {
+    Hashtable<String,Vector<FattyAcidVO>> combiFAs = createCombinations();
+    //the combinations are present in the ratio 1:2:3
+    Hashtable<String,Hashtable<String,CgProbe>> chainFragments = createChainFragments(new float[]{3f,6f,4f,2f,3f});
+    MSnRelativeShareCalculator calculator = new MSnRelativeShareCalculator(combiFAs,chainFragments,0.01d,false,null);
+    calculator.splitIntensities();
+    Hashtable<String,Double> shares = calculator.getRelativeIntensities();
+    assertEquals(3, shares.size());
+    Vector<String> names = getCombinationNames();
+    assertEquals(1d/6d, shares.get(names.get(0)), 0.000001d);
+    assertEquals(2d/6d, shares.get(names.get(1)), 0.000001d);
+    assertEquals(3d/6d, shares.get(names.get(2)), 0.000001d);
+  }
+  
+  @Test
+  @DisplayName("Without any chain intensity the intensity is split equally")
+  void testNoChainIntensities() throws LipidCombinameEncodingException
+  {
+    MSnDebugVO debugVO = new MSnDebugVO();
+    MSnRelativeShareCalculator calculator = new MSnRelativeShareCalculator(createCombinations(),createChainFragments(new float[5]),0.01d,true,debugVO);
+    calculator.splitIntensities();
+    Hashtable<String,Double> shares = calculator.getRelativeIntensities();
+    assertEquals(3, shares.size());
+    for (Double share : shares.values())
+      assertEquals(1d/3d, share, 0.000001d);
+  }
+  
+  @Test
+  @DisplayName("The share fits are recorded and read back unchanged")
+  void testRecording() throws LipidCombinameEncodingException, IOException
+  {
+    recordingFile = File.createTempFile("shareFits", ".txt");
+    ShareFitRecorder.setRecordingFile(recordingFile.getAbsolutePath());
+    float[] chainIntensities = new float[]{3f,6f,4f,2f,3f};
+    new MSnRelativeShareCalculator(createCombinations(),createChainFragments(chainIntensities),0.01d,false,null).splitIntensities();
+    ShareFitRecorder.setRecordingFile(null);
+    new MSnRelativeShareCalculator(createCombinations(),createChainFragments(chainIntensities),0.01d,false,null).splitIntensities();
+    Vector<RecordedFit> fits = ShareFitRecorder.read(recordingFile.getAbsolutePath());
+    assertEquals(1, fits.size());
+    RecordedFit fit = fits.get(0);
+    float[] observations = fit.getObservations().clone();
+    Arrays.sort(observations);
+    float[] expected = chainIntensities.clone();
+    Arrays.sort(expected);
+    assertArrayEquals(expected, observations);
+    assertEquals(COMBINATIONS.length, fit.getChainIndices().length);
+    for (int i=0; i!=COMBINATIONS.length; i++){
+      float chains = 0f;
+      for (float count : fit.getChainCounts()[i]) chains += count;
+      assertEquals(3f, chains);
+      assertEquals(fit.getChainIndices()[i].length, fit.getChainCounts()[i].length);
+    }
+  }
+  
+  private Hashtable<String,Vector<FattyAcidVO>> createCombinations()
+  {
+    Hashtable<String,Vector<FattyAcidVO>> combiFAs = new Hashtable<String,Vector<FattyAcidVO>>();
+    for (int[] combi : COMBINATIONS){
+      Vector<FattyAcidVO> chains = new Vector<FattyAcidVO>();
+      for (int i=0; i!=combi.length; i+=2) chains.add(createChain(combi[i],combi[i+1]));
+      combiFAs.put(StaticUtils.encodeLipidCombi(chains), chains);
+    }
+    return combiFAs;
+  }
+  
+  private Vector<String> getCombinationNames()
+  {
+    Vector<String> names = new Vector<String>();
+    for (int[] combi : COMBINATIONS){
+      Vector<FattyAcidVO> chains = new Vector<FattyAcidVO>();
+      for (int i=0; i!=combi.length; i+=2) chains.add(createChain(combi[i],combi[i+1]));
+      names.add(StaticUtils.encodeLipidCombi(chains));
+    }
+    return names;
+  }
+  
+  /**
+   * @param intensities the intensities of the chains 16:0, 18:1, 18:2, 20:4, 22:6 in this sequence
+   */
+  private Hashtable<String,Hashtable<String,CgProbe>> createChainFragments(float[] intensities)
+  {
+    int[][] chains = new int[][]{{16,0},{18,1},{18,2},{20,4},{22,6}};
+    Hashtable<String,Hashtable<String,CgProbe>> chainFragments = new Hashtable<String,Hashtable<String,CgProbe>>();
+    for (int i=0; i!=chains.length; i++){
+      CgProbe probe = new CgProbe(0,1);
+      probe.Area = intensities[i];
+      Hashtable<String,CgProbe> fragments = new Hashtable<String,CgProbe>();
+      fragments.put("-FA", probe);
+      chainFragments.put(createChain(chains[i][0],chains[i][1]).getChainId(), fragments);
+    }
+    return chainFragments;
+  }
+  
+  private FattyAcidVO createChain(int cAtoms, int doubleBonds)
+  {
+    return new FattyAcidVO(LipidomicsConstants.CHAIN_TYPE_FA_ACYL, "", cAtoms, doubleBonds, 0, -1d, null, "");
+  }
+}
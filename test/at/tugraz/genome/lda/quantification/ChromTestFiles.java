@@ -0,0 +1,122 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.quantification;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+
+import at.tugraz.genome.lda.xml.RawToChromTranslator;
+import at.tugraz.genome.maspectras.quantification.CgException;
+import at.tugraz.genome.maspectras.utils.StringUtils;
+
+/**
+ * Creates small chrom files for the Junit tests of the quantification: a synthetic mzXML file is written and translated
+ */
+class ChromTestFiles
+{
+  /** the lowest m/z value of the MS1 scans - the first line of the chromatogram file*/
+  final static float LOWEST_MZ = 400f;
+  /** the highest m/z value of the MS1 scans*/
+  final static float HIGHEST_MZ = 1000f;
+  /** the multiplication factor for the integer m/z values of the chromatogram lines*/
+  final static int MULTIPLICATION_FACTOR = 1000;
+  /** the lowest resolution of the chromatogram lines*/
+  final static int LOWEST_RESOLUTION = 1;
+  
+  /**
+   * writes an mzXML file with MS1 scans and precursor fragmentation MS2 scans, and translates it
+   * @param dir the directory for the files
+   * @param ms1Peaks the peaks of the MS1 scans; first index: scan; second index: m/z and intensity alternating
+   * @param ms2Peaks the peaks of the MS2 scans following the MS1 scans; null for an MS1 scan without MS2 scan
+   * @param precursorMz the precursor m/z of the MS2 scans
+   * @return the paths of the chrom files: [0] chromatogram file; [1] header file; [2] index file; [3] retention time file
+   * @throws IOException if the mzXML file cannot be written
+   * @throws CgException if the translation fails
+   */
+  static String[] createChrom(File dir, float[][] ms1Peaks, float[][] ms2Peaks, float precursorMz) throws IOException, CgException
+  {
+    int nrOfScans = ms1Peaks.length;
+    for (float[] peaks : ms2Peaks){
+      if (peaks!=null) nrOfScans++;
+    }
+    StringBuilder mzXML = new StringBuilder("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n");
+    mzXML.append("<mzXML xmlns=\"http://sashimi.sourceforge.net/schema_revision/mzXML_3.2\">\n");
+    mzXML.append("<msRun scanCount=\""+nrOfScans+"\" startTime=\"PT1S\" endTime=\"PT"+(ms1Peaks.length*2)+"S\">\n");
+    int num = 1;
+    for (int i=0; i!=ms1Peaks.length; i++){
+      float rt = getMs1Rt(i);
+      mzXML.append("<scan num=\""+(num++)+"\" msLevel=\"1\" peaksCount=\""+(ms1Peaks[i].length/2)+"\" polarity=\"+\" retentionTime=\"PT"+rt+
+          "S\" lowMz=\""+LOWEST_MZ+"\" highMz=\""+HIGHEST_MZ+"\">\n");
+      mzXML.append(encodePeaks(ms1Peaks[i]));
+      if (ms2Peaks[i]!=null){
+        mzXML.append("<scan num=\""+(num++)+"\" msLevel=\"2\" peaksCount=\""+(ms2Peaks[i].length/2)+"\" polarity=\"+\" retentionTime=\"PT"+(rt+1f)+
+            "S\" lowMz=\"100\" highMz=\""+precursorMz+"\">\n");
+        mzXML.append("<precursorMz precursorIntensity=\"1000\">"+precursorMz+"</precursorMz>\n");
+        mzXML.append(encodePeaks(ms2Peaks[i]));
+        mzXML.append("</scan>\n");
+      }
+      mzXML.append("</scan>\n");
+    }
+    mzXML.append("</msRun>\n</mzXML>\n");
+    File file = new File(dir,"test.mzXML");
+    Files.write(file.toPath(), mzXML.toString().getBytes(StandardCharsets.ISO_8859_1));
+    RawToChromTranslator translator = new RawToChromTranslator(file.getAbsolutePath(),"mzXML",100,1,MULTIPLICATION_FACTOR,LOWEST_RESOLUTION,true);
+    translator.translateToChromatograms();
+    return StringUtils.getChromFilePaths(new File(dir,"test.chrom").getAbsolutePath());
+  }
+  
+  /**
+   * @param scan the number of the MS1 scan
+   * @return the retention time of the MS1 scan in seconds; the MS2 scan following the MS1 scan is one second later
+   */
+  static float getMs1Rt(int scan)
+  {
+    return 1f+scan*2f;
+  }
+  
+  /**
+   * deletes a directory recursively
+   * @param file the directory
+   */
+  static void delete(File file)
+  {
+    File[] files = file.listFiles();
+    if (files!=null){
+      for (File child : files) delete(child);
+    }
+    file.delete();
+  }
+  
+  private static String encodePeaks(float[] peaks)
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(peaks.length*4);
+    for (float value : peaks) buffer.putFloat(value);
+    return "<peaks precision=\"32\" byteOrder=\"network\" pairOrder=\"m/z-int\">"+Base64.getEncoder().encodeToString(buffer.array())+"</peaks>\n";
+  }
+}
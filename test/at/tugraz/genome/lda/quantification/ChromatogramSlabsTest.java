@@ -0,0 +1,206 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.quantification;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import at.tugraz.genome.maspectras.quantification.ChromatogramReader;
+import at.tugraz.genome.maspectras.utils.Calculator;
+import at.tugraz.genome.util.index.IndexFileException;
+
+/**
+ * Junit Test class for the ChromatogramSlabs and LipidomicsChromReader.getLineNumber: the lines served from the slabs are compared
+ * with the ones read from the file, and the line numbers with the calculation of the ChromatogramReader
+ */
+class ChromatogramSlabsTest
+{
+  private final static String UNIT = "PC 34:1";
+  
+  private File dir;
+  private String[] paths;
+  /** the number of times the lines were read from the file by the reader*/
+  private AtomicInteger fileReads;
+  private LipidomicsChromReader reader;
+  
+  @BeforeEach
+  void init() throws Exception
+  {
+    dir = Files.createTempDirectory("chromatogramSlabs").toFile();
+    float[][] ms1Peaks = new float[10][];
+    float[][] ms2Peaks = new float[10][];
+    for (int i=0; i!=ms1Peaks.length; i++)
+      ms1Peaks[i] = new float[]{500f,100f+i, 500.001f,200f+i, 500.002f,300f+i, 760.5f,1000f+i, 999.999f,10f};
+    paths = ChromTestFiles.createChrom(dir, ms1Peaks, ms2Peaks, 760.5f);
+    fileReads = new AtomicInteger(0);
+    reader = new LipidomicsChromReader(paths[1],paths[2],paths[3],paths[0],false,0f,false){
+      public String[] readLines(int startLine, int stopLine) throws IndexFileException{
+        fileReads.incrementAndGet();
+        return super.readLines(startLine, stopLine);
+      }
+    };
+  }
+  
+  @AfterEach
+  void cleanUp()
+  {
+    ChromTestFiles.delete(dir);
+  }
+  
+  @Test
+  @DisplayName("The line numbers are rounded down like by the ChromatogramReader - also next to the line borders")
+  void testLineNumbers() throws Exception
+  {
+    Method superLineNumber = ChromatogramReader.class.getDeclaredMethod("getLineNumber", float.class);
+    superLineNumber.setAccessible(true);
+    Random random = new Random(1234l);
+    for (int i=0; i!=20000; i++){
+      float mz;
+      if (i%4==0)
+        mz = ChromTestFiles.LOWEST_MZ+random.nextFloat()*(ChromTestFiles.HIGHEST_MZ-ChromTestFiles.LOWEST_MZ);
+      else{
+        //the m/z values of the line borders, and their neighbouring float values
+        mz = (random.nextInt(800000)+300000)/(float)ChromTestFiles.MULTIPLICATION_FACTOR;
+        if (i%4==1) mz = Math.nextDown(mz);
+        else if (i%4==2) mz = Math.nextUp(mz);
+      }
+      int expected = (Integer)superLineNumber.invoke(reader, mz);
+      assertEquals(expected, reader.getLineNumber(mz), "m/z "+mz);
+      assertEquals(calculateLineNumberLikeBefore(mz), reader.getLineNumber(mz), "m/z "+mz);
+    }
+    assertEquals(0, reader.getLineNumber(ChromTestFiles.LOWEST_MZ));
+    assertEquals(100000, reader.getLineNumber(500f));
+    assertEquals(99999, reader.getLineNumber(Math.nextDown(500f)));
+    assertTrue(reader.getLineNumber(Math.nextDown(ChromTestFiles.LOWEST_MZ))<0);
+  }
+  
+  @Test
+  @DisplayName("The lines of a slab are the same as the ones read from the file, and a slab is read once")
+  void testSlabLines() throws Exception
+  {
+    ChromatogramSlabs slabs = new ChromatogramSlabs();
+    slabs.plan(UNIT, ranges(new int[]{99990,100010}));
+    assertFalse(slabs.isEmpty());
+    int[][] requests = new int[][]{{99990,100010},{99990,99991},{100009,100010},{100000,100003},{100005,100005}};
+    for (int[] request : requests){
+      String[] expected = reader.readLines(request[0], request[1]);
+      assertArrayEquals(expected, slabs.getLines(request[0], request[1], reader), request[0]+"-"+request[1]);
+    }
+    assertEquals(requests.length+1, fileReads.get());
+    //requests that are not covered completely by a slab are not served
+    assertNull(slabs.getLines(99989, 100000, reader));
+    assertNull(slabs.getLines(100000, 100011, reader));
+    assertNull(slabs.getLines(200000, 200001, reader));
+    slabs.release(UNIT);
+    assertTrue(slabs.isEmpty());
+    assertNull(slabs.getLines(100000, 100003, reader));
+  }
+  
+  @Test
+  @DisplayName("Empty, inverted and too large ranges are not planned; a negative start is moved to the first line, and a slab exceeding the file ends with it")
+  void testPlanning() throws Exception
+  {
+    ChromatogramSlabs slabs = new ChromatogramSlabs();
+    slabs.plan(UNIT, ranges(new int[]{100,100}, new int[]{200,150}, new int[]{0,4001}));
+    assertTrue(slabs.isEmpty());
+    slabs.plan(UNIT, ranges(new int[]{-5,10}, new int[]{1000,5000}));
+    assertArrayEquals(reader.readLines(0, 3), slabs.getLines(0, 3, reader));
+    assertArrayEquals(reader.readLines(4990, 5000), slabs.getLines(4990, 5000, reader));
+    assertNull(slabs.getLines(0, 11, reader));
+    int lastLine = reader.getLineNumber(ChromTestFiles.HIGHEST_MZ);
+    slabs.plan("end", ranges(new int[]{lastLine-10,lastLine+10}));
+    for (int[] request : new int[][]{{lastLine-10,lastLine+10},{lastLine-5,lastLine+1},{lastLine+1,lastLine+5}})
+      assertArrayEquals(reader.readLines(request[0], request[1]), slabs.getLines(request[0], request[1], reader), request[0]+"-"+request[1]);
+  }
+  
+  @Test
+  @DisplayName("The reader serves the m/z ranges of the slabs - at the slab borders, too - like without the slabs")
+  void testReaderWithSlabs() throws Exception
+  {
+    LipidomicsChromReader plainReader = new LipidomicsChromReader(paths[1],paths[2],paths[3],paths[0],false,0f,false);
+    ChromatogramSlabs slabs = new ChromatogramSlabs();
+    slabs.plan(UNIT, ranges(new int[]{reader.getLineNumber(499.99f),reader.getLineNumber(500.01f)}));
+    reader.setChromatogramSlabs(slabs);
+    float[][] ranges = new float[][]{{499.99f,500.01f},{500f,500.002f},{500.001f,500.001f},{Math.nextUp(499.99f),Math.nextDown(500.01f)},
+      {499.98f,500.005f},{500.005f,500.02f},{760f,761f}};
+    for (float[] range : ranges)
+      assertArrayEquals(plainReader.getRawLines(range[0], range[1]), reader.getRawLines(range[0], range[1]), range[0]+"-"+range[1]);
+    //the slab is read once; the two ranges exceeding the slab and the one of another m/z are read from the file
+    assertEquals(4, fileReads.get());
+  }
+  
+  @Test
+  @DisplayName("A slab requested by several threads at the same time is read once")
+  void testConcurrentRequests() throws Exception
+  {
+    ChromatogramSlabs slabs = new ChromatogramSlabs();
+    slabs.plan(UNIT, ranges(new int[]{100000,103000}));
+    String[] expected = reader.readLines(100500, 102500);
+    fileReads.set(0);
+    Vector<Throwable> errors = new Vector<Throwable>();
+    Thread[] threads = new Thread[8];
+    for (int i=0; i!=threads.length; i++){
+      threads[i] = new Thread(() -> {
+        try{
+          assertArrayEquals(expected, slabs.getLines(100500, 102500, reader));
+        }catch (Throwable t){
+          errors.add(t);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) thread.join();
+    assertTrue(errors.isEmpty(), errors.toString());
+    assertEquals(1, fileReads.get());
+  }
+  
+  /**
+   * the calculation of LipidomicsChromReader.getLineNumber before the deprecated rounding was replaced
+   */
+  @SuppressWarnings("deprecation")
+  private int calculateLineNumberLikeBefore(float mz)
+  {
+    return Math.round(Calculator.roundFloat(mz*(reader.getMultiplicationFactorForInt_()/reader.getLowestResolution_()), 0,BigDecimal.ROUND_DOWN))-
+        reader.getLowestMz_()/reader.getLowestResolution_();
+  }
+  
+  private static Vector<int[]> ranges(int[]... ranges)
+  {
+    Vector<int[]> lineRanges = new Vector<int[]>();
+    for (int[] range : ranges) lineRanges.add(range);
+    return lineRanges;
+  }
+}
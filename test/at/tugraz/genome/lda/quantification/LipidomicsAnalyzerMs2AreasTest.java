@@ -0,0 +1,176 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.quantification;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.msn.vos.FragmentRuleVO;
+import at.tugraz.genome.lda.msn.vos.FragmentVO;
+import at.tugraz.genome.maspectras.quantification.CgAreaStatus;
+import at.tugraz.genome.maspectras.quantification.CgProbe;
+
+/**
+ * Junit Test class for LipidomicsAnalyzer.calculateMs2Areas: the merge-join of all fragments of one spectrum has to
+ * return the same probes as quantifying each fragment with calculateMs2Area
+ */
+class LipidomicsAnalyzerMs2AreasTest
+{
+  private final static float PRECURSOR_MZ = 760.5f;
+  private final static int NR_OF_SCANS = 30;
+  
+  private File dir;
+  private LipidomicsAnalyzer analyzer;
+  
+  @BeforeEach
+  void init() throws Exception
+  {
+    dir = Files.createTempDirectory("ms2Areas").toFile();
+    float[][] ms1Peaks = new float[NR_OF_SCANS][];
+    float[][] ms2Peaks = new float[NR_OF_SCANS][];
+    for (int i=0; i!=NR_OF_SCANS; i++){
+      ms1Peaks[i] = new float[]{500f,100f+i, PRECURSOR_MZ,1000f*(15-Math.abs(15-i)), 900f,50f};
+      //some MS1 scans are not followed by an MS2 scan
+      if (i%7==3) continue;
+      //the peaks are not sorted by m/z; 183.87 and 184.27 are at the borders of the extraction window of 184.07
+      ms2Peaks[i] = new float[]{283.26f,300f+i, 184.07f,500f+10f*i, 265.25f,20f+i, 283.27f,7f, 184.27f,11f, 183.87f,13f,
+          184.07f,3f, 150.5f,1f+i%3};
+    }
+    //a scan with sorted peaks
+    ms2Peaks[10] = new float[]{150.5f,2f, 184.07f,40f, 265.25f,50f, 283.26f,60f};
+    String[] paths = ChromTestFiles.createChrom(dir, ms1Peaks, ms2Peaks, PRECURSOR_MZ);
+    analyzer = new LipidomicsAnalyzer(paths[1],paths[2],paths[3],paths[0],false);
+    analyzer.prepareMSnSpectraCache(PRECURSOR_MZ-0.5f, PRECURSOR_MZ+0.5f, 0f, 1000f);
+  }
+  
+  @AfterEach
+  void cleanUp()
+  {
+    ChromTestFiles.delete(dir);
+  }
+  
+  @Test
+  @DisplayName("Unsorted, overlapping, duplicate and missing fragments give the same probes as the quantification of every single fragment")
+  void testFragments() throws Exception
+  {
+    List<FragmentVO> fragments = createFragments();
+    assertSameAsSingleFragments(fragments, createProbes(6f,30f));
+    assertSameAsSingleFragments(fragments, createProbes(0f,1000f));
+    CgProbe[] areas = analyzer.calculateMs2Areas(fragments, 2, createProbes(0f,1000f));
+    assertEquals(CgAreaStatus.OK, areas[0].AreaStatus);
+    assertEquals(CgAreaStatus.NothingThere, areas[4].AreaStatus);
+    assertTrue(areas[2].isFromOtherSpecies());
+    assertEquals(areas[0].Area, areas[5].Area);
+  }
+  
+  @Test
+  @DisplayName("The retention time borders of the MS1 peak are handled as before: the lower border is excluded, the upper one included")
+  void testRetentionTimeBorders() throws Exception
+  {
+    List<FragmentVO> fragments = createFragments();
+    //the MS2 scans are at even retention times; 8 is the scan after a missing one
+    for (float[] borders : new float[][]{{6f,30f},{5.5f,6f},{6f,6f},{7f,8f},{8f,8f},{9f,9.5f},{ChromTestFiles.getMs1Rt(NR_OF_SCANS-1),1000f}})
+      assertSameAsSingleFragments(fragments, createProbes(borders[0],borders[1]));
+    CgProbe[] areas = analyzer.calculateMs2Areas(fragments, 2, createProbes(6f,6f));
+    for (CgProbe area : areas) assertEquals(CgAreaStatus.NothingThere, area.AreaStatus);
+  }
+  
+  @Test
+  @DisplayName("Retention time ranges without any scan, and an empty fragment list give empty results")
+  void testEmpty() throws Exception
+  {
+    List<FragmentVO> fragments = createFragments();
+    assertSameAsSingleFragments(fragments, createProbes(-10f,0.5f));
+    assertSameAsSingleFragments(fragments, createProbes(500f,1000f));
+    for (CgProbe area : analyzer.calculateMs2Areas(fragments, 2, createProbes(500f,1000f)))
+      assertEquals(CgAreaStatus.NothingThere, area.AreaStatus);
+    assertEquals(0, analyzer.calculateMs2Areas(new ArrayList<FragmentVO>(), 2, createProbes(0f,1000f)).length);
+  }
+  
+  /**
+   * fragments in an order that is not sorted by m/z: overlapping windows (283.26/283.27), a fragment without any peak,
+   * a fragment below the lowest m/z, a duplicate, and a fragment of another species
+   */
+  private static List<FragmentVO> createFragments()
+  {
+    List<FragmentVO> fragments = new ArrayList<FragmentVO>();
+    fragments.add(new FragmentVO("head", 184.07d, "C5H15NO4P", 1, 2, FragmentRuleVO.MANDATORY_TRUE));
+    fragments.add(new FragmentVO("fa1", 283.26d, "C18H35O2", 1, 2, FragmentRuleVO.MANDATORY_TRUE));
+    fragments.add(new FragmentVO("fa2", 283.27d, "C18H35O2", 1, 2, FragmentRuleVO.MANDATORY_OTHER));
+    fragments.add(new FragmentVO("fa0", 265.25d, "C18H33O", 1, 2, FragmentRuleVO.MANDATORY_TRUE));
+    fragments.add(new FragmentVO("none", 400d, "C20H40O5", 1, 2, FragmentRuleVO.MANDATORY_TRUE));
+    fragments.add(new FragmentVO("head2", 184.07d, "C5H15NO4P", 1, 2, FragmentRuleVO.MANDATORY_TRUE));
+    fragments.add(new FragmentVO("low", 150.5d, "C5H10O5", 1, 2, FragmentRuleVO.MANDATORY_TRUE));
+    fragments.add(new FragmentVO("below", 50d, "C2H2O2", 1, 2, FragmentRuleVO.MANDATORY_TRUE));
+    return fragments;
+  }
+  
+  private static Vector<CgProbe> createProbes(float lowerValley, float upperValley)
+  {
+    CgProbe probe = new CgProbe(0,1);
+    probe.AreaStatus = CgAreaStatus.OK;
+    probe.Area = 1000f;
+    probe.Mz = PRECURSOR_MZ;
+    probe.LowerValley = lowerValley;
+    probe.UpperValley = upperValley;
+    probe.Peak = (lowerValley+upperValley)/2f;
+    Vector<CgProbe> probes = new Vector<CgProbe>();
+    probes.add(probe);
+    return probes;
+  }
+  
+  private void assertSameAsSingleFragments(List<FragmentVO> fragments, Vector<CgProbe> probes) throws Exception
+  {
+    CgProbe[] areas = analyzer.calculateMs2Areas(fragments, 2, probes);
+    assertEquals(fragments.size(), areas.length);
+    for (int i=0; i!=fragments.size(); i++){
+      FragmentVO fragment = fragments.get(i);
+      CgProbe expected = analyzer.calculateMs2Area(fragment.getMass(), fragment.getFormula(), 2, fragment.getCharge(),
+          fragment.isMandatory()==FragmentRuleVO.MANDATORY_OTHER, probes);
+      String message = fragment.getName()+" at "+probes.get(0).LowerValley+"-"+probes.get(0).UpperValley;
+      assertEquals(expected.AreaStatus, areas[i].AreaStatus, message);
+      assertEquals(expected.Area, areas[i].Area, message);
+      assertEquals(expected.Peak, areas[i].Peak, message);
+      assertEquals(expected.LowerValley, areas[i].LowerValley, message);
+      assertEquals(expected.UpperValley, areas[i].UpperValley, message);
+      assertEquals(expected.Mz, areas[i].Mz, message);
+      assertEquals(expected.LowerMzBand, areas[i].LowerMzBand, message);
+      assertEquals(expected.UpperMzBand, areas[i].UpperMzBand, message);
+      assertEquals(expected.Charge, areas[i].Charge, message);
+      assertEquals(expected.getMsLevel(), areas[i].getMsLevel(), message);
+      assertEquals(expected.getFormula(), areas[i].getFormula(), message);
+      assertEquals(expected.isFromOtherSpecies(), areas[i].isFromOtherSpecies(), message);
+    }
+  }
+}
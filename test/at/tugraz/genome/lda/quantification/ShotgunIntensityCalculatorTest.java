@@ -0,0 +1,153 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.quantification;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.Vector;
+
+import at.tugraz.genome.maspectras.utils.Calculator;
+
+/**
+ * Junit Test class for the ShotgunIntensityCalculator; the intensities are compared to the ones of the
+ * calculation in the LipidomicsAnalyzer before the ShotgunIntensityCalculator
+ */
+class ShotgunIntensityCalculatorTest
+{
+  private final static int[] TYPES = new int[]{LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN,LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN,LipidomicsAnalyzer.SHOTGUN_TYPE_SUM};
+  
+  @Test
+  @DisplayName("The intensities correspond to the ones of the previous calculation")
+  void testPreviousCalculation()
+  {
+    Random random = new Random(4711l);
+    for (int type : TYPES){
+      for (boolean discardZeros : new boolean[]{false,true}){
+        ShotgunIntensityCalculator calculator = new ShotgunIntensityCalculator(type, discardZeros, 0f);
+        for (int nrOfScans=0; nrOfScans!=40; nrOfScans++){
+          float[][] values = createValues(random, nrOfScans, false);
+          assertSameIntensity(calculateOld(values, type, discardZeros), calculator.calculateIntensity(values), type, discardZeros);
+        }
+      }
+    }
+  }
+  
+  @Test
+  @DisplayName("NaN intensities are handled as by the previous calculation")
+  void testNaNValues()
+  {
+    Random random = new Random(815l);
+    for (int type : TYPES){
+      for (boolean discardZeros : new boolean[]{false,true}){
+        ShotgunIntensityCalculator calculator = new ShotgunIntensityCalculator(type, discardZeros, 0f);
+        for (int nrOfScans=1; nrOfScans!=40; nrOfScans++){
+          float[][] values = createValues(random, nrOfScans, true);
+          assertSameIntensity(calculateOld(values, type, discardZeros), calculator.calculateIntensity(values), type, discardZeros);
+        }
+      }
+    }
+  }
+  
+  @Test
+  @DisplayName("The buffer of a larger chromatogram does not influence the values of a smaller one")
+  void testBufferReuse()
+  {
+    ShotgunIntensityCalculator calculator = new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN, true, 0f);
+    assertEquals(5f, calculator.calculateIntensity(new float[][]{{0f,9f},{1f,5f},{2f,0f},{3f,1f},{4f,7f},{5f,3f}}));
+    assertEquals(2.5f, calculator.calculateIntensity(new float[][]{{0f,4f},{1f,1f}}));
+    assertEquals(0f, calculator.calculateIntensity(new float[][]{{0f,0f}}));
+  }
+  
+  @Test
+  @DisplayName("The relative cutoff removes the intensities below the fraction of the average")
+  void testRelativeCutoff()
+  {
+    //the average without zeros is 50 - a cutoff of 50% removes all the values below or equal to 25
+    float[][] values = new float[][]{{0f,10f},{1f,0f},{2f,25f},{3f,40f},{4f,0f},{5f,80f},{6f,95f}};
+    assertEquals(((40f+80f+95f)/3f), new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN, true, 0.5f).calculateIntensity(values));
+    assertEquals(80f, new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN, true, 0.5f).calculateIntensity(values));
+    assertEquals(250f, new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_SUM, true, 0.5f).calculateIntensity(values));
+    //without a cutoff, all non-zero values are used
+    assertEquals(50f, new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN, true, 0f).calculateIntensity(values));
+    assertEquals(40f, new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN, true, 0f).calculateIntensity(values));
+    //the cutoff is applied only if zeros are discarded
+    assertEquals(250f/7f, new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN, false, 0.5f).calculateIntensity(values));
+    //a cutoff that removes every value
+    assertEquals(0f, new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN, true, 2f).calculateIntensity(values));
+    assertTrue(Float.isNaN(new ShotgunIntensityCalculator(LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN, true, 2f).calculateIntensity(values)));
+  }
+  
+  private void assertSameIntensity(float expected, float actual, int type, boolean discardZeros)
+  {
+    assertEquals(0, Float.compare(expected, actual), "type "+type+"; discard zeros "+discardZeros+": "+expected+" vs "+actual);
+  }
+  
+  /**
+   * direct infusion like intensities: a plateau with noise, occasional drop outs, and optionally NaN values
+   */
+  private float[][] createValues(Random random, int nrOfScans, boolean withNaN)
+  {
+    float level = 1000f+random.nextFloat()*100000f;
+    float[][] values = new float[nrOfScans][2];
+    for (int i=0; i!=nrOfScans; i++){
+      values[i][0] = i*0.5f;
+      float rand = random.nextFloat();
+      if (rand<0.15f)
+        values[i][1] = 0f;
+      else if (withNaN && rand<0.3f)
+        values[i][1] = Float.NaN;
+      else
+        values[i][1] = Math.max(0f,level+(float)random.nextGaussian()*level*0.2f);
+    }
+    return values;
+  }
+  
+  /**
+   * the calculation of the LipidomicsAnalyzer before the ShotgunIntensityCalculator
+   */
+  private float calculateOld(float[][] values, int shotgunType, boolean discardZeros)
+  {
+    Vector<Float> ints = new Vector<Float>();
+    float sum = 0f;
+    for (int i=0; i!=values.length; i++){
+      sum += values[i][1];
+      if (!discardZeros || values[i][1]>0f)
+        ints.add(values[i][1]);
+    }
+    float intensity = 0f;
+    float[] intValues = new float[ints.size()];
+    for (int i=0; i!=ints.size(); i++) intValues[i] = ints.get(i);
+    if (shotgunType==LipidomicsAnalyzer.SHOTGUN_TYPE_MEAN)
+      intensity = Calculator.mean(intValues);
+    else if (shotgunType==LipidomicsAnalyzer.SHOTGUN_TYPE_MEDIAN)
+      intensity = Calculator.median(intValues);
+    else if (shotgunType==LipidomicsAnalyzer.SHOTGUN_TYPE_SUM)
+      intensity = sum;
+    return intensity;
+  }
+}
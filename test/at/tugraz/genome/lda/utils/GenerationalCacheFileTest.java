@@ -0,0 +1,190 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Junit Test class for the GenerationalCacheFile; several instances on the same directory stand for several processes storing the same cache
+ */
+class GenerationalCacheFileTest
+{
+  private final static String NAME = "testCache";
+  private final static String SUFFIX = ".cache";
+  
+  File dir;
+  
+  @BeforeEach
+  void init() throws IOException
+  {
+    dir = Files.createTempDirectory("generationalCache").toFile();
+  }
+  
+  @AfterEach
+  void cleanup()
+  {
+    File[] files = dir.listFiles();
+    if (files!=null){
+      for (File file : files) file.delete();
+    }
+    dir.delete();
+  }
+  
+  @Test
+  @DisplayName("Every store writes a new generation, and a generation is never overwritten")
+  void testGenerations() throws IOException
+  {
+    GenerationalCacheFile cacheFile = new GenerationalCacheFile(dir, NAME, SUFFIX);
+    assertEquals(0, cacheFile.getNewestGeneration());
+    StringContent content = new StringContent();
+    content.entries_.add("first");
+    int generation = cacheFile.store(0, content);
+    assertEquals(1, generation);
+    content.entries_.add("second");
+    generation = cacheFile.store(generation, content);
+    assertEquals(2, generation);
+    assertEquals(2, cacheFile.getNewestGeneration());
+    assertEquals(asSet("first"), readEntries(cacheFile.getFile(1)));
+    assertEquals(asSet("first","second"), readEntries(cacheFile.getFile(2)));
+    //no temporary files remain
+    assertEquals(2, dir.listFiles().length);
+    //files of other caches are not taken as generations
+    new File(dir, NAME+"Other.7"+SUFFIX).createNewFile();
+    new File(dir, NAME+".x"+SUFFIX).createNewFile();
+    assertEquals(2, cacheFile.getNewestGeneration());
+  }
+  
+  @Test
+  @DisplayName("A store merges the entries that another process has stored in the meantime")
+  void testMergeOfOtherProcess() throws IOException
+  {
+    GenerationalCacheFile oneFile = new GenerationalCacheFile(dir, NAME, SUFFIX);
+    StringContent one = new StringContent();
+    GenerationalCacheFile otherFile = new GenerationalCacheFile(dir, NAME, SUFFIX);
+    StringContent other = new StringContent();
+    one.entries_.add("one");
+    other.entries_.add("other");
+    int oneGeneration = oneFile.store(0, one);
+    //the other process has not read the generation of the first one
+    int otherGeneration = otherFile.store(0, other);
+    assertEquals(1, oneGeneration);
+    assertEquals(2, otherGeneration);
+    assertEquals(asSet("one","other"), readEntries(otherFile.getFile(otherGeneration)));
+  }
+  
+  @Test
+  @DisplayName("Concurrent stores of several processes lose no entries")
+  void testConcurrentStores() throws Exception
+  {
+    int nrOfProcesses = 8;
+    int storesPerProcess = 5;
+    ExecutorService executor = Executors.newFixedThreadPool(nrOfProcesses);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int i=0; i!=nrOfProcesses; i++){
+      final int process = i;
+      futures.add(executor.submit(new Callable<Void>(){
+        public Void call() throws IOException{
+          GenerationalCacheFile cacheFile = new GenerationalCacheFile(dir, NAME, SUFFIX);
+          StringContent content = new StringContent();
+          int generation = 0;
+          for (int j=0; j!=storesPerProcess; j++){
+            content.entries_.add(process+"-"+j);
+            generation = cacheFile.store(generation, content);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures) future.get();
+    executor.shutdown();
+    GenerationalCacheFile cacheFile = new GenerationalCacheFile(dir, NAME, SUFFIX);
+    Set<String> entries = readEntries(cacheFile.getFile(cacheFile.getNewestGeneration()));
+    assertEquals(nrOfProcesses*storesPerProcess, entries.size());
+    for (int i=0; i!=nrOfProcesses; i++){
+      for (int j=0; j!=storesPerProcess; j++) assertTrue(entries.contains(i+"-"+j), i+"-"+j);
+    }
+  }
+  
+  private static Set<String> asSet(String... entries)
+  {
+    return new HashSet<String>(Arrays.asList(entries));
+  }
+  
+  private static Set<String> readEntries(File file) throws IOException
+  {
+    Set<String> entries = ConcurrentHashMap.newKeySet();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+      int size = in.readInt();
+      for (int i=0; i!=size; i++) entries.add(in.readUTF());
+    }
+    return entries;
+  }
+  
+  /**
+   * a cache of strings
+   */
+  private static class StringContent implements GenerationalCacheFile.CacheContent
+  {
+    private Set<String> entries_ = ConcurrentHashMap.newKeySet();
+    
+    public void merge(File file)
+    {
+      try{
+        entries_.addAll(readEntries(file));
+      } catch (IOException iox){
+        fail(iox.getMessage());
+      }
+    }
+    
+    public void write(DataOutputStream out) throws IOException
+    {
+      List<String> entries = new ArrayList<String>(entries_);
+      out.writeInt(entries.size());
+      for (String entry : entries) out.writeUTF(entry);
+    }
+  }
+}
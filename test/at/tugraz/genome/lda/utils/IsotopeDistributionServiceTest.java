@@ -0,0 +1,189 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.Settings;
+import at.tugraz.genome.maspectras.parser.exceptions.SpectrummillParserException;
+import at.tugraz.genome.maspectras.parser.spectrummill.ElementConfigParser;
+
+/**
+ * Junit Test class for the IsotopeDistributionService; the distributions are compared to the ones of
+ * ElementConfigParser.calculateChemicalFormulaIntensityDistribution. The enumeration of the ElementConfigParser
+ * misses a few combinations of different isotopes of the same element, thus, deviations below TOLERANCE are accepted.
+ */
+class IsotopeDistributionServiceTest
+{
+  /** the tolerated deviation of the normalized values*/
+  private final static double TOLERANCE = 0.000001d;
+  
+  /** lipid-like formulas with several adducts, with labeled elements, and with elements having more than two isotopes*/
+  private final static String[] FORMULAS = new String[]{
+      "C41 H80 N1 O8 P1 H1", "C41 H80 N1 O8 P1 Na1", "C37 H70 O5 N1 H4", "C55 H98 O6 Li1", "C40 H76 N1 O8 P1 Cl1",
+      "C42 H80 O13 S1", "C24 H50 N1 O7 P1", "C6 H12 O6", "C41 H75 D5 N1 O8 P1", "C25 Cc16 H80 N1 O8 P1",
+      "C47 H86 O13 P1 K1", "C40 H79 N2 O6 P1 Br1", "C3 H5 n1 X1 O1"};
+  
+  ElementConfigParser elementParser;
+  
+  @BeforeEach
+  void init()
+  {
+    elementParser = Settings.getElementParser();
+  }
+  
+  @Test
+  @DisplayName("The distributions correspond to the ones of the ElementConfigParser")
+  void testDistributionsOfElementConfigParser() throws SpectrummillParserException
+  {
+    IsotopeDistributionService service = new IsotopeDistributionService(elementParser);
+    for (String formula : FORMULAS){
+      for (int amountOfIsotopes=0; amountOfIsotopes!=5; amountOfIsotopes++){
+        for (int isotopesMustMatch=0; isotopesMustMatch<=amountOfIsotopes; isotopesMustMatch++){
+          assertSameDistributions(formula, getTheoreticalIsoDistributions(formula, isotopesMustMatch, amountOfIsotopes),
+              service.getTheoreticalIsoDistributions(formula, isotopesMustMatch, amountOfIsotopes));
+        }
+      }
+    }
+  }
+  
+  @Test
+  @DisplayName("A cached distribution covering too little isotopes is extended")
+  void testExtensionOfCachedDistributions() throws SpectrummillParserException
+  {
+    IsotopeDistributionService service = new IsotopeDistributionService(elementParser);
+    for (String formula : FORMULAS){
+      service.getTheoreticalIsoDistributions(formula, 1, 1);
+      assertSameDistributions(formula, getTheoreticalIsoDistributions(formula, 2, 6), service.getTheoreticalIsoDistributions(formula, 2, 6));
+    }
+  }
+  
+  @Test
+  @DisplayName("The parallel calculation delivers the same distributions as the sequential one")
+  void testParallelFill() throws SpectrummillParserException
+  {
+    Vector<String> formulas = new Vector<String>();
+    for (int carbons=20; carbons!=70; carbons++){
+      for (int oxygens=2; oxygens!=10; oxygens++)
+        formulas.add("C"+carbons+" H"+(2*carbons-2)+" N1 O"+oxygens+" P1");
+    }
+    IsotopeDistributionService parallel = new IsotopeDistributionService(elementParser);
+    parallel.fill(formulas, 4, 4);
+    IsotopeDistributionService sequential = new IsotopeDistributionService(elementParser);
+    for (String formula : formulas){
+      Object[] expected = sequential.getTheoreticalIsoDistributions(formula, 2, 3);
+      Object[] actual = parallel.getTheoreticalIsoDistributions(formula, 2, 3);
+      assertEquals(expected[0], actual[0], formula);
+      assertEquals(expected[1], actual[1], formula);
+      assertEquals(expected[2], actual[2], formula);
+    }
+  }
+  
+  @Test
+  @DisplayName("Two services sharing the cache directory merge their distributions when they store them")
+  void testSharedCache() throws SpectrummillParserException, IOException
+  {
+    File dir = Files.createTempDirectory("isotopeCache").toFile();
+    try{
+      IsotopeDistributionService one = new IsotopeDistributionService(elementParser, dir, "digest");
+      IsotopeDistributionService other = new IsotopeDistributionService(elementParser, dir, "digest");
+      one.getTheoreticalIsoDistributions(FORMULAS[0], 2, 3);
+      one.getTheoreticalIsoDistributions(FORMULAS[1], 2, 3);
+      other.getTheoreticalIsoDistributions(FORMULAS[1], 2, 3);
+      other.getTheoreticalIsoDistributions(FORMULAS[2], 2, 3);
+      one.store();
+      //the other service has not read the distributions of the first one
+      other.store();
+      IsotopeDistributionService next = new IsotopeDistributionService(elementParser, dir, "digest");
+      assertEquals(3, next.size());
+      assertSameDistributions(FORMULAS[0], getTheoreticalIsoDistributions(FORMULAS[0], 2, 3), next.getTheoreticalIsoDistributions(FORMULAS[0], 2, 3));
+      assertEquals(3, next.size());
+      //a cache of another element configuration is not used
+      assertEquals(0, new IsotopeDistributionService(elementParser, dir, "otherDigest").size());
+    } finally{
+      File[] files = dir.listFiles();
+      if (files!=null){
+        for (File file : files) file.delete();
+      }
+      dir.delete();
+    }
+  }
+  
+  private void assertSameDistributions(String formula, Object[] expected, Object[] actual)
+  {
+    for (int i=0; i!=2; i++){
+      @SuppressWarnings("unchecked")
+      Vector<Double> expectedValues = (Vector<Double>)expected[i];
+      @SuppressWarnings("unchecked")
+      Vector<Double> actualValues = (Vector<Double>)actual[i];
+      assertEquals(expectedValues.size(), actualValues.size(), formula+": number of isotopes");
+      for (int j=0; j!=expectedValues.size(); j++)
+        assertEquals(expectedValues.get(j), actualValues.get(j), TOLERANCE, formula+": isotope "+j);
+    }
+    assertEquals(expected[2], actual[2], formula+": negative start value");
+  }
+  
+  /**
+   * the distributions as they were calculated with the ElementConfigParser before the IsotopeDistributionService
+   */
+  private Object[] getTheoreticalIsoDistributions(String chemicalFormula, int isotopesMustMatch, int amountOfIsotopes) throws SpectrummillParserException
+  {
+    boolean negativeDistribution = false;
+    Vector<Double> probabs = new Vector<Double>();
+    if (amountOfIsotopes<isotopesMustMatch)
+      amountOfIsotopes = isotopesMustMatch;
+    if (amountOfIsotopes>0){
+      Vector<Vector<Double>> bothDistris = elementParser.calculateChemicalFormulaIntensityDistribution(chemicalFormula, amountOfIsotopes+1, false);
+      probabs = bothDistris.get(0);
+      if (bothDistris.size()>1 && StaticUtils.useNegativeDistribution(probabs,bothDistris.get(1))){
+        probabs = bothDistris.get(1);
+        negativeDistribution = true;
+      }
+    }else{
+      probabs.add(1d);
+    }
+    Vector<Double> mustMatchProbabs = new Vector<Double>();
+    if (isotopesMustMatch>0){
+      if (amountOfIsotopes == isotopesMustMatch){
+        mustMatchProbabs = new Vector<Double>(probabs);
+      }else{
+        Vector<Vector<Double>> bothDistris = elementParser.calculateChemicalFormulaIntensityDistribution(chemicalFormula, isotopesMustMatch+1, false);
+        mustMatchProbabs = bothDistris.get(0);
+        if (bothDistris.size()>1 && StaticUtils.useNegativeDistribution(mustMatchProbabs,bothDistris.get(1))){
+          mustMatchProbabs = bothDistris.get(1);
+          negativeDistribution = true;
+        }
+      }
+    }
+    return new Object[]{mustMatchProbabs, probabs, negativeDistribution ? (mustMatchProbabs.size()*-1)+1 : 0};
+  }
+}
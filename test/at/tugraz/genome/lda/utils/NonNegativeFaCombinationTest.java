@@ -0,0 +1,175 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+package at.tugraz.genome.lda.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * Junit Test class for the NonNegativeFaCombination.
+ */
+class NonNegativeFaCombinationTest
+{
+  /** the tolerated deviation relative to the highest observation*/
+  private final static double TOLERANCE = 0.00001d;
+  
+  @Test
+  @DisplayName("A system with an exact non-negative solution is solved exactly")
+  void testExactSolution()
+  {
+    //the combinations A_B, A_C and B_C with the shares 1, 2 and 3
+    NonNegativeFaCombination fit = new NonNegativeFaCombination(new float[]{3f,4f,5f}, new int[][]{{0,1},{0,2},{1,2}},
+        new float[][]{{1f,1f},{1f,1f},{1f,1f}});
+    fit.fit();
+    assertTrue(fit.isConverged());
+    assertSameShares(new double[]{1d,2d,3d}, fit.getResultParams(), 5d);
+    for (int i=0; i!=3; i++) assertEquals(3d+i, fit.calculateFitValue(i), 5d*TOLERANCE);
+  }
+  
+  @Test
+  @DisplayName("The solution fulfills the Karush-Kuhn-Tucker conditions when a share is bound at zero")
+  void testKKTConditions()
+  {
+    //the combinations A_A and A_B; without constraint, the share of A_A would be -2
+    float[] observations = new float[]{1f,5f};
+    int[][] chainIndices = new int[][]{{0},{0,1}};
+    float[][] chainCounts = new float[][]{{2f},{1f,1f}};
+    NonNegativeFaCombination fit = new NonNegativeFaCombination(observations, chainIndices, chainCounts);
+    fit.fit();
+    assertTrue(fit.isConverged());
+    assertSameShares(new double[]{0d,3d}, fit.getResultParams(), 5d);
+    assertKKTConditions(fit, observations, chainIndices, chainCounts);
+  }
+  
+  @Test
+  @DisplayName("The shares are non-negative and fulfill the Karush-Kuhn-Tucker conditions for random systems")
+  void testRandomSystems()
+  {
+    Random random = new Random(4711l);
+    for (int n=0; n!=50; n++){
+      float[] observations = new float[8+random.nextInt(8)];
+      for (int i=0; i!=observations.length; i++) observations[i] = random.nextFloat()*1000f;
+      int[][] chainIndices = new int[5+random.nextInt(20)][];
+      float[][] chainCounts = new float[chainIndices.length][];
+      createRandomCombinations(random, observations.length, chainIndices, chainCounts);
+      NonNegativeFaCombination fit = new NonNegativeFaCombination(observations, chainIndices, chainCounts);
+      fit.fit();
+      assertTrue(fit.isConverged());
+      for (double param : fit.getResultParams()) assertTrue(param>=0d, "negative share "+param);
+      assertKKTConditions(fit, observations, chainIndices, chainCounts);
+    }
+  }
+  
+  @Test
+  @DisplayName("A warm start reaches the same optimum as a cold start")
+  void testWarmStart()
+  {
+    Random random = new Random(815l);
+    for (int n=0; n!=50; n++){
+      float[] observations = new float[10];
+      for (int i=0; i!=observations.length; i++) observations[i] = random.nextFloat()*1000f;
+      //every combination contains an own chain - thus, the optimum is unique
+      int[][] chainIndices = new int[6][];
+      float[][] chainCounts = new float[chainIndices.length][];
+      for (int i=0; i!=chainIndices.length; i++){
+        chainIndices[i] = new int[]{i,chainIndices.length+random.nextInt(observations.length-chainIndices.length)};
+        chainCounts[i] = new float[]{1f,1f+random.nextInt(2)};
+      }
+      NonNegativeFaCombination cold = new NonNegativeFaCombination(observations, chainIndices, chainCounts);
+      cold.fit();
+      double[] startParams = new double[chainIndices.length];
+      for (int i=0; i!=startParams.length; i++) startParams[i] = random.nextDouble()*2000d-500d;
+      NonNegativeFaCombination warm = new NonNegativeFaCombination(observations, chainIndices, chainCounts);
+      warm.fit(startParams);
+      assertTrue(cold.isConverged());
+      assertTrue(warm.isConverged());
+      double highest = getHighest(observations);
+      assertEquals(getResidualSumOfSquares(cold, observations), getResidualSumOfSquares(warm, observations), TOLERANCE*highest*highest);
+      assertSameShares(cold.getResultParams(), warm.getResultParams(), highest);
+      //a restart from the optimum stays there
+      NonNegativeFaCombination restart = new NonNegativeFaCombination(observations, chainIndices, chainCounts);
+      restart.fit(cold.getResultParams());
+      assertSameShares(cold.getResultParams(), restart.getResultParams(), highest);
+    }
+  }
+  
+  /**
+   * every combination gets two different chains, some of them twice
+   */
+  private static void createRandomCombinations(Random random, int nrOfChains, int[][] chainIndices, float[][] chainCounts)
+  {
+    for (int i=0; i!=chainIndices.length; i++){
+      int first = random.nextInt(nrOfChains);
+      int second = (first+1+random.nextInt(nrOfChains-1))%nrOfChains;
+      chainIndices[i] = new int[]{first,second};
+      chainCounts[i] = new float[]{1f+random.nextInt(2),1f};
+    }
+  }
+  
+  /**
+   * checks the optimality conditions of the non-negative least squares problem: the gradient of the sum of squares
+   * vanishes for positive shares, and points into the feasible direction for shares of zero
+   */
+  private static void assertKKTConditions(NonNegativeFaCombination fit, float[] observations, int[][] chainIndices, float[][] chainCounts)
+  {
+    double[] params = fit.getResultParams();
+    double[] residuals = new double[observations.length];
+    for (int i=0; i!=observations.length; i++) residuals[i] = observations[i]-fit.calculateFitValue(i);
+    double highest = getHighest(observations);
+    for (int i=0; i!=params.length; i++){
+      double descent = 0d;
+      for (int j=0; j!=chainIndices[i].length; j++) descent += chainCounts[i][j]*residuals[chainIndices[i][j]];
+      if (params[i]>TOLERANCE*highest)
+        assertEquals(0d, descent, TOLERANCE*highest, "gradient of the positive share "+i);
+      else
+        assertTrue(descent<=TOLERANCE*highest, "the sum of squares decreases when the share "+i+" is increased: "+descent);
+    }
+  }
+  
+  private static double getResidualSumOfSquares(NonNegativeFaCombination fit, float[] observations)
+  {
+    double sum = 0d;
+    for (int i=0; i!=observations.length; i++){
+      double residual = observations[i]-fit.calculateFitValue(i);
+      sum += residual*residual;
+    }
+    return sum;
+  }
+  
+  private static double getHighest(float[] observations)
+  {
+    double highest = 0d;
+    for (float observation : observations) highest = Math.max(highest, observation);
+    return highest;
+  }
+  
+  private static void assertSameShares(double[] expected, double[] actual, double scale)
+  {
+    assertEquals(expected.length, actual.length);
+    for (int i=0; i!=expected.length; i++) assertEquals(expected[i], actual[i], TOLERANCE*scale, "share "+i);
+  }
+}
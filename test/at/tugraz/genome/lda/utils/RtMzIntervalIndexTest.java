@@ -0,0 +1,225 @@
+/* 
+ * This file is part of Lipid Data Analyzer
+ * Lipid Data Analyzer - Automated annotation of lipid species and their molecular structures in high-throughput data from tandem mass spectrometry
+ * Copyright (c) 2017 Juergen Hartler, Andreas Ziegl, Gerhard G. Thallinger, Leonida M. Lamp
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER. 
+ *  
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *  
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. 
+ *  
+ * You should have received a copy of the GNU General Public License 
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Please contact lda@genome.tugraz.at if you need additional information or 
+ * have any questions.
+ */
+
+
+package at.tugraz.genome.lda.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+import at.tugraz.genome.lda.quantification.LipidParameterSet;
+import at.tugraz.genome.maspectras.quantification.CgProbe;
+
+/**
+ * Junit Test class for the RtMzIntervalIndex: the results of the index are compared with the pairwise comparison of all intervals
+ */
+class RtMzIntervalIndexTest
+{
+  
+  @Test
+  @DisplayName("An empty index returns nothing for queries and joins")
+  void testEmpty()
+  {
+    RtMzIntervalIndex<String> index = new RtMzIntervalIndex<String>(0);
+    index.build();
+    assertEquals(0, index.size());
+    assertEquals(0, index.findOverlapping(0f, Float.MAX_VALUE, 0f, Float.MAX_VALUE).size());
+    assertEquals(0, index.findContainingOrdinals(1f, 1f).length);
+    assertEquals(0, index.selfJoin().size());
+    RtMzIntervalIndex<String> other = new RtMzIntervalIndex<String>();
+    other.add(1f, 2f, 100f, 101f, "A");
+    other.build();
+    assertEquals(0, index.overlapJoin(other).size());
+    assertEquals(0, other.overlapJoin(index).size());
+  }
+  
+  @Test
+  @DisplayName("The borders of the intervals are inclusive in both dimensions, and point intervals are found")
+  void testBoundaries()
+  {
+    RtMzIntervalIndex<String> index = new RtMzIntervalIndex<String>();
+    index.add(10f, 20f, 500f, 501f, "A");
+    index.add(20f, 30f, 501f, 502f, "B");
+    index.add(15f, 15f, 500.5f, 500.5f, "point");
+    index.build();
+    assertArrayEquals(new int[]{0,1}, index.findContainingOrdinals(20f, 501f));
+    assertArrayEquals(new int[]{0}, index.findContainingOrdinals(10f, 500f));
+    assertArrayEquals(new int[]{0,2}, index.findContainingOrdinals(15f, 500.5f));
+    assertArrayEquals(new int[0], index.findContainingOrdinals(Math.nextDown(10f), 500f));
+    assertArrayEquals(new int[0], index.findContainingOrdinals(Math.nextUp(30f), 501.5f));
+    assertArrayEquals(new int[0], index.findContainingOrdinals(25f, Math.nextUp(502f)));
+    //a query touching an interval at a single point
+    assertEquals(new Vector<String>(Arrays.asList("B")), index.findOverlapping(30f, 40f, 400f, 600f));
+    assertEquals(new Vector<String>(Arrays.asList("A","point")), index.findOverlapping(0f, 15f, 500.5f, 500.5f));
+    //an inverted query interval is empty
+    assertArrayEquals(new int[0], index.findOverlappingOrdinals(30f, 10f, 500f, 502f));
+    assertPairs(new int[][]{{0,1},{0,2}}, index.selfJoin());
+  }
+  
+  @Test
+  @DisplayName("The queries and joins return the same entries as the pairwise comparison of all intervals")
+  void testAgainstPairwiseComparison()
+  {
+    Random random = new Random(4711l);
+    for (int round=0; round!=20; round++){
+      float[][] intervals = createRandomIntervals(random, random.nextInt(200));
+      float[][] otherIntervals = createRandomIntervals(random, random.nextInt(50));
+      RtMzIntervalIndex<Integer> index = createIndex(intervals);
+      RtMzIntervalIndex<Integer> other = createIndex(otherIntervals);
+      assertEquals(intervals.length, index.size());
+      for (int i=0; i!=intervals.length; i++) assertEquals(Integer.valueOf(i), index.get(i));
+      for (float[] query : otherIntervals){
+        Vector<Integer> expected = new Vector<Integer>();
+        for (int i=0; i!=intervals.length; i++){
+          if (overlaps(intervals[i],query)) expected.add(i);
+        }
+        assertEquals(expected, index.findOverlapping(query[0], query[1], query[2], query[3]));
+        Vector<Integer> containing = new Vector<Integer>();
+        for (int i=0; i!=intervals.length; i++){
+          if (overlaps(intervals[i],new float[]{query[0],query[0],query[2],query[2]})) containing.add(i);
+        }
+        assertEquals(containing, index.findContaining(query[0], query[2]));
+      }
+      Vector<int[]> expectedJoin = new Vector<int[]>();
+      for (int i=0; i!=intervals.length; i++){
+        for (int j=0; j!=otherIntervals.length; j++){
+          if (overlaps(intervals[i],otherIntervals[j])) expectedJoin.add(new int[]{i,j});
+        }
+      }
+      assertPairs(expectedJoin.toArray(new int[0][]), index.overlapJoin(other));
+      Vector<int[]> reversedJoin = new Vector<int[]>();
+      for (int j=0; j!=otherIntervals.length; j++){
+        for (int i=0; i!=intervals.length; i++){
+          if (overlaps(intervals[i],otherIntervals[j])) reversedJoin.add(new int[]{j,i});
+        }
+      }
+      assertPairs(reversedJoin.toArray(new int[0][]), other.overlapJoin(index));
+      Vector<int[]> expectedSelf = new Vector<int[]>();
+      for (int i=0; i!=intervals.length; i++){
+        for (int j=i+1; j<intervals.length; j++){
+          if (overlaps(intervals[i],intervals[j])) expectedSelf.add(new int[]{i,j});
+        }
+      }
+      assertPairs(expectedSelf.toArray(new int[0][]), index.selfJoin());
+    }
+  }
+  
+  @Test
+  @DisplayName("An object added several times is returned once per matching entry; adding after the build and querying before it fail")
+  void testStates()
+  {
+    RtMzIntervalIndex<String> index = new RtMzIntervalIndex<String>(1);
+    index.add(1f, 2f, 100f, 101f, "A");
+    assertThrows(IllegalStateException.class, () -> index.findContaining(1f, 100f));
+    index.add(1.5f, 3f, 100.5f, 102f, "A");
+    index.add(5f, 6f, 100f, 101f, "B");
+    index.build();
+    index.build();
+    assertEquals(new Vector<String>(Arrays.asList("A","A")), index.findContaining(1.75f, 100.75f));
+    assertThrows(IllegalStateException.class, () -> index.add(1f, 2f, 100f, 101f, "C"));
+    RtMzIntervalIndex<String> notBuilt = new RtMzIntervalIndex<String>();
+    assertThrows(IllegalStateException.class, () -> index.overlapJoin(notBuilt));
+  }
+  
+  @Test
+  @DisplayName("The index over identifications covers all probes of all isotopes and skips identifications without probes")
+  void testSetIndex() throws Exception
+  {
+    LipidParameterSet set1 = createSet(new float[][]{{10f,12f,700f},{11f,14f,701f}});
+    LipidParameterSet empty = createSet(new float[0][]);
+    LipidParameterSet set2 = createSet(new float[][]{{14f,16f,702f}});
+    RtMzIntervalIndex<LipidParameterSet> index = RtMzIntervalIndex.buildSetIndex(Arrays.asList(set1,empty,set2));
+    assertEquals(2, index.size());
+    assertSame(set1, index.get(0));
+    assertSame(set2, index.get(1));
+    //the RT interval of set1 is 10-14 and the m/z interval 699.99-701.01
+    assertEquals(new Vector<LipidParameterSet>(Arrays.asList(set1)), index.findContaining(13f, 701f));
+    assertEquals(0, index.findContaining(13f, 701.5f).size());
+    assertPairs(new int[][]{}, index.selfJoin());
+    RtMzIntervalIndex<CgProbe> probes = RtMzIntervalIndex.buildProbeIndex(set1.getIsotopicProbes().get(1));
+    assertEquals(1, probes.findContaining(14f, 701.01f).size());
+  }
+  
+  /**
+   * the comparison that was executed for all pairs before the index was introduced
+   */
+  private static boolean overlaps(float[] interval, float[] query)
+  {
+    return interval[0]<=query[1] && interval[1]>=query[0] && interval[2]<=query[3] && interval[3]>=query[2];
+  }
+  
+  /**
+   * creates intervals on a coarse grid - thus, there are many identical starts, touching borders, and point intervals
+   */
+  private static float[][] createRandomIntervals(Random random, int amount)
+  {
+    float[][] intervals = new float[amount][];
+    for (int i=0; i!=amount; i++){
+      float rtStart = random.nextInt(100)/2f;
+      float mzLower = 400f+random.nextInt(40)/4f;
+      intervals[i] = new float[]{rtStart, rtStart+random.nextInt(10)/2f, mzLower, mzLower+random.nextInt(4)/4f};
+    }
+    return intervals;
+  }
+  
+  private static RtMzIntervalIndex<Integer> createIndex(float[][] intervals)
+  {
+    RtMzIntervalIndex<Integer> index = new RtMzIntervalIndex<Integer>(intervals.length);
+    for (int i=0; i!=intervals.length; i++) index.add(intervals[i][0], intervals[i][1], intervals[i][2], intervals[i][3], i);
+    index.build();
+    return index;
+  }
+  
+  /**
+   * creates an identification with one probe per isotope; float[0]: lower valley; float[1]: upper valley; float[2]: m/z
+   */
+  private static LipidParameterSet createSet(float[][] isotopes) throws Exception
+  {
+    LipidParameterSet set = new LipidParameterSet(700f, "34", 1, "H", 0.0, "C42 H82 N O8 P", "+H",1,0);
+    Vector<Vector<CgProbe>> isotopicProbes = new Vector<Vector<CgProbe>>();
+    for (int i=0; i!=isotopes.length; i++){
+      CgProbe probe = new CgProbe(0,1);
+      probe.LowerValley = isotopes[i][0];
+      probe.UpperValley = isotopes[i][1];
+      probe.Mz = isotopes[i][2];
+      probe.LowerMzBand = 0.01f;
+      probe.UpperMzBand = 0.01f;
+      probe.isotopeNumber = i;
+      Vector<CgProbe> probes = new Vector<CgProbe>();
+      probes.add(probe);
+      isotopicProbes.add(probes);
+    }
+    set.setIsotopicProbes(isotopicProbes);
+    return set;
+  }
+  
+  private static void assertPairs(int[][] expected, Vector<int[]> pairs)
+  {
+    assertArrayEquals(expected, pairs.toArray(new int[0][]));
+  }
+}